@@ -0,0 +1,474 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.interceptor;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.core.CollectionFactory;
+import org.springframework.util.LogLinearHistogram;
+
+/**
+ * Interceptor that isolates invocations in bulkhead compartments, each with
+ * its own concurrency limit and bounded wait queue. Invocations that cannot
+ * get a permit are rejected with a BulkheadRejectedException instead of
+ * piling up, for example in front of remote service proxies.
+ *
+ * <p>Methods share the default compartment unless they match one of the
+ * "methodLimits", which gives each mapped name a compartment of its own.
+ * For limits per pointcut, apply a separate BulkheadInterceptor instance
+ * through an advisor for each pointcut.
+ *
+ * <p>Once a compartment's limit is reached, further invocations queue for up
+ * to "maxWait" milliseconds, with at most "maxQueueSize" invocations waiting.
+ * A "maxQueueSize" of 0 rejects immediately when the compartment is saturated.
+ * In fair mode, queued invocations are granted permits in arrival order;
+ * otherwise a newly arriving invocation can take a permit that has just been
+ * released.
+ *
+ * <p>Exposes in-flight, queued, accepted and rejected counts as well as the
+ * wait time distribution through the BulkheadStats interface, for example
+ * to JMX via MBeanExporter. Wait times of all compartments are recorded in
+ * a shared LogLinearHistogram.
+ *
+ * @since 1.2.1
+ * @see #setConcurrencyLimit
+ * @see #setMethodLimits
+ * @see #setMaxQueueSize
+ * @see #setMaxWait
+ * @see #setFair
+ * @see ConcurrencyThrottleInterceptor
+ * @see org.springframework.util.LogLinearHistogram
+ */
+public class BulkheadInterceptor implements MethodInterceptor, BulkheadStats {
+
+	/**
+	 * Name of the compartment for methods that don't match any method limit.
+	 */
+	public static final String DEFAULT_COMPARTMENT_NAME = "default";
+
+
+	protected final Log logger = LogFactory.getLog(getClass());
+
+	private int concurrencyLimit = 10;
+
+	private Map methodLimits = new HashMap();
+
+	private int maxQueueSize = Integer.MAX_VALUE;
+
+	private long maxWait = -1;
+
+	private boolean fair = false;
+
+	/** Compartments by name, sorted for reporting */
+	private final Map compartments = new TreeMap();
+
+	/** Cache of resolved compartments, with Method as key */
+	private final Map compartmentCache = CollectionFactory.createConcurrentMapIfPossible(16);
+
+	/** Wait times of accepted invocations in milliseconds, across all compartments */
+	private final LogLinearHistogram waitTimes = new LogLinearHistogram();
+
+
+	/**
+	 * Set the maximum number of parallel invocations in the default
+	 * compartment. Default is 10.
+	 */
+	public void setConcurrencyLimit(int concurrencyLimit) {
+		if (concurrencyLimit <= 0) {
+			throw new IllegalArgumentException("concurrencyLimit must be positive");
+		}
+		this.concurrencyLimit = concurrencyLimit;
+	}
+
+	/**
+	 * Return the maximum number of parallel invocations in the default compartment.
+	 */
+	public int getConcurrencyLimit() {
+		return concurrencyLimit;
+	}
+
+	/**
+	 * Set concurrency limits for specific methods, with method names as keys
+	 * and limits as values. Method names can start or end with "*" for
+	 * matching multiple methods; the most specific match wins.
+	 * <p>Each mapped name defines a compartment of its own, shared by all
+	 * methods that match it.
+	 * @see #isMatch
+	 */
+	public void setMethodLimits(Properties methodLimits) {
+		Map limits = new HashMap();
+		for (Iterator it = methodLimits.keySet().iterator(); it.hasNext();) {
+			String mappedName = (String) it.next();
+			String value = methodLimits.getProperty(mappedName).trim();
+			int limit = 0;
+			try {
+				limit = Integer.parseInt(value);
+			}
+			catch (NumberFormatException ex) {
+				throw new IllegalArgumentException(
+						"Invalid concurrency limit [" + value + "] for method [" + mappedName + "]");
+			}
+			if (limit <= 0) {
+				throw new IllegalArgumentException(
+						"Concurrency limit for method [" + mappedName + "] must be positive");
+			}
+			limits.put(mappedName, new Integer(limit));
+		}
+		this.methodLimits = limits;
+		this.compartmentCache.clear();
+	}
+
+	/**
+	 * Set the maximum number of invocations that may wait for a permit
+	 * in each compartment. Default is no limit; 0 means to reject
+	 * invocations as soon as the concurrency limit is reached.
+	 */
+	public void setMaxQueueSize(int maxQueueSize) {
+		this.maxQueueSize = maxQueueSize;
+	}
+
+	/**
+	 * Set the maximum number of milliseconds that an invocation waits for
+	 * a permit. A negative value (the default) means to wait indefinitely,
+	 * 0 means to reject invocations as soon as the concurrency limit is reached.
+	 */
+	public void setMaxWait(long maxWait) {
+		this.maxWait = maxWait;
+	}
+
+	/**
+	 * Set whether queued invocations are granted permits in arrival order.
+	 * Default is false, which allows an arriving invocation to take a permit
+	 * ahead of queued ones, for higher throughput.
+	 * <p>Applies to compartments created after this call, so needs to be
+	 * set before the first invocation.
+	 */
+	public void setFair(boolean fair) {
+		this.fair = fair;
+	}
+
+
+	public Object invoke(MethodInvocation methodInvocation) throws Throwable {
+		Compartment compartment = getCompartment(methodInvocation.getMethod());
+		if (!compartment.acquire(this.maxQueueSize, this.maxWait)) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Rejecting invocation of method '" + methodInvocation.getMethod().getName() +
+						"': " + compartment);
+			}
+			throw new BulkheadRejectedException("Bulkhead compartment '" + compartment.getName() +
+					"' saturated: concurrency limit " + compartment.getLimit() + " reached");
+		}
+		try {
+			return methodInvocation.proceed();
+		}
+		finally {
+			compartment.release();
+		}
+	}
+
+	/**
+	 * Return the compartment for the given method, creating it if necessary.
+	 */
+	private Compartment getCompartment(Method method) {
+		Compartment compartment = (Compartment) this.compartmentCache.get(method);
+		if (compartment == null) {
+			String methodName = method.getName();
+			String name = null;
+			if (this.methodLimits.containsKey(methodName)) {
+				name = methodName;
+			}
+			else {
+				// look for most specific name match
+				for (Iterator it = this.methodLimits.keySet().iterator(); it.hasNext();) {
+					String mappedName = (String) it.next();
+					if (isMatch(methodName, mappedName) && (name == null || name.length() <= mappedName.length())) {
+						name = mappedName;
+					}
+				}
+			}
+			synchronized (this.compartments) {
+				String compartmentName = (name != null ? name : DEFAULT_COMPARTMENT_NAME);
+				compartment = (Compartment) this.compartments.get(compartmentName);
+				if (compartment == null) {
+					int limit = (name != null ? ((Integer) this.methodLimits.get(name)).intValue() : this.concurrencyLimit);
+					compartment = new Compartment(compartmentName, limit, this.fair, this.waitTimes);
+					this.compartments.put(compartmentName, compartment);
+				}
+			}
+			this.compartmentCache.put(method, compartment);
+		}
+		return compartment;
+	}
+
+	/**
+	 * Return if the given method name matches the mapped name.
+	 * The default implementation checks for "xxx*" and "*xxx" matches.
+	 * Can be overridden in subclasses.
+	 * @param methodName the method name of the class
+	 * @param mappedName the name in the descriptor
+	 * @return if the names match
+	 */
+	protected boolean isMatch(String methodName, String mappedName) {
+		return (mappedName.endsWith("*") && methodName.startsWith(mappedName.substring(0, mappedName.length() - 1))) ||
+				(mappedName.startsWith("*") && methodName.endsWith(mappedName.substring(1, mappedName.length())));
+	}
+
+	private Compartment[] getCompartments() {
+		synchronized (this.compartments) {
+			return (Compartment[]) this.compartments.values().toArray(new Compartment[this.compartments.size()]);
+		}
+	}
+
+
+	//---------------------------------------------------------------------
+	// Implementation of BulkheadStats interface
+	//---------------------------------------------------------------------
+
+	public int getInFlightCount() {
+		Compartment[] compartments = getCompartments();
+		int count = 0;
+		for (int i = 0; i < compartments.length; i++) {
+			count += compartments[i].getInFlightCount();
+		}
+		return count;
+	}
+
+	public int getQueuedCount() {
+		Compartment[] compartments = getCompartments();
+		int count = 0;
+		for (int i = 0; i < compartments.length; i++) {
+			count += compartments[i].getQueuedCount();
+		}
+		return count;
+	}
+
+	public long getAcceptedCount() {
+		Compartment[] compartments = getCompartments();
+		long count = 0;
+		for (int i = 0; i < compartments.length; i++) {
+			count += compartments[i].getAcceptedCount();
+		}
+		return count;
+	}
+
+	public long getRejectedCount() {
+		Compartment[] compartments = getCompartments();
+		long count = 0;
+		for (int i = 0; i < compartments.length; i++) {
+			count += compartments[i].getRejectedCount();
+		}
+		return count;
+	}
+
+	public String getWaitTimeSummary() {
+		return this.waitTimes.getSnapshot().toString();
+	}
+
+	public long getWaitTimePercentileMillis(double percentile) {
+		return this.waitTimes.getSnapshot().getPercentile(percentile);
+	}
+
+	public String[] getCompartmentSummaries() {
+		Compartment[] compartments = getCompartments();
+		List summaries = new ArrayList(compartments.length);
+		for (int i = 0; i < compartments.length; i++) {
+			summaries.add(compartments[i].toString());
+		}
+		return (String[]) summaries.toArray(new String[summaries.size()]);
+	}
+
+	public void resetStatistics() {
+		Compartment[] compartments = getCompartments();
+		for (int i = 0; i < compartments.length; i++) {
+			compartments[i].resetStatistics();
+		}
+		this.waitTimes.reset();
+	}
+
+
+	/**
+	 * Compartment with its own concurrency limit and wait queue.
+	 * All state is guarded by the compartment itself.
+	 */
+	private static class Compartment {
+
+		private final String name;
+
+		private final int limit;
+
+		private final boolean fair;
+
+		private final LinkedList queue = new LinkedList();
+
+		private final LogLinearHistogram waitTimes;
+
+		private int inFlightCount = 0;
+
+		private long acceptedCount = 0;
+
+		private long rejectedCount = 0;
+
+		public Compartment(String name, int limit, boolean fair, LogLinearHistogram waitTimes) {
+			this.name = name;
+			this.limit = limit;
+			this.fair = fair;
+			this.waitTimes = waitTimes;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getLimit() {
+			return limit;
+		}
+
+		/**
+		 * Acquire a permit, waiting in the queue if necessary.
+		 * @return whether a permit has been acquired
+		 */
+		public synchronized boolean acquire(int maxQueueSize, long maxWait) {
+			if (this.inFlightCount < this.limit && (!this.fair || this.queue.isEmpty())) {
+				this.inFlightCount++;
+				this.acceptedCount++;
+				this.waitTimes.record(0);
+				return true;
+			}
+			if (maxWait == 0 || this.queue.size() >= maxQueueSize) {
+				this.rejectedCount++;
+				return false;
+			}
+
+			Waiter waiter = new Waiter();
+			this.queue.addLast(waiter);
+			long startTime = System.currentTimeMillis();
+			try {
+				while (!waiter.granted) {
+					if (!this.fair && this.inFlightCount < this.limit) {
+						this.inFlightCount++;
+						waiter.granted = true;
+						break;
+					}
+					long waitTime = 0;
+					if (maxWait > 0) {
+						waitTime = startTime + maxWait - System.currentTimeMillis();
+						if (waitTime <= 0) {
+							break;
+						}
+					}
+					wait(waitTime);
+				}
+			}
+			catch (InterruptedException ex) {
+				// Pass on a permit that has been handed to us in the meantime.
+				if (waiter.granted) {
+					release();
+				}
+				else {
+					this.queue.remove(waiter);
+				}
+				this.rejectedCount++;
+				Thread.currentThread().interrupt();
+				throw new BulkheadRejectedException("Interrupted while waiting for bulkhead compartment '" +
+						this.name + "'");
+			}
+
+			if (!waiter.granted) {
+				this.queue.remove(waiter);
+				this.rejectedCount++;
+				return false;
+			}
+			if (!this.fair) {
+				this.queue.remove(waiter);
+			}
+			this.acceptedCount++;
+			this.waitTimes.record(System.currentTimeMillis() - startTime);
+			return true;
+		}
+
+		/**
+		 * Release a permit, handing it to the first queued invocation in fair mode.
+		 */
+		public synchronized void release() {
+			if (this.fair && !this.queue.isEmpty()) {
+				Waiter next = (Waiter) this.queue.removeFirst();
+				next.granted = true;
+				notifyAll();
+			}
+			else {
+				this.inFlightCount--;
+				if (!this.queue.isEmpty()) {
+					notify();
+				}
+			}
+		}
+
+		public synchronized int getInFlightCount() {
+			return this.inFlightCount;
+		}
+
+		public synchronized int getQueuedCount() {
+			return this.queue.size();
+		}
+
+		public synchronized long getAcceptedCount() {
+			return this.acceptedCount;
+		}
+
+		public synchronized long getRejectedCount() {
+			return this.rejectedCount;
+		}
+
+		public synchronized void resetStatistics() {
+			this.acceptedCount = 0;
+			this.rejectedCount = 0;
+		}
+
+		public synchronized String toString() {
+			StringBuffer sb = new StringBuffer(this.name);
+			sb.append(": limit=[").append(this.limit).append("]; ");
+			sb.append("inFlight=[").append(this.inFlightCount).append("]; ");
+			sb.append("queued=[").append(this.queue.size()).append("]; ");
+			sb.append("accepted=[").append(this.acceptedCount).append("]; ");
+			sb.append("rejected=[").append(this.rejectedCount).append("]");
+			return sb.toString();
+		}
+	}
+
+
+	/**
+	 * Queue entry for an invocation waiting for a permit.
+	 */
+	private static class Waiter {
+
+		private boolean granted = false;
+	}
+
+}
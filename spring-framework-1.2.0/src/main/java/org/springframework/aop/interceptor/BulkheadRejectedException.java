@@ -0,0 +1,39 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.interceptor;
+
+import org.springframework.core.NestedRuntimeException;
+
+/**
+ * Exception thrown by BulkheadInterceptor when an invocation is rejected,
+ * either because the wait queue is full or because no permit became
+ * available within the maximum wait time.
+ *
+ * @since 1.2.1
+ * @see BulkheadInterceptor
+ */
+public class BulkheadRejectedException extends NestedRuntimeException {
+
+	/**
+	 * Create a new BulkheadRejectedException.
+	 * @param msg the detail message
+	 */
+	public BulkheadRejectedException(String msg) {
+		super(msg);
+	}
+
+}
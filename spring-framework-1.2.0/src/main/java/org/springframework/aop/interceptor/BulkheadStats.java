@@ -0,0 +1,75 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.interceptor;
+
+/**
+ * Statistics for a BulkheadInterceptor, aggregated across all of its
+ * compartments. Suitable as management interface for export via
+ * MBeanExporter with an InterfaceBasedMBeanInfoAssembler.
+ *
+ * @since 1.2.1
+ * @see BulkheadInterceptor
+ * @see org.springframework.jmx.export.assembler.InterfaceBasedMBeanInfoAssembler
+ */
+public interface BulkheadStats {
+
+	/**
+	 * Return the number of invocations currently in progress.
+	 */
+	int getInFlightCount();
+
+	/**
+	 * Return the number of invocations currently waiting for a permit.
+	 */
+	int getQueuedCount();
+
+	/**
+	 * Return the number of invocations that were granted a permit.
+	 */
+	long getAcceptedCount();
+
+	/**
+	 * Return the number of invocations that were rejected.
+	 */
+	long getRejectedCount();
+
+	/**
+	 * Return a summary of the wait times of accepted invocations in
+	 * milliseconds, with count, mean, percentiles and maximum.
+	 * @see org.springframework.util.LogLinearHistogram.Snapshot#toString
+	 */
+	String getWaitTimeSummary();
+
+	/**
+	 * Return the wait time of accepted invocations in milliseconds
+	 * at the given percentile.
+	 * @param percentile the percentile, between 0 and 100
+	 * @see org.springframework.util.LogLinearHistogram.Snapshot#getPercentile
+	 */
+	long getWaitTimePercentileMillis(double percentile);
+
+	/**
+	 * Return a human-readable summary per compartment.
+	 */
+	String[] getCompartmentSummaries();
+
+	/**
+	 * Reset the accepted and rejected counts and the wait times.
+	 */
+	void resetStatistics();
+
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.interceptor;
+
+import java.lang.reflect.Method;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+import org.springframework.core.CollectionFactory;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.LogLinearHistogram;
+
+/**
+ * AOP Alliance <code>MethodInterceptor</code> that records the latency of
+ * every invocation in a histogram per method, for reporting percentiles from
+ * p50 to p99.99. This interceptor has no effect on the intercepted method call.
+ *
+ * <p>In contrast to PerformanceMonitorInterceptor, which logs a StopWatch
+ * summary per call, recording does not allocate and does not synchronize
+ * on shared state, so this interceptor can stay active at high call rates.
+ * Latencies are measured in microseconds, via <code>System.nanoTime()</code>
+ * on JDK 1.5+ and with millisecond precision on older JDKs.
+ *
+ * <p>Exposes its statistics through the LatencyStats interface,
+ * for example to JMX via MBeanExporter.
+ *
+ * @since 1.2.1
+ * @see LogLinearHistogram
+ * @see LatencyStats
+ * @see PerformanceMonitorInterceptor
+ */
+public class LatencyMonitorInterceptor implements MethodInterceptor, LatencyStats {
+
+	private static boolean nanoTimeAvailable;
+
+	static {
+		// Checked by method rather than JdkVersion, to cover JDKs after 1.5 as well.
+		try {
+			System.class.getMethod("nanoTime", new Class[0]);
+			nanoTimeAvailable = true;
+		}
+		catch (NoSuchMethodException ex) {
+			nanoTimeAvailable = false;
+		}
+	}
+
+
+	/** Histograms by method name, sorted for reporting */
+	private final Map histograms = new TreeMap();
+
+	/** Cache of histograms, with Method as key */
+	private final Map histogramCache = CollectionFactory.createConcurrentMapIfPossible(16);
+
+
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		LogLinearHistogram histogram = getHistogram(invocation.getMethod());
+		long startTime = currentTimeNanos();
+		try {
+			return invocation.proceed();
+		}
+		finally {
+			histogram.record((currentTimeNanos() - startTime) / 1000);
+		}
+	}
+
+	/**
+	 * Return the histogram for the given method, creating it if necessary.
+	 * Overloaded methods share a histogram.
+	 */
+	private LogLinearHistogram getHistogram(Method method) {
+		LogLinearHistogram histogram = (LogLinearHistogram) this.histogramCache.get(method);
+		if (histogram == null) {
+			String methodName = ClassUtils.getQualifiedMethodName(method);
+			synchronized (this.histograms) {
+				histogram = (LogLinearHistogram) this.histograms.get(methodName);
+				if (histogram == null) {
+					histogram = new LogLinearHistogram();
+					this.histograms.put(methodName, histogram);
+				}
+			}
+			this.histogramCache.put(method, histogram);
+		}
+		return histogram;
+	}
+
+	/**
+	 * Return the histogram for the given method name.
+	 * @throws IllegalArgumentException if the method has not been invoked yet
+	 */
+	protected LogLinearHistogram getHistogram(String methodName) {
+		synchronized (this.histograms) {
+			LogLinearHistogram histogram = (LogLinearHistogram) this.histograms.get(methodName);
+			if (histogram == null) {
+				throw new IllegalArgumentException("No latencies recorded for method [" + methodName + "]");
+			}
+			return histogram;
+		}
+	}
+
+	private static long currentTimeNanos() {
+		return (nanoTimeAvailable ? Jdk15Clock.nanoTime() : System.currentTimeMillis() * 1000000);
+	}
+
+
+	//---------------------------------------------------------------------
+	// Implementation of LatencyStats interface
+	//---------------------------------------------------------------------
+
+	public String[] getMethodNames() {
+		synchronized (this.histograms) {
+			return (String[]) this.histograms.keySet().toArray(new String[this.histograms.size()]);
+		}
+	}
+
+	public String[] getLatencySummaries() {
+		return getSummaries(false);
+	}
+
+	public String[] getIntervalLatencySummaries() {
+		return getSummaries(true);
+	}
+
+	private String[] getSummaries(boolean interval) {
+		Map histograms = null;
+		synchronized (this.histograms) {
+			histograms = new TreeMap(this.histograms);
+		}
+		String[] summaries = new String[histograms.size()];
+		int i = 0;
+		for (Iterator it = histograms.entrySet().iterator(); it.hasNext(); i++) {
+			Map.Entry entry = (Map.Entry) it.next();
+			LogLinearHistogram histogram = (LogLinearHistogram) entry.getValue();
+			LogLinearHistogram.Snapshot snapshot =
+					(interval ? histogram.getIntervalSnapshot() : histogram.getSnapshot());
+			summaries[i] = entry.getKey() + ": " + snapshot;
+		}
+		return summaries;
+	}
+
+	public long getInvocationCount(String methodName) {
+		return getHistogram(methodName).getSnapshot().getCount();
+	}
+
+	public long getLatencyPercentileMicros(String methodName, double percentile) {
+		return getHistogram(methodName).getSnapshot().getPercentile(percentile);
+	}
+
+	public void resetStatistics() {
+		synchronized (this.histograms) {
+			for (Iterator it = this.histograms.values().iterator(); it.hasNext();) {
+				((LogLinearHistogram) it.next()).reset();
+			}
+		}
+	}
+
+
+	/**
+	 * Access to the JDK 1.5 high-resolution timer.
+	 * In separate inner class to avoid runtime dependency on JDK 1.5.
+	 */
+	private static abstract class Jdk15Clock {
+
+		private static long nanoTime() {
+			return System.nanoTime();
+		}
+	}
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.interceptor;
+
+/**
+ * Latency statistics per method, as recorded by a LatencyMonitorInterceptor.
+ * Suitable as management interface for export via MBeanExporter with an
+ * InterfaceBasedMBeanInfoAssembler.
+ *
+ * <p>All latencies are in microseconds. On JDKs before 1.5, they are
+ * measured with millisecond precision.
+ *
+ * @since 1.2.1
+ * @see LatencyMonitorInterceptor
+ * @see org.springframework.jmx.export.assembler.InterfaceBasedMBeanInfoAssembler
+ */
+public interface LatencyStats {
+
+	/**
+	 * Return the names of all monitored methods, in the form
+	 * "declaringClassName.methodName".
+	 */
+	String[] getMethodNames();
+
+	/**
+	 * Return a summary of the latencies recorded so far per method,
+	 * with count, mean, p50, p90, p99, p99.9, p99.99 and max.
+	 */
+	String[] getLatencySummaries();
+
+	/**
+	 * Return a summary of the latencies per method recorded since the
+	 * previous invocation of this method, for windowed monitoring.
+	 */
+	String[] getIntervalLatencySummaries();
+
+	/**
+	 * Return the number of recorded invocations of the given method.
+	 * @param methodName the method name, as returned by getMethodNames
+	 */
+	long getInvocationCount(String methodName);
+
+	/**
+	 * Return the latency of the given method at the given percentile.
+	 * @param methodName the method name, as returned by getMethodNames
+	 * @param percentile the percentile, between 0 and 100
+	 */
+	long getLatencyPercentileMicros(String methodName, double percentile);
+
+	/**
+	 * Discard all recorded latencies.
+	 */
+	void resetStatistics();
+
+}
@@ -31,6 +31,7 @@ import org.springframework.util.StopWatch;
  * @author Dmitriy Kopylenko
  * @see StopWatch
  * @see JamonPerformanceMonitorInterceptor
+ * @see LatencyMonitorInterceptor
  */
 public class PerformanceMonitorInterceptor extends AbstractTraceInterceptor {
 
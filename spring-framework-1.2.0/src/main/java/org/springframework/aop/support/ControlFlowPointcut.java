@@ -30,6 +30,7 @@ import org.springframework.core.ControlFlowFactory;
  * Note that evaluating such pointcuts is 10-15 times slower than evaluating
  * normal pointcuts, but they are useful in some cases.
  * @see ControlFlow
+ * @see ThreadLocalControlFlowPointcut
  * @author Rod Johnson
  */
 public class ControlFlowPointcut implements Pointcut, ClassFilter, MethodMatcher, Serializable {
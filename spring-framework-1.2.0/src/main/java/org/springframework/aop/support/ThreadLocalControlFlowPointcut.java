@@ -0,0 +1,182 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.support;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+import org.springframework.aop.Advisor;
+import org.springframework.aop.ClassFilter;
+import org.springframework.aop.MethodMatcher;
+import org.springframework.aop.Pointcut;
+
+/**
+ * Alternative to ControlFlowPointcut that doesn't analyze the stack trace
+ * on every evaluation. Instead, an entry advisor applied to the given class
+ * keeps track of invocations of its methods in a thread-bound counter, so that
+ * evaluating the pointcut is as cheap as reading a ThreadLocal.
+ *
+ * <p>Matches all calls below the given method in the given class, or below
+ * any method of the given class if no method name is specified, like
+ * ControlFlowPointcut does. A method counts as being in the given class if
+ * it is declared there, which corresponds to the class name shown in the
+ * stack trace.
+ *
+ * <p>Only invocations that go through an AOP proxy with the advisor returned
+ * by <code>getEntryAdvisor()</code> are tracked: the entry class needs to be
+ * proxied, and calls from within the target object itself are not seen.
+ *
+ * @since 1.2.1
+ * @see #getEntryAdvisor
+ * @see ControlFlowPointcut
+ */
+public class ThreadLocalControlFlowPointcut implements Pointcut, ClassFilter, MethodMatcher, Serializable {
+
+	private Class clazz;
+
+	private String methodName;
+
+	private int evaluations;
+
+	/** Counter of active entry invocations, as int[1] per thread */
+	private transient ThreadLocal depthHolder = new ThreadLocal();
+
+	private final Advisor entryAdvisor = new EntryAdvisor();
+
+
+	public ThreadLocalControlFlowPointcut(Class clazz) {
+		this(clazz, null);
+	}
+
+	/**
+	 * Construct a new pointcut that matches all calls below the
+	 * given method in the given class. If the method name is null,
+	 * matches all control flows below that class.
+	 * @param clazz the class to track invocations of
+	 * @param methodName the name of the method to track invocations of
+	 */
+	public ThreadLocalControlFlowPointcut(Class clazz, String methodName) {
+		this.clazz = clazz;
+		this.methodName = methodName;
+	}
+
+	/**
+	 * Return the Advisor that keeps track of entering the control flow.
+	 * Needs to be applied to proxies for objects of the given class.
+	 */
+	public Advisor getEntryAdvisor() {
+		return this.entryAdvisor;
+	}
+
+	/**
+	 * Subclasses can override this for greater filtering (and performance).
+	 */
+	public boolean matches(Class clazz) {
+		return true;
+	}
+
+	/**
+	 * Subclasses can override this if it's possible to filter out
+	 * some candidate classes.
+	 */
+	public boolean matches(Method method, Class targetClass) {
+		return true;
+	}
+
+	public boolean isRuntime() {
+		return true;
+	}
+
+	public boolean matches(Method method, Class targetClass, Object[] args) {
+		++this.evaluations;
+		int[] depth = (int[]) this.depthHolder.get();
+		return (depth != null && depth[0] > 0);
+	}
+
+	/**
+	 * It's useful to know how many times we've fired, for optimization.
+	 */
+	public int getEvaluations() {
+		return evaluations;
+	}
+
+	public ClassFilter getClassFilter() {
+		return this;
+	}
+
+	public MethodMatcher getMethodMatcher() {
+		return this;
+	}
+
+
+	//---------------------------------------------------------------------
+	// Serialization support
+	//---------------------------------------------------------------------
+
+	private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+		// Rely on default serialization, just initialize state after deserialization.
+		ois.defaultReadObject();
+		this.depthHolder = new ThreadLocal();
+	}
+
+
+	/**
+	 * Advisor that applies the EntryInterceptor to the tracked methods.
+	 */
+	private class EntryAdvisor extends StaticMethodMatcherPointcutAdvisor {
+
+		public EntryAdvisor() {
+			super(new EntryInterceptor());
+		}
+
+		public boolean matches(Method method, Class targetClass) {
+			if (methodName != null && !methodName.equals(method.getName())) {
+				return false;
+			}
+			return (AopUtils.getMostSpecificMethod(method, targetClass).getDeclaringClass() == clazz);
+		}
+	}
+
+
+	/**
+	 * Interceptor that counts the active invocations of tracked methods
+	 * for the current thread.
+	 */
+	private class EntryInterceptor implements MethodInterceptor, Serializable {
+
+		public Object invoke(MethodInvocation invocation) throws Throwable {
+			int[] depth = (int[]) depthHolder.get();
+			if (depth == null) {
+				depth = new int[1];
+				depthHolder.set(depth);
+			}
+			depth[0]++;
+			try {
+				return invocation.proceed();
+			}
+			finally {
+				depth[0]--;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.target;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Treiber stack of idle targets for ThreadAffinityPoolTargetSource,
+ * based on a JDK 1.5 AtomicReference. In a separate class to avoid
+ * runtime dependency on JDK 1.5: only loaded if ThreadAffinityPoolTargetSource
+ * detected java.util.concurrent.atomic.
+ *
+ * @since 1.2.1
+ * @see ThreadAffinityPoolTargetSource
+ */
+class AtomicIdleTargetStack implements ThreadAffinityPoolTargetSource.IdleTargetStack {
+
+	private final AtomicReference head = new AtomicReference();
+
+	public void push(ThreadAffinityPoolTargetSource.IdleTarget idle) {
+		ThreadAffinityPoolTargetSource.IdleTarget current = null;
+		do {
+			current = (ThreadAffinityPoolTargetSource.IdleTarget) this.head.get();
+			idle.next = current;
+		}
+		while (!this.head.compareAndSet(current, idle));
+	}
+
+	public ThreadAffinityPoolTargetSource.IdleTarget pop() {
+		ThreadAffinityPoolTargetSource.IdleTarget current = null;
+		do {
+			current = (ThreadAffinityPoolTargetSource.IdleTarget) this.head.get();
+			if (current == null) {
+				return null;
+			}
+		}
+		while (!this.head.compareAndSet(current, current.next));
+		return current;
+	}
+
+	public int size() {
+		int size = 0;
+		for (ThreadAffinityPoolTargetSource.IdleTarget idle =
+				(ThreadAffinityPoolTargetSource.IdleTarget) this.head.get(); idle != null; idle = idle.next) {
+			size++;
+		}
+		return size;
+	}
+
+}
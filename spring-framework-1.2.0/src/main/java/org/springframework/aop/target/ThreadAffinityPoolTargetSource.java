@@ -0,0 +1,551 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.target;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Pooling TargetSource that avoids a pool-wide lock for the common case
+ * of a thread acquiring and releasing targets in turn.
+ *
+ * <p>Each thread has an affinity slot that holds the target it released last.
+ * The next invocation on the same thread takes that target again, locking only
+ * the slot itself, which other threads touch just when stealing an idle target.
+ * Further idle targets are kept on a shared stack that is maintained via
+ * compare-and-set on JDK 1.5+, falling back to a synchronized stack on
+ * older JDKs. The pool-wide monitor is only acquired for creating targets
+ * and for waiting once the pool is exhausted.
+ *
+ * <p>Like CommonsPoolTargetSource, this TargetSource limits the number of
+ * targets to "maxSize" (non-positive for no limit) and creates targets via
+ * <code>newPrototypeInstance</code>. Callers that find the pool exhausted
+ * wait for up to "maxWait" milliseconds for a target to be released.
+ * Idle targets can be destroyed by a background eviction Timer, which also
+ * reclaims targets parked in the slots of terminated threads.
+ *
+ * @since 1.2.1
+ * @see #setMaxWait
+ * @see #setTimeBetweenEvictionRunsMillis
+ * @see #setMinEvictableIdleTimeMillis
+ * @see CommonsPoolTargetSource
+ */
+public class ThreadAffinityPoolTargetSource extends AbstractPoolingTargetSource {
+
+	private static final String ATOMIC_REFERENCE_CLASS_NAME = "java.util.concurrent.atomic.AtomicReference";
+
+	private static boolean jdk15AtomicsAvailable;
+
+	static {
+		// Checked by class rather than JdkVersion, to cover JDKs after 1.5 as well.
+		// The stack implementation itself lives in a separate class, which is
+		// only loaded if java.util.concurrent.atomic is available.
+		try {
+			Class.forName(ATOMIC_REFERENCE_CLASS_NAME);
+			jdk15AtomicsAvailable = true;
+		}
+		catch (ClassNotFoundException ex) {
+			jdk15AtomicsAvailable = false;
+		}
+	}
+
+
+	private long maxWait = -1;
+
+	private long timeBetweenEvictionRunsMillis = -1;
+
+	private long minEvictableIdleTimeMillis = 1000L * 60L * 30L;
+
+	/** Affinity slot of the current thread */
+	private final ThreadLocal currentSlot = new ThreadLocal();
+
+	/** Idle targets shared between all threads */
+	private IdleTargetStack idleTargets;
+
+	/** Monitor for creating targets, waiting and registering slots */
+	private final Object poolMonitor = new Object();
+
+	/** All registered slots, replaced on change. Guarded by poolMonitor. */
+	private AffinitySlot[] slots = new AffinitySlot[0];
+
+	/** Number of targets currently in existence. Guarded by poolMonitor. */
+	private int createdCount = 0;
+
+	/** Number of threads in the slow acquisition path. Guarded by poolMonitor. */
+	private int waitingCount = 0;
+
+	private Timer evictionTimer;
+
+
+	/**
+	 * Set the maximum number of milliseconds to wait for a target
+	 * once the pool is exhausted. A negative value (the default) means to
+	 * wait indefinitely, 0 means to fail immediately.
+	 * <p>A NoSuchElementException is thrown when the timeout elapses,
+	 * analogous to Commons Pool.
+	 */
+	public void setMaxWait(long maxWait) {
+		this.maxWait = maxWait;
+	}
+
+	/**
+	 * Return the maximum number of milliseconds to wait for a target.
+	 */
+	public long getMaxWait() {
+		return maxWait;
+	}
+
+	/**
+	 * Set the number of milliseconds between runs of the idle target evictor.
+	 * Default is -1, which means that no background eviction happens.
+	 * @see #evictIdleTargets
+	 */
+	public void setTimeBetweenEvictionRunsMillis(long timeBetweenEvictionRunsMillis) {
+		this.timeBetweenEvictionRunsMillis = timeBetweenEvictionRunsMillis;
+	}
+
+	/**
+	 * Return the number of milliseconds between runs of the idle target evictor.
+	 */
+	public long getTimeBetweenEvictionRunsMillis() {
+		return timeBetweenEvictionRunsMillis;
+	}
+
+	/**
+	 * Set the minimum number of milliseconds a target needs to be idle
+	 * before it may be evicted. Default is 30 minutes. A non-positive value
+	 * means that only targets of terminated threads get reclaimed.
+	 * @see #evictIdleTargets
+	 */
+	public void setMinEvictableIdleTimeMillis(long minEvictableIdleTimeMillis) {
+		this.minEvictableIdleTimeMillis = minEvictableIdleTimeMillis;
+	}
+
+	/**
+	 * Return the minimum number of milliseconds a target needs to be idle.
+	 */
+	public long getMinEvictableIdleTimeMillis() {
+		return minEvictableIdleTimeMillis;
+	}
+
+
+	protected final void createPool(BeanFactory beanFactory) {
+		logger.info("Creating thread affinity object pool");
+		this.idleTargets = (jdk15AtomicsAvailable ? (IdleTargetStack) new AtomicIdleTargetStack() :
+				new SynchronizedIdleTargetStack());
+		if (this.timeBetweenEvictionRunsMillis > 0) {
+			this.evictionTimer = new Timer(true);
+			this.evictionTimer.schedule(new EvictionTask(),
+					this.timeBetweenEvictionRunsMillis, this.timeBetweenEvictionRunsMillis);
+		}
+	}
+
+	/**
+	 * Take the target from the current thread's slot if available,
+	 * else an idle target from the shared stack. Only falls back to
+	 * the pool-wide monitor if both are empty.
+	 */
+	public Object getTarget() throws Exception {
+		AffinitySlot slot = getAffinitySlot();
+		Object target = slot.take();
+		if (target != null) {
+			return target;
+		}
+		IdleTarget idle = this.idleTargets.pop();
+		if (idle != null) {
+			return idle.target;
+		}
+		return obtainTarget();
+	}
+
+	/**
+	 * Park the target in the current thread's slot if that is empty and
+	 * no other thread is waiting, else put it on the shared stack.
+	 */
+	public void releaseTarget(Object target) {
+		AffinitySlot slot = getAffinitySlot();
+		if (!slot.offer(target)) {
+			this.idleTargets.push(new IdleTarget(target, System.currentTimeMillis()));
+			synchronized (this.poolMonitor) {
+				if (this.waitingCount > 0) {
+					this.poolMonitor.notify();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Return the current thread's slot, registering a new one if necessary.
+	 */
+	private AffinitySlot getAffinitySlot() {
+		AffinitySlot slot = (AffinitySlot) this.currentSlot.get();
+		if (slot == null) {
+			slot = new AffinitySlot(Thread.currentThread());
+			synchronized (this.poolMonitor) {
+				AffinitySlot[] newSlots = new AffinitySlot[this.slots.length + 1];
+				System.arraycopy(this.slots, 0, newSlots, 0, this.slots.length);
+				newSlots[this.slots.length] = slot;
+				this.slots = newSlots;
+			}
+			this.currentSlot.set(slot);
+		}
+		return slot;
+	}
+
+	/**
+	 * Obtain a target under the pool-wide monitor: steal an idle target from
+	 * another thread's slot, create a new one if below the maximum size,
+	 * or else wait for a target to be released.
+	 * @throws NoSuchElementException if no target became available in time
+	 */
+	private Object obtainTarget() throws Exception {
+		long deadline = (this.maxWait > 0 ? System.currentTimeMillis() + this.maxWait : 0);
+		synchronized (this.poolMonitor) {
+			// Announce ourselves before looking at the slots: Releasing threads
+			// check the waiting count under their slot lock, so any target that
+			// we don't find in a slot will be pushed onto the shared stack.
+			this.waitingCount++;
+			try {
+				while (true) {
+					IdleTarget idle = this.idleTargets.pop();
+					if (idle != null) {
+						return idle.target;
+					}
+					Object target = stealIdleTarget();
+					if (target != null) {
+						return target;
+					}
+					if (getMaxSize() <= 0 || this.createdCount < getMaxSize()) {
+						this.createdCount++;
+						break;
+					}
+					long waitTime = 0;
+					if (this.maxWait >= 0) {
+						waitTime = deadline - System.currentTimeMillis();
+						if (this.maxWait == 0 || waitTime <= 0) {
+							throw new NoSuchElementException(
+									"Timeout waiting for idle target: pool of maximum size " + getMaxSize() + " exhausted");
+						}
+					}
+					this.poolMonitor.wait(waitTime);
+				}
+			}
+			finally {
+				this.waitingCount--;
+			}
+		}
+
+		// Create the new target outside of the monitor.
+		boolean created = false;
+		try {
+			Object target = newPrototypeInstance();
+			created = true;
+			return target;
+		}
+		finally {
+			if (!created) {
+				synchronized (this.poolMonitor) {
+					this.createdCount--;
+					this.poolMonitor.notify();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Take an idle target from any thread's slot. Called under the pool monitor.
+	 */
+	private Object stealIdleTarget() {
+		for (int i = 0; i < this.slots.length; i++) {
+			Object target = this.slots[i].take();
+			if (target != null) {
+				return target;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Destroy all targets that have been idle for longer than the minimum
+	 * evictable idle time, and reclaim targets parked in the slots of
+	 * threads that have terminated. Invoked by the eviction Timer.
+	 * @see #setMinEvictableIdleTimeMillis
+	 * @see #setTimeBetweenEvictionRunsMillis
+	 */
+	public void evictIdleTargets() {
+		long threshold = (this.minEvictableIdleTimeMillis > 0 ?
+				System.currentTimeMillis() - this.minEvictableIdleTimeMillis : Long.MIN_VALUE);
+		List evicted = new LinkedList();
+		synchronized (this.poolMonitor) {
+			List retained = new ArrayList();
+			List liveSlots = new ArrayList(this.slots.length);
+			for (int i = 0; i < this.slots.length; i++) {
+				AffinitySlot slot = this.slots[i];
+				boolean alive = slot.isOwnerAlive();
+				IdleTarget idle = slot.takeIdleSince(alive ? threshold : Long.MAX_VALUE);
+				if (idle != null) {
+					retained.add(idle);
+				}
+				if (alive) {
+					liveSlots.add(slot);
+				}
+			}
+			this.slots = (AffinitySlot[]) liveSlots.toArray(new AffinitySlot[liveSlots.size()]);
+
+			IdleTarget idle = null;
+			while ((idle = this.idleTargets.pop()) != null) {
+				retained.add(idle);
+			}
+			for (Iterator it = retained.iterator(); it.hasNext();) {
+				idle = (IdleTarget) it.next();
+				if (idle.idleSince < threshold) {
+					evicted.add(idle.target);
+					it.remove();
+				}
+			}
+			for (int i = retained.size() - 1; i >= 0; i--) {
+				idle = (IdleTarget) retained.get(i);
+				this.idleTargets.push(new IdleTarget(idle.target, idle.idleSince));
+			}
+			this.createdCount -= evicted.size();
+			if (!retained.isEmpty() || !evicted.isEmpty()) {
+				this.poolMonitor.notifyAll();
+			}
+		}
+		if (!evicted.isEmpty() && logger.isDebugEnabled()) {
+			logger.debug("Evicting " + evicted.size() + " idle targets from pool");
+		}
+		destroyTargets(evicted);
+	}
+
+	public int getActiveCount() {
+		synchronized (this.poolMonitor) {
+			return this.createdCount - getIdleCount();
+		}
+	}
+
+	public int getIdleCount() {
+		synchronized (this.poolMonitor) {
+			int idleCount = this.idleTargets.size();
+			for (int i = 0; i < this.slots.length; i++) {
+				if (this.slots[i].hasTarget()) {
+					idleCount++;
+				}
+			}
+			return idleCount;
+		}
+	}
+
+
+	/**
+	 * Return the number of threads currently waiting for a target
+	 * in the slow acquisition path. Mainly for testing purposes.
+	 */
+	int getWaitingCount() {
+		synchronized (this.poolMonitor) {
+			return this.waitingCount;
+		}
+	}
+
+
+	//---------------------------------------------------------------------
+	// Implementation of DisposableBean interface
+	//---------------------------------------------------------------------
+
+	/**
+	 * Stop the eviction Timer and destroy all idle targets.
+	 */
+	public void destroy() {
+		logger.info("Closing thread affinity object pool");
+		List idleTargets = new LinkedList();
+		synchronized (this.poolMonitor) {
+			if (this.evictionTimer != null) {
+				this.evictionTimer.cancel();
+				this.evictionTimer = null;
+			}
+			for (int i = 0; i < this.slots.length; i++) {
+				Object target = this.slots[i].take();
+				if (target != null) {
+					idleTargets.add(target);
+				}
+			}
+			this.slots = new AffinitySlot[0];
+			IdleTarget idle = null;
+			while ((idle = this.idleTargets.pop()) != null) {
+				idleTargets.add(idle.target);
+			}
+			this.createdCount -= idleTargets.size();
+		}
+		destroyTargets(idleTargets);
+	}
+
+	private void destroyTargets(List targets) {
+		for (Iterator it = targets.iterator(); it.hasNext();) {
+			Object target = it.next();
+			if (target instanceof DisposableBean) {
+				try {
+					((DisposableBean) target).destroy();
+				}
+				catch (Exception ex) {
+					if (logger.isWarnEnabled()) {
+						logger.warn("Pooled target of class [" + target.getClass() +
+								"] threw exception from destroy() method", ex);
+					}
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Holder for the target last released by a particular thread.
+	 * Locked by its owner on every invocation, and by other threads
+	 * only when stealing an idle target.
+	 */
+	private class AffinitySlot {
+
+		private final Thread owner;
+
+		private Object target;
+
+		private long idleSince;
+
+		public AffinitySlot(Thread owner) {
+			this.owner = owner;
+		}
+
+		public boolean isOwnerAlive() {
+			return this.owner.isAlive();
+		}
+
+		public synchronized boolean hasTarget() {
+			return (this.target != null);
+		}
+
+		public synchronized Object take() {
+			Object target = this.target;
+			this.target = null;
+			return target;
+		}
+
+		public synchronized IdleTarget takeIdleSince(long time) {
+			if (this.target == null || this.idleSince >= time) {
+				return null;
+			}
+			IdleTarget idle = new IdleTarget(this.target, this.idleSince);
+			this.target = null;
+			return idle;
+		}
+
+		public synchronized boolean offer(Object target) {
+			if (this.target != null || waitingCount > 0) {
+				return false;
+			}
+			this.target = target;
+			this.idleSince = System.currentTimeMillis();
+			return true;
+		}
+	}
+
+
+	/**
+	 * Entry in the shared stack of idle targets.
+	 */
+	static class IdleTarget {
+
+		private final Object target;
+
+		private final long idleSince;
+
+		IdleTarget next;
+
+		public IdleTarget(Object target, long idleSince) {
+			this.target = target;
+			this.idleSince = idleSince;
+		}
+	}
+
+
+	/**
+	 * Stack of idle targets shared between all threads.
+	 * Entries must not be pushed more than once.
+	 * @see AtomicIdleTargetStack
+	 */
+	interface IdleTargetStack {
+
+		void push(IdleTarget idle);
+
+		IdleTarget pop();
+
+		int size();
+	}
+
+
+	/**
+	 * Synchronized stack, for JDKs without java.util.concurrent.
+	 */
+	private static class SynchronizedIdleTargetStack implements IdleTargetStack {
+
+		private IdleTarget head;
+
+		private int size = 0;
+
+		public synchronized void push(IdleTarget idle) {
+			idle.next = this.head;
+			this.head = idle;
+			this.size++;
+		}
+
+		public synchronized IdleTarget pop() {
+			IdleTarget current = this.head;
+			if (current != null) {
+				this.head = current.next;
+				this.size--;
+			}
+			return current;
+		}
+
+		public synchronized int size() {
+			return this.size;
+		}
+	}
+
+
+	/**
+	 * TimerTask that evicts idle targets.
+	 */
+	private class EvictionTask extends TimerTask {
+
+		public void run() {
+			try {
+				evictIdleTargets();
+			}
+			catch (Throwable ex) {
+				logger.warn("Could not evict idle targets", ex);
+			}
+		}
+	}
+
+}
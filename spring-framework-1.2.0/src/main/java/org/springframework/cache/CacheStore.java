@@ -0,0 +1,64 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache;
+
+/**
+ * Strategy interface for a store of cached objects, as used by
+ * CachingInterceptor. Implementations must be thread-safe.
+ *
+ * <p>Keys are usually generated from method invocations, values are
+ * method results. Neither keys nor values are ever null: callers are
+ * supposed to use marker objects for null values.
+ *
+ * @since 1.2.1
+ * @see ConcurrentLruCacheStore
+ * @see org.springframework.cache.ehcache.EhCacheStore
+ * @see org.springframework.cache.interceptor.CachingInterceptor
+ */
+public interface CacheStore {
+
+	/**
+	 * Return the value cached for the given key.
+	 * @param key the key to look up
+	 * @return the cached value, or null if none (or expired)
+	 * @throws CacheStoreException if the underlying cache failed
+	 */
+	Object get(Object key) throws CacheStoreException;
+
+	/**
+	 * Cache the given value for the given key,
+	 * replacing any value that is currently cached for it.
+	 * @param key the key to cache the value for
+	 * @param value the value to cache
+	 * @throws CacheStoreException if the underlying cache failed
+	 */
+	void put(Object key, Object value) throws CacheStoreException;
+
+	/**
+	 * Remove the value cached for the given key, if any.
+	 * @param key the key to remove
+	 * @throws CacheStoreException if the underlying cache failed
+	 */
+	void remove(Object key) throws CacheStoreException;
+
+	/**
+	 * Remove all cached values.
+	 * @throws CacheStoreException if the underlying cache failed
+	 */
+	void clear() throws CacheStoreException;
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache;
+
+import org.springframework.core.NestedRuntimeException;
+
+/**
+ * Exception thrown by CacheStore implementations
+ * if the underlying cache could not be accessed.
+ *
+ * @since 1.2.1
+ * @see CacheStore
+ */
+public class CacheStoreException extends NestedRuntimeException {
+
+	/**
+	 * Create a new CacheStoreException.
+	 * @param msg the detail message
+	 */
+	public CacheStoreException(String msg) {
+		super(msg);
+	}
+
+	/**
+	 * Create a new CacheStoreException.
+	 * @param msg the detail message
+	 * @param ex the root cause (usually from using the underlying cache)
+	 */
+	public CacheStoreException(String msg, Throwable ex) {
+		super(msg, ex);
+	}
+
+}
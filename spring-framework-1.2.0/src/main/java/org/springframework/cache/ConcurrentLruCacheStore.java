@@ -0,0 +1,229 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-process CacheStore that keeps a bounded number of entries,
+ * evicting the least recently used ones. Optionally expires entries
+ * a given number of seconds after they have been cached.
+ *
+ * <p>The store is divided into a number of segments with separate locks,
+ * so that threads accessing different keys do not block each other.
+ * Each segment evicts its least recently used entry once its share of
+ * the maximum size has been reached.
+ *
+ * <p>Suitable as a replacement for hand-written caches like a synchronized
+ * Hashtable with timestamp checks. Consider an EhCacheStore for caches
+ * that need to overflow to disk or to be managed centrally.
+ *
+ * @since 1.2.1
+ * @see #setMaxSize
+ * @see #setTimeToLive
+ * @see org.springframework.cache.ehcache.EhCacheStore
+ */
+public class ConcurrentLruCacheStore implements CacheStore {
+
+	/** Default maximum number of entries */
+	public static final int DEFAULT_MAX_SIZE = 1000;
+
+	/** Default number of separately locked segments */
+	public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+
+	private int maxSize = DEFAULT_MAX_SIZE;
+
+	private int concurrencyLevel = DEFAULT_CONCURRENCY_LEVEL;
+
+	private long timeToLiveMillis = 0;
+
+	private Segment[] segments;
+
+
+	public ConcurrentLruCacheStore() {
+		initSegments();
+	}
+
+	/**
+	 * Create a new ConcurrentLruCacheStore.
+	 * @param maxSize the maximum number of entries
+	 */
+	public ConcurrentLruCacheStore(int maxSize) {
+		setMaxSize(maxSize);
+	}
+
+	/**
+	 * Set the maximum number of entries in this store. Default is 1000.
+	 * <p>Note that changing this setting clears the store.
+	 */
+	public void setMaxSize(int maxSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("maxSize must be at least 1");
+		}
+		this.maxSize = maxSize;
+		initSegments();
+	}
+
+	/**
+	 * Return the maximum number of entries in this store.
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Set the number of separately locked segments. Default is 16.
+	 * A value of 1 results in strict least-recently-used eviction
+	 * across all entries.
+	 * <p>Note that changing this setting clears the store.
+	 */
+	public void setConcurrencyLevel(int concurrencyLevel) {
+		if (concurrencyLevel < 1) {
+			throw new IllegalArgumentException("concurrencyLevel must be at least 1");
+		}
+		this.concurrencyLevel = concurrencyLevel;
+		initSegments();
+	}
+
+	/**
+	 * Set the number of seconds after which cached entries expire.
+	 * Default is 0, keeping entries until they get evicted or removed.
+	 */
+	public void setTimeToLive(int timeToLiveSeconds) {
+		if (timeToLiveSeconds < 0) {
+			throw new IllegalArgumentException("timeToLive must not be negative");
+		}
+		this.timeToLiveMillis = timeToLiveSeconds * 1000L;
+	}
+
+	/**
+	 * Create the segments according to the current configuration.
+	 */
+	private void initSegments() {
+		int segmentCount = Math.min(this.concurrencyLevel, this.maxSize);
+		int segmentSize = this.maxSize / segmentCount;
+		int remainder = this.maxSize % segmentCount;
+		Segment[] newSegments = new Segment[segmentCount];
+		for (int i = 0; i < newSegments.length; i++) {
+			// distribute the remainder, so that the segment sizes add up to maxSize
+			newSegments[i] = new Segment(i < remainder ? segmentSize + 1 : segmentSize);
+		}
+		this.segments = newSegments;
+	}
+
+	private Segment segmentFor(Object key) {
+		Segment[] segments = this.segments;
+		int hash = key.hashCode();
+		// spread the hash, as keys often differ only in their higher bits
+		hash ^= (hash >>> 16);
+		return segments[(hash & 0x7fffffff) % segments.length];
+	}
+
+
+	public Object get(Object key) {
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			Entry entry = (Entry) segment.get(key);
+			if (entry == null) {
+				return null;
+			}
+			if (entry.expirationTime != 0 && entry.expirationTime < System.currentTimeMillis()) {
+				segment.remove(key);
+				return null;
+			}
+			return entry.value;
+		}
+	}
+
+	public void put(Object key, Object value) {
+		long expirationTime = (this.timeToLiveMillis > 0 ? System.currentTimeMillis() + this.timeToLiveMillis : 0);
+		Entry entry = new Entry(value, expirationTime);
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			segment.put(key, entry);
+		}
+	}
+
+	public void remove(Object key) {
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			segment.remove(key);
+		}
+	}
+
+	public void clear() {
+		Segment[] segments = this.segments;
+		for (int i = 0; i < segments.length; i++) {
+			synchronized (segments[i]) {
+				segments[i].clear();
+			}
+		}
+	}
+
+	/**
+	 * Return the current number of entries in this store,
+	 * including expired entries that have not been removed yet.
+	 */
+	public int getSize() {
+		Segment[] segments = this.segments;
+		int size = 0;
+		for (int i = 0; i < segments.length; i++) {
+			synchronized (segments[i]) {
+				size += segments[i].size();
+			}
+		}
+		return size;
+	}
+
+
+	/**
+	 * Access-ordered map that evicts its least recently used entry
+	 * once its maximum size has been exceeded. Guarded by itself.
+	 */
+	private static class Segment extends LinkedHashMap {
+
+		private final int maxSize;
+
+		public Segment(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		protected boolean removeEldestEntry(Map.Entry eldest) {
+			return (size() > this.maxSize);
+		}
+	}
+
+
+	/**
+	 * Cached value with its expiration time (0 for none).
+	 */
+	private static class Entry {
+
+		private final Object value;
+
+		private final long expirationTime;
+
+		public Entry(Object value, long expirationTime) {
+			this.value = value;
+			this.expirationTime = expirationTime;
+		}
+	}
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.ehcache;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.Element;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.cache.CacheStore;
+import org.springframework.cache.CacheStoreException;
+
+/**
+ * CacheStore adapter for an EHCache Cache, typically obtained
+ * through an EhCacheFactoryBean. Expiration and eviction are
+ * governed by the configuration of the Cache.
+ *
+ * <p>As EHCache requires Serializable keys and values, so does this store:
+ * non-serializable ones are rejected with an IllegalArgumentException.
+ *
+ * @since 1.2.1
+ * @see EhCacheFactoryBean
+ * @see org.springframework.cache.interceptor.CachingInterceptor
+ */
+public class EhCacheStore implements CacheStore, InitializingBean {
+
+	private Cache cache;
+
+
+	/**
+	 * Create a new EhCacheStore.
+	 * @see #setCache
+	 */
+	public EhCacheStore() {
+	}
+
+	/**
+	 * Create a new EhCacheStore.
+	 * @param cache the EHCache Cache to store objects in
+	 */
+	public EhCacheStore(Cache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Set the EHCache Cache to store objects in.
+	 */
+	public void setCache(Cache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Return the EHCache Cache that objects are stored in.
+	 */
+	public Cache getCache() {
+		return cache;
+	}
+
+	public void afterPropertiesSet() {
+		if (this.cache == null) {
+			throw new IllegalArgumentException("cache is required");
+		}
+	}
+
+
+	public Object get(Object key) {
+		try {
+			Element element = this.cache.get(toSerializable(key, "key"));
+			return (element != null ? element.getValue() : null);
+		}
+		catch (CacheException ex) {
+			throw new CacheStoreException("Could not access cache '" + this.cache.getName() + "'", ex);
+		}
+	}
+
+	public void put(Object key, Object value) {
+		this.cache.put(new Element(toSerializable(key, "key"), toSerializable(value, "value")));
+	}
+
+	public void remove(Object key) {
+		this.cache.remove(toSerializable(key, "key"));
+	}
+
+	public void clear() {
+		try {
+			this.cache.removeAll();
+		}
+		catch (IOException ex) {
+			throw new CacheStoreException("Could not clear cache '" + this.cache.getName() + "'", ex);
+		}
+	}
+
+	private Serializable toSerializable(Object obj, String description) {
+		if (!(obj instanceof Serializable)) {
+			throw new IllegalArgumentException("Cache " + description + " [" + obj + "] for cache '" +
+					this.cache.getName() + "' is not Serializable, as required by EHCache");
+		}
+		return (Serializable) obj;
+	}
+
+}
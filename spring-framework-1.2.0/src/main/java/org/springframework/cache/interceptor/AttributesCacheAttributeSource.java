@@ -0,0 +1,176 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.interceptor;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.CollectionFactory;
+import org.springframework.metadata.Attributes;
+
+/**
+ * Implementation of CacheAttributeSource that reads CacheAttribute
+ * instances from source-level metadata, via the Attributes abstraction.
+ *
+ * <p>Attributes on the most specific method of the target class take
+ * precedence, followed by the target class, the invoked (interface)
+ * method and the interface. Resolved attributes are cached per method
+ * and target class, including the absence of an attribute.
+ *
+ * @since 1.2.1
+ * @see org.springframework.metadata.Attributes
+ * @see org.springframework.metadata.commons.CommonsAttributes
+ */
+public class AttributesCacheAttributeSource implements CacheAttributeSource, InitializingBean {
+
+	/**
+	 * Canonical value held in cache to indicate no cache attribute was
+	 * found for this method, and we don't need to look again.
+	 */
+	private static final Object NULL_CACHE_ATTRIBUTE = new Object();
+
+
+	private Attributes attributes;
+
+	/**
+	 * Cache of CacheAttributes, keyed by MethodCacheKey.
+	 */
+	private final Map attributeCache = CollectionFactory.createConcurrentMapIfPossible(16);
+
+
+	/**
+	 * Create a new AttributesCacheAttributeSource.
+	 * @see #setAttributes
+	 */
+	public AttributesCacheAttributeSource() {
+	}
+
+	/**
+	 * Create a new AttributesCacheAttributeSource.
+	 * @param attributes the Attributes implementation to use
+	 */
+	public AttributesCacheAttributeSource(Attributes attributes) {
+		this.attributes = attributes;
+	}
+
+	/**
+	 * Set the Attributes implementation to use.
+	 * @see org.springframework.metadata.commons.CommonsAttributes
+	 */
+	public void setAttributes(Attributes attributes) {
+		this.attributes = attributes;
+	}
+
+	public void afterPropertiesSet() {
+		if (this.attributes == null) {
+			throw new IllegalArgumentException("'attributes' is required");
+		}
+	}
+
+
+	public CacheAttribute getCacheAttribute(Method method, Class targetClass) {
+		Object cacheKey = new MethodCacheKey(method, targetClass);
+		Object cached = this.attributeCache.get(cacheKey);
+		if (cached != null) {
+			return (cached != NULL_CACHE_ATTRIBUTE ? (CacheAttribute) cached : null);
+		}
+		CacheAttribute attr = computeCacheAttribute(method, targetClass);
+		this.attributeCache.put(cacheKey, (attr != null ? (Object) attr : NULL_CACHE_ATTRIBUTE));
+		return attr;
+	}
+
+	/**
+	 * Determine the cache attribute for the given method and target class.
+	 * @see #getCacheAttribute
+	 */
+	private CacheAttribute computeCacheAttribute(Method method, Class targetClass) {
+		// The method may be on an interface, but we need attributes from the target class.
+		Method specificMethod = AopUtils.getMostSpecificMethod(method, targetClass);
+
+		CacheAttribute attr = findCacheAttribute(this.attributes.getAttributes(specificMethod));
+		if (attr != null) {
+			return attr;
+		}
+		attr = findCacheAttribute(this.attributes.getAttributes(specificMethod.getDeclaringClass()));
+		if (attr != null) {
+			return attr;
+		}
+		if (specificMethod != method) {
+			// Fallback is to look at the original method and its class.
+			attr = findCacheAttribute(this.attributes.getAttributes(method));
+			if (attr != null) {
+				return attr;
+			}
+			return findCacheAttribute(this.attributes.getAttributes(method.getDeclaringClass()));
+		}
+		return null;
+	}
+
+	/**
+	 * Return the first CacheAttribute in the given attributes, if any.
+	 * @param atts attributes attached to a method or class (may be null)
+	 * @return the CacheAttribute, or null
+	 */
+	protected CacheAttribute findCacheAttribute(Collection atts) {
+		if (atts == null) {
+			return null;
+		}
+		for (Iterator it = atts.iterator(); it.hasNext();) {
+			Object att = it.next();
+			if (att instanceof CacheAttribute) {
+				return (CacheAttribute) att;
+			}
+		}
+		return null;
+	}
+
+
+	/**
+	 * Key for the attribute cache, combining method and target class.
+	 */
+	private static class MethodCacheKey {
+
+		private final Method method;
+
+		private final Class targetClass;
+
+		public MethodCacheKey(Method method, Class targetClass) {
+			this.method = method;
+			this.targetClass = targetClass;
+		}
+
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof MethodCacheKey)) {
+				return false;
+			}
+			MethodCacheKey otherKey = (MethodCacheKey) other;
+			return (this.method.equals(otherKey.method) && this.targetClass == otherKey.targetClass);
+		}
+
+		public int hashCode() {
+			return this.method.hashCode() * 29 + (this.targetClass != null ? this.targetClass.hashCode() : 0);
+		}
+	}
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.interceptor;
+
+import java.io.Serializable;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * Caching policy for a method: either cache its results in the given
+ * cache, or flush the given caches after the method has completed.
+ *
+ * <p>Can be used as commons-attributes metadata, e.g.
+ * <code>@@CacheAttribute("products")</code> for caching results in the
+ * "products" cache, or <code>@@CacheAttribute("products", flush=true)</code>
+ * for flushing it. The String representation as parsed by
+ * CacheAttributeEditor is "products" or "FLUSH,products" respectively.
+ *
+ * @since 1.2.1
+ * @see CacheAttributeEditor
+ * @see CachingInterceptor
+ */
+public class CacheAttribute implements Serializable {
+
+	/** Prefix for the String representation of a flush attribute */
+	public static final String FLUSH = "FLUSH";
+
+
+	private String[] cacheNames = new String[0];
+
+	private boolean flush = false;
+
+
+	/**
+	 * Create a new CacheAttribute for caching in the default cache.
+	 * @see CachingInterceptor#setDefaultCacheStore
+	 */
+	public CacheAttribute() {
+	}
+
+	/**
+	 * Create a new CacheAttribute for caching in the given cache.
+	 * @param cacheName the name of the cache
+	 */
+	public CacheAttribute(String cacheName) {
+		setCacheName(cacheName);
+	}
+
+	/**
+	 * Set the name of the cache to use.
+	 */
+	public void setCacheName(String cacheName) {
+		this.cacheNames = (cacheName != null ? new String[] {cacheName} : new String[0]);
+	}
+
+	/**
+	 * Return the name of the cache to store method results in,
+	 * or null for the default cache.
+	 */
+	public String getCacheName() {
+		return (this.cacheNames.length > 0 ? this.cacheNames[0] : null);
+	}
+
+	/**
+	 * Set the names of the caches to use. Only flush attributes
+	 * may refer to more than one cache.
+	 */
+	public void setCacheNames(String[] cacheNames) {
+		this.cacheNames = (cacheNames != null ? cacheNames : new String[0]);
+	}
+
+	/**
+	 * Return the names of the caches to use.
+	 * An empty array indicates the default cache.
+	 */
+	public String[] getCacheNames() {
+		return cacheNames;
+	}
+
+	/**
+	 * Set whether to flush the caches after the method has completed,
+	 * instead of caching method results. Default is false.
+	 */
+	public void setFlush(boolean flush) {
+		this.flush = flush;
+	}
+
+	/**
+	 * Return whether to flush the caches after the method has completed.
+	 */
+	public boolean isFlush() {
+		return flush;
+	}
+
+
+	/**
+	 * Return the String representation as parsed by CacheAttributeEditor.
+	 */
+	public String toString() {
+		String names = StringUtils.arrayToCommaDelimitedString(this.cacheNames);
+		if (this.flush) {
+			return (names.length() > 0 ? FLUSH + "," + names : FLUSH);
+		}
+		return names;
+	}
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.interceptor;
+
+import java.beans.PropertyEditorSupport;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * PropertyEditor for CacheAttribute objects. Accepts a comma-separated
+ * list of cache names, optionally preceded by "FLUSH" for a flush attribute:
+ * e.g. "products" or "FLUSH,products,prices". An empty String stands for
+ * caching in the default cache, a single "FLUSH" for flushing it.
+ *
+ * @since 1.2.1
+ * @see CacheAttribute
+ */
+public class CacheAttributeEditor extends PropertyEditorSupport {
+
+	public void setAsText(String text) throws IllegalArgumentException {
+		String[] tokens = StringUtils.commaDelimitedListToStringArray(text != null ? text : "");
+		CacheAttribute attr = new CacheAttribute();
+		List cacheNames = new ArrayList(tokens.length);
+		for (int i = 0; i < tokens.length; i++) {
+			String token = tokens[i].trim();
+			if (i == 0 && CacheAttribute.FLUSH.equals(token)) {
+				attr.setFlush(true);
+			}
+			else if (token.length() > 0) {
+				cacheNames.add(token);
+			}
+		}
+		if (!attr.isFlush() && cacheNames.size() > 1) {
+			throw new IllegalArgumentException("Invalid cache attribute [" + text +
+					"]: results can only be cached in a single cache");
+		}
+		attr.setCacheNames((String[]) cacheNames.toArray(new String[cacheNames.size()]));
+		setValue(attr);
+	}
+
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.interceptor;
+
+import java.lang.reflect.Method;
+
+/**
+ * Interface used by CachingInterceptor to determine the caching policy
+ * of a method. Implementations know how to source cache attributes,
+ * whether from configuration, metadata attributes at source level, or
+ * anywhere else.
+ *
+ * @since 1.2.1
+ * @see CachingInterceptor#setCacheAttributeSource
+ * @see NameMatchCacheAttributeSource
+ * @see AttributesCacheAttributeSource
+ */
+public interface CacheAttributeSource {
+
+	/**
+	 * Return the cache attribute for this method.
+	 * Return null if the method is neither cached nor flushes caches.
+	 * @param method the method to check
+	 * @param targetClass the target class. May be null, in which
+	 * case the declaring class of the method must be used.
+	 * @return the CacheAttribute, or null
+	 */
+	CacheAttribute getCacheAttribute(Method method, Class targetClass);
+
+}
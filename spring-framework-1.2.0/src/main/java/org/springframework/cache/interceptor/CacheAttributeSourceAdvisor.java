@@ -0,0 +1,73 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.interceptor;
+
+import java.lang.reflect.Method;
+
+import org.springframework.aop.framework.AopConfigException;
+import org.springframework.aop.support.StaticMethodMatcherPointcutAdvisor;
+import org.springframework.util.Assert;
+
+/**
+ * Advisor driven by a CacheAttributeSource, used to exclude a
+ * CachingInterceptor from methods that neither cache nor flush.
+ *
+ * <p>Because the AOP framework caches advice calculations, this is normally
+ * faster than just letting the CachingInterceptor run and find out
+ * itself that it has no work to do.
+ *
+ * @since 1.2.1
+ * @see CachingInterceptor
+ * @see CacheProxyFactoryBean
+ */
+public class CacheAttributeSourceAdvisor extends StaticMethodMatcherPointcutAdvisor {
+
+	private CacheAttributeSource cacheAttributeSource;
+
+	/**
+	 * Create a new CacheAttributeSourceAdvisor.
+	 */
+	public CacheAttributeSourceAdvisor() {
+	}
+
+	/**
+	 * Create a new CacheAttributeSourceAdvisor.
+	 * @param interceptor the caching interceptor to use for this advisor
+	 */
+	public CacheAttributeSourceAdvisor(CachingInterceptor interceptor) {
+		setCachingInterceptor(interceptor);
+	}
+
+	/**
+	 * Set the caching interceptor to use for this advisor.
+	 */
+	public void setCachingInterceptor(CachingInterceptor interceptor) {
+		setAdvice(interceptor);
+		if (interceptor.getCacheAttributeSource() == null) {
+			throw new AopConfigException(
+					"Cannot construct a CacheAttributeSourceAdvisor using a " +
+					"CachingInterceptor that has no CacheAttributeSource configured");
+		}
+		this.cacheAttributeSource = interceptor.getCacheAttributeSource();
+	}
+
+	public boolean matches(Method method, Class targetClass) {
+		Assert.notNull(this.cacheAttributeSource, "cacheAttributeSource is required");
+		return (this.cacheAttributeSource.getCacheAttribute(method, targetClass) != null);
+	}
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.interceptor;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.cache.CacheStore;
+
+/**
+ * AOP Alliance MethodInterceptor that clears the given CacheStores
+ * after each successful method invocation. Intended for use with
+ * arbitrary pointcuts, e.g. to flush caches on all "update*" methods
+ * of a service, without defining cache attributes for them.
+ *
+ * <p>Invocations that throw an exception leave the caches untouched.
+ *
+ * <p>Note that this interceptor clears the CacheStores directly: Loads that a
+ * CachingInterceptor has in progress for them may still cache their results.
+ * Use flush attributes on the CachingInterceptor itself where this matters.
+ *
+ * @since 1.2.1
+ * @see CachingInterceptor
+ * @see org.springframework.aop.support.NameMatchMethodPointcutAdvisor
+ */
+public class CacheFlushInterceptor implements MethodInterceptor, InitializingBean {
+
+	protected final Log logger = LogFactory.getLog(getClass());
+
+	private CacheStore[] cacheStores;
+
+
+	/**
+	 * Set the single CacheStore to flush.
+	 */
+	public void setCacheStore(CacheStore cacheStore) {
+		this.cacheStores = new CacheStore[] {cacheStore};
+	}
+
+	/**
+	 * Set the CacheStores to flush.
+	 */
+	public void setCacheStores(CacheStore[] cacheStores) {
+		this.cacheStores = cacheStores;
+	}
+
+	public void afterPropertiesSet() {
+		if (this.cacheStores == null || this.cacheStores.length == 0) {
+			throw new IllegalArgumentException("Either 'cacheStore' or 'cacheStores' is required");
+		}
+	}
+
+
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		Object retVal = invocation.proceed();
+		for (int i = 0; i < this.cacheStores.length; i++) {
+			this.cacheStores[i].clear();
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Flushed caches after invocation of method [" + invocation.getMethod().getName() + "]");
+		}
+		return retVal;
+	}
+
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.interceptor;
+
+import org.aopalliance.intercept.MethodInvocation;
+
+/**
+ * Strategy interface for generating the key under which
+ * the result of a method invocation is cached.
+ *
+ * @since 1.2.1
+ * @see DefaultCacheKeyGenerator
+ * @see CachingInterceptor#setCacheKeyGenerator
+ */
+public interface CacheKeyGenerator {
+
+	/**
+	 * Generate a key for the given method invocation.
+	 * Invocations that are supposed to return the same result
+	 * must lead to equal keys.
+	 * @param invocation the method invocation to generate a key for
+	 * @return the key (never null); should be Serializable
+	 * if used with a disk-based or distributed cache
+	 */
+	Object generateKey(MethodInvocation invocation);
+
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.interceptor;
+
+import java.util.Map;
+import java.util.Properties;
+
+import org.springframework.aop.Advisor;
+import org.springframework.aop.Pointcut;
+import org.springframework.aop.TargetSource;
+import org.springframework.aop.framework.ProxyConfig;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.framework.adapter.AdvisorAdapterRegistry;
+import org.springframework.aop.framework.adapter.GlobalAdvisorAdapterRegistry;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.target.SingletonTargetSource;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.cache.CacheStore;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Proxy factory bean for simplified declarative caching of method results.
+ * Analogous to TransactionProxyFactoryBean: creates a proxy for the given
+ * target with a CachingInterceptor, driven by cache attributes.
+ *
+ * <p>Typical configuration, caching the results of all "get" methods in
+ * a "products" cache and flushing it on "update" methods:
+ *
+ * <pre>
+ * &lt;bean id="productService" class="org.springframework.cache.interceptor.CacheProxyFactoryBean"&gt;
+ *   &lt;property name="target"&gt;&lt;ref bean="productServiceTarget"/&gt;&lt;/property&gt;
+ *   &lt;property name="cacheStores"&gt;
+ *     &lt;map&gt;&lt;entry key="products"&gt;&lt;ref bean="productCache"/&gt;&lt;/entry&gt;&lt;/map&gt;
+ *   &lt;/property&gt;
+ *   &lt;property name="cacheAttributes"&gt;
+ *     &lt;props&gt;
+ *       &lt;prop key="get*"&gt;products&lt;/prop&gt;
+ *       &lt;prop key="update*"&gt;FLUSH,products&lt;/prop&gt;
+ *     &lt;/props&gt;
+ *   &lt;/property&gt;
+ * &lt;/bean&gt;</pre>
+ *
+ * <p>Alternatively, use a CachingInterceptor with a standard ProxyFactoryBean,
+ * or a CacheAttributeSourceAdvisor with an auto-proxy creator.
+ *
+ * @since 1.2.1
+ * @see #setCacheAttributes
+ * @see #setCacheStores
+ * @see CachingInterceptor
+ * @see org.springframework.transaction.interceptor.TransactionProxyFactoryBean
+ */
+public class CacheProxyFactoryBean extends ProxyConfig implements FactoryBean, InitializingBean {
+
+	private final CachingInterceptor cachingInterceptor = new CachingInterceptor();
+
+	private Object target;
+
+	private Class[] proxyInterfaces;
+
+	private Pointcut pointcut;
+
+	private Object[] preInterceptors;
+
+	private Object[] postInterceptors;
+
+	private AdvisorAdapterRegistry advisorAdapterRegistry = GlobalAdvisorAdapterRegistry.getInstance();
+
+	private Object proxy;
+
+
+	/**
+	 * Set the target object, i.e. the bean to be wrapped with a caching proxy.
+	 * <p>The target may be any object, in which case a SingletonTargetSource will
+	 * be created. If it is a TargetSource, no wrapper TargetSource is created.
+	 * @see org.springframework.aop.TargetSource
+	 * @see org.springframework.aop.target.SingletonTargetSource
+	 */
+	public void setTarget(Object target) {
+		this.target = target;
+	}
+
+	/**
+	 * Specify the set of interfaces being proxied.
+	 * <p>If left null (the default), the AOP infrastructure works
+	 * out which interfaces need proxying by analyzing the target,
+	 * proxying all the interfaces that the target object implements.
+	 */
+	public void setProxyInterfaces(String[] interfaceNames) throws ClassNotFoundException {
+		this.proxyInterfaces = AopUtils.toInterfaceArray(interfaceNames);
+	}
+
+	/**
+	 * Set properties with method names as keys and cache attribute
+	 * descriptors (parsed via CacheAttributeEditor) as values.
+	 * @see CachingInterceptor#setCacheAttributes
+	 */
+	public void setCacheAttributes(Properties cacheAttributes) {
+		this.cachingInterceptor.setCacheAttributes(cacheAttributes);
+	}
+
+	/**
+	 * Set the cache attribute source which is used to find cache attributes.
+	 * @see CachingInterceptor#setCacheAttributeSource
+	 */
+	public void setCacheAttributeSource(CacheAttributeSource cacheAttributeSource) {
+		this.cachingInterceptor.setCacheAttributeSource(cacheAttributeSource);
+	}
+
+	/**
+	 * Set the CacheStores to use, with cache names as keys.
+	 * @see CachingInterceptor#setCacheStores
+	 */
+	public void setCacheStores(Map cacheStores) {
+		this.cachingInterceptor.setCacheStores(cacheStores);
+	}
+
+	/**
+	 * Set the CacheStore to use for cache attributes without cache name.
+	 * @see CachingInterceptor#setDefaultCacheStore
+	 */
+	public void setDefaultCacheStore(CacheStore defaultCacheStore) {
+		this.cachingInterceptor.setDefaultCacheStore(defaultCacheStore);
+	}
+
+	/**
+	 * Set the strategy for generating cache keys from method invocations.
+	 * @see CachingInterceptor#setCacheKeyGenerator
+	 */
+	public void setCacheKeyGenerator(CacheKeyGenerator cacheKeyGenerator) {
+		this.cachingInterceptor.setCacheKeyGenerator(cacheKeyGenerator);
+	}
+
+	/**
+	 * Set a pointcut, i.e a bean that can cause conditional invocation
+	 * of the CachingInterceptor depending on method and attributes passed.
+	 * Note: Additional interceptors are always invoked.
+	 * @see #setPreInterceptors
+	 * @see #setPostInterceptors
+	 */
+	public void setPointcut(Pointcut pointcut) {
+		this.pointcut = pointcut;
+	}
+
+	/**
+	 * Set additional interceptors (or advisors) to be applied before the
+	 * implicit caching interceptor, e.g. a PerformanceMonitorInterceptor.
+	 */
+	public void setPreInterceptors(Object[] preInterceptors) {
+		this.preInterceptors = preInterceptors;
+	}
+
+	/**
+	 * Set additional interceptors (or advisors) to be applied after the
+	 * implicit caching interceptor, i.e. only on a cache miss.
+	 */
+	public void setPostInterceptors(Object[] postInterceptors) {
+		this.postInterceptors = postInterceptors;
+	}
+
+	/**
+	 * Specify the AdvisorAdapterRegistry to use.
+	 * Default is the global AdvisorAdapterRegistry.
+	 * @see org.springframework.aop.framework.adapter.GlobalAdvisorAdapterRegistry
+	 */
+	public void setAdvisorAdapterRegistry(AdvisorAdapterRegistry advisorAdapterRegistry) {
+		this.advisorAdapterRegistry = advisorAdapterRegistry;
+	}
+
+
+	public void afterPropertiesSet() {
+		this.cachingInterceptor.afterPropertiesSet();
+
+		if (this.target == null) {
+			throw new IllegalArgumentException("'target' is required");
+		}
+
+		ProxyFactory proxyFactory = new ProxyFactory();
+
+		if (this.preInterceptors != null) {
+			for (int i = 0; i < this.preInterceptors.length; i++) {
+				proxyFactory.addAdvisor(this.advisorAdapterRegistry.wrap(this.preInterceptors[i]));
+			}
+		}
+
+		if (this.pointcut != null) {
+			Advisor advice = new DefaultPointcutAdvisor(this.pointcut, this.cachingInterceptor);
+			proxyFactory.addAdvisor(advice);
+		}
+		else {
+			// rely on default pointcut
+			proxyFactory.addAdvisor(new CacheAttributeSourceAdvisor(this.cachingInterceptor));
+		}
+
+		if (this.postInterceptors != null) {
+			for (int i = 0; i < this.postInterceptors.length; i++) {
+				proxyFactory.addAdvisor(this.advisorAdapterRegistry.wrap(this.postInterceptors[i]));
+			}
+		}
+
+		proxyFactory.copyFrom(this);
+
+		TargetSource targetSource = createTargetSource(this.target);
+		proxyFactory.setTargetSource(targetSource);
+
+		if (this.proxyInterfaces != null) {
+			proxyFactory.setInterfaces(this.proxyInterfaces);
+		}
+		else if (!isProxyTargetClass()) {
+			// Rely on AOP infrastructure to tell us what interfaces to proxy.
+			proxyFactory.setInterfaces(ClassUtils.getAllInterfacesForClass(targetSource.getTargetClass()));
+		}
+
+		this.proxy = proxyFactory.getProxy();
+	}
+
+	/**
+	 * Determine a TargetSource for the given target (or TargetSource).
+	 * @param target target. If this is an implementation of TargetSource it is
+	 * used as our TargetSource; otherwise it is wrapped in a SingletonTargetSource.
+	 * @return a TargetSource for this object
+	 */
+	protected TargetSource createTargetSource(Object target) {
+		if (target instanceof TargetSource) {
+			return (TargetSource) target;
+		}
+		else {
+			return new SingletonTargetSource(target);
+		}
+	}
+
+	public Object getObject() {
+		return this.proxy;
+	}
+
+	public Class getObjectType() {
+		if (this.proxy != null) {
+			return this.proxy.getClass();
+		}
+		else if (this.proxyInterfaces != null && this.proxyInterfaces.length == 1) {
+			return this.proxyInterfaces[0];
+		}
+		else if (this.target instanceof TargetSource) {
+			return ((TargetSource) this.target).getTargetClass();
+		}
+		else if (this.target != null) {
+			return this.target.getClass();
+		}
+		else {
+			return null;
+		}
+	}
+
+	public boolean isSingleton() {
+		return true;
+	}
+
+}
@@ -0,0 +1,364 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.interceptor;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.cache.CacheStore;
+
+/**
+ * AOP Alliance MethodInterceptor that caches method results in CacheStores,
+ * according to the CacheAttributes determined by a CacheAttributeSource.
+ * Methods without cache attribute are simply invoked.
+ *
+ * <p>A method with a caching attribute is only invoked if there is no cached
+ * result for the key generated from the invocation. Concurrent invocations
+ * with the same key wait for the first one to complete and share its result
+ * (or its exception), so that an expensive method is not invoked once per
+ * concurrent caller on a cache miss. A reentrant invocation with the same
+ * key, made by the thread that is loading the value for that key, invokes
+ * the method directly without caching its result. Null results are cached
+ * as well.
+ *
+ * <p>A method with a flush attribute is always invoked, clearing the
+ * specified caches once the method has returned successfully. Each flush
+ * starts a new generation of the affected caches: The result of a load
+ * that started before the flush will be returned to its callers, but not
+ * be cached, as it might have been computed from outdated state.
+ *
+ * <p>Typically used through a CacheProxyFactoryBean, or as advice of a
+ * CacheAttributeSourceAdvisor for auto-proxying.
+ *
+ * @since 1.2.1
+ * @see CacheProxyFactoryBean
+ * @see CacheAttributeSourceAdvisor
+ * @see org.springframework.cache.ConcurrentLruCacheStore
+ * @see org.springframework.cache.ehcache.EhCacheStore
+ */
+public class CachingInterceptor implements MethodInterceptor, InitializingBean {
+
+	/** Marker stored in place of a null method result */
+	private static final Object NULL_VALUE = new NullValue();
+
+
+	protected final Log logger = LogFactory.getLog(getClass());
+
+	private CacheAttributeSource cacheAttributeSource;
+
+	private Map cacheStores = new HashMap();
+
+	private CacheStore defaultCacheStore;
+
+	private CacheKeyGenerator cacheKeyGenerator = new DefaultCacheKeyGenerator();
+
+	/** Loads in progress, keyed by LoadKey */
+	private final InFlightRegistry loadsInProgress = new InFlightRegistry();
+
+	/** FlushGeneration per CacheStore */
+	private final Map flushGenerations = new HashMap();
+
+
+	/**
+	 * Set the cache attribute source which is used to find cache
+	 * attributes for methods.
+	 * @see NameMatchCacheAttributeSource
+	 * @see AttributesCacheAttributeSource
+	 */
+	public void setCacheAttributeSource(CacheAttributeSource cacheAttributeSource) {
+		this.cacheAttributeSource = cacheAttributeSource;
+	}
+
+	/**
+	 * Return the cache attribute source.
+	 */
+	public CacheAttributeSource getCacheAttributeSource() {
+		return cacheAttributeSource;
+	}
+
+	/**
+	 * Set properties with method names as keys and cache attribute
+	 * descriptors (parsed via CacheAttributeEditor) as values:
+	 * e.g. key = "get*", value = "products".
+	 * <p>Note: Method names are always applied to the target class,
+	 * no matter if defined in an interface or the class itself.
+	 * <p>Internally, a NameMatchCacheAttributeSource will be
+	 * created from the given properties.
+	 * @see NameMatchCacheAttributeSource
+	 * @see CacheAttributeEditor
+	 */
+	public void setCacheAttributes(Properties cacheAttributes) {
+		NameMatchCacheAttributeSource cas = new NameMatchCacheAttributeSource();
+		cas.setProperties(cacheAttributes);
+		this.cacheAttributeSource = cas;
+	}
+
+	/**
+	 * Set the CacheStores to use, with cache names as keys
+	 * and CacheStore instances as values.
+	 * @see CacheAttribute#getCacheNames
+	 */
+	public void setCacheStores(Map cacheStores) {
+		this.cacheStores = (cacheStores != null ? cacheStores : new HashMap());
+	}
+
+	/**
+	 * Set the CacheStore to use for cache attributes that
+	 * do not specify a cache name.
+	 */
+	public void setDefaultCacheStore(CacheStore defaultCacheStore) {
+		this.defaultCacheStore = defaultCacheStore;
+	}
+
+	/**
+	 * Set the strategy for generating cache keys from method invocations.
+	 * Default is a DefaultCacheKeyGenerator.
+	 * @see DefaultCacheKeyGenerator
+	 */
+	public void setCacheKeyGenerator(CacheKeyGenerator cacheKeyGenerator) {
+		this.cacheKeyGenerator = cacheKeyGenerator;
+	}
+
+	public void afterPropertiesSet() {
+		if (this.cacheAttributeSource == null) {
+			throw new IllegalArgumentException(
+					"Either 'cacheAttributeSource' or 'cacheAttributes' is required");
+		}
+		if (this.cacheStores.isEmpty() && this.defaultCacheStore == null) {
+			throw new IllegalArgumentException("Either 'cacheStores' or 'defaultCacheStore' is required");
+		}
+		if (this.cacheKeyGenerator == null) {
+			throw new IllegalArgumentException("cacheKeyGenerator is required");
+		}
+	}
+
+
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		Class targetClass = (invocation.getThis() != null ? invocation.getThis().getClass() : null);
+		CacheAttribute attr = this.cacheAttributeSource.getCacheAttribute(invocation.getMethod(), targetClass);
+		if (attr == null) {
+			return invocation.proceed();
+		}
+
+		if (attr.isFlush()) {
+			Object retVal = invocation.proceed();
+			flushCaches(attr);
+			return retVal;
+		}
+
+		CacheStore cacheStore = getCacheStore(attr.getCacheName());
+		Object key = this.cacheKeyGenerator.generateKey(invocation);
+		Object value = cacheStore.get(key);
+		if (value != null) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Returning cached result for key [" + key + "]");
+			}
+			return fromStoreValue(value);
+		}
+		return loadValue(invocation, cacheStore, key);
+	}
+
+	/**
+	 * Invoke the method and cache its result, unless another thread is
+	 * already doing so for the same key: in that case, wait for its result.
+	 */
+	private Object loadValue(MethodInvocation invocation, CacheStore cacheStore, Object key) throws Throwable {
+		LoadKey loadKey = new LoadKey(cacheStore, key);
+		InFlightRegistry.InFlight load = this.loadsInProgress.join(loadKey);
+		if (load == null) {
+			// Reentrant invocation for the same key: waiting would deadlock.
+			return invocation.proceed();
+		}
+		if (!load.isLeader()) {
+			load.await(-1);
+			return fromStoreValue(load.getResult());
+		}
+
+		try {
+			// Check again: a load for this key might just have completed.
+			Object value = cacheStore.get(key);
+			if (value == null) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Invoking method for uncached key [" + key + "]");
+				}
+				FlushGeneration flushGeneration = getFlushGeneration(cacheStore);
+				long generation = flushGeneration.getGeneration();
+				value = toStoreValue(invocation.proceed());
+				if (!flushGeneration.putIfNotFlushedSince(generation, cacheStore, key, value) &&
+						logger.isDebugEnabled()) {
+					logger.debug("Not caching result for key [" + key + "]: cache has been flushed during load");
+				}
+			}
+			load.setResult(value);
+			return fromStoreValue(value);
+		}
+		catch (Throwable ex) {
+			load.setFailure(ex);
+			throw ex;
+		}
+		finally {
+			this.loadsInProgress.remove(loadKey);
+		}
+	}
+
+	/**
+	 * Clear the caches specified by the given flush attribute.
+	 */
+	private void flushCaches(CacheAttribute attr) {
+		String[] cacheNames = attr.getCacheNames();
+		if (cacheNames.length == 0) {
+			flushCache(getCacheStore(null));
+		}
+		for (int i = 0; i < cacheNames.length; i++) {
+			flushCache(getCacheStore(cacheNames[i]));
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Flushed caches for attribute [" + attr + "]");
+		}
+	}
+
+	/**
+	 * Clear the given CacheStore, starting a new flush generation for it.
+	 */
+	private void flushCache(CacheStore cacheStore) {
+		getFlushGeneration(cacheStore).flush(cacheStore);
+	}
+
+	/**
+	 * Return the FlushGeneration for the given CacheStore, creating it on first access.
+	 */
+	private FlushGeneration getFlushGeneration(CacheStore cacheStore) {
+		synchronized (this.flushGenerations) {
+			FlushGeneration flushGeneration = (FlushGeneration) this.flushGenerations.get(cacheStore);
+			if (flushGeneration == null) {
+				flushGeneration = new FlushGeneration();
+				this.flushGenerations.put(cacheStore, flushGeneration);
+			}
+			return flushGeneration;
+		}
+	}
+
+	/**
+	 * Return the CacheStore with the given name.
+	 * @param cacheName the name of the cache, or null for the default cache
+	 * @return the CacheStore (never null)
+	 * @throws IllegalStateException if no such CacheStore is configured
+	 */
+	protected CacheStore getCacheStore(String cacheName) throws IllegalStateException {
+		if (cacheName == null) {
+			if (this.defaultCacheStore == null) {
+				throw new IllegalStateException("No default CacheStore configured");
+			}
+			return this.defaultCacheStore;
+		}
+		CacheStore cacheStore = (CacheStore) this.cacheStores.get(cacheName);
+		if (cacheStore == null) {
+			throw new IllegalStateException("No CacheStore configured for cache name '" + cacheName + "'");
+		}
+		return cacheStore;
+	}
+
+	private Object toStoreValue(Object value) {
+		return (value != null ? value : NULL_VALUE);
+	}
+
+	private Object fromStoreValue(Object value) {
+		return (value != NULL_VALUE ? value : null);
+	}
+
+
+	/**
+	 * Counter for the flushes of a CacheStore. Flushing and storing a loaded
+	 * value are serialized, so that a flush can not slip in between checking
+	 * the generation and putting the value.
+	 */
+	private static class FlushGeneration {
+
+		private long generation = 0;
+
+		public synchronized long getGeneration() {
+			return this.generation;
+		}
+
+		public synchronized void flush(CacheStore cacheStore) {
+			this.generation++;
+			cacheStore.clear();
+		}
+
+		public synchronized boolean putIfNotFlushedSince(
+				long generation, CacheStore cacheStore, Object key, Object value) {
+
+			if (generation != this.generation) {
+				return false;
+			}
+			cacheStore.put(key, value);
+			return true;
+		}
+	}
+
+
+	/**
+	 * Key for a load in progress, combining CacheStore and cache key.
+	 */
+	private static class LoadKey {
+
+		private final CacheStore cacheStore;
+
+		private final Object key;
+
+		public LoadKey(CacheStore cacheStore, Object key) {
+			this.cacheStore = cacheStore;
+			this.key = key;
+		}
+
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof LoadKey)) {
+				return false;
+			}
+			LoadKey otherKey = (LoadKey) other;
+			return (this.cacheStore == otherKey.cacheStore && this.key.equals(otherKey.key));
+		}
+
+		public int hashCode() {
+			return System.identityHashCode(this.cacheStore) * 29 + this.key.hashCode();
+		}
+	}
+
+
+	/**
+	 * Marker for a cached null value. Resolves to the canonical
+	 * instance when read back from a disk-based cache.
+	 */
+	private static class NullValue implements Serializable {
+
+		private Object readResolve() {
+			return NULL_VALUE;
+		}
+	}
+
+}
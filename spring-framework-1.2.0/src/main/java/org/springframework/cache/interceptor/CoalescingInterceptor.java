@@ -0,0 +1,284 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.interceptor;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * AOP Alliance MethodInterceptor that coalesces concurrent invocations with
+ * equal keys into a single invocation of the target ("single flight"): while
+ * an invocation is in progress, further invocations with the same key wait
+ * for it to complete and share its result or its exception.
+ *
+ * <p>In contrast to the CachingInterceptor, nothing is retained once the
+ * invocation in progress has completed: the next invocation for the same key
+ * will invoke the target again. This makes coalescing safe for data that
+ * must never be stale, while still protecting a resource like the database
+ * from a burst of identical queries. Only apply it to idempotent methods
+ * whose result may be shared between callers; mutable results are handed
+ * to all waiting callers as the same instance.
+ *
+ * <p>Keys are generated by a CacheKeyGenerator, by default from target class,
+ * method signature and arguments. A maximum wait time can be specified:
+ * a caller that has waited for that long invokes the target itself.
+ * A reentrant invocation with the same key, made by the thread that is
+ * already invoking the target for that key, invokes the target directly.
+ *
+ * <p>Exposes invocation and coalescing counts as well as the resulting
+ * collapse ratios through the CoalescingStats interface, for example
+ * to JMX via MBeanExporter.
+ *
+ * @since 1.2.1
+ * @see #setKeyGenerator
+ * @see #setMaxWait
+ * @see CachingInterceptor
+ */
+public class CoalescingInterceptor implements MethodInterceptor, CoalescingStats, InitializingBean {
+
+	protected final Log logger = LogFactory.getLog(getClass());
+
+	private CacheKeyGenerator keyGenerator = new DefaultCacheKeyGenerator();
+
+	private long maxWait = -1;
+
+	/** Invocations in progress, keyed by invocation key */
+	private final InFlightRegistry flightsInProgress = new InFlightRegistry();
+
+	/** Counts per method name, sorted for reporting */
+	private final Map methodCounts = new TreeMap();
+
+
+	/**
+	 * Set the strategy for generating keys from method invocations.
+	 * Invocations with equal keys are coalesced.
+	 * Default is a DefaultCacheKeyGenerator.
+	 * @see DefaultCacheKeyGenerator
+	 */
+	public void setKeyGenerator(CacheKeyGenerator keyGenerator) {
+		this.keyGenerator = keyGenerator;
+	}
+
+	/**
+	 * Set the maximum number of milliseconds that an invocation waits for
+	 * an invocation in progress with the same key. A negative value (the
+	 * default) means to wait indefinitely, 0 means to never wait: every
+	 * invocation that finds another one in progress invokes the target itself.
+	 */
+	public void setMaxWait(long maxWait) {
+		this.maxWait = maxWait;
+	}
+
+	public void afterPropertiesSet() {
+		if (this.keyGenerator == null) {
+			throw new IllegalArgumentException("keyGenerator is required");
+		}
+	}
+
+
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		Object key = this.keyGenerator.generateKey(invocation);
+		MethodCounts counts = getMethodCounts(invocation.getMethod().getName());
+		InFlightRegistry.InFlight flight = this.flightsInProgress.join(key);
+		if (flight == null) {
+			// Reentrant invocation for the same key: waiting would deadlock.
+			counts.increment(false, false);
+			return invocation.proceed();
+		}
+
+		if (flight.isLeader()) {
+			counts.increment(false, false);
+			try {
+				Object retVal = invocation.proceed();
+				flight.setResult(retVal);
+				return retVal;
+			}
+			catch (Throwable ex) {
+				flight.setFailure(ex);
+				throw ex;
+			}
+			finally {
+				this.flightsInProgress.remove(key);
+			}
+		}
+
+		if (flight.await(this.maxWait)) {
+			counts.increment(true, false);
+			if (logger.isDebugEnabled()) {
+				logger.debug("Sharing result of invocation in progress for key [" + key + "]");
+			}
+			return flight.getResult();
+		}
+		counts.increment(false, true);
+		if (logger.isDebugEnabled()) {
+			logger.debug("Gave up waiting for invocation in progress for key [" + key + "]");
+		}
+		return invocation.proceed();
+	}
+
+	/**
+	 * Return the counts for the given method name, creating them if necessary.
+	 */
+	private MethodCounts getMethodCounts(String methodName) {
+		synchronized (this.methodCounts) {
+			MethodCounts counts = (MethodCounts) this.methodCounts.get(methodName);
+			if (counts == null) {
+				counts = new MethodCounts();
+				this.methodCounts.put(methodName, counts);
+			}
+			return counts;
+		}
+	}
+
+	/**
+	 * Return a snapshot of the counts for all methods.
+	 */
+	private MethodCounts[] getAllMethodCounts() {
+		synchronized (this.methodCounts) {
+			return (MethodCounts[]) this.methodCounts.values().toArray(new MethodCounts[this.methodCounts.size()]);
+		}
+	}
+
+
+	//---------------------------------------------------------------------
+	// Implementation of CoalescingStats interface
+	//---------------------------------------------------------------------
+
+	public int getInFlightCount() {
+		return this.flightsInProgress.size();
+	}
+
+	public long getInvocationCount() {
+		MethodCounts[] all = getAllMethodCounts();
+		long total = 0;
+		for (int i = 0; i < all.length; i++) {
+			total += all[i].getInvocationCount();
+		}
+		return total;
+	}
+
+	public long getTargetInvocationCount() {
+		return getInvocationCount() - getCoalescedCount();
+	}
+
+	public long getCoalescedCount() {
+		MethodCounts[] all = getAllMethodCounts();
+		long total = 0;
+		for (int i = 0; i < all.length; i++) {
+			total += all[i].getCoalescedCount();
+		}
+		return total;
+	}
+
+	public long getTimeoutCount() {
+		MethodCounts[] all = getAllMethodCounts();
+		long total = 0;
+		for (int i = 0; i < all.length; i++) {
+			total += all[i].getTimeoutCount();
+		}
+		return total;
+	}
+
+	public double getCollapseRatio() {
+		MethodCounts[] all = getAllMethodCounts();
+		long invocations = 0;
+		long coalesced = 0;
+		for (int i = 0; i < all.length; i++) {
+			synchronized (all[i]) {
+				invocations += all[i].getInvocationCount();
+				coalesced += all[i].getCoalescedCount();
+			}
+		}
+		return (invocations > 0 ? (double) coalesced / invocations : 0);
+	}
+
+	public String[] getMethodNames() {
+		synchronized (this.methodCounts) {
+			return (String[]) this.methodCounts.keySet().toArray(new String[this.methodCounts.size()]);
+		}
+	}
+
+	public double getCollapseRatio(String methodName) {
+		MethodCounts counts = null;
+		synchronized (this.methodCounts) {
+			counts = (MethodCounts) this.methodCounts.get(methodName);
+		}
+		return (counts != null ? counts.getCollapseRatio() : 0);
+	}
+
+	public void resetStatistics() {
+		synchronized (this.methodCounts) {
+			for (Iterator it = this.methodCounts.values().iterator(); it.hasNext();) {
+				((MethodCounts) it.next()).reset();
+			}
+		}
+	}
+
+
+	/**
+	 * Invocation counts for a single method name.
+	 */
+	private static class MethodCounts {
+
+		private long invocationCount;
+
+		private long coalescedCount;
+
+		private long timeoutCount;
+
+		public synchronized void increment(boolean coalesced, boolean timedOut) {
+			this.invocationCount++;
+			if (coalesced) {
+				this.coalescedCount++;
+			}
+			if (timedOut) {
+				this.timeoutCount++;
+			}
+		}
+
+		public synchronized long getInvocationCount() {
+			return this.invocationCount;
+		}
+
+		public synchronized long getCoalescedCount() {
+			return this.coalescedCount;
+		}
+
+		public synchronized long getTimeoutCount() {
+			return this.timeoutCount;
+		}
+
+		public synchronized double getCollapseRatio() {
+			return (this.invocationCount > 0 ? (double) this.coalescedCount / this.invocationCount : 0);
+		}
+
+		public synchronized void reset() {
+			this.invocationCount = 0;
+			this.coalescedCount = 0;
+			this.timeoutCount = 0;
+		}
+	}
+
+}
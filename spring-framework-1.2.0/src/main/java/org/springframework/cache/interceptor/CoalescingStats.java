@@ -0,0 +1,81 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.interceptor;
+
+/**
+ * Statistics for a CoalescingInterceptor. Suitable as management interface
+ * for export via MBeanExporter with an InterfaceBasedMBeanInfoAssembler.
+ *
+ * @since 1.2.1
+ * @see CoalescingInterceptor
+ * @see org.springframework.jmx.export.assembler.InterfaceBasedMBeanInfoAssembler
+ */
+public interface CoalescingStats {
+
+	/**
+	 * Return the number of invocations currently in progress
+	 * on the target, one per key.
+	 */
+	int getInFlightCount();
+
+	/**
+	 * Return the total number of intercepted invocations.
+	 */
+	long getInvocationCount();
+
+	/**
+	 * Return the number of invocations that were passed on to the target.
+	 */
+	long getTargetInvocationCount();
+
+	/**
+	 * Return the number of invocations that shared the result
+	 * of an invocation in progress instead of invoking the target.
+	 */
+	long getCoalescedCount();
+
+	/**
+	 * Return the number of invocations that gave up waiting for an
+	 * invocation in progress and invoked the target themselves.
+	 */
+	long getTimeoutCount();
+
+	/**
+	 * Return the ratio of coalesced invocations to all invocations,
+	 * between 0 (no invocation coalesced) and 1.
+	 */
+	double getCollapseRatio();
+
+	/**
+	 * Return the names of the methods invoked so far.
+	 */
+	String[] getMethodNames();
+
+	/**
+	 * Return the collapse ratio for the given method.
+	 * @param methodName the name of the method
+	 * @return the ratio, or 0 if the method hasn't been invoked
+	 * @see #getCollapseRatio()
+	 */
+	double getCollapseRatio(String methodName);
+
+	/**
+	 * Reset all counts.
+	 */
+	void resetStatistics();
+
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.interceptor;
+
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.Map;
+
+import org.aopalliance.intercept.MethodInvocation;
+
+import org.springframework.core.CollectionFactory;
+import org.springframework.util.ObjectUtils;
+
+/**
+ * Default CacheKeyGenerator implementation, combining the target class,
+ * the method signature and the arguments of an invocation. Array arguments
+ * are compared by content.
+ *
+ * <p>The generated keys are Serializable as long as the arguments are,
+ * so they are suitable for disk-based caches as well.
+ *
+ * @since 1.2.1
+ */
+public class DefaultCacheKeyGenerator implements CacheKeyGenerator {
+
+	/** Method signature Strings, keyed by Method */
+	private final Map signatureCache = CollectionFactory.createConcurrentMapIfPossible(16);
+
+
+	public Object generateKey(MethodInvocation invocation) {
+		Method method = invocation.getMethod();
+		String signature = (String) this.signatureCache.get(method);
+		if (signature == null) {
+			signature = buildSignature(method);
+			this.signatureCache.put(method, signature);
+		}
+		Object target = invocation.getThis();
+		String className = (target != null ? target.getClass().getName() : null);
+		return new InvocationKey(className, signature, invocation.getArguments());
+	}
+
+	/**
+	 * Build a String that identifies the given method,
+	 * including its parameter types.
+	 */
+	protected String buildSignature(Method method) {
+		StringBuffer buf = new StringBuffer(method.getName());
+		buf.append('(');
+		Class[] paramTypes = method.getParameterTypes();
+		for (int i = 0; i < paramTypes.length; i++) {
+			if (i > 0) {
+				buf.append(',');
+			}
+			buf.append(paramTypes[i].getName());
+		}
+		buf.append(')');
+		return buf.toString();
+	}
+
+
+	/**
+	 * Key for a method invocation. Compares arguments by content if they are arrays.
+	 */
+	private static class InvocationKey implements Serializable {
+
+		private final String className;
+
+		private final String signature;
+
+		private final Object[] arguments;
+
+		private final int hashCode;
+
+		public InvocationKey(String className, String signature, Object[] arguments) {
+			this.className = className;
+			this.signature = signature;
+			this.arguments = (arguments != null ? arguments : new Object[0]);
+			int hash = (className != null ? className.hashCode() : 0) * 29 + signature.hashCode();
+			for (int i = 0; i < this.arguments.length; i++) {
+				hash = hash * 29 + argumentHashCode(this.arguments[i]);
+			}
+			this.hashCode = hash;
+		}
+
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof InvocationKey)) {
+				return false;
+			}
+			InvocationKey otherKey = (InvocationKey) other;
+			if (this.hashCode != otherKey.hashCode || !this.signature.equals(otherKey.signature) ||
+					!ObjectUtils.nullSafeEquals(this.className, otherKey.className) ||
+					this.arguments.length != otherKey.arguments.length) {
+				return false;
+			}
+			for (int i = 0; i < this.arguments.length; i++) {
+				if (!argumentEquals(this.arguments[i], otherKey.arguments[i])) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		public int hashCode() {
+			return this.hashCode;
+		}
+
+		public String toString() {
+			StringBuffer buf = new StringBuffer();
+			buf.append(this.className).append('.').append(this.signature).append('[');
+			for (int i = 0; i < this.arguments.length; i++) {
+				if (i > 0) {
+					buf.append(',');
+				}
+				buf.append(this.arguments[i]);
+			}
+			buf.append(']');
+			return buf.toString();
+		}
+
+		private static boolean argumentEquals(Object arg1, Object arg2) {
+			if (arg1 == arg2) {
+				return true;
+			}
+			if (arg1 == null || arg2 == null) {
+				return false;
+			}
+			if (arg1.getClass().isArray() && arg2.getClass().isArray()) {
+				Object[] arr1 = toArray(arg1);
+				Object[] arr2 = toArray(arg2);
+				if (arg1.getClass() != arg2.getClass() || arr1.length != arr2.length) {
+					return false;
+				}
+				for (int i = 0; i < arr1.length; i++) {
+					if (!argumentEquals(arr1[i], arr2[i])) {
+						return false;
+					}
+				}
+				return true;
+			}
+			return arg1.equals(arg2);
+		}
+
+		private static int argumentHashCode(Object arg) {
+			if (arg == null) {
+				return 0;
+			}
+			if (arg.getClass().isArray()) {
+				Object[] arr = toArray(arg);
+				int hash = arr.length;
+				for (int i = 0; i < arr.length; i++) {
+					hash = hash * 29 + argumentHashCode(arr[i]);
+				}
+				return hash;
+			}
+			return arg.hashCode();
+		}
+
+		private static Object[] toArray(Object array) {
+			return (array instanceof Object[] ? (Object[]) array : ObjectUtils.toObjectArray(array));
+		}
+	}
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.interceptor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Registry of invocations in progress, keyed by invocation key, for letting
+ * concurrent invocations with equal keys wait for the first one and share
+ * its outcome. Used by CachingInterceptor for loads on a cache miss and by
+ * CoalescingInterceptor for coalescing invocations.
+ *
+ * <p>The thread that registers an invocation is its leader: it invokes the
+ * target, completes the invocation with the result or the exception, and
+ * removes it from the registry. An invocation with the same key by the
+ * leader thread itself (for example a recursive call through the proxy)
+ * is reentrant: it must invoke the target directly, as waiting for its own
+ * invocation would deadlock.
+ *
+ * @since 1.2.1
+ * @see CachingInterceptor
+ * @see CoalescingInterceptor
+ */
+class InFlightRegistry {
+
+	/** Invocations in progress, keyed by invocation key */
+	private final Map inFlight = new HashMap();
+
+
+	/**
+	 * Return the invocation in progress for the given key, or register a new
+	 * one with the current thread as leader if there is none.
+	 * @param key the invocation key
+	 * @return the invocation to wait for, or a new one that the current thread
+	 * leads (see <code>InFlight.isLeader()</code>), or null if the current
+	 * thread already leads an invocation for the given key (a reentrant call)
+	 */
+	public InFlight join(Object key) {
+		synchronized (this.inFlight) {
+			InFlight flight = (InFlight) this.inFlight.get(key);
+			if (flight == null) {
+				flight = new InFlight();
+				this.inFlight.put(key, flight);
+				return flight;
+			}
+			return (flight.isLeader() ? null : flight);
+		}
+	}
+
+	/**
+	 * Remove the invocation for the given key. To be called by its leader
+	 * once the invocation has been completed.
+	 */
+	public void remove(Object key) {
+		synchronized (this.inFlight) {
+			this.inFlight.remove(key);
+		}
+	}
+
+	/**
+	 * Return the number of invocations in progress.
+	 */
+	public int size() {
+		synchronized (this.inFlight) {
+			return this.inFlight.size();
+		}
+	}
+
+
+	/**
+	 * Holder for the outcome of an invocation in progress.
+	 * Invocations with the same key wait on it.
+	 */
+	public static class InFlight {
+
+		private final Thread leaderThread = Thread.currentThread();
+
+		private boolean done = false;
+
+		private Object result;
+
+		private Throwable failure;
+
+		/**
+		 * Return whether the current thread leads this invocation.
+		 */
+		public boolean isLeader() {
+			return (Thread.currentThread() == this.leaderThread);
+		}
+
+		public synchronized void setResult(Object result) {
+			this.result = result;
+			this.done = true;
+			notifyAll();
+		}
+
+		public synchronized void setFailure(Throwable failure) {
+			this.failure = failure;
+			this.done = true;
+			notifyAll();
+		}
+
+		/**
+		 * Wait for the invocation to complete.
+		 * @param maxWait the maximum number of milliseconds to wait,
+		 * or a negative value to wait indefinitely
+		 * @return whether the invocation has completed
+		 */
+		public synchronized boolean await(long maxWait) throws InterruptedException {
+			if (maxWait < 0) {
+				while (!this.done) {
+					wait();
+				}
+				return true;
+			}
+			long deadline = System.currentTimeMillis() + maxWait;
+			long remaining = maxWait;
+			while (!this.done && remaining > 0) {
+				wait(remaining);
+				remaining = deadline - System.currentTimeMillis();
+			}
+			return this.done;
+		}
+
+		/**
+		 * Return the result of the completed invocation,
+		 * or rethrow its exception.
+		 */
+		public synchronized Object getResult() throws Throwable {
+			if (this.failure != null) {
+				throw this.failure;
+			}
+			return this.result;
+		}
+	}
+
+}
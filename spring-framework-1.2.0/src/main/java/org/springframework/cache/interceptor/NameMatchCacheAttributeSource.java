@@ -0,0 +1,137 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.interceptor;
+
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Simple implementation of CacheAttributeSource that
+ * allows attributes to be matched by registered name.
+ *
+ * @since 1.2.1
+ * @see #isMatch
+ * @see CacheAttributeEditor
+ */
+public class NameMatchCacheAttributeSource implements CacheAttributeSource, Serializable {
+
+	/** Static for optimal serialization */
+	protected static final Log logger = LogFactory.getLog(NameMatchCacheAttributeSource.class);
+
+	/** Keys are method names; values are CacheAttributes */
+	private Map nameMap = new HashMap();
+
+
+	/**
+	 * Set a name/attribute map, consisting of method names
+	 * (e.g. "myMethod") and CacheAttribute instances
+	 * (or Strings to be converted to CacheAttribute instances).
+	 * @see CacheAttribute
+	 * @see CacheAttributeEditor
+	 */
+	public void setNameMap(Map nameMap) {
+		CacheAttributeEditor editor = new CacheAttributeEditor();
+		for (Iterator it = nameMap.entrySet().iterator(); it.hasNext();) {
+			Map.Entry entry = (Map.Entry) it.next();
+			String name = (String) entry.getKey();
+
+			// Check whether we need to convert from String to CacheAttribute.
+			CacheAttribute attr = null;
+			if (entry.getValue() instanceof CacheAttribute) {
+				attr = (CacheAttribute) entry.getValue();
+			}
+			else {
+				editor.setAsText(entry.getValue().toString());
+				attr = (CacheAttribute) editor.getValue();
+			}
+
+			addCachedMethod(name, attr);
+		}
+	}
+
+	/**
+	 * Parses the given properties into a name/attribute map.
+	 * Expects method names as keys and String attributes definitions as values,
+	 * parsable into CacheAttribute instances via CacheAttributeEditor.
+	 * @see #setNameMap
+	 * @see CacheAttributeEditor
+	 */
+	public void setProperties(Properties cacheAttributes) {
+		CacheAttributeEditor editor = new CacheAttributeEditor();
+		for (Iterator it = cacheAttributes.keySet().iterator(); it.hasNext();) {
+			String methodName = (String) it.next();
+			editor.setAsText(cacheAttributes.getProperty(methodName));
+			addCachedMethod(methodName, (CacheAttribute) editor.getValue());
+		}
+	}
+
+	/**
+	 * Add an attribute for a cached or flushing method.
+	 * Method names can end or start with "*" for matching multiple methods.
+	 * @param methodName the name of the method
+	 * @param attr attribute associated with the method
+	 */
+	public void addCachedMethod(String methodName, CacheAttribute attr) {
+		if (logger.isDebugEnabled()) {
+			logger.debug("Adding cached method [" + methodName + "] with attribute [" + attr + "]");
+		}
+		this.nameMap.put(methodName, attr);
+	}
+
+
+	public CacheAttribute getCacheAttribute(Method method, Class targetClass) {
+		// look for direct name match
+		String methodName = method.getName();
+		CacheAttribute attr = (CacheAttribute) this.nameMap.get(methodName);
+
+		if (attr == null) {
+			// look for most specific name match
+			String bestNameMatch = null;
+			for (Iterator it = this.nameMap.keySet().iterator(); it.hasNext();) {
+				String mappedName = (String) it.next();
+				if (isMatch(methodName, mappedName) &&
+						(bestNameMatch == null || bestNameMatch.length() <= mappedName.length())) {
+					attr = (CacheAttribute) this.nameMap.get(mappedName);
+					bestNameMatch = mappedName;
+				}
+			}
+		}
+
+		return attr;
+	}
+
+	/**
+	 * Return if the given method name matches the mapped name.
+	 * The default implementation checks for "xxx*" and "*xxx" matches.
+	 * Can be overridden in subclasses.
+	 * @param methodName the method name of the class
+	 * @param mappedName the name in the descriptor
+	 * @return if the names match
+	 */
+	protected boolean isMatch(String methodName, String mappedName) {
+		return (mappedName.endsWith("*") && methodName.startsWith(mappedName.substring(0, mappedName.length() - 1))) ||
+				(mappedName.startsWith("*") && methodName.endsWith(mappedName.substring(1, mappedName.length())));
+	}
+
+}
@@ -166,9 +166,9 @@ public abstract class AbstractMessageSource implements HierarchicalMessageSource
 			}
 		}
 		else {
-			MessageFormat messageFormat = resolveCode(code, locale);
-			if (messageFormat != null) {
-				return messageFormat.format(resolveArguments(args, locale));
+			String message = resolveCodeWithArguments(code, args, locale);
+			if (message != null) {
+				return message;
 			}
 		}
 
@@ -211,7 +211,39 @@ public abstract class AbstractMessageSource implements HierarchicalMessageSource
 	protected String resolveCodeWithoutArguments(String code, Locale locale) {
 		MessageFormat messageFormat = resolveCode(code, locale);
 		if (messageFormat != null) {
-			return messageFormat.format(new Object[0]);
+			synchronized (messageFormat) {
+				return messageFormat.format(new Object[0]);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Resolve the given code and arguments as message in the given Locale,
+	 * returning null if not found.
+	 * <p>The default implementation formats the MessageFormat returned by
+	 * <code>resolveCode</code>, synchronizing on it, as MessageFormat
+	 * instances are not thread-safe. Subclasses are encouraged to replace
+	 * this with a resolution strategy that does not share MessageFormats
+	 * across threads.
+	 * <p>Arguments must only be resolved through <code>resolveArguments</code>
+	 * once the code has been found: Else, MessageSourceResolvable arguments
+	 * might fail to resolve in a MessageSource that does not define the code.
+	 * @param code the code of the message to resolve
+	 * @param args array of arguments for the message (never empty)
+	 * @param locale the Locale to resolve the code for
+	 * @return the message String, or null if not found
+	 * @since 1.2.1
+	 * @see #resolveCode
+	 * @see #resolveArguments
+	 */
+	protected String resolveCodeWithArguments(String code, Object[] args, Locale locale) {
+		MessageFormat messageFormat = resolveCode(code, locale);
+		if (messageFormat != null) {
+			Object[] resolvedArgs = resolveArguments(args, locale);
+			synchronized (messageFormat) {
+				return messageFormat.format(resolvedArgs);
+			}
 		}
 		return null;
 	}
@@ -22,14 +22,17 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.text.MessageFormat;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Timer;
+import java.util.TimerTask;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.context.ResourceLoaderAware;
+import org.springframework.core.CollectionFactory;
 import org.springframework.core.io.DefaultResourceLoader;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
@@ -65,6 +68,12 @@ import org.springframework.util.StringUtils;
  * individual properties files are detected with a maximum delay of 1 second.
  * Higher "cacheSeconds" values usually <i>don't</i> make a significant difference.
  *
+ * <p>Alternatively, "refreshInBackground" lets a single daemon thread check
+ * and reload the properties files every "cacheSeconds", replacing cached
+ * entries with freshly loaded ones. Message lookups then never access the
+ * file system or wait on a lock once the files have been loaded, at the
+ * expense of one timer thread per MessageSource (stopped by <code>destroy</code>).
+ *
  * <p>This MessageSource can easily be used outside an ApplicationContext: It uses
  * a DefaultResourceLoader as default, getting overridden with the ApplicationContext
  * if running in a context. It does not have any other specific dependencies.
@@ -74,6 +83,7 @@ import org.springframework.util.StringUtils;
  *
  * @author Juergen Hoeller
  * @see #setCacheSeconds
+ * @see #setRefreshInBackground
  * @see #setBasenames
  * @see #setDefaultEncoding
  * @see #setFileEncodings
@@ -85,7 +95,7 @@ import org.springframework.util.StringUtils;
  * @see java.util.ResourceBundle
  */
 public class ReloadableResourceBundleMessageSource extends AbstractMessageSource
-    implements ResourceLoaderAware {
+    implements ResourceLoaderAware, DisposableBean {
 
 	private static final String PROPERTIES_SUFFIX = ".properties";
 
@@ -100,18 +110,23 @@ public class ReloadableResourceBundleMessageSource extends AbstractMessageSource
 
 	private long cacheMillis = -1;
 
+	private boolean refreshInBackground = false;
+
 	private PropertiesPersister propertiesPersister = new DefaultPropertiesPersister();
 
 	private ResourceLoader resourceLoader = new DefaultResourceLoader();
 
 	/** Cache to hold filename lists per Locale */
-	private final Map cachedFilenames = new HashMap();
+	private final Map cachedFilenames = CollectionFactory.createConcurrentMapIfPossible(16);
 
 	/** Cache to hold already loaded properties per filename */
-	private final Map cachedProperties = new HashMap();
+	private final Map cachedProperties = CollectionFactory.createConcurrentMapIfPossible(16);
 
 	/** Cache to hold merged loaded properties per basename */
-	private final Map cachedMergedProperties = new HashMap();
+	private final Map cachedMergedProperties = CollectionFactory.createConcurrentMapIfPossible(16);
+
+	/** Timer for refreshing in background, started on first load of a file */
+	private Timer refreshTimer;
 
 
 	/**
@@ -199,6 +214,23 @@ public class ReloadableResourceBundleMessageSource extends AbstractMessageSource
 		this.cacheMillis = cacheSeconds * 1000;
 	}
 
+	/**
+	 * Set whether to refresh properties files in a background thread rather
+	 * than on message access. Default is false.
+	 * <p>Only applies if "cacheSeconds" is positive: A daemon Timer will then
+	 * re-validate all loaded files at that interval, while message lookups
+	 * always use the currently cached properties. Each refresh replaces
+	 * the cached entry for a file as a whole, so lookups never see
+	 * partially loaded properties.
+	 * <p>The Timer is started when the first file gets loaded,
+	 * and stopped on <code>destroy</code>.
+	 * @see #setCacheSeconds
+	 * @see #destroy
+	 */
+	public void setRefreshInBackground(boolean refreshInBackground) {
+		this.refreshInBackground = refreshInBackground;
+	}
+
 	/**
 	 * Set the PropertiesPersister to use for parsing properties files.
 	 * The default is DefaultPropertiesPersister.
@@ -243,6 +275,20 @@ public class ReloadableResourceBundleMessageSource extends AbstractMessageSource
 		return null;
 	}
 
+	/**
+	 * Formats a copy of the cached MessageFormat rather than synchronizing
+	 * on the shared instance, so that lookups of the same message do not
+	 * block each other.
+	 */
+	protected String resolveCodeWithArguments(String code, Object[] args, Locale locale) {
+		MessageFormat messageFormat = resolveCode(code, locale);
+		if (messageFormat != null) {
+			MessageFormat copy = (MessageFormat) messageFormat.clone();
+			return copy.format(resolveArguments(args, locale));
+		}
+		return null;
+	}
+
 	protected MessageFormat resolveCode(String code, Locale locale) {
 		if (this.cacheMillis < 0) {
 			PropertiesHolder propHolder = getMergedProperties(locale);
@@ -276,13 +322,16 @@ public class ReloadableResourceBundleMessageSource extends AbstractMessageSource
 	 * cached forever.
 	 */
 	protected PropertiesHolder getMergedProperties(Locale locale) {
+		PropertiesHolder mergedHolder = (PropertiesHolder) this.cachedMergedProperties.get(locale);
+		if (mergedHolder != null) {
+			return mergedHolder;
+		}
 		synchronized (this.cachedMergedProperties) {
-			PropertiesHolder mergedHolder = (PropertiesHolder) this.cachedMergedProperties.get(locale);
+			mergedHolder = (PropertiesHolder) this.cachedMergedProperties.get(locale);
 			if (mergedHolder != null) {
 				return mergedHolder;
 			}
 			Properties mergedProps = new Properties();
-			mergedHolder = new PropertiesHolder(mergedProps, -1);
 			for (int i = this.basenames.length - 1; i >= 0; i--) {
 				List filenames = calculateAllFilenames(this.basenames[i], locale);
 				for (int j = filenames.size() - 1; j >= 0; j--) {
@@ -293,6 +342,7 @@ public class ReloadableResourceBundleMessageSource extends AbstractMessageSource
 					}
 				}
 			}
+			mergedHolder = new PropertiesHolder(mergedProps, -1);
 			this.cachedMergedProperties.put(locale, mergedHolder);
 			return mergedHolder;
 		}
@@ -309,8 +359,15 @@ public class ReloadableResourceBundleMessageSource extends AbstractMessageSource
 	 * @see #calculateFilenamesForLocale
 	 */
 	protected List calculateAllFilenames(String basename, Locale locale) {
+		Map localeMap = (Map) this.cachedFilenames.get(basename);
+		if (localeMap != null) {
+			List filenames = (List) localeMap.get(locale);
+			if (filenames != null) {
+				return filenames;
+			}
+		}
 		synchronized (this.cachedFilenames) {
-			Map localeMap = (Map) this.cachedFilenames.get(basename);
+			localeMap = (Map) this.cachedFilenames.get(basename);
 			if (localeMap != null) {
 				List filenames = (List) localeMap.get(locale);
 				if (filenames != null) {
@@ -334,7 +391,7 @@ public class ReloadableResourceBundleMessageSource extends AbstractMessageSource
 				localeMap.put(locale, filenames);
 			}
 			else {
-				localeMap = new HashMap();
+				localeMap = CollectionFactory.createConcurrentMapIfPossible(16);
 				localeMap.put(locale, filenames);
 				this.cachedFilenames.put(basename, localeMap);
 			}
@@ -381,18 +438,82 @@ public class ReloadableResourceBundleMessageSource extends AbstractMessageSource
 	 * cache or freshly loaded.
 	 */
 	protected PropertiesHolder getProperties(String filename) {
+		PropertiesHolder propHolder = (PropertiesHolder) this.cachedProperties.get(filename);
+		if (propHolder != null && isUpToDate(propHolder)) {
+			return propHolder;
+		}
 		synchronized (this.cachedProperties) {
-			PropertiesHolder propHolder = (PropertiesHolder) this.cachedProperties.get(filename);
-			if (propHolder != null &&
-					(propHolder.getRefreshTimestamp() < 0 ||
-					 propHolder.getRefreshTimestamp() > System.currentTimeMillis() - this.cacheMillis)) {
-				// up to date
+			propHolder = (PropertiesHolder) this.cachedProperties.get(filename);
+			if (propHolder != null && isUpToDate(propHolder)) {
 				return propHolder;
 			}
+			if (propHolder == null && isRefreshingInBackground()) {
+				startRefreshTimer();
+			}
 			return refreshProperties(filename, propHolder);
 		}
 	}
 
+	/**
+	 * Determine whether the given cached holder can be used as-is,
+	 * without re-validating it on the current thread.
+	 */
+	private boolean isUpToDate(PropertiesHolder propHolder) {
+		return (isRefreshingInBackground() || propHolder.getRefreshTimestamp() < 0 ||
+				propHolder.getRefreshTimestamp() > System.currentTimeMillis() - this.cacheMillis);
+	}
+
+	private boolean isRefreshingInBackground() {
+		return (this.refreshInBackground && this.cacheMillis > 0);
+	}
+
+	/**
+	 * Start the background refresh Timer, if not already running.
+	 */
+	private synchronized void startRefreshTimer() {
+		if (this.refreshTimer == null) {
+			if (logger.isInfoEnabled()) {
+				logger.info("Refreshing properties files in background every " + this.cacheMillis + " ms");
+			}
+			this.refreshTimer = new Timer(true);
+			this.refreshTimer.schedule(new RefreshTask(), this.cacheMillis, this.cacheMillis);
+		}
+	}
+
+	/**
+	 * Re-validate all currently cached properties files, reloading
+	 * those that have changed. Invoked by the background refresh Timer.
+	 * <p>Each file is refreshed under the cache lock, which message lookups
+	 * only need to acquire for files that have not been loaded yet.
+	 * @see #setRefreshInBackground
+	 */
+	protected void refreshAllProperties() {
+		List filenames = new ArrayList(this.cachedProperties.keySet());
+		for (Iterator it = filenames.iterator(); it.hasNext();) {
+			String filename = (String) it.next();
+			synchronized (this.cachedProperties) {
+				PropertiesHolder propHolder = (PropertiesHolder) this.cachedProperties.get(filename);
+				if (propHolder != null) {
+					refreshProperties(filename, propHolder);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stop the background refresh Timer, if any.
+	 * @see #setRefreshInBackground
+	 */
+	public void destroy() {
+		synchronized (this) {
+			if (this.refreshTimer != null) {
+				logger.info("Stopping background refresh of properties files");
+				this.refreshTimer.cancel();
+				this.refreshTimer = null;
+			}
+		}
+	}
+
 	/**
 	 * Refresh the PropertiesHolder for the given bundle filename.
 	 * The holder can be null if not cached before, or a timed-out cache entry
@@ -505,6 +626,23 @@ public class ReloadableResourceBundleMessageSource extends AbstractMessageSource
 	}
 
 
+	/**
+	 * TimerTask that triggers the background refresh.
+	 * Catches all exceptions, as a failing task would cancel the Timer.
+	 */
+	private class RefreshTask extends TimerTask {
+
+		public void run() {
+			try {
+				refreshAllProperties();
+			}
+			catch (Throwable ex) {
+				logger.error("Background refresh of properties files failed", ex);
+			}
+		}
+	}
+
+
 	/**
 	 * PropertiesHolder for caching.
 	 * Stores the last-modified timestamp of the source file for efficient
@@ -520,7 +658,7 @@ public class ReloadableResourceBundleMessageSource extends AbstractMessageSource
 		private long refreshTimestamp = -1;
 
 		/** Cache to hold already generated MessageFormats per message code */
-		private final Map cachedMessageFormats = new HashMap();
+		private final Map cachedMessageFormats = CollectionFactory.createConcurrentMapIfPossible(16);
 
 		public PropertiesHolder(Properties properties, long fileTimestamp) {
 			this.properties = properties;
@@ -557,8 +695,15 @@ public class ReloadableResourceBundleMessageSource extends AbstractMessageSource
 			if (this.properties == null) {
 				return null;
 			}
+			Map localeMap = (Map) this.cachedMessageFormats.get(code);
+			if (localeMap != null) {
+				MessageFormat result = (MessageFormat) localeMap.get(locale);
+				if (result != null) {
+					return result;
+				}
+			}
 			synchronized (this.cachedMessageFormats) {
-				Map localeMap = (Map) this.cachedMessageFormats.get(code);
+				localeMap = (Map) this.cachedMessageFormats.get(code);
 				if (localeMap != null) {
 					MessageFormat result = (MessageFormat) localeMap.get(locale);
 					if (result != null) {
@@ -568,7 +713,7 @@ public class ReloadableResourceBundleMessageSource extends AbstractMessageSource
 				String msg = this.properties.getProperty(code);
 				if (msg != null) {
 					if (localeMap == null) {
-						localeMap = new HashMap();
+						localeMap = CollectionFactory.createConcurrentMapIfPossible(4);
 						this.cachedMessageFormats.put(code, localeMap);
 					}
 					MessageFormat result = createMessageFormat(msg, locale);
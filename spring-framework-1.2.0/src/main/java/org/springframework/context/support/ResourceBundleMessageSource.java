@@ -17,12 +17,12 @@
 package org.springframework.context.support;
 
 import java.text.MessageFormat;
-import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
 
+import org.springframework.core.CollectionFactory;
 import org.springframework.util.StringUtils;
 
 /**
@@ -34,26 +34,43 @@ import org.springframework.util.StringUtils;
  * As this MessageSource relies on ResourceBundle, it faces the same limitation.
  * Consider ReloadableResourceBundleMessageSource for an alternative.
  *
+ * <p>As bundles never change, resolved messages are cached per message code
+ * and Locale, including the fact that a code is not defined in any bundle.
+ * The cache uses a concurrent map if available (see CollectionFactory),
+ * so that message resolution does not block on a shared lock. Messages are
+ * formatted without sharing MessageFormat instances between threads, and
+ * without involving MessageFormat at all for messages without placeholders.
+ *
  * @author Rod Johnson
  * @author Juergen Hoeller
  * @see #setBasenames
  * @see ReloadableResourceBundleMessageSource
  * @see ResourceBundle
+ * @see org.springframework.core.CollectionFactory#createConcurrentMapIfPossible
  */
 public class ResourceBundleMessageSource extends AbstractMessageSource {
 
-	private String[] basenames;
+	/** Marker for a message code that is not defined in any bundle */
+	private static final Object NO_MESSAGE = new Object();
+
+
+	private String[] basenames = new String[0];
 
 	private ClassLoader classLoader;
 
-	private final Map cachedResourceBundles = new HashMap();
+	/**
+	 * Cache to hold loaded ResourceBundles.
+	 * Note that this Map contains the actual Locale Map, keyed with the basename.
+	 * @see #getResourceBundle
+	 */
+	private final Map cachedResourceBundles = CollectionFactory.createConcurrentMapIfPossible(16);
 
 	/**
-	 * Cache to hold already generated MessageFormats per message code.
-	 * Note that this Map contains the actual code Map, keyed with the Locale.
-	 * @see #getMessageFormat
+	 * Cache to hold already resolved messages per message code and Locale:
+	 * MessageKey --> CachedMessage, or NO_MESSAGE marker.
+	 * @see #getCachedMessage
 	 */
-	private final Map cachedMessageFormats = new HashMap();
+	private final Map cachedMessages = CollectionFactory.createConcurrentMapIfPossible(256);
 
 
 	/**
@@ -82,7 +99,8 @@ public class ResourceBundleMessageSource extends AbstractMessageSource {
 	 * @see ResourceBundle
 	 */
 	public void setBasenames(String[] basenames)  {
-		this.basenames = basenames;
+		this.basenames = (basenames != null ? basenames : new String[0]);
+		this.cachedMessages.clear();
 	}
 
 	/**
@@ -92,76 +110,107 @@ public class ResourceBundleMessageSource extends AbstractMessageSource {
 	 */
 	public void setClassLoader(ClassLoader classLoader) {
 		this.classLoader = classLoader;
+		this.cachedResourceBundles.clear();
+		this.cachedMessages.clear();
 	}
 
 
 	protected String resolveCodeWithoutArguments(String code, Locale locale) {
-		String result = null;
-		for (int i = 0; result == null && i < this.basenames.length; i++) {
-			ResourceBundle bundle = getResourceBundle(this.basenames[i], locale);
-			if (bundle != null) {
-				result = getStringOrNull(bundle, code);
-			}
-		}
-		return result;
+		CachedMessage message = getCachedMessage(code, locale);
+		return (message != null ? message.getMessage() : null);
+	}
+
+	protected String resolveCodeWithArguments(String code, Object[] args, Locale locale) {
+		CachedMessage message = getCachedMessage(code, locale);
+		return (message != null ? message.format(resolveArguments(args, locale)) : null);
 	}
 
+	/**
+	 * Returns a new MessageFormat for each call, which the caller is free to use,
+	 * as cached MessageFormats must not be shared between threads.
+	 */
 	protected MessageFormat resolveCode(String code, Locale locale) {
-		MessageFormat messageFormat = null;
-		for (int i = 0; messageFormat == null && i < this.basenames.length; i++) {
-			ResourceBundle bundle = getResourceBundle(this.basenames[i], locale);
-			if (bundle != null) {
-				messageFormat = getMessageFormat(bundle, code, locale);
+		CachedMessage message = getCachedMessage(code, locale);
+		return (message != null ? message.getMessageFormat() : null);
+	}
+
+	/**
+	 * Return the resolved message for the given code and Locale, checking all
+	 * bundles in the order of their basenames on first access.
+	 * @param code the message code to retrieve
+	 * @param locale the Locale to resolve the code for
+	 * @return the cached message, or null if not defined in any bundle
+	 */
+	private CachedMessage getCachedMessage(String code, Locale locale) {
+		MessageKey key = new MessageKey(code, locale);
+		Object cached = this.cachedMessages.get(key);
+		if (cached == null) {
+			cached = NO_MESSAGE;
+			for (int i = 0; cached == NO_MESSAGE && i < this.basenames.length; i++) {
+				ResourceBundle bundle = getResourceBundle(this.basenames[i], locale);
+				if (bundle != null) {
+					MessageFormat messageFormat = getMessageFormat(bundle, code, locale);
+					if (messageFormat != null) {
+						cached = new CachedMessage(getStringOrNull(bundle, code), messageFormat);
+					}
+				}
 			}
+			// A concurrent resolution of the same code will yield an equivalent result.
+			this.cachedMessages.put(key, cached);
 		}
-		return messageFormat;
+		return (cached != NO_MESSAGE ? (CachedMessage) cached : null);
 	}
 
 	/**
 	 * Return a ResourceBundle for the given basename and code,
-	 * fetching already generated MessageFormats from the cache.
+	 * fetching already loaded ResourceBundles from the cache.
 	 * @param basename the basename of the ResourceBundle
 	 * @param locale the Locale to find the ResourceBundle for
 	 * @return the resulting ResourceBundle, or null if none
 	 * found for the given basename and Locale
 	 */
 	protected ResourceBundle getResourceBundle(String basename, Locale locale) {
-		synchronized (this.cachedResourceBundles) {
-			Map localeMap = (Map) this.cachedResourceBundles.get(basename);
-			if (localeMap != null) {
-				ResourceBundle bundle = (ResourceBundle) localeMap.get(locale);
-				if (bundle != null) {
-					return bundle;
-				}
-			}
-			try {
-				ClassLoader cl = this.classLoader;
-				if (cl == null) {
-					// no class loader specified -> use thread context class loader
-					cl = Thread.currentThread().getContextClassLoader();
-				}
-				ResourceBundle bundle = ResourceBundle.getBundle(basename, locale, cl);
-				if (localeMap == null) {
-					localeMap = new HashMap();
-					this.cachedResourceBundles.put(basename, localeMap);
-				}
-				localeMap.put(locale, bundle);
+		Map localeMap = (Map) this.cachedResourceBundles.get(basename);
+		if (localeMap != null) {
+			ResourceBundle bundle = (ResourceBundle) localeMap.get(locale);
+			if (bundle != null) {
 				return bundle;
 			}
-			catch (MissingResourceException ex) {
-				if (logger.isWarnEnabled()) {
-					logger.warn("ResourceBundle [" + basename + "] not found for MessageSource: " + ex.getMessage());
+		}
+		try {
+			ClassLoader cl = this.classLoader;
+			if (cl == null) {
+				// no class loader specified -> use thread context class loader
+				cl = Thread.currentThread().getContextClassLoader();
+			}
+			ResourceBundle bundle = ResourceBundle.getBundle(basename, locale, cl);
+			if (localeMap == null) {
+				synchronized (this.cachedResourceBundles) {
+					localeMap = (Map) this.cachedResourceBundles.get(basename);
+					if (localeMap == null) {
+						localeMap = CollectionFactory.createConcurrentMapIfPossible(16);
+						this.cachedResourceBundles.put(basename, localeMap);
+					}
 				}
-				// assume bundle not found
-				// -> do NOT throw the exception to allow for checking parent message source
-				return null;
 			}
+			localeMap.put(locale, bundle);
+			return bundle;
+		}
+		catch (MissingResourceException ex) {
+			if (logger.isWarnEnabled()) {
+				logger.warn("ResourceBundle [" + basename + "] not found for MessageSource: " + ex.getMessage());
+			}
+			// assume bundle not found
+			// -> do NOT throw the exception to allow for checking parent message source
+			return null;
 		}
 	}
 
 	/**
-	 * Return a MessageFormat for the given bundle and code,
-	 * fetching already generated MessageFormats from the cache.
+	 * Return a MessageFormat for the given bundle and code.
+	 * <p>Invoked once per message code and Locale: the resulting message
+	 * is cached by this MessageSource, with the MessageFormat serving as
+	 * prototype for all subsequent formatting of the message.
 	 * @param bundle the ResourceBundle to work on
 	 * @param code the message code to retrieve
 	 * @param locale the Locale to use to build the MessageFormat
@@ -171,36 +220,11 @@ public class ResourceBundleMessageSource extends AbstractMessageSource {
 	protected MessageFormat getMessageFormat(ResourceBundle bundle, String code, Locale locale)
 			throws MissingResourceException {
 
-		synchronized (this.cachedMessageFormats) {
-			Map codeMap = (Map) this.cachedMessageFormats.get(bundle);
-			Map localeMap = null;
-			if (codeMap != null) {
-				localeMap = (Map) codeMap.get(code);
-				if (localeMap != null) {
-					MessageFormat result = (MessageFormat) localeMap.get(locale);
-					if (result != null) {
-						return result;
-					}
-				}
-			}
-
-			String msg = getStringOrNull(bundle, code);
-			if (msg != null) {
-				if (codeMap == null) {
-					codeMap = new HashMap();
-					this.cachedMessageFormats.put(bundle, codeMap);
-				}
-				if (localeMap == null) {
-					localeMap = new HashMap();
-					codeMap.put(code, localeMap);
-				}
-				MessageFormat result = createMessageFormat(msg, locale);
-				localeMap.put(locale, result);
-				return result;
-
-			}
-			return null;
+		String msg = getStringOrNull(bundle, code);
+		if (msg != null) {
+			return createMessageFormat(msg, locale);
 		}
+		return null;
 	}
 
 	private String getStringOrNull(ResourceBundle bundle, String key) {
@@ -221,4 +245,76 @@ public class ResourceBundleMessageSource extends AbstractMessageSource {
 		return getClass().getName() + ": basenames=[" + StringUtils.arrayToCommaDelimitedString(this.basenames) + "]";
 	}
 
+
+	/**
+	 * Cache key for a message code in a specific Locale.
+	 */
+	private static class MessageKey {
+
+		private final String code;
+
+		private final Locale locale;
+
+		private final int hashCode;
+
+		public MessageKey(String code, Locale locale) {
+			this.code = code;
+			this.locale = locale;
+			this.hashCode = code.hashCode() * 29 + locale.hashCode();
+		}
+
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof MessageKey)) {
+				return false;
+			}
+			MessageKey otherKey = (MessageKey) other;
+			return (this.code.equals(otherKey.code) && this.locale.equals(otherKey.locale));
+		}
+
+		public int hashCode() {
+			return this.hashCode;
+		}
+	}
+
+
+	/**
+	 * A resolved message, safe for use by concurrent threads.
+	 * Messages without placeholders or quotes are returned as-is, even when
+	 * arguments are given, since MessageFormat would not change them.
+	 * Other messages are formatted with a clone of the prototype MessageFormat,
+	 * which is much cheaper than parsing the pattern again.
+	 */
+	private static class CachedMessage {
+
+		private final String message;
+
+		private final MessageFormat messageFormat;
+
+		private final boolean plainText;
+
+		public CachedMessage(String message, MessageFormat messageFormat) {
+			this.message = message;
+			this.messageFormat = messageFormat;
+			this.plainText = (message.indexOf('{') == -1 && message.indexOf('\'') == -1);
+		}
+
+		public String getMessage() {
+			return this.message;
+		}
+
+		public MessageFormat getMessageFormat() {
+			return (MessageFormat) this.messageFormat.clone();
+		}
+
+		public String format(Object[] args) {
+			if (this.plainText) {
+				return this.message;
+			}
+			return getMessageFormat().format(args);
+		}
+	}
+
 }
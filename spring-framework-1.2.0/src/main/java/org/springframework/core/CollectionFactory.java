@@ -16,6 +16,7 @@
 
 package org.springframework.core;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
@@ -24,8 +25,10 @@ import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 
+import EDU.oswego.cs.dl.util.concurrent.ConcurrentReaderHashMap;
 import org.apache.commons.collections.map.CaseInsensitiveMap;
 import org.apache.commons.collections.map.IdentityMap;
+import org.apache.commons.collections.map.LRUMap;
 import org.apache.commons.collections.map.LinkedMap;
 import org.apache.commons.collections.map.ListOrderedMap;
 import org.apache.commons.collections.set.ListOrderedSet;
@@ -35,6 +38,8 @@ import org.apache.commons.logging.LogFactory;
 /**
  * Factory for collections, being aware of JDK 1.4+ extended collections
  * and Commons Collection 3.x's corresponding versions for older JDKs.
+ * Also aware of JDK 1.5's concurrent collections and Doug Lea's
+ * util.concurrent library as their predecessor on older JDKs.
  * Mainly for internal use within the framework.
  *
  * <p>The goal of this class is to avoid runtime dependencies on JDK 1.4+
@@ -50,10 +55,20 @@ public class CollectionFactory {
 	private static final String COMMONS_COLLECTIONS_CLASS_NAME =
 			"org.apache.commons.collections.map.LinkedMap";
 
+	private static final String JDK15_CONCURRENT_CLASS_NAME =
+			"java.util.concurrent.ConcurrentHashMap";
+
+	private static final String OSWEGO_CONCURRENT_CLASS_NAME =
+			"EDU.oswego.cs.dl.util.concurrent.ConcurrentReaderHashMap";
+
 	private static final Log logger = LogFactory.getLog(CollectionFactory.class);
 
 	private static boolean commonsCollections3xAvailable;
 
+	private static boolean jdk15ConcurrentAvailable;
+
+	private static boolean oswegoConcurrentAvailable;
+
 	static {
 		// Check whether JDK 1.4+ collections and/or
 		// Commons Collections 3.x are available.
@@ -68,6 +83,28 @@ public class CollectionFactory {
 		catch (ClassNotFoundException ex) {
 			commonsCollections3xAvailable = false;
 		}
+
+		// Check whether JDK 1.5+ concurrent collections and/or
+		// Doug Lea's util.concurrent are available. Checked by class
+		// rather than JdkVersion, to cover JDKs after 1.5 as well.
+		jdk15ConcurrentAvailable = isClassAvailable(JDK15_CONCURRENT_CLASS_NAME);
+		if (jdk15ConcurrentAvailable) {
+			logger.info("JDK 1.5+ concurrent collections available");
+		}
+		oswegoConcurrentAvailable = isClassAvailable(OSWEGO_CONCURRENT_CLASS_NAME);
+		if (oswegoConcurrentAvailable) {
+			logger.info("Doug Lea's util.concurrent available");
+		}
+	}
+
+	private static boolean isClassAvailable(String className) {
+		try {
+			Class.forName(className);
+			return true;
+		}
+		catch (ClassNotFoundException ex) {
+			return false;
+		}
 	}
 
 	/**
@@ -166,6 +203,67 @@ public class CollectionFactory {
 		}
 	}
 
+	/**
+	 * Create a map that evicts its least recently used entries once it exceeds
+	 * the given maximum size, if possible: that is, if running on JDK >= 1.4
+	 * or if Commons Collections 3.x is available. Prefers an access-ordered
+	 * JDK 1.4+ LinkedHashMap to a Commons Collections 3.x LRUMap. Falls back
+	 * to a HashMap that gets cleared once it reaches the maximum size.
+	 * <p>Note that a <code>get</code> modifies the access order, so access to
+	 * the map needs to be synchronized even if it is only read.
+	 * @param maxSize the maximum number of entries in the map
+	 * @return the new map instance
+	 * @since 1.2.1
+	 * @see LinkedHashMap#removeEldestEntry
+	 * @see LRUMap
+	 */
+	public static Map createLruMapIfPossible(int maxSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize must be positive");
+		}
+		if (JdkVersion.getMajorJavaVersion() >= JdkVersion.JAVA_14) {
+			logger.debug("Creating access-ordered java.util.LinkedHashMap");
+			return Jdk14CollectionFactory.createLruLinkedHashMap(maxSize);
+		}
+		else if (commonsCollections3xAvailable) {
+			logger.debug("Creating org.apache.commons.collections.map.LRUMap");
+			return CommonsCollectionFactory.createLruMap(maxSize);
+		}
+		else {
+			logger.debug("Falling back to self-clearing java.util.HashMap for LRU map");
+			return new BoundedHashMap(maxSize);
+		}
+	}
+
+	/**
+	 * Create a concurrent map if possible: that is, if running on JDK >= 1.5
+	 * or if Doug Lea's util.concurrent is available. Prefers a JDK 1.5+
+	 * ConcurrentHashMap to a util.concurrent ConcurrentReaderHashMap, both of
+	 * which allow for reads without locking. Falls back to a synchronized
+	 * HashMap as worst case.
+	 * <p>Note that null keys and null values are not allowed by the concurrent
+	 * implementations: callers should use marker objects instead.
+	 * @param initialCapacity the initial capacity of the map
+	 * @return the new map instance
+	 * @since 1.2.1
+	 * @see java.util.concurrent.ConcurrentHashMap
+	 * @see ConcurrentReaderHashMap
+	 */
+	public static Map createConcurrentMapIfPossible(int initialCapacity) {
+		if (jdk15ConcurrentAvailable) {
+			logger.debug("Creating java.util.concurrent.ConcurrentHashMap");
+			return Jdk15CollectionFactory.createConcurrentHashMap(initialCapacity);
+		}
+		else if (oswegoConcurrentAvailable) {
+			logger.debug("Creating EDU.oswego.cs.dl.util.concurrent.ConcurrentReaderHashMap");
+			return OswegoCollectionFactory.createConcurrentReaderHashMap(initialCapacity);
+		}
+		else {
+			logger.debug("Falling back to synchronized java.util.HashMap for concurrent map");
+			return Collections.synchronizedMap(new HashMap(initialCapacity));
+		}
+	}
+
 
 	/**
 	 * Actual creation of JDK 1.4+ Collections.
@@ -184,6 +282,46 @@ public class CollectionFactory {
 		private static Map createIdentityHashMap(int initialCapacity) {
 			return new IdentityHashMap(initialCapacity);
 		}
+
+		private static Map createLruLinkedHashMap(final int maxSize) {
+			return new LinkedHashMap(16, 0.75f, true) {
+				protected boolean removeEldestEntry(Map.Entry eldest) {
+					return size() > maxSize;
+				}
+			};
+		}
+	}
+
+
+	/**
+	 * Actual creation of JDK 1.5+ concurrent Collections.
+	 * In separate inner class to avoid runtime dependency on JDK 1.5+.
+	 * Uses reflection to allow for compiling against JDK 1.3 and 1.4 as well.
+	 */
+	private static abstract class Jdk15CollectionFactory {
+
+		private static Map createConcurrentHashMap(int initialCapacity) {
+			try {
+				Class mapClass = Class.forName(JDK15_CONCURRENT_CLASS_NAME);
+				return (Map) mapClass.getConstructor(new Class[] {int.class}).newInstance(
+						new Object[] {new Integer(initialCapacity)});
+			}
+			catch (Exception ex) {
+				throw new IllegalStateException("Could not create " + JDK15_CONCURRENT_CLASS_NAME + ": " + ex);
+			}
+		}
+	}
+
+
+	/**
+	 * Actual creation of util.concurrent Collections.
+	 * In separate inner class to avoid runtime dependency on util.concurrent.
+	 */
+	private static abstract class OswegoCollectionFactory {
+
+		private static Map createConcurrentReaderHashMap(int initialCapacity) {
+			return new ConcurrentReaderHashMap(initialCapacity);
+		}
 	}
 
 
@@ -211,6 +349,31 @@ public class CollectionFactory {
 			// Commons Collections does not support initial capacity of 0.
 			return new IdentityMap(initialCapacity == 0 ? 1 : initialCapacity);
 		}
+
+		private static Map createLruMap(int maxSize) {
+			return new LRUMap(maxSize);
+		}
+	}
+
+
+	/**
+	 * HashMap that clears itself before adding an entry beyond its maximum size,
+	 * as bounded map for JDK 1.3 without Commons Collections.
+	 */
+	private static class BoundedHashMap extends HashMap {
+
+		private final int maxSize;
+
+		public BoundedHashMap(int maxSize) {
+			this.maxSize = maxSize;
+		}
+
+		public Object put(Object key, Object value) {
+			if (size() >= this.maxSize && !containsKey(key)) {
+				clear();
+			}
+			return super.put(key, value);
+		}
 	}
 
 }
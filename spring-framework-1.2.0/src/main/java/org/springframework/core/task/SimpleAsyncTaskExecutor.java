@@ -0,0 +1,162 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.core.task;
+
+import org.springframework.util.ClassUtils;
+
+/**
+ * TaskExecutor implementation that fires up a new Thread for each task,
+ * executing it asynchronously.
+ *
+ * <p>Does not reuse threads! Consider a thread-pooling TaskExecutor
+ * implementation instead, in particular for executing a large number
+ * of short-lived tasks. This implementation is appropriate for a few
+ * long-running tasks, such as the consumer loops of a message listener
+ * container.
+ *
+ * @since 1.2.1
+ * @see #setThreadNamePrefix
+ * @see #setDaemon
+ * @see SyncTaskExecutor
+ */
+public class SimpleAsyncTaskExecutor implements TaskExecutor {
+
+	/**
+	 * Default thread name prefix: "SimpleAsyncTaskExecutor-".
+	 */
+	public static final String DEFAULT_THREAD_NAME_PREFIX =
+			ClassUtils.getShortName(SimpleAsyncTaskExecutor.class) + "-";
+
+
+	private String threadNamePrefix = DEFAULT_THREAD_NAME_PREFIX;
+
+	private int threadPriority = Thread.NORM_PRIORITY;
+
+	private boolean daemon = false;
+
+	private int threadCount = 0;
+
+	private final Object threadCountMonitor = new Object();
+
+
+	/**
+	 * Create a new SimpleAsyncTaskExecutor with default thread name prefix.
+	 */
+	public SimpleAsyncTaskExecutor() {
+	}
+
+	/**
+	 * Create a new SimpleAsyncTaskExecutor with the given thread name prefix.
+	 * @param threadNamePrefix the prefix to use for the names of newly created threads
+	 */
+	public SimpleAsyncTaskExecutor(String threadNamePrefix) {
+		setThreadNamePrefix(threadNamePrefix);
+	}
+
+
+	/**
+	 * Specify the prefix to use for the names of newly created threads.
+	 * Default is "SimpleAsyncTaskExecutor-".
+	 */
+	public void setThreadNamePrefix(String threadNamePrefix) {
+		this.threadNamePrefix = (threadNamePrefix != null ? threadNamePrefix : DEFAULT_THREAD_NAME_PREFIX);
+	}
+
+	/**
+	 * Return the thread name prefix to use for the names of newly
+	 * created threads.
+	 */
+	public String getThreadNamePrefix() {
+		return threadNamePrefix;
+	}
+
+	/**
+	 * Set the priority of the threads that this executor creates.
+	 * Default is 5.
+	 * @see Thread#NORM_PRIORITY
+	 */
+	public void setThreadPriority(int threadPriority) {
+		this.threadPriority = threadPriority;
+	}
+
+	/**
+	 * Return the priority of the threads that this executor creates.
+	 */
+	public int getThreadPriority() {
+		return threadPriority;
+	}
+
+	/**
+	 * Set whether this executor should create daemon threads,
+	 * just executing as long as the application itself is running.
+	 * <p>Default is false: Tasks are expected to end on their own,
+	 * typically driven by a shutdown of the component that submitted them.
+	 * @see Thread#setDaemon
+	 */
+	public void setDaemon(boolean daemon) {
+		this.daemon = daemon;
+	}
+
+	/**
+	 * Return whether this executor should create daemon threads.
+	 */
+	public boolean isDaemon() {
+		return daemon;
+	}
+
+
+	/**
+	 * Executes the given task, within a newly created thread.
+	 * @see #createThread
+	 */
+	public void execute(Runnable task) {
+		if (task == null) {
+			throw new IllegalArgumentException("Runnable must not be null");
+		}
+		createThread(task).start();
+	}
+
+	/**
+	 * Create a new Thread for the given task.
+	 * <p>Default implementation applies this executor's thread name prefix,
+	 * thread priority and daemon flag. Can be overridden in subclasses.
+	 * @param task the Runnable to execute
+	 * @return the new Thread instance (not started yet)
+	 */
+	protected Thread createThread(Runnable task) {
+		Thread thread = new Thread(task, nextThreadName());
+		thread.setPriority(getThreadPriority());
+		thread.setDaemon(isDaemon());
+		return thread;
+	}
+
+	/**
+	 * Return the thread name to use for a newly created thread.
+	 * <p>Default implementation returns the specified thread name prefix
+	 * with an increasing thread count appended: e.g. "SimpleAsyncTaskExecutor-1".
+	 * @see #getThreadNamePrefix
+	 */
+	protected String nextThreadName() {
+		int threadNumber = 0;
+		synchronized (this.threadCountMonitor) {
+			this.threadCount++;
+			threadNumber = this.threadCount;
+		}
+		return getThreadNamePrefix() + threadNumber;
+	}
+
+}
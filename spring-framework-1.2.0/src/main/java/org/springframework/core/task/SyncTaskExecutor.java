@@ -0,0 +1,45 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.core.task;
+
+/**
+ * TaskExecutor implementation that executes each task
+ * synchronously in the calling thread.
+ *
+ * <p>Mainly intended for testing scenarios. Execution in the calling
+ * thread has the advantage of participating in its thread context,
+ * for example the thread context class loader or the thread's current
+ * transaction association.
+ *
+ * @since 1.2.1
+ * @see SimpleAsyncTaskExecutor
+ */
+public class SyncTaskExecutor implements TaskExecutor {
+
+	/**
+	 * Executes the given task synchronously, through direct
+	 * invocation of its <code>run()</code> method.
+	 * @throws IllegalArgumentException in case of an error
+	 */
+	public void execute(Runnable task) {
+		if (task == null) {
+			throw new IllegalArgumentException("Runnable must not be null");
+		}
+		task.run();
+	}
+
+}
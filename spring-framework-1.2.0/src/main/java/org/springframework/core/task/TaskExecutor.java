@@ -0,0 +1,46 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.core.task;
+
+/**
+ * Simple task executor interface that abstracts the execution
+ * of a Runnable. Implementations can use all sorts of different
+ * execution strategies, such as: synchronous, asynchronous,
+ * using a thread pool, and more.
+ *
+ * <p>Used by framework components that need to run work on background
+ * threads, for example Spring's JMS message listener containers,
+ * without depending on a specific threading facility. Equivalent to
+ * JDK 1.5's Executor interface, but available on JDK 1.3 and 1.4 too.
+ *
+ * @since 1.2.1
+ * @see SimpleAsyncTaskExecutor
+ * @see SyncTaskExecutor
+ */
+public interface TaskExecutor {
+
+	/**
+	 * Execute the given task.
+	 * <p>The call might return immediately if the executor uses
+	 * an asynchronous execution strategy, or might block in the
+	 * case of synchronous execution.
+	 * @param task the Runnable to execute
+	 * @throws TaskRejectedException if the given task was not accepted
+	 */
+	void execute(Runnable task) throws TaskRejectedException;
+
+}
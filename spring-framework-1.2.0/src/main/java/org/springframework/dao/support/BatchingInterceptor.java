@@ -0,0 +1,612 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.dao.support;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.CollectionFactory;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * AOP Alliance MethodInterceptor that merges invocations of a single-key
+ * method, like <code>getPerformance(id)</code>, into invocations of a
+ * companion multi-key method, like <code>getPerformances(List ids)</code>,
+ * to avoid issuing one query per key.
+ *
+ * <p>Batch methods are configured as properties with the name of the
+ * single-key method as key and the name of the multi-key method as value.
+ * The single-key method must take exactly one argument, the key. The
+ * multi-key method must take a single List (or Collection) argument with
+ * the keys, and return either a Map from key to result or a List of results
+ * in the order of the given keys. Its result is scattered back to the
+ * individual callers. For void methods, the result is ignored.
+ *
+ * <p>Concurrent invocations are batched "naturally": an invocation that
+ * finds no batch in progress for its method is dispatched right away,
+ * without added latency; invocations that arrive while a batch is in
+ * progress are collected and dispatched together as soon as it completes.
+ * A batch window can be specified to additionally wait for further
+ * invocations, and the maximum batch size bounds the number of keys that
+ * are passed to the multi-key method at once. A batch with a single key
+ * simply proceeds with the original invocation.
+ *
+ * <p>Within a transaction (i.e. with transaction synchronization active),
+ * invocations are not merged with those of other threads, which run in
+ * different transactions. Instead, invocations of void batch methods are
+ * deferred and collected for the current transaction, to be dispatched
+ * in one go before commit, or before any other invocation through this
+ * interceptor in the same transaction, so that such an invocation sees
+ * their effects. Deferred invocations are discarded on rollback. Since the
+ * caller of a lookup needs its result right away, lookups are invoked
+ * directly within a transaction.
+ *
+ * <p>Note that the multi-key method is invoked on the target object via
+ * reflection, so advice that follows this interceptor in the chain does
+ * not apply to it.
+ *
+ * @since 1.2.1
+ * @see #setBatchMethods
+ * @see #setBatchWindow
+ * @see #setMaxBatchSize
+ * @see org.springframework.transaction.support.TransactionSynchronizationManager
+ */
+public class BatchingInterceptor implements MethodInterceptor, InitializingBean {
+
+	/**
+	 * Order value for the TransactionSynchronization that dispatches deferred
+	 * invocations. Executes before the synchronizations for resources like
+	 * Hibernate Sessions and JDBC Connections, so that deferred invocations
+	 * can still use them.
+	 */
+	public static final int BATCH_SYNCHRONIZATION_ORDER = 100;
+
+
+	protected final Log logger = LogFactory.getLog(getClass());
+
+	private Map batchMethodNames;
+
+	private long batchWindow = 0;
+
+	private int maxBatchSize = 100;
+
+	/** Resolved BatchMethods, or NO_BATCH_METHOD, with Method and target class as key */
+	private final Map batchMethodCache = CollectionFactory.createConcurrentMapIfPossible(16);
+
+	/** BatchGroups for concurrent invocations in progress, keyed by GroupKey */
+	private final Map batchGroups = new HashMap();
+
+
+	/**
+	 * Set the batch methods, with the names of the single-key methods as keys
+	 * and the names of the corresponding multi-key methods as values:
+	 * e.g. key = "getPerformance", value = "getPerformances".
+	 */
+	public void setBatchMethods(Properties batchMethods) {
+		this.batchMethodNames = new HashMap(batchMethods);
+	}
+
+	/**
+	 * Set the number of milliseconds that the first invocation of a batch
+	 * waits for further invocations before dispatching the batch.
+	 * <p>Default is 0, which means to dispatch immediately unless a batch
+	 * for the same method is already in progress. A positive value leads
+	 * to larger batches at the expense of added latency for every caller.
+	 */
+	public void setBatchWindow(long batchWindow) {
+		this.batchWindow = batchWindow;
+	}
+
+	/**
+	 * Set the maximum number of keys to pass to a multi-key method at once.
+	 * A batch that has reached this size is dispatched immediately, even
+	 * while another batch for the same method is in progress. Default is 100.
+	 */
+	public void setMaxBatchSize(int maxBatchSize) {
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	public void afterPropertiesSet() {
+		if (this.batchMethodNames == null || this.batchMethodNames.isEmpty()) {
+			throw new IllegalArgumentException("batchMethods is required");
+		}
+		if (this.maxBatchSize < 1) {
+			throw new IllegalArgumentException("maxBatchSize must be at least 1");
+		}
+	}
+
+
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		Object target = invocation.getThis();
+		BatchMethod batchMethod = getBatchMethod(invocation.getMethod(), (target != null ? target.getClass() : null));
+
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			DeferredInvocations deferred =
+					(DeferredInvocations) TransactionSynchronizationManager.getResource(this);
+			if (batchMethod != null && batchMethod.isVoid()) {
+				if (deferred == null) {
+					deferred = new DeferredInvocations();
+					TransactionSynchronizationManager.bindResource(this, deferred);
+					TransactionSynchronizationManager.registerSynchronization(
+							new DeferredInvocationsSynchronization(this, deferred));
+				}
+				if (deferred.add(new GroupKey(target, batchMethod), invocation.getArguments()[0]) >= this.maxBatchSize) {
+					deferred.dispatch();
+				}
+				return null;
+			}
+			if (deferred != null) {
+				// Let the invocation see the effects of deferred invocations.
+				deferred.dispatch();
+			}
+			return invocation.proceed();
+		}
+
+		if (batchMethod == null) {
+			return invocation.proceed();
+		}
+		return invokeInBatch(invocation, target, batchMethod);
+	}
+
+	/**
+	 * Return the BatchMethod for the given method, or null if it isn't
+	 * configured as batch method.
+	 * @throws IllegalStateException if no suitable multi-key method exists
+	 */
+	private BatchMethod getBatchMethod(Method method, Class targetClass) throws IllegalStateException {
+		Object cacheKey = new GroupKey(targetClass, method);
+		Object cached = this.batchMethodCache.get(cacheKey);
+		if (cached == null) {
+			cached = Boolean.FALSE;
+			String multiKeyMethodName = (String) this.batchMethodNames.get(method.getName());
+			if (multiKeyMethodName != null && targetClass != null && method.getParameterTypes().length == 1) {
+				cached = new BatchMethod(method, findMultiKeyMethod(targetClass, multiKeyMethodName, method));
+			}
+			this.batchMethodCache.put(cacheKey, cached);
+		}
+		return (cached instanceof BatchMethod ? (BatchMethod) cached : null);
+	}
+
+	/**
+	 * Find the multi-key method with the given name on the given target class.
+	 * @throws IllegalStateException if there is no suitable method
+	 */
+	private Method findMultiKeyMethod(Class targetClass, String methodName, Method singleKeyMethod)
+			throws IllegalStateException {
+
+		boolean isVoid = void.class.equals(singleKeyMethod.getReturnType());
+		Method[] methods = targetClass.getMethods();
+		for (int i = 0; i < methods.length; i++) {
+			Method candidate = methods[i];
+			if (candidate.getName().equals(methodName) && candidate.getParameterTypes().length == 1 &&
+					candidate.getParameterTypes()[0].isAssignableFrom(ArrayList.class) &&
+					(isVoid || Map.class.isAssignableFrom(candidate.getReturnType()) ||
+					List.class.isAssignableFrom(candidate.getReturnType()))) {
+				return candidate;
+			}
+		}
+		throw new IllegalStateException("No multi-key method '" + methodName + "' for batch method [" +
+				singleKeyMethod + "] found on class [" + targetClass.getName() +
+				"]: must take a List argument and return a Map or a List");
+	}
+
+	/**
+	 * Add the given invocation to the current batch for its method,
+	 * and wait for the batch to be dispatched.
+	 */
+	private Object invokeInBatch(MethodInvocation invocation, Object target, BatchMethod batchMethod)
+			throws Throwable {
+
+		GroupKey groupKey = new GroupKey(target, batchMethod);
+		BatchGroup group = null;
+		synchronized (this.batchGroups) {
+			group = (BatchGroup) this.batchGroups.get(groupKey);
+			if (group == null) {
+				group = new BatchGroup();
+				this.batchGroups.put(groupKey, group);
+			}
+			group.activeInvocations++;
+		}
+
+		try {
+			Object key = invocation.getArguments()[0];
+			Batch batch = group.join(key, batchMethod.isVoid(), this.batchWindow, this.maxBatchSize);
+			if (batch == null) {
+				// Reentrant invocation from within a dispatch: waiting would deadlock.
+				return invocation.proceed();
+			}
+			if (batch.isDispatcher(Thread.currentThread())) {
+				try {
+					dispatch(invocation, target, batchMethod, batch);
+				}
+				finally {
+					group.dispatchCompleted();
+				}
+			}
+			return batch.getResult(key);
+		}
+		finally {
+			synchronized (this.batchGroups) {
+				// Without active invocations, the group has neither a pending batch
+				// nor a dispatching thread: remove it, releasing the target.
+				if (--group.activeInvocations == 0) {
+					this.batchGroups.remove(groupKey);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Dispatch the given batch: proceed with the original invocation for a
+	 * single key, else invoke the multi-key method and scatter its result.
+	 */
+	private void dispatch(MethodInvocation invocation, Object target, BatchMethod batchMethod, Batch batch) {
+		List keys = batch.getKeys();
+		try {
+			if (keys.size() == 1) {
+				Map results = new HashMap(1);
+				results.put(keys.get(0), invocation.proceed());
+				batch.setResults(results);
+			}
+			else {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Dispatching batch of " + keys.size() + " keys to method [" +
+							batchMethod.getMultiKeyMethod().getName() + "]");
+				}
+				batch.setResults(batchMethod.invoke(target, keys));
+			}
+		}
+		catch (Throwable ex) {
+			batch.setFailure(ex);
+		}
+	}
+
+
+	/**
+	 * Single-key method along with its multi-key companion.
+	 */
+	private static class BatchMethod {
+
+		private final Method singleKeyMethod;
+
+		private final Method multiKeyMethod;
+
+		public BatchMethod(Method singleKeyMethod, Method multiKeyMethod) {
+			this.singleKeyMethod = singleKeyMethod;
+			this.multiKeyMethod = multiKeyMethod;
+		}
+
+		public Method getMultiKeyMethod() {
+			return this.multiKeyMethod;
+		}
+
+		public boolean isVoid() {
+			return void.class.equals(this.singleKeyMethod.getReturnType());
+		}
+
+		/**
+		 * Invoke the multi-key method on the given target.
+		 * @param target the target object
+		 * @param keys the keys to pass to the multi-key method
+		 * @return the results, keyed by key (or null for a void method)
+		 */
+		public Map invoke(Object target, List keys) throws Throwable {
+			Object retVal = AopUtils.invokeJoinpointUsingReflection(target, this.multiKeyMethod, new Object[] {keys});
+			if (isVoid()) {
+				return null;
+			}
+			if (retVal instanceof Map) {
+				return (Map) retVal;
+			}
+			List values = (List) retVal;
+			int size = (values != null ? values.size() : -1);
+			if (size != keys.size()) {
+				throw new IncorrectResultSizeDataAccessException(
+						"Multi-key method [" + this.multiKeyMethod.getName() + "] returned " + size +
+						" results for " + keys.size() + " keys", keys.size(), size);
+			}
+			Map results = new HashMap(size);
+			for (int i = 0; i < size; i++) {
+				results.put(keys.get(i), values.get(i));
+			}
+			return results;
+		}
+
+		public boolean equals(Object other) {
+			return (other instanceof BatchMethod && this.singleKeyMethod.equals(((BatchMethod) other).singleKeyMethod));
+		}
+
+		public int hashCode() {
+			return this.singleKeyMethod.hashCode();
+		}
+	}
+
+
+	/**
+	 * Key combining an object, compared by identity, with a value.
+	 */
+	private static class GroupKey {
+
+		private final Object object;
+
+		private final Object value;
+
+		public GroupKey(Object object, Object value) {
+			this.object = object;
+			this.value = value;
+		}
+
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof GroupKey)) {
+				return false;
+			}
+			GroupKey otherKey = (GroupKey) other;
+			return (this.object == otherKey.object && this.value.equals(otherKey.value));
+		}
+
+		public int hashCode() {
+			return System.identityHashCode(this.object) * 29 + this.value.hashCode();
+		}
+	}
+
+
+	/**
+	 * Collects concurrent invocations of one batch method on one target
+	 * into batches, and decides which thread dispatches a batch.
+	 */
+	private static class BatchGroup {
+
+		private Batch pending;
+
+		private final Set dispatchingThreads = new HashSet();
+
+		/** Number of invocations using this group, guarded by the batchGroups map */
+		private int activeInvocations = 0;
+
+		/**
+		 * Add the given key to the pending batch. Blocks the thread that
+		 * opened the batch until the batch is to be dispatched.
+		 * @return the batch, or null if the current thread is dispatching
+		 * a batch of this group already
+		 */
+		public synchronized Batch join(Object key, boolean keepDuplicates, long batchWindow, int maxBatchSize) {
+
+			Thread currentThread = Thread.currentThread();
+			if (this.dispatchingThreads.contains(currentThread)) {
+				return null;
+			}
+			Batch batch = this.pending;
+			if (batch == null) {
+				batch = new Batch(currentThread, keepDuplicates);
+				this.pending = batch;
+			}
+			batch.addKey(key);
+			if (!batch.isDispatcher(currentThread)) {
+				if (batch.size() >= maxBatchSize) {
+					this.pending = null;
+					notifyAll();
+				}
+				return batch;
+			}
+
+			long deadline = System.currentTimeMillis() + batchWindow;
+			while (this.pending == batch && batch.size() < maxBatchSize) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (this.dispatchingThreads.isEmpty() && remaining <= 0) {
+					break;
+				}
+				try {
+					wait(remaining > 0 ? remaining : 0);
+				}
+				catch (InterruptedException ex) {
+					// Dispatch right away: other invocations are waiting for this batch.
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+			if (this.pending == batch) {
+				this.pending = null;
+			}
+			this.dispatchingThreads.add(currentThread);
+			return batch;
+		}
+
+		public synchronized void dispatchCompleted() {
+			this.dispatchingThreads.remove(Thread.currentThread());
+			notifyAll();
+		}
+	}
+
+
+	/**
+	 * A batch of keys along with the results once dispatched.
+	 * Invocations that joined the batch wait on it.
+	 */
+	private static class Batch {
+
+		private final Thread dispatcherThread;
+
+		private final List keys = new ArrayList();
+
+		private final Set distinctKeys;
+
+		private boolean done = false;
+
+		private Map results;
+
+		private Throwable failure;
+
+		public Batch(Thread dispatcherThread, boolean keepDuplicates) {
+			this.dispatcherThread = dispatcherThread;
+			this.distinctKeys = (keepDuplicates ? null : new HashSet());
+		}
+
+		public boolean isDispatcher(Thread thread) {
+			return (thread == this.dispatcherThread);
+		}
+
+		public synchronized void addKey(Object key) {
+			if (this.distinctKeys == null || this.distinctKeys.add(key)) {
+				this.keys.add(key);
+			}
+		}
+
+		public synchronized int size() {
+			return this.keys.size();
+		}
+
+		public synchronized List getKeys() {
+			return new ArrayList(this.keys);
+		}
+
+		public synchronized void setResults(Map results) {
+			this.results = results;
+			this.done = true;
+			notifyAll();
+		}
+
+		public synchronized void setFailure(Throwable failure) {
+			this.failure = failure;
+			this.done = true;
+			notifyAll();
+		}
+
+		public synchronized Object getResult(Object key) throws Throwable {
+			while (!this.done) {
+				wait();
+			}
+			if (this.failure != null) {
+				throw this.failure;
+			}
+			return (this.results != null ? this.results.get(key) : null);
+		}
+	}
+
+
+	/**
+	 * Invocations of void batch methods deferred within a transaction,
+	 * grouped by method and target in order of their first invocation.
+	 */
+	private static class DeferredInvocations {
+
+		private final Map keysByGroup = CollectionFactory.createLinkedMapIfPossible(4);
+
+		/**
+		 * Add the given key for the given group.
+		 * @return the number of keys deferred for the group
+		 */
+		public int add(GroupKey groupKey, Object key) {
+			List keys = (List) this.keysByGroup.get(groupKey);
+			if (keys == null) {
+				keys = new ArrayList();
+				this.keysByGroup.put(groupKey, keys);
+			}
+			keys.add(key);
+			return keys.size();
+		}
+
+		/**
+		 * Invoke the multi-key methods for all deferred invocations.
+		 */
+		public void dispatch() throws Throwable {
+			while (!this.keysByGroup.isEmpty()) {
+				Iterator it = this.keysByGroup.entrySet().iterator();
+				Map.Entry entry = (Map.Entry) it.next();
+				GroupKey groupKey = (GroupKey) entry.getKey();
+				List keys = (List) entry.getValue();
+				it.remove();
+				((BatchMethod) groupKey.value).invoke(groupKey.object, keys);
+			}
+		}
+
+		public void clear() {
+			this.keysByGroup.clear();
+		}
+	}
+
+
+	/**
+	 * Dispatches deferred invocations before commit, and unbinds
+	 * them from the thread on transaction completion.
+	 */
+	private static class DeferredInvocationsSynchronization extends TransactionSynchronizationAdapter {
+
+		private final Object resourceKey;
+
+		private final DeferredInvocations deferredInvocations;
+
+		public DeferredInvocationsSynchronization(Object resourceKey, DeferredInvocations deferredInvocations) {
+			this.resourceKey = resourceKey;
+			this.deferredInvocations = deferredInvocations;
+		}
+
+		public int getOrder() {
+			return BATCH_SYNCHRONIZATION_ORDER;
+		}
+
+		public void suspend() {
+			TransactionSynchronizationManager.unbindResource(this.resourceKey);
+		}
+
+		public void resume() {
+			TransactionSynchronizationManager.bindResource(this.resourceKey, this.deferredInvocations);
+		}
+
+		public void beforeCommit(boolean readOnly) {
+			try {
+				this.deferredInvocations.dispatch();
+			}
+			catch (RuntimeException ex) {
+				throw ex;
+			}
+			catch (Error err) {
+				throw err;
+			}
+			catch (Throwable ex) {
+				throw new TransactionSystemException("Could not dispatch deferred invocations before commit", ex);
+			}
+		}
+
+		public void afterCompletion(int status) {
+			if (TransactionSynchronizationManager.hasResource(this.resourceKey)) {
+				TransactionSynchronizationManager.unbindResource(this.resourceKey);
+			}
+			this.deferredInvocations.clear();
+		}
+	}
+
+}
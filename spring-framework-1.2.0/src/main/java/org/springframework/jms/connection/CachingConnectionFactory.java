@@ -0,0 +1,612 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.connection;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.QueueConnection;
+import javax.jms.QueueSender;
+import javax.jms.QueueSession;
+import javax.jms.Session;
+import javax.jms.TopicConnection;
+import javax.jms.TopicPublisher;
+import javax.jms.TopicSession;
+
+import org.springframework.jms.support.JmsUtils;
+
+/**
+ * SingleConnectionFactory subclass that adds Session and MessageProducer
+ * caching on top of the single shared Connection. Creating a Session and a
+ * MessageProducer is typically more expensive than sending a message, so
+ * this factory significantly speeds up JmsTemplate's send operations, which
+ * create and close a Session and a MessageProducer per call.
+ *
+ * <p>Sessions are cached per acknowledge mode, with transacted Sessions
+ * forming a mode of their own. A <code>close</code> call on a Session
+ * obtained from this factory returns it to the cache, unless the cache
+ * for its mode is full already ("sessionCacheSize"); a transacted Session
+ * gets rolled back before, discarding any uncommitted work. Every request
+ * for a Session returns a new Session handle: once closed, a handle ignores
+ * further <code>close</code> calls and rejects all other calls, even if
+ * the underlying Session has been handed out again in the meantime.
+ *
+ * <p>Each cached Session holds a cache of MessageProducers per Destination,
+ * with <code>close</code> calls on those MessageProducers getting ignored.
+ * Settings applied to a cached MessageProducer, such as the delivery mode
+ * or the "disableMessageID" flag, are reset to their initial values when
+ * its Session gets closed. Consumers are not cached: JmsTemplate closes
+ * them after each receive. Note that this factory just works with JMS 1.1,
+ * like SingleConnectionFactory's lazy Connection creation.
+ *
+ * <p>Exposes statistics about cache hits and misses, for monitoring
+ * the effectiveness of the configured cache size.
+ *
+ * @since 1.2.1
+ * @see #setSessionCacheSize
+ * @see #setCacheProducers
+ * @see org.springframework.jms.core.JmsTemplate
+ */
+public class CachingConnectionFactory extends SingleConnectionFactory {
+
+	private int sessionCacheSize = 1;
+
+	private boolean cacheProducers = true;
+
+	/** Lists of idle CachedSessions, keyed by Integer acknowledge mode */
+	private final Map cachedSessions = new HashMap();
+
+	private boolean active = true;
+
+	private final Object statisticsMonitor = new Object();
+
+	private long sessionCacheHits;
+
+	private long sessionCacheMisses;
+
+	private long producerCacheHits;
+
+	private long producerCacheMisses;
+
+
+	/**
+	 * Create a new CachingConnectionFactory for bean-style usage.
+	 * @see #setTargetConnectionFactory
+	 */
+	public CachingConnectionFactory() {
+		super();
+	}
+
+	/**
+	 * Create a new CachingConnectionFactory that lazily creates a single
+	 * Connection via the given target ConnectionFactory, and caches
+	 * Sessions and MessageProducers for that Connection.
+	 * @param targetConnectionFactory the target ConnectionFactory
+	 */
+	public CachingConnectionFactory(ConnectionFactory targetConnectionFactory) {
+		super(targetConnectionFactory);
+	}
+
+
+	/**
+	 * Specify the maximum number of idle Sessions to cache per acknowledge mode.
+	 * Default is 1.
+	 * <p>Increase this number for a high rate of concurrent sends: a Session
+	 * that gets closed while its mode's cache is full will be physically closed.
+	 */
+	public void setSessionCacheSize(int sessionCacheSize) {
+		if (sessionCacheSize < 1) {
+			throw new IllegalArgumentException("sessionCacheSize must be at least 1");
+		}
+		this.sessionCacheSize = sessionCacheSize;
+	}
+
+	/**
+	 * Return the maximum number of idle Sessions to cache per acknowledge mode.
+	 */
+	public int getSessionCacheSize() {
+		return sessionCacheSize;
+	}
+
+	/**
+	 * Specify whether to cache MessageProducers per cached Session.
+	 * Default is true.
+	 */
+	public void setCacheProducers(boolean cacheProducers) {
+		this.cacheProducers = cacheProducers;
+	}
+
+	/**
+	 * Return whether to cache MessageProducers per cached Session.
+	 */
+	public boolean isCacheProducers() {
+		return cacheProducers;
+	}
+
+
+	/**
+	 * Physically close all cached Sessions, then close the underlying Connection.
+	 */
+	public void destroy() throws JMSException {
+		List sessionsToClose = new ArrayList();
+		synchronized (this.cachedSessions) {
+			this.active = false;
+			for (Iterator it = this.cachedSessions.values().iterator(); it.hasNext();) {
+				sessionsToClose.addAll((List) it.next());
+			}
+			this.cachedSessions.clear();
+		}
+		for (Iterator it = sessionsToClose.iterator(); it.hasNext();) {
+			((CachedSession) it.next()).physicalClose();
+		}
+		super.destroy();
+	}
+
+	/**
+	 * Wrap the given Connection with a proxy that suppresses close calls,
+	 * like SingleConnectionFactory does, and additionally returns cached
+	 * Sessions from its <code>createSession</code> methods.
+	 */
+	protected Connection getCloseSuppressingConnectionProxy(Connection target) {
+		List classes = new ArrayList(3);
+		classes.add(Connection.class);
+		if (target instanceof QueueConnection) {
+			classes.add(QueueConnection.class);
+		}
+		if (target instanceof TopicConnection) {
+			classes.add(TopicConnection.class);
+		}
+		return (Connection) Proxy.newProxyInstance(
+				Connection.class.getClassLoader(),
+				(Class[]) classes.toArray(new Class[classes.size()]),
+				new SessionCachingConnectionInvocationHandler(target));
+	}
+
+	/**
+	 * Obtain a cached Session for the given mode, or create a new one.
+	 * @param con the target Connection
+	 * @param methodName the name of the Connection method to create a Session with
+	 * ("createSession", "createQueueSession" or "createTopicSession")
+	 * @param transacted whether the Session should be transacted
+	 * @param acknowledgeMode the acknowledge mode of the Session
+	 * @return a new Session proxy for the cached or newly created Session
+	 * @throws JMSException if thrown by JMS API methods
+	 */
+	protected Session getSession(Connection con, String methodName, boolean transacted, int acknowledgeMode)
+			throws JMSException {
+
+		Integer mode = new Integer(transacted ? Session.SESSION_TRANSACTED : acknowledgeMode);
+		CachedSession session = null;
+		synchronized (this.cachedSessions) {
+			LinkedList sessionList = (LinkedList) this.cachedSessions.get(mode);
+			while (session == null && sessionList != null && !sessionList.isEmpty()) {
+				CachedSession candidate = (CachedSession) sessionList.removeFirst();
+				if (isRequestedSessionType(candidate.target, methodName)) {
+					session = candidate;
+				}
+				else {
+					sessionList.addLast(candidate);
+					break;
+				}
+			}
+		}
+		synchronized (this.statisticsMonitor) {
+			if (session != null) {
+				this.sessionCacheHits++;
+			}
+			else {
+				this.sessionCacheMisses++;
+			}
+		}
+		if (session != null) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Found cached JMS Session for mode " + mode + ": " + session.target);
+			}
+			return getCachedSessionProxy(session);
+		}
+		Session target = null;
+		if ("createQueueSession".equals(methodName)) {
+			target = ((QueueConnection) con).createQueueSession(transacted, acknowledgeMode);
+		}
+		else if ("createTopicSession".equals(methodName)) {
+			target = ((TopicConnection) con).createTopicSession(transacted, acknowledgeMode);
+		}
+		else {
+			target = con.createSession(transacted, acknowledgeMode);
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Created cached JMS Session for mode " + mode + ": " + target);
+		}
+		return getCachedSessionProxy(new CachedSession(target, mode));
+	}
+
+	private boolean isRequestedSessionType(Session session, String methodName) {
+		if ("createQueueSession".equals(methodName)) {
+			return (session instanceof QueueSession);
+		}
+		else if ("createTopicSession".equals(methodName)) {
+			return (session instanceof TopicSession);
+		}
+		return true;
+	}
+
+	/**
+	 * Wrap the given cached Session with a new proxy that returns the Session
+	 * to the cache on <code>close</code>, and uses its MessageProducer cache.
+	 * @param session the cached Session to wrap
+	 * @return the wrapped Session
+	 */
+	private Session getCachedSessionProxy(CachedSession session) {
+		Session target = session.target;
+		List classes = new ArrayList(3);
+		classes.add(Session.class);
+		if (target instanceof QueueSession) {
+			classes.add(QueueSession.class);
+		}
+		if (target instanceof TopicSession) {
+			classes.add(TopicSession.class);
+		}
+		return (Session) Proxy.newProxyInstance(
+				Session.class.getClassLoader(),
+				(Class[]) classes.toArray(new Class[classes.size()]),
+				new CachedSessionInvocationHandler(session));
+	}
+
+	/**
+	 * Return the given Session to the cache, if there is room for it.
+	 * @return whether the Session has been cached
+	 */
+	private boolean returnToCache(CachedSession session) {
+		synchronized (this.cachedSessions) {
+			if (!this.active) {
+				return false;
+			}
+			LinkedList sessionList = (LinkedList) this.cachedSessions.get(session.mode);
+			if (sessionList == null) {
+				sessionList = new LinkedList();
+				this.cachedSessions.put(session.mode, sessionList);
+			}
+			if (sessionList.size() >= this.sessionCacheSize) {
+				return false;
+			}
+			sessionList.addFirst(session);
+			return true;
+		}
+	}
+
+	private void recordProducerLookup(boolean hit) {
+		synchronized (this.statisticsMonitor) {
+			if (hit) {
+				this.producerCacheHits++;
+			}
+			else {
+				this.producerCacheMisses++;
+			}
+		}
+	}
+
+
+	/**
+	 * Return the number of Session requests served from the cache.
+	 */
+	public long getSessionCacheHits() {
+		synchronized (this.statisticsMonitor) {
+			return this.sessionCacheHits;
+		}
+	}
+
+	/**
+	 * Return the number of Session requests that led to a new Session.
+	 */
+	public long getSessionCacheMisses() {
+		synchronized (this.statisticsMonitor) {
+			return this.sessionCacheMisses;
+		}
+	}
+
+	/**
+	 * Return the number of MessageProducer requests served from the cache.
+	 */
+	public long getProducerCacheHits() {
+		synchronized (this.statisticsMonitor) {
+			return this.producerCacheHits;
+		}
+	}
+
+	/**
+	 * Return the number of MessageProducer requests that led to a new MessageProducer.
+	 */
+	public long getProducerCacheMisses() {
+		synchronized (this.statisticsMonitor) {
+			return this.producerCacheMisses;
+		}
+	}
+
+	/**
+	 * Return the current number of idle Sessions in the cache, across all modes.
+	 */
+	public int getCachedSessionCount() {
+		synchronized (this.cachedSessions) {
+			int count = 0;
+			for (Iterator it = this.cachedSessions.values().iterator(); it.hasNext();) {
+				count += ((List) it.next()).size();
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * Reset the cache hit and miss statistics.
+	 */
+	public void resetStatistics() {
+		synchronized (this.statisticsMonitor) {
+			this.sessionCacheHits = 0;
+			this.sessionCacheMisses = 0;
+			this.producerCacheHits = 0;
+			this.producerCacheMisses = 0;
+		}
+	}
+
+
+	/**
+	 * Invocation handler for the shared Connection: suppresses close calls
+	 * and returns cached Sessions.
+	 */
+	private class SessionCachingConnectionInvocationHandler implements InvocationHandler {
+
+		private final Connection target;
+
+		private SessionCachingConnectionInvocationHandler(Connection target) {
+			this.target = target;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String methodName = method.getName();
+			if (methodName.equals("close")) {
+				// don't pass the call on
+				return null;
+			}
+			if ((methodName.equals("createSession") || methodName.equals("createQueueSession") ||
+					methodName.equals("createTopicSession")) && args != null && args.length == 2) {
+				boolean transacted = ((Boolean) args[0]).booleanValue();
+				int acknowledgeMode = ((Integer) args[1]).intValue();
+				return getSession(this.target, methodName, transacted, acknowledgeMode);
+			}
+			try {
+				return method.invoke(this.target, args);
+			}
+			catch (InvocationTargetException ex) {
+				throw ex.getTargetException();
+			}
+		}
+	}
+
+
+	/**
+	 * Invocation handler for a Session handle: returns the cached Session to
+	 * the cache on the first <code>close</code> call, and rejects any call
+	 * but <code>close</code> afterwards.
+	 */
+	private class CachedSessionInvocationHandler implements InvocationHandler {
+
+		private final CachedSession session;
+
+		/** Only accessed by the thread using the Session */
+		private boolean closed = false;
+
+		private CachedSessionInvocationHandler(CachedSession session) {
+			this.session = session;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String methodName = method.getName();
+			if (methodName.equals("equals")) {
+				// Only consider equal when proxies are identical.
+				return (proxy == args[0] ? Boolean.TRUE : Boolean.FALSE);
+			}
+			else if (methodName.equals("hashCode")) {
+				// Use hashCode of Session proxy.
+				return new Integer(System.identityHashCode(proxy));
+			}
+			else if (methodName.equals("close")) {
+				if (!this.closed) {
+					this.closed = true;
+					this.session.logicalClose();
+				}
+				return null;
+			}
+			if (this.closed) {
+				throw new javax.jms.IllegalStateException("Session has been closed");
+			}
+			if (isCacheProducers() && args != null && args.length == 1 &&
+					(methodName.equals("createProducer") || methodName.equals("createSender") ||
+					methodName.equals("createPublisher"))) {
+				return this.session.getCachedProducer((Destination) args[0], methodName);
+			}
+			try {
+				return method.invoke(this.session.target, args);
+			}
+			catch (InvocationTargetException ex) {
+				throw ex.getTargetException();
+			}
+		}
+	}
+
+
+	/**
+	 * A cached Session along with its cached MessageProducers.
+	 */
+	private class CachedSession {
+
+		/** Key for the anonymous MessageProducer, created with a null Destination */
+		private final Object NULL_DESTINATION_KEY = new Object();
+
+		private final Session target;
+
+		private final Integer mode;
+
+		/** MessageProducer proxies, keyed by Destination; only accessed by the thread using the Session */
+		private final Map cachedProducers = new HashMap();
+
+		private CachedSession(Session target, Integer mode) {
+			this.target = target;
+			this.mode = mode;
+		}
+
+		private MessageProducer getCachedProducer(Destination dest, String methodName) throws JMSException {
+			Object key = (dest != null ? (Object) dest : NULL_DESTINATION_KEY);
+			MessageProducer producer = (MessageProducer) this.cachedProducers.get(key);
+			recordProducerLookup(producer != null);
+			if (producer == null) {
+				MessageProducer target = null;
+				if ("createSender".equals(methodName)) {
+					target = ((QueueSession) this.target).createSender((javax.jms.Queue) dest);
+				}
+				else if ("createPublisher".equals(methodName)) {
+					target = ((TopicSession) this.target).createPublisher((javax.jms.Topic) dest);
+				}
+				else {
+					target = this.target.createProducer(dest);
+				}
+				producer = getCloseSuppressingProducerProxy(target);
+				this.cachedProducers.put(key, producer);
+			}
+			return producer;
+		}
+
+		private MessageProducer getCloseSuppressingProducerProxy(MessageProducer target) throws JMSException {
+			List classes = new ArrayList(3);
+			classes.add(MessageProducer.class);
+			if (target instanceof QueueSender) {
+				classes.add(QueueSender.class);
+			}
+			if (target instanceof TopicPublisher) {
+				classes.add(TopicPublisher.class);
+			}
+			return (MessageProducer) Proxy.newProxyInstance(
+					MessageProducer.class.getClassLoader(),
+					(Class[]) classes.toArray(new Class[classes.size()]),
+					new CloseSuppressingProducerInvocationHandler(target));
+		}
+
+		private void logicalClose() throws JMSException {
+			if (this.target.getTransacted()) {
+				// Discard any uncommitted work before handing the Session to the next user.
+				this.target.rollback();
+			}
+			// Don't let the next user inherit the settings of this one.
+			for (Iterator it = this.cachedProducers.values().iterator(); it.hasNext();) {
+				((CloseSuppressingProducerInvocationHandler) Proxy.getInvocationHandler(it.next())).resetSettings();
+			}
+			if (!returnToCache(this)) {
+				physicalClose();
+			}
+		}
+
+		private void physicalClose() {
+			for (Iterator it = this.cachedProducers.values().iterator(); it.hasNext();) {
+				CloseSuppressingProducerInvocationHandler handler =
+						(CloseSuppressingProducerInvocationHandler) Proxy.getInvocationHandler(it.next());
+				try {
+					handler.target.close();
+				}
+				catch (JMSException ex) {
+					logger.debug("Failed to close cached JMS MessageProducer", ex);
+				}
+			}
+			this.cachedProducers.clear();
+			JmsUtils.closeSession(this.target);
+		}
+	}
+
+
+	/**
+	 * Invocation handler for a cached MessageProducer: suppresses close calls,
+	 * and keeps track of changes to the producer's settings.
+	 */
+	private static class CloseSuppressingProducerInvocationHandler implements InvocationHandler {
+
+		private final MessageProducer target;
+
+		private final int deliveryMode;
+
+		private final int priority;
+
+		private final long timeToLive;
+
+		private final boolean disableMessageID;
+
+		private final boolean disableMessageTimestamp;
+
+		/** Whether settings have been changed since creation or the last reset */
+		private boolean modified = false;
+
+		private CloseSuppressingProducerInvocationHandler(MessageProducer target) throws JMSException {
+			this.target = target;
+			this.deliveryMode = target.getDeliveryMode();
+			this.priority = target.getPriority();
+			this.timeToLive = target.getTimeToLive();
+			this.disableMessageID = target.getDisableMessageID();
+			this.disableMessageTimestamp = target.getDisableMessageTimestamp();
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String methodName = method.getName();
+			if (methodName.equals("close")) {
+				// don't pass the call on
+				return null;
+			}
+			if (methodName.startsWith("set")) {
+				this.modified = true;
+			}
+			try {
+				return method.invoke(this.target, args);
+			}
+			catch (InvocationTargetException ex) {
+				throw ex.getTargetException();
+			}
+		}
+
+		/**
+		 * Restore the settings that the producer had on creation.
+		 */
+		private void resetSettings() throws JMSException {
+			if (this.modified) {
+				this.target.setDeliveryMode(this.deliveryMode);
+				this.target.setPriority(this.priority);
+				this.target.setTimeToLive(this.timeToLive);
+				this.target.setDisableMessageID(this.disableMessageID);
+				this.target.setDisableMessageTimestamp(this.disableMessageTimestamp);
+				this.modified = false;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.jms.core;
+
+import java.util.Collection;
+import java.util.concurrent.Future;
+
+import javax.jms.Destination;
+
+/**
+ * Extension of the JmsOperations interface, adding asynchronous send
+ * operations that return a JDK 1.5 Future for tracking their completion.
+ * Implemented by AsyncJmsTemplate.
+ *
+ * <p>Note: This interface builds on JDK 1.5's <code>java.util.concurrent</code>
+ * Future type. The plain JmsOperations interface remains available on JDK 1.3
+ * and 1.4.
+ *
+ * @since 1.2.1
+ * @see AsyncJmsTemplate
+ * @see JmsOperations
+ */
+public interface AsyncJmsOperations extends JmsOperations {
+
+	/**
+	 * Send a message to the specified destination asynchronously.
+	 * The MessageCreator callback will be invoked in a different thread.
+	 * <p>Note that the send operation will not participate in a transaction
+	 * of the calling thread.
+	 * @param destination the destination to send this message to
+	 * @param messageCreator callback to create a message
+	 * @return a Future that completes once the message has been sent,
+	 * with any JmsException exposed as cause of an ExecutionException
+	 * @throws org.springframework.core.task.TaskRejectedException
+	 * if no further send operations can be queued
+	 */
+	Future sendAsync(Destination destination, MessageCreator messageCreator);
+
+	/**
+	 * Send a message to the specified destination asynchronously.
+	 * The MessageCreator callback will be invoked in a different thread.
+	 * <p>Note that the send operation will not participate in a transaction
+	 * of the calling thread.
+	 * @param destinationName the name of the destination to send this message to
+	 * (to be resolved to an actual destination by a DestinationResolver)
+	 * @param messageCreator callback to create a message
+	 * @return a Future that completes once the message has been sent,
+	 * with any JmsException exposed as cause of an ExecutionException
+	 * @throws org.springframework.core.task.TaskRejectedException
+	 * if no further send operations can be queued
+	 */
+	Future sendAsync(String destinationName, MessageCreator messageCreator);
+
+	/**
+	 * Send the given object to the specified destination asynchronously,
+	 * converting the object to a JMS message with a configured MessageConverter.
+	 * <p>Note that the send operation will not participate in a transaction
+	 * of the calling thread.
+	 * @param destination the destination to send this message to
+	 * @param message the object to convert to a message
+	 * @return a Future that completes once the message has been sent,
+	 * with any JmsException exposed as cause of an ExecutionException
+	 * @throws org.springframework.core.task.TaskRejectedException
+	 * if no further send operations can be queued
+	 */
+	Future convertAndSendAsync(Destination destination, Object message);
+
+	/**
+	 * Send the given object to the specified destination asynchronously,
+	 * converting the object to a JMS message with a configured MessageConverter.
+	 * <p>Note that the send operation will not participate in a transaction
+	 * of the calling thread.
+	 * @param destinationName the name of the destination to send this message to
+	 * (to be resolved to an actual destination by a DestinationResolver)
+	 * @param message the object to convert to a message
+	 * @return a Future that completes once the message has been sent,
+	 * with any JmsException exposed as cause of an ExecutionException
+	 * @throws org.springframework.core.task.TaskRejectedException
+	 * if no further send operations can be queued
+	 */
+	Future convertAndSendAsync(String destinationName, Object message);
+
+	/**
+	 * Send the given objects to the specified destination asynchronously,
+	 * as one batch. The Collection will be copied before queueing the batch.
+	 * <p>Note that the send operation will not participate in a transaction
+	 * of the calling thread.
+	 * @param destination the destination to send the messages to
+	 * @param messages the objects to convert to messages
+	 * @return a Future that completes once all messages have been sent,
+	 * with any JmsException exposed as cause of an ExecutionException
+	 * @throws org.springframework.core.task.TaskRejectedException
+	 * if no further send operations can be queued
+	 * @see #convertAndSendBatch(Destination, java.util.Iterator)
+	 */
+	Future convertAndSendBatchAsync(Destination destination, Collection messages);
+
+	/**
+	 * Send the given objects to the specified destination asynchronously,
+	 * as one batch. The Collection will be copied before queueing the batch.
+	 * <p>Note that the send operation will not participate in a transaction
+	 * of the calling thread.
+	 * @param destinationName the name of the destination to send the messages to
+	 * (to be resolved to an actual destination by a DestinationResolver)
+	 * @param messages the objects to convert to messages
+	 * @return a Future that completes once all messages have been sent,
+	 * with any JmsException exposed as cause of an ExecutionException
+	 * @throws org.springframework.core.task.TaskRejectedException
+	 * if no further send operations can be queued
+	 * @see #convertAndSendBatch(String, java.util.Iterator)
+	 */
+	Future convertAndSendBatchAsync(String destinationName, Collection messages);
+
+}
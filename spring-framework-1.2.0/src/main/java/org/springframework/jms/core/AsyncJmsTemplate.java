@@ -0,0 +1,166 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.jms.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.Future;
+
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+
+import org.springframework.scheduling.concurrent.AsyncTaskExecutor;
+
+/**
+ * A subclass of JmsTemplate that adds asynchronous send operations,
+ * executing each send operation on a given AsyncTaskExecutor and
+ * returning a JDK 1.5 Future for tracking its completion.
+ *
+ * <p>Requires JDK 1.5 or higher, in contrast to JmsTemplate itself,
+ * which remains usable on JDK 1.3 and 1.4.
+ *
+ * <p>Asynchronous send operations need to be enabled explicitly by
+ * specifying an "asyncTaskExecutor", typically a ThreadPoolTaskExecutor
+ * with a limited "queueCapacity" that rejects further send operations
+ * once too many are pending.
+ *
+ * @since 1.2.1
+ * @see #setAsyncTaskExecutor
+ * @see JmsTemplate
+ * @see org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor
+ */
+public class AsyncJmsTemplate extends JmsTemplate implements AsyncJmsOperations {
+
+	private AsyncTaskExecutor asyncTaskExecutor;
+
+
+	/**
+	 * Create a new AsyncJmsTemplate for bean-style usage.
+	 * <p>Note: The ConnectionFactory and the AsyncTaskExecutor have to be
+	 * set before using the instance.
+	 * @see #setConnectionFactory
+	 * @see #setAsyncTaskExecutor
+	 */
+	public AsyncJmsTemplate() {
+		super();
+	}
+
+	/**
+	 * Create a new AsyncJmsTemplate, given a ConnectionFactory.
+	 * <p>Note: The AsyncTaskExecutor has to be set before using the instance.
+	 * @param connectionFactory the ConnectionFactory to obtain connections from
+	 * @see #setAsyncTaskExecutor
+	 */
+	public AsyncJmsTemplate(ConnectionFactory connectionFactory) {
+		super(connectionFactory);
+	}
+
+
+	/**
+	 * Set the AsyncTaskExecutor to use for asynchronous send operations.
+	 * <p>Typically a ThreadPoolTaskExecutor with a limited "queueCapacity",
+	 * rejecting further send operations once too many are pending.
+	 * There is no default: asynchronous sends need to be enabled explicitly.
+	 * @see #sendAsync(Destination, MessageCreator)
+	 * @see org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor
+	 */
+	public void setAsyncTaskExecutor(AsyncTaskExecutor asyncTaskExecutor) {
+		this.asyncTaskExecutor = asyncTaskExecutor;
+	}
+
+	/**
+	 * Return the AsyncTaskExecutor to use for asynchronous send operations.
+	 */
+	public AsyncTaskExecutor getAsyncTaskExecutor() {
+		return asyncTaskExecutor;
+	}
+
+	private void checkAsyncTaskExecutor() throws IllegalStateException {
+		if (getAsyncTaskExecutor() == null) {
+			throw new IllegalStateException("No asyncTaskExecutor registered. Check configuration of AsyncJmsTemplate.");
+		}
+	}
+
+	private void checkMessageConverter() throws IllegalStateException {
+		if (getMessageConverter() == null) {
+			throw new IllegalStateException("No messageConverter registered. Check configuration of AsyncJmsTemplate.");
+		}
+	}
+
+
+	public Future sendAsync(final Destination destination, final MessageCreator messageCreator) {
+		checkAsyncTaskExecutor();
+		return getAsyncTaskExecutor().submit(new Runnable() {
+			public void run() {
+				send(destination, messageCreator);
+			}
+		});
+	}
+
+	public Future sendAsync(final String destinationName, final MessageCreator messageCreator) {
+		checkAsyncTaskExecutor();
+		return getAsyncTaskExecutor().submit(new Runnable() {
+			public void run() {
+				send(destinationName, messageCreator);
+			}
+		});
+	}
+
+	public Future convertAndSendAsync(final Destination destination, final Object message) {
+		checkMessageConverter();
+		checkAsyncTaskExecutor();
+		return getAsyncTaskExecutor().submit(new Runnable() {
+			public void run() {
+				convertAndSend(destination, message);
+			}
+		});
+	}
+
+	public Future convertAndSendAsync(final String destinationName, final Object message) {
+		checkMessageConverter();
+		checkAsyncTaskExecutor();
+		return getAsyncTaskExecutor().submit(new Runnable() {
+			public void run() {
+				convertAndSend(destinationName, message);
+			}
+		});
+	}
+
+	public Future convertAndSendBatchAsync(final Destination destination, Collection messages) {
+		checkMessageConverter();
+		checkAsyncTaskExecutor();
+		final Collection messagesToSend = new ArrayList(messages);
+		return getAsyncTaskExecutor().submit(new Runnable() {
+			public void run() {
+				convertAndSendBatch(destination, messagesToSend.iterator());
+			}
+		});
+	}
+
+	public Future convertAndSendBatchAsync(final String destinationName, Collection messages) {
+		checkMessageConverter();
+		checkAsyncTaskExecutor();
+		final Collection messagesToSend = new ArrayList(messages);
+		return getAsyncTaskExecutor().submit(new Runnable() {
+			public void run() {
+				convertAndSendBatch(destinationName, messagesToSend.iterator());
+			}
+		});
+	}
+
+}
@@ -16,6 +16,8 @@
 
 package org.springframework.jms.core;
 
+import java.util.Iterator;
+
 import javax.jms.Destination;
 import javax.jms.Message;
 
@@ -161,6 +163,69 @@ public interface JmsOperations {
 	    throws JmsException;
 
 
+	/**
+	 * Send a batch of messages to the default destination, reusing a single
+	 * JMS Session and MessageProducer for all of them.
+	 * <p>This will only work with a default destination specified!
+	 * @param messageCreators an Iterator over MessageCreator objects,
+	 * each of them creating one message to send
+	 * @throws JmsException checked JMSException converted to unchecked
+	 */
+	void sendBatch(Iterator messageCreators) throws JmsException;
+
+	/**
+	 * Send a batch of messages to the specified destination, reusing a single
+	 * JMS Session and MessageProducer for all of them.
+	 * @param destination the destination to send the messages to
+	 * @param messageCreators an Iterator over MessageCreator objects,
+	 * each of them creating one message to send
+	 * @throws JmsException checked JMSException converted to unchecked
+	 */
+	void sendBatch(Destination destination, Iterator messageCreators) throws JmsException;
+
+	/**
+	 * Send a batch of messages to the specified destination, reusing a single
+	 * JMS Session and MessageProducer for all of them.
+	 * @param destinationName the name of the destination to send the messages to
+	 * (to be resolved to an actual destination by a DestinationResolver)
+	 * @param messageCreators an Iterator over MessageCreator objects,
+	 * each of them creating one message to send
+	 * @throws JmsException checked JMSException converted to unchecked
+	 */
+	void sendBatch(String destinationName, Iterator messageCreators) throws JmsException;
+
+	/**
+	 * Send the given objects to the default destination, converting each
+	 * object to a JMS message with a configured MessageConverter and reusing
+	 * a single JMS Session and MessageProducer for all of them.
+	 * <p>This will only work with a default destination specified!
+	 * @param messages an Iterator over the objects to convert to messages
+	 * @throws JmsException checked JMSException converted to unchecked
+	 */
+	void convertAndSendBatch(Iterator messages) throws JmsException;
+
+	/**
+	 * Send the given objects to the specified destination, converting each
+	 * object to a JMS message with a configured MessageConverter and reusing
+	 * a single JMS Session and MessageProducer for all of them.
+	 * @param destination the destination to send the messages to
+	 * @param messages an Iterator over the objects to convert to messages
+	 * @throws JmsException checked JMSException converted to unchecked
+	 */
+	void convertAndSendBatch(Destination destination, Iterator messages) throws JmsException;
+
+	/**
+	 * Send the given objects to the specified destination, converting each
+	 * object to a JMS message with a configured MessageConverter and reusing
+	 * a single JMS Session and MessageProducer for all of them.
+	 * @param destinationName the name of the destination to send the messages to
+	 * (to be resolved to an actual destination by a DestinationResolver)
+	 * @param messages an Iterator over the objects to convert to messages
+	 * @throws JmsException checked JMSException converted to unchecked
+	 */
+	void convertAndSendBatch(String destinationName, Iterator messages) throws JmsException;
+
+
 	/**
 	 * Receive a message synchronously from the default destination, but only
 	 * wait up to a specified time for delivery.
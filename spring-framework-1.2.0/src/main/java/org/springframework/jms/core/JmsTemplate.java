@@ -16,6 +16,8 @@
 
 package org.springframework.jms.core;
 
+import java.util.Iterator;
+
 import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
 import javax.jms.Destination;
@@ -57,6 +59,10 @@ import org.springframework.transaction.support.TransactionSynchronizationManager
  * as default strategies for resolving a destination name or converting a message,
  * respectively.
  *
+ * <p>Batches of messages can be sent through the <code>sendBatch</code> and
+ * <code>convertAndSendBatch</code> methods, reusing one Session and MessageProducer
+ * for the entire batch.
+ *
  * @author Mark Pollack
  * @author Juergen Hoeller
  * @since 1.1
@@ -116,6 +122,9 @@ public class JmsTemplate extends JmsAccessor implements JmsOperations {
 	private long timeToLive = Message.DEFAULT_TIME_TO_LIVE;
 
 
+	private int batchCommitSize = 0;
+
+
 	/**
 	 * Create a new JmsTemplate for bean-style usage.
 	 * <p>Note: The ConnectionFactory has to be set before using the instance.
@@ -471,6 +480,29 @@ public class JmsTemplate extends JmsAccessor implements JmsOperations {
 	}
 
 
+	/**
+	 * Set the number of messages after which a batch send operation
+	 * commits a transacted Session created by this template.
+	 * <p>Default is 0, committing once at the end of the entire batch.
+	 * Specify a positive number to commit every N messages, keeping the
+	 * amount of uncommitted work per transaction bounded for large batches.
+	 * <p>Does not apply to a Session that participates in an externally
+	 * managed transaction, which will be committed by its transaction manager.
+	 * @see #setSessionTransacted
+	 * @see #sendBatch(Destination, Iterator)
+	 */
+	public void setBatchCommitSize(int batchCommitSize) {
+		this.batchCommitSize = batchCommitSize;
+	}
+
+	/**
+	 * Return the number of messages after which a batch send operation commits.
+	 */
+	public int getBatchCommitSize() {
+		return batchCommitSize;
+	}
+
+
 	private void checkDefaultDestination() throws IllegalStateException {
 		if (this.defaultDestination == null) {
 			throw new IllegalStateException(
@@ -709,8 +741,7 @@ public class JmsTemplate extends JmsAccessor implements JmsOperations {
 		}
 		doSend(producer, message);
 		// Check commit - avoid commit call within a JTA transaction.
-		if (session.getTransacted() && isSessionTransacted() &&
-				!TransactionSynchronizationManager.hasResource(getConnectionFactory())) {
+		if (isLocallyTransacted(session)) {
 			// Transacted session created by this template -> commit.
 			commitIfNecessary(session);
 		}
@@ -726,6 +757,15 @@ public class JmsTemplate extends JmsAccessor implements JmsOperations {
 	}
 
 
+	/**
+	 * Return whether the given Session is transacted and has been created
+	 * by this template, that is, whether this template needs to commit it.
+	 */
+	private boolean isLocallyTransacted(Session session) throws JMSException {
+		return (session.getTransacted() && isSessionTransacted() &&
+				!TransactionSynchronizationManager.hasResource(getConnectionFactory()));
+	}
+
 	public void convertAndSend(Object message) throws JmsException {
 		checkDefaultDestination();
 		if (getDefaultDestination() != null) {
@@ -791,6 +831,90 @@ public class JmsTemplate extends JmsAccessor implements JmsOperations {
 	}
 
 
+	public void sendBatch(Iterator messageCreators) throws JmsException {
+		checkDefaultDestination();
+		if (getDefaultDestination() != null) {
+			sendBatch(getDefaultDestination(), messageCreators);
+		}
+		else {
+			sendBatch(getDefaultDestinationName(), messageCreators);
+		}
+	}
+
+	public void sendBatch(final Destination destination, final Iterator messageCreators) throws JmsException {
+		execute(new SessionCallback() {
+			public Object doInJms(Session session) throws JMSException {
+				doSendBatch(session, destination, messageCreators);
+				return null;
+			}
+		});
+	}
+
+	public void sendBatch(final String destinationName, final Iterator messageCreators) throws JmsException {
+		execute(new SessionCallback() {
+			public Object doInJms(Session session) throws JMSException {
+				Destination destination = resolveDestinationName(session, destinationName);
+				doSendBatch(session, destination, messageCreators);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Send all messages created by the given MessageCreators through a single
+	 * MessageProducer, committing a locally transacted Session every
+	 * "batchCommitSize" messages and at the end of the batch.
+	 * @param session the JMS Session to send with
+	 * @param destination the JMS Destination to send to
+	 * @param messageCreators an Iterator over MessageCreator objects
+	 * @throws JMSException if thrown by JMS API methods
+	 * @see #setBatchCommitSize
+	 */
+	protected void doSendBatch(Session session, Destination destination, Iterator messageCreators)
+			throws JMSException {
+
+		MessageProducer producer = createProducer(session, destination);
+		boolean locallyTransacted = isLocallyTransacted(session);
+		int uncommitted = 0;
+		while (messageCreators.hasNext()) {
+			MessageCreator messageCreator = (MessageCreator) messageCreators.next();
+			Message message = messageCreator.createMessage(session);
+			if (logger.isDebugEnabled()) {
+				logger.debug("Sending created message [" + message + "] as part of batch");
+			}
+			doSend(producer, message);
+			uncommitted++;
+			if (locallyTransacted && uncommitted == getBatchCommitSize()) {
+				commitIfNecessary(session);
+				uncommitted = 0;
+			}
+		}
+		if (locallyTransacted && uncommitted > 0) {
+			commitIfNecessary(session);
+		}
+	}
+
+	public void convertAndSendBatch(Iterator messages) throws JmsException {
+		checkDefaultDestination();
+		if (getDefaultDestination() != null) {
+			convertAndSendBatch(getDefaultDestination(), messages);
+		}
+		else {
+			convertAndSendBatch(getDefaultDestinationName(), messages);
+		}
+	}
+
+	public void convertAndSendBatch(Destination destination, Iterator messages) throws JmsException {
+		checkMessageConverter();
+		sendBatch(destination, new ConvertingMessageCreatorIterator(messages));
+	}
+
+	public void convertAndSendBatch(String destinationName, Iterator messages) throws JmsException {
+		checkMessageConverter();
+		sendBatch(destinationName, new ConvertingMessageCreatorIterator(messages));
+	}
+
+
 	public Message receive() throws JmsException {
 		checkDefaultDestination();
 		if (getDefaultDestination() != null) {
@@ -932,4 +1056,36 @@ public class JmsTemplate extends JmsAccessor implements JmsOperations {
 		return null;
 	}
 
+
+
+	/**
+	 * Iterator that exposes each object of the given Iterator as a
+	 * MessageCreator, converting it through the template's MessageConverter.
+	 */
+	private class ConvertingMessageCreatorIterator implements Iterator {
+
+		private final Iterator messages;
+
+		public ConvertingMessageCreatorIterator(Iterator messages) {
+			this.messages = messages;
+		}
+
+		public boolean hasNext() {
+			return this.messages.hasNext();
+		}
+
+		public Object next() {
+			final Object message = this.messages.next();
+			return new MessageCreator() {
+				public Message createMessage(Session session) throws JMSException {
+					return getMessageConverter().toMessage(message, session);
+				}
+			};
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException("remove not supported");
+		}
+	}
+
 }
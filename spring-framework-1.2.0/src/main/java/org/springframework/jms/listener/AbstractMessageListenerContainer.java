@@ -0,0 +1,641 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.listener;
+
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.ExceptionListener;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.Session;
+
+import org.springframework.beans.factory.BeanNameAware;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.Constants;
+import org.springframework.jms.JmsException;
+import org.springframework.jms.support.JmsAccessor;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.jms.support.destination.DestinationResolver;
+import org.springframework.jms.support.destination.DynamicDestinationResolver;
+
+/**
+ * Abstract base class for message listener containers. Holds a single
+ * shared JMS Connection for all listener sessions, and defines the common
+ * configuration: the Destination (or destination name) to listen to,
+ * an optional message selector, the MessageListener to invoke, and the
+ * session transaction and acknowledgement settings.
+ *
+ * <p>This class builds on the JMS 1.1 domain-independent API. The listener
+ * container lifecycle is driven through <code>afterPropertiesSet</code>
+ * (initializing and, by default, starting the container) and
+ * <code>destroy</code> (shutting it down); it can also be stopped and
+ * restarted at runtime via <code>stop</code> and <code>start</code>.
+ *
+ * <p>Message acknowledgement works as follows, for each received message:
+ * <ul>
+ * <li>"sessionTransacted" set to true: the local JMS transaction gets
+ * committed after successful listener execution, and rolled back in case
+ * of a listener exception, leading to redelivery of the message.
+ * <li>"sessionAcknowledgeMode" set to CLIENT_ACKNOWLEDGE: the message
+ * gets acknowledged after successful listener execution.
+ * <li>"sessionAcknowledgeMode" set to AUTO_ACKNOWLEDGE (the default) or
+ * DUPS_OK_ACKNOWLEDGE: automatic acknowledgement by the JMS provider.
+ * </ul>
+ *
+ * @since 1.2.1
+ * @see #setDestination
+ * @see #setMessageListener
+ * @see #setSessionTransacted
+ * @see DefaultMessageListenerContainer
+ */
+public abstract class AbstractMessageListenerContainer extends JmsAccessor
+		implements BeanNameAware, DisposableBean {
+
+	/** Constants instance for javax.jms.Session */
+	private static final Constants constants = new Constants(Session.class);
+
+
+	private Object destination;
+
+	private String messageSelector;
+
+	private MessageListener messageListener;
+
+	private boolean pubSubDomain = false;
+
+	private boolean sessionTransacted = false;
+
+	private int sessionAcknowledgeMode = Session.AUTO_ACKNOWLEDGE;
+
+	private DestinationResolver destinationResolver = new DynamicDestinationResolver();
+
+	private ExceptionListener exceptionListener;
+
+	private boolean autoStartup = true;
+
+	private String beanName;
+
+	private Connection sharedConnection;
+
+	private final Object sharedConnectionMonitor = new Object();
+
+	private boolean active = false;
+
+	private boolean running = false;
+
+	/** Monitor for the active and running flags, also used for waiting and notifying */
+	protected final Object lifecycleMonitor = new Object();
+
+
+	/**
+	 * Set the destination to receive messages from.
+	 * <p>Alternatively, specify a "destinationName", to be dynamically
+	 * resolved via the DestinationResolver.
+	 * @see #setDestinationName(String)
+	 */
+	public void setDestination(Destination destination) {
+		this.destination = destination;
+	}
+
+	/**
+	 * Return the destination to receive messages from.
+	 */
+	public Destination getDestination() {
+		return (this.destination instanceof Destination ? (Destination) this.destination : null);
+	}
+
+	/**
+	 * Set the name of the destination to receive messages from.
+	 * The specified name will be dynamically resolved via the DestinationResolver.
+	 * <p>Alternatively, specify a JMS Destination object as "destination".
+	 * @see #setDestinationResolver
+	 * @see #setDestination(Destination)
+	 */
+	public void setDestinationName(String destinationName) {
+		this.destination = destinationName;
+	}
+
+	/**
+	 * Return the name of the destination to receive messages from.
+	 */
+	public String getDestinationName() {
+		return (this.destination instanceof String ? (String) this.destination : null);
+	}
+
+	/**
+	 * Set the JMS message selector expression (or null if none).
+	 * Default is none.
+	 * <p>See the JMS specification for a detailed definition of selector expressions.
+	 */
+	public void setMessageSelector(String messageSelector) {
+		this.messageSelector = messageSelector;
+	}
+
+	/**
+	 * Return the JMS message selector expression (or null if none).
+	 */
+	public String getMessageSelector() {
+		return messageSelector;
+	}
+
+	/**
+	 * Set the MessageListener to invoke for each received message.
+	 * <p>The listener will be invoked concurrently by multiple consumer
+	 * threads if the container is configured for concurrent consumers,
+	 * so it needs to be thread-safe in that case.
+	 */
+	public void setMessageListener(MessageListener messageListener) {
+		this.messageListener = messageListener;
+	}
+
+	/**
+	 * Return the MessageListener to invoke for each received message.
+	 */
+	public MessageListener getMessageListener() {
+		return messageListener;
+	}
+
+	/**
+	 * Configure the listener container with knowledge of the JMS domain used.
+	 * Default is Point-to-Point (Queues).
+	 * <p>Only relevant for resolving a "destinationName" into a dynamic
+	 * Destination: tells what type of destination to create.
+	 * @param pubSubDomain true for Publish/Subscribe domain (Topics),
+	 * false for Point-to-Point domain (Queues)
+	 * @see #setDestinationResolver
+	 */
+	public void setPubSubDomain(boolean pubSubDomain) {
+		this.pubSubDomain = pubSubDomain;
+	}
+
+	/**
+	 * Return whether the Publish/Subscribe domain (Topics) is used.
+	 * Otherwise, the Point-to-Point domain (Queues) is used.
+	 */
+	public boolean isPubSubDomain() {
+		return pubSubDomain;
+	}
+
+	/**
+	 * Set the transaction mode that is used when creating the JMS sessions
+	 * that receive messages. Default is false.
+	 * <p>If true, each message will be received and processed within a local
+	 * JMS transaction, committed after successful listener execution.
+	 * @see Connection#createSession
+	 */
+	public void setSessionTransacted(boolean sessionTransacted) {
+		this.sessionTransacted = sessionTransacted;
+	}
+
+	/**
+	 * Return whether the JMS sessions used for receiving messages are transacted.
+	 */
+	public boolean isSessionTransacted() {
+		return sessionTransacted;
+	}
+
+	/**
+	 * Set the JMS acknowledgement mode by the name of the corresponding constant
+	 * in the JMS Session interface, e.g. "CLIENT_ACKNOWLEDGE".
+	 * @param constantName name of the constant
+	 * @see Session#AUTO_ACKNOWLEDGE
+	 * @see Session#CLIENT_ACKNOWLEDGE
+	 * @see Session#DUPS_OK_ACKNOWLEDGE
+	 * @see Connection#createSession
+	 */
+	public void setSessionAcknowledgeModeName(String constantName) {
+		setSessionAcknowledgeMode(constants.asNumber(constantName).intValue());
+	}
+
+	/**
+	 * Set the JMS acknowledgement mode that is used when creating the JMS
+	 * sessions that receive messages. Default is AUTO_ACKNOWLEDGE.
+	 * @param sessionAcknowledgeMode the acknowledgement mode
+	 * @see Session#AUTO_ACKNOWLEDGE
+	 * @see Session#CLIENT_ACKNOWLEDGE
+	 * @see Session#DUPS_OK_ACKNOWLEDGE
+	 * @see Connection#createSession
+	 */
+	public void setSessionAcknowledgeMode(int sessionAcknowledgeMode) {
+		this.sessionAcknowledgeMode = sessionAcknowledgeMode;
+	}
+
+	/**
+	 * Return the acknowledgement mode for JMS sessions.
+	 */
+	public int getSessionAcknowledgeMode() {
+		return sessionAcknowledgeMode;
+	}
+
+	/**
+	 * Set the DestinationResolver to use for resolving a "destinationName".
+	 * <p>Default is a DynamicDestinationResolver. Specify a
+	 * JndiDestinationResolver for resolving destination names as JNDI locations.
+	 * @see DynamicDestinationResolver
+	 * @see org.springframework.jms.support.destination.JndiDestinationResolver
+	 */
+	public void setDestinationResolver(DestinationResolver destinationResolver) {
+		this.destinationResolver = destinationResolver;
+	}
+
+	/**
+	 * Return the DestinationResolver for this container.
+	 */
+	public DestinationResolver getDestinationResolver() {
+		return destinationResolver;
+	}
+
+	/**
+	 * Set the JMS ExceptionListener to notify in case of a JMSException
+	 * thrown by the registered message listener or the invocation
+	 * infrastructure. Default is none.
+	 */
+	public void setExceptionListener(ExceptionListener exceptionListener) {
+		this.exceptionListener = exceptionListener;
+	}
+
+	/**
+	 * Return the JMS ExceptionListener to notify in case of a JMSException, if any.
+	 */
+	public ExceptionListener getExceptionListener() {
+		return exceptionListener;
+	}
+
+	/**
+	 * Set whether to automatically start the listener container after
+	 * initialization. Default is true; set this to false to allow for
+	 * manual startup through the <code>start</code> method.
+	 * @see #start
+	 */
+	public void setAutoStartup(boolean autoStartup) {
+		this.autoStartup = autoStartup;
+	}
+
+	public void setBeanName(String beanName) {
+		this.beanName = beanName;
+	}
+
+	/**
+	 * Return the bean name that this listener container has been assigned
+	 * in its containing bean factory, if any.
+	 */
+	protected final String getBeanName() {
+		return beanName;
+	}
+
+
+	/**
+	 * Validate the configuration and initialize the container.
+	 * @see #initialize
+	 */
+	public void afterPropertiesSet() {
+		super.afterPropertiesSet();
+		if (this.destination == null) {
+			throw new IllegalArgumentException("destination or destinationName is required");
+		}
+		if (this.messageListener == null) {
+			throw new IllegalArgumentException("messageListener is required");
+		}
+		validateConfiguration();
+		initialize();
+	}
+
+	/**
+	 * Validate the configuration of this container.
+	 * <p>Default implementation is empty. To be overridden in subclasses.
+	 */
+	protected void validateConfiguration() {
+	}
+
+	/**
+	 * Initialize this container: establish the shared Connection,
+	 * let the subclass set up its consumers, and start the Connection
+	 * if "autoStartup" is true.
+	 * @throws JmsException if startup failed
+	 * @see #createSharedConnection
+	 * @see #doInitialize
+	 * @see #start
+	 */
+	public void initialize() throws JmsException {
+		try {
+			synchronized (this.lifecycleMonitor) {
+				this.active = true;
+				this.lifecycleMonitor.notifyAll();
+			}
+			synchronized (this.sharedConnectionMonitor) {
+				this.sharedConnection = createSharedConnection();
+			}
+			doInitialize();
+		}
+		catch (JMSException ex) {
+			synchronized (this.sharedConnectionMonitor) {
+				JmsUtils.closeConnection(this.sharedConnection);
+				this.sharedConnection = null;
+			}
+			throw convertJmsAccessException(ex);
+		}
+		if (this.autoStartup) {
+			start();
+		}
+	}
+
+	/**
+	 * Start this container: starts the shared Connection, which
+	 * allows the consumers to receive messages.
+	 * @throws JmsException if starting failed
+	 */
+	public void start() throws JmsException {
+		try {
+			getSharedConnection().start();
+		}
+		catch (JMSException ex) {
+			throw convertJmsAccessException(ex);
+		}
+		synchronized (this.lifecycleMonitor) {
+			this.running = true;
+			this.lifecycleMonitor.notifyAll();
+		}
+	}
+
+	/**
+	 * Stop this container: stops the shared Connection, which
+	 * pauses message delivery to the consumers. Can be restarted
+	 * through <code>start</code>.
+	 * @throws JmsException if stopping failed
+	 * @see #start
+	 */
+	public void stop() throws JmsException {
+		synchronized (this.lifecycleMonitor) {
+			this.running = false;
+			this.lifecycleMonitor.notifyAll();
+		}
+		try {
+			getSharedConnection().stop();
+		}
+		catch (JMSException ex) {
+			throw convertJmsAccessException(ex);
+		}
+	}
+
+	/**
+	 * Shut down this container when the containing bean factory
+	 * gets destroyed.
+	 * @see #shutdown
+	 */
+	public void destroy() {
+		shutdown();
+	}
+
+	/**
+	 * Shut down this container: let the subclass release its consumers
+	 * and close the shared Connection.
+	 * @throws JmsException if shutdown failed
+	 * @see #doShutdown
+	 */
+	public void shutdown() throws JmsException {
+		logger.debug("Shutting down JMS listener container");
+		synchronized (this.lifecycleMonitor) {
+			this.running = false;
+			this.active = false;
+			this.lifecycleMonitor.notifyAll();
+		}
+		try {
+			doShutdown();
+		}
+		catch (JMSException ex) {
+			throw convertJmsAccessException(ex);
+		}
+		finally {
+			synchronized (this.sharedConnectionMonitor) {
+				JmsUtils.closeConnection(this.sharedConnection);
+				this.sharedConnection = null;
+			}
+		}
+	}
+
+	/**
+	 * Return whether this container is currently active,
+	 * that is, whether it has been set up but not shut down yet.
+	 */
+	public final boolean isActive() {
+		synchronized (this.lifecycleMonitor) {
+			return this.active;
+		}
+	}
+
+	/**
+	 * Return whether this container is currently running,
+	 * that is, whether it has been started and not stopped yet.
+	 */
+	public final boolean isRunning() {
+		synchronized (this.lifecycleMonitor) {
+			return this.running;
+		}
+	}
+
+
+	/**
+	 * Create the shared Connection for this container.
+	 * <p>Default implementation creates a standard JMS 1.1 Connection.
+	 * @return the prepared Connection (not started yet)
+	 * @throws JMSException if the creation failed
+	 */
+	protected Connection createSharedConnection() throws JMSException {
+		return getConnectionFactory().createConnection();
+	}
+
+	/**
+	 * Replace the shared Connection with a fresh one, typically after
+	 * a listener setup failure that indicates a broken Connection.
+	 * <p>Only refreshes the Connection if the given Connection is still
+	 * the current shared Connection, to avoid concurrent consumers
+	 * refreshing the same broken Connection multiple times.
+	 * @param brokenConnection the Connection that the failed consumer used
+	 * @throws JMSException if the refresh failed
+	 */
+	protected void refreshSharedConnection(Connection brokenConnection) throws JMSException {
+		synchronized (this.sharedConnectionMonitor) {
+			if (this.sharedConnection != brokenConnection) {
+				return;
+			}
+			logger.info("Refreshing shared JMS Connection of listener container");
+			JmsUtils.closeConnection(this.sharedConnection);
+			this.sharedConnection = null;
+			Connection con = createSharedConnection();
+			if (isRunning()) {
+				con.start();
+			}
+			this.sharedConnection = con;
+		}
+	}
+
+	/**
+	 * Return the shared JMS Connection maintained by this container.
+	 * @throws IllegalStateException if this container is not active
+	 */
+	protected final Connection getSharedConnection() {
+		synchronized (this.sharedConnectionMonitor) {
+			if (this.sharedConnection == null) {
+				throw new IllegalStateException("This listener container does not hold an active shared Connection");
+			}
+			return this.sharedConnection;
+		}
+	}
+
+	/**
+	 * Create a JMS Session for the given Connection.
+	 * <p>This implementation uses JMS 1.1 API.
+	 * @param con the JMS Connection to create a Session for
+	 * @return the new JMS Session
+	 * @throws JMSException if thrown by JMS API methods
+	 */
+	protected Session createSession(Connection con) throws JMSException {
+		return con.createSession(isSessionTransacted(), getSessionAcknowledgeMode());
+	}
+
+	/**
+	 * Resolve the configured Destination for the given Session:
+	 * either the specified Destination object or the specified
+	 * destination name, resolved via the DestinationResolver.
+	 * @param session the current JMS Session
+	 * @return the Destination to receive messages from
+	 * @throws JMSException if resolution failed
+	 */
+	protected Destination resolveDestination(Session session) throws JMSException {
+		Destination dest = getDestination();
+		if (dest != null) {
+			return dest;
+		}
+		return getDestinationResolver().resolveDestinationName(session, getDestinationName(), isPubSubDomain());
+	}
+
+	/**
+	 * Create a JMS MessageConsumer for the given Session,
+	 * using the configured Destination and message selector.
+	 * <p>This implementation uses JMS 1.1 API.
+	 * @param session the JMS Session to create a MessageConsumer for
+	 * @return the new JMS MessageConsumer
+	 * @throws JMSException if thrown by JMS API methods
+	 */
+	protected MessageConsumer createListenerConsumer(Session session) throws JMSException {
+		Destination dest = resolveDestination(session);
+		if (getMessageSelector() != null) {
+			return session.createConsumer(dest, getMessageSelector());
+		}
+		else {
+			return session.createConsumer(dest);
+		}
+	}
+
+
+	/**
+	 * Execute the listener for a message received from the given Session,
+	 * taking care of acknowledgement or local transaction commit and rollback.
+	 * @param session the JMS Session that the message was received from
+	 * @param message the received JMS Message
+	 * @param locallyTransacted whether the Session is locally transacted
+	 * by this container, rather than by an external transaction manager
+	 * @throws JMSException if thrown by JMS API methods
+	 * @throws RuntimeException if thrown by the listener, after rolling back
+	 * a locally transacted Session
+	 * @see #invokeListener
+	 */
+	protected void executeListener(Session session, Message message, boolean locallyTransacted)
+			throws JMSException {
+
+		try {
+			invokeListener(message);
+		}
+		catch (RuntimeException ex) {
+			if (locallyTransacted) {
+				session.rollback();
+			}
+			throw ex;
+		}
+		if (locallyTransacted) {
+			session.commit();
+		}
+		else if (isClientAcknowledge(session)) {
+			message.acknowledge();
+		}
+	}
+
+	/**
+	 * Invoke the configured MessageListener for the given message.
+	 * @param message the received JMS Message
+	 * @see #setMessageListener
+	 */
+	protected void invokeListener(Message message) {
+		getMessageListener().onMessage(message);
+	}
+
+	/**
+	 * Handle the given exception that arose during listener execution.
+	 * <p>Default implementation logs the exception at error level, and
+	 * notifies the ExceptionListener in case of a JMSException cause.
+	 * @param ex the exception to handle
+	 * @see #setExceptionListener
+	 */
+	protected void handleListenerException(Throwable ex) {
+		if (ex instanceof JmsException && ((JmsException) ex).getCause() instanceof JMSException) {
+			invokeExceptionListener((JMSException) ((JmsException) ex).getCause());
+		}
+		else if (ex instanceof JMSException) {
+			invokeExceptionListener((JMSException) ex);
+		}
+		logger.error("Execution of JMS message listener failed", ex);
+	}
+
+	/**
+	 * Invoke the registered JMS ExceptionListener, if any.
+	 * @param ex the exception that arose during JMS processing
+	 * @see #setExceptionListener
+	 */
+	protected void invokeExceptionListener(JMSException ex) {
+		ExceptionListener exceptionListener = getExceptionListener();
+		if (exceptionListener != null) {
+			exceptionListener.onException(ex);
+		}
+	}
+
+	/**
+	 * Return whether the given Session is in client acknowledge mode.
+	 * @param session the JMS Session to check
+	 * @throws JMSException if thrown by JMS API methods
+	 */
+	protected boolean isClientAcknowledge(Session session) throws JMSException {
+		return (session.getAcknowledgeMode() == Session.CLIENT_ACKNOWLEDGE);
+	}
+
+
+	/**
+	 * Set up the consumers of this container.
+	 * Called after the shared Connection has been established.
+	 * @throws JMSException if registration failed
+	 */
+	protected abstract void doInitialize() throws JMSException;
+
+	/**
+	 * Release the consumers of this container.
+	 * Called before the shared Connection gets closed.
+	 * @throws JMSException if shutdown failed
+	 */
+	protected abstract void doShutdown() throws JMSException;
+
+}
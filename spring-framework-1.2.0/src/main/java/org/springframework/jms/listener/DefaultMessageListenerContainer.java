@@ -0,0 +1,673 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.listener;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.jms.connection.ConnectionHolder;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Message listener container that uses plain JMS client API, specifically
+ * a loop of <code>MessageConsumer.receive(timeout)</code> calls per consumer
+ * thread. Each consumer keeps its Session and MessageConsumer open for its
+ * entire lifetime, in contrast to JmsTemplate's <code>receive</code> methods
+ * which create and close a Connection, Session and MessageConsumer per call.
+ * All consumers share a single JMS Connection.
+ *
+ * <p>The number of consumers scales dynamically with the load: the container
+ * starts "concurrentConsumers" consumers, and adds a consumer whenever a
+ * message gets received while no other consumer is idle, up to
+ * "maxConcurrentConsumers". Surplus consumers that did not receive a message
+ * for "idleReceiveLimit" consecutive receive attempts get retired again.
+ * Consumer threads are obtained from the specified TaskExecutor, by default
+ * a SimpleAsyncTaskExecutor.
+ *
+ * <p>Each receive operation can participate in a Spring-managed transaction,
+ * through specifying a "transactionManager". With a JmsTransactionManager,
+ * the message gets received on the Session of the transaction, so that
+ * message reception and any JmsTemplate operations performed by the listener
+ * get committed or rolled back together; a listener exception marks the
+ * transaction rollback-only, leading to redelivery of the message. Note that
+ * JmsTransactionManager creates a new Connection and Session per transaction:
+ * consider passing a SingleConnectionFactory into both the transaction manager
+ * and this container to share a single Connection.
+ *
+ * <p>Without a transaction manager, the "sessionTransacted" flag leads to a
+ * local JMS transaction per message, committed after successful listener
+ * execution. This is the most efficient option for a transacted consumer.
+ *
+ * @since 1.2.1
+ * @see #setConcurrentConsumers
+ * @see #setMaxConcurrentConsumers
+ * @see #setTransactionManager
+ * @see #setTaskExecutor
+ * @see org.springframework.jms.connection.JmsTransactionManager
+ * @see org.springframework.jms.connection.SingleConnectionFactory
+ */
+public class DefaultMessageListenerContainer extends AbstractMessageListenerContainer {
+
+	/**
+	 * Default timeout for receive operations: 1000 ms.
+	 */
+	public static final long DEFAULT_RECEIVE_TIMEOUT = 1000;
+
+	/**
+	 * Default interval between attempts to recover from a failed
+	 * listener setup: 5000 ms.
+	 */
+	public static final long DEFAULT_RECOVERY_INTERVAL = 5000;
+
+	/**
+	 * Default number of consecutive idle receive attempts
+	 * before retiring a surplus consumer: 5.
+	 */
+	public static final int DEFAULT_IDLE_RECEIVE_LIMIT = 5;
+
+
+	private int concurrentConsumers = 1;
+
+	private int maxConcurrentConsumers = 1;
+
+	private int idleReceiveLimit = DEFAULT_IDLE_RECEIVE_LIMIT;
+
+	private long receiveTimeout = DEFAULT_RECEIVE_TIMEOUT;
+
+	private long recoveryInterval = DEFAULT_RECOVERY_INTERVAL;
+
+	private TaskExecutor taskExecutor;
+
+	private PlatformTransactionManager transactionManager;
+
+	private DefaultTransactionDefinition transactionDefinition = new DefaultTransactionDefinition();
+
+	/** Invokers that have been scheduled and not been retired yet, guarded by the lifecycle monitor */
+	private final Set scheduledInvokers = new HashSet();
+
+	/** Number of invokers that have been scheduled and not finished yet, guarded by the lifecycle monitor */
+	private int activeInvokerCount = 0;
+
+
+	/**
+	 * Specify the number of concurrent consumers to create. Default is 1.
+	 * <p>This is the minimum number of consumers: the container will never
+	 * retire consumers below this number while it is active.
+	 * @see #setMaxConcurrentConsumers
+	 */
+	public void setConcurrentConsumers(int concurrentConsumers) {
+		if (concurrentConsumers < 1) {
+			throw new IllegalArgumentException("concurrentConsumers must be at least 1");
+		}
+		this.concurrentConsumers = concurrentConsumers;
+	}
+
+	/**
+	 * Return the minimum number of concurrent consumers.
+	 */
+	public int getConcurrentConsumers() {
+		return concurrentConsumers;
+	}
+
+	/**
+	 * Specify the maximum number of concurrent consumers to create.
+	 * Default is 1, or "concurrentConsumers" if that is higher.
+	 * <p>If this is higher than "concurrentConsumers", additional consumers
+	 * will be added on demand, whenever a message gets received while all
+	 * existing consumers are busy.
+	 * @see #setConcurrentConsumers
+	 * @see #setIdleReceiveLimit
+	 */
+	public void setMaxConcurrentConsumers(int maxConcurrentConsumers) {
+		this.maxConcurrentConsumers = maxConcurrentConsumers;
+	}
+
+	/**
+	 * Return the maximum number of concurrent consumers.
+	 */
+	public int getMaxConcurrentConsumers() {
+		return maxConcurrentConsumers;
+	}
+
+	/**
+	 * Specify the number of consecutive receive attempts without a message
+	 * after which a consumer above the "concurrentConsumers" minimum gets
+	 * retired. Default is 5, that is, 5 seconds with the default receive timeout.
+	 * @see #setReceiveTimeout
+	 */
+	public void setIdleReceiveLimit(int idleReceiveLimit) {
+		if (idleReceiveLimit < 1) {
+			throw new IllegalArgumentException("idleReceiveLimit must be at least 1");
+		}
+		this.idleReceiveLimit = idleReceiveLimit;
+	}
+
+	/**
+	 * Return the number of idle receive attempts before a surplus
+	 * consumer gets retired.
+	 */
+	public int getIdleReceiveLimit() {
+		return idleReceiveLimit;
+	}
+
+	/**
+	 * Set the timeout to use for receive calls, in milliseconds.
+	 * Default is 1000 ms, that is, 1 second.
+	 * <p>This determines how quickly consumers react to a shutdown or
+	 * stop of the container, and how long a transaction stays open
+	 * while waiting for a message.
+	 * @see MessageConsumer#receive(long)
+	 */
+	public void setReceiveTimeout(long receiveTimeout) {
+		if (receiveTimeout <= 0) {
+			throw new IllegalArgumentException("receiveTimeout must be positive: a timeout of 0 blocks indefinitely");
+		}
+		this.receiveTimeout = receiveTimeout;
+	}
+
+	/**
+	 * Return the timeout to use for receive calls.
+	 */
+	public long getReceiveTimeout() {
+		return receiveTimeout;
+	}
+
+	/**
+	 * Specify the interval between recovery attempts, in milliseconds.
+	 * Default is 5000 ms, that is, 5 seconds.
+	 * <p>A consumer that failed to receive a message, for example because
+	 * the JMS provider went down, will release its Session, refresh the
+	 * shared Connection and wait this long before trying again.
+	 */
+	public void setRecoveryInterval(long recoveryInterval) {
+		this.recoveryInterval = recoveryInterval;
+	}
+
+	/**
+	 * Return the interval between recovery attempts.
+	 */
+	public long getRecoveryInterval() {
+		return recoveryInterval;
+	}
+
+	/**
+	 * Set the TaskExecutor to run the consumer threads on.
+	 * <p>Default is a SimpleAsyncTaskExecutor that creates a new thread
+	 * per consumer, named after the bean name of this container.
+	 * Note that each consumer occupies its thread for its entire lifetime:
+	 * a thread pool needs to allow for at least "maxConcurrentConsumers"
+	 * threads.
+	 * @see SimpleAsyncTaskExecutor
+	 */
+	public void setTaskExecutor(TaskExecutor taskExecutor) {
+		this.taskExecutor = taskExecutor;
+	}
+
+	/**
+	 * Specify the Spring PlatformTransactionManager to use for transactional
+	 * wrapping of message reception plus listener execution. Default is none.
+	 * <p>With a JmsTransactionManager for the same ConnectionFactory, the
+	 * message will be received on the transactional Session, so that its
+	 * acknowledgement gets committed or rolled back with the transaction.
+	 * @see org.springframework.jms.connection.JmsTransactionManager
+	 */
+	public void setTransactionManager(PlatformTransactionManager transactionManager) {
+		this.transactionManager = transactionManager;
+	}
+
+	/**
+	 * Return the Spring PlatformTransactionManager to use for transactional
+	 * wrapping of message reception plus listener execution, if any.
+	 */
+	public PlatformTransactionManager getTransactionManager() {
+		return transactionManager;
+	}
+
+	/**
+	 * Specify the transaction name to use for transactional wrapping.
+	 * Default is the bean name of this listener container, if any.
+	 * @see org.springframework.transaction.TransactionDefinition#getName()
+	 */
+	public void setTransactionName(String transactionName) {
+		this.transactionDefinition.setName(transactionName);
+	}
+
+	/**
+	 * Specify the transaction timeout to use for transactional wrapping,
+	 * in <b>seconds</b>. Default is none, using the transaction manager's
+	 * default timeout.
+	 * @see org.springframework.transaction.TransactionDefinition#getTimeout()
+	 */
+	public void setTransactionTimeout(int transactionTimeout) {
+		this.transactionDefinition.setTimeout(transactionTimeout);
+	}
+
+
+	protected void validateConfiguration() {
+		if (this.maxConcurrentConsumers < this.concurrentConsumers) {
+			this.maxConcurrentConsumers = this.concurrentConsumers;
+		}
+		if (this.transactionDefinition.getName() == null) {
+			this.transactionDefinition.setName(getBeanName());
+		}
+	}
+
+	/**
+	 * Schedule the initial number of concurrent consumers.
+	 * @see #setConcurrentConsumers
+	 */
+	protected void doInitialize() throws JMSException {
+		if (this.taskExecutor == null) {
+			this.taskExecutor = createDefaultTaskExecutor();
+		}
+		synchronized (this.lifecycleMonitor) {
+			for (int i = 0; i < this.concurrentConsumers; i++) {
+				scheduleNewInvoker();
+			}
+		}
+	}
+
+	/**
+	 * Create a default TaskExecutor. Called if no explicit TaskExecutor has been specified.
+	 * <p>Default implementation builds a SimpleAsyncTaskExecutor with the
+	 * specified bean name (or the class name, if no bean name specified)
+	 * as thread name prefix.
+	 * @see SimpleAsyncTaskExecutor#SimpleAsyncTaskExecutor(String)
+	 */
+	protected TaskExecutor createDefaultTaskExecutor() {
+		String beanName = getBeanName();
+		String threadNamePrefix = (beanName != null ? beanName + "-" : SimpleAsyncTaskExecutor.DEFAULT_THREAD_NAME_PREFIX);
+		return new SimpleAsyncTaskExecutor(threadNamePrefix);
+	}
+
+	/**
+	 * Wait for all consumers to finish their current receive attempt
+	 * and release their Sessions.
+	 */
+	protected void doShutdown() throws JMSException {
+		logger.debug("Waiting for shutdown of message listener invokers");
+		synchronized (this.lifecycleMonitor) {
+			try {
+				while (this.activeInvokerCount > 0) {
+					this.lifecycleMonitor.wait();
+				}
+			}
+			catch (InterruptedException ex) {
+				// Re-interrupt current thread, to allow other threads to react.
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Return the number of currently scheduled consumers.
+	 * <p>This number will always be between "concurrentConsumers" and
+	 * "maxConcurrentConsumers", but might be higher in case of consumers
+	 * that have been retired but not finished their current receive attempt yet.
+	 * @see #getActiveConsumerCount
+	 */
+	public final int getScheduledConsumerCount() {
+		synchronized (this.lifecycleMonitor) {
+			return this.scheduledInvokers.size();
+		}
+	}
+
+	/**
+	 * Return the number of currently active consumers, that is, consumers
+	 * that have been scheduled and have not released their resources yet.
+	 * @see #getScheduledConsumerCount
+	 */
+	public final int getActiveConsumerCount() {
+		synchronized (this.lifecycleMonitor) {
+			return this.activeInvokerCount;
+		}
+	}
+
+
+	/**
+	 * Schedule a new invoker on the TaskExecutor.
+	 * Needs to be called with the lifecycle monitor held.
+	 */
+	private void scheduleNewInvoker() {
+		AsyncMessageListenerInvoker invoker = new AsyncMessageListenerInvoker();
+		this.scheduledInvokers.add(invoker);
+		this.activeInvokerCount++;
+		try {
+			this.taskExecutor.execute(invoker);
+		}
+		catch (TaskRejectedException ex) {
+			this.scheduledInvokers.remove(invoker);
+			this.activeInvokerCount--;
+			logger.warn("TaskExecutor rejected message listener invoker - running with " +
+					this.scheduledInvokers.size() + " consumers", ex);
+		}
+	}
+
+	/**
+	 * Return the number of scheduled invokers that did not receive a message
+	 * on their last receive attempt. Needs to be called with the lifecycle monitor held.
+	 */
+	private int getIdleInvokerCount() {
+		int count = 0;
+		for (Iterator it = this.scheduledInvokers.iterator(); it.hasNext();) {
+			AsyncMessageListenerInvoker invoker = (AsyncMessageListenerInvoker) it.next();
+			if (invoker.idle) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Wait while this container is active but not running.
+	 * @return whether this container is still active
+	 */
+	private boolean waitWhileNotRunning() {
+		synchronized (this.lifecycleMonitor) {
+			try {
+				while (isActive() && !isRunning()) {
+					this.lifecycleMonitor.wait();
+				}
+			}
+			catch (InterruptedException ex) {
+				// Re-interrupt current thread, to allow other threads to react.
+				Thread.currentThread().interrupt();
+				return false;
+			}
+			return isActive();
+		}
+	}
+
+
+	/**
+	 * Receive a message, within a transaction if a transaction manager has
+	 * been specified, and execute the listener for it.
+	 * @param invoker the invoker that holds the Session and MessageConsumer
+	 * @return whether a message has been received
+	 * @throws JMSException if thrown by JMS API methods
+	 */
+	private boolean receiveAndExecute(AsyncMessageListenerInvoker invoker) throws JMSException {
+		if (this.transactionManager != null) {
+			// Execute receive within transaction.
+			TransactionStatus status = this.transactionManager.getTransaction(this.transactionDefinition);
+			boolean messageReceived = false;
+			try {
+				messageReceived = doReceiveAndExecute(invoker, status);
+			}
+			catch (JMSException ex) {
+				rollbackOnException(status, ex);
+				throw ex;
+			}
+			catch (RuntimeException ex) {
+				rollbackOnException(status, ex);
+				throw ex;
+			}
+			catch (Error err) {
+				rollbackOnException(status, err);
+				throw err;
+			}
+			this.transactionManager.commit(status);
+			return messageReceived;
+		}
+		else {
+			// Execute receive outside of transaction.
+			return doReceiveAndExecute(invoker, null);
+		}
+	}
+
+	/**
+	 * Actually receive a message and execute the listener for it. Uses the
+	 * transactional Session if a JmsTransactionManager transaction is active
+	 * for this container's ConnectionFactory, else the invoker's Session.
+	 * @param invoker the invoker that holds the Session and MessageConsumer
+	 * @param status the TransactionStatus (may be null)
+	 * @return whether a message has been received
+	 * @throws JMSException if thrown by JMS API methods
+	 */
+	private boolean doReceiveAndExecute(AsyncMessageListenerInvoker invoker, TransactionStatus status)
+			throws JMSException {
+
+		Session sessionToUse = null;
+		MessageConsumer consumerToUse = null;
+		boolean transactionalConsumer = false;
+		ConnectionHolder conHolder =
+				(ConnectionHolder) TransactionSynchronizationManager.getResource(getConnectionFactory());
+		if (conHolder != null) {
+			// Transactional Session: consumer is bound to the lifetime of the transaction.
+			conHolder.getConnection().start();
+			sessionToUse = conHolder.getSession();
+			consumerToUse = createListenerConsumer(sessionToUse);
+			transactionalConsumer = true;
+		}
+		else {
+			invoker.initResourcesIfNecessary();
+			sessionToUse = invoker.session;
+			consumerToUse = invoker.consumer;
+		}
+		try {
+			Message message = receiveMessage(consumerToUse);
+			if (message == null) {
+				return false;
+			}
+			if (logger.isDebugEnabled()) {
+				logger.debug("Received message [" + message + "] on consumer [" + consumerToUse + "]");
+			}
+			try {
+				executeListener(sessionToUse, message, !transactionalConsumer && isSessionTransacted());
+			}
+			catch (RuntimeException ex) {
+				if (status != null) {
+					status.setRollbackOnly();
+				}
+				handleListenerException(ex);
+			}
+			return true;
+		}
+		finally {
+			if (transactionalConsumer) {
+				JmsUtils.closeMessageConsumer(consumerToUse);
+			}
+		}
+	}
+
+	/**
+	 * Receive a message from the given consumer.
+	 * @param consumer the MessageConsumer to use
+	 * @return the Message, or null if none received within the receive timeout
+	 * @throws JMSException if thrown by JMS methods
+	 * @see #setReceiveTimeout
+	 */
+	protected Message receiveMessage(MessageConsumer consumer) throws JMSException {
+		return consumer.receive(getReceiveTimeout());
+	}
+
+	/**
+	 * Perform a rollback, handling rollback exceptions properly.
+	 * @param status object representing the transaction
+	 * @param ex the thrown application exception or error
+	 */
+	private void rollbackOnException(TransactionStatus status, Throwable ex) {
+		logger.debug("Initiating transaction rollback on application exception", ex);
+		try {
+			this.transactionManager.rollback(status);
+		}
+		catch (RuntimeException ex2) {
+			logger.error("Application exception overridden by rollback exception", ex);
+			throw ex2;
+		}
+		catch (Error err) {
+			logger.error("Application exception overridden by rollback error", ex);
+			throw err;
+		}
+	}
+
+	/**
+	 * Handle the given exception that arose during setup of a consumer
+	 * or during a receive attempt.
+	 * <p>Default implementation logs the exception at error level, and
+	 * notifies the ExceptionListener in case of a JMSException.
+	 * @param ex the exception to handle
+	 */
+	protected void handleListenerSetupFailure(Throwable ex) {
+		if (ex instanceof JMSException) {
+			invokeExceptionListener((JMSException) ex);
+		}
+		logger.error("Setup of JMS message listener invoker failed - trying to recover", ex);
+	}
+
+	/**
+	 * Recover this container after a listener setup failure: refresh the shared
+	 * Connection if the failed invoker used it, then sleep for the recovery interval.
+	 * @param brokenConnection the Connection that the failed invoker used (may be null)
+	 * @see #setRecoveryInterval
+	 */
+	protected void recoverAfterListenerSetupFailure(Connection brokenConnection) {
+		if (brokenConnection != null) {
+			try {
+				refreshSharedConnection(brokenConnection);
+			}
+			catch (Exception ex) {
+				logger.info("Could not refresh JMS Connection - retrying in " + this.recoveryInterval + " ms", ex);
+			}
+		}
+		try {
+			Thread.sleep(this.recoveryInterval);
+		}
+		catch (InterruptedException ex) {
+			// Re-interrupt current thread, to allow other threads to react.
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+	/**
+	 * Runnable that performs looped <code>MessageConsumer.receive()</code> calls,
+	 * holding its Session and MessageConsumer for its entire lifetime.
+	 */
+	private class AsyncMessageListenerInvoker implements Runnable {
+
+		private Connection connection;
+
+		private Session session;
+
+		private MessageConsumer consumer;
+
+		/** Guarded by the lifecycle monitor */
+		private boolean idle = true;
+
+		private int idleReceiveCount = 0;
+
+		public void run() {
+			try {
+				while (waitWhileNotRunning()) {
+					boolean messageReceived = false;
+					try {
+						messageReceived = receiveAndExecute(this);
+					}
+					catch (Throwable ex) {
+						Connection brokenConnection = this.connection;
+						releaseResources();
+						if (!isActive()) {
+							break;
+						}
+						handleListenerSetupFailure(ex);
+						recoverAfterListenerSetupFailure(brokenConnection);
+						continue;
+					}
+					if (!adjustConsumerCount(messageReceived)) {
+						break;
+					}
+				}
+			}
+			finally {
+				releaseResources();
+				synchronized (lifecycleMonitor) {
+					activeInvokerCount--;
+					scheduledInvokers.remove(this);
+					lifecycleMonitor.notifyAll();
+				}
+			}
+		}
+
+		/**
+		 * Scale the number of consumers after a receive attempt.
+		 * @param messageReceived whether the attempt received a message
+		 * @return whether this invoker should continue receiving
+		 */
+		private boolean adjustConsumerCount(boolean messageReceived) {
+			synchronized (lifecycleMonitor) {
+				if (messageReceived) {
+					this.idle = false;
+					this.idleReceiveCount = 0;
+					if (isRunning() && getIdleInvokerCount() == 0 &&
+							scheduledInvokers.size() < maxConcurrentConsumers) {
+						scheduleNewInvoker();
+						if (logger.isDebugEnabled()) {
+							logger.debug("Raised scheduled consumer count to " + scheduledInvokers.size());
+						}
+					}
+				}
+				else {
+					this.idle = true;
+					this.idleReceiveCount++;
+					if (this.idleReceiveCount >= idleReceiveLimit &&
+							scheduledInvokers.size() > concurrentConsumers) {
+						scheduledInvokers.remove(this);
+						if (logger.isDebugEnabled()) {
+							logger.debug("Lowered scheduled consumer count to " + scheduledInvokers.size());
+						}
+						return false;
+					}
+				}
+				return true;
+			}
+		}
+
+		private void initResourcesIfNecessary() throws JMSException {
+			if (this.session == null) {
+				this.connection = getSharedConnection();
+				this.session = createSession(this.connection);
+			}
+			if (this.consumer == null) {
+				this.consumer = createListenerConsumer(this.session);
+			}
+		}
+
+		private void releaseResources() {
+			JmsUtils.closeMessageConsumer(this.consumer);
+			JmsUtils.closeSession(this.session);
+			this.consumer = null;
+			this.session = null;
+			this.connection = null;
+		}
+	}
+
+}
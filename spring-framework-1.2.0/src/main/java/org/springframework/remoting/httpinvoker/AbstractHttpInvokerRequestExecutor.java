@@ -34,7 +34,11 @@ import org.springframework.remoting.support.RemoteInvocationResult;
  * Abstract base implementation of the HttpInvokerRequestExecutor interface.
  *
  * <p>Pre-implements serialization of RemoteInvocation objects and
- * deserialization of RemoteInvocationResults objects.
+ * deserialization of RemoteInvocationResults objects. Alternatively,
+ * a RemoteInvocationCodec can be specified for a custom format.
+ *
+ * <p>Reuses the byte buffer for serialized invocations across subsequent
+ * requests of the same thread, unless the buffer grew exceptionally large.
  *
  * @author Juergen Hoeller
  * @since 1.1
@@ -44,6 +48,8 @@ public abstract class AbstractHttpInvokerRequestExecutor implements HttpInvokerR
 
 	private static final int SERIALIZED_INVOCATION_BYTE_ARRAY_INITIAL_SIZE = 1024;
 
+	private static final int SERIALIZED_INVOCATION_BYTE_ARRAY_MAX_RETAINED_SIZE = 65536;
+
 	protected static final String CONTENT_TYPE_SERIALIZED_OBJECT = "application/x-java-serialized-object";
 
 	protected static final String HTTP_HEADER_CONTENT_TYPE = "Content-Type";
@@ -55,28 +61,76 @@ public abstract class AbstractHttpInvokerRequestExecutor implements HttpInvokerR
 
 	protected final Log logger = LogFactory.getLog(getClass());
 
+	private RemoteInvocationCodec codec;
+
+	private final ByteArrayOutputStreamPool bufferPool = new ByteArrayOutputStreamPool(
+			SERIALIZED_INVOCATION_BYTE_ARRAY_INITIAL_SIZE, SERIALIZED_INVOCATION_BYTE_ARRAY_MAX_RETAINED_SIZE);
+
+
+	/**
+	 * Set the RemoteInvocationCodec to use for writing invocations and
+	 * reading invocation results, instead of standard Java serialization.
+	 * <p>The target HttpInvokerServiceExporter needs to be configured
+	 * with a corresponding codec.
+	 * @see CompactRemoteInvocationCodec
+	 * @see HttpInvokerServiceExporter#setCodec
+	 */
+	public void setCodec(RemoteInvocationCodec codec) {
+		this.codec = codec;
+	}
+
+	/**
+	 * Return the RemoteInvocationCodec to use, if any.
+	 */
+	public RemoteInvocationCodec getCodec() {
+		return codec;
+	}
+
+	/**
+	 * Return the content type to send as HTTP "Content-Type" header:
+	 * the content type of the codec, if any, or
+	 * "application/x-java-serialized-object" else.
+	 */
+	protected String getContentType() {
+		return (this.codec != null ? this.codec.getContentType() : CONTENT_TYPE_SERIALIZED_OBJECT);
+	}
+
 
 	public final RemoteInvocationResult executeRequest(
 			HttpInvokerClientConfiguration config, RemoteInvocation invocation)
 			throws IOException, ClassNotFoundException {
 
 		ByteArrayOutputStream baos = getByteArrayOutputStream(invocation);
-		if (logger.isDebugEnabled()) {
-			logger.debug("Sending HTTP invoker request for service at [" + config.getServiceUrl() +
-					"], with size " + baos.size());
+		try {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Sending HTTP invoker request for service at [" + config.getServiceUrl() +
+						"], with size " + baos.size());
+			}
+			return doExecuteRequest(config, baos);
+		}
+		finally {
+			this.bufferPool.release(baos);
 		}
-		return doExecuteRequest(config, baos);
 	}
 
 	/**
 	 * Serialize the given RemoteInvocation into a ByteArrayOutputStream.
+	 * <p>The ByteArrayOutputStream will be reused for subsequent requests
+	 * once <code>doExecuteRequest</code> returned: Implementations must not
+	 * hold on to it beyond that point.
 	 * @param invocation the RemoteInvocation object
 	 * @return a ByteArrayOutputStream with the serialized RemoteInvocation
 	 * @throws IOException if thrown by I/O methods
 	 */
 	protected ByteArrayOutputStream getByteArrayOutputStream(RemoteInvocation invocation) throws IOException {
-		ByteArrayOutputStream baos = new ByteArrayOutputStream(SERIALIZED_INVOCATION_BYTE_ARRAY_INITIAL_SIZE);
-		writeRemoteInvocation(invocation, baos);
+		ByteArrayOutputStream baos = this.bufferPool.obtain();
+		try {
+			writeRemoteInvocation(invocation, baos);
+		}
+		catch (IOException ex) {
+			this.bufferPool.release(baos);
+			throw ex;
+		}
 		return baos;
 	}
 
@@ -85,15 +139,27 @@ public abstract class AbstractHttpInvokerRequestExecutor implements HttpInvokerR
 	 * <p>The default implementation gives <code>decorateOutputStream</code> a chance
 	 * to decorate the stream first (for example, for custom encryption or compression).
 	 * Creates an <code>ObjectOutputStream</code> for the final stream and calls
-	 * <code>doWriteRemoteInvocation</code> to actually write the object.
+	 * <code>doWriteRemoteInvocation</code> to actually write the object,
+	 * unless a RemoteInvocationCodec has been specified.
 	 * <p>Can be overridden for custom serialization of the invocation.
 	 * @param invocation the RemoteInvocation object
 	 * @param os the OutputStream to write to
 	 * @throws IOException if thrown by I/O methods
 	 * @see #decorateOutputStream
 	 * @see #doWriteRemoteInvocation
+	 * @see #setCodec
 	 */
 	protected void writeRemoteInvocation(RemoteInvocation invocation, OutputStream os) throws IOException {
+		if (this.codec != null) {
+			OutputStream decoratedStream = decorateOutputStream(os);
+			try {
+				this.codec.writeRemoteInvocation(invocation, decoratedStream);
+			}
+			finally {
+				decoratedStream.close();
+			}
+			return;
+		}
 		ObjectOutputStream oos = new ObjectOutputStream(decorateOutputStream(os));
 		try {
 			doWriteRemoteInvocation(invocation, oos);
@@ -154,7 +220,8 @@ public abstract class AbstractHttpInvokerRequestExecutor implements HttpInvokerR
 	 * <p>Gives <code>decorateInputStream</code> a chance to decorate the stream
 	 * first (for example, for custom encryption or compression). Creates an
 	 * <code>ObjectInputStream</code> via <code>createObjectInputStream</code> and
-	 * calls <code>doReadRemoteInvocationResult</code> to actually read the object.
+	 * calls <code>doReadRemoteInvocationResult</code> to actually read the object,
+	 * unless a RemoteInvocationCodec has been specified.
 	 * <p>Can be overridden for custom serialization of the invocation.
 	 * @param is the InputStream to read from
 	 * @param codebaseUrl the codebase URL to load classes from if not found locally
@@ -164,10 +231,21 @@ public abstract class AbstractHttpInvokerRequestExecutor implements HttpInvokerR
 	 * @see #decorateInputStream
 	 * @see #createObjectInputStream
 	 * @see #doReadRemoteInvocationResult
+	 * @see #setCodec
 	 */
 	protected RemoteInvocationResult readRemoteInvocationResult(InputStream is, String codebaseUrl)
 			throws IOException, ClassNotFoundException {
 
+		if (this.codec != null) {
+			InputStream decoratedStream = decorateInputStream(is);
+			try {
+				return this.codec.readRemoteInvocationResult(decoratedStream, codebaseUrl);
+			}
+			finally {
+				decoratedStream.close();
+			}
+		}
+
 		ObjectInputStream ois = createObjectInputStream(decorateInputStream(is), codebaseUrl);
 		try {
 			return doReadRemoteInvocationResult(ois);
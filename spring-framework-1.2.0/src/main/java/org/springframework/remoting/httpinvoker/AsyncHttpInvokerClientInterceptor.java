@@ -0,0 +1,115 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.remoting.httpinvoker;
+
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import org.springframework.remoting.support.RemoteInvocation;
+import org.springframework.scheduling.concurrent.AsyncTaskExecutor;
+
+/**
+ * Subclass of HttpInvokerClientInterceptor that can also trigger remote
+ * invocations asynchronously, executing them on a given AsyncTaskExecutor
+ * and returning a JDK 1.5 Future for the result.
+ *
+ * <p>Requires JDK 1.5 or higher, in contrast to HttpInvokerClientInterceptor
+ * itself, which remains usable on JDK 1.3 and 1.4.
+ *
+ * @since 1.2.1
+ * @see #setAsyncTaskExecutor
+ * @see #invokeAsync(RemoteInvocation)
+ * @see HttpInvokerClientInterceptor
+ * @see PooledHttpInvokerRequestExecutor
+ */
+public class AsyncHttpInvokerClientInterceptor extends HttpInvokerClientInterceptor {
+
+	private AsyncTaskExecutor asyncTaskExecutor;
+
+
+	/**
+	 * Set the AsyncTaskExecutor to use for asynchronous remote invocations.
+	 * <p>Typically a ThreadPoolTaskExecutor, sized in line with the connection
+	 * pool of a PooledHttpInvokerRequestExecutor: This allows for fanning out
+	 * concurrent remote calls with a bounded number of threads and connections.
+	 * @see #invokeAsync(RemoteInvocation)
+	 * @see org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor
+	 * @see PooledHttpInvokerRequestExecutor
+	 */
+	public void setAsyncTaskExecutor(AsyncTaskExecutor asyncTaskExecutor) {
+		this.asyncTaskExecutor = asyncTaskExecutor;
+	}
+
+	/**
+	 * Return the AsyncTaskExecutor to use for asynchronous remote invocations.
+	 */
+	public AsyncTaskExecutor getAsyncTaskExecutor() {
+		return asyncTaskExecutor;
+	}
+
+
+	/**
+	 * Invoke the specified method on the remote service asynchronously.
+	 * <p>Note that the invocation will not go through the RemoteInvocationFactory,
+	 * which builds on AOP MethodInvocations.
+	 * @param methodName the name of the method to invoke
+	 * @param parameterTypes the parameter types of the method
+	 * @param arguments the arguments for the invocation
+	 * @return a Future for the result of the remote invocation
+	 * @see #invokeAsync(RemoteInvocation)
+	 */
+	public Future invokeAsync(String methodName, Class[] parameterTypes, Object[] arguments) {
+		return invokeAsync(new RemoteInvocation(methodName, parameterTypes, arguments));
+	}
+
+	/**
+	 * Execute the given remote invocation asynchronously, via the "asyncTaskExecutor".
+	 * <p>The returned Future will expose the result of the remote method on
+	 * <code>get()</code>, or throw an ExecutionException with the exception
+	 * thrown by the remote method (or a RemoteAccessException) as cause.
+	 * @param invocation the RemoteInvocation to execute
+	 * @return a Future for the result of the remote invocation
+	 * @throws IllegalStateException if no AsyncTaskExecutor has been specified
+	 * @throws org.springframework.core.task.TaskRejectedException
+	 * if the AsyncTaskExecutor does not accept further invocations
+	 * @see #setAsyncTaskExecutor
+	 */
+	public Future invokeAsync(final RemoteInvocation invocation) {
+		if (getAsyncTaskExecutor() == null) {
+			throw new IllegalStateException("No asyncTaskExecutor specified for HTTP invoker accessor");
+		}
+		return getAsyncTaskExecutor().submit(new Callable() {
+			public Object call() throws Exception {
+				try {
+					return invokeRemote(invocation);
+				}
+				catch (Exception ex) {
+					throw ex;
+				}
+				catch (Error err) {
+					throw err;
+				}
+				catch (Throwable ex) {
+					throw new UndeclaredThrowableException(ex);
+				}
+			}
+		});
+	}
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.remoting.httpinvoker;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Simple per-thread pool of ByteArrayOutputStreams, allowing for reuse of
+ * the underlying byte buffers across HTTP invoker requests that are
+ * executed by the same thread.
+ *
+ * <p>Buffers that grew beyond the specified maximum size will not be
+ * retained, to avoid holding on to the memory of exceptionally large payloads.
+ *
+ * @since 1.2.1
+ */
+final class ByteArrayOutputStreamPool {
+
+	private final ThreadLocal cachedStream = new ThreadLocal();
+
+	private final int initialSize;
+
+	private final int maxRetainedSize;
+
+
+	/**
+	 * Create a new ByteArrayOutputStreamPool.
+	 * @param initialSize the initial size of newly created buffers
+	 * @param maxRetainedSize the maximum size of a buffer to keep for reuse
+	 */
+	public ByteArrayOutputStreamPool(int initialSize, int maxRetainedSize) {
+		this.initialSize = initialSize;
+		this.maxRetainedSize = maxRetainedSize;
+	}
+
+	/**
+	 * Obtain an empty ByteArrayOutputStream, reusing the current thread's
+	 * cached stream if available. Needs to be handed back via <code>release</code>.
+	 */
+	public ByteArrayOutputStream obtain() {
+		ByteArrayOutputStream baos = (ByteArrayOutputStream) this.cachedStream.get();
+		if (baos != null) {
+			this.cachedStream.set(null);
+			return baos;
+		}
+		return new ByteArrayOutputStream(this.initialSize);
+	}
+
+	/**
+	 * Return the given ByteArrayOutputStream to the pool, clearing its content.
+	 * The stream must not be used by the caller afterwards.
+	 */
+	public void release(ByteArrayOutputStream baos) {
+		if (baos.size() <= this.maxRetainedSize) {
+			baos.reset();
+			this.cachedStream.set(baos);
+		}
+	}
+
+}
@@ -102,7 +102,7 @@ public class CommonsHttpInvokerRequestExecutor extends AbstractHttpInvokerReques
 	 */
 	protected PostMethod createPostMethod(HttpInvokerClientConfiguration config) throws IOException {
 		PostMethod postMethod = new PostMethod(config.getServiceUrl());
-		postMethod.setRequestHeader(HTTP_HEADER_CONTENT_TYPE, CONTENT_TYPE_SERIALIZED_OBJECT);
+		postMethod.setRequestHeader(HTTP_HEADER_CONTENT_TYPE, getContentType());
 		return postMethod;
 	}
 
@@ -0,0 +1,466 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.remoting.httpinvoker;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.springframework.remoting.rmi.CodebaseAwareObjectInputStream;
+import org.springframework.remoting.support.RemoteInvocation;
+import org.springframework.remoting.support.RemoteInvocationResult;
+import org.springframework.util.ClassUtils;
+
+/**
+ * RemoteInvocationCodec implementation that writes invocations and their
+ * results in a compact binary format, avoiding the class descriptors that
+ * standard Java serialization writes for RemoteInvocation, RemoteInvocationResult,
+ * Class objects and the wrapper types of primitive arguments.
+ *
+ * <p>Method name, parameter types, nulls, Strings, primitive wrappers,
+ * byte arrays and Dates are written as tagged binary values. Each parameter
+ * type is written by name only once per payload, with later occurrences
+ * referring to the first one. All other argument and return values, exceptions
+ * and custom RemoteInvocation subclasses fall back to standard Java serialization
+ * within the same stream, so class descriptors of such objects are written
+ * once per payload as well.
+ *
+ * <p>Payloads get encoded into a reused per-thread buffer first. Payloads larger
+ * than the specified "compressionThreshold" get deflate-compressed (the algorithm
+ * behind GZIP) before being written to the target stream, which is worthwhile
+ * for large argument or result values on slow networks.
+ *
+ * <p>Needs to be configured for both the client-side request executor and
+ * the server-side HttpInvokerServiceExporter.
+ *
+ * @since 1.2.1
+ * @see AbstractHttpInvokerRequestExecutor#setCodec
+ * @see HttpInvokerServiceExporter#setCodec
+ */
+public class CompactRemoteInvocationCodec implements RemoteInvocationCodec {
+
+	/**
+	 * Default content type for the compact format:
+	 * "application/x-spring-compact-invocation".
+	 */
+	public static final String DEFAULT_CONTENT_TYPE = "application/x-spring-compact-invocation";
+
+	private static final int BUFFER_INITIAL_SIZE = 1024;
+
+	private static final int BUFFER_MAX_RETAINED_SIZE = 65536;
+
+	private static final int MAX_UTF_STRING_LENGTH = 65535 / 3;
+
+	private static final int FORMAT_PLAIN = 0;
+
+	private static final int FORMAT_DEFLATED = 1;
+
+	private static final byte TYPE_STANDARD = 0;
+
+	private static final byte TYPE_SERIALIZED = 1;
+
+	private static final byte VALUE_NULL = 0;
+
+	private static final byte VALUE_STRING = 1;
+
+	private static final byte VALUE_INTEGER = 2;
+
+	private static final byte VALUE_LONG = 3;
+
+	private static final byte VALUE_TRUE = 4;
+
+	private static final byte VALUE_FALSE = 5;
+
+	private static final byte VALUE_DOUBLE = 6;
+
+	private static final byte VALUE_FLOAT = 7;
+
+	private static final byte VALUE_SHORT = 8;
+
+	private static final byte VALUE_BYTE = 9;
+
+	private static final byte VALUE_CHARACTER = 10;
+
+	private static final byte VALUE_BYTE_ARRAY = 11;
+
+	private static final byte VALUE_DATE = 12;
+
+	private static final byte VALUE_SERIALIZED = 13;
+
+
+	private String contentType = DEFAULT_CONTENT_TYPE;
+
+	private int compressionThreshold = -1;
+
+	private final ByteArrayOutputStreamPool bufferPool =
+			new ByteArrayOutputStreamPool(BUFFER_INITIAL_SIZE, BUFFER_MAX_RETAINED_SIZE);
+
+
+	/**
+	 * Set the content type that identifies this codec's format.
+	 * Default is "application/x-spring-compact-invocation".
+	 */
+	public void setContentType(String contentType) {
+		this.contentType = contentType;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * Set the payload size in bytes above which payloads get compressed.
+	 * Default is -1, never compressing payloads.
+	 * <p>Compressed payloads are always readable, independent of the
+	 * receiving codec's threshold.
+	 */
+	public void setCompressionThreshold(int compressionThreshold) {
+		this.compressionThreshold = compressionThreshold;
+	}
+
+	/**
+	 * Return the payload size in bytes above which payloads get compressed.
+	 */
+	public int getCompressionThreshold() {
+		return compressionThreshold;
+	}
+
+
+	public void writeRemoteInvocation(RemoteInvocation invocation, OutputStream os) throws IOException {
+		ByteArrayOutputStream buffer = this.bufferPool.obtain();
+		try {
+			ObjectOutputStream oos = new ObjectOutputStream(buffer);
+			if (invocation.getClass() == RemoteInvocation.class) {
+				oos.writeByte(TYPE_STANDARD);
+				Map classHandles = new HashMap();
+				oos.writeUTF(invocation.getMethodName());
+				Class[] parameterTypes = invocation.getParameterTypes();
+				if (parameterTypes != null) {
+					oos.writeInt(parameterTypes.length);
+					for (int i = 0; i < parameterTypes.length; i++) {
+						writeClass(parameterTypes[i], oos, classHandles);
+					}
+				}
+				else {
+					oos.writeInt(-1);
+				}
+				Object[] arguments = invocation.getArguments();
+				if (arguments != null) {
+					oos.writeInt(arguments.length);
+					for (int i = 0; i < arguments.length; i++) {
+						writeValue(arguments[i], oos);
+					}
+				}
+				else {
+					oos.writeInt(-1);
+				}
+				oos.writeObject(invocation.getAttributes());
+			}
+			else {
+				// Custom RemoteInvocation subclass -> serialize as-is.
+				oos.writeByte(TYPE_SERIALIZED);
+				oos.writeObject(invocation);
+			}
+			oos.flush();
+			writePayload(buffer, os);
+		}
+		finally {
+			this.bufferPool.release(buffer);
+		}
+	}
+
+	public RemoteInvocation readRemoteInvocation(InputStream is) throws IOException, ClassNotFoundException {
+		Inflater inflater = null;
+		try {
+			int format = is.read();
+			if (format == FORMAT_DEFLATED) {
+				inflater = new Inflater();
+				is = new InflaterInputStream(is, inflater);
+			}
+			else if (format != FORMAT_PLAIN) {
+				throw new IOException("Unknown compact invocation format: " + format);
+			}
+			ObjectInputStream ois = new CodebaseAwareObjectInputStream(is, null);
+			if (ois.readByte() == TYPE_SERIALIZED) {
+				Object obj = ois.readObject();
+				if (!(obj instanceof RemoteInvocation)) {
+					throw new IOException("Deserialized object needs to be assignable to type [" +
+							RemoteInvocation.class.getName() + "]: " + obj);
+				}
+				return (RemoteInvocation) obj;
+			}
+			List classes = new ArrayList();
+			RemoteInvocation invocation = new RemoteInvocation();
+			invocation.setMethodName(ois.readUTF());
+			int parameterCount = ois.readInt();
+			if (parameterCount >= 0) {
+				Class[] parameterTypes = new Class[parameterCount];
+				for (int i = 0; i < parameterCount; i++) {
+					parameterTypes[i] = readClass(ois, classes);
+				}
+				invocation.setParameterTypes(parameterTypes);
+			}
+			int argumentCount = ois.readInt();
+			if (argumentCount >= 0) {
+				Object[] arguments = new Object[argumentCount];
+				for (int i = 0; i < argumentCount; i++) {
+					arguments[i] = readValue(ois);
+				}
+				invocation.setArguments(arguments);
+			}
+			invocation.setAttributes((Map) ois.readObject());
+			return invocation;
+		}
+		finally {
+			if (inflater != null) {
+				inflater.end();
+			}
+		}
+	}
+
+	public void writeRemoteInvocationResult(RemoteInvocationResult result, OutputStream os) throws IOException {
+		ByteArrayOutputStream buffer = this.bufferPool.obtain();
+		try {
+			ObjectOutputStream oos = new ObjectOutputStream(buffer);
+			if (result.getClass() == RemoteInvocationResult.class) {
+				oos.writeByte(TYPE_STANDARD);
+				oos.writeBoolean(result.hasException());
+				if (result.hasException()) {
+					oos.writeObject(result.getException());
+				}
+				else {
+					writeValue(result.getValue(), oos);
+				}
+			}
+			else {
+				// Custom RemoteInvocationResult subclass -> serialize as-is.
+				oos.writeByte(TYPE_SERIALIZED);
+				oos.writeObject(result);
+			}
+			oos.flush();
+			writePayload(buffer, os);
+		}
+		finally {
+			this.bufferPool.release(buffer);
+		}
+	}
+
+	public RemoteInvocationResult readRemoteInvocationResult(InputStream is, String codebaseUrl)
+			throws IOException, ClassNotFoundException {
+
+		Inflater inflater = null;
+		try {
+			int format = is.read();
+			if (format == FORMAT_DEFLATED) {
+				inflater = new Inflater();
+				is = new InflaterInputStream(is, inflater);
+			}
+			else if (format != FORMAT_PLAIN) {
+				throw new IOException("Unknown compact invocation result format: " + format);
+			}
+			ObjectInputStream ois = new CodebaseAwareObjectInputStream(is, codebaseUrl);
+			if (ois.readByte() == TYPE_SERIALIZED) {
+				Object obj = ois.readObject();
+				if (!(obj instanceof RemoteInvocationResult)) {
+					throw new IOException("Deserialized object needs to be assignable to type [" +
+							RemoteInvocationResult.class.getName() + "]: " + obj);
+				}
+				return (RemoteInvocationResult) obj;
+			}
+			if (ois.readBoolean()) {
+				return new RemoteInvocationResult((Throwable) ois.readObject());
+			}
+			else {
+				return new RemoteInvocationResult(readValue(ois));
+			}
+		}
+		finally {
+			if (inflater != null) {
+				inflater.end();
+			}
+		}
+	}
+
+
+	/**
+	 * Write the encoded payload in the given buffer to the target stream,
+	 * compressing it if it exceeds the compression threshold.
+	 */
+	private void writePayload(ByteArrayOutputStream buffer, OutputStream os) throws IOException {
+		if (this.compressionThreshold >= 0 && buffer.size() > this.compressionThreshold) {
+			os.write(FORMAT_DEFLATED);
+			Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+			try {
+				DeflaterOutputStream dos = new DeflaterOutputStream(os, deflater);
+				buffer.writeTo(dos);
+				dos.finish();
+			}
+			finally {
+				deflater.end();
+			}
+		}
+		else {
+			os.write(FORMAT_PLAIN);
+			buffer.writeTo(os);
+		}
+		os.flush();
+	}
+
+	/**
+	 * Write the given Class by name, or as reference to an earlier occurrence
+	 * within the same payload.
+	 */
+	private void writeClass(Class clazz, ObjectOutputStream oos, Map classHandles) throws IOException {
+		Integer handle = (Integer) classHandles.get(clazz);
+		if (handle != null) {
+			oos.writeShort(handle.intValue());
+		}
+		else {
+			oos.writeShort(0);
+			oos.writeUTF(clazz.getName());
+			classHandles.put(clazz, new Integer(classHandles.size() + 1));
+		}
+	}
+
+	/**
+	 * Read a Class written by <code>writeClass</code>.
+	 */
+	private Class readClass(ObjectInputStream ois, List classes) throws IOException, ClassNotFoundException {
+		int handle = ois.readShort();
+		if (handle > 0) {
+			return (Class) classes.get(handle - 1);
+		}
+		Class clazz = ClassUtils.forName(ois.readUTF());
+		classes.add(clazz);
+		return clazz;
+	}
+
+	/**
+	 * Write the given argument or result value as tagged binary value,
+	 * falling back to Java serialization for non-simple types.
+	 */
+	private void writeValue(Object value, ObjectOutputStream oos) throws IOException {
+		if (value == null) {
+			oos.writeByte(VALUE_NULL);
+			return;
+		}
+		Class clazz = value.getClass();
+		if (clazz == String.class && ((String) value).length() <= MAX_UTF_STRING_LENGTH) {
+			oos.writeByte(VALUE_STRING);
+			oos.writeUTF((String) value);
+		}
+		else if (clazz == Integer.class) {
+			oos.writeByte(VALUE_INTEGER);
+			oos.writeInt(((Integer) value).intValue());
+		}
+		else if (clazz == Long.class) {
+			oos.writeByte(VALUE_LONG);
+			oos.writeLong(((Long) value).longValue());
+		}
+		else if (clazz == Boolean.class) {
+			oos.writeByte(((Boolean) value).booleanValue() ? VALUE_TRUE : VALUE_FALSE);
+		}
+		else if (clazz == Double.class) {
+			oos.writeByte(VALUE_DOUBLE);
+			oos.writeDouble(((Double) value).doubleValue());
+		}
+		else if (clazz == Float.class) {
+			oos.writeByte(VALUE_FLOAT);
+			oos.writeFloat(((Float) value).floatValue());
+		}
+		else if (clazz == Short.class) {
+			oos.writeByte(VALUE_SHORT);
+			oos.writeShort(((Short) value).shortValue());
+		}
+		else if (clazz == Byte.class) {
+			oos.writeByte(VALUE_BYTE);
+			oos.writeByte(((Byte) value).byteValue());
+		}
+		else if (clazz == Character.class) {
+			oos.writeByte(VALUE_CHARACTER);
+			oos.writeChar(((Character) value).charValue());
+		}
+		else if (clazz == byte[].class) {
+			byte[] bytes = (byte[]) value;
+			oos.writeByte(VALUE_BYTE_ARRAY);
+			oos.writeInt(bytes.length);
+			oos.write(bytes);
+		}
+		else if (clazz == Date.class) {
+			oos.writeByte(VALUE_DATE);
+			oos.writeLong(((Date) value).getTime());
+		}
+		else {
+			oos.writeByte(VALUE_SERIALIZED);
+			oos.writeObject(value);
+		}
+	}
+
+	/**
+	 * Read a value written by <code>writeValue</code>.
+	 */
+	private Object readValue(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+		byte type = ois.readByte();
+		switch (type) {
+			case VALUE_NULL:
+				return null;
+			case VALUE_STRING:
+				return ois.readUTF();
+			case VALUE_INTEGER:
+				return new Integer(ois.readInt());
+			case VALUE_LONG:
+				return new Long(ois.readLong());
+			case VALUE_TRUE:
+				return Boolean.TRUE;
+			case VALUE_FALSE:
+				return Boolean.FALSE;
+			case VALUE_DOUBLE:
+				return new Double(ois.readDouble());
+			case VALUE_FLOAT:
+				return new Float(ois.readFloat());
+			case VALUE_SHORT:
+				return new Short(ois.readShort());
+			case VALUE_BYTE:
+				return new Byte(ois.readByte());
+			case VALUE_CHARACTER:
+				return new Character(ois.readChar());
+			case VALUE_BYTE_ARRAY:
+				byte[] bytes = new byte[ois.readInt()];
+				ois.readFully(bytes);
+				return bytes;
+			case VALUE_DATE:
+				return new Date(ois.readLong());
+			case VALUE_SERIALIZED:
+				return ois.readObject();
+			default:
+				throw new IOException("Unknown compact value type: " + type);
+		}
+	}
+
+}
@@ -48,6 +48,9 @@ import org.springframework.remoting.support.RemoteInvocationResult;
  * using dynamic class download with standard RMI! (See the RMI documentation
  * for details.)
  *
+ * <p>See AsyncHttpInvokerClientInterceptor for a JDK 1.5 variant that
+ * can also trigger remote invocations asynchronously.
+ *
  * @author Juergen Hoeller
  * @since 1.1
  * @see #setServiceUrl
@@ -56,6 +59,7 @@ import org.springframework.remoting.support.RemoteInvocationResult;
  * @see #setHttpInvokerRequestExecutor
  * @see HttpInvokerServiceExporter
  * @see HttpInvokerProxyFactoryBean
+ * @see AsyncHttpInvokerClientInterceptor
  * @see java.rmi.server.RMIClassLoader
  */
 public class HttpInvokerClientInterceptor extends RemoteInvocationBasedAccessor
@@ -93,9 +97,11 @@ public class HttpInvokerClientInterceptor extends RemoteInvocationBasedAccessor
 	 * Set the HttpInvokerRequestExecutor implementation to use for executing
 	 * remote invocations.
 	 * <p>Default is SimpleHttpInvokerRequestExecutor. Alternatively, consider
-	 * CommonsHttpInvokerRequestExecutor for more sophisticated needs.
+	 * CommonsHttpInvokerRequestExecutor for more sophisticated needs, or
+	 * PooledHttpInvokerRequestExecutor for an explicitly bounded connection pool.
 	 * @see SimpleHttpInvokerRequestExecutor
 	 * @see CommonsHttpInvokerRequestExecutor
+	 * @see PooledHttpInvokerRequestExecutor
 	 */
 	public void setHttpInvokerRequestExecutor(HttpInvokerRequestExecutor httpInvokerRequestExecutor) {
 		this.httpInvokerRequestExecutor = httpInvokerRequestExecutor;
@@ -114,7 +120,18 @@ public class HttpInvokerClientInterceptor extends RemoteInvocationBasedAccessor
 			return "HTTP invoker proxy for service URL [" + getServiceUrl() + "]";
 		}
 
-		RemoteInvocation invocation = createRemoteInvocation(methodInvocation);
+		return invokeRemote(createRemoteInvocation(methodInvocation));
+	}
+
+	/**
+	 * Execute the given remote invocation and recreate its result,
+	 * converting I/O failures into RemoteAccessExceptions.
+	 * @param invocation the RemoteInvocation to execute
+	 * @return the result of the remote invocation
+	 * @throws Throwable the exception thrown by the remote method,
+	 * or a RemoteAccessException
+	 */
+	protected Object invokeRemote(RemoteInvocation invocation) throws Throwable {
 		RemoteInvocationResult result = null;
 		try {
 			result = executeRequest(invocation);
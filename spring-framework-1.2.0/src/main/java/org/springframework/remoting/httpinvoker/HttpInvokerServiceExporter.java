@@ -46,6 +46,10 @@ import org.springframework.web.servlet.mvc.Controller;
  * expense of being tied to Java. Nevertheless, it is as easy to set up as
  * Hessian and Burlap, which is its main advantage compared to RMI.
  *
+ * <p>A RemoteInvocationCodec can be specified for a more compact format than
+ * Java serialization. It will be applied to requests that carry the codec's
+ * content type, while standard serialization remains available for other clients.
+ *
  * @author Juergen Hoeller
  * @since 1.1
  * @see HttpInvokerClientInterceptor
@@ -59,8 +63,29 @@ public class HttpInvokerServiceExporter extends RemoteInvocationBasedExporter
 
 	protected static final String CONTENT_TYPE_SERIALIZED_OBJECT = "application/x-java-serialized-object";
 
+	private RemoteInvocationCodec codec;
+
 	private Object proxy;
 
+
+	/**
+	 * Set the RemoteInvocationCodec to use for reading invocations and writing
+	 * invocation results, for requests that specify the codec's content type.
+	 * Requests with any other content type will be handled with standard
+	 * Java serialization.
+	 * @see CompactRemoteInvocationCodec
+	 * @see AbstractHttpInvokerRequestExecutor#setCodec
+	 */
+	public void setCodec(RemoteInvocationCodec codec) {
+		this.codec = codec;
+	}
+
+	/**
+	 * Return the RemoteInvocationCodec to use, if any.
+	 */
+	public RemoteInvocationCodec getCodec() {
+		return codec;
+	}
 	public void afterPropertiesSet() {
 		this.proxy = getProxyForService();
 	}
@@ -114,10 +139,22 @@ public class HttpInvokerServiceExporter extends RemoteInvocationBasedExporter
 	 * @throws ClassNotFoundException if thrown during deserialization
 	 * @see #decorateInputStream
 	 * @see #doReadRemoteInvocation
+	 * @see #determineCodec
 	 */
 	protected RemoteInvocation readRemoteInvocation(HttpServletRequest request, InputStream is)
 			throws IOException, ClassNotFoundException {
 
+		RemoteInvocationCodec codecToUse = determineCodec(request);
+		if (codecToUse != null) {
+			InputStream decoratedStream = decorateInputStream(request, is);
+			try {
+				return codecToUse.readRemoteInvocation(decoratedStream);
+			}
+			finally {
+				decoratedStream.close();
+			}
+		}
+
 		ObjectInputStream ois = createObjectInputStream(decorateInputStream(request, is));
 		try {
 			return doReadRemoteInvocation(ois);
@@ -127,6 +164,24 @@ public class HttpInvokerServiceExporter extends RemoteInvocationBasedExporter
 		}
 	}
 
+	/**
+	 * Determine the RemoteInvocationCodec to use for the given request:
+	 * the configured codec if the request specifies its content type,
+	 * or null for standard Java serialization.
+	 * @param request current HTTP request
+	 * @return the RemoteInvocationCodec to use, or null if none
+	 * @see #setCodec
+	 */
+	protected RemoteInvocationCodec determineCodec(HttpServletRequest request) {
+		if (this.codec != null) {
+			String contentType = request.getContentType();
+			if (contentType != null && contentType.startsWith(this.codec.getContentType())) {
+				return this.codec;
+			}
+		}
+		return null;
+	}
+
 	/**
 	 * Return the InputStream to use for reading remote invocations,
 	 * potentially decorating the given original InputStream.
@@ -191,7 +246,8 @@ public class HttpInvokerServiceExporter extends RemoteInvocationBasedExporter
 			HttpServletRequest request, HttpServletResponse response, RemoteInvocationResult result)
 			throws IOException {
 
-		response.setContentType(CONTENT_TYPE_SERIALIZED_OBJECT);
+		RemoteInvocationCodec codecToUse = determineCodec(request);
+		response.setContentType(codecToUse != null ? codecToUse.getContentType() : CONTENT_TYPE_SERIALIZED_OBJECT);
 		writeRemoteInvocationResult(request, response, result, response.getOutputStream());
 	}
 
@@ -200,7 +256,8 @@ public class HttpInvokerServiceExporter extends RemoteInvocationBasedExporter
 	 * <p>The default implementation gives <code>decorateOutputStream</code> a chance
 	 * to decorate the stream first (for example, for custom encryption or compression).
 	 * Creates an <code>ObjectOutputStream</code> for the final stream and calls
-	 * <code>doWriteRemoteInvocationResult</code> to actually write the object.
+	 * <code>doWriteRemoteInvocationResult</code> to actually write the object,
+	 * unless the request is to be handled by a RemoteInvocationCodec.
 	 * <p>Can be overridden for custom serialization of the invocation.
 	 * @param request current HTTP request
 	 * @param response current HTTP response
@@ -209,11 +266,24 @@ public class HttpInvokerServiceExporter extends RemoteInvocationBasedExporter
 	 * @throws IOException if thrown by I/O methods
 	 * @see #decorateOutputStream
 	 * @see #doWriteRemoteInvocationResult
+	 * @see #determineCodec
 	 */
 	protected void writeRemoteInvocationResult(
 			HttpServletRequest request, HttpServletResponse response, RemoteInvocationResult result, OutputStream os)
 			throws IOException {
 
+		RemoteInvocationCodec codecToUse = determineCodec(request);
+		if (codecToUse != null) {
+			OutputStream decoratedStream = decorateOutputStream(request, response, os);
+			try {
+				codecToUse.writeRemoteInvocationResult(result, decoratedStream);
+			}
+			finally {
+				decoratedStream.close();
+			}
+			return;
+		}
+
 		ObjectOutputStream oos = new ObjectOutputStream(decorateOutputStream(request, response, os));
 		try {
 			doWriteRemoteInvocationResult(result, oos);
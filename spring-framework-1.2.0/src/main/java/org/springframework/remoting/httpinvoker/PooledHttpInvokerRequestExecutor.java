@@ -0,0 +1,259 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.remoting.httpinvoker;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+
+import org.springframework.beans.factory.BeanNameAware;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * CommonsHttpInvokerRequestExecutor subclass that sets up its own HttpClient
+ * with an explicitly bounded, keep-alive connection pool, instead of relying
+ * on a default MultiThreadedHttpConnectionManager with its small per-host limit.
+ *
+ * <p>Connections get reused across subsequent requests to the same host.
+ * Requests beyond "maxConnectionsPerHost" wait for a connection to be returned
+ * to the pool, for at most "connectionPoolTimeout" milliseconds. Connections
+ * that have been idle for longer than "idleConnectionTimeout" get closed by
+ * a background reaper thread, avoiding stale connections that the server
+ * has already dropped.
+ *
+ * <p>Requires Jakarta Commons HttpClient 3.0 or higher. Needs to be
+ * initialized via <code>afterPropertiesSet</code> and shut down via
+ * <code>destroy</code>, which happens automatically when defined as bean
+ * in a Spring bean factory.
+ *
+ * @since 1.2.1
+ * @see #setMaxConnectionsPerHost
+ * @see #setConnectTimeout
+ * @see #setReadTimeout
+ * @see #setIdleConnectionTimeout
+ * @see AsyncHttpInvokerClientInterceptor#setAsyncTaskExecutor
+ */
+public class PooledHttpInvokerRequestExecutor extends CommonsHttpInvokerRequestExecutor
+		implements BeanNameAware, InitializingBean, DisposableBean {
+
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+
+	public static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 100;
+
+	public static final long DEFAULT_IDLE_CONNECTION_TIMEOUT = 60000;
+
+
+	private int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+
+	private int maxTotalConnections = DEFAULT_MAX_TOTAL_CONNECTIONS;
+
+	private int connectTimeout = 0;
+
+	private int readTimeout = 0;
+
+	private long connectionPoolTimeout = 0;
+
+	private long idleConnectionTimeout = DEFAULT_IDLE_CONNECTION_TIMEOUT;
+
+	private String beanName;
+
+	private MultiThreadedHttpConnectionManager connectionManager;
+
+	private Thread idleConnectionReaper;
+
+	private boolean running = false;
+
+	private final Object lifecycleMonitor = new Object();
+
+
+	/**
+	 * Set the maximum number of pooled connections per target host.
+	 * Default is 20.
+	 */
+	public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+	}
+
+	/**
+	 * Return the maximum number of pooled connections per target host.
+	 */
+	public int getMaxConnectionsPerHost() {
+		return maxConnectionsPerHost;
+	}
+
+	/**
+	 * Set the maximum number of pooled connections across all target hosts.
+	 * Default is 100.
+	 */
+	public void setMaxTotalConnections(int maxTotalConnections) {
+		this.maxTotalConnections = maxTotalConnections;
+	}
+
+	/**
+	 * Return the maximum number of pooled connections across all target hosts.
+	 */
+	public int getMaxTotalConnections() {
+		return maxTotalConnections;
+	}
+
+	/**
+	 * Set the timeout in milliseconds for establishing a connection.
+	 * Default is 0, indicating no timeout.
+	 */
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	/**
+	 * Set the socket read timeout in milliseconds, that is, the maximum time
+	 * to wait for response data. Default is 0, indicating no timeout.
+	 */
+	public void setReadTimeout(int readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+
+	/**
+	 * Set the timeout in milliseconds to wait for a pooled connection
+	 * if all connections to the target host are in use.
+	 * Default is 0, indicating to wait indefinitely.
+	 */
+	public void setConnectionPoolTimeout(long connectionPoolTimeout) {
+		this.connectionPoolTimeout = connectionPoolTimeout;
+	}
+
+	/**
+	 * Set the time in milliseconds after which idle pooled connections
+	 * get closed. Default is 60000 (1 minute).
+	 * <p>The idle reaper thread checks for idle connections at half this
+	 * interval. Specify 0 to keep idle connections open forever.
+	 */
+	public void setIdleConnectionTimeout(long idleConnectionTimeout) {
+		this.idleConnectionTimeout = idleConnectionTimeout;
+	}
+
+	public void setBeanName(String beanName) {
+		this.beanName = beanName;
+	}
+
+
+	/**
+	 * Create the pooling connection manager and a corresponding HttpClient,
+	 * and start the idle connection reaper thread.
+	 * @see #createConnectionManager
+	 */
+	public void afterPropertiesSet() {
+		if (this.maxConnectionsPerHost <= 0) {
+			throw new IllegalArgumentException("maxConnectionsPerHost must be positive");
+		}
+		if (this.maxTotalConnections < this.maxConnectionsPerHost) {
+			throw new IllegalArgumentException("maxTotalConnections must not be smaller than maxConnectionsPerHost");
+		}
+		this.connectionManager = createConnectionManager();
+		HttpClient httpClient = new HttpClient(this.connectionManager);
+		httpClient.getParams().setConnectionManagerTimeout(this.connectionPoolTimeout);
+		setHttpClient(httpClient);
+		synchronized (this.lifecycleMonitor) {
+			this.running = true;
+		}
+		if (this.idleConnectionTimeout > 0) {
+			this.idleConnectionReaper = new Thread(new IdleConnectionReaper(), getReaperThreadName());
+			this.idleConnectionReaper.setDaemon(true);
+			this.idleConnectionReaper.start();
+		}
+	}
+
+	/**
+	 * Create the MultiThreadedHttpConnectionManager, applying the pool
+	 * limits and timeouts of this executor.
+	 * @return the new connection manager
+	 */
+	protected MultiThreadedHttpConnectionManager createConnectionManager() {
+		MultiThreadedHttpConnectionManager connectionManager = new MultiThreadedHttpConnectionManager();
+		HttpConnectionManagerParams params = connectionManager.getParams();
+		params.setDefaultMaxConnectionsPerHost(this.maxConnectionsPerHost);
+		params.setMaxTotalConnections(this.maxTotalConnections);
+		params.setConnectionTimeout(this.connectTimeout);
+		params.setSoTimeout(this.readTimeout);
+		params.setStaleCheckingEnabled(true);
+		return connectionManager;
+	}
+
+	private String getReaperThreadName() {
+		return (this.beanName != null ? this.beanName : getClass().getName()) + "-IdleConnectionReaper";
+	}
+
+	/**
+	 * Return the number of connections currently held in the pool,
+	 * either in use or idle (for monitoring purposes).
+	 */
+	public int getConnectionsInPool() {
+		return (this.connectionManager != null ? this.connectionManager.getConnectionsInPool() : 0);
+	}
+
+	/**
+	 * Close pooled connections that have been idle for longer than
+	 * the "idleConnectionTimeout". Called by the reaper thread.
+	 */
+	public void closeIdleConnections() {
+		if (this.connectionManager != null) {
+			this.connectionManager.closeIdleConnections(this.idleConnectionTimeout);
+		}
+	}
+
+	/**
+	 * Stop the idle connection reaper and close all pooled connections.
+	 */
+	public void destroy() {
+		synchronized (this.lifecycleMonitor) {
+			this.running = false;
+			this.lifecycleMonitor.notifyAll();
+		}
+		if (this.connectionManager != null) {
+			this.connectionManager.shutdown();
+		}
+	}
+
+
+	/**
+	 * Runnable that periodically closes idle connections until shutdown.
+	 */
+	private class IdleConnectionReaper implements Runnable {
+
+		public void run() {
+			long interval = Math.max(idleConnectionTimeout / 2, 1);
+			while (true) {
+				synchronized (lifecycleMonitor) {
+					if (!running) {
+						return;
+					}
+					try {
+						lifecycleMonitor.wait(interval);
+					}
+					catch (InterruptedException ex) {
+						return;
+					}
+					if (!running) {
+						return;
+					}
+				}
+				closeIdleConnections();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.remoting.httpinvoker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.springframework.remoting.support.RemoteInvocation;
+import org.springframework.remoting.support.RemoteInvocationResult;
+
+/**
+ * Strategy interface for encoding RemoteInvocation and RemoteInvocationResult
+ * objects into an HTTP invoker request or response body, and decoding them again.
+ *
+ * <p>Can be set on an HTTP invoker request executor as well as on an
+ * HttpInvokerServiceExporter, replacing standard Java serialization of the
+ * invocation objects. Both sides need to use the same codec: the exporter
+ * will only apply its codec to requests that carry the codec's content type.
+ *
+ * @since 1.2.1
+ * @see AbstractHttpInvokerRequestExecutor#setCodec
+ * @see HttpInvokerServiceExporter#setCodec
+ * @see CompactRemoteInvocationCodec
+ */
+public interface RemoteInvocationCodec {
+
+	/**
+	 * Return the content type that identifies this codec's format,
+	 * to be sent as HTTP "Content-Type" header.
+	 */
+	String getContentType();
+
+	/**
+	 * Write the given RemoteInvocation to the given OutputStream.
+	 * @param invocation the RemoteInvocation object
+	 * @param os the OutputStream to write to (will not be closed)
+	 * @throws IOException if thrown by I/O methods
+	 */
+	void writeRemoteInvocation(RemoteInvocation invocation, OutputStream os) throws IOException;
+
+	/**
+	 * Read a RemoteInvocation from the given InputStream.
+	 * @param is the InputStream to read from (will not be closed)
+	 * @return the RemoteInvocation object
+	 * @throws IOException if thrown by I/O methods
+	 * @throws ClassNotFoundException if a class could not be resolved
+	 */
+	RemoteInvocation readRemoteInvocation(InputStream is) throws IOException, ClassNotFoundException;
+
+	/**
+	 * Write the given RemoteInvocationResult to the given OutputStream.
+	 * @param result the RemoteInvocationResult object
+	 * @param os the OutputStream to write to (will not be closed)
+	 * @throws IOException if thrown by I/O methods
+	 */
+	void writeRemoteInvocationResult(RemoteInvocationResult result, OutputStream os) throws IOException;
+
+	/**
+	 * Read a RemoteInvocationResult from the given InputStream.
+	 * @param is the InputStream to read from (will not be closed)
+	 * @param codebaseUrl the codebase URL to load classes from if not found locally
+	 * (can be null)
+	 * @return the RemoteInvocationResult object
+	 * @throws IOException if thrown by I/O methods
+	 * @throws ClassNotFoundException if a class could not be resolved
+	 */
+	RemoteInvocationResult readRemoteInvocationResult(InputStream is, String codebaseUrl)
+			throws IOException, ClassNotFoundException;
+
+}
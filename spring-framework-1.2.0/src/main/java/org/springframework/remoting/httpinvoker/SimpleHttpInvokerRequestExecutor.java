@@ -58,8 +58,9 @@ public class SimpleHttpInvokerRequestExecutor extends AbstractHttpInvokerRequest
 	/**
 	 * Prepare the given HTTP connection.
 	 * <p>Default implementation specifies POST as method,
-	 * "application/x-java-serialized-object" as "Content-Type" header,
-	 * and the given content length as "Content-Length" header.
+	 * "application/x-java-serialized-object" (or the codec's content type)
+	 * as "Content-Type" header, and the given content length as
+	 * "Content-Length" header.
 	 * @param con the HTTP connection to prepare
 	 * @param contentLength the length of the content to send
 	 * @throws IOException if thrown by HttpURLConnection methods
@@ -67,7 +68,7 @@ public class SimpleHttpInvokerRequestExecutor extends AbstractHttpInvokerRequest
 	protected void prepareConnection(HttpURLConnection con, int contentLength) throws IOException {
 		con.setDoOutput(true);
 		con.setRequestMethod(HTTP_METHOD_POST);
-		con.setRequestProperty(HTTP_HEADER_CONTENT_TYPE, CONTENT_TYPE_SERIALIZED_OBJECT);
+		con.setRequestProperty(HTTP_HEADER_CONTENT_TYPE, getContentType());
 		con.setRequestProperty(HTTP_HEADER_CONTENT_LENGTH, Integer.toString(contentLength));
 	}
 
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.scheduling.concurrent;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Future;
+
+import org.springframework.aop.support.NameMatchMethodPointcut;
+import org.springframework.aop.support.StaticMethodMatcherPointcutAdvisor;
+
+/**
+ * Advisor that applies an AsyncExecutionInterceptor to methods that
+ * return <code>void</code> or a <code>java.util.concurrent.Future</code>,
+ * optionally restricted to the given method names.
+ *
+ * <p>Methods with other return types are never matched, as their callers
+ * need the result right away.
+ *
+ * @since 1.2.1
+ * @see AsyncExecutionInterceptor
+ * @see #setMappedNames
+ */
+public class AsyncExecutionAdvisor extends StaticMethodMatcherPointcutAdvisor {
+
+	private NameMatchMethodPointcut namePointcut;
+
+
+	/**
+	 * Create a new AsyncExecutionAdvisor.
+	 * @see #setAsyncExecutionInterceptor
+	 */
+	public AsyncExecutionAdvisor() {
+	}
+
+	/**
+	 * Create a new AsyncExecutionAdvisor.
+	 * @param interceptor the interceptor to apply
+	 */
+	public AsyncExecutionAdvisor(AsyncExecutionInterceptor interceptor) {
+		super(interceptor);
+	}
+
+
+	/**
+	 * Set the interceptor to apply to matching methods.
+	 */
+	public void setAsyncExecutionInterceptor(AsyncExecutionInterceptor interceptor) {
+		setAdvice(interceptor);
+	}
+
+	/**
+	 * Convenience method when we have only a single method name to match.
+	 * @see #setMappedNames
+	 */
+	public void setMappedName(String mappedName) {
+		setMappedNames(new String[] {mappedName});
+	}
+
+	/**
+	 * Set the names of the methods to execute asynchronously, which can
+	 * start or end with "*" for matching multiple methods. Default is to
+	 * match all methods that return void or a Future.
+	 * @see NameMatchMethodPointcut#setMappedNames
+	 */
+	public void setMappedNames(String[] mappedNames) {
+		this.namePointcut = new NameMatchMethodPointcut();
+		this.namePointcut.setMappedNames(mappedNames);
+	}
+
+	public boolean matches(Method method, Class targetClass) {
+		Class returnType = method.getReturnType();
+		if (!void.class.equals(returnType) && !Future.class.isAssignableFrom(returnType)) {
+			return false;
+		}
+		return (this.namePointcut == null || this.namePointcut.matches(method, targetClass));
+	}
+
+}
@@ -0,0 +1,447 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.scheduling.concurrent;
+
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.i18n.LocaleContext;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.core.Constants;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.LogLinearHistogram;
+
+/**
+ * AOP Alliance MethodInterceptor that executes method invocations on a
+ * TaskExecutor instead of the caller's thread.
+ *
+ * <p>Methods declared to return a <code>java.util.concurrent.Future</code>
+ * return a Future handle to the caller immediately; the target method
+ * typically returns an AsyncResult holding its actual result. Methods
+ * returning <code>void</code> are executed fire-and-forget, with exceptions
+ * getting logged. Methods with any other return type are executed
+ * synchronously, as the caller needs their result right away.
+ *
+ * <p>Thread-bound state is handled explicitly, since worker threads
+ * do not share the caller's thread context:
+ * <ul>
+ * <li>The caller's LocaleContext is exposed to the asynchronous execution
+ * if "propagateLocaleContext" is true (the default); else the execution
+ * runs without LocaleContext, even on threads that inherited one.
+ * <li>A transaction cannot span threads. The "transactionPolicy" determines
+ * what happens on invocation within transaction synchronization: execute
+ * detached from the transaction (the default), reject the invocation,
+ * or submit it only once the transaction has committed.
+ * </ul>
+ *
+ * <p>Use a bounded executor such as ThreadPoolTaskExecutor in production,
+ * to avoid unbounded thread creation or queueing. Exposes queue depth and
+ * execution time statistics through the AsyncExecutionStats interface,
+ * for example to JMX via MBeanExporter.
+ *
+ * @since 1.2.1
+ * @see AsyncResult
+ * @see AsyncExecutionAdvisor
+ * @see ThreadPoolTaskExecutor
+ * @see #setTransactionPolicy
+ * @see #setPropagateLocaleContext
+ */
+public class AsyncExecutionInterceptor implements MethodInterceptor, AsyncExecutionStats, InitializingBean {
+
+	/**
+	 * Execute right away, detached from the caller's transaction.
+	 * This is the default.
+	 */
+	public static final int TRANSACTION_POLICY_DETACH = 0;
+
+	/**
+	 * Throw an IllegalStateException on invocation within
+	 * transaction synchronization.
+	 */
+	public static final int TRANSACTION_POLICY_REJECT = 1;
+
+	/**
+	 * Defer execution until the caller's transaction has committed,
+	 * cancelling it on rollback.
+	 */
+	public static final int TRANSACTION_POLICY_AFTER_COMMIT = 2;
+
+
+	/** Prefix for the transaction policy constants defined in this class */
+	private static final String TRANSACTION_POLICY_CONSTANT_PREFIX = "TRANSACTION_POLICY";
+
+	/** Constants instance for this class */
+	private static final Constants constants = new Constants(AsyncExecutionInterceptor.class);
+
+
+	protected final Log logger = LogFactory.getLog(getClass());
+
+	private TaskExecutor taskExecutor;
+
+	private int transactionPolicy = TRANSACTION_POLICY_DETACH;
+
+	private boolean propagateLocaleContext = true;
+
+	private final LogLinearHistogram queueWaitTimes = new LogLinearHistogram();
+
+	private final LogLinearHistogram executionTimes = new LogLinearHistogram();
+
+	/** Monitor for the counts below */
+	private final Object countMonitor = new Object();
+
+	private int queuedCount = 0;
+
+	private int activeCount = 0;
+
+	private long completedCount = 0;
+
+	private long failedCount = 0;
+
+	private long rejectedCount = 0;
+
+
+	/**
+	 * Create a new AsyncExecutionInterceptor.
+	 * @see #setTaskExecutor
+	 */
+	public AsyncExecutionInterceptor() {
+	}
+
+	/**
+	 * Create a new AsyncExecutionInterceptor.
+	 * @param taskExecutor the TaskExecutor to execute invocations on
+	 */
+	public AsyncExecutionInterceptor(TaskExecutor taskExecutor) {
+		this.taskExecutor = taskExecutor;
+	}
+
+
+	/**
+	 * Set the TaskExecutor to execute invocations on,
+	 * typically a bounded ThreadPoolTaskExecutor.
+	 */
+	public void setTaskExecutor(TaskExecutor taskExecutor) {
+		this.taskExecutor = taskExecutor;
+	}
+
+	/**
+	 * Set the transaction policy by the name of the corresponding constant
+	 * in this class, e.g. "TRANSACTION_POLICY_AFTER_COMMIT".
+	 * @param constantName name of the constant
+	 * @throws IllegalArgumentException if an invalid constant was specified
+	 * @see #setTransactionPolicy
+	 */
+	public void setTransactionPolicyName(String constantName) throws IllegalArgumentException {
+		if (constantName == null || !constantName.startsWith(TRANSACTION_POLICY_CONSTANT_PREFIX)) {
+			throw new IllegalArgumentException("Only transaction policy constants allowed");
+		}
+		setTransactionPolicy(constants.asNumber(constantName).intValue());
+	}
+
+	/**
+	 * Set what to do on invocation within transaction synchronization.
+	 * Default is TRANSACTION_POLICY_DETACH.
+	 * <p>Note that a SyncTaskExecutor executes invocations within the
+	 * caller's transaction if they are not deferred or rejected.
+	 * @see #TRANSACTION_POLICY_DETACH
+	 * @see #TRANSACTION_POLICY_REJECT
+	 * @see #TRANSACTION_POLICY_AFTER_COMMIT
+	 */
+	public void setTransactionPolicy(int transactionPolicy) {
+		if (!constants.getValues(TRANSACTION_POLICY_CONSTANT_PREFIX).contains(new Integer(transactionPolicy))) {
+			throw new IllegalArgumentException("Only values of transaction policy constants allowed");
+		}
+		this.transactionPolicy = transactionPolicy;
+	}
+
+	/**
+	 * Set whether to expose the caller's LocaleContext to the asynchronous
+	 * execution. Default is true. Turn this off to execute without any
+	 * LocaleContext, i.e. with the system default Locale.
+	 * @see LocaleContextHolder
+	 */
+	public void setPropagateLocaleContext(boolean propagateLocaleContext) {
+		this.propagateLocaleContext = propagateLocaleContext;
+	}
+
+	public void afterPropertiesSet() {
+		if (this.taskExecutor == null) {
+			throw new IllegalArgumentException("taskExecutor is required");
+		}
+	}
+
+
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		Class returnType = invocation.getMethod().getReturnType();
+		boolean returnsFuture = Future.class.isAssignableFrom(returnType);
+		if (!returnsFuture && !void.class.equals(returnType)) {
+			// The caller needs the result right away.
+			return invocation.proceed();
+		}
+
+		AsyncTask task = new AsyncTask(invocation, returnsFuture,
+				(this.propagateLocaleContext ? LocaleContextHolder.getLocaleContext() : null));
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			if (this.transactionPolicy == TRANSACTION_POLICY_REJECT) {
+				throw new IllegalStateException("Cannot execute method [" + invocation.getMethod().getName() +
+						"] asynchronously within a transaction");
+			}
+			if (this.transactionPolicy == TRANSACTION_POLICY_AFTER_COMMIT) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Deferring asynchronous execution of method [" +
+							invocation.getMethod().getName() + "] until transaction commit");
+				}
+				TransactionSynchronizationManager.registerSynchronization(new AfterCommitSubmission(task));
+				return (returnsFuture ? task : null);
+			}
+		}
+		submit(task);
+		return (returnsFuture ? task : null);
+	}
+
+	/**
+	 * Hand the given task to the TaskExecutor.
+	 * @throws TaskRejectedException if the TaskExecutor rejected the task
+	 */
+	private void submit(AsyncTask task) throws TaskRejectedException {
+		synchronized (this.countMonitor) {
+			this.queuedCount++;
+		}
+		task.submitTime = System.nanoTime();
+		try {
+			this.taskExecutor.execute(task);
+		}
+		catch (TaskRejectedException ex) {
+			synchronized (this.countMonitor) {
+				this.queuedCount--;
+				this.rejectedCount++;
+			}
+			throw ex;
+		}
+	}
+
+
+	//---------------------------------------------------------------------
+	// Implementation of AsyncExecutionStats interface
+	//---------------------------------------------------------------------
+
+	public int getQueuedCount() {
+		synchronized (this.countMonitor) {
+			return this.queuedCount;
+		}
+	}
+
+	public int getActiveCount() {
+		synchronized (this.countMonitor) {
+			return this.activeCount;
+		}
+	}
+
+	public long getCompletedCount() {
+		synchronized (this.countMonitor) {
+			return this.completedCount;
+		}
+	}
+
+	public long getFailedCount() {
+		synchronized (this.countMonitor) {
+			return this.failedCount;
+		}
+	}
+
+	public long getRejectedCount() {
+		synchronized (this.countMonitor) {
+			return this.rejectedCount;
+		}
+	}
+
+	public String getQueueWaitTimeSummary() {
+		return this.queueWaitTimes.getSnapshot().toString();
+	}
+
+	public String getExecutionTimeSummary() {
+		return this.executionTimes.getSnapshot().toString();
+	}
+
+	public long getExecutionTimePercentileMicros(double percentile) {
+		return this.executionTimes.getSnapshot().getPercentile(percentile);
+	}
+
+	public void resetStatistics() {
+		synchronized (this.countMonitor) {
+			this.completedCount = 0;
+			this.failedCount = 0;
+			this.rejectedCount = 0;
+		}
+		this.queueWaitTimes.reset();
+		this.executionTimes.reset();
+	}
+
+
+	/**
+	 * Future for an asynchronous invocation, executed by the TaskExecutor.
+	 * Records statistics and exposes the LocaleContext around the execution.
+	 */
+	private class AsyncTask extends FutureTask {
+
+		private final MethodInvocation invocation;
+
+		private final boolean returnsFuture;
+
+		private final LocaleContext localeContext;
+
+		private long submitTime;
+
+		private boolean failed = false;
+
+		public AsyncTask(final MethodInvocation invocation, boolean returnsFuture, LocaleContext localeContext) {
+			super(new Callable() {
+				public Object call() throws Exception {
+					try {
+						Object result = invocation.proceed();
+						return (result instanceof Future ? getResult((Future) result) : null);
+					}
+					catch (Exception ex) {
+						throw ex;
+					}
+					catch (Error err) {
+						throw err;
+					}
+					catch (Throwable ex) {
+						throw new UndeclaredThrowableException(ex);
+					}
+				}
+			});
+			this.invocation = invocation;
+			this.returnsFuture = returnsFuture;
+			this.localeContext = localeContext;
+		}
+
+		public void run() {
+			long startTime = System.nanoTime();
+			synchronized (countMonitor) {
+				queuedCount--;
+				activeCount++;
+			}
+			queueWaitTimes.record((startTime - this.submitTime) / 1000);
+			LocaleContext previousLocaleContext = LocaleContextHolder.getLocaleContext();
+			LocaleContextHolder.setLocaleContext(this.localeContext);
+			try {
+				super.run();
+			}
+			finally {
+				LocaleContextHolder.setLocaleContext(previousLocaleContext);
+				executionTimes.record((System.nanoTime() - startTime) / 1000);
+				synchronized (countMonitor) {
+					activeCount--;
+					if (this.failed) {
+						failedCount++;
+					}
+					else if (isCancelled()) {
+						rejectedCount++;
+					}
+					else {
+						completedCount++;
+					}
+				}
+			}
+		}
+
+		protected void setException(Throwable ex) {
+			this.failed = true;
+			if (!this.returnsFuture) {
+				logger.error("Asynchronous execution of method [" + this.invocation.getMethod().getName() +
+						"] failed", ex);
+			}
+			super.setException(ex);
+		}
+
+		/**
+		 * Fail this task without executing it.
+		 */
+		public void reject(TaskRejectedException ex) {
+			logger.error("Could not submit asynchronous execution of method [" +
+					this.invocation.getMethod().getName() + "] after transaction commit", ex);
+			super.setException(ex);
+		}
+	}
+
+	/**
+	 * Return the value of the Future returned by the target method,
+	 * unwrapping the cause of an ExecutionException.
+	 */
+	private static Object getResult(Future future) throws Exception {
+		try {
+			return future.get();
+		}
+		catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw ex;
+		}
+	}
+
+
+	/**
+	 * TransactionSynchronization that submits a task once
+	 * the transaction has committed, or cancels it else.
+	 */
+	private class AfterCommitSubmission extends TransactionSynchronizationAdapter {
+
+		private final AsyncTask task;
+
+		public AfterCommitSubmission(AsyncTask task) {
+			this.task = task;
+		}
+
+		public void afterCompletion(int status) {
+			if (status == TransactionSynchronization.STATUS_COMMITTED) {
+				try {
+					submit(this.task);
+				}
+				catch (TaskRejectedException ex) {
+					this.task.reject(ex);
+				}
+			}
+			else {
+				this.task.cancel(false);
+				synchronized (countMonitor) {
+					rejectedCount++;
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.scheduling.concurrent;
+
+/**
+ * Statistics for an AsyncExecutionInterceptor. Suitable as management
+ * interface for export via MBeanExporter with an InterfaceBasedMBeanInfoAssembler.
+ *
+ * <p>All times are in microseconds.
+ *
+ * @since 1.2.1
+ * @see AsyncExecutionInterceptor
+ * @see org.springframework.jmx.export.assembler.InterfaceBasedMBeanInfoAssembler
+ */
+public interface AsyncExecutionStats {
+
+	/**
+	 * Return the number of submitted invocations that have not started yet.
+	 */
+	int getQueuedCount();
+
+	/**
+	 * Return the number of invocations currently executing.
+	 */
+	int getActiveCount();
+
+	/**
+	 * Return the number of invocations that completed normally.
+	 */
+	long getCompletedCount();
+
+	/**
+	 * Return the number of invocations that threw an exception.
+	 */
+	long getFailedCount();
+
+	/**
+	 * Return the number of invocations rejected by the executor,
+	 * or cancelled because of a transaction rollback.
+	 */
+	long getRejectedCount();
+
+	/**
+	 * Return a summary of the time between submission and start of
+	 * execution, with count, mean, percentiles and max.
+	 */
+	String getQueueWaitTimeSummary();
+
+	/**
+	 * Return a summary of the execution times,
+	 * with count, mean, percentiles and max.
+	 */
+	String getExecutionTimeSummary();
+
+	/**
+	 * Return the execution time at the given percentile.
+	 * @param percentile the percentile, between 0 and 100
+	 */
+	long getExecutionTimePercentileMicros(double percentile);
+
+	/**
+	 * Reset the completed, failed and rejected counts and the time statistics.
+	 */
+	void resetStatistics();
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.scheduling.concurrent;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Future handle for the result of a method that gets executed asynchronously
+ * by an AsyncExecutionInterceptor. The target method simply returns
+ * <code>new AsyncResult(value)</code>; the proxy returns a Future of its own
+ * to the caller, which will provide that value once the method has completed.
+ *
+ * @since 1.2.1
+ * @see AsyncExecutionInterceptor
+ */
+public class AsyncResult implements Future {
+
+	private final Object value;
+
+
+	/**
+	 * Create a new AsyncResult holder.
+	 * @param value the value to pass through
+	 */
+	public AsyncResult(Object value) {
+		this.value = value;
+	}
+
+
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+
+	public boolean isCancelled() {
+		return false;
+	}
+
+	public boolean isDone() {
+		return true;
+	}
+
+	public Object get() {
+		return this.value;
+	}
+
+	public Object get(long timeout, TimeUnit unit) {
+		return this.value;
+	}
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.scheduling.concurrent;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+
+/**
+ * Extended interface for asynchronous TaskExecutor implementations,
+ * offering the submission of tasks with a Future handle for tracking
+ * their completion and obtaining their result.
+ *
+ * <p>Note: This interface builds on JDK 1.5's <code>java.util.concurrent</code>
+ * Future and Callable types, hence it lives in this JDK 1.5 specific package.
+ * The plain TaskExecutor interface remains available on JDK 1.3 and 1.4.
+ *
+ * @since 1.2.1
+ * @see ThreadPoolTaskExecutor
+ * @see org.springframework.core.task.TaskExecutor
+ */
+public interface AsyncTaskExecutor extends TaskExecutor {
+
+	/**
+	 * Submit a Runnable task for execution, receiving a Future representing
+	 * that task. The Future will return a <code>null</code> result upon completion.
+	 * @param task the Runnable to execute
+	 * @return a Future representing pending completion of the task
+	 * @throws TaskRejectedException if the given task was not accepted
+	 */
+	Future submit(Runnable task) throws TaskRejectedException;
+
+	/**
+	 * Submit a Callable task for execution, receiving a Future representing
+	 * that task. The Future will return the Callable's result upon completion.
+	 * @param task the Callable to execute
+	 * @return a Future representing pending completion of the task
+	 * @throws TaskRejectedException if the given task was not accepted
+	 */
+	Future submit(Callable task) throws TaskRejectedException;
+
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.scheduling.concurrent;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.BeanNameAware;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.task.TaskRejectedException;
+
+/**
+ * JavaBean that allows for configuring a JDK 1.5 ThreadPoolExecutor
+ * in bean style (through its "corePoolSize", "maxPoolSize", "keepAliveSeconds"
+ * and "queueCapacity" properties), exposing it as a Spring AsyncTaskExecutor.
+ *
+ * <p>In contrast to a plain SimpleAsyncTaskExecutor, this executor reuses
+ * a bounded number of threads, and queues up to "queueCapacity" tasks
+ * when all threads are busy. Tasks beyond that get rejected with a
+ * TaskRejectedException, rather than piling up in memory.
+ *
+ * <p>The pool gets shut down on destruction of the containing bean factory,
+ * finishing the execution of tasks that have been accepted already.
+ *
+ * @since 1.2.1
+ * @see org.springframework.core.task.TaskExecutor
+ * @see ThreadPoolExecutor
+ */
+public class ThreadPoolTaskExecutor implements AsyncTaskExecutor, BeanNameAware, InitializingBean, DisposableBean {
+
+	protected final Log logger = LogFactory.getLog(getClass());
+
+	private int corePoolSize = 1;
+
+	private int maxPoolSize = Integer.MAX_VALUE;
+
+	private int keepAliveSeconds = 60;
+
+	private int queueCapacity = Integer.MAX_VALUE;
+
+	private String threadNamePrefix;
+
+	private boolean daemon = false;
+
+	private String beanName;
+
+	private ThreadPoolExecutor threadPoolExecutor;
+
+	private final Object poolSizeMonitor = new Object();
+
+
+	/**
+	 * Set the ThreadPoolExecutor's core pool size. Default is 1.
+	 * <p><b>This setting can be modified at runtime.</b>
+	 */
+	public void setCorePoolSize(int corePoolSize) {
+		synchronized (this.poolSizeMonitor) {
+			this.corePoolSize = corePoolSize;
+			if (this.threadPoolExecutor != null) {
+				this.threadPoolExecutor.setCorePoolSize(corePoolSize);
+			}
+		}
+	}
+
+	/**
+	 * Return the ThreadPoolExecutor's core pool size.
+	 */
+	public int getCorePoolSize() {
+		synchronized (this.poolSizeMonitor) {
+			return this.corePoolSize;
+		}
+	}
+
+	/**
+	 * Set the ThreadPoolExecutor's maximum pool size.
+	 * Default is <code>Integer.MAX_VALUE</code>.
+	 * <p>Note that additional threads beyond the core pool size only get
+	 * created once the queue is full: specify a "queueCapacity" as well.
+	 * <p><b>This setting can be modified at runtime.</b>
+	 */
+	public void setMaxPoolSize(int maxPoolSize) {
+		synchronized (this.poolSizeMonitor) {
+			this.maxPoolSize = maxPoolSize;
+			if (this.threadPoolExecutor != null) {
+				this.threadPoolExecutor.setMaximumPoolSize(maxPoolSize);
+			}
+		}
+	}
+
+	/**
+	 * Return the ThreadPoolExecutor's maximum pool size.
+	 */
+	public int getMaxPoolSize() {
+		synchronized (this.poolSizeMonitor) {
+			return this.maxPoolSize;
+		}
+	}
+
+	/**
+	 * Set the ThreadPoolExecutor's keep-alive seconds for threads
+	 * beyond the core pool size. Default is 60.
+	 */
+	public void setKeepAliveSeconds(int keepAliveSeconds) {
+		this.keepAliveSeconds = keepAliveSeconds;
+	}
+
+	/**
+	 * Set the capacity for the ThreadPoolExecutor's BlockingQueue.
+	 * Default is <code>Integer.MAX_VALUE</code>, that is, effectively unbounded.
+	 * <p>Any positive value will lead to a bounded queue; 0 leads to a
+	 * SynchronousQueue, handing each task directly to a thread.
+	 * @see LinkedBlockingQueue
+	 * @see ArrayBlockingQueue
+	 * @see SynchronousQueue
+	 */
+	public void setQueueCapacity(int queueCapacity) {
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * Specify the prefix to use for the names of newly created threads.
+	 * Default is the bean name of this executor plus "-".
+	 */
+	public void setThreadNamePrefix(String threadNamePrefix) {
+		this.threadNamePrefix = threadNamePrefix;
+	}
+
+	/**
+	 * Set whether this executor should create daemon threads. Default is false.
+	 * @see Thread#setDaemon
+	 */
+	public void setDaemon(boolean daemon) {
+		this.daemon = daemon;
+	}
+
+	public void setBeanName(String beanName) {
+		this.beanName = beanName;
+	}
+
+
+	/**
+	 * Create the underlying ThreadPoolExecutor.
+	 * @see #createQueue
+	 */
+	public void afterPropertiesSet() {
+		if (this.threadNamePrefix == null) {
+			this.threadNamePrefix = (this.beanName != null ? this.beanName : "ThreadPoolTaskExecutor") + "-";
+		}
+		logger.info("Creating ThreadPoolExecutor" + (this.beanName != null ? " '" + this.beanName + "'" : ""));
+		BlockingQueue queue = createQueue(this.queueCapacity);
+		synchronized (this.poolSizeMonitor) {
+			this.threadPoolExecutor = new ThreadPoolExecutor(
+					this.corePoolSize, this.maxPoolSize, this.keepAliveSeconds, TimeUnit.SECONDS,
+					queue, new PrefixThreadFactory());
+		}
+	}
+
+	/**
+	 * Create the BlockingQueue to use for the ThreadPoolExecutor.
+	 * <p>A LinkedBlockingQueue instance will be created for a positive
+	 * capacity value; a SynchronousQueue else.
+	 * @param queueCapacity the specified queue capacity
+	 * @return the BlockingQueue instance
+	 */
+	protected BlockingQueue createQueue(int queueCapacity) {
+		if (queueCapacity > 0) {
+			return new LinkedBlockingQueue(queueCapacity);
+		}
+		else {
+			return new SynchronousQueue();
+		}
+	}
+
+	/**
+	 * Return the underlying ThreadPoolExecutor for native access.
+	 * @throws IllegalStateException if this executor has not been initialized yet
+	 */
+	public ThreadPoolExecutor getThreadPoolExecutor() throws IllegalStateException {
+		if (this.threadPoolExecutor == null) {
+			throw new IllegalStateException("ThreadPoolTaskExecutor not initialized");
+		}
+		return this.threadPoolExecutor;
+	}
+
+
+	public void execute(Runnable task) {
+		try {
+			getThreadPoolExecutor().execute(task);
+		}
+		catch (RejectedExecutionException ex) {
+			throw new TaskRejectedException("Executor [" + this.threadPoolExecutor + "] did not accept task: " + task, ex);
+		}
+	}
+
+	public Future submit(Runnable task) {
+		try {
+			return getThreadPoolExecutor().submit(task);
+		}
+		catch (RejectedExecutionException ex) {
+			throw new TaskRejectedException("Executor [" + this.threadPoolExecutor + "] did not accept task: " + task, ex);
+		}
+	}
+
+	public Future submit(Callable task) {
+		try {
+			return getThreadPoolExecutor().submit(task);
+		}
+		catch (RejectedExecutionException ex) {
+			throw new TaskRejectedException("Executor [" + this.threadPoolExecutor + "] did not accept task: " + task, ex);
+		}
+	}
+
+	/**
+	 * Return the current pool size.
+	 * @see ThreadPoolExecutor#getPoolSize()
+	 */
+	public int getPoolSize() {
+		return getThreadPoolExecutor().getPoolSize();
+	}
+
+	/**
+	 * Return the number of currently active threads.
+	 * @see ThreadPoolExecutor#getActiveCount()
+	 */
+	public int getActiveCount() {
+		return getThreadPoolExecutor().getActiveCount();
+	}
+
+	/**
+	 * Return the number of tasks currently waiting in the queue.
+	 */
+	public int getQueueSize() {
+		return getThreadPoolExecutor().getQueue().size();
+	}
+
+
+	/**
+	 * Calls <code>shutdown</code> when the BeanFactory destroys
+	 * the task executor instance.
+	 * @see #shutdown()
+	 */
+	public void destroy() {
+		shutdown();
+	}
+
+	/**
+	 * Perform a shutdown on the ThreadPoolExecutor: already accepted tasks
+	 * will still be executed, but no new tasks will be accepted.
+	 * @see ThreadPoolExecutor#shutdown()
+	 */
+	public void shutdown() {
+		logger.info("Shutting down ThreadPoolExecutor" + (this.beanName != null ? " '" + this.beanName + "'" : ""));
+		if (this.threadPoolExecutor != null) {
+			this.threadPoolExecutor.shutdown();
+		}
+	}
+
+
+	/**
+	 * ThreadFactory that applies the thread name prefix and daemon flag.
+	 */
+	private class PrefixThreadFactory implements ThreadFactory {
+
+		private int threadCount = 0;
+
+		public synchronized Thread newThread(Runnable task) {
+			this.threadCount++;
+			Thread thread = new Thread(task, threadNamePrefix + this.threadCount);
+			thread.setDaemon(daemon);
+			return thread;
+		}
+	}
+
+}
@@ -18,7 +18,6 @@ package org.springframework.transaction.interceptor;
 
 import java.lang.reflect.Method;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -28,6 +27,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.springframework.aop.support.AopUtils;
+import org.springframework.core.CollectionFactory;
 
 /**
  * Abstract implementation of TransactionAttributeSource that caches attributes
@@ -41,7 +41,8 @@ import org.springframework.aop.support.AopUtils;
  * <p>This implementation caches attributes by method after they are first used.
  * If it's ever desirable to allow dynamic changing of transaction attributes
  * (unlikely) caching could be made configurable. Caching is desirable because
- * of the cost of evaluating rollback rules.
+ * of the cost of evaluating rollback rules. The cache allows for concurrent
+ * lookups without locking, if running on JDK 1.5 or with util.concurrent.
  *
  * @author Rod Johnson
  * @author Juergen Hoeller
@@ -61,7 +62,7 @@ public abstract class AbstractFallbackTransactionAttributeSource implements Tran
 	/**
 	 * Cache of TransactionAttributes, keyed by Method and target class
 	 */
-	private Map cache = new HashMap();
+	private final Map cache = CollectionFactory.createConcurrentMapIfPossible(16);
 
 
 	/**
@@ -109,9 +110,7 @@ public abstract class AbstractFallbackTransactionAttributeSource implements Tran
 	 * @return the cache key
 	 */
 	protected Object getCacheKey(Method method, Class targetClass) {
-		// TODO this works fine, but could consider making it faster in future:
-		// Method.toString() is relatively (although not disastrously) slow.
-		return targetClass + "." + method;
+		return new DefaultCacheKey(method, targetClass);
 	}
 	
 	/**
@@ -216,4 +215,36 @@ public abstract class AbstractFallbackTransactionAttributeSource implements Tran
 		return txAttribute;
 	}
 
+
+	/**
+	 * Default cache key for the TransactionAttribute cache,
+	 * comparing target classes by identity.
+	 */
+	private static class DefaultCacheKey {
+
+		private final Method method;
+
+		private final Class targetClass;
+
+		public DefaultCacheKey(Method method, Class targetClass) {
+			this.method = method;
+			this.targetClass = targetClass;
+		}
+
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof DefaultCacheKey)) {
+				return false;
+			}
+			DefaultCacheKey otherKey = (DefaultCacheKey) other;
+			return (this.method.equals(otherKey.method) && this.targetClass == otherKey.targetClass);
+		}
+
+		public int hashCode() {
+			return this.method.hashCode() * 29 + (this.targetClass != null ? this.targetClass.hashCode() : 0);
+		}
+	}
+
 }
@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.lang.reflect.Method;
+import java.util.Map;
 import java.util.Properties;
 
 import org.aopalliance.aop.AspectException;
@@ -27,6 +28,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.CollectionFactory;
 import org.springframework.transaction.NoTransactionException;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionStatus;
@@ -48,6 +50,11 @@ import org.springframework.util.ClassUtils;
  * implementation does not need any specific configuration. JTA is
  * <i>not</i> the default though to avoid unnecessary dependencies.
  * 
+ * <p>The transaction attribute for each method and target class is resolved
+ * once and then kept in an invocation plan, so that repeated invocations
+ * just need a lock-free lookup. Transaction attributes are therefore assumed
+ * not to change once a method has been invoked.
+ *
  * <p>A transaction aspect is serializable if its PlatformTransactionManager
  * and TransactionAttributeSource are serializable.
  *
@@ -113,6 +120,19 @@ public class TransactionAspectSupport implements InitializingBean, Serializable
 	/** Helper used to find transaction attributes */
 	protected TransactionAttributeSource transactionAttributeSource;
 
+	/**
+	 * Cache of InvocationPlans, keyed by Method. Transient as Methods
+	 * aren't serializable; reconstituted in readObject().
+	 */
+	private transient Map invocationPlanCache = CollectionFactory.createConcurrentMapIfPossible(16);
+
+	/**
+	 * Shared placeholder exposed for non-transactional methods, never carrying
+	 * a TransactionStatus. Transient as TransactionInfo isn't serializable;
+	 * reconstituted in readObject().
+	 */
+	private transient TransactionInfo noTransactionInfo = new TransactionInfo(null, null);
+
 
 	/**
 	 * Set the transaction manager. This will perform actual
@@ -145,6 +165,7 @@ public class TransactionAspectSupport implements InitializingBean, Serializable
 		NameMatchTransactionAttributeSource tas = new NameMatchTransactionAttributeSource();
 		tas.setProperties(transactionAttributes);
 		this.transactionAttributeSource = tas;
+		this.invocationPlanCache.clear();
 	}
 
 	/**
@@ -159,6 +180,7 @@ public class TransactionAspectSupport implements InitializingBean, Serializable
 	 */
 	public void setTransactionAttributeSource(TransactionAttributeSource transactionAttributeSource) {
 		this.transactionAttributeSource = transactionAttributeSource;
+		this.invocationPlanCache.clear();
 	}
 
 	/**
@@ -185,14 +207,24 @@ public class TransactionAspectSupport implements InitializingBean, Serializable
 
 
 	/**
-	 * Create a transaction if necessary.
+	 * Determine the transaction attribute to apply to the given method.
+	 * <p>Looks up the invocation plan for the given method and target class,
+	 * asking the TransactionAttributeSource on first invocation only.
+	 * If the attribute does not specify a name, the method identification
+	 * will be applied as transaction name.
 	 * @param method method about to execute
-	 * @param targetClass class the method is on
-	 * @return a TransactionInfo object, whether or not a transaction was created.
-	 * The hasTransaction() method on TransactionInfo can be used to tell if there
-	 * was a transaction created.
+	 * @param targetClass class the method is on (may be null)
+	 * @return the TransactionAttribute to apply, or null if the method is non-transactional
+	 * @see #methodIdentification
 	 */
-	protected TransactionInfo createTransactionIfNecessary(Method method, Class targetClass) {
+	protected TransactionAttribute getTransactionAttribute(Method method, Class targetClass) {
+		InvocationPlan plan = (InvocationPlan) this.invocationPlanCache.get(method);
+		for (InvocationPlan current = plan; current != null; current = current.next) {
+			if (current.targetClass == targetClass) {
+				return current.transactionAttribute;
+			}
+		}
+
 		// If the transaction attribute is null, the method is non-transactional.
 		final TransactionAttribute sourceAttr =
 				this.transactionAttributeSource.getTransactionAttribute(method, targetClass);
@@ -208,6 +240,35 @@ public class TransactionAspectSupport implements InitializingBean, Serializable
 			};
 		}
 
+		// Plans for other target classes are kept: if a concurrent invocation
+		// happens to replace this one, it will simply be recomputed later on.
+		this.invocationPlanCache.put(method, new InvocationPlan(targetClass, txAttr, plan));
+		return txAttr;
+	}
+
+	/**
+	 * Create a transaction if necessary.
+	 * @param method method about to execute
+	 * @param targetClass class the method is on
+	 * @return a TransactionInfo object, whether or not a transaction was created.
+	 * The hasTransaction() method on TransactionInfo can be used to tell if there
+	 * was a transaction created.
+	 * @see #getTransactionAttribute
+	 */
+	protected TransactionInfo createTransactionIfNecessary(Method method, Class targetClass) {
+		return createTransactionIfNecessary(getTransactionAttribute(method, targetClass), method);
+	}
+
+	/**
+	 * Create a transaction if necessary, based on the given TransactionAttribute.
+	 * @param txAttr the TransactionAttribute to apply (may be null for none)
+	 * @param method method about to execute
+	 * @return a TransactionInfo object, whether or not a transaction was created.
+	 * The hasTransaction() method on TransactionInfo can be used to tell if there
+	 * was a transaction created.
+	 * @see #getTransactionAttribute
+	 */
+	protected TransactionInfo createTransactionIfNecessary(TransactionAttribute txAttr, Method method) {
 		TransactionInfo txInfo = new TransactionInfo(txAttr, method);
 		if (txAttr != null) {
 			// We need a transaction for this method
@@ -234,6 +295,31 @@ public class TransactionAspectSupport implements InitializingBean, Serializable
 		return txInfo;
 	}
 
+	/**
+	 * Expose a shared placeholder TransactionInfo for a non-transactional method,
+	 * saving the creation of a TransactionInfo per invocation. Within the method,
+	 * <code>currentTransactionInfo().hasTransaction()</code> will return false,
+	 * just like with a TransactionInfo from <code>createTransactionIfNecessary</code>.
+	 * @return the TransactionInfo previously bound to the thread (may be null),
+	 * to be passed to <code>restoreTransactionInfo</code> after the invocation
+	 * @see #restoreTransactionInfo
+	 */
+	protected TransactionInfo bindNoTransactionInfo() {
+		TransactionInfo oldTransactionInfo = (TransactionInfo) currentTransactionInfo.get();
+		currentTransactionInfo.set(this.noTransactionInfo);
+		return oldTransactionInfo;
+	}
+
+	/**
+	 * Restore the given TransactionInfo after a non-transactional method.
+	 * @param oldTransactionInfo the TransactionInfo returned by
+	 * <code>bindNoTransactionInfo</code> (may be null)
+	 * @see #bindNoTransactionInfo
+	 */
+	protected void restoreTransactionInfo(TransactionInfo oldTransactionInfo) {
+		currentTransactionInfo.set(oldTransactionInfo);
+	}
+
 	/**
 	 * Convenience method to return a String representation of this Method
 	 * for use in logging. Can be overridden in subclasses to provide a
@@ -326,6 +412,28 @@ public class TransactionAspectSupport implements InitializingBean, Serializable
 		
 		// Initialize transient fields
 		this.logger = LogFactory.getLog(getClass());
+		this.invocationPlanCache = CollectionFactory.createConcurrentMapIfPossible(16);
+		this.noTransactionInfo = new TransactionInfo(null, null);
+	}
+
+
+	/**
+	 * Resolved transaction attribute for a method and target class.
+	 * Plans for the same method but different target classes are chained.
+	 */
+	private static class InvocationPlan {
+
+		private final Class targetClass;
+
+		private final TransactionAttribute transactionAttribute;
+
+		private final InvocationPlan next;
+
+		public InvocationPlan(Class targetClass, TransactionAttribute transactionAttribute, InvocationPlan next) {
+			this.targetClass = targetClass;
+			this.transactionAttribute = transactionAttribute;
+			this.next = next;
+		}
 	}
 
 
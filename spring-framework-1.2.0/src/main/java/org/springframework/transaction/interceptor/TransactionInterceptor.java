@@ -29,6 +29,13 @@ import org.aopalliance.intercept.MethodInvocation;
  * such as <code>createTransactionIfNecessary</code> in the correct order,
  * in the event of normal invocation return or an exception.
  *
+ * <p>Methods without transaction attribute are invoked with a shared placeholder
+ * TransactionInfo bound to the thread, without any further transaction
+ * bookkeeping. As before, such a method does not see the TransactionStatus
+ * of an enclosing transactional method as current. Note that
+ * <code>createTransactionIfNecessary</code> is only called for methods
+ * with a transaction attribute.
+ *
  * <p>TransactionInterceptors are thread-safe.
  *
  * @author Rod Johnson
@@ -45,8 +52,21 @@ public class TransactionInterceptor extends TransactionAspectSupport implements
 		// The TransactionAttributeSource should be passed the target class
 		// as well as the method, which may be from an interface
 		Class targetClass = (invocation.getThis() != null) ? invocation.getThis().getClass() : null;
-		
-		// Create transaction if necessary.
+
+		// If the transaction attribute is null, the method is non-transactional.
+		TransactionAttribute txAttr = getTransactionAttribute(invocation.getMethod(), targetClass);
+		if (txAttr == null) {
+			TransactionInfo oldTxInfo = bindNoTransactionInfo();
+			try {
+				return invocation.proceed();
+			}
+			finally {
+				restoreTransactionInfo(oldTxInfo);
+			}
+		}
+
+		// Create transaction: via the Method-based variant, which subclasses may
+		// override. Resolving the attribute again is a cache hit at this point.
 		TransactionInfo txInfo = createTransactionIfNecessary(invocation.getMethod(), targetClass);
 
 		Object retVal = null;
@@ -105,6 +105,13 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 	/** Constants instance for AbstractPlatformTransactionManager */
 	private static final Constants constants = new Constants(AbstractPlatformTransactionManager.class);
 
+	/**
+	 * Shared stand-in for a null result of doSuspend, so that a suspended
+	 * transaction always has non-null suspended resources in its status:
+	 * null still means that nothing was suspended. Never passed to doResume.
+	 */
+	private static final Object SUSPENDED_WITHOUT_RESOURCES = new Object();
+
 	/** Transient to optimize serialization */
 	protected transient Log logger = LogFactory.getLog(getClass());
 
@@ -229,7 +236,17 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 					logger.debug("Creating new transaction, suspending current one");
 				}
 				Object suspendedResources = suspend(transaction);
-				doBegin(transaction, definition);
+				try {
+					doBegin(transaction, definition);
+				}
+				catch (RuntimeException ex) {
+					resume(transaction, suspendedResources);
+					throw ex;
+				}
+				catch (Error err) {
+					resume(transaction, suspendedResources);
+					throw err;
+				}
 				boolean newSynchronization = (this.transactionSynchronization != SYNCHRONIZATION_NEVER);
 				return newTransactionStatus(
 						transaction, true, newSynchronization, definition.isReadOnly(), debugEnabled, suspendedResources);
@@ -320,24 +337,25 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 	/**
 	 * Suspend the given transaction. Suspends transaction synchronization first,
 	 * then delegates to the doSuspend template method.
+	 * <p>The synchronizations are notified while synchronization is still
+	 * active. Their state is then kept by TransactionSynchronizationManager,
+	 * reusing its per-thread suspension stack, and the result of doSuspend
+	 * is passed through as is: no holder objects are created.
 	 * @param transaction the current transaction object
-	 * @return an object that holds suspended resources
+	 * @return an object that holds suspended resources (never null)
 	 * @see #doSuspend
 	 * @see #resume
 	 */
 	private Object suspend(Object transaction) throws TransactionException {
-		List suspendedSynchronizations = null;
-		Object holder = doSuspend(transaction);
-		if (TransactionSynchronizationManager.isSynchronizationActive()) {
-			suspendedSynchronizations = TransactionSynchronizationManager.getSynchronizations();
-			for (Iterator it = suspendedSynchronizations.iterator(); it.hasNext();) {
-				((TransactionSynchronization) it.next()).suspend();
+		Object suspendedResources = doSuspend(transaction);
+		List synchronizations = TransactionSynchronizationManager.getSynchronizationList();
+		if (synchronizations != null) {
+			for (int i = 0; i < synchronizations.size(); i++) {
+				((TransactionSynchronization) synchronizations.get(i)).suspend();
 			}
-			TransactionSynchronizationManager.clearSynchronization();
 		}
-		boolean readOnly = TransactionSynchronizationManager.isCurrentTransactionReadOnly();
-		TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
-		return new SuspendedResourcesHolder(readOnly, suspendedSynchronizations, holder);
+		TransactionSynchronizationManager.suspend();
+		return (suspendedResources != null ? suspendedResources : SUSPENDED_WITHOUT_RESOURCES);
 	}
 
 	/**
@@ -350,17 +368,13 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 	 * @see #suspend
 	 */
 	private void resume(Object transaction, Object suspendedResources) throws TransactionException {
-		SuspendedResourcesHolder resourcesHolder = (SuspendedResourcesHolder) suspendedResources;
-		TransactionSynchronizationManager.setCurrentTransactionReadOnly(resourcesHolder.isReadOnly());
-		if (resourcesHolder.getSuspendedSynchronizations() != null) {
-			TransactionSynchronizationManager.initSynchronization();
-			for (Iterator it = resourcesHolder.getSuspendedSynchronizations().iterator(); it.hasNext();) {
-				TransactionSynchronization synchronization = (TransactionSynchronization) it.next();
-				synchronization.resume();
-				TransactionSynchronizationManager.registerSynchronization(synchronization);
+		List resumedSynchronizations = TransactionSynchronizationManager.resume();
+		if (resumedSynchronizations != null) {
+			for (int i = 0; i < resumedSynchronizations.size(); i++) {
+				((TransactionSynchronization) resumedSynchronizations.get(i)).resume();
 			}
 		}
-		doResume(transaction, resourcesHolder.getSuspendedResources());
+		doResume(transaction, (suspendedResources != SUSPENDED_WITHOUT_RESOURCES ? suspendedResources : null));
 	}
 
 	/**
@@ -791,36 +805,4 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 	protected void doCleanupAfterCompletion(Object transaction) {
 	}
 
-
-	/**
-	 * Holder for suspended resources.
-	 * Used internally by suspend and resume.
-	 */
-	private static class SuspendedResourcesHolder {
-
-		private final boolean readOnly;
-
-		private final List suspendedSynchronizations;
-
-		private final Object suspendedResources;
-
-		public SuspendedResourcesHolder(boolean readOnly, List suspendedSynchronizations, Object suspendedResources) {
-			this.readOnly = readOnly;
-			this.suspendedSynchronizations = suspendedSynchronizations;
-			this.suspendedResources = suspendedResources;
-		}
-
-		public boolean isReadOnly() {
-			return readOnly;
-		}
-
-		public List getSuspendedSynchronizations() {
-			return suspendedSynchronizations;
-		}
-
-		public Object getSuspendedResources() {
-			return suspendedResources;
-		}
-	}
-
 }
@@ -16,10 +16,10 @@
 
 package org.springframework.transaction.support;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -59,6 +59,16 @@ import org.springframework.core.OrderComparator;
  * close calls allow for proper transactional JVM-level caching even without a
  * custom TransactionManagerLookup in Hibernate configuration.
  *
+ * <p>All state is kept in a single context object per thread: resources are held
+ * in a small open-addressed table, checking keys for identity before falling back
+ * to <code>equals</code>, and synchronization lists are recycled for nested and
+ * suspended transactions. The context is released as soon as it does not hold
+ * any resources, active synchronization or suspended state anymore, so that no
+ * state is left on pooled threads after a transaction has completed. Its table,
+ * lists and suspension stack are only allocated on first use, so a transaction
+ * with a single resource and synchronization allocates a context, a resource
+ * table and a synchronization list, and nested transactions allocate nothing.
+ *
  * @author Juergen Hoeller
  * @since 02.06.2003
  * @see #isSynchronizationActive
@@ -75,13 +85,35 @@ public abstract class TransactionSynchronizationManager {
 
 	private static final Log logger = LogFactory.getLog(TransactionSynchronizationManager.class);
 
-	private static final ThreadLocal resources = new ThreadLocal();
+	private static final ThreadLocal transactionContext = new ThreadLocal();
 
-	private static final ThreadLocal synchronizations = new ThreadLocal();
+	/** Stand-in for a null resource key, which the resource table can't hold */
+	private static final Object NULL_KEY = new Object();
 
 	private static final Comparator synchronizationComparator = new OrderComparator();
 
-	private static final ThreadLocal currentTransactionReadOnly = new ThreadLocal();
+
+	/**
+	 * Return the context for the current thread, creating it if necessary.
+	 */
+	private static TransactionContext getTransactionContext() {
+		TransactionContext context = (TransactionContext) transactionContext.get();
+		if (context == null) {
+			context = new TransactionContext();
+			transactionContext.set(context);
+		}
+		return context;
+	}
+
+	/**
+	 * Release the given context from the current thread if it does not hold
+	 * any resources, active synchronization or suspended state anymore.
+	 */
+	private static void releaseTransactionContextIfEmpty(TransactionContext context) {
+		if (context.isEmpty()) {
+			transactionContext.set(null);
+		}
+	}
 
 
 	//-------------------------------------------------------------------------
@@ -97,9 +129,10 @@ public abstract class TransactionSynchronizationManager {
 	 * @see #hasResource
 	 */
 	public static Map getResourceMap() {
-		Map map = (Map) resources.get();
-		if (map == null) {
-			map = new HashMap();
+		TransactionContext context = (TransactionContext) transactionContext.get();
+		Map map = new HashMap();
+		if (context != null) {
+			context.copyResourcesInto(map);
 		}
 		return Collections.unmodifiableMap(map);
 	}
@@ -110,8 +143,8 @@ public abstract class TransactionSynchronizationManager {
 	 * @return if there is a value bound to the current thread
 	 */
 	public static boolean hasResource(Object key) {
-		Map map = (Map) resources.get();
-		return (map != null && map.containsKey(key));
+		TransactionContext context = (TransactionContext) transactionContext.get();
+		return (context != null && context.indexOfResource(actualKey(key)) != -1);
 	}
 
 	/**
@@ -120,11 +153,15 @@ public abstract class TransactionSynchronizationManager {
 	 * @return a value bound to the current thread, or null if none
 	 */
 	public static Object getResource(Object key) {
-		Map map = (Map) resources.get();
-		if (map == null) {
+		TransactionContext context = (TransactionContext) transactionContext.get();
+		if (context == null) {
 			return null;
 		}
-		Object value = map.get(key);
+		int index = context.indexOfResource(actualKey(key));
+		if (index == -1) {
+			return null;
+		}
+		Object value = context.resourceTable[index + 1];
 		if (value != null && logger.isDebugEnabled()) {
 			logger.debug("Retrieved value [" + value + "] for key [" + key + "] bound to thread [" +
 					Thread.currentThread().getName() + "]");
@@ -139,17 +176,14 @@ public abstract class TransactionSynchronizationManager {
 	 * @throws IllegalStateException if there is already a value bound to the thread
 	 */
 	public static void bindResource(Object key, Object value) throws IllegalStateException {
-		Map map = (Map) resources.get();
-		// set ThreadLocal Map if none found
-		if (map == null) {
-			map = new HashMap();
-			resources.set(map);
-		}
-		if (map.containsKey(key)) {
-			throw new IllegalStateException("Already value [" + map.get(key) + "] for key [" + key +
-					"] bound to thread [" + Thread.currentThread().getName() + "]");
+		TransactionContext context = getTransactionContext();
+		Object actualKey = actualKey(key);
+		int index = context.indexOfResource(actualKey);
+		if (index != -1) {
+			throw new IllegalStateException("Already value [" + context.resourceTable[index + 1] +
+					"] for key [" + key + "] bound to thread [" + Thread.currentThread().getName() + "]");
 		}
-		map.put(key, value);
+		context.addResource(actualKey, value);
 		if (logger.isDebugEnabled()) {
 			logger.debug("Bound value [" + value + "] for key [" + key + "] to thread [" +
 					Thread.currentThread().getName() + "]");
@@ -163,16 +197,15 @@ public abstract class TransactionSynchronizationManager {
 	 * @throws IllegalStateException if there is no value bound to the thread
 	 */
 	public static Object unbindResource(Object key) throws IllegalStateException {
-		Map map = (Map) resources.get();
-		if (map == null || !map.containsKey(key)) {
+		TransactionContext context = (TransactionContext) transactionContext.get();
+		int index = (context != null ? context.indexOfResource(actualKey(key)) : -1);
+		if (index == -1) {
 			throw new IllegalStateException(
 					"No value for key [" + key + "] bound to thread [" + Thread.currentThread().getName() + "]");
 		}
-		Object value = map.remove(key);
-		// remove entire ThreadLocal if empty
-		if (map.isEmpty()) {
-			resources.set(null);
-		}
+		Object value = context.resourceTable[index + 1];
+		context.removeResourceAt(index);
+		releaseTransactionContextIfEmpty(context);
 		if (logger.isDebugEnabled()) {
 			logger.debug("Removed value [" + value + "] for key [" + key + "] from thread [" +
 					Thread.currentThread().getName() + "]");
@@ -181,6 +214,15 @@ public abstract class TransactionSynchronizationManager {
 	}
 
 
+	/**
+	 * Return the key to store in the resource table for the given key,
+	 * as a null key is valid for binding a resource.
+	 */
+	private static Object actualKey(Object key) {
+		return (key != null ? key : NULL_KEY);
+	}
+
+
 	//-------------------------------------------------------------------------
 	// Management of transaction synchronizations
 	//-------------------------------------------------------------------------
@@ -191,7 +233,8 @@ public abstract class TransactionSynchronizationManager {
 	 * @see #registerSynchronization
 	 */
 	public static boolean isSynchronizationActive() {
-		return (synchronizations.get() != null);
+		TransactionContext context = (TransactionContext) transactionContext.get();
+		return (context != null && context.synchronizationActive);
 	}
 
 	/**
@@ -200,11 +243,18 @@ public abstract class TransactionSynchronizationManager {
 	 * @throws IllegalStateException if synchronization is already active
 	 */
 	public static void initSynchronization() throws IllegalStateException {
-		if (isSynchronizationActive()) {
+		TransactionContext context = getTransactionContext();
+		if (context.synchronizationActive) {
 			throw new IllegalStateException("Cannot activate transaction synchronization - already active");
 		}
 		logger.debug("Initializing transaction synchronization");
-		synchronizations.set(new LinkedList());
+		if (context.synchronizations == null) {
+			context.synchronizations = new ArrayList(TransactionContext.INITIAL_SYNCHRONIZATION_CAPACITY);
+		}
+		else {
+			context.synchronizations.clear();
+		}
+		context.synchronizationActive = true;
 	}
 
 	/**
@@ -220,9 +270,14 @@ public abstract class TransactionSynchronizationManager {
 		if (!isSynchronizationActive()) {
 			throw new IllegalStateException("Transaction synchronization is not active");
 		}
-		List synchs = (List) synchronizations.get();
-		synchs.add(synchronization);
-		Collections.sort(synchs, synchronizationComparator);
+		List synchs = getTransactionContext().synchronizations;
+		// Insert after all synchronizations with the same or a lower order value,
+		// equivalent to a stable sort of the list after adding.
+		int index = synchs.size();
+		while (index > 0 && synchronizationComparator.compare(synchs.get(index - 1), synchronization) > 0) {
+			index--;
+		}
+		synchs.add(index, synchronization);
 	}
 
 	/**
@@ -236,8 +291,8 @@ public abstract class TransactionSynchronizationManager {
 		if (!isSynchronizationActive()) {
 			throw new IllegalStateException("Transaction synchronization is not active");
 		}
-		List synchs = (List) synchronizations.get();
-		return Collections.unmodifiableList(new LinkedList(synchs));
+		List synchs = getTransactionContext().synchronizations;
+		return Collections.unmodifiableList(new ArrayList(synchs));
 	}
 
 	/**
@@ -250,7 +305,10 @@ public abstract class TransactionSynchronizationManager {
 			throw new IllegalStateException("Cannot deactivate transaction synchronization - not active");
 		}
 		logger.debug("Clearing transaction synchronization");
-		synchronizations.set(null);
+		TransactionContext context = getTransactionContext();
+		context.synchronizations.clear();
+		context.synchronizationActive = false;
+		releaseTransactionContextIfEmpty(context);
 	}
 
 
@@ -262,7 +320,16 @@ public abstract class TransactionSynchronizationManager {
 	 * @see org.springframework.transaction.TransactionDefinition#isReadOnly
 	 */
 	public static void setCurrentTransactionReadOnly(boolean readOnly) {
-		currentTransactionReadOnly.set(readOnly ? Boolean.TRUE : null);
+		if (readOnly) {
+			getTransactionContext().readOnly = true;
+		}
+		else {
+			TransactionContext context = (TransactionContext) transactionContext.get();
+			if (context != null) {
+				context.readOnly = false;
+				releaseTransactionContextIfEmpty(context);
+			}
+		}
 	}
 
 	/**
@@ -280,7 +347,234 @@ public abstract class TransactionSynchronizationManager {
 	 * @see org.hibernate.FlushMode#NEVER
 	 */
 	public static boolean isCurrentTransactionReadOnly() {
-		return (currentTransactionReadOnly.get() != null);
+		TransactionContext context = (TransactionContext) transactionContext.get();
+		return (context != null && context.readOnly);
+	}
+
+
+	//-------------------------------------------------------------------------
+	// Suspension support for AbstractPlatformTransactionManager
+	//-------------------------------------------------------------------------
+
+	/**
+	 * Return the live list of registered synchronizations for the current
+	 * thread, for notifying them without creating a snapshot.
+	 * @return the list (must not be modified),
+	 * or null if synchronization is not active
+	 */
+	static List getSynchronizationList() {
+		TransactionContext context = (TransactionContext) transactionContext.get();
+		return (context != null && context.synchronizationActive ? context.synchronizations : null);
+	}
+
+	/**
+	 * Suspend the synchronizations and the read-only flag of the current
+	 * transaction, deactivating synchronization for the current thread.
+	 * Must be followed by a corresponding <code>resume</code> call.
+	 * <p>The suspended state is kept in a per-thread stack that is reused for
+	 * subsequent suspensions, so suspending does not allocate any objects
+	 * once the stack has been created.
+	 * @see #resume
+	 */
+	static void suspend() {
+		getTransactionContext().pushSuspendedState();
+	}
+
+	/**
+	 * Resume the synchronizations and the read-only flag that have been
+	 * suspended by the latest <code>suspend</code> call.
+	 * @return the live list of resumed synchronizations, for the caller to
+	 * notify them (must not be modified), or null if synchronization wasn't active
+	 * @throws IllegalStateException if synchronization is currently active,
+	 * or if there is no suspended state
+	 * @see #suspend
+	 */
+	static List resume() throws IllegalStateException {
+		TransactionContext context = (TransactionContext) transactionContext.get();
+		if (context == null || context.suspendedCount == 0) {
+			throw new IllegalStateException("No suspended transaction state to resume");
+		}
+		if (context.synchronizationActive) {
+			throw new IllegalStateException("Cannot resume transaction synchronization - already active");
+		}
+		context.popSuspendedState();
+		if (!context.synchronizationActive) {
+			releaseTransactionContextIfEmpty(context);
+			return null;
+		}
+		return context.synchronizations;
+	}
+
+
+	/**
+	 * Transaction state for a thread. Kept bound to the thread as long as
+	 * it holds any state, so that nested and suspended transactions can
+	 * reuse its data structures. These are created on first use only.
+	 */
+	private static class TransactionContext {
+
+		private static final int INITIAL_RESOURCE_CAPACITY = 4;
+
+		private static final int INITIAL_SYNCHRONIZATION_CAPACITY = 4;
+
+		private static final int INITIAL_SUSPENSION_CAPACITY = 2;
+
+		/** Resource keys and values at alternating indexes, with linear probing */
+		private Object[] resourceTable;
+
+		private int resourceCount;
+
+		/** Created by initSynchronization */
+		private List synchronizations;
+
+		private boolean synchronizationActive;
+
+		private boolean readOnly;
+
+		/** Suspended synchronization lists; also spare lists for reuse */
+		private List[] suspendedSynchronizations;
+
+		private boolean[] suspendedSynchronizationActive;
+
+		private boolean[] suspendedReadOnly;
+
+		private int suspendedCount;
+
+		public boolean isEmpty() {
+			return (this.resourceCount == 0 && !this.synchronizationActive && !this.readOnly &&
+					this.suspendedCount == 0);
+		}
+
+		public int indexOfResource(Object key) {
+			Object[] table = this.resourceTable;
+			if (table == null || key == null) {
+				return -1;
+			}
+			int index = indexFor(key, table.length);
+			while (true) {
+				Object candidate = table[index];
+				if (candidate == null) {
+					return -1;
+				}
+				if (candidate == key || candidate.equals(key)) {
+					return index;
+				}
+				index = nextIndex(index, table.length);
+			}
+		}
+
+		public void addResource(Object key, Object value) {
+			if (this.resourceTable == null) {
+				this.resourceTable = new Object[INITIAL_RESOURCE_CAPACITY * 2];
+			}
+			else if ((this.resourceCount + 1) * 3 > this.resourceTable.length) {
+				// keep the load factor at 2/3 at most
+				Object[] oldTable = this.resourceTable;
+				this.resourceTable = new Object[oldTable.length * 2];
+				for (int i = 0; i < oldTable.length; i += 2) {
+					if (oldTable[i] != null) {
+						insert(oldTable[i], oldTable[i + 1]);
+					}
+				}
+			}
+			insert(key, value);
+			this.resourceCount++;
+		}
+
+		private void insert(Object key, Object value) {
+			Object[] table = this.resourceTable;
+			int index = indexFor(key, table.length);
+			while (table[index] != null) {
+				index = nextIndex(index, table.length);
+			}
+			table[index] = key;
+			table[index + 1] = value;
+		}
+
+		public void removeResourceAt(int index) {
+			Object[] table = this.resourceTable;
+			table[index] = null;
+			table[index + 1] = null;
+			this.resourceCount--;
+			// Move subsequent entries of the probe sequence into the freed slot,
+			// as lookups stop at the first empty slot.
+			int freed = index;
+			for (int i = nextIndex(freed, table.length); table[i] != null; i = nextIndex(i, table.length)) {
+				int home = indexFor(table[i], table.length);
+				if ((i < home && (home <= freed || freed <= i)) || (home <= freed && freed <= i)) {
+					table[freed] = table[i];
+					table[freed + 1] = table[i + 1];
+					table[i] = null;
+					table[i + 1] = null;
+					freed = i;
+				}
+			}
+		}
+
+		public void copyResourcesInto(Map map) {
+			Object[] table = this.resourceTable;
+			if (table != null) {
+				for (int i = 0; i < table.length; i += 2) {
+					if (table[i] != null) {
+						map.put((table[i] != NULL_KEY ? table[i] : null), table[i + 1]);
+					}
+				}
+			}
+		}
+
+		private static int indexFor(Object key, int length) {
+			int hash = key.hashCode();
+			// spread the hash, as identity hash codes tend to differ in higher bits only
+			hash ^= (hash >>> 16);
+			// the table length is a power of two, with keys at even indexes
+			return (hash & ((length >> 1) - 1)) << 1;
+		}
+
+		private static int nextIndex(int index, int length) {
+			return (index + 2 < length ? index + 2 : 0);
+		}
+
+		public void pushSuspendedState() {
+			if (this.suspendedSynchronizations == null) {
+				this.suspendedSynchronizations = new List[INITIAL_SUSPENSION_CAPACITY];
+				this.suspendedSynchronizationActive = new boolean[INITIAL_SUSPENSION_CAPACITY];
+				this.suspendedReadOnly = new boolean[INITIAL_SUSPENSION_CAPACITY];
+			}
+			else if (this.suspendedCount == this.suspendedSynchronizations.length) {
+				int newLength = this.suspendedCount * 2;
+				List[] newLists = new List[newLength];
+				System.arraycopy(this.suspendedSynchronizations, 0, newLists, 0, this.suspendedCount);
+				this.suspendedSynchronizations = newLists;
+				boolean[] newActive = new boolean[newLength];
+				System.arraycopy(this.suspendedSynchronizationActive, 0, newActive, 0, this.suspendedCount);
+				this.suspendedSynchronizationActive = newActive;
+				boolean[] newReadOnly = new boolean[newLength];
+				System.arraycopy(this.suspendedReadOnly, 0, newReadOnly, 0, this.suspendedCount);
+				this.suspendedReadOnly = newReadOnly;
+			}
+			int index = this.suspendedCount++;
+			// Swap the current list with the spare list in this slot, if any.
+			List spare = this.suspendedSynchronizations[index];
+			this.suspendedSynchronizations[index] = this.synchronizations;
+			this.synchronizations = spare;
+			this.suspendedSynchronizationActive[index] = this.synchronizationActive;
+			this.suspendedReadOnly[index] = this.readOnly;
+			this.synchronizationActive = false;
+			this.readOnly = false;
+		}
+
+		public void popSuspendedState() {
+			int index = --this.suspendedCount;
+			// Keep the current (cleared) list as spare list in this slot.
+			List spare = this.synchronizations;
+			if (spare != null) {
+				spare.clear();
+			}
+			this.synchronizations = this.suspendedSynchronizations[index];
+			this.suspendedSynchronizations[index] = spare;
+			this.synchronizationActive = this.suspendedSynchronizationActive[index];
+			this.readOnly = this.suspendedReadOnly[index];
+		}
 	}
 
 }
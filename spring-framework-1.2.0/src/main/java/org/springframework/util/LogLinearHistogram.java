@@ -0,0 +1,382 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.util;
+
+/**
+ * Histogram of non-negative long values with log-linear buckets, suitable
+ * for recording latencies at high rates and reporting percentiles up to
+ * p99.99 with bounded relative error.
+ *
+ * <p>Values below 32 are counted exactly. Above that, each power of two is
+ * split into 32 linear sub-buckets, so reported percentiles are within about
+ * 3% of the recorded values. Values above 2^36 - 1 are counted in the
+ * highest bucket; in microseconds, that covers durations up to 19 hours.
+ *
+ * <p>Recording does not allocate. Counts are spread over stripes, each
+ * guarded by its own monitor, with the stripe chosen by the recording
+ * thread's identity. Concurrent recording threads thus rarely contend,
+ * while the histogram still works on JDK 1.3.
+ *
+ * <p>Snapshots merge all stripes: <code>getSnapshot()</code> covers all
+ * values recorded so far, <code>getIntervalSnapshot()</code> the values
+ * recorded since its previous invocation, for windowed reporting.
+ *
+ * @since 1.2.1
+ * @see #record
+ * @see #getSnapshot
+ * @see #getIntervalSnapshot
+ */
+public class LogLinearHistogram {
+
+	private static final int SUB_BUCKET_BITS = 5;
+
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	private static final int MAX_EXPONENT = 36;
+
+	/** Values above this are counted in the highest bucket */
+	public static final long MAX_TRACKABLE_VALUE = (1L << MAX_EXPONENT) - 1;
+
+	private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+
+	private final Stripe[] stripes;
+
+	/** Cumulative counts as of the last interval snapshot. Guarded by this histogram. */
+	private long[] intervalStartCounts = new long[BUCKET_COUNT];
+
+	private long intervalStartCount;
+
+	private long intervalStartTotal;
+
+
+	/**
+	 * Create a new LogLinearHistogram with one stripe per available
+	 * processor, up to 16 stripes.
+	 */
+	public LogLinearHistogram() {
+		this(Math.min(Runtime.getRuntime().availableProcessors(), 16));
+	}
+
+	/**
+	 * Create a new LogLinearHistogram.
+	 * @param concurrencyLevel the expected number of concurrently recording
+	 * threads, rounded up to a power of two for the number of stripes
+	 */
+	public LogLinearHistogram(int concurrencyLevel) {
+		int stripeCount = 1;
+		while (stripeCount < concurrencyLevel) {
+			stripeCount <<= 1;
+		}
+		this.stripes = new Stripe[stripeCount];
+		for (int i = 0; i < stripeCount; i++) {
+			this.stripes[i] = new Stripe();
+		}
+	}
+
+
+	/**
+	 * Record the given value.
+	 * @param value the value, for example a duration in microseconds;
+	 * negative values are counted as 0
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		int hash = System.identityHashCode(Thread.currentThread());
+		hash ^= (hash >>> 16);
+		this.stripes[hash & (this.stripes.length - 1)].record(value, indexFor(value));
+	}
+
+	/**
+	 * Return a snapshot of all values recorded so far.
+	 */
+	public Snapshot getSnapshot() {
+		long[] counts = new long[BUCKET_COUNT];
+		long[] totals = new long[4];
+		mergeStripes(counts, totals, false);
+		return new Snapshot(counts, totals[0], totals[1], totals[2], totals[3]);
+	}
+
+	/**
+	 * Return a snapshot of the values recorded since the previous invocation
+	 * of this method, or since creation or reset of this histogram.
+	 */
+	public synchronized Snapshot getIntervalSnapshot() {
+		long[] counts = new long[BUCKET_COUNT];
+		long[] totals = new long[4];
+		mergeStripes(counts, totals, true);
+		long[] intervalCounts = new long[BUCKET_COUNT];
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			intervalCounts[i] = counts[i] - this.intervalStartCounts[i];
+		}
+		long intervalCount = totals[0] - this.intervalStartCount;
+		long intervalTotal = totals[1] - this.intervalStartTotal;
+		this.intervalStartCounts = counts;
+		this.intervalStartCount = totals[0];
+		this.intervalStartTotal = totals[1];
+		long min = Long.MAX_VALUE;
+		for (int i = 0; i < BUCKET_COUNT && min == Long.MAX_VALUE; i++) {
+			if (intervalCounts[i] > 0) {
+				min = lowestValueAt(i);
+			}
+		}
+		return new Snapshot(intervalCounts, intervalCount, intervalTotal, min, totals[3]);
+	}
+
+	/**
+	 * Discard all recorded values.
+	 */
+	public synchronized void reset() {
+		for (int i = 0; i < this.stripes.length; i++) {
+			this.stripes[i].reset();
+		}
+		this.intervalStartCounts = new long[BUCKET_COUNT];
+		this.intervalStartCount = 0;
+		this.intervalStartTotal = 0;
+	}
+
+	/**
+	 * Add up the stripes into the given counts, with count, total, min and max
+	 * as totals. The max is the interval max if requested, which gets reset.
+	 */
+	private void mergeStripes(long[] counts, long[] totals, boolean interval) {
+		totals[2] = Long.MAX_VALUE;
+		for (int i = 0; i < this.stripes.length; i++) {
+			Stripe stripe = this.stripes[i];
+			synchronized (stripe) {
+				for (int j = 0; j < BUCKET_COUNT; j++) {
+					counts[j] += stripe.counts[j];
+				}
+				totals[0] += stripe.count;
+				totals[1] += stripe.total;
+				totals[2] = Math.min(totals[2], stripe.min);
+				if (interval) {
+					totals[3] = Math.max(totals[3], stripe.intervalMax);
+					stripe.intervalMax = 0;
+				}
+				else {
+					totals[3] = Math.max(totals[3], stripe.max);
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Return the bucket index for the given non-negative value.
+	 */
+	static int indexFor(long value) {
+		if (value > MAX_TRACKABLE_VALUE) {
+			value = MAX_TRACKABLE_VALUE;
+		}
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		int shift = exponentOf(value) - SUB_BUCKET_BITS;
+		return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) - SUB_BUCKET_COUNT);
+	}
+
+	/**
+	 * Return the lowest value counted in the bucket with the given index.
+	 */
+	static long lowestValueAt(int index) {
+		int bucket = index >> SUB_BUCKET_BITS;
+		long subBucket = index & (SUB_BUCKET_COUNT - 1);
+		if (bucket == 0) {
+			return subBucket;
+		}
+		return (subBucket + SUB_BUCKET_COUNT) << (bucket - 1);
+	}
+
+	/**
+	 * Return the highest value counted in the bucket with the given index.
+	 */
+	static long highestValueAt(int index) {
+		int bucket = index >> SUB_BUCKET_BITS;
+		return lowestValueAt(index) + (bucket == 0 ? 0 : (1L << (bucket - 1)) - 1);
+	}
+
+	/**
+	 * Return the position of the highest one bit of the given positive value.
+	 */
+	private static int exponentOf(long value) {
+		int exponent = 0;
+		if (value >= (1L << 32)) {
+			value >>>= 32;
+			exponent += 32;
+		}
+		if (value >= (1L << 16)) {
+			value >>>= 16;
+			exponent += 16;
+		}
+		if (value >= (1L << 8)) {
+			value >>>= 8;
+			exponent += 8;
+		}
+		if (value >= (1L << 4)) {
+			value >>>= 4;
+			exponent += 4;
+		}
+		if (value >= (1L << 2)) {
+			value >>>= 2;
+			exponent += 2;
+		}
+		if (value >= (1L << 1)) {
+			exponent += 1;
+		}
+		return exponent;
+	}
+
+
+	/**
+	 * Counts recorded by a subset of threads. Guarded by itself.
+	 */
+	private static class Stripe {
+
+		private final long[] counts = new long[BUCKET_COUNT];
+
+		private long count;
+
+		private long total;
+
+		private long min = Long.MAX_VALUE;
+
+		private long max;
+
+		private long intervalMax;
+
+		public synchronized void record(long value, int index) {
+			this.counts[index]++;
+			this.count++;
+			this.total += value;
+			if (value < this.min) {
+				this.min = value;
+			}
+			if (value > this.max) {
+				this.max = value;
+			}
+			if (value > this.intervalMax) {
+				this.intervalMax = value;
+			}
+		}
+
+		public synchronized void reset() {
+			for (int i = 0; i < this.counts.length; i++) {
+				this.counts[i] = 0;
+			}
+			this.count = 0;
+			this.total = 0;
+			this.min = Long.MAX_VALUE;
+			this.max = 0;
+			this.intervalMax = 0;
+		}
+	}
+
+
+	/**
+	 * Immutable view of the values in a histogram at a point in time.
+	 */
+	public static class Snapshot {
+
+		private final long[] counts;
+
+		private final long count;
+
+		private final long total;
+
+		private final long min;
+
+		private final long max;
+
+		private Snapshot(long[] counts, long count, long total, long min, long max) {
+			this.counts = counts;
+			this.count = count;
+			this.total = total;
+			this.min = (count > 0 ? min : 0);
+			this.max = max;
+		}
+
+		/**
+		 * Return the number of values.
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * Return the exact mean of the values, or 0 if there are none.
+		 */
+		public long getMean() {
+			return (this.count > 0 ? this.total / this.count : 0);
+		}
+
+		/**
+		 * Return the smallest value, or 0 if there are none.
+		 * For interval snapshots, this is the lower bound of its bucket.
+		 */
+		public long getMin() {
+			return min;
+		}
+
+		/**
+		 * Return the largest value, or 0 if there are none.
+		 */
+		public long getMax() {
+			return max;
+		}
+
+		/**
+		 * Return the value at the given percentile, as the upper bound of the
+		 * bucket that contains it, but no higher than the largest value.
+		 * @param percentile the percentile, between 0 and 100
+		 * @return the value, or 0 if there are no values
+		 */
+		public long getPercentile(double percentile) {
+			if (percentile < 0 || percentile > 100) {
+				throw new IllegalArgumentException("Percentile must be between 0 and 100");
+			}
+			if (this.count == 0) {
+				return 0;
+			}
+			long rank = Math.max((long) Math.ceil(this.count * percentile / 100), 1);
+			long seen = 0;
+			for (int i = 0; i < this.counts.length; i++) {
+				seen += this.counts[i];
+				if (seen >= rank) {
+					return Math.min(highestValueAt(i), this.max);
+				}
+			}
+			return this.max;
+		}
+
+		public String toString() {
+			StringBuffer sb = new StringBuffer();
+			sb.append("count=[").append(this.count).append("]; ");
+			sb.append("mean=[").append(getMean()).append("]; ");
+			sb.append("p50=[").append(getPercentile(50)).append("]; ");
+			sb.append("p90=[").append(getPercentile(90)).append("]; ");
+			sb.append("p99=[").append(getPercentile(99)).append("]; ");
+			sb.append("p99.9=[").append(getPercentile(99.9)).append("]; ");
+			sb.append("p99.99=[").append(getPercentile(99.99)).append("]; ");
+			sb.append("max=[").append(this.max).append("]");
+			return sb.toString();
+		}
+	}
+
+}
@@ -51,4 +51,13 @@ public interface ResponseTimeMonitor {
 	 */
 	int getWorstResponseTimeMillis();
 
+	/**
+	 * Return the response time in milliseconds at the given percentile,
+	 * for example 99 for the response time that 99% of all accesses
+	 * did not exceed.
+	 * @param percentile the percentile, between 0 and 100
+	 * @since 1.2.1
+	 */
+	int getPercentileResponseTimeMillis(double percentile);
+
 }
@@ -22,27 +22,21 @@ import java.util.Date;
  * Implementation of ResponseTimeMonitor for use via delegation by
  * objects that implement this interface.
  *
- * <p>Uses no synchronization, so is suitable for use in a web application.
+ * <p>Records response times in a LogLinearHistogram, which is cheap to update
+ * from many threads at once, so is suitable for use in a web application.
+ * Percentiles are accurate to within about 3%.
  *
  * @author Rod Johnson
  * @since November 21, 2000
+ * @see LogLinearHistogram
  */
 public class ResponseTimeMonitorImpl implements ResponseTimeMonitor {
 
-	/** The number of operations recorded by this object */
-	private int accessCount;
-
 	/** The system time at which this object was initialized */
 	private long initedMillis;
 
-	/** The sum of the response times for all operations */
-	private int totalResponseTimeMillis = 0;
-
-	/** The best response time this object has recorded */
-	private int bestResponseTimeMillis = Integer.MAX_VALUE;
-
-	/** The worst response time this object has recorded */
-	private int worstResponseTimeMillis = Integer.MIN_VALUE;
+	/** The response times recorded by this object */
+	private final LogLinearHistogram responseTimes = new LogLinearHistogram();
 
 
 	/**
@@ -63,7 +57,7 @@ public class ResponseTimeMonitorImpl implements ResponseTimeMonitor {
 	 * Return the number of hits this object has handled.
 	 */
 	public int getAccessCount() {
-		return accessCount;
+		return (int) this.responseTimes.getSnapshot().getCount();
 	}
 
 	/**
@@ -77,25 +71,38 @@ public class ResponseTimeMonitorImpl implements ResponseTimeMonitor {
 	 * Return the average response time achieved by this object.
 	 */
 	public int getAverageResponseTimeMillis() {
-		// avoid division by 0
-		if (getAccessCount() == 0) {
-			return 0;
-		}
-		return this.totalResponseTimeMillis / getAccessCount();
+		return (int) this.responseTimes.getSnapshot().getMean();
 	}
 
 	/**
 	 * Return the best (lowest) response time achieved by this object.
 	 */
 	public int getBestResponseTimeMillis() {
-		return bestResponseTimeMillis;
+		LogLinearHistogram.Snapshot snapshot = this.responseTimes.getSnapshot();
+		return (snapshot.getCount() > 0 ? (int) snapshot.getMin() : Integer.MAX_VALUE);
 	}
 
 	/**
 	 * Return the worst (slowest) response time achieved by this object.
 	 */
 	public int getWorstResponseTimeMillis() {
-		return worstResponseTimeMillis;
+		LogLinearHistogram.Snapshot snapshot = this.responseTimes.getSnapshot();
+		return (snapshot.getCount() > 0 ? (int) snapshot.getMax() : Integer.MIN_VALUE);
+	}
+
+	/**
+	 * Return the response time at the given percentile achieved by this object.
+	 */
+	public int getPercentileResponseTimeMillis(double percentile) {
+		return (int) this.responseTimes.getSnapshot().getPercentile(percentile);
+	}
+
+	/**
+	 * Return a snapshot of all response times recorded so far,
+	 * for reporting several statistics consistently.
+	 */
+	public LogLinearHistogram.Snapshot getResponseTimeSnapshot() {
+		return this.responseTimes.getSnapshot();
 	}
 
 	/**
@@ -104,15 +111,7 @@ public class ResponseTimeMonitorImpl implements ResponseTimeMonitor {
 	 * @param responseTimeMillis the response time of this request
 	 */
 	public void recordResponseTime(long responseTimeMillis) {
-		++this.accessCount;
-		int iResponseTime = (int) responseTimeMillis;
-		this.totalResponseTimeMillis += iResponseTime;
-		if (iResponseTime < this.bestResponseTimeMillis) {
-			this.bestResponseTimeMillis = iResponseTime;
-		}
-		if (iResponseTime > this.worstResponseTimeMillis) {
-			this.worstResponseTimeMillis = iResponseTime;
-		}
+		this.responseTimes.record(responseTimeMillis);
 	}
 
 	/**
@@ -120,11 +119,13 @@ public class ResponseTimeMonitorImpl implements ResponseTimeMonitor {
 	 * data recorded by this object.
 	 */
 	public String toString() {
+		LogLinearHistogram.Snapshot snapshot = this.responseTimes.getSnapshot();
 		StringBuffer sb = new StringBuffer();
-		sb.append("hits=[").append(getAccessCount()).append("]; ");
-		sb.append("average=[").append(getAverageResponseTimeMillis()).append("ms]; ");
-		sb.append("best=[").append(getBestResponseTimeMillis()).append("ms]; ");
-		sb.append("worst=[").append(getWorstResponseTimeMillis()).append("ms]");
+		sb.append("hits=[").append(snapshot.getCount()).append("]; ");
+		sb.append("average=[").append(snapshot.getMean()).append("ms]; ");
+		sb.append("best=[").append(snapshot.getMin()).append("ms]; ");
+		sb.append("worst=[").append(snapshot.getMax()).append("ms]; ");
+		sb.append("p99=[").append(snapshot.getPercentile(99)).append("ms]");
 		return sb.toString();
 	}
 
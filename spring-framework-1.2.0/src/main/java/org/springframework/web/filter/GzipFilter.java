@@ -0,0 +1,644 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.web.filter;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.LinkedList;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.springframework.util.StringUtils;
+import org.springframework.web.util.UrlPathHelper;
+
+/**
+ * Servlet 2.3 Filter that GZIP-compresses responses on the fly, for clients
+ * that accept the "gzip" content encoding. By default, "text/*" content as
+ * well as JSON, JavaScript and XML content types get compressed.
+ *
+ * <p>Output is streamed through a Deflater rather than buffering the whole
+ * response: Only the first bytes up to the minimum size threshold get held
+ * back, to decide whether compression is worthwhile. Responses below the
+ * threshold are written uncompressed, including a Content-Length header.
+ * Deflaters and their output buffers are pooled and reused across requests,
+ * avoiding the native memory churn of creating a GZIPOutputStream per request.
+ *
+ * <p>Responses that set a non-compressible content type before writing, such
+ * as the output of AbstractPdfView and AbstractExcelView, are passed through
+ * unchanged, including their Content-Length. Forwards performed by
+ * InternalResourceView work as usual, since a response will not be reported
+ * as committed before compressed output has actually been written. Included
+ * requests are never compressed by this filter, as the including response
+ * is in charge of the content encoding. Partial content responses (status
+ * 206 or a Content-Range header) are passed through as well, since their
+ * byte ranges refer to the unencoded entity.
+ *
+ * <p>Flushing the response commits it to compression or pass-through right
+ * away. Note that compressed output flushed this way may still be held back
+ * by the Deflater until more output arrives or the response completes.
+ *
+ * @since 1.2.1
+ * @see #setMinimumSize
+ * @see #setCompressibleContentTypes
+ * @see #setCompressionLevel
+ * @see #setPoolSize
+ */
+public class GzipFilter extends OncePerRequestFilter {
+
+	/** Default minimum response size for compression: 1024 bytes */
+	public static final int DEFAULT_MINIMUM_SIZE = 1024;
+
+	/** Default buffer size for compressed output: 8192 bytes */
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	/** Default maximum number of pooled Deflaters */
+	public static final int DEFAULT_POOL_SIZE = 32;
+
+	private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+
+	private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+
+	private static final String HEADER_CONTENT_LENGTH = "Content-Length";
+
+	private static final String HEADER_CONTENT_RANGE = "Content-Range";
+
+	private static final String HEADER_VARY = "Vary";
+
+	private static final byte[] GZIP_HEADER =
+			new byte[] {(byte) 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+
+	private int minimumSize = DEFAULT_MINIMUM_SIZE;
+
+	private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+	private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+	private int poolSize = DEFAULT_POOL_SIZE;
+
+	private String[] compressibleContentTypes =
+			new String[] {"text/", "application/json", "application/javascript", "application/x-javascript",
+										"application/xml", "application/xhtml+xml", "+xml"};
+
+	/** Pool of idle Compressor instances */
+	private final LinkedList compressorPool = new LinkedList();
+
+
+	/**
+	 * Set the minimum number of response bytes for compression to apply.
+	 * Smaller responses are written uncompressed. Default is 1024.
+	 */
+	public void setMinimumSize(int minimumSize) {
+		this.minimumSize = minimumSize;
+	}
+
+	/**
+	 * Set the Deflater compression level, from 1 (fastest) to 9 (best
+	 * compression). Default is the Deflater's default level (6).
+	 * @see java.util.zip.Deflater#setLevel
+	 */
+	public void setCompressionLevel(int compressionLevel) {
+		this.compressionLevel = compressionLevel;
+	}
+
+	/**
+	 * Set the size of the buffer for compressed output. Default is 8192.
+	 */
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Set the maximum number of idle Deflaters to keep for reuse.
+	 * Default is 32. Deflaters beyond that number are released after use.
+	 */
+	public void setPoolSize(int poolSize) {
+		this.poolSize = poolSize;
+	}
+
+	/**
+	 * Set the content types to compress. Entries ending with a slash match
+	 * a primary type ("text/"), entries starting with a plus sign match a
+	 * structured syntax suffix ("+xml"), all others need to match exactly
+	 * (ignoring parameters such as the charset).
+	 */
+	public void setCompressibleContentTypes(String[] compressibleContentTypes) {
+		this.compressibleContentTypes = compressibleContentTypes;
+	}
+
+
+	/**
+	 * Skip included requests: The including response determines the encoding.
+	 */
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		return (request.getAttribute(UrlPathHelper.INCLUDE_URI_REQUEST_ATTRIBUTE) != null);
+	}
+
+	protected void doFilterInternal(
+			HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+
+		if (!acceptsGzip(request)) {
+			filterChain.doFilter(request, response);
+			return;
+		}
+
+		GzipResponseWrapper wrapper = new GzipResponseWrapper(response);
+		try {
+			filterChain.doFilter(request, wrapper);
+			wrapper.finish();
+		}
+		finally {
+			wrapper.releaseCompressor();
+		}
+	}
+
+	/**
+	 * Check whether the client accepts the gzip content encoding,
+	 * according to the Accept-Encoding header (with non-zero quality).
+	 * @param request current HTTP request
+	 * @return whether the response may be GZIP-compressed
+	 */
+	protected boolean acceptsGzip(HttpServletRequest request) {
+		String acceptEncoding = request.getHeader(HEADER_ACCEPT_ENCODING);
+		if (acceptEncoding == null) {
+			return false;
+		}
+		String[] codings = StringUtils.commaDelimitedListToStringArray(acceptEncoding);
+		for (int i = 0; i < codings.length; i++) {
+			String coding = codings[i].trim().toLowerCase();
+			String quality = null;
+			int paramIndex = coding.indexOf(';');
+			if (paramIndex != -1) {
+				quality = coding.substring(paramIndex + 1).trim();
+				coding = coding.substring(0, paramIndex).trim();
+			}
+			if (coding.equals("gzip") || coding.equals("x-gzip") || coding.equals("*")) {
+				if (quality == null || !quality.startsWith("q=")) {
+					return true;
+				}
+				try {
+					return (Float.parseFloat(quality.substring(2)) > 0);
+				}
+				catch (NumberFormatException ex) {
+					return false;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Determine whether the given content type should be compressed.
+	 * @param contentType the response content type (may be null)
+	 * @return whether to compress the response
+	 * @see #setCompressibleContentTypes
+	 */
+	protected boolean isCompressibleContentType(String contentType) {
+		if (contentType == null) {
+			return false;
+		}
+		String mimeType = contentType.toLowerCase();
+		int paramIndex = mimeType.indexOf(';');
+		if (paramIndex != -1) {
+			mimeType = mimeType.substring(0, paramIndex);
+		}
+		mimeType = mimeType.trim();
+		for (int i = 0; i < this.compressibleContentTypes.length; i++) {
+			String candidate = this.compressibleContentTypes[i].toLowerCase();
+			if (candidate.endsWith("/") ? mimeType.startsWith(candidate) :
+					candidate.startsWith("+") ? mimeType.endsWith(candidate) : mimeType.equals(candidate)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+
+	/**
+	 * Obtain a Compressor from the pool, or create a new one if the pool is empty.
+	 */
+	private Compressor obtainCompressor() {
+		synchronized (this.compressorPool) {
+			if (!this.compressorPool.isEmpty()) {
+				return (Compressor) this.compressorPool.removeLast();
+			}
+		}
+		return new Compressor(this.compressionLevel, this.bufferSize);
+	}
+
+	/**
+	 * Return the given Compressor to the pool, or release its native
+	 * resources if the pool is full.
+	 */
+	private void returnCompressor(Compressor compressor) {
+		compressor.reset();
+		synchronized (this.compressorPool) {
+			if (this.compressorPool.size() < this.poolSize) {
+				this.compressorPool.addLast(compressor);
+				return;
+			}
+		}
+		compressor.end();
+	}
+
+	/**
+	 * Release all pooled Deflaters.
+	 */
+	public void destroy() {
+		synchronized (this.compressorPool) {
+			while (!this.compressorPool.isEmpty()) {
+				((Compressor) this.compressorPool.removeFirst()).end();
+			}
+		}
+	}
+
+	/**
+	 * Return the number of idle Deflaters currently held in the pool.
+	 */
+	public int getPooledCompressorCount() {
+		synchronized (this.compressorPool) {
+			return this.compressorPool.size();
+		}
+	}
+
+
+	/**
+	 * Reusable combination of a raw Deflater, a CRC32 checksum for the
+	 * GZIP trailer, and an output buffer.
+	 */
+	private static class Compressor {
+
+		private final Deflater deflater;
+
+		private final CRC32 crc = new CRC32();
+
+		private final byte[] buffer;
+
+		public Compressor(int level, int bufferSize) {
+			// Raw deflate data: the GZIP header and trailer get written separately.
+			this.deflater = new Deflater(level, true);
+			this.buffer = new byte[bufferSize];
+		}
+
+		public void reset() {
+			this.deflater.reset();
+			this.crc.reset();
+		}
+
+		public void end() {
+			this.deflater.end();
+		}
+	}
+
+
+	/**
+	 * Response wrapper that holds back output up to the minimum size,
+	 * then either passes it through or compresses it into the target response.
+	 */
+	private class GzipResponseWrapper extends HttpServletResponseWrapper {
+
+		private static final int MODE_UNDECIDED = 0;
+
+		private static final int MODE_PASS_THROUGH = 1;
+
+		private static final int MODE_COMPRESS = 2;
+
+		private int mode = MODE_UNDECIDED;
+
+		private String contentType;
+
+		private int contentLength = -1;
+
+		/** Output held back while undecided, allocated lazily */
+		private byte[] pending;
+
+		private int pendingCount = 0;
+
+		private Compressor compressor;
+
+		private ServletOutputStream outputStream;
+
+		private PrintWriter writer;
+
+		public GzipResponseWrapper(HttpServletResponse response) {
+			super(response);
+		}
+
+		public void setContentType(String contentType) {
+			super.setContentType(contentType);
+			this.contentType = contentType;
+		}
+
+		public void setStatus(int status) {
+			super.setStatus(status);
+			checkStatus(status);
+		}
+
+		public void setStatus(int status, String message) {
+			super.setStatus(status, message);
+			checkStatus(status);
+		}
+
+		private void checkStatus(int status) {
+			if (status == HttpServletResponse.SC_PARTIAL_CONTENT && this.mode == MODE_UNDECIDED) {
+				// Byte ranges refer to the unencoded entity: never compress.
+				switchToPassThrough();
+			}
+		}
+
+		public void setContentLength(int contentLength) {
+			if (this.mode == MODE_UNDECIDED) {
+				this.contentLength = contentLength;
+				if (contentLength < minimumSize || !isCompressibleContentType(this.contentType)) {
+					switchToPassThrough();
+				}
+			}
+			else if (this.mode == MODE_PASS_THROUGH) {
+				super.setContentLength(contentLength);
+			}
+			// Ignore content length for compressed output.
+		}
+
+		public void setHeader(String name, String value) {
+			if (checkHeader(name, value)) {
+				super.setHeader(name, value);
+			}
+		}
+
+		public void addHeader(String name, String value) {
+			if (checkHeader(name, value)) {
+				super.addHeader(name, value);
+			}
+		}
+
+		public void setIntHeader(String name, int value) {
+			if (HEADER_CONTENT_LENGTH.equalsIgnoreCase(name)) {
+				setContentLength(value);
+			}
+			else {
+				super.setIntHeader(name, value);
+			}
+		}
+
+		/**
+		 * Intercept Content-Length and Content-Encoding headers.
+		 * @return whether to pass the header on to the target response
+		 */
+		private boolean checkHeader(String name, String value) {
+			if (HEADER_CONTENT_LENGTH.equalsIgnoreCase(name)) {
+				try {
+					setContentLength(Integer.parseInt(value.trim()));
+				}
+				catch (NumberFormatException ex) {
+					return (this.mode != MODE_COMPRESS);
+				}
+				return false;
+			}
+			if (HEADER_CONTENT_ENCODING.equalsIgnoreCase(name) && this.mode == MODE_UNDECIDED) {
+				// Already encoded by the application: never encode twice.
+				switchToPassThrough();
+			}
+			if (HEADER_CONTENT_RANGE.equalsIgnoreCase(name) && this.mode == MODE_UNDECIDED) {
+				// Byte ranges refer to the unencoded entity: never compress.
+				switchToPassThrough();
+			}
+			return true;
+		}
+
+		public void sendError(int status) throws IOException {
+			discardPending();
+			super.sendError(status);
+		}
+
+		public void sendError(int status, String message) throws IOException {
+			discardPending();
+			super.sendError(status, message);
+		}
+
+		public void sendRedirect(String location) throws IOException {
+			discardPending();
+			super.sendRedirect(location);
+		}
+
+		public boolean isCommitted() {
+			return (this.mode == MODE_COMPRESS || super.isCommitted());
+		}
+
+		public void resetBuffer() {
+			if (this.mode == MODE_COMPRESS) {
+				throw new IllegalStateException("Cannot reset buffer: compressed output already written");
+			}
+			super.resetBuffer();
+			this.pendingCount = 0;
+		}
+
+		public void reset() {
+			if (this.mode == MODE_COMPRESS) {
+				throw new IllegalStateException("Cannot reset response: compressed output already written");
+			}
+			super.reset();
+			this.pendingCount = 0;
+			this.contentType = null;
+			this.contentLength = -1;
+			this.mode = MODE_UNDECIDED;
+		}
+
+		public void flushBuffer() throws IOException {
+			flushWriter();
+			if (this.mode == MODE_UNDECIDED) {
+				// Flushing commits the response: decide without waiting for the minimum size.
+				if (isCompressibleContentType(this.contentType) &&
+						(this.contentLength == -1 || this.contentLength >= minimumSize)) {
+					switchToCompress();
+				}
+				else {
+					switchToPassThrough();
+				}
+			}
+			flushOutput();
+		}
+
+		private void flushOutput() throws IOException {
+			if (this.mode == MODE_PASS_THROUGH) {
+				writePending();
+				super.flushBuffer();
+			}
+			else if (this.mode == MODE_COMPRESS) {
+				getResponse().getOutputStream().flush();
+			}
+			// Keep holding back output while undecided.
+		}
+
+		public ServletOutputStream getOutputStream() {
+			if (this.outputStream == null) {
+				this.outputStream = new ServletOutputStream() {
+					public void write(int b) throws IOException {
+						writeOutput(new byte[] {(byte) b}, 0, 1);
+					}
+					public void write(byte[] b, int off, int len) throws IOException {
+						writeOutput(b, off, len);
+					}
+					public void flush() throws IOException {
+						flushOutput();
+					}
+				};
+			}
+			return this.outputStream;
+		}
+
+		public PrintWriter getWriter() throws IOException {
+			if (this.writer == null) {
+				this.writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+			}
+			return this.writer;
+		}
+
+		private void flushWriter() {
+			if (this.writer != null) {
+				this.writer.flush();
+			}
+		}
+
+		private void writeOutput(byte[] b, int off, int len) throws IOException {
+			if (this.mode == MODE_UNDECIDED) {
+				if (!isCompressibleContentType(this.contentType)) {
+					switchToPassThrough();
+				}
+				else if (this.pendingCount + len < minimumSize) {
+					if (this.pending == null) {
+						this.pending = new byte[minimumSize];
+					}
+					System.arraycopy(b, off, this.pending, this.pendingCount, len);
+					this.pendingCount += len;
+					return;
+				}
+				else {
+					switchToCompress();
+				}
+			}
+			if (this.mode == MODE_PASS_THROUGH) {
+				writePending();
+				getResponse().getOutputStream().write(b, off, len);
+			}
+			else {
+				compress(b, off, len);
+			}
+		}
+
+		/**
+		 * Write output that was held back before switching to pass-through.
+		 */
+		private void writePending() throws IOException {
+			if (this.pendingCount > 0) {
+				int count = this.pendingCount;
+				this.pendingCount = 0;
+				getResponse().getOutputStream().write(this.pending, 0, count);
+			}
+		}
+
+		private void switchToPassThrough() {
+			this.mode = MODE_PASS_THROUGH;
+			if (this.contentLength != -1) {
+				super.setContentLength(this.contentLength);
+			}
+		}
+
+		private void switchToCompress() throws IOException {
+			this.mode = MODE_COMPRESS;
+			super.setHeader(HEADER_CONTENT_ENCODING, "gzip");
+			super.addHeader(HEADER_VARY, HEADER_ACCEPT_ENCODING);
+			this.compressor = obtainCompressor();
+			getResponse().getOutputStream().write(GZIP_HEADER);
+			if (this.pendingCount > 0) {
+				compress(this.pending, 0, this.pendingCount);
+				this.pendingCount = 0;
+			}
+		}
+
+		private void discardPending() {
+			this.pendingCount = 0;
+			if (this.mode == MODE_UNDECIDED) {
+				this.mode = MODE_PASS_THROUGH;
+			}
+		}
+
+		private void compress(byte[] b, int off, int len) throws IOException {
+			Deflater deflater = this.compressor.deflater;
+			this.compressor.crc.update(b, off, len);
+			deflater.setInput(b, off, len);
+			while (!deflater.needsInput()) {
+				drainDeflater();
+			}
+		}
+
+		private void drainDeflater() throws IOException {
+			int count = this.compressor.deflater.deflate(this.compressor.buffer);
+			if (count > 0) {
+				getResponse().getOutputStream().write(this.compressor.buffer, 0, count);
+			}
+		}
+
+		/**
+		 * Complete the response: write output that has been held back,
+		 * or finish the compressed stream with the GZIP trailer.
+		 */
+		public void finish() throws IOException {
+			flushWriter();
+			if (this.mode == MODE_UNDECIDED) {
+				this.mode = MODE_PASS_THROUGH;
+				if (this.pendingCount > 0) {
+					super.setContentLength(this.pendingCount);
+					writePending();
+				}
+			}
+			else if (this.mode == MODE_PASS_THROUGH) {
+				writePending();
+			}
+			else if (this.mode == MODE_COMPRESS) {
+				Deflater deflater = this.compressor.deflater;
+				deflater.finish();
+				while (!deflater.finished()) {
+					drainDeflater();
+				}
+				long crc = this.compressor.crc.getValue();
+				int size = deflater.getTotalIn();
+				byte[] trailer = new byte[] {
+						(byte) crc, (byte) (crc >> 8), (byte) (crc >> 16), (byte) (crc >> 24),
+						(byte) size, (byte) (size >> 8), (byte) (size >> 16), (byte) (size >> 24)};
+				getResponse().getOutputStream().write(trailer);
+			}
+		}
+
+		public void releaseCompressor() {
+			if (this.compressor != null) {
+				returnCompressor(this.compressor);
+				this.compressor = null;
+			}
+		}
+	}
+
+}
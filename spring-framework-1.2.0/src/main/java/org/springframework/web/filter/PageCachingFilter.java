@@ -0,0 +1,1017 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.web.filter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.springframework.core.CollectionFactory;
+import org.springframework.util.StringUtils;
+
+/**
+ * Servlet 2.3 Filter that caches complete rendered pages: status, headers
+ * and body bytes. Subsequent GET and HEAD requests for the same cache key
+ * are answered from the cache without invoking the filter chain, until the
+ * cached page expires.
+ *
+ * <p>An ETag is computed from the body of each captured page, and a
+ * Last-Modified header added if the page did not specify one itself (as
+ * done by DispatcherServlet for handlers that implement LastModified).
+ * Conditional requests are answered with "304 Not Modified" if the
+ * If-None-Match or If-Modified-Since header matches - for freshly rendered
+ * pages as well, so clients save the transfer even if the page had to be
+ * rendered again.
+ *
+ * <p>Responses are only cached if they have status 200, do not set cookies,
+ * and do not declare "no-store", "no-cache" or "private" in a Cache-Control
+ * header. A "max-age" directive shortens the time to live of the cached page.
+ * As soon as a response turns out to be uncacheable - an error, a redirect,
+ * a cookie, a body exceeding the maximum page size, or an explicit flush -
+ * it is streamed to the client as-is instead of being buffered.
+ * Requests from authenticated users or with an HTTP session bypass the
+ * cache by default, as their pages are likely to be user-specific.
+ *
+ * <p>The cache key consists of the request URI, the query string, and any
+ * configured request attributes and headers (for example "Accept-Language"
+ * for localized pages). The cache is bounded both in number of pages and in
+ * total body size. It is divided into a number of segments with separate
+ * locks, each of them evicting its least recently used pages first (relying
+ * on JDK 1.4 or Commons Collections 3.x; else, in no particular order).
+ * Page bodies can optionally be kept in direct byte buffers outside of the
+ * Java heap on JDK 1.4+.
+ *
+ * @since 1.2.1
+ * @see #setTimeToLive
+ * @see #setCacheLimit
+ * @see #setMaxCacheSize
+ * @see #setKeyRequestAttributes
+ * @see #setKeyRequestHeaders
+ * @see #setCachePersonalizedRequests
+ * @see #setOffHeap
+ * @see org.springframework.web.servlet.mvc.LastModified
+ */
+public class PageCachingFilter extends OncePerRequestFilter {
+
+	/** Default time to live for cached pages: 60 seconds */
+	public static final int DEFAULT_TIME_TO_LIVE = 60;
+
+	/** Default maximum number of cached pages */
+	public static final int DEFAULT_CACHE_LIMIT = 1000;
+
+	/** Default maximum total size of cached page bodies: 16 MB */
+	public static final int DEFAULT_MAX_CACHE_SIZE = 16 * 1024 * 1024;
+
+	/** Default maximum body size of a single cached page: 1 MB */
+	public static final int DEFAULT_MAX_PAGE_SIZE = 1024 * 1024;
+
+	/** Default number of separately locked cache segments */
+	public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+	private static final String HEADER_CACHE_CONTROL = "Cache-Control";
+
+	private static final String HEADER_ETAG = "ETag";
+
+	private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+
+	private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+
+	private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+	private static final char[] HEX_DIGITS =
+			{'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+	private static boolean directBuffersAvailable;
+
+	static {
+		try {
+			Class.forName("java.nio.ByteBuffer");
+			directBuffersAvailable = true;
+		}
+		catch (ClassNotFoundException ex) {
+			// JDK 1.3: page bodies can only be kept on the heap
+			directBuffersAvailable = false;
+		}
+	}
+
+
+	private int timeToLive = DEFAULT_TIME_TO_LIVE;
+
+	private int cacheLimit = DEFAULT_CACHE_LIMIT;
+
+	private long maxCacheSize = DEFAULT_MAX_CACHE_SIZE;
+
+	private int maxPageSize = DEFAULT_MAX_PAGE_SIZE;
+
+	private boolean includeQueryString = true;
+
+	private String[] keyRequestAttributes;
+
+	private String[] keyRequestHeaders;
+
+	private boolean cachePersonalizedRequests = false;
+
+	private boolean offHeap = false;
+
+	/** Cache key --> CachedPage, distributed by key hash */
+	private final CacheSegment[] segments;
+
+
+	/**
+	 * Create a new PageCachingFilter with the default
+	 * number of cache segments.
+	 * @see #DEFAULT_CONCURRENCY_LEVEL
+	 */
+	public PageCachingFilter() {
+		this(DEFAULT_CONCURRENCY_LEVEL);
+	}
+
+	/**
+	 * Create a new PageCachingFilter.
+	 * @param concurrencyLevel the number of separately locked cache segments,
+	 * i.e. the number of threads that can access the cache without blocking
+	 * each other. A value of 1 results in strict least-recently-used eviction
+	 * across all cached pages.
+	 */
+	public PageCachingFilter(int concurrencyLevel) {
+		if (concurrencyLevel < 1) {
+			throw new IllegalArgumentException("concurrencyLevel must be at least 1");
+		}
+		this.segments = new CacheSegment[concurrencyLevel];
+		for (int i = 0; i < this.segments.length; i++) {
+			this.segments[i] = new CacheSegment();
+		}
+		applyCacheLimits();
+	}
+
+	/**
+	 * Set the number of seconds that a page stays in the cache.
+	 * Default is 60 seconds.
+	 * <p>A shorter "max-age" specified by the page itself takes precedence.
+	 */
+	public void setTimeToLive(int timeToLive) {
+		this.timeToLive = timeToLive;
+	}
+
+	/**
+	 * Set the maximum number of pages to cache. Default is 1000.
+	 * <p>The limit is distributed across the cache segments.
+	 * Note that changing this setting clears the cache.
+	 */
+	public void setCacheLimit(int cacheLimit) {
+		if (cacheLimit < 1) {
+			throw new IllegalArgumentException("cacheLimit must be at least 1");
+		}
+		this.cacheLimit = cacheLimit;
+		applyCacheLimits();
+	}
+
+	/**
+	 * Set the maximum total size in bytes of all cached page bodies.
+	 * Default is 16 MB.
+	 * <p>The size is distributed across the cache segments: A page larger
+	 * than the share of its segment will not be cached.
+	 * Note that changing this setting clears the cache.
+	 */
+	public void setMaxCacheSize(long maxCacheSize) {
+		if (maxCacheSize < 1) {
+			throw new IllegalArgumentException("maxCacheSize must be at least 1");
+		}
+		this.maxCacheSize = maxCacheSize;
+		applyCacheLimits();
+	}
+
+	/**
+	 * Set the maximum body size in bytes of a page to be cached.
+	 * Larger pages will be rendered for each request. Default is 1 MB.
+	 */
+	public void setMaxPageSize(int maxPageSize) {
+		this.maxPageSize = maxPageSize;
+	}
+
+	/**
+	 * Set whether the query string should be part of the cache key.
+	 * Default is true.
+	 */
+	public void setIncludeQueryString(boolean includeQueryString) {
+		this.includeQueryString = includeQueryString;
+	}
+
+	/**
+	 * Set the names of request attributes whose values should be part of
+	 * the cache key, for example attributes set by a preceding filter.
+	 * Values are represented by their <code>toString</code> form.
+	 */
+	public void setKeyRequestAttributes(String[] keyRequestAttributes) {
+		this.keyRequestAttributes = keyRequestAttributes;
+	}
+
+	/**
+	 * Set the names of request headers whose values should be part of the
+	 * cache key, for example "Accept-Language" for localized pages.
+	 */
+	public void setKeyRequestHeaders(String[] keyRequestHeaders) {
+		this.keyRequestHeaders = keyRequestHeaders;
+	}
+
+	/**
+	 * Set whether requests from authenticated users or with an HTTP session
+	 * may be served from and stored in the cache. Default is false.
+	 * <p>Turn this on only if pages do not depend on the user or the session,
+	 * or if the user is part of the cache key (for example through a request
+	 * attribute). Pages that create a new session or set a cookie will never
+	 * be cached.
+	 * @see javax.servlet.http.HttpServletRequest#getRemoteUser
+	 * @see javax.servlet.http.HttpServletRequest#getSession(boolean)
+	 * @see #setKeyRequestAttributes
+	 */
+	public void setCachePersonalizedRequests(boolean cachePersonalizedRequests) {
+		this.cachePersonalizedRequests = cachePersonalizedRequests;
+	}
+
+	/**
+	 * Set whether page bodies should be kept in direct byte buffers,
+	 * i.e. outside of the Java heap. Default is false. Requires JDK 1.4.
+	 * <p>This reduces the garbage collection load for large caches, at the
+	 * expense of an additional copy when writing a page to the response.
+	 * @see java.nio.ByteBuffer#allocateDirect
+	 */
+	public void setOffHeap(boolean offHeap) {
+		if (offHeap && !directBuffersAvailable) {
+			throw new IllegalArgumentException("offHeap requires JDK 1.4 or higher");
+		}
+		this.offHeap = offHeap;
+	}
+
+	/**
+	 * Distribute the cache limits across the segments, each of them
+	 * switching to its new share under its own lock.
+	 */
+	private void applyCacheLimits() {
+		int segmentLimit = this.cacheLimit / this.segments.length;
+		int limitRemainder = this.cacheLimit % this.segments.length;
+		long segmentMaxSize = this.maxCacheSize / this.segments.length;
+		long sizeRemainder = this.maxCacheSize % this.segments.length;
+		for (int i = 0; i < this.segments.length; i++) {
+			// distribute the remainders, so that the segment limits add up to the configured ones
+			synchronized (this.segments[i]) {
+				this.segments[i].setLimits(i < limitRemainder ? segmentLimit + 1 : segmentLimit,
+						i < sizeRemainder ? segmentMaxSize + 1 : segmentMaxSize);
+			}
+		}
+	}
+
+
+	protected void doFilterInternal(
+			HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+
+		if (!isCacheableRequest(request)) {
+			filterChain.doFilter(request, response);
+			return;
+		}
+
+		String cacheKey = getCacheKey(request);
+		CachedPage page = getCachedPage(cacheKey);
+		if (page != null) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Serving cached page for key [" + cacheKey + "]");
+			}
+			page.replayHeaders(response);
+			writePage(page, request, response);
+			return;
+		}
+		if ("HEAD".equals(request.getMethod())) {
+			// No body to capture: only GET requests populate the cache.
+			filterChain.doFilter(request, response);
+			return;
+		}
+
+		PageCaptureResponseWrapper wrapper = new PageCaptureResponseWrapper(response, this.maxPageSize);
+		filterChain.doFilter(request, wrapper);
+		if (!wrapper.isCacheable() || (!this.cachePersonalizedRequests && request.getSession(false) != null)) {
+			// Just complete the response, without ETag handling.
+			wrapper.finishResponse();
+			return;
+		}
+
+		page = wrapper.createPage(this.offHeap);
+		// Headers have already been passed through: just add the computed ones.
+		response.setHeader(HEADER_ETAG, page.getETag());
+		if (!wrapper.hasRecordedHeader(HEADER_LAST_MODIFIED)) {
+			response.setDateHeader(HEADER_LAST_MODIFIED, page.getLastModified());
+		}
+		int pageTimeToLive = wrapper.getPageTimeToLive(this.timeToLive);
+		if (pageTimeToLive > 0) {
+			page.setExpiryTime(System.currentTimeMillis() + pageTimeToLive * 1000L);
+			putCachedPage(cacheKey, page);
+		}
+		writePage(page, request, response);
+	}
+
+	/**
+	 * Determine whether the given request may be served from the cache.
+	 * The default implementation accepts GET and HEAD requests, unless
+	 * coming from an authenticated user or referring to an HTTP session.
+	 * @param request current HTTP request
+	 * @return whether the request is cacheable
+	 * @see #setCachePersonalizedRequests
+	 */
+	protected boolean isCacheableRequest(HttpServletRequest request) {
+		String method = request.getMethod();
+		if (!"GET".equals(method) && !"HEAD".equals(method)) {
+			return false;
+		}
+		return (this.cachePersonalizedRequests ||
+				(request.getRemoteUser() == null && request.getSession(false) == null));
+	}
+
+	/**
+	 * Build the cache key for the given request. The default implementation
+	 * combines request URI, query string and the configured request
+	 * attributes and headers.
+	 * @param request current HTTP request
+	 * @return the cache key
+	 * @see #setIncludeQueryString
+	 * @see #setKeyRequestAttributes
+	 * @see #setKeyRequestHeaders
+	 */
+	protected String getCacheKey(HttpServletRequest request) {
+		StringBuffer key = new StringBuffer(request.getRequestURI());
+		if (this.includeQueryString && request.getQueryString() != null) {
+			key.append('?').append(request.getQueryString());
+		}
+		if (this.keyRequestAttributes != null) {
+			for (int i = 0; i < this.keyRequestAttributes.length; i++) {
+				key.append('|').append(request.getAttribute(this.keyRequestAttributes[i]));
+			}
+		}
+		if (this.keyRequestHeaders != null) {
+			for (int i = 0; i < this.keyRequestHeaders.length; i++) {
+				key.append('|').append(request.getHeader(this.keyRequestHeaders[i]));
+			}
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Write the given page to the response, or answer with "304 Not Modified"
+	 * if the client's cached copy is still valid. Omits the body for HEAD requests.
+	 */
+	private void writePage(CachedPage page, HttpServletRequest request, HttpServletResponse response)
+			throws IOException {
+
+		if (isNotModified(page, request)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+		response.setContentLength(page.getContentLength());
+		if (!"HEAD".equals(request.getMethod())) {
+			page.writeBody(response.getOutputStream());
+		}
+	}
+
+	/**
+	 * Check the conditional request headers against the given page.
+	 * If-None-Match takes precedence over If-Modified-Since.
+	 */
+	private boolean isNotModified(CachedPage page, HttpServletRequest request) {
+		String ifNoneMatch = request.getHeader(HEADER_IF_NONE_MATCH);
+		if (ifNoneMatch != null) {
+			String[] tags = StringUtils.commaDelimitedListToStringArray(ifNoneMatch);
+			for (int i = 0; i < tags.length; i++) {
+				String tag = tags[i].trim();
+				if (tag.equals("*") || tag.equals(page.getETag())) {
+					return true;
+				}
+			}
+			return false;
+		}
+		long ifModifiedSince = -1;
+		try {
+			ifModifiedSince = request.getDateHeader(HEADER_IF_MODIFIED_SINCE);
+		}
+		catch (IllegalArgumentException ex) {
+			// Ignore invalid date header.
+		}
+		// HTTP dates have second precision.
+		return (ifModifiedSince != -1 && page.getLastModified() / 1000 <= ifModifiedSince / 1000);
+	}
+
+	private CachedPage getCachedPage(String cacheKey) {
+		CacheSegment segment = segmentFor(cacheKey);
+		synchronized (segment) {
+			CachedPage page = (CachedPage) segment.pages.get(cacheKey);
+			if (page != null && page.isExpired()) {
+				segment.remove(cacheKey);
+				page = null;
+			}
+			return page;
+		}
+	}
+
+	private void putCachedPage(String cacheKey, CachedPage page) {
+		CacheSegment segment = segmentFor(cacheKey);
+		synchronized (segment) {
+			segment.put(cacheKey, page);
+		}
+	}
+
+	/**
+	 * Determine the cache segment for the given key.
+	 */
+	private CacheSegment segmentFor(String cacheKey) {
+		int hash = cacheKey.hashCode();
+		// Spread the hash bits, as Strings tend to differ in the low bits only.
+		hash ^= (hash >>> 16);
+		return this.segments[(hash & 0x7fffffff) % this.segments.length];
+	}
+
+	/**
+	 * Remove all pages from the cache.
+	 */
+	public void clearCache() {
+		for (int i = 0; i < this.segments.length; i++) {
+			synchronized (this.segments[i]) {
+				this.segments[i].clear();
+			}
+		}
+	}
+
+	/**
+	 * Return the number of pages currently in the cache.
+	 */
+	public int getCachedPageCount() {
+		int count = 0;
+		for (int i = 0; i < this.segments.length; i++) {
+			synchronized (this.segments[i]) {
+				count += this.segments[i].pages.size();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Return the total body size in bytes of all cached pages.
+	 */
+	public long getCacheSize() {
+		long size = 0;
+		for (int i = 0; i < this.segments.length; i++) {
+			synchronized (this.segments[i]) {
+				size += this.segments[i].size;
+			}
+		}
+		return size;
+	}
+
+
+	/**
+	 * Compute a quoted ETag value from the MD5 hash of the given bytes.
+	 */
+	private static String computeETag(byte[] body) {
+		try {
+			byte[] digest = MessageDigest.getInstance("MD5").digest(body);
+			char[] chars = new char[digest.length * 2 + 2];
+			chars[0] = '"';
+			for (int i = 0; i < digest.length; i++) {
+				chars[i * 2 + 1] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+				chars[i * 2 + 2] = HEX_DIGITS[digest[i] & 0xf];
+			}
+			chars[chars.length - 1] = '"';
+			return new String(chars);
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException("MD5 algorithm not available: " + ex.getMessage());
+		}
+	}
+
+
+	/**
+	 * Immutable snapshot of a rendered page.
+	 */
+	private static class CachedPage {
+
+		private final int status;
+
+		private final String contentType;
+
+		/** Header name/value pairs: String, Long (date) or Integer values */
+		private final List headers;
+
+		private final byte[] body;
+
+		private final DirectBody offHeapBody;
+
+		private final String eTag;
+
+		private final long lastModified;
+
+		private long expiryTime;
+
+		public CachedPage(int status, String contentType, List headers, byte[] body, boolean offHeap,
+				long lastModified) {
+			this.status = status;
+			this.contentType = contentType;
+			this.headers = headers;
+			this.eTag = computeETag(body);
+			this.lastModified = lastModified;
+			if (offHeap) {
+				this.offHeapBody = new DirectBody(body);
+				this.body = null;
+			}
+			else {
+				this.body = body;
+				this.offHeapBody = null;
+			}
+		}
+
+		public String getETag() {
+			return eTag;
+		}
+
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		public int getContentLength() {
+			return (this.body != null ? this.body.length : this.offHeapBody.getLength());
+		}
+
+		public void setExpiryTime(long expiryTime) {
+			this.expiryTime = expiryTime;
+		}
+
+		public boolean isExpired() {
+			return (System.currentTimeMillis() >= this.expiryTime);
+		}
+
+		public void replayHeaders(HttpServletResponse response) {
+			response.setStatus(this.status);
+			if (this.contentType != null) {
+				response.setContentType(this.contentType);
+			}
+			for (Iterator it = this.headers.iterator(); it.hasNext();) {
+				String name = (String) it.next();
+				Object value = it.next();
+				if (value instanceof Long) {
+					response.addDateHeader(name, ((Long) value).longValue());
+				}
+				else if (value instanceof Integer) {
+					response.addIntHeader(name, ((Integer) value).intValue());
+				}
+				else {
+					response.addHeader(name, (String) value);
+				}
+			}
+			response.setHeader(HEADER_ETAG, this.eTag);
+			response.setDateHeader(HEADER_LAST_MODIFIED, this.lastModified);
+		}
+
+		public void writeBody(ServletOutputStream out) throws IOException {
+			if (this.body != null) {
+				out.write(this.body);
+			}
+			else {
+				this.offHeapBody.writeTo(out);
+			}
+		}
+	}
+
+
+	/**
+	 * Page body held in a direct byte buffer.
+	 * Separate inner class to avoid runtime dependency on JDK 1.4.
+	 */
+	private static class DirectBody {
+
+		private final ByteBuffer buffer;
+
+		public DirectBody(byte[] body) {
+			this.buffer = ByteBuffer.allocateDirect(body.length);
+			this.buffer.put(body);
+			this.buffer.flip();
+		}
+
+		public int getLength() {
+			return this.buffer.limit();
+		}
+
+		public void writeTo(ServletOutputStream out) throws IOException {
+			// Work on a duplicate, as the buffer position is shared between threads.
+			Channels.newChannel(out).write(this.buffer.duplicate());
+		}
+	}
+
+
+	/**
+	 * Segment of the page cache, guarded by its own monitor.
+	 * Keeps track of the total body size of its pages.
+	 */
+	private static class CacheSegment {
+
+		/** Cache key --> CachedPage, least recently used first */
+		private Map pages;
+
+		private int limit;
+
+		private long maxSize;
+
+		/** Total body size of all pages in this segment */
+		private long size;
+
+		/**
+		 * Switch to the given limits, discarding all cached pages.
+		 * A segment without share does not cache any pages.
+		 */
+		public void setLimits(int limit, long maxSize) {
+			this.limit = limit;
+			this.maxSize = maxSize;
+			this.pages = (limit > 0 ? CollectionFactory.createLruMapIfPossible(limit) : new HashMap(1));
+			this.size = 0;
+		}
+
+		public void put(String cacheKey, CachedPage page) {
+			remove(cacheKey);
+			if (this.limit == 0 || page.getContentLength() > this.maxSize) {
+				return;
+			}
+			// Evict least recently used pages until the new page fits: the map
+			// itself must never evict, as the body sizes would get out of sync.
+			Iterator it = this.pages.values().iterator();
+			while (it.hasNext() && (this.pages.size() >= this.limit || this.size + page.getContentLength() > this.maxSize)) {
+				CachedPage eldest = (CachedPage) it.next();
+				it.remove();
+				this.size -= eldest.getContentLength();
+			}
+			this.pages.put(cacheKey, page);
+			this.size += page.getContentLength();
+		}
+
+		public void remove(String cacheKey) {
+			CachedPage page = (CachedPage) this.pages.remove(cacheKey);
+			if (page != null) {
+				this.size -= page.getContentLength();
+			}
+		}
+
+		public void clear() {
+			this.pages.clear();
+			this.size = 0;
+		}
+	}
+
+
+	/**
+	 * Response wrapper that passes status and headers through to the target
+	 * response while recording them, and buffers the response body as long
+	 * as the page may be cached. Switches to passing the body through as
+	 * soon as the page turns out to be uncacheable.
+	 */
+	private static class PageCaptureResponseWrapper extends HttpServletResponseWrapper {
+
+		private final int maxPageSize;
+
+		/** Buffered body, or null once passing through */
+		private ByteArrayOutputStream content = new ByteArrayOutputStream(1024);
+
+		private final ServletOutputStream outputStream = new ServletOutputStream() {
+			public void write(int b) throws IOException {
+				if (content != null && content.size() < maxPageSize) {
+					content.write(b);
+				}
+				else {
+					passThrough().write(b);
+				}
+			}
+			public void write(byte[] b, int off, int len) throws IOException {
+				if (content != null && content.size() + len <= maxPageSize) {
+					content.write(b, off, len);
+				}
+				else {
+					passThrough().write(b, off, len);
+				}
+			}
+		};
+
+		private PrintWriter writer;
+
+		private int status = HttpServletResponse.SC_OK;
+
+		private boolean cacheable = true;
+
+		private String contentType;
+
+		private int contentLength = -1;
+
+		/** Recorded header name/value pairs, Last-Modified and cache headers included */
+		private final List headers = new ArrayList();
+
+		public PageCaptureResponseWrapper(HttpServletResponse response, int maxPageSize) {
+			super(response);
+			this.maxPageSize = maxPageSize;
+		}
+
+		/**
+		 * Stop buffering: write the body buffered so far to the target response,
+		 * and write all further output straight through.
+		 * @return the output stream of the target response
+		 */
+		private ServletOutputStream passThrough() throws IOException {
+			this.cacheable = false;
+			ServletOutputStream targetStream = getResponse().getOutputStream();
+			if (this.content != null) {
+				ByteArrayOutputStream bufferedContent = this.content;
+				this.content = null;
+				if (this.contentLength != -1) {
+					super.setContentLength(this.contentLength);
+				}
+				bufferedContent.writeTo(targetStream);
+			}
+			return targetStream;
+		}
+
+		/**
+		 * Mark the page as uncacheable, passing the body through from now on.
+		 */
+		private void markUncacheable() {
+			try {
+				passThrough();
+			}
+			catch (IOException ex) {
+				// Will be thrown again by the next write to the target response.
+				this.cacheable = false;
+			}
+		}
+
+		/**
+		 * Discard the body buffered so far, passing further output through.
+		 * Used when an error or redirect replaces the page content.
+		 */
+		private void discardContent() {
+			this.cacheable = false;
+			this.content = null;
+		}
+
+		public void setStatus(int status) {
+			super.setStatus(status);
+			this.status = status;
+			if (status != HttpServletResponse.SC_OK) {
+				markUncacheable();
+			}
+		}
+
+		public void setStatus(int status, String message) {
+			super.setStatus(status, message);
+			this.status = status;
+			if (status != HttpServletResponse.SC_OK) {
+				markUncacheable();
+			}
+		}
+
+		public void sendError(int status) throws IOException {
+			discardContent();
+			super.sendError(status);
+		}
+
+		public void sendError(int status, String message) throws IOException {
+			discardContent();
+			super.sendError(status, message);
+		}
+
+		public void sendRedirect(String location) throws IOException {
+			discardContent();
+			super.sendRedirect(location);
+		}
+
+		public void addCookie(Cookie cookie) {
+			// Cookies are typically user-specific: never cache such a page.
+			markUncacheable();
+			super.addCookie(cookie);
+		}
+
+		public void setContentType(String contentType) {
+			super.setContentType(contentType);
+			this.contentType = contentType;
+		}
+
+		public void setContentLength(int contentLength) {
+			if (this.content != null) {
+				// Remember for passing through: else, we will set the length of the buffered content.
+				this.contentLength = contentLength;
+			}
+			else {
+				super.setContentLength(contentLength);
+			}
+		}
+
+		public void setHeader(String name, String value) {
+			checkCookieHeader(name);
+			super.setHeader(name, value);
+			removeRecordedHeader(name);
+			recordHeader(name, value);
+		}
+
+		public void addHeader(String name, String value) {
+			checkCookieHeader(name);
+			super.addHeader(name, value);
+			recordHeader(name, value);
+		}
+
+		private void checkCookieHeader(String name) {
+			if ("Set-Cookie".equalsIgnoreCase(name) || "Set-Cookie2".equalsIgnoreCase(name)) {
+				markUncacheable();
+			}
+		}
+
+		public void setDateHeader(String name, long date) {
+			super.setDateHeader(name, date);
+			removeRecordedHeader(name);
+			recordHeader(name, new Long(date));
+		}
+
+		public void addDateHeader(String name, long date) {
+			super.addDateHeader(name, date);
+			recordHeader(name, new Long(date));
+		}
+
+		public void setIntHeader(String name, int value) {
+			super.setIntHeader(name, value);
+			removeRecordedHeader(name);
+			recordHeader(name, new Integer(value));
+		}
+
+		public void addIntHeader(String name, int value) {
+			super.addIntHeader(name, value);
+			recordHeader(name, new Integer(value));
+		}
+
+		private void recordHeader(String name, Object value) {
+			if ("Content-Length".equalsIgnoreCase(name)) {
+				return;
+			}
+			this.headers.add(name);
+			this.headers.add(value);
+		}
+
+		private void removeRecordedHeader(String name) {
+			for (int i = this.headers.size() - 2; i >= 0; i -= 2) {
+				if (name.equalsIgnoreCase((String) this.headers.get(i))) {
+					this.headers.remove(i + 1);
+					this.headers.remove(i);
+				}
+			}
+		}
+
+		public boolean hasRecordedHeader(String name) {
+			return (getRecordedHeader(name) != null);
+		}
+
+		private Object getRecordedHeader(String name) {
+			for (int i = 0; i < this.headers.size(); i += 2) {
+				if (name.equalsIgnoreCase((String) this.headers.get(i))) {
+					return this.headers.get(i + 1);
+				}
+			}
+			return null;
+		}
+
+		public ServletOutputStream getOutputStream() {
+			return this.outputStream;
+		}
+
+		public PrintWriter getWriter() throws IOException {
+			if (this.writer == null) {
+				this.writer = new PrintWriter(new OutputStreamWriter(this.outputStream, getCharacterEncoding()));
+			}
+			return this.writer;
+		}
+
+		/**
+		 * Flushing commits the response: The page will be streamed
+		 * to the client as-is, without being cached.
+		 */
+		public void flushBuffer() throws IOException {
+			flushWriter();
+			passThrough();
+			super.flushBuffer();
+		}
+
+		private void flushWriter() {
+			if (this.writer != null) {
+				this.writer.flush();
+			}
+		}
+
+		public void resetBuffer() {
+			super.resetBuffer();
+			if (this.content != null) {
+				this.content.reset();
+			}
+		}
+
+		public void reset() {
+			super.reset();
+			if (this.content != null) {
+				this.content.reset();
+			}
+			this.headers.clear();
+			this.status = HttpServletResponse.SC_OK;
+			this.contentType = null;
+			this.contentLength = -1;
+		}
+
+		/**
+		 * Return whether the captured page may be cached: status 200,
+		 * no error or redirect, no cookies, body fully buffered.
+		 */
+		public boolean isCacheable() {
+			flushWriter();
+			return (this.cacheable && this.content != null && this.status == HttpServletResponse.SC_OK);
+		}
+
+		/**
+		 * Determine the time to live for the captured page, taking a
+		 * Cache-Control header into account.
+		 * @param defaultTimeToLive the filter's default time to live in seconds
+		 * @return the time to live in seconds, or 0 if the page must not be cached
+		 */
+		public int getPageTimeToLive(int defaultTimeToLive) {
+			Object cacheControl = getRecordedHeader(HEADER_CACHE_CONTROL);
+			if (!(cacheControl instanceof String)) {
+				return defaultTimeToLive;
+			}
+			String[] directives = StringUtils.commaDelimitedListToStringArray((String) cacheControl);
+			int timeToLive = defaultTimeToLive;
+			for (int i = 0; i < directives.length; i++) {
+				String directive = directives[i].trim().toLowerCase();
+				if (directive.equals("no-store") || directive.equals("no-cache") || directive.equals("private")) {
+					return 0;
+				}
+				if (directive.startsWith("max-age=")) {
+					try {
+						timeToLive = Math.min(timeToLive, Integer.parseInt(directive.substring(8)));
+					}
+					catch (NumberFormatException ex) {
+						// Ignore invalid max-age directive.
+					}
+				}
+			}
+			return timeToLive;
+		}
+
+		public CachedPage createPage(boolean offHeap) {
+			flushWriter();
+			Object lastModified = getRecordedHeader(HEADER_LAST_MODIFIED);
+			long lastModifiedTime = (lastModified instanceof Long ?
+					((Long) lastModified).longValue() : System.currentTimeMillis());
+			return new CachedPage(this.status, this.contentType, new ArrayList(this.headers),
+					this.content.toByteArray(), offHeap, lastModifiedTime);
+		}
+
+		/**
+		 * Complete the response without caching it: Write the body
+		 * buffered so far, if any, to the target response.
+		 */
+		public void finishResponse() throws IOException {
+			flushWriter();
+			if (this.content != null && this.content.size() > 0) {
+				this.contentLength = this.content.size();
+				passThrough();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.web.multipart;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Interface for a single part of a multipart request that is read
+ * sequentially from the request stream, as exposed by the
+ * MultipartPartIterator of a StreamingMultipartHttpServletRequest.
+ *
+ * <p>In contrast to a MultipartFile, the content of a file part is not
+ * stored anywhere before the handler sees it: it can be consumed only once,
+ * and only until the next part has been requested from the part iterator.
+ * Form field parts are small and therefore kept in memory, so their
+ * content remains accessible.
+ *
+ * @since 1.2.1
+ * @see MultipartPartIterator
+ */
+public interface MultipartPart {
+
+	/**
+	 * Return the name of the parameter in the multipart form.
+	 */
+	String getName();
+
+	/**
+	 * Return whether this part is a simple form field rather than a file.
+	 */
+	boolean isFormField();
+
+	/**
+	 * Return the original filename in the client's filesystem,
+	 * stripped of any path information.
+	 * @return the original filename, or null for a form field
+	 */
+	String getOriginalFilename();
+
+	/**
+	 * Return the content type of the part.
+	 * @return the content type, or null if not defined
+	 */
+	String getContentType();
+
+	/**
+	 * Return the value of the given part header.
+	 * @param name the name of the header (case-insensitive)
+	 * @return the header value, or null if none
+	 */
+	String getHeader(String name);
+
+	/**
+	 * Return an InputStream to read the content of the part from.
+	 * The stream ends at the end of the part; it does not need to be closed.
+	 * Exceeding the maximum part size will result in an IOException on read.
+	 * @throws IOException in case of access errors
+	 * @throws IllegalStateException if the content has already been consumed
+	 */
+	InputStream getInputStream() throws IOException, IllegalStateException;
+
+	/**
+	 * Transfer the content of the part to the given channel.
+	 * @param channel the channel to write to
+	 * @return the number of bytes transferred
+	 * @throws IOException in case of reading or writing errors
+	 * @throws MaxUploadSizeExceededException if the part exceeds the maximum size
+	 * @throws IllegalStateException if the content has already been consumed
+	 */
+	long transferTo(WritableByteChannel channel)
+			throws IOException, MaxUploadSizeExceededException, IllegalStateException;
+
+	/**
+	 * Transfer the content of the part to the given destination file.
+	 * If the destination file already exists, it will be overwritten.
+	 * @param dest the destination file
+	 * @return the number of bytes transferred
+	 * @throws IOException in case of reading or writing errors
+	 * @throws MaxUploadSizeExceededException if the part exceeds the maximum size
+	 * @throws IllegalStateException if the content has already been consumed
+	 */
+	long transferTo(File dest) throws IOException, MaxUploadSizeExceededException, IllegalStateException;
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.web.multipart;
+
+/**
+ * Iterator over the parts of a multipart request, reading each part
+ * from the request stream on demand.
+ *
+ * <p>Analogous to <code>java.util.Iterator</code>, but able to throw
+ * MultipartException when the request body cannot be read or parsed.
+ *
+ * @since 1.2.1
+ * @see StreamingMultipartHttpServletRequest#getPartIterator
+ */
+public interface MultipartPartIterator {
+
+	/**
+	 * Return whether the request contains another part. This will skip
+	 * any unread content of the current part, making it unavailable.
+	 * @throws MultipartException if the request body could not be parsed,
+	 * or if implementation-specific limits are exceeded
+	 */
+	boolean hasNext() throws MultipartException;
+
+	/**
+	 * Return the next part of the request.
+	 * @throws MultipartException if the request body could not be parsed,
+	 * or if implementation-specific limits are exceeded
+	 * @throws java.util.NoSuchElementException if there are no more parts
+	 */
+	MultipartPart next() throws MultipartException;
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.web.multipart;
+
+/**
+ * Extension of the MultipartHttpServletRequest interface for requests whose
+ * parts are read on demand by the handler rather than upfront by the
+ * MultipartResolver, allowing to process large uploads while they are being
+ * received instead of storing them in a temporary location first.
+ *
+ * <p>As the parts are not known before they have been read, such a request
+ * does not expose any MultipartFiles. Its parameters are the query parameters
+ * plus the form fields that have been read through the part iterator so far:
+ * A form that wants its fields available while processing a file should thus
+ * define the fields before the file input.
+ *
+ * @since 1.2.1
+ * @see MultipartPartIterator
+ * @see MultipartPart
+ */
+public interface StreamingMultipartHttpServletRequest extends MultipartHttpServletRequest {
+
+	/**
+	 * Return an iterator over the parts of this request, in the order
+	 * in which they appear in the request body.
+	 * <p>Each part needs to be processed before moving on to the next one;
+	 * unread content of the previous part will be skipped.
+	 * @return the part iterator
+	 * @throws IllegalStateException if the iterator has already been obtained
+	 */
+	MultipartPartIterator getPartIterator() throws IllegalStateException;
+
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.web.multipart.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+import org.springframework.web.multipart.MultipartException;
+import org.springframework.web.multipart.MultipartPart;
+import org.springframework.web.multipart.MultipartPartIterator;
+import org.springframework.web.multipart.StreamingMultipartHttpServletRequest;
+import org.springframework.web.multipart.support.AbstractMultipartHttpServletRequest;
+
+/**
+ * StreamingMultipartHttpServletRequest implementation for
+ * StreamingMultipartResolver. Reads the parts of the request
+ * from the underlying MultipartStream on demand.
+ * @since 1.2.1
+ * @see StreamingMultipartResolver#setStreamParts
+ */
+public class DefaultStreamingMultipartHttpServletRequest extends AbstractMultipartHttpServletRequest
+		implements StreamingMultipartHttpServletRequest {
+
+	private final StreamingMultipartResolver resolver;
+
+	private final MultipartStream stream;
+
+	private final String encoding;
+
+	private final Map parameters;
+
+	private MultipartPartIterator partIterator;
+
+	private ByteBuffer transferBuffer;
+
+
+	/**
+	 * Wrap the given HttpServletRequest in a StreamingMultipartHttpServletRequest.
+	 * @param request the servlet request to wrap
+	 * @param resolver the resolver that created this request
+	 * @param stream the stream to read the parts from
+	 * @param encoding the encoding to use for form fields
+	 * @param parameters a map of the query parameters, to be extended with form fields
+	 */
+	DefaultStreamingMultipartHttpServletRequest(HttpServletRequest request, StreamingMultipartResolver resolver,
+			MultipartStream stream, String encoding, Map parameters) {
+
+		super(request);
+		setMultipartFiles(Collections.EMPTY_MAP);
+		this.resolver = resolver;
+		this.stream = stream;
+		this.encoding = encoding;
+		this.parameters = parameters;
+	}
+
+
+	public MultipartPartIterator getPartIterator() {
+		if (this.partIterator != null) {
+			throw new IllegalStateException("Part iterator has already been obtained for this request");
+		}
+		this.partIterator = new PartIterator();
+		return this.partIterator;
+	}
+
+	public Enumeration getParameterNames() {
+		return Collections.enumeration(this.parameters.keySet());
+	}
+
+	public String getParameter(String name) {
+		String[] values = (String[]) this.parameters.get(name);
+		return (values != null && values.length > 0 ? values[0] : null);
+	}
+
+	public String[] getParameterValues(String name) {
+		return (String[]) this.parameters.get(name);
+	}
+
+	public Map getParameterMap() {
+		return Collections.unmodifiableMap(this.parameters);
+	}
+
+	/**
+	 * Release the resources held by this request.
+	 * @see StreamingMultipartResolver#cleanupMultipart
+	 */
+	void cleanup() {
+		if (this.transferBuffer != null) {
+			this.resolver.releaseTransferBuffer(this.transferBuffer);
+			this.transferBuffer = null;
+		}
+	}
+
+	private ByteBuffer getTransferBuffer() {
+		if (this.transferBuffer == null) {
+			this.transferBuffer = this.resolver.obtainTransferBuffer();
+		}
+		return this.transferBuffer;
+	}
+
+	/**
+	 * Read the next part with a name from the stream. Form fields are read
+	 * into memory and exposed as request parameters.
+	 */
+	private StreamingPart readNextPart() throws IOException {
+		Map headers = null;
+		while ((headers = this.stream.nextPart()) != null) {
+			String disposition = (String) headers.get("content-disposition");
+			String name = MultipartStream.getHeaderParameter(disposition, "name");
+			if (name != null) {
+				String filename = MultipartStream.getHeaderParameter(disposition, "filename");
+				if (filename == null) {
+					byte[] content = this.resolver.readPart(this.stream);
+					this.resolver.addParameter(
+							this.parameters, name, this.resolver.decodeFormField(content, name, this.encoding));
+					return new StreamingPart(headers, name, null, content);
+				}
+				return new StreamingPart(headers, name, this.resolver.stripPath(filename), null);
+			}
+		}
+		return null;
+	}
+
+
+	/**
+	 * Iterator over the parts of this request.
+	 */
+	private class PartIterator implements MultipartPartIterator {
+
+		private StreamingPart current;
+
+		private StreamingPart next;
+
+		private boolean finished;
+
+		public boolean hasNext() throws MultipartException {
+			if (this.next == null && !this.finished) {
+				if (this.current != null) {
+					this.current.available = false;
+				}
+				try {
+					this.next = readNextPart();
+				}
+				catch (MultipartStream.SizeLimitExceededException ex) {
+					throw new MaxUploadSizeExceededException(ex.getLimit(), ex);
+				}
+				catch (IOException ex) {
+					throw new MultipartException("Could not parse multipart request", ex);
+				}
+				this.finished = (this.next == null);
+			}
+			return (this.next != null);
+		}
+
+		public MultipartPart next() throws MultipartException {
+			if (!hasNext()) {
+				throw new NoSuchElementException("No more parts in multipart request");
+			}
+			this.current = this.next;
+			this.next = null;
+			return this.current;
+		}
+	}
+
+
+	/**
+	 * MultipartPart implementation that reads file content from the stream,
+	 * as long as it is the current part of the iteration.
+	 */
+	private class StreamingPart implements MultipartPart {
+
+		private final Map headers;
+
+		private final String name;
+
+		private final String originalFilename;
+
+		private final byte[] content;
+
+		private boolean available = true;
+
+		private boolean consumed = false;
+
+		public StreamingPart(Map headers, String name, String originalFilename, byte[] content) {
+			this.headers = headers;
+			this.name = name;
+			this.originalFilename = originalFilename;
+			this.content = content;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public boolean isFormField() {
+			return (this.originalFilename == null);
+		}
+
+		public String getOriginalFilename() {
+			return originalFilename;
+		}
+
+		public String getContentType() {
+			return getHeader("Content-Type");
+		}
+
+		public String getHeader(String name) {
+			return (String) this.headers.get(name.toLowerCase());
+		}
+
+		public InputStream getInputStream() throws IOException {
+			if (this.content != null) {
+				return new ByteArrayInputStream(this.content);
+			}
+			checkContent();
+			this.consumed = true;
+			return new PartInputStream(this);
+		}
+
+		public long transferTo(WritableByteChannel channel) throws IOException, MaxUploadSizeExceededException {
+			if (this.content != null) {
+				ByteBuffer buffer = ByteBuffer.wrap(this.content);
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+				return this.content.length;
+			}
+			checkContent();
+			this.consumed = true;
+			try {
+				return stream.transferTo(channel, getTransferBuffer());
+			}
+			catch (MultipartStream.SizeLimitExceededException ex) {
+				throw new MaxUploadSizeExceededException(ex.getLimit(), ex);
+			}
+		}
+
+		public long transferTo(File dest) throws IOException, MaxUploadSizeExceededException {
+			FileOutputStream out = new FileOutputStream(dest);
+			try {
+				return transferTo(out.getChannel());
+			}
+			finally {
+				out.close();
+			}
+		}
+
+		private void checkContent() {
+			if (!this.available) {
+				throw new IllegalStateException(
+						"Part '" + this.name + "' is not available anymore: iteration has moved on");
+			}
+			if (this.consumed) {
+				throw new IllegalStateException("Content of part '" + this.name + "' has already been consumed");
+			}
+		}
+	}
+
+
+	/**
+	 * InputStream that reads the content of the given part from the stream.
+	 */
+	private class PartInputStream extends InputStream {
+
+		private final StreamingPart part;
+
+		private final byte[] single = new byte[1];
+
+		public PartInputStream(StreamingPart part) {
+			this.part = part;
+		}
+
+		public int read() throws IOException {
+			int count = read(this.single, 0, 1);
+			return (count == -1 ? -1 : this.single[0] & 0xFF);
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (!this.part.available) {
+				throw new IOException("Part '" + this.part.name + "' is not available anymore: iteration has moved on");
+			}
+			return stream.read(b, off, len);
+		}
+	}
+
+}
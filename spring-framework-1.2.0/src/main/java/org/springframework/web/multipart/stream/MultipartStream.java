@@ -0,0 +1,411 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.web.multipart.stream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * Low-level parser for a multipart request body, reading one part after
+ * the other from the underlying InputStream through a fixed-size buffer.
+ * Part content is handed out as soon as it is known not to belong to the
+ * next boundary, so no part is ever held in memory as a whole.
+ *
+ * <p>Enforces the maximum size of the entire body and of each part while
+ * reading, throwing a SizeLimitExceededException as soon as a limit is hit.
+ *
+ * @since 1.2.1
+ * @see StreamingMultipartResolver
+ */
+class MultipartStream {
+
+	private static final byte CR = 0x0D;
+
+	private static final byte LF = 0x0A;
+
+	private static final byte DASH = 0x2D;
+
+	/** Maximum size of the header block of a single part */
+	private static final int HEADER_SIZE_MAX = 10240;
+
+
+	private final InputStream input;
+
+	private final String headerEncoding;
+
+	private final long maxUploadSize;
+
+	private final long maxPartSize;
+
+	/** Boundary of the parts, including the preceding line break */
+	private final byte[] delimiter;
+
+	private final byte[] buffer;
+
+	private int head;
+
+	private int tail;
+
+	/** End of the data in the buffer that is known to belong to the current part */
+	private int dataEnd;
+
+	/** Whether the delimiter has been found at dataEnd */
+	private boolean delimiterFound;
+
+	/** Whether we are positioned within the data of a part (or the preamble) */
+	private boolean inPart;
+
+	private boolean finished;
+
+	private long totalSize;
+
+	private long partSize;
+
+
+	/**
+	 * Create a new MultipartStream.
+	 * @param input the request body to read from
+	 * @param boundary the boundary of the parts, as specified in the content type
+	 * @param headerEncoding the encoding to use for decoding part headers
+	 * @param bufferSize the size of the read buffer
+	 * @param maxUploadSize the maximum size of the request body (-1 for none)
+	 * @param maxPartSize the maximum size of a single part (-1 for none)
+	 */
+	public MultipartStream(InputStream input, byte[] boundary, String headerEncoding,
+			int bufferSize, long maxUploadSize, long maxPartSize) {
+
+		this.input = input;
+		this.headerEncoding = headerEncoding;
+		this.maxUploadSize = maxUploadSize;
+		this.maxPartSize = maxPartSize;
+		this.delimiter = new byte[boundary.length + 4];
+		this.delimiter[0] = CR;
+		this.delimiter[1] = LF;
+		this.delimiter[2] = DASH;
+		this.delimiter[3] = DASH;
+		System.arraycopy(boundary, 0, this.delimiter, 4, boundary.length);
+		this.buffer = new byte[Math.max(bufferSize, this.delimiter.length * 2)];
+		// The first boundary does not need to be preceded by a line break:
+		// pretend that it is, so that the preamble can be skipped like part data.
+		this.buffer[0] = CR;
+		this.buffer[1] = LF;
+		this.tail = 2;
+		this.inPart = true;
+	}
+
+
+	/**
+	 * Move on to the next part, skipping any unread data of the current part.
+	 * @return the headers of the next part, with lower-case header names as keys
+	 * and header values as values, or null if there are no more parts
+	 * @throws IOException if the body could not be read or is malformed
+	 */
+	public Map nextPart() throws IOException {
+		if (this.finished) {
+			return null;
+		}
+		if (this.inPart) {
+			int count;
+			while ((count = available()) > 0) {
+				this.head += count;
+			}
+			this.head += this.delimiter.length;
+			this.inPart = false;
+		}
+		ensure(2);
+		if (this.buffer[this.head] == DASH && this.buffer[this.head + 1] == DASH) {
+			this.finished = true;
+			return null;
+		}
+		// Skip transport padding up to the line break that ends the boundary.
+		byte b;
+		while ((b = readByte()) != CR) {
+			if (b != ' ' && b != '\t') {
+				throw new IOException("Malformed multipart boundary");
+			}
+		}
+		if (readByte() != LF) {
+			throw new IOException("Malformed multipart boundary");
+		}
+		Map headers = readHeaders();
+		this.inPart = true;
+		this.dataEnd = this.head;
+		this.delimiterFound = false;
+		this.partSize = 0;
+		return headers;
+	}
+
+	/**
+	 * Read the header block of a part, up to and including the empty line.
+	 */
+	private Map readHeaders() throws IOException {
+		ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+		// The line break of the boundary line counts towards the separator,
+		// to detect an empty header block.
+		int matched = 2;
+		while (matched < 4) {
+			byte b = readByte();
+			if (b == (matched % 2 == 0 ? CR : LF)) {
+				matched++;
+			}
+			else {
+				matched = (b == CR ? 1 : 0);
+			}
+			if (headerBytes.size() == HEADER_SIZE_MAX) {
+				throw new IOException("Header block of multipart part exceeds maximum size of " +
+						HEADER_SIZE_MAX + " bytes");
+			}
+			headerBytes.write(b);
+		}
+
+		String headerBlock = (this.headerEncoding != null ?
+				headerBytes.toString(this.headerEncoding) : headerBytes.toString());
+		Map headers = new HashMap();
+		String lastName = null;
+		String[] lines = StringUtils.delimitedListToStringArray(headerBlock, "\r\n");
+		for (int i = 0; i < lines.length; i++) {
+			String line = lines[i];
+			if (line.length() == 0) {
+				continue;
+			}
+			if ((line.charAt(0) == ' ' || line.charAt(0) == '\t') && lastName != null) {
+				// folded continuation of the previous header
+				headers.put(lastName, headers.get(lastName) + " " + line.trim());
+			}
+			else {
+				int colon = line.indexOf(':');
+				if (colon != -1) {
+					lastName = line.substring(0, colon).trim().toLowerCase();
+					headers.put(lastName, line.substring(colon + 1).trim());
+				}
+			}
+		}
+		return headers;
+	}
+
+	/**
+	 * Read data of the current part into the given array.
+	 * @return the number of bytes read, or -1 at the end of the part
+	 * @throws IOException if the body could not be read or is malformed
+	 * @throws SizeLimitExceededException if the part exceeds the maximum size
+	 */
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (!this.inPart) {
+			return -1;
+		}
+		int count = Math.min(available(), len);
+		if (count == 0) {
+			return (len == 0 ? 0 : -1);
+		}
+		checkPartSize(count);
+		System.arraycopy(this.buffer, this.head, b, off, count);
+		this.head += count;
+		return count;
+	}
+
+	/**
+	 * Transfer the remaining data of the current part to the given channel.
+	 * <p>Data is gathered in the given buffer, which should be a direct buffer,
+	 * so that the channel receives full buffers that do not need to be copied
+	 * again before being handed to the operating system.
+	 * @param channel the channel to write to
+	 * @param transferBuffer the buffer to use for the transfer
+	 * @return the number of bytes transferred
+	 * @throws IOException if the body could not be read or is malformed,
+	 * or if writing to the channel failed
+	 * @throws SizeLimitExceededException if the part exceeds the maximum size
+	 */
+	public long transferTo(WritableByteChannel channel, ByteBuffer transferBuffer) throws IOException {
+		if (!this.inPart) {
+			return 0;
+		}
+		long total = 0;
+		transferBuffer.clear();
+		int count;
+		while ((count = available()) > 0) {
+			count = Math.min(count, transferBuffer.remaining());
+			checkPartSize(count);
+			transferBuffer.put(this.buffer, this.head, count);
+			this.head += count;
+			total += count;
+			if (!transferBuffer.hasRemaining()) {
+				write(channel, transferBuffer);
+			}
+		}
+		write(channel, transferBuffer);
+		return total;
+	}
+
+	private void write(WritableByteChannel channel, ByteBuffer transferBuffer) throws IOException {
+		transferBuffer.flip();
+		while (transferBuffer.hasRemaining()) {
+			channel.write(transferBuffer);
+		}
+		transferBuffer.clear();
+	}
+
+	private void checkPartSize(int count) throws SizeLimitExceededException {
+		this.partSize += count;
+		if (this.maxPartSize >= 0 && this.partSize > this.maxPartSize) {
+			throw new SizeLimitExceededException(
+					"Maximum part size of " + this.maxPartSize + " bytes exceeded", this.maxPartSize);
+		}
+	}
+
+	/**
+	 * Determine the number of bytes at the head of the buffer that belong to
+	 * the current part, reading from the input if necessary.
+	 * @return the number of bytes available, or 0 at the end of the part
+	 */
+	private int available() throws IOException {
+		while (true) {
+			if (this.head < this.dataEnd) {
+				return (this.dataEnd - this.head);
+			}
+			if (this.delimiterFound) {
+				return 0;
+			}
+			int pos = indexOfDelimiter();
+			if (pos != -1) {
+				this.dataEnd = pos;
+				this.delimiterFound = true;
+			}
+			else {
+				// The tail of the buffer might be the start of the delimiter.
+				this.dataEnd = Math.max(this.head, this.tail - this.delimiter.length + 1);
+				if (this.dataEnd == this.head && !fill()) {
+					throw new IOException("Unexpected end of multipart request body");
+				}
+			}
+		}
+	}
+
+	private int indexOfDelimiter() {
+		int last = this.tail - this.delimiter.length;
+		for (int i = this.head; i <= last; i++) {
+			if (this.buffer[i] == CR) {
+				int j = 1;
+				while (j < this.delimiter.length && this.buffer[i + j] == this.delimiter[j]) {
+					j++;
+				}
+				if (j == this.delimiter.length) {
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+
+	private byte readByte() throws IOException {
+		ensure(1);
+		return this.buffer[this.head++];
+	}
+
+	private void ensure(int count) throws IOException {
+		while (this.tail - this.head < count) {
+			if (!fill()) {
+				throw new IOException("Unexpected end of multipart request body");
+			}
+		}
+	}
+
+	/**
+	 * Move the unread data to the start of the buffer and read more input.
+	 * @return false if the end of the input has been reached
+	 */
+	private boolean fill() throws IOException {
+		if (this.head > 0) {
+			System.arraycopy(this.buffer, this.head, this.buffer, 0, this.tail - this.head);
+			this.tail -= this.head;
+			this.head = 0;
+			this.dataEnd = 0;
+		}
+		int count = this.input.read(this.buffer, this.tail, this.buffer.length - this.tail);
+		if (count == -1) {
+			return false;
+		}
+		this.tail += count;
+		this.totalSize += count;
+		if (this.maxUploadSize >= 0 && this.totalSize > this.maxUploadSize) {
+			throw new SizeLimitExceededException(
+					"Maximum upload size of " + this.maxUploadSize + " bytes exceeded", this.maxUploadSize);
+		}
+		return true;
+	}
+
+
+	/**
+	 * Extract the value of the given parameter from a header value like
+	 * <code>form-data; name="file"; filename="a.txt"</code>.
+	 * @param header the header value
+	 * @param name the name of the parameter (case-insensitive)
+	 * @return the unquoted parameter value, or null if not found
+	 */
+	public static String getHeaderParameter(String header, String name) {
+		if (header == null) {
+			return null;
+		}
+		boolean quoted = false;
+		int start = 0;
+		for (int i = 0; i <= header.length(); i++) {
+			char c = (i < header.length() ? header.charAt(i) : ';');
+			if (c == '"') {
+				quoted = !quoted;
+			}
+			else if (c == ';' && !quoted) {
+				String segment = header.substring(start, i);
+				start = i + 1;
+				int eq = segment.indexOf('=');
+				if (eq != -1 && segment.substring(0, eq).trim().equalsIgnoreCase(name)) {
+					String value = segment.substring(eq + 1).trim();
+					if (value.length() >= 2 && value.charAt(0) == '"' && value.charAt(value.length() - 1) == '"') {
+						value = value.substring(1, value.length() - 1);
+					}
+					return value;
+				}
+			}
+		}
+		return null;
+	}
+
+
+	/**
+	 * IOException thrown when the request body or a part exceeds its maximum size.
+	 */
+	public static class SizeLimitExceededException extends IOException {
+
+		private final long limit;
+
+		public SizeLimitExceededException(String msg, long limit) {
+			super(msg);
+			this.limit = limit;
+		}
+
+		public long getLimit() {
+			return limit;
+		}
+	}
+
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.web.multipart.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.channels.FileChannel;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.util.FileCopyUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+/**
+ * MultipartFile implementation for StreamingMultipartResolver.
+ * Holds the content either in memory or in a temporary file
+ * that has been written while reading the request.
+ * @since 1.2.1
+ * @see StreamingMultipartResolver
+ */
+public class StreamingMultipartFile implements MultipartFile, Serializable {
+
+	protected static final Log logger = LogFactory.getLog(StreamingMultipartFile.class);
+
+	private final String name;
+
+	private final String originalFilename;
+
+	private final String contentType;
+
+	private final byte[] content;
+
+	private final File storeLocation;
+
+	private final long size;
+
+
+	/**
+	 * Create a new StreamingMultipartFile for content held in memory.
+	 * @param name the name of the parameter in the multipart form
+	 * @param originalFilename the original filename (without path)
+	 * @param contentType the content type of the file (may be null)
+	 * @param content the content of the file
+	 */
+	protected StreamingMultipartFile(String name, String originalFilename, String contentType, byte[] content) {
+		this.name = name;
+		this.originalFilename = originalFilename;
+		this.contentType = contentType;
+		this.content = content;
+		this.storeLocation = null;
+		this.size = content.length;
+	}
+
+	/**
+	 * Create a new StreamingMultipartFile for content stored in a temporary file.
+	 * @param name the name of the parameter in the multipart form
+	 * @param originalFilename the original filename (without path)
+	 * @param contentType the content type of the file (may be null)
+	 * @param storeLocation the temporary file that holds the content
+	 * @param size the size of the content
+	 */
+	protected StreamingMultipartFile(
+			String name, String originalFilename, String contentType, File storeLocation, long size) {
+
+		this.name = name;
+		this.originalFilename = originalFilename;
+		this.contentType = contentType;
+		this.content = null;
+		this.storeLocation = storeLocation;
+		this.size = size;
+	}
+
+
+	public String getName() {
+		return name;
+	}
+
+	public boolean isEmpty() {
+		return (this.size == 0);
+	}
+
+	public String getOriginalFilename() {
+		return originalFilename;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Return whether the content is held in memory.
+	 */
+	public boolean isInMemory() {
+		return (this.content != null);
+	}
+
+	/**
+	 * Return the temporary file that holds the content,
+	 * or null if the content is held in memory.
+	 */
+	public File getStoreLocation() {
+		return storeLocation;
+	}
+
+	public byte[] getBytes() throws IOException {
+		if (this.content != null) {
+			return this.content;
+		}
+		return FileCopyUtils.copyToByteArray(getInputStream());
+	}
+
+	public InputStream getInputStream() throws IOException {
+		if (this.content != null) {
+			return new ByteArrayInputStream(this.content);
+		}
+		if (!isAvailable()) {
+			throw new IllegalStateException("File has been moved - cannot be read again");
+		}
+		return new FileInputStream(this.storeLocation);
+	}
+
+	public void transferTo(File dest) throws IOException, IllegalStateException {
+		if (!isAvailable()) {
+			throw new IllegalStateException("File has already been moved - cannot be transferred again");
+		}
+
+		if (dest.exists() && !dest.delete()) {
+			throw new IOException(
+					"Destination file [" + dest.getAbsolutePath() + "] already exists and could not be deleted");
+		}
+
+		String action = "transferred";
+		if (this.content != null) {
+			FileCopyUtils.copy(this.content, dest);
+		}
+		else if (this.storeLocation.renameTo(dest)) {
+			action = "moved";
+		}
+		else {
+			FileChannel in = new FileInputStream(this.storeLocation).getChannel();
+			try {
+				FileChannel out = new FileOutputStream(dest).getChannel();
+				try {
+					long position = 0;
+					while (position < this.size) {
+						position += in.transferTo(position, this.size - position, out);
+					}
+				}
+				finally {
+					out.close();
+				}
+			}
+			finally {
+				in.close();
+			}
+			action = "copied";
+		}
+
+		if (logger.isDebugEnabled()) {
+			logger.debug("Multipart file '" + getName() + "' with original filename [" +
+					getOriginalFilename() + "], stored " + getStorageDescription() + ": " +
+					action + " to [" + dest.getAbsolutePath() + "]");
+		}
+	}
+
+	/**
+	 * Determine whether the multipart content is still available.
+	 * If a temporary file has been moved, the content is no longer available.
+	 */
+	protected boolean isAvailable() {
+		return (this.content != null || this.storeLocation.exists());
+	}
+
+	/**
+	 * Delete the temporary file that holds the content, if any.
+	 */
+	protected void delete() {
+		if (this.storeLocation != null && this.storeLocation.exists() && !this.storeLocation.delete()) {
+			logger.warn("Could not delete temporary multipart file [" + this.storeLocation.getAbsolutePath() + "]");
+		}
+	}
+
+	/**
+	 * Return a description for the storage location of the multipart content.
+	 * Tries to be as specific as possible: mentions the file location in case
+	 * of a temporary file.
+	 */
+	protected String getStorageDescription() {
+		if (this.content != null) {
+			return "in memory";
+		}
+		else {
+			return "at [" + this.storeLocation.getAbsolutePath() + "]";
+		}
+	}
+
+}
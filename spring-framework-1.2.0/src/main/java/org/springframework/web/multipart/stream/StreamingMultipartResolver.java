@@ -0,0 +1,487 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.web.multipart.stream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.core.io.Resource;
+import org.springframework.util.StringUtils;
+import org.springframework.web.context.ServletContextAware;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+import org.springframework.web.multipart.MultipartException;
+import org.springframework.web.multipart.MultipartHttpServletRequest;
+import org.springframework.web.multipart.MultipartResolver;
+import org.springframework.web.multipart.support.DefaultMultipartHttpServletRequest;
+import org.springframework.web.util.WebUtils;
+
+/**
+ * MultipartResolver implementation that parses the request body itself,
+ * without any third-party library, streaming each part to its destination
+ * while it is being received.
+ *
+ * <p>By default, behaves like the other MultipartResolvers, parsing the
+ * entire request upfront: Form fields and small files are kept in memory,
+ * while larger files are written straight to a temporary file through
+ * an NIO channel, without ever being held in memory as a whole.
+ *
+ * <p>Alternatively, the "streamParts" flag can be switched on, to leave
+ * reading the parts to the handler: The request will then be exposed as
+ * StreamingMultipartHttpServletRequest, offering an iterator over the parts
+ * that reads each part from the request body on demand. This allows
+ * handlers to store large uploads wherever they need to go, without any
+ * temporary storage in between.
+ *
+ * <p>Provides maxUploadSize and maxPartSize settings, both enforced while
+ * reading rather than after parsing. Needs to be initialized <i>either</i>
+ * by an application context <i>or</i> via the constructor that takes a
+ * ServletContext (for standalone usage) to use the servlet container's
+ * temporary directory.
+ *
+ * @since 1.2.1
+ * @see #setStreamParts
+ * @see StreamingMultipartFile
+ * @see org.springframework.web.multipart.StreamingMultipartHttpServletRequest
+ */
+public class StreamingMultipartResolver implements MultipartResolver, ServletContextAware {
+
+	/** Default size of the read and transfer buffers */
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	/** Default maximum size of files held in memory */
+	public static final int DEFAULT_MAX_IN_MEMORY_SIZE = 10240;
+
+	/** Maximum number of pooled transfer buffers */
+	private static final int MAX_POOLED_BUFFERS = 32;
+
+
+	protected final Log logger = LogFactory.getLog(getClass());
+
+	private long maxUploadSize = -1;
+
+	private long maxPartSize = -1;
+
+	private int maxInMemorySize = DEFAULT_MAX_IN_MEMORY_SIZE;
+
+	private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+	private String defaultEncoding = WebUtils.DEFAULT_CHARACTER_ENCODING;
+
+	private boolean streamParts = false;
+
+	private File uploadTempDir;
+
+	private boolean uploadTempDirSpecified = false;
+
+	/** Pool of direct ByteBuffers, expensive to allocate for every request */
+	private final LinkedList transferBuffers = new LinkedList();
+
+
+	/**
+	 * Constructor for use as bean. Determines the servlet container's
+	 * temporary directory via the ServletContext passed in as through the
+	 * ServletContextAware interface (typically by a WebApplicationContext).
+	 * @see #setServletContext
+	 */
+	public StreamingMultipartResolver() {
+	}
+
+	/**
+	 * Constructor for standalone usage. Determines the servlet container's
+	 * temporary directory via the given ServletContext.
+	 * @param servletContext the ServletContext to use
+	 */
+	public StreamingMultipartResolver(ServletContext servletContext) {
+		setServletContext(servletContext);
+	}
+
+	/**
+	 * Set the maximum allowed size (in bytes) of the request body before uploads
+	 * are refused. -1 indicates no limit (the default).
+	 * <p>Checked against the content length of the request upfront,
+	 * and against the number of bytes actually received while reading.
+	 */
+	public void setMaxUploadSize(long maxUploadSize) {
+		this.maxUploadSize = maxUploadSize;
+	}
+
+	/**
+	 * Set the maximum allowed size (in bytes) of a single part, be it a file
+	 * or a form field. -1 indicates no limit (the default).
+	 * <p>Enforced while reading the part, throwing MaxUploadSizeExceededException
+	 * as soon as the limit is exceeded, without receiving the rest of the part.
+	 */
+	public void setMaxPartSize(long maxPartSize) {
+		this.maxPartSize = maxPartSize;
+	}
+
+	/**
+	 * Set the maximum allowed size (in bytes) of files that are kept in memory.
+	 * Larger files will be written to a temporary file. Default is 10240.
+	 * <p>Not applicable if parts are streamed to the handler.
+	 * @see #setStreamParts
+	 */
+	public void setMaxInMemorySize(int maxInMemorySize) {
+		this.maxInMemorySize = maxInMemorySize;
+	}
+
+	/**
+	 * Set the size of the buffers used to read the request body and to
+	 * transfer part content to channels. Default is 8192.
+	 */
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Set the default character encoding to use for parsing requests,
+	 * to be applied to headers of individual parts and to form fields.
+	 * Default is ISO-8859-1, according to the Servlet spec.
+	 * <p>If the request specifies a character encoding itself, the request
+	 * encoding will override this setting.
+	 * @see #determineEncoding
+	 * @see WebUtils#DEFAULT_CHARACTER_ENCODING
+	 */
+	public void setDefaultEncoding(String defaultEncoding) {
+		this.defaultEncoding = defaultEncoding;
+	}
+
+	/**
+	 * Set whether to leave reading the parts of multipart requests to the handler,
+	 * exposing each request as StreamingMultipartHttpServletRequest.
+	 * <p>Default is false, parsing the entire request upfront. Switch this on
+	 * for applications that process uploads through the part iterator: Note that
+	 * MultipartFiles and data binding will not be available for such requests.
+	 * @see #isStreamParts
+	 * @see org.springframework.web.multipart.StreamingMultipartHttpServletRequest#getPartIterator
+	 */
+	public void setStreamParts(boolean streamParts) {
+		this.streamParts = streamParts;
+	}
+
+	/**
+	 * Set the temporary directory where uploaded files get stored.
+	 * Default is the servlet container's temporary directory for the web application.
+	 * @see WebUtils#TEMP_DIR_CONTEXT_ATTRIBUTE
+	 */
+	public void setUploadTempDir(Resource uploadTempDir) throws IOException {
+		if (!uploadTempDir.exists() && !uploadTempDir.getFile().mkdirs()) {
+			throw new IllegalArgumentException("Given uploadTempDir [" + uploadTempDir + "] could not be created");
+		}
+		this.uploadTempDir = uploadTempDir.getFile();
+		this.uploadTempDirSpecified = true;
+	}
+
+	/**
+	 * Return the temporary directory where uploaded files get stored.
+	 */
+	public File getUploadTempDir() {
+		return uploadTempDir;
+	}
+
+	public void setServletContext(ServletContext servletContext) {
+		if (!this.uploadTempDirSpecified) {
+			this.uploadTempDir = WebUtils.getTempDir(servletContext);
+		}
+	}
+
+
+	public boolean isMultipart(HttpServletRequest request) {
+		String contentType = request.getContentType();
+		return (contentType != null && contentType.toLowerCase().startsWith("multipart/"));
+	}
+
+	public MultipartHttpServletRequest resolveMultipart(HttpServletRequest request) throws MultipartException {
+		String boundary = MultipartStream.getHeaderParameter(request.getContentType(), "boundary");
+		if (boundary == null) {
+			throw new MultipartException(
+					"Could not find multipart boundary in content type [" + request.getContentType() + "]");
+		}
+		if (this.maxUploadSize >= 0 && request.getContentLength() > this.maxUploadSize) {
+			throw new MaxUploadSizeExceededException(this.maxUploadSize);
+		}
+		String enc = determineEncoding(request);
+
+		MultipartStream stream = null;
+		try {
+			stream = new MultipartStream(request.getInputStream(), boundary.getBytes("ISO-8859-1"), enc,
+					this.bufferSize, this.maxUploadSize, this.maxPartSize);
+		}
+		catch (IOException ex) {
+			throw new MultipartException("Could not read multipart request", ex);
+		}
+
+		// Pre-populate parameters Map with query parameters.
+		Map parameters = new HashMap();
+		Enumeration paramNames = request.getParameterNames();
+		while (paramNames.hasMoreElements()) {
+			String paramName = (String) paramNames.nextElement();
+			parameters.put(paramName, request.getParameterValues(paramName));
+		}
+
+		if (isStreamParts(request)) {
+			return new DefaultStreamingMultipartHttpServletRequest(request, this, stream, enc, parameters);
+		}
+		return parseRequest(request, stream, enc, parameters);
+	}
+
+	/**
+	 * Determine whether to leave reading the parts of the given request to the
+	 * handler. Can be overridden in subclasses, for example to only stream parts
+	 * for specific URLs.
+	 * <p>The default implementation returns the value of the "streamParts" flag.
+	 * @param request current HTTP request
+	 * @return whether to expose the request as StreamingMultipartHttpServletRequest
+	 * @see #setStreamParts
+	 */
+	protected boolean isStreamParts(HttpServletRequest request) {
+		return this.streamParts;
+	}
+
+	/**
+	 * Determine the encoding for the given request.
+	 * Can be overridden in subclasses.
+	 * <p>The default implementation checks the request encoding,
+	 * falling back to the default encoding specified for this resolver.
+	 * @param request current HTTP request
+	 * @return the encoding for the request (never null)
+	 * @see javax.servlet.ServletRequest#getCharacterEncoding
+	 * @see #setDefaultEncoding
+	 */
+	protected String determineEncoding(HttpServletRequest request) {
+		String enc = request.getCharacterEncoding();
+		if (enc == null) {
+			enc = this.defaultEncoding;
+		}
+		return enc;
+	}
+
+	/**
+	 * Parse the entire request, keeping form fields and small files in memory
+	 * and writing larger files to temporary files.
+	 */
+	private MultipartHttpServletRequest parseRequest(
+			HttpServletRequest request, MultipartStream stream, String enc, Map parameters)
+			throws MultipartException {
+
+		Map multipartFiles = new HashMap();
+		ByteBuffer transferBuffer = null;
+		try {
+			Map headers = null;
+			while ((headers = stream.nextPart()) != null) {
+				String disposition = (String) headers.get("content-disposition");
+				String name = MultipartStream.getHeaderParameter(disposition, "name");
+				if (name == null) {
+					continue;
+				}
+				String filename = MultipartStream.getHeaderParameter(disposition, "filename");
+				if (filename == null) {
+					// simple form field
+					addParameter(parameters, name, decodeFormField(readPart(stream), name, enc));
+				}
+				else {
+					// multipart file field
+					if (transferBuffer == null) {
+						transferBuffer = obtainTransferBuffer();
+					}
+					StreamingMultipartFile file = storeFile(stream, name, stripPath(filename),
+							(String) headers.get("content-type"), transferBuffer);
+					StreamingMultipartFile replaced = (StreamingMultipartFile) multipartFiles.put(name, file);
+					if (replaced != null) {
+						replaced.delete();
+					}
+					if (logger.isDebugEnabled()) {
+						logger.debug("Found multipart file [" + file.getName() + "] of size " + file.getSize() +
+								" bytes with original filename [" + file.getOriginalFilename() + "], stored " +
+								file.getStorageDescription());
+					}
+				}
+			}
+			return new DefaultMultipartHttpServletRequest(request, multipartFiles, parameters);
+		}
+		catch (MultipartStream.SizeLimitExceededException ex) {
+			deleteFiles(multipartFiles);
+			throw new MaxUploadSizeExceededException(ex.getLimit(), ex);
+		}
+		catch (IOException ex) {
+			deleteFiles(multipartFiles);
+			throw new MultipartException("Could not parse multipart request", ex);
+		}
+		finally {
+			if (transferBuffer != null) {
+				releaseTransferBuffer(transferBuffer);
+			}
+		}
+	}
+
+	/**
+	 * Store the current part as MultipartFile: in memory if it does not exceed
+	 * the maximum in-memory size, else in a temporary file.
+	 */
+	private StreamingMultipartFile storeFile(MultipartStream stream, String name, String filename,
+			String contentType, ByteBuffer transferBuffer) throws IOException {
+
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		byte[] chunk = new byte[Math.min(this.maxInMemorySize + 1, this.bufferSize)];
+		int count = 0;
+		while (content.size() <= this.maxInMemorySize && (count = stream.read(chunk, 0, chunk.length)) != -1) {
+			content.write(chunk, 0, count);
+		}
+		if (content.size() <= this.maxInMemorySize) {
+			return new StreamingMultipartFile(name, filename, contentType, content.toByteArray());
+		}
+
+		File storeLocation = File.createTempFile("upload_", ".tmp", this.uploadTempDir);
+		boolean stored = false;
+		try {
+			FileOutputStream out = new FileOutputStream(storeLocation);
+			try {
+				FileChannel channel = out.getChannel();
+				ByteBuffer head = ByteBuffer.wrap(content.toByteArray());
+				while (head.hasRemaining()) {
+					channel.write(head);
+				}
+				long size = content.size() + stream.transferTo(channel, transferBuffer);
+				stored = true;
+				return new StreamingMultipartFile(name, filename, contentType, storeLocation, size);
+			}
+			finally {
+				out.close();
+			}
+		}
+		finally {
+			if (!stored) {
+				storeLocation.delete();
+			}
+		}
+	}
+
+	private void deleteFiles(Map multipartFiles) {
+		for (Iterator it = multipartFiles.values().iterator(); it.hasNext();) {
+			((StreamingMultipartFile) it.next()).delete();
+		}
+	}
+
+	public void cleanupMultipart(MultipartHttpServletRequest request) {
+		if (request instanceof DefaultStreamingMultipartHttpServletRequest) {
+			((DefaultStreamingMultipartHttpServletRequest) request).cleanup();
+			return;
+		}
+		for (Iterator it = request.getFileMap().values().iterator(); it.hasNext();) {
+			StreamingMultipartFile file = (StreamingMultipartFile) it.next();
+			if (logger.isDebugEnabled()) {
+				logger.debug("Cleaning up multipart file [" + file.getName() + "] with original filename [" +
+						file.getOriginalFilename() + "], stored " + file.getStorageDescription());
+			}
+			file.delete();
+		}
+	}
+
+
+	/**
+	 * Read the entire content of the current part into a byte array.
+	 */
+	byte[] readPart(MultipartStream stream) throws IOException {
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		byte[] chunk = new byte[256];
+		int count;
+		while ((count = stream.read(chunk, 0, chunk.length)) != -1) {
+			content.write(chunk, 0, count);
+		}
+		return content.toByteArray();
+	}
+
+	/**
+	 * Decode the content of the given form field with the given encoding,
+	 * falling back to the platform default if the encoding is not supported.
+	 */
+	String decodeFormField(byte[] content, String fieldName, String enc) {
+		try {
+			return new String(content, enc);
+		}
+		catch (UnsupportedEncodingException ex) {
+			logger.warn("Could not decode multipart item '" + fieldName +
+					"' with encoding '" + enc + "': using platform default");
+			return new String(content);
+		}
+	}
+
+	/**
+	 * Add the given value to the String array for the given parameter.
+	 */
+	void addParameter(Map parameters, String name, String value) {
+		String[] curParam = (String[]) parameters.get(name);
+		if (curParam == null) {
+			// simple form field
+			parameters.put(name, new String[] {value});
+		}
+		else {
+			// array of simple form fields
+			parameters.put(name, StringUtils.addStringToArray(curParam, value));
+		}
+	}
+
+	/**
+	 * Strip any path information from the given original filename,
+	 * as sent by some browsers.
+	 */
+	String stripPath(String filename) {
+		int pos = Math.max(filename.lastIndexOf("/"), filename.lastIndexOf("\\"));
+		return (pos != -1 ? filename.substring(pos + 1) : filename);
+	}
+
+	/**
+	 * Obtain a direct buffer for transferring part content to channels.
+	 */
+	ByteBuffer obtainTransferBuffer() {
+		synchronized (this.transferBuffers) {
+			if (!this.transferBuffers.isEmpty()) {
+				return (ByteBuffer) this.transferBuffers.removeFirst();
+			}
+		}
+		return ByteBuffer.allocateDirect(this.bufferSize);
+	}
+
+	/**
+	 * Return the given transfer buffer to the pool.
+	 */
+	void releaseTransferBuffer(ByteBuffer transferBuffer) {
+		synchronized (this.transferBuffers) {
+			if (this.transferBuffers.size() < MAX_POOLED_BUFFERS && transferBuffer.capacity() == this.bufferSize) {
+				this.transferBuffers.addFirst(transferBuffer);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.web.servlet;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Extension of the HandlerMapping interface, to be implemented by mappings
+ * whose result for a request is determined by the request URI alone.
+ * DispatcherServlet will only keep a resolved HandlerExecutionChain in its
+ * dispatch cache if all HandlerMappings that it consulted for the request
+ * declare their result as cacheable.
+ *
+ * <p>Mappings that base their choice on request attributes, parameters,
+ * session state or the like must not implement this interface, or return
+ * false from <code>isCacheable</code> for the affected requests. Plain
+ * HandlerMapping implementations are never cached.
+ *
+ * @since 1.2.1
+ * @see DispatcherServlet#setDispatchCacheLimit
+ * @see org.springframework.web.servlet.handler.AbstractUrlHandlerMapping
+ */
+public interface CacheableHandlerMapping extends HandlerMapping {
+
+	/**
+	 * Determine whether the result of <code>getHandler</code> for the given
+	 * request may be reused for all subsequent requests with the same URI.
+	 * This applies to a returned HandlerExecutionChain as well as to a null
+	 * return value, i.e. a mapping that did not match.
+	 * <p>Will be called right after <code>getHandler</code> for the same request,
+	 * even if the result will not be cached: Implementations are expected to
+	 * determine cacheability during <code>getHandler</code> rather than
+	 * looking up the handler again, and may release any per-request state here.
+	 * @param request current HTTP request
+	 * @return whether the outcome of <code>getHandler</code> is cacheable
+	 * @see #getHandler
+	 */
+	boolean isCacheable(HttpServletRequest request);
+
+}
@@ -45,6 +45,7 @@ import org.springframework.beans.factory.NoSuchBeanDefinitionException;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.context.i18n.LocaleContext;
 import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.core.CollectionFactory;
 import org.springframework.core.OrderComparator;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.util.StringUtils;
@@ -100,6 +101,15 @@ import org.springframework.web.util.UrlPathHelper;
  * The ThemeResolver bean name is "themeResolver"; default is FixedThemeResolver.
  * </ul>
  *
+ * <p>Resolution results are kept in bounded dispatch caches: request URI to
+ * HandlerExecutionChain (for CacheableHandlerMappings only), handler class to
+ * HandlerAdapter, and view name plus locale to the ViewResolver that answered.
+ * A cached ViewResolver is asked directly, without consulting the ViewResolvers
+ * ordered before it again, so their answers for a view name and locale must not
+ * change from null to a View at runtime (as with all standard ViewResolvers).
+ * The caches are cleared whenever the application context gets refreshed.
+ * See the "dispatchCacheLimit" property for details.
+ *
  * <p><b>A web application can use any number of DispatcherServlets.</b> Each servlet
  * will operate in its own namespace. Only the root application context will be shared.
  *
@@ -204,6 +214,12 @@ public class DispatcherServlet extends FrameworkServlet {
 	 */
 	public static final String PAGE_NOT_FOUND_LOG_CATEGORY = "org.springframework.web.servlet.PageNotFound";
 
+	/**
+	 * Default maximum number of entries per dispatch cache.
+	 * @see #setDispatchCacheLimit
+	 */
+	public static final int DEFAULT_DISPATCH_CACHE_LIMIT = 1024;
+
 	/**
 	 * Name of the class path resource (relative to the DispatcherServlet class)
 	 * that defines DispatcherServlet's default strategy names.
@@ -271,6 +287,21 @@ public class DispatcherServlet extends FrameworkServlet {
 	/** List of ViewResolvers used by this servlet */
 	private List viewResolvers;
 
+	/** Maximum number of entries per dispatch cache, 0 to turn caching off */
+	private int dispatchCacheLimit = DEFAULT_DISPATCH_CACHE_LIMIT;
+
+	/** UrlPathHelper used to determine handler cache keys */
+	private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+	/** Request URI -> HandlerExecutionChain, or NO_HANDLER marker */
+	private DispatchCache handlerCache;
+
+	/** Handler class -> HandlerAdapter */
+	private DispatchCache handlerAdapterCache;
+
+	/** ViewCacheKey -> ViewResolver */
+	private DispatchCache viewResolverCache;
+
 
 	/**
 	 * Set whether to perform cleanup of request attributes after an include request,
@@ -322,6 +353,41 @@ public class DispatcherServlet extends FrameworkServlet {
 		this.detectAllViewResolvers = detectAllViewResolvers;
 	}
 
+	/**
+	 * Set the maximum number of entries per dispatch cache. Default is 1024.
+	 * <p>The dispatch caches remember the HandlerExecutionChain per request URI,
+	 * the HandlerAdapter per handler class, and the ViewResolver per view name
+	 * and locale, avoiding repeated iteration over all strategies on each request.
+	 * The limit is distributed across separately locked cache segments; each
+	 * segment evicts its least recently used entries once its share is reached.
+	 * <p>Handler chains will only be cached if all HandlerMappings that have been
+	 * consulted for a request implement CacheableHandlerMapping and declare their
+	 * result as cacheable; mappings that depend on request attributes will still
+	 * be asked for every request. HandlerAdapters are expected to decide on
+	 * <code>supports</code> according to the class of the handler, like all
+	 * standard adapters do. A ViewResolver that has answered for a view name and
+	 * locale will be asked directly for subsequent requests: ViewResolvers that
+	 * are ordered before it and did not resolve the view are not consulted again,
+	 * until the cache gets cleared. Turn off dispatch caching or call
+	 * <code>clearDispatchCache</code> if such a ViewResolver may start to
+	 * resolve a view name that it previously did not resolve.
+	 * <p>Without JDK 1.4 or Commons Collections 3.x, each cache segment gets
+	 * cleared instead of evicting individual entries once its share is reached.
+	 * <p>Set this to 0 to turn off dispatch caching completely.
+	 * @see CacheableHandlerMapping
+	 * @see #clearDispatchCache
+	 */
+	public void setDispatchCacheLimit(int dispatchCacheLimit) {
+		this.dispatchCacheLimit = dispatchCacheLimit;
+	}
+
+	/**
+	 * Return the maximum number of entries per dispatch cache.
+	 */
+	public int getDispatchCacheLimit() {
+		return dispatchCacheLimit;
+	}
+
 
 	/**
 	 * Overridden method, invoked after any bean properties have been set and the
@@ -337,6 +403,7 @@ public class DispatcherServlet extends FrameworkServlet {
 		initHandlerAdapters();
 		initHandlerExceptionResolvers();
 		initViewResolvers();
+		initDispatchCache();
 	}
 
 	/**
@@ -533,6 +600,39 @@ public class DispatcherServlet extends FrameworkServlet {
 	}
 
 
+	/**
+	 * Initialize the dispatch caches used by this class, according
+	 * to the "dispatchCacheLimit" property.
+	 * @see #setDispatchCacheLimit
+	 */
+	private void initDispatchCache() {
+		if (this.dispatchCacheLimit > 0) {
+			this.handlerCache = new DispatchCache(this.dispatchCacheLimit);
+			this.handlerAdapterCache = new DispatchCache(this.dispatchCacheLimit);
+			this.viewResolverCache = new DispatchCache(this.dispatchCacheLimit);
+		}
+		else {
+			this.handlerCache = null;
+			this.handlerAdapterCache = null;
+			this.viewResolverCache = null;
+		}
+	}
+
+	/**
+	 * Remove all entries from the dispatch caches.
+	 * <p>The caches are cleared automatically when the application context
+	 * gets refreshed; call this method after reconfiguring strategy objects
+	 * at runtime.
+	 */
+	public void clearDispatchCache() {
+		if (this.handlerCache != null) {
+			this.handlerCache.clear();
+			this.handlerAdapterCache.clear();
+			this.viewResolverCache.clear();
+		}
+	}
+
+
 	/**
 	 * Return the default strategy object for the given strategy interface.
 	 * <p>Default implementation delegates to <code>getDefaultStrategies</code>,
@@ -804,6 +904,25 @@ public class DispatcherServlet extends FrameworkServlet {
 			return handler;
 		}
 
+		String cacheKey = null;
+		long startupDate = 0;
+		if (this.handlerCache != null) {
+			cacheKey = this.urlPathHelper.getRequestUri(request);
+			startupDate = getWebApplicationContext().getStartupDate();
+			Object cached = this.handlerCache.get(cacheKey, startupDate);
+			if (cached != null) {
+				if (cached == DispatchCache.NO_HANDLER) {
+					return null;
+				}
+				handler = (HandlerExecutionChain) cached;
+				if (cache) {
+					request.setAttribute(HANDLER_EXECUTION_CHAIN_ATTRIBUTE, handler);
+				}
+				return handler;
+			}
+		}
+
+		boolean cacheable = (cacheKey != null);
 		Iterator it = this.handlerMappings.iterator();
 		while (it.hasNext()) {
 			HandlerMapping hm = (HandlerMapping) it.next();
@@ -812,13 +931,26 @@ public class DispatcherServlet extends FrameworkServlet {
 						getServletName() + "'");
 			}
 			handler = hm.getHandler(request);
+			// Always ask a CacheableHandlerMapping, for it to release per-request state.
+			if (hm instanceof CacheableHandlerMapping) {
+				cacheable = ((CacheableHandlerMapping) hm).isCacheable(request) && cacheable;
+			}
+			else {
+				cacheable = false;
+			}
 			if (handler != null) {
+				if (cacheable) {
+					this.handlerCache.put(cacheKey, handler, startupDate);
+				}
 				if (cache) {
 					request.setAttribute(HANDLER_EXECUTION_CHAIN_ATTRIBUTE, handler);
 				}
 				return handler;
 			}
 		}
+		if (cacheable) {
+			this.handlerCache.put(cacheKey, DispatchCache.NO_HANDLER, startupDate);
+		}
 		return null;
 	}
 
@@ -843,6 +975,15 @@ public class DispatcherServlet extends FrameworkServlet {
 	 * This is a fatal error.
 	 */
 	protected HandlerAdapter getHandlerAdapter(Object handler) throws ServletException {
+		long startupDate = 0;
+		if (this.handlerAdapterCache != null) {
+			startupDate = getWebApplicationContext().getStartupDate();
+			HandlerAdapter ha = (HandlerAdapter) this.handlerAdapterCache.get(handler.getClass(), startupDate);
+			if (ha != null) {
+				return ha;
+			}
+		}
+
 		Iterator it = this.handlerAdapters.iterator();
 		while (it.hasNext()) {
 			HandlerAdapter ha = (HandlerAdapter) it.next();
@@ -850,6 +991,9 @@ public class DispatcherServlet extends FrameworkServlet {
 				logger.debug("Testing handler adapter [" + ha + "]");
 			}
 			if (ha.supports(handler)) {
+				if (this.handlerAdapterCache != null) {
+					this.handlerAdapterCache.put(handler.getClass(), ha, startupDate);
+				}
 				return ha;
 			}
 		}
@@ -933,6 +1077,9 @@ public class DispatcherServlet extends FrameworkServlet {
 	 * <p>Default implementations asks all ViewResolvers of this dispatcher.
 	 * Can be overridden for custom resolution strategies, potentially based
 	 * on specific model attributes or request parameters.
+	 * <p>The ViewResolver that answered for a view name and locale will be
+	 * remembered in the dispatch cache and asked first on subsequent calls.
+	 * If it does not resolve the view anymore, all ViewResolvers get asked again.
 	 * @param viewName the name of the view to resolve
 	 * @param model the model to be passed to the view
 	 * @param locale the current locale
@@ -945,10 +1092,27 @@ public class DispatcherServlet extends FrameworkServlet {
 	protected View resolveViewName(String viewName, Map model, Locale locale, HttpServletRequest request)
 			throws Exception {
 
+		ViewCacheKey cacheKey = null;
+		long startupDate = 0;
+		if (this.viewResolverCache != null) {
+			cacheKey = new ViewCacheKey(viewName, locale);
+			startupDate = getWebApplicationContext().getStartupDate();
+			ViewResolver viewResolver = (ViewResolver) this.viewResolverCache.get(cacheKey, startupDate);
+			if (viewResolver != null) {
+				View view = viewResolver.resolveViewName(viewName, locale);
+				if (view != null) {
+					return view;
+				}
+			}
+		}
+
 		for (Iterator it = this.viewResolvers.iterator(); it.hasNext();) {
 			ViewResolver viewResolver = (ViewResolver) it.next();
 			View view = viewResolver.resolveViewName(viewName, locale);
 			if (view != null) {
+				if (cacheKey != null) {
+					this.viewResolverCache.put(cacheKey, viewResolver, startupDate);
+				}
 				return view;
 			}
 		}
@@ -1025,4 +1189,116 @@ public class DispatcherServlet extends FrameworkServlet {
 		}
 	}
 
+
+
+	/**
+	 * Bounded least-recently-used cache for dispatch resolution results.
+	 * Divided into a number of separately locked segments, so that concurrent
+	 * requests for different keys do not contend for a single lock.
+	 * Each segment tracks the startup date of the application context that
+	 * its entries have been resolved with, discarding them on context refresh.
+	 */
+	private static class DispatchCache {
+
+		/** Marker for a cached "no handler found" result */
+		public static final Object NO_HANDLER = new Object();
+
+		/** Number of separately locked segments */
+		private static final int CONCURRENCY_LEVEL = 16;
+
+		private final Segment[] segments;
+
+		public DispatchCache(int limit) {
+			int segmentCount = Math.min(CONCURRENCY_LEVEL, limit);
+			int segmentLimit = (limit + segmentCount - 1) / segmentCount;
+			this.segments = new Segment[segmentCount];
+			for (int i = 0; i < this.segments.length; i++) {
+				this.segments[i] = new Segment(segmentLimit);
+			}
+		}
+
+		public Object get(Object key, long startupDate) {
+			Segment segment = segmentFor(key);
+			synchronized (segment) {
+				if (startupDate != segment.startupDate) {
+					segment.entries.clear();
+					segment.startupDate = startupDate;
+					return null;
+				}
+				return segment.entries.get(key);
+			}
+		}
+
+		public void put(Object key, Object value, long startupDate) {
+			Segment segment = segmentFor(key);
+			synchronized (segment) {
+				if (startupDate == segment.startupDate) {
+					segment.entries.put(key, value);
+				}
+			}
+		}
+
+		public void clear() {
+			for (int i = 0; i < this.segments.length; i++) {
+				synchronized (this.segments[i]) {
+					this.segments[i].entries.clear();
+				}
+			}
+		}
+
+		private Segment segmentFor(Object key) {
+			int hash = key.hashCode();
+			// Spread the hash bits, as Strings tend to differ in the low bits only.
+			hash ^= (hash >>> 16);
+			return this.segments[(hash & 0x7fffffff) % this.segments.length];
+		}
+
+
+		/**
+		 * LRU map of entries, guarded by the Segment itself.
+		 */
+		private static class Segment {
+
+			private final Map entries;
+
+			private long startupDate;
+
+			public Segment(int limit) {
+				this.entries = CollectionFactory.createLruMapIfPossible(limit);
+			}
+		}
+	}
+
+
+	/**
+	 * Key for the ViewResolver cache, combining view name and locale.
+	 */
+	private static class ViewCacheKey {
+
+		private final String viewName;
+
+		private final Locale locale;
+
+		public ViewCacheKey(String viewName, Locale locale) {
+			this.viewName = viewName;
+			this.locale = locale;
+		}
+
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof ViewCacheKey)) {
+				return false;
+			}
+			ViewCacheKey otherKey = (ViewCacheKey) other;
+			return (this.viewName.equals(otherKey.viewName) &&
+					(this.locale != null ? this.locale.equals(otherKey.locale) : otherKey.locale == null));
+		}
+
+		public int hashCode() {
+			return this.viewName.hashCode() * 29 + (this.locale != null ? this.locale.hashCode() : 0);
+		}
+	}
+
 }
@@ -27,6 +27,7 @@ import org.springframework.context.ApplicationContextException;
 import org.springframework.util.AntPathMatcher;
 import org.springframework.util.Assert;
 import org.springframework.util.PathMatcher;
+import org.springframework.web.servlet.CacheableHandlerMapping;
 import org.springframework.web.util.UrlPathHelper;
 
 /**
@@ -40,13 +41,26 @@ import org.springframework.web.util.UrlPathHelper;
  * "/test" directory, "/test/**" matches all paths below "/test".
  * For details, see the AntPathMatcher javadoc.
  *
+ * <p>As the handler is determined by the URL path alone, results are
+ * declared as cacheable for DispatcherServlet's dispatch cache - except
+ * for handlers that refer to a prototype bean by name, which need to be
+ * obtained from the application context for each request.
+ *
  * @author Juergen Hoeller
  * @since 16.04.2003
  * @see #setAlwaysUseFullPath
  * @see #setUrlDecode
  * @see AntPathMatcher
  */
-public abstract class AbstractUrlHandlerMapping extends AbstractHandlerMapping {
+public abstract class AbstractUrlHandlerMapping extends AbstractHandlerMapping
+		implements CacheableHandlerMapping {
+
+	/**
+	 * Request attribute that holds the cacheability of the handler
+	 * looked up for the current request, until asked for it.
+	 */
+	private static final String CACHEABLE_ATTRIBUTE = AbstractUrlHandlerMapping.class.getName() + ".CACHEABLE";
+
 
 	private UrlPathHelper urlPathHelper = new UrlPathHelper();
 
@@ -121,15 +135,44 @@ public abstract class AbstractUrlHandlerMapping extends AbstractHandlerMapping {
 
 	/**
 	 * Look up a handler for the URL path of the given request.
+	 * <p>Determines the cacheability of the result along the way,
+	 * to be exposed through <code>isCacheable</code>.
 	 * @param request current HTTP request
 	 * @return the looked up handler instance, or null
+	 * @see #isCacheable
 	 */
 	protected Object getHandlerInternal(HttpServletRequest request) throws Exception {
 		String lookupPath = this.urlPathHelper.getLookupPathForRequest(request);
 		if (logger.isDebugEnabled()) {
 			logger.debug("Looking up handler for [" + lookupPath + "]");
 		}
-		return lookupHandler(lookupPath);
+		Object handler = lookupHandler(lookupPath);
+		Object effectiveHandler = (handler != null ? handler : getDefaultHandler());
+		boolean cacheable = !(effectiveHandler instanceof String) ||
+				getApplicationContext().isSingleton((String) effectiveHandler);
+		request.setAttribute(CACHEABLE_ATTRIBUTE, new Boolean(cacheable));
+		return handler;
+	}
+
+	/**
+	 * Declare the result for the given request as cacheable, unless the mapped
+	 * handler is specified as name of a non-singleton bean.
+	 * <p>Evaluates the cacheability determined by the preceding
+	 * <code>getHandlerInternal</code> call for the same request, without
+	 * looking up the handler again. Subclasses that override
+	 * <code>getHandlerInternal</code> without delegating to this implementation
+	 * will not be cached, unless they override this method as well.
+	 * @param request current HTTP request
+	 * @return whether the handler for this request may be cached
+	 * @see #getHandlerInternal
+	 */
+	public boolean isCacheable(HttpServletRequest request) {
+		Boolean cacheable = (Boolean) request.getAttribute(CACHEABLE_ATTRIBUTE);
+		if (cacheable == null) {
+			return false;
+		}
+		request.removeAttribute(CACHEABLE_ATTRIBUTE);
+		return cacheable.booleanValue();
 	}
 
 	/**
@@ -0,0 +1,743 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.web.servlet.mvc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.core.CollectionFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.util.StringUtils;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.util.UrlPathHelper;
+
+/**
+ * Controller that serves static resources such as images, style sheets and
+ * scripts, resolved relative to one or more base locations through the
+ * application context's ResourceLoader. Allows static content to be served
+ * by the application itself, for example behind a plain load balancer.
+ *
+ * <p>Resource metadata gets cached in a bounded cache: length, last-modified
+ * timestamp, content type and a strong ETag computed from the content.
+ * The content of small resources is kept in memory as a byte array, taken
+ * in the same pass that computes the ETag, so that it always matches the
+ * cached metadata. Larger resources are streamed from their file (or other
+ * resource location) for each request; files get checked for modification
+ * before streaming, since their length needs to match the cached one.
+ * The cache evicts least recently used entries first on JDK 1.4 or with
+ * Commons Collections 3.x available.
+ *
+ * <p>Supports conditional GET via If-None-Match as well as If-Modified-Since
+ * (implementing the LastModified interface for DispatcherServlet), and
+ * single-range requests including If-Range. For clients that accept gzip,
+ * compressible content types are served from a bounded cache of compressed
+ * variants.
+ *
+ * <p>The resource path is determined as the lookup path of the request,
+ * without the configured "pathPrefix". Paths containing ".." or referring
+ * to WEB-INF or META-INF are rejected.
+ *
+ * <p>Cache headers can be applied through the "cacheSeconds" property
+ * inherited from WebContentGenerator.
+ *
+ * @since 1.2.1
+ * @see #setLocations
+ * @see #setPathPrefix
+ * @see #setInMemoryThreshold
+ * @see #setCompressedCacheSize
+ * @see org.springframework.core.io.ResourceLoader
+ */
+public class StaticResourceController extends AbstractController implements LastModified {
+
+	/** Default maximum number of cached resource entries */
+	public static final int DEFAULT_CACHE_LIMIT = 1000;
+
+	/** Default maximum size of resources to hold in memory: 64 KB */
+	public static final int DEFAULT_IN_MEMORY_THRESHOLD = 64 * 1024;
+
+	/** Default maximum total size of resources held in memory: 32 MB */
+	public static final long DEFAULT_MAX_IN_MEMORY_SIZE = 32 * 1024 * 1024;
+
+	/** Default maximum total size of cached compressed variants: 4 MB */
+	public static final long DEFAULT_COMPRESSED_CACHE_SIZE = 4 * 1024 * 1024;
+
+	private static final String HEADER_ETAG = "ETag";
+
+	private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+
+	private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+
+	private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+	private static final String HEADER_IF_RANGE = "If-Range";
+
+	private static final String HEADER_RANGE = "Range";
+
+	private static final String HEADER_CONTENT_RANGE = "Content-Range";
+
+	private static final String HEADER_CONTENT_LENGTH = "Content-Length";
+
+	private static final String HEADER_ACCEPT_RANGES = "Accept-Ranges";
+
+	private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+
+	private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+
+	private static final String HEADER_VARY = "Vary";
+
+	private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+	private static final char[] HEX_DIGITS =
+			{'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+
+	private String[] locations;
+
+	private String pathPrefix;
+
+	private final Properties mediaTypes = new Properties();
+
+	private int cacheLimit = DEFAULT_CACHE_LIMIT;
+
+	private int inMemoryThreshold = DEFAULT_IN_MEMORY_THRESHOLD;
+
+	private long maxInMemorySize = DEFAULT_MAX_IN_MEMORY_SIZE;
+
+	private long compressedCacheSize = DEFAULT_COMPRESSED_CACHE_SIZE;
+
+	private boolean checkModification = true;
+
+	private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+	/** Monitor guarding the resource cache and its size counters */
+	private final Object cacheMonitor = new Object();
+
+	/** Resource path --> ResourceEntry, least recently used first */
+	private Map resourceCache = CollectionFactory.createLruMapIfPossible(DEFAULT_CACHE_LIMIT);
+
+	/** Total size of content held in memory by cached entries */
+	private long inMemorySize = 0;
+
+	/** Total size of compressed variants held by cached entries */
+	private long compressedSize = 0;
+
+
+	public StaticResourceController() {
+		setSupportedMethods(new String[] {METHOD_GET, METHOD_HEAD});
+		this.mediaTypes.setProperty("html", "text/html");
+		this.mediaTypes.setProperty("htm", "text/html");
+		this.mediaTypes.setProperty("css", "text/css");
+		this.mediaTypes.setProperty("js", "text/javascript");
+		this.mediaTypes.setProperty("json", "application/json");
+		this.mediaTypes.setProperty("txt", "text/plain");
+		this.mediaTypes.setProperty("xml", "text/xml");
+		this.mediaTypes.setProperty("svg", "image/svg+xml");
+		this.mediaTypes.setProperty("gif", "image/gif");
+		this.mediaTypes.setProperty("png", "image/png");
+		this.mediaTypes.setProperty("jpg", "image/jpeg");
+		this.mediaTypes.setProperty("jpeg", "image/jpeg");
+		this.mediaTypes.setProperty("ico", "image/x-icon");
+		this.mediaTypes.setProperty("pdf", "application/pdf");
+	}
+
+	/**
+	 * Set the base locations to resolve resources against, in the format of
+	 * the application context's ResourceLoader: for example "/static/" for
+	 * a web application directory or "classpath:/META-INF/web/" for a class
+	 * path location. Locations get searched in the given order.
+	 * @see org.springframework.context.ApplicationContext#getResource
+	 */
+	public void setLocations(String[] locations) {
+		this.locations = new String[locations.length];
+		for (int i = 0; i < locations.length; i++) {
+			this.locations[i] = (locations[i].endsWith("/") ? locations[i] : locations[i] + "/");
+		}
+	}
+
+	/**
+	 * Set a prefix to strip from the request's lookup path before resolving
+	 * the resource, typically the URL path that this controller is mapped to:
+	 * e.g. "/static" for a mapping of "/static/**".
+	 */
+	public void setPathPrefix(String pathPrefix) {
+		this.pathPrefix = pathPrefix;
+	}
+
+	/**
+	 * Specify mappings from file extensions to content types, in addition to
+	 * the built-in ones for common web formats. For unknown extensions, the
+	 * ServletContext gets asked for a MIME type.
+	 */
+	public void setMediaTypes(Properties mediaTypes) {
+		for (Iterator it = mediaTypes.keySet().iterator(); it.hasNext();) {
+			String extension = (String) it.next();
+			this.mediaTypes.setProperty(extension.toLowerCase(), mediaTypes.getProperty(extension));
+		}
+	}
+
+	/**
+	 * Set the maximum number of resources to keep metadata and content
+	 * for. Default is 1000.
+	 * <p>Note that changing this setting clears the cache.
+	 */
+	public void setCacheLimit(int cacheLimit) {
+		if (cacheLimit < 1) {
+			throw new IllegalArgumentException("cacheLimit must be at least 1");
+		}
+		synchronized (this.cacheMonitor) {
+			this.cacheLimit = cacheLimit;
+			this.resourceCache = CollectionFactory.createLruMapIfPossible(cacheLimit);
+			this.inMemorySize = 0;
+			this.compressedSize = 0;
+		}
+	}
+
+	/**
+	 * Set the maximum size of resources to hold in memory as byte array.
+	 * Default is 64 KB. Larger resources are streamed for each request.
+	 */
+	public void setInMemoryThreshold(int inMemoryThreshold) {
+		this.inMemoryThreshold = inMemoryThreshold;
+	}
+
+	/**
+	 * Set the maximum total size of resources held in memory. Default is 32 MB.
+	 */
+	public void setMaxInMemorySize(long maxInMemorySize) {
+		this.maxInMemorySize = maxInMemorySize;
+	}
+
+	/**
+	 * Set the maximum total size of compressed variants to cache.
+	 * Default is 4 MB. Set this to 0 to turn off compression.
+	 */
+	public void setCompressedCacheSize(long compressedCacheSize) {
+		this.compressedCacheSize = compressedCacheSize;
+	}
+
+	/**
+	 * Set whether to check files for modification on each request, refreshing
+	 * cached metadata if length or timestamp changed. Default is true.
+	 * Turn this off for immutable deployments.
+	 * <p>Files that are too large to be held in memory are checked in any case
+	 * before streaming them, as their length needs to match the cached metadata.
+	 */
+	public void setCheckModification(boolean checkModification) {
+		this.checkModification = checkModification;
+	}
+
+	protected void initApplicationContext() {
+		if (this.locations == null || this.locations.length == 0) {
+			throw new IllegalArgumentException("At least one location is required");
+		}
+	}
+
+
+	protected ModelAndView handleRequestInternal(HttpServletRequest request, HttpServletResponse response)
+			throws Exception {
+
+		ResourceEntry entry = getResourceEntry(request);
+		if (entry == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return null;
+		}
+
+		boolean gzip = (entry.compressible && this.compressedCacheSize > 0 &&
+				request.getHeader(HEADER_RANGE) == null && acceptsGzip(request));
+		String eTag = (gzip ? entry.gzipETag : entry.eTag);
+		response.setContentType(entry.contentType);
+		response.setHeader(HEADER_ETAG, eTag);
+		if (entry.lastModified > 0) {
+			response.setDateHeader(HEADER_LAST_MODIFIED, entry.lastModified);
+		}
+		response.setHeader(HEADER_ACCEPT_RANGES, "bytes");
+		if (entry.compressible) {
+			response.setHeader(HEADER_VARY, HEADER_ACCEPT_ENCODING);
+		}
+		if (isNotModified(request, entry, eTag)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return null;
+		}
+		boolean writeBody = !METHOD_HEAD.equals(request.getMethod());
+
+		if (gzip) {
+			byte[] compressed = getCompressedContent(entry);
+			response.setHeader(HEADER_CONTENT_ENCODING, "gzip");
+			response.setContentLength(compressed.length);
+			if (writeBody) {
+				response.getOutputStream().write(compressed);
+			}
+			return null;
+		}
+
+		long[] range = getRange(request, entry);
+		if (range == null) {
+			response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+			response.setHeader(HEADER_CONTENT_RANGE, "bytes */" + entry.length);
+			return null;
+		}
+		long start = range[0];
+		long count = range[1] - range[0] + 1;
+		if (count < entry.length) {
+			response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+			response.setHeader(HEADER_CONTENT_RANGE, "bytes " + range[0] + "-" + range[1] + "/" + entry.length);
+		}
+		// Set as header rather than via setContentLength, which is limited to int.
+		response.setHeader(HEADER_CONTENT_LENGTH, Long.toString(count));
+		if (writeBody) {
+			writeContent(entry, start, count, response.getOutputStream());
+		}
+		return null;
+	}
+
+	public long getLastModified(HttpServletRequest request) {
+		try {
+			ResourceEntry entry = getResourceEntry(request);
+			return (entry != null && entry.lastModified > 0 ? entry.lastModified : -1);
+		}
+		catch (IOException ex) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Determine the resource path for the given request.
+	 * @param request current HTTP request
+	 * @return the resource path, relative to the configured locations,
+	 * or null if the request path is invalid
+	 */
+	protected String getResourcePath(HttpServletRequest request) {
+		String path = this.urlPathHelper.getLookupPathForRequest(request);
+		if (this.pathPrefix != null && path.startsWith(this.pathPrefix)) {
+			path = path.substring(this.pathPrefix.length());
+		}
+		while (path.startsWith("/")) {
+			path = path.substring(1);
+		}
+		String upperCasePath = path.toUpperCase();
+		if (path.length() == 0 || path.indexOf("..") != -1 || path.indexOf('\\') != -1 ||
+				upperCasePath.indexOf("WEB-INF") != -1 || upperCasePath.indexOf("META-INF") != -1) {
+			return null;
+		}
+		return path;
+	}
+
+	/**
+	 * Obtain the cached entry for the requested resource, resolving it
+	 * if not cached yet (or modified since).
+	 */
+	private ResourceEntry getResourceEntry(HttpServletRequest request) throws IOException {
+		String path = getResourcePath(request);
+		if (path == null) {
+			return null;
+		}
+		ResourceEntry entry = null;
+		synchronized (this.cacheMonitor) {
+			entry = (ResourceEntry) this.resourceCache.get(path);
+		}
+		if (entry != null && ((!this.checkModification && entry.content != null) || !entry.isModified())) {
+			return entry;
+		}
+		Resource resource = resolveResource(path);
+		if (resource == null) {
+			return null;
+		}
+		entry = createResourceEntry(path, resource);
+		putResourceEntry(path, entry);
+		return entry;
+	}
+
+	/**
+	 * Resolve the given path against the configured locations.
+	 * @param path the resource path
+	 * @return the Resource, or null if not found in any location
+	 */
+	protected Resource resolveResource(String path) {
+		for (int i = 0; i < this.locations.length; i++) {
+			Resource resource = getApplicationContext().getResource(this.locations[i] + path);
+			if (resource.exists()) {
+				File file = getFileIfAvailable(resource);
+				if (file == null || file.isFile()) {
+					return resource;
+				}
+			}
+		}
+		return null;
+	}
+
+	private File getFileIfAvailable(Resource resource) {
+		try {
+			return resource.getFile();
+		}
+		catch (IOException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Build a cache entry for the given resource: determine metadata,
+	 * compute the ETag, and load small content into memory.
+	 */
+	private ResourceEntry createResourceEntry(String path, Resource resource) throws IOException {
+		ResourceEntry entry = new ResourceEntry();
+		entry.contentType = getContentType(path);
+		entry.compressible = isCompressible(entry.contentType);
+		entry.file = getFileIfAvailable(resource);
+		MessageDigest digest = createDigest();
+
+		InputStream is = null;
+		if (entry.file != null) {
+			entry.lastModified = entry.file.lastModified();
+			is = new FileInputStream(entry.file);
+		}
+		else {
+			URLConnection con = resource.getURL().openConnection();
+			entry.lastModified = con.getLastModified();
+			is = con.getInputStream();
+		}
+		try {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int count;
+			while ((count = is.read(buffer)) != -1) {
+				digest.update(buffer, 0, count);
+				entry.length += count;
+				if (entry.length <= this.inMemoryThreshold) {
+					baos.write(buffer, 0, count);
+				}
+			}
+			if (entry.length <= this.inMemoryThreshold) {
+				entry.content = baos.toByteArray();
+			}
+		}
+		finally {
+			is.close();
+		}
+		entry.resource = resource;
+		byte[] hash = digest.digest();
+		entry.eTag = toETag(hash, "");
+		entry.gzipETag = toETag(hash, "-gz");
+		return entry;
+	}
+
+	private void putResourceEntry(String path, ResourceEntry entry) {
+		synchronized (this.cacheMonitor) {
+			ResourceEntry oldEntry = (ResourceEntry) this.resourceCache.remove(path);
+			if (oldEntry != null) {
+				releaseEntry(oldEntry);
+			}
+			// Evict least recently used entries until the new one fits: the map
+			// itself must never evict, as the size counters would get out of sync.
+			Iterator it = this.resourceCache.values().iterator();
+			while (it.hasNext() && this.resourceCache.size() >= this.cacheLimit) {
+				ResourceEntry eldest = (ResourceEntry) it.next();
+				it.remove();
+				releaseEntry(eldest);
+			}
+			if (entry.content != null) {
+				if (this.inMemorySize + entry.length > this.maxInMemorySize) {
+					// Over budget: stream this resource for each request.
+					entry.content = null;
+				}
+				else {
+					this.inMemorySize += entry.length;
+				}
+			}
+			this.resourceCache.put(path, entry);
+		}
+	}
+
+	private void releaseEntry(ResourceEntry entry) {
+		if (entry.content != null) {
+			this.inMemorySize -= entry.length;
+		}
+		if (entry.compressed != null) {
+			this.compressedSize -= entry.compressed.length;
+		}
+	}
+
+	/**
+	 * Return the compressed variant of the given resource, compressing
+	 * and caching it if within the configured budget.
+	 */
+	private byte[] getCompressedContent(ResourceEntry entry) throws IOException {
+		synchronized (this.cacheMonitor) {
+			if (entry.compressed != null) {
+				return entry.compressed;
+			}
+		}
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		GZIPOutputStream out = new GZIPOutputStream(baos);
+		writeContent(entry, 0, entry.length, out);
+		out.close();
+		byte[] compressed = baos.toByteArray();
+		synchronized (this.cacheMonitor) {
+			if (entry.compressed == null && this.resourceCache.containsValue(entry) &&
+					this.compressedSize + compressed.length <= this.compressedCacheSize) {
+				entry.compressed = compressed;
+				this.compressedSize += compressed.length;
+			}
+		}
+		return compressed;
+	}
+
+	/**
+	 * Write the given range of the resource content to the given stream:
+	 * from the in-memory copy, or from the file or the resource's InputStream.
+	 */
+	private void writeContent(ResourceEntry entry, long start, long count, OutputStream out) throws IOException {
+		if (entry.content != null) {
+			out.write(entry.content, (int) start, (int) count);
+			return;
+		}
+		InputStream is = (entry.file != null ? new FileInputStream(entry.file) : entry.resource.getInputStream());
+		try {
+			long skipped = 0;
+			while (skipped < start) {
+				long n = is.skip(start - skipped);
+				if (n <= 0) {
+					break;
+				}
+				skipped += n;
+			}
+			byte[] buffer = new byte[8192];
+			long remaining = count;
+			int n;
+			while (remaining > 0 && (n = is.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+				out.write(buffer, 0, n);
+				remaining -= n;
+			}
+		}
+		finally {
+			is.close();
+		}
+	}
+
+	/**
+	 * Check the conditional request headers: If-None-Match takes
+	 * precedence over If-Modified-Since.
+	 */
+	private boolean isNotModified(HttpServletRequest request, ResourceEntry entry, String eTag) {
+		String ifNoneMatch = request.getHeader(HEADER_IF_NONE_MATCH);
+		if (ifNoneMatch != null) {
+			String[] tags = StringUtils.commaDelimitedListToStringArray(ifNoneMatch);
+			for (int i = 0; i < tags.length; i++) {
+				String tag = tags[i].trim();
+				if (tag.equals("*") || tag.equals(eTag)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		long ifModifiedSince = getDateHeader(request, HEADER_IF_MODIFIED_SINCE);
+		return (ifModifiedSince != -1 && entry.lastModified > 0 &&
+				entry.lastModified / 1000 <= ifModifiedSince / 1000);
+	}
+
+	/**
+	 * Determine the byte range to serve: the requested single range if
+	 * valid (and If-Range matches), else the entire content.
+	 * @return the first and last byte position (inclusive),
+	 * or null if the requested range is not satisfiable
+	 */
+	private long[] getRange(HttpServletRequest request, ResourceEntry entry) {
+		long[] full = new long[] {0, entry.length - 1};
+		String rangeHeader = request.getHeader(HEADER_RANGE);
+		if (rangeHeader == null || !rangeHeader.startsWith("bytes=") || rangeHeader.indexOf(',') != -1) {
+			// No range, or multiple ranges: serve the entire content.
+			return full;
+		}
+		String ifRange = request.getHeader(HEADER_IF_RANGE);
+		if (ifRange != null) {
+			if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+				if (!ifRange.equals(entry.eTag)) {
+					return full;
+				}
+			}
+			else if (getDateHeader(request, HEADER_IF_RANGE) / 1000 != entry.lastModified / 1000) {
+				return full;
+			}
+		}
+		String spec = rangeHeader.substring(6).trim();
+		int dashIndex = spec.indexOf('-');
+		if (dashIndex == -1) {
+			return full;
+		}
+		try {
+			long start;
+			long end;
+			if (dashIndex == 0) {
+				long suffixLength = Long.parseLong(spec.substring(1));
+				if (suffixLength <= 0) {
+					return null;
+				}
+				start = Math.max(0, entry.length - suffixLength);
+				end = entry.length - 1;
+			}
+			else {
+				start = Long.parseLong(spec.substring(0, dashIndex));
+				end = (dashIndex < spec.length() - 1 ?
+						Math.min(Long.parseLong(spec.substring(dashIndex + 1)), entry.length - 1) : entry.length - 1);
+			}
+			if (start >= entry.length || start > end) {
+				return null;
+			}
+			return new long[] {start, end};
+		}
+		catch (NumberFormatException ex) {
+			// Syntactically invalid range: to be ignored.
+			return full;
+		}
+	}
+
+	private long getDateHeader(HttpServletRequest request, String name) {
+		try {
+			return request.getDateHeader(name);
+		}
+		catch (IllegalArgumentException ex) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Check whether the client accepts the gzip content encoding.
+	 */
+	private boolean acceptsGzip(HttpServletRequest request) {
+		String acceptEncoding = request.getHeader(HEADER_ACCEPT_ENCODING);
+		if (acceptEncoding == null) {
+			return false;
+		}
+		String[] codings = StringUtils.commaDelimitedListToStringArray(acceptEncoding);
+		for (int i = 0; i < codings.length; i++) {
+			String coding = codings[i].trim().toLowerCase();
+			String quality = null;
+			int paramIndex = coding.indexOf(';');
+			if (paramIndex != -1) {
+				quality = coding.substring(paramIndex + 1).trim();
+				coding = coding.substring(0, paramIndex).trim();
+			}
+			if (coding.equals("gzip")) {
+				if (quality == null || !quality.startsWith("q=")) {
+					return true;
+				}
+				try {
+					return (Float.parseFloat(quality.substring(2)) > 0);
+				}
+				catch (NumberFormatException ex) {
+					return false;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Determine the content type for the given resource path, from the
+	 * configured media types or the ServletContext's MIME type mappings.
+	 * @param path the resource path
+	 * @return the content type (never null)
+	 */
+	protected String getContentType(String path) {
+		int dotIndex = path.lastIndexOf('.');
+		if (dotIndex != -1) {
+			String contentType = this.mediaTypes.getProperty(path.substring(dotIndex + 1).toLowerCase());
+			if (contentType != null) {
+				return contentType;
+			}
+		}
+		String contentType = getServletContext().getMimeType(path);
+		return (contentType != null ? contentType : DEFAULT_CONTENT_TYPE);
+	}
+
+	/**
+	 * Determine whether content of the given type is worth compressing.
+	 */
+	protected boolean isCompressible(String contentType) {
+		return (contentType.startsWith("text/") || contentType.endsWith("/json") ||
+				contentType.endsWith("/javascript") || contentType.endsWith("xml"));
+	}
+
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("MD5");
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException("MD5 algorithm not available: " + ex.getMessage());
+		}
+	}
+
+	private static String toETag(byte[] digest, String suffix) {
+		StringBuffer sb = new StringBuffer(digest.length * 2 + suffix.length() + 2);
+		sb.append('"');
+		for (int i = 0; i < digest.length; i++) {
+			sb.append(HEX_DIGITS[(digest[i] >> 4) & 0xf]);
+			sb.append(HEX_DIGITS[digest[i] & 0xf]);
+		}
+		sb.append(suffix).append('"');
+		return sb.toString();
+	}
+
+
+	/**
+	 * Cached metadata and content of a resolved resource.
+	 */
+	private static class ResourceEntry {
+
+		private Resource resource;
+
+		private File file;
+
+		private long length;
+
+		private long lastModified;
+
+		private String contentType;
+
+		private boolean compressible;
+
+		private String eTag;
+
+		private String gzipETag;
+
+		/** In-memory copy of the content, or null */
+		private byte[] content;
+
+		/** Cached GZIP-compressed content, or null */
+		private byte[] compressed;
+
+		public boolean isModified() {
+			return (this.file != null &&
+					(this.file.lastModified() != this.lastModified || this.file.length() != this.length));
+		}
+	}
+
+}
@@ -17,6 +17,7 @@
 package org.springframework.web.servlet.tags;
 
 import java.io.IOException;
+import java.io.StringWriter;
 
 import javax.servlet.jsp.JspException;
 import javax.servlet.jsp.tagext.BodyContent;
@@ -24,6 +25,7 @@ import javax.servlet.jsp.tagext.BodyTag;
 
 import org.springframework.web.util.ExpressionEvaluationUtils;
 import org.springframework.web.util.HtmlUtils;
+import org.springframework.web.util.JavaScriptEscapingWriter;
 import org.springframework.web.util.JavaScriptUtils;
 
 /**
@@ -75,8 +77,16 @@ public class EscapeBodyTag extends HtmlEscapingAwareTag implements BodyTag {
 		try {
 			String content = readBodyContent();
 			// HTML and/or JavaScript escape, if demanded
-			content = isHtmlEscape() ? HtmlUtils.htmlEscape(content) : content;
-			content = this.javaScriptEscape ? JavaScriptUtils.javaScriptEscape(content) : content;
+			if (isHtmlEscape() && this.javaScriptEscape && content != null) {
+				// single pass, without an intermediate HTML-escaped String
+				StringWriter escaped = new StringWriter(content.length() + 16);
+				HtmlUtils.htmlEscape(content, new JavaScriptEscapingWriter(escaped));
+				content = escaped.toString();
+			}
+			else {
+				content = isHtmlEscape() ? HtmlUtils.htmlEscape(content) : content;
+				content = this.javaScriptEscape ? JavaScriptUtils.javaScriptEscape(content) : content;
+			}
 			writeBodyContent(content);
 		}
 		catch (IOException ex) {
@@ -17,6 +17,7 @@
 package org.springframework.web.servlet.tags;
 
 import java.io.IOException;
+import java.io.StringWriter;
 import java.util.Collection;
 
 import javax.servlet.jsp.JspException;
@@ -27,6 +28,7 @@ import org.springframework.context.NoSuchMessageException;
 import org.springframework.util.StringUtils;
 import org.springframework.web.util.ExpressionEvaluationUtils;
 import org.springframework.web.util.HtmlUtils;
+import org.springframework.web.util.JavaScriptEscapingWriter;
 import org.springframework.web.util.JavaScriptUtils;
 import org.springframework.web.util.TagUtils;
 
@@ -166,8 +168,16 @@ public class MessageTag extends HtmlEscapingAwareTag {
 			}
 
 			// HTML and/or JavaScript escape, if demanded
-			msg = isHtmlEscape() ? HtmlUtils.htmlEscape(msg) : msg;
-			msg = this.javaScriptEscape ? JavaScriptUtils.javaScriptEscape(msg) : msg;
+			if (isHtmlEscape() && this.javaScriptEscape && msg != null) {
+				// single pass, without an intermediate HTML-escaped String
+				StringWriter escaped = new StringWriter(msg.length() + 16);
+				HtmlUtils.htmlEscape(msg, new JavaScriptEscapingWriter(escaped));
+				msg = escaped.toString();
+			}
+			else {
+				msg = isHtmlEscape() ? HtmlUtils.htmlEscape(msg) : msg;
+				msg = this.javaScriptEscape ? JavaScriptUtils.javaScriptEscape(msg) : msg;
+			}
 
 			// expose as variable, if demanded
 			if (resolvedVar != null) {
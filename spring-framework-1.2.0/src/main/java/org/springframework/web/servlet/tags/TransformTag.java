@@ -114,16 +114,21 @@ public class TransformTag extends HtmlEscapingAwareTag {
 				// Else, just do a toString.
 				result = resolvedValue.toString();
 			}
-			result = isHtmlEscape() ? HtmlUtils.htmlEscape(result) : result;
 			String resolvedVar = ExpressionEvaluationUtils.evaluateString("var", this.var, pageContext);
 			if (resolvedVar != null) {
+				result = isHtmlEscape() ? HtmlUtils.htmlEscape(result) : result;
 				String resolvedScope = ExpressionEvaluationUtils.evaluateString("scope", this.scope, pageContext);
 				pageContext.setAttribute(resolvedVar, result, TagUtils.getScope(resolvedScope));
 			}
 			else {
 				try {
-					// Else, just print it out.
-					pageContext.getOut().print(result);
+					// Else, just print it out, escaping straight to the page if demanded.
+					if (isHtmlEscape() && result != null) {
+						HtmlUtils.htmlEscape(result, pageContext.getOut());
+					}
+					else {
+						pageContext.getOut().print(result);
+					}
 				}
 				catch (IOException ex) {
 					throw new JspException(ex);
@@ -16,11 +16,11 @@
 
 package org.springframework.web.servlet.view;
 
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 
+import org.springframework.core.CollectionFactory;
 import org.springframework.web.context.support.WebApplicationObjectSupport;
 import org.springframework.web.servlet.View;
 import org.springframework.web.servlet.ViewResolver;
@@ -33,18 +33,78 @@ import org.springframework.web.servlet.ViewResolver;
  * <p>View retrieval is deferred to subclasses via the <code>loadView</code>
  * template method.
  *
+ * <p>The cache is divided into a number of segments with separate locks,
+ * each of them evicting least recently used views once the cache limit has
+ * been reached. A view that is requested by multiple threads at the same time
+ * will only be created once: concurrent callers wait for the first thread to
+ * complete creation. Views that could not be resolved (null returned by
+ * <code>loadView</code>) will be cached as well, to avoid repeated resolution
+ * attempts when chaining view resolvers. Cache statistics are available
+ * through the <code>getCacheHitCount</code> etc accessors.
+ *
+ * <p>The number of segments is fixed on construction, so that lookups never
+ * see a half-configured cache. Least recently used eviction relies on JDK 1.4's
+ * LinkedHashMap or Commons Collections 3.x; on plain JDK 1.3, each segment
+ * is simply cleared once it is full.
+ *
  * @author Rod Johnson
  * @author Juergen Hoeller
  * @see #loadView
+ * @see #setCacheLimit
+ * @see #setCacheUnresolved
  */
 public abstract class AbstractCachingViewResolver extends WebApplicationObjectSupport implements ViewResolver {
 
-	/** View name --> View instance */
-	private final Map viewMap = Collections.synchronizedMap(new HashMap());
+	/** Default maximum number of entries in the view cache */
+	public static final int DEFAULT_CACHE_LIMIT = 1024;
+
+	/** Default number of separately locked cache segments */
+	public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+	/** Marker for a cached null View, i.e. an unresolved view name */
+	private static final Object UNRESOLVED_VIEW = new Object();
+
 
 	/** Whether we should cache views, once resolved */
 	private boolean cache = true;
 
+	/** Whether we should cache unresolved view names */
+	private boolean cacheUnresolved = true;
+
+	/** Maximum number of cached views */
+	private int cacheLimit = DEFAULT_CACHE_LIMIT;
+
+	/** Cache key --> View instance, UNRESOLVED_VIEW marker, or ViewCreation in progress */
+	private final CacheSegment[] segments;
+
+
+	/**
+	 * Create a new AbstractCachingViewResolver with the default
+	 * number of cache segments.
+	 * @see #DEFAULT_CONCURRENCY_LEVEL
+	 */
+	public AbstractCachingViewResolver() {
+		this(DEFAULT_CONCURRENCY_LEVEL);
+	}
+
+	/**
+	 * Create a new AbstractCachingViewResolver.
+	 * @param concurrencyLevel the number of separately locked cache segments,
+	 * i.e. the number of threads that can access the cache without blocking
+	 * each other. A value of 1 results in strict least-recently-used eviction
+	 * across all cached views.
+	 */
+	protected AbstractCachingViewResolver(int concurrencyLevel) {
+		if (concurrencyLevel < 1) {
+			throw new IllegalArgumentException("concurrencyLevel must be at least 1");
+		}
+		this.segments = new CacheSegment[concurrencyLevel];
+		for (int i = 0; i < this.segments.length; i++) {
+			this.segments[i] = new CacheSegment();
+		}
+		applyCacheLimit();
+	}
+
 	/**
 	 * Enable or disable caching. Disable this only for debugging and development.
 	 * Default is for caching to be enabled.
@@ -63,27 +123,155 @@ public abstract class AbstractCachingViewResolver extends WebApplicationObjectSu
 		return cache;
 	}
 
+	/**
+	 * Set whether view names that could not be resolved by this resolver
+	 * should be cached as well. Default is true.
+	 * <p>Turn this off if views may become available at runtime, for example
+	 * when templates get added to a running application: Else, this resolver
+	 * will keep returning null for such a view name until it gets evicted or
+	 * removed from the cache.
+	 * @see #removeFromCache
+	 */
+	public void setCacheUnresolved(boolean cacheUnresolved) {
+		this.cacheUnresolved = cacheUnresolved;
+	}
+
+	/**
+	 * Return if unresolved view names get cached.
+	 */
+	public boolean isCacheUnresolved() {
+		return cacheUnresolved;
+	}
+
+	/**
+	 * Set the maximum number of entries in the view cache. Default is 1024.
+	 * <p>The limit is distributed across the cache segments: Each segment
+	 * evicts its least recently used view once its share has been reached.
+	 * This protects against unbounded growth, for example with dynamically
+	 * built "redirect:" view names.
+	 * <p>Note that changing this setting clears the cache.
+	 */
+	public void setCacheLimit(int cacheLimit) {
+		if (cacheLimit < 1) {
+			throw new IllegalArgumentException("cacheLimit must be at least 1: use 'cache'=false to turn off caching");
+		}
+		this.cacheLimit = cacheLimit;
+		applyCacheLimit();
+	}
+
+	/**
+	 * Return the maximum number of entries in the view cache.
+	 */
+	public int getCacheLimit() {
+		return cacheLimit;
+	}
+
+	/**
+	 * Return the number of separately locked cache segments.
+	 */
+	public int getConcurrencyLevel() {
+		return this.segments.length;
+	}
+
+	/**
+	 * Distribute the cache limit across the segments, each of them
+	 * switching to its new share under its own lock.
+	 */
+	private void applyCacheLimit() {
+		int segmentLimit = this.cacheLimit / this.segments.length;
+		int remainder = this.cacheLimit % this.segments.length;
+		for (int i = 0; i < this.segments.length; i++) {
+			// distribute the remainder, so that the segment limits add up to cacheLimit
+			synchronized (this.segments[i]) {
+				this.segments[i].setLimit(i < remainder ? segmentLimit + 1 : segmentLimit);
+			}
+		}
+	}
+
+
 	public View resolveViewName(String viewName, Locale locale) throws Exception {
 		if (!this.cache) {
 			logger.warn("View caching is SWITCHED OFF -- DEVELOPMENT SETTING ONLY: This can severely impair performance");
 			return createView(viewName, locale);
 		}
-		else {
-			String cacheKey = getCacheKey(viewName, locale);
-			// No synchronization, as we can live with occasional double caching.
-			View view = (View) this.viewMap.get(cacheKey);
-			if (view == null) {
-				// Ask the subclass to create the View object.
-				view = createView(viewName, locale);
-				this.viewMap.put(cacheKey, view);
-				if (logger.isDebugEnabled()) {
-					logger.debug("Cached view '" + cacheKey + "'");
+
+		String cacheKey = getCacheKey(viewName, locale);
+		CacheSegment segment = segmentFor(cacheKey);
+		ViewCreation creation = null;
+		boolean creator = false;
+		synchronized (segment) {
+			Object cached = segment.entries.get(cacheKey);
+			if (cached instanceof ViewCreation) {
+				// Another thread is creating the view: wait for its result below.
+				segment.hitCount++;
+				creation = (ViewCreation) cached;
+			}
+			else if (cached != null) {
+				segment.hitCount++;
+				return (cached != UNRESOLVED_VIEW ? (View) cached : null);
+			}
+			else {
+				segment.missCount++;
+				creation = new ViewCreation();
+				segment.entries.put(cacheKey, creation);
+				creator = true;
+			}
+		}
+
+		if (!creator) {
+			return creation.getView();
+		}
+
+		long startTime = System.currentTimeMillis();
+		boolean completed = false;
+		try {
+			// Ask the subclass to create the View object.
+			View view = createView(viewName, locale);
+			synchronized (segment) {
+				segment.creationCount++;
+				segment.creationTime += System.currentTimeMillis() - startTime;
+				if (segment.entries.get(cacheKey) == creation) {
+					if (segment.limit == 0) {
+						// this segment has no share of a cache limit below the concurrency level
+						segment.entries.remove(cacheKey);
+					}
+					else if (view != null) {
+						segment.entries.put(cacheKey, view);
+					}
+					else if (this.cacheUnresolved) {
+						segment.entries.put(cacheKey, UNRESOLVED_VIEW);
+					}
+					else {
+						segment.entries.remove(cacheKey);
+					}
 				}
 			}
+			creation.setView(view);
+			completed = true;
+			if (logger.isDebugEnabled()) {
+				logger.debug("Cached view '" + cacheKey + "'");
+			}
 			return view;
 		}
+		catch (Exception ex) {
+			creation.setException(ex);
+			completed = true;
+			throw ex;
+		}
+		finally {
+			if (!completed) {
+				creation.setException(null);
+			}
+			if (creation.isFailed()) {
+				synchronized (segment) {
+					if (segment.entries.get(cacheKey) == creation) {
+						segment.entries.remove(cacheKey);
+					}
+				}
+			}
+		}
 	}
-	
+
 	/**
 	 * Provides functionality to clear the cache for a certain view.
 	 * This can be handy in case developer are able to modify views
@@ -99,7 +287,12 @@ public abstract class AbstractCachingViewResolver extends WebApplicationObjectSu
 		}
 		else {
 			String cacheKey = getCacheKey(viewName, locale);
-			if (viewMap.remove(cacheKey) == null) {
+			Object cached = null;
+			CacheSegment segment = segmentFor(cacheKey);
+			synchronized (segment) {
+				cached = segment.entries.remove(cacheKey);
+			}
+			if (cached == null) {
 				// some debug output might be useful
 				if (logger.isDebugEnabled()) {
 					logger.debug("No cached instance for view '" + cacheKey + "' was found");
@@ -107,12 +300,24 @@ public abstract class AbstractCachingViewResolver extends WebApplicationObjectSu
 			} 
 			else {
 				if (logger.isDebugEnabled()) {
-					logger.debug("Cach for view " + cacheKey + " has been cleared");
+					logger.debug("Cache for view " + cacheKey + " has been cleared");
 				}
 			}
 		}
 	}
 
+	/**
+	 * Clear the entire view cache, removing all cached views.
+	 * Statistics will be retained.
+	 */
+	public void clearCache() {
+		for (int i = 0; i < this.segments.length; i++) {
+			synchronized (this.segments[i]) {
+				this.segments[i].entries.clear();
+			}
+		}
+	}
+
 	/**
 	 * Return the cache key for the given viewName and the given locale.
 	 * Needs to regard the locale in general, as a different locale can lead to a
@@ -122,6 +327,85 @@ public abstract class AbstractCachingViewResolver extends WebApplicationObjectSu
 		return viewName + "_" + locale;
 	}
 
+	/**
+	 * Determine the cache segment for the given key.
+	 */
+	private CacheSegment segmentFor(String cacheKey) {
+		int hash = cacheKey.hashCode();
+		// Spread the hash bits, as Strings tend to differ in the low bits only.
+		hash ^= (hash >>> 16);
+		return this.segments[(hash & 0x7fffffff) % this.segments.length];
+	}
+
+
+	/**
+	 * Return the number of view lookups that have been answered from the
+	 * cache, including lookups that waited for a concurrent creation.
+	 */
+	public long getCacheHitCount() {
+		long count = 0;
+		for (int i = 0; i < this.segments.length; i++) {
+			synchronized (this.segments[i]) {
+				count += this.segments[i].hitCount;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Return the number of view lookups that led to view creation.
+	 */
+	public long getCacheMissCount() {
+		long count = 0;
+		for (int i = 0; i < this.segments.length; i++) {
+			synchronized (this.segments[i]) {
+				count += this.segments[i].missCount;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Return the number of views that have been created successfully
+	 * (including unresolved view names).
+	 */
+	public long getViewCreationCount() {
+		long count = 0;
+		for (int i = 0; i < this.segments.length; i++) {
+			synchronized (this.segments[i]) {
+				count += this.segments[i].creationCount;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Return the total time in milliseconds spent in view creation.
+	 */
+	public long getTotalViewCreationTime() {
+		long time = 0;
+		for (int i = 0; i < this.segments.length; i++) {
+			synchronized (this.segments[i]) {
+				time += this.segments[i].creationTime;
+			}
+		}
+		return time;
+	}
+
+	/**
+	 * Return the number of entries currently held in the view cache.
+	 */
+	public int getCacheSize() {
+		int size = 0;
+		for (int i = 0; i < this.segments.length; i++) {
+			synchronized (this.segments[i]) {
+				size += this.segments[i].entries.size();
+			}
+		}
+		return size;
+	}
+
+
 	/**
 	 * Create the actual View object.
 	 * Default implementation delegates to <code>loadView</code>.
@@ -156,4 +440,84 @@ public abstract class AbstractCachingViewResolver extends WebApplicationObjectSu
 	 */
 	protected abstract View loadView(String viewName, Locale locale) throws Exception;
 
+
+	/**
+	 * Segment of the view cache, guarded by its own monitor.
+	 * Holds a bounded least-recently-used map plus statistics.
+	 */
+	private static class CacheSegment {
+
+		private Map entries;
+
+		private int limit;
+
+		private long hitCount;
+
+		private long missCount;
+
+		private long creationCount;
+
+		private long creationTime;
+
+		/**
+		 * Switch to the given limit, discarding all cached entries.
+		 * A segment without share only tracks views in creation.
+		 */
+		public void setLimit(int limit) {
+			this.limit = limit;
+			this.entries = (limit > 0 ? CollectionFactory.createLruMapIfPossible(limit) : new HashMap(4));
+		}
+	}
+
+
+	/**
+	 * Placeholder for a view that is currently being created,
+	 * allowing concurrent callers to wait for the result.
+	 */
+	private static class ViewCreation {
+
+		private final Thread creatingThread = Thread.currentThread();
+
+		private boolean done;
+
+		private boolean failed;
+
+		private View view;
+
+		private Exception exception;
+
+		public synchronized void setView(View view) {
+			this.view = view;
+			this.done = true;
+			notifyAll();
+		}
+
+		public synchronized void setException(Exception exception) {
+			this.exception = exception;
+			this.failed = true;
+			this.done = true;
+			notifyAll();
+		}
+
+		public synchronized boolean isFailed() {
+			return failed;
+		}
+
+		public synchronized View getView() throws Exception {
+			if (!this.done && Thread.currentThread() == this.creatingThread) {
+				throw new IllegalStateException("Circular view resolution: view is currently in creation");
+			}
+			while (!this.done) {
+				wait();
+			}
+			if (this.failed) {
+				if (this.exception != null) {
+					throw this.exception;
+				}
+				throw new IllegalStateException("View creation failed in concurrent thread");
+			}
+			return this.view;
+		}
+	}
+
 }
@@ -18,8 +18,10 @@ package org.springframework.web.servlet.view.xslt;
 
 import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URL;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.Map;
 
 import javax.servlet.ServletException;
@@ -36,11 +38,14 @@ import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.URIResolver;
 import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXSource;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
 import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
 
+import org.springframework.beans.BeanUtils;
 import org.springframework.context.ApplicationContextException;
 import org.springframework.core.io.Resource;
 import org.springframework.util.xml.SimpleTransformErrorListener;
@@ -51,6 +56,8 @@ import org.springframework.web.servlet.view.AbstractView;
  * Subclasses must <b>either</b> provide the XML W3C Document or Node to
  * transform by overriding <code>createDomNode()</code>, <b>or</b> provide the
  * <code>Source</code> to transform by overriding <code>createXsltSource()</code>.
+ * If neither is overridden, the model is streamed into the transformer as SAX
+ * events by a ModelXmlReader, without building a DOM.
  *
  * <p>Note that <code>createXsltSource()</code> is the preferred method which all
  * new subclasses should override from Spring 1.2.  <code>createDomNode()</code>
@@ -68,19 +75,36 @@ import org.springframework.web.servlet.view.AbstractView;
  * <li>cache (optional, default=true): debug setting only
  * <li>errorListener (optional): ErrorListener implementation for custom
  * handling of warnings and errors during TransformerFactory operations.
+ * <li>transformerFactoryClass (optional): TransformerFactory implementation
+ * to use instead of the JAXP default, for example a compiling processor
+ * <li>transformerPoolSize (optional, default=8): maximum number of idle
+ * Transformers kept for reuse
+ * <li>outputBufferSize (optional, default=8192): size of the buffer
+ * in front of the response OutputStream
  * </ul>
  *
+ * <p>The stylesheet is compiled once into a <code>Templates</code> object.
+ * Transformers created from it are pooled per view: creating a Transformer
+ * is expensive with most XSLT processors, while a Transformer can be reused
+ * for subsequent transformations once its parameters and output properties
+ * have been reset.
+ *
  * <p>Setting cache to false will cause the templates object to be reloaded
  * for each rendering. This is useful during development, but will seriously
  * affect performance in production and isn't thread-safe.
  *
  * @author Rod Johnson
  * @author Darren Davison
+ * @see ModelXmlReader
  */
 public abstract class AbstractXsltView extends AbstractView {
 
 	public static final String DEFAULT_ROOT = "DocRoot";
 
+	public static final int DEFAULT_TRANSFORMER_POOL_SIZE = 8;
+
+	public static final int DEFAULT_OUTPUT_BUFFER_SIZE = 8192;
+
 
 	/**
 	 * URL of stylesheet
@@ -99,6 +123,12 @@ public abstract class AbstractXsltView extends AbstractView {
 
 	private boolean cache = true;
 
+	private Class transformerFactoryClass;
+
+	private int transformerPoolSize = DEFAULT_TRANSFORMER_POOL_SIZE;
+
+	private int outputBufferSize = DEFAULT_OUTPUT_BUFFER_SIZE;
+
 	private TransformerFactory transformerFactory;
 
 	/**
@@ -108,6 +138,11 @@ public abstract class AbstractXsltView extends AbstractView {
 
 	private ErrorListener errorListener = new SimpleTransformErrorListener(logger);
 
+	/**
+	 * Idle Transformers for the current Templates, guarded by itself
+	 */
+	private final LinkedList transformerPool = new LinkedList();
+
 
 	/**
 	 * Set the location of the XSLT stylesheet.
@@ -148,6 +183,44 @@ public abstract class AbstractXsltView extends AbstractView {
 		this.cache = cache;
 	}
 
+	/**
+	 * Set the TransformerFactory implementation to use, for example
+	 * Xalan's XSLTC, which compiles stylesheets into translets.
+	 * Default is the JAXP default as determined by
+	 * <code>TransformerFactory.newInstance()</code>.
+	 * @see javax.xml.transform.TransformerFactory#newInstance
+	 */
+	public void setTransformerFactoryClass(Class transformerFactoryClass) {
+		if (transformerFactoryClass != null && !TransformerFactory.class.isAssignableFrom(transformerFactoryClass)) {
+			throw new IllegalArgumentException("transformerFactoryClass must be a subclass of TransformerFactory");
+		}
+		this.transformerFactoryClass = transformerFactoryClass;
+	}
+
+	/**
+	 * Set the maximum number of idle Transformers to keep for reuse.
+	 * Default is 8. Setting this to 0 creates a new Transformer for each
+	 * rendering. The pool does not limit the number of concurrent
+	 * renderings: Transformers beyond the pool size are simply discarded.
+	 */
+	public void setTransformerPoolSize(int transformerPoolSize) {
+		if (transformerPoolSize < 0) {
+			throw new IllegalArgumentException("transformerPoolSize must not be negative");
+		}
+		this.transformerPoolSize = transformerPoolSize;
+	}
+
+	/**
+	 * Set the size of the buffer in front of the response OutputStream.
+	 * Default is 8192 bytes.
+	 */
+	public void setOutputBufferSize(int outputBufferSize) {
+		if (outputBufferSize <= 0) {
+			throw new IllegalArgumentException("outputBufferSize must be positive");
+		}
+		this.outputBufferSize = outputBufferSize;
+	}
+
 	/**
 	 * Set an implementation of the <code>javax.xml.transform.ErrorListener</code>
 	 * interface for custom handling of transformation errors and warnings.
@@ -165,7 +238,7 @@ public abstract class AbstractXsltView extends AbstractView {
 	 * Here we load our template, as we need the ApplicationContext to do it.
 	 */
 	protected final void initApplicationContext() throws ApplicationContextException {
-		this.transformerFactory = TransformerFactory.newInstance();
+		this.transformerFactory = newTransformerFactory();
 		this.transformerFactory.setErrorListener(this.errorListener);
 
 		if (this.uriResolver != null) {
@@ -183,10 +256,28 @@ public abstract class AbstractXsltView extends AbstractView {
 		cacheTemplates();
 	}
 
+	/**
+	 * Instantiate a new TransformerFactory for this view.
+	 * <p>Default implementation creates an instance of the specified
+	 * transformerFactoryClass, if any, or the JAXP default otherwise.
+	 * Can be overridden in subclasses.
+	 * @return the TransformerFactory instance
+	 * @see #setTransformerFactoryClass
+	 */
+	protected TransformerFactory newTransformerFactory() {
+		if (this.transformerFactoryClass != null) {
+			return (TransformerFactory) BeanUtils.instantiateClass(this.transformerFactoryClass);
+		}
+		return TransformerFactory.newInstance();
+	}
+
 	private synchronized void cacheTemplates() throws ApplicationContextException {
 		if (this.stylesheetLocation != null) {
 			try {
 				this.templates = this.transformerFactory.newTemplates(getStylesheetSource(this.stylesheetLocation));
+				synchronized (this.transformerPool) {
+					this.transformerPool.clear();
+				}
 				if (logger.isDebugEnabled()) {
 					logger.debug("Loaded templates [" + this.templates + "] in XSLT view '" + getBeanName() + "'");
 				}
@@ -269,6 +360,10 @@ public abstract class AbstractXsltView extends AbstractView {
 				source = new DOMSource(dom);
 			else
 				source = createXsltSource(model, (docRoot == null) ? this.root : docRoot, request, response);
+			if (source == null) {
+				// neither overridden: stream the model rather than building a DOM
+				source = (docRoot == null) ? createModelSource(model, this.root) : createModelSource(singleModel, docRoot);
+			}
 		}
 
 		doTransform(model, source, request, response);
@@ -299,6 +394,20 @@ public abstract class AbstractXsltView extends AbstractView {
 		return null;
 	}
 
+	/**
+	 * Return a <code>Source</code> that streams the given model object as SAX
+	 * events. Used if neither <code>createXsltSource</code> nor
+	 * <code>createDomNode</code> returns a Source.
+	 * <p>Default implementation returns a SAXSource backed by a ModelXmlReader.
+	 * @param model the model Map, or the single model object
+	 * @param root name for root element
+	 * @return the Source to transform
+	 * @see ModelXmlReader
+	 */
+	protected Source createModelSource(Object model, String root) {
+		return new SAXSource(new ModelXmlReader(model, root), new InputSource());
+	}
+
 	/**
 	 * Return the XML <code>Node</code> to transform.
 	 * <p>
@@ -347,9 +456,9 @@ public abstract class AbstractXsltView extends AbstractView {
 	 */
 	protected void doTransform(Map model, Node dom, HttpServletRequest request, HttpServletResponse response)
 			throws Exception {
-		doTransform(new DOMSource(dom), getParameters(request),
-				new StreamResult(new BufferedOutputStream(response.getOutputStream())),
-				response.getCharacterEncoding());
+		OutputStream out = new BufferedOutputStream(response.getOutputStream(), this.outputBufferSize);
+		doTransform(new DOMSource(dom), getParameters(request), new StreamResult(out), response.getCharacterEncoding());
+		out.flush();
 	}
 
 	/**
@@ -369,9 +478,9 @@ public abstract class AbstractXsltView extends AbstractView {
 	 */
 	protected void doTransform(Map model, Source source, HttpServletRequest request, HttpServletResponse response)
 			throws Exception {
-		doTransform(source, getParameters(request),
-				new StreamResult(new BufferedOutputStream(response.getOutputStream())),
-				response.getCharacterEncoding());
+		OutputStream out = new BufferedOutputStream(response.getOutputStream(), this.outputBufferSize);
+		doTransform(source, getParameters(request), new StreamResult(out), response.getCharacterEncoding());
+		out.flush();
 	}
 
 	/**
@@ -401,9 +510,8 @@ public abstract class AbstractXsltView extends AbstractView {
 	protected void doTransform(Source source, Map parameters, Result result, String encoding)
 			throws Exception {
 		try {
-			Transformer trans = (this.templates != null) ?
-					this.templates.newTransformer() : // we have a stylesheet
-					this.transformerFactory.newTransformer(); // just a copy
+			Templates templates = this.templates;
+			Transformer trans = obtainTransformer(templates);
 
 			// apply any subclass supplied parameters to the transformer
 			if (parameters != null) {
@@ -426,6 +534,9 @@ public abstract class AbstractXsltView extends AbstractView {
 			if (logger.isDebugEnabled()) {
 				logger.debug("XSLT transformed with stylesheet [" + this.stylesheetLocation + "]");
 			}
+
+			// only reached on success: a failed Transformer might be left in an inconsistent state
+			releaseTransformer(trans, templates);
 		}
 		catch (TransformerConfigurationException ex) {
 			throw new ServletException("Couldn't create XSLT transformer for stylesheet [" + this.stylesheetLocation +
@@ -437,6 +548,45 @@ public abstract class AbstractXsltView extends AbstractView {
 		}
 	}
 
+	/**
+	 * Take an idle Transformer for the given Templates from the pool,
+	 * or create a new one if none is available.
+	 * @param templates the current Templates, or null for a copy transform
+	 */
+	private Transformer obtainTransformer(Templates templates) throws TransformerConfigurationException {
+		if (templates == null) {
+			// just a copy
+			return this.transformerFactory.newTransformer();
+		}
+		synchronized (this.transformerPool) {
+			if (!this.transformerPool.isEmpty()) {
+				return (Transformer) this.transformerPool.removeFirst();
+			}
+		}
+		return templates.newTransformer();
+	}
+
+	/**
+	 * Reset the given Transformer and return it to the pool, unless the pool
+	 * is full or the Templates have been replaced in the meantime.
+	 * Copy Transformers are not pooled: not all processors support
+	 * resetting them, and copying is only a fallback for unconfigured views.
+	 * @param trans the Transformer to release
+	 * @param templates the Templates the Transformer was created from
+	 */
+	private void releaseTransformer(Transformer trans, Templates templates) {
+		if (templates == null) {
+			return;
+		}
+		trans.clearParameters();
+		trans.setOutputProperties(null);
+		synchronized (this.transformerPool) {
+			if (templates == this.templates && this.transformerPool.size() < this.transformerPoolSize) {
+				this.transformerPool.addFirst(trans);
+			}
+		}
+	}
+
 	/**
 	 * Return a Map of parameters to be applied to the stylesheet.
 	 * Subclasses can override this method in order to apply one or more
@@ -0,0 +1,359 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.web.servlet.view.xslt;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.DTDHandler;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.AttributesImpl;
+
+import org.springframework.beans.BeanUtils;
+
+/**
+ * SAX <code>XMLReader</code> that streams an object graph as SAX events,
+ * without building an intermediate DOM. Typically wrapped in a
+ * <code>javax.xml.transform.sax.SAXSource</code> and handed straight
+ * to a <code>Transformer</code>.
+ *
+ * <p>Follows the mapping conventions of Domify's <code>ElementAdapter</code>:
+ * <ul>
+ * <li>Strings, numbers, booleans, characters, dates, locales and classes
+ * are rendered as text content.
+ * <li>Collections and arrays are rendered as a sequence of "item" elements.
+ * <li>Maps are rendered as a sequence of "item" elements, each carrying
+ * a "key" attribute.
+ * <li>Any other object is rendered as one child element per readable
+ * bean property, named after the property.
+ * </ul>
+ * A Map passed in as the root object is rendered with one child element
+ * per entry, named after the key, which is what an XSLT view expects
+ * for its model. Keys that are not valid XML names fall back to the
+ * "item" element with a "key" attribute.
+ *
+ * <p>Objects that are already being rendered further up the tree are
+ * rendered as empty elements, to protect against cyclic object graphs.
+ *
+ * <p>Not thread-safe: a new instance is supposed to be created for each
+ * parse operation, which is cheap.
+ *
+ * @since 1.2.1
+ * @see AbstractXsltView#createModelSource
+ * @see javax.xml.transform.sax.SAXSource
+ */
+public class ModelXmlReader implements XMLReader {
+
+	public static final String ITEM_ELEMENT = "item";
+
+	public static final String KEY_ATTRIBUTE = "key";
+
+	private static final String NAMESPACES_FEATURE = "http://xml.org/sax/features/namespaces";
+
+	private static final String NAMESPACE_PREFIXES_FEATURE = "http://xml.org/sax/features/namespace-prefixes";
+
+	private static final AttributesImpl NO_ATTRIBUTES = new AttributesImpl();
+
+
+	private final Object model;
+
+	private final String rootName;
+
+	private ContentHandler contentHandler;
+
+	private DTDHandler dtdHandler;
+
+	private EntityResolver entityResolver;
+
+	private ErrorHandler errorHandler;
+
+	private boolean namespaces = true;
+
+	private boolean namespacePrefixes = false;
+
+	/** Objects currently being rendered, for cycle detection */
+	private final List objectsInProgress = new ArrayList();
+
+	private final AttributesImpl keyAttributes = new AttributesImpl();
+
+	private char[] textBuffer = new char[64];
+
+
+	/**
+	 * Create a new ModelXmlReader for the given object.
+	 * @param model the object to render, usually the model Map
+	 * @param rootName the name of the document element
+	 */
+	public ModelXmlReader(Object model, String rootName) {
+		if (rootName == null) {
+			throw new IllegalArgumentException("rootName is required");
+		}
+		this.model = model;
+		this.rootName = rootName;
+	}
+
+
+	public boolean getFeature(String name) throws SAXNotRecognizedException {
+		if (NAMESPACES_FEATURE.equals(name)) {
+			return this.namespaces;
+		}
+		if (NAMESPACE_PREFIXES_FEATURE.equals(name)) {
+			return this.namespacePrefixes;
+		}
+		throw new SAXNotRecognizedException(name);
+	}
+
+	public void setFeature(String name, boolean value) throws SAXNotRecognizedException {
+		if (NAMESPACES_FEATURE.equals(name)) {
+			this.namespaces = value;
+		}
+		else if (NAMESPACE_PREFIXES_FEATURE.equals(name)) {
+			this.namespacePrefixes = value;
+		}
+		else {
+			throw new SAXNotRecognizedException(name);
+		}
+	}
+
+	public Object getProperty(String name) throws SAXNotRecognizedException {
+		throw new SAXNotRecognizedException(name);
+	}
+
+	public void setProperty(String name, Object value) throws SAXNotRecognizedException {
+		throw new SAXNotRecognizedException(name);
+	}
+
+	public void setEntityResolver(EntityResolver entityResolver) {
+		this.entityResolver = entityResolver;
+	}
+
+	public EntityResolver getEntityResolver() {
+		return this.entityResolver;
+	}
+
+	public void setDTDHandler(DTDHandler dtdHandler) {
+		this.dtdHandler = dtdHandler;
+	}
+
+	public DTDHandler getDTDHandler() {
+		return this.dtdHandler;
+	}
+
+	public void setContentHandler(ContentHandler contentHandler) {
+		this.contentHandler = contentHandler;
+	}
+
+	public ContentHandler getContentHandler() {
+		return this.contentHandler;
+	}
+
+	public void setErrorHandler(ErrorHandler errorHandler) {
+		this.errorHandler = errorHandler;
+	}
+
+	public ErrorHandler getErrorHandler() {
+		return this.errorHandler;
+	}
+
+
+	/**
+	 * Render the model object. The given InputSource is ignored.
+	 */
+	public void parse(InputSource input) throws SAXException {
+		parse();
+	}
+
+	/**
+	 * Render the model object. The given system id is ignored.
+	 */
+	public void parse(String systemId) throws SAXException {
+		parse();
+	}
+
+	private void parse() throws SAXException {
+		if (this.contentHandler == null) {
+			throw new IllegalStateException("No ContentHandler set");
+		}
+		this.contentHandler.startDocument();
+		if (this.model instanceof Map) {
+			startElement(this.rootName, NO_ATTRIBUTES);
+			this.objectsInProgress.add(this.model);
+			for (Iterator it = ((Map) this.model).entrySet().iterator(); it.hasNext();) {
+				Map.Entry entry = (Map.Entry) it.next();
+				String key = String.valueOf(entry.getKey());
+				if (isXmlName(key)) {
+					writeElement(key, NO_ATTRIBUTES, entry.getValue());
+				}
+				else {
+					writeElement(ITEM_ELEMENT, getKeyAttributes(key), entry.getValue());
+				}
+			}
+			this.objectsInProgress.remove(this.objectsInProgress.size() - 1);
+			endElement(this.rootName);
+		}
+		else {
+			writeElement(this.rootName, NO_ATTRIBUTES, this.model);
+		}
+		this.contentHandler.endDocument();
+	}
+
+	/**
+	 * Write an element with the given name for the given value,
+	 * including its entire content.
+	 */
+	protected void writeElement(String name, AttributesImpl attributes, Object value) throws SAXException {
+		startElement(name, attributes);
+		if (value != null && !isInProgress(value)) {
+			if (isTextValue(value)) {
+				writeText(value.toString());
+			}
+			else {
+				this.objectsInProgress.add(value);
+				if (value instanceof Collection) {
+					for (Iterator it = ((Collection) value).iterator(); it.hasNext();) {
+						writeElement(ITEM_ELEMENT, NO_ATTRIBUTES, it.next());
+					}
+				}
+				else if (value.getClass().isArray()) {
+					int length = Array.getLength(value);
+					for (int i = 0; i < length; i++) {
+						writeElement(ITEM_ELEMENT, NO_ATTRIBUTES, Array.get(value, i));
+					}
+				}
+				else if (value instanceof Map) {
+					for (Iterator it = ((Map) value).entrySet().iterator(); it.hasNext();) {
+						Map.Entry entry = (Map.Entry) it.next();
+						writeElement(ITEM_ELEMENT, getKeyAttributes(String.valueOf(entry.getKey())), entry.getValue());
+					}
+				}
+				else {
+					writeBeanProperties(value);
+				}
+				this.objectsInProgress.remove(this.objectsInProgress.size() - 1);
+			}
+		}
+		endElement(name);
+	}
+
+	/**
+	 * Write one element per readable bean property of the given object.
+	 * Property descriptors are cached per class by BeanUtils.
+	 */
+	private void writeBeanProperties(Object bean) throws SAXException {
+		PropertyDescriptor[] pds = BeanUtils.getPropertyDescriptors(bean.getClass());
+		for (int i = 0; i < pds.length; i++) {
+			Method readMethod = pds[i].getReadMethod();
+			if (readMethod != null && readMethod.getDeclaringClass() != Object.class) {
+				Object propertyValue = null;
+				try {
+					propertyValue = readMethod.invoke(bean, new Object[0]);
+				}
+				catch (InvocationTargetException ex) {
+					Throwable targetEx = ex.getTargetException();
+					throw new SAXException("Could not read property '" + pds[i].getName() + "' of [" + bean + "]: " +
+							targetEx, (targetEx instanceof Exception) ? (Exception) targetEx : ex);
+				}
+				catch (IllegalAccessException ex) {
+					throw new SAXException("Could not access property '" + pds[i].getName() + "' of [" + bean + "]", ex);
+				}
+				writeElement(pds[i].getName(), NO_ATTRIBUTES, propertyValue);
+			}
+		}
+	}
+
+	/**
+	 * Determine whether the given value should be rendered as text
+	 * rather than as nested elements.
+	 * <p>Default implementation returns true for Strings, Numbers, Booleans,
+	 * Characters, Dates, Locales and Classes. Can be overridden in subclasses.
+	 * @param value the value to check (never null)
+	 */
+	protected boolean isTextValue(Object value) {
+		return (value instanceof String || value instanceof Number || value instanceof Boolean ||
+				value instanceof Character || value instanceof Date || value instanceof Locale ||
+				value instanceof Class);
+	}
+
+	private boolean isInProgress(Object value) {
+		for (int i = this.objectsInProgress.size() - 1; i >= 0; i--) {
+			if (this.objectsInProgress.get(i) == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private AttributesImpl getKeyAttributes(String key) {
+		this.keyAttributes.clear();
+		this.keyAttributes.addAttribute("", KEY_ATTRIBUTE, KEY_ATTRIBUTE, "CDATA", key);
+		return this.keyAttributes;
+	}
+
+	private void startElement(String name, AttributesImpl attributes) throws SAXException {
+		this.contentHandler.startElement("", name, name, attributes);
+	}
+
+	private void endElement(String name) throws SAXException {
+		this.contentHandler.endElement("", name, name);
+	}
+
+	private void writeText(String text) throws SAXException {
+		int length = text.length();
+		if (length > this.textBuffer.length) {
+			this.textBuffer = new char[Math.max(length, this.textBuffer.length * 2)];
+		}
+		text.getChars(0, length, this.textBuffer, 0);
+		this.contentHandler.characters(this.textBuffer, 0, length);
+	}
+
+	/**
+	 * Check whether the given String is usable as an XML element name.
+	 * Deliberately stricter than the XML specification.
+	 */
+	private static boolean isXmlName(String name) {
+		if (name.length() == 0) {
+			return false;
+		}
+		char first = name.charAt(0);
+		if (!Character.isLetter(first) && first != '_') {
+			return false;
+		}
+		for (int i = 1; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (!Character.isLetterOrDigit(c) && c != '_' && c != '-' && c != '.') {
+				return false;
+			}
+		}
+		return !name.regionMatches(true, 0, "xml", 0, 3);
+	}
+
+}
@@ -16,6 +16,8 @@
 
 package org.springframework.web.util;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -40,6 +42,37 @@ public abstract class HtmlUtils {
 
 	private static final Map ENTITIES = new HashMap(252);
 
+	/**
+	 * Ranges of characters that get escaped (inclusive),
+	 * according to the HTML 4.01 character entity set.
+	 */
+	private static final int[][] ESCAPED_RANGES = new int[][] {
+		{34, 34}, {38, 38}, {60, 60}, {62, 62}, {160, 255}, {338, 339}, {352, 353}, {376, 376}, {402, 402},
+		{710, 710}, {732, 732}, {913, 929}, {931, 937}, {945, 969}, {977, 978}, {982, 982},
+		{8194, 8195}, {8201, 8201}, {8204, 8207}, {8211, 8212}, {8216, 8218}, {8220, 8222}, {8224, 8226},
+		{8230, 8230}, {8240, 8240}, {8242, 8243}, {8249, 8250}, {8254, 8254}, {8260, 8260}, {8364, 8364},
+		{8465, 8465}, {8472, 8472}, {8476, 8476}, {8482, 8482}, {8501, 8501}, {8592, 8596}, {8629, 8629},
+		{8656, 8660}, {8704, 8704}, {8706, 8707}, {8709, 8709}, {8711, 8713}, {8715, 8715}, {8719, 8719},
+		{8721, 8722}, {8727, 8727}, {8730, 8730}, {8733, 8734}, {8736, 8736}, {8743, 8747}, {8756, 8756},
+		{8764, 8764}, {8773, 8773}, {8776, 8776}, {8800, 8801}, {8804, 8805}, {8834, 8836}, {8838, 8839},
+		{8853, 8853}, {8855, 8855}, {8869, 8869}, {8901, 8901}, {8968, 8971}, {9001, 9002}, {9674, 9674},
+		{9824, 9824}, {9827, 9827}
+	};
+
+	/**
+	 * Decimal character references for all characters, indexed by character:
+	 * null for characters that do not need to be escaped.
+	 */
+	private static final char[][] CHARACTER_REFERENCES = new char[65536][];
+
+	static {
+		for (int i = 0; i < ESCAPED_RANGES.length; i++) {
+			for (int c = ESCAPED_RANGES[i][0]; c <= ESCAPED_RANGES[i][1]; c++) {
+				CHARACTER_REFERENCES[c] = (REFERENCE_START + c + ";").toCharArray();
+			}
+		}
+	}
+
 	static {
 		ENTITIES.put("nbsp", new Integer(160));
 		ENTITIES.put("iexcl", new Integer(161));
@@ -300,6 +333,8 @@ public abstract class HtmlUtils {
 	 * Handles complete character set defined in HTML 4.01 recommendation.
 	 * <p>Escapes all special characters to their corresponding numerial
 	 * reference in the decimal format: &#<i>Decimal</i>;
+	 * <p>Returns the given String itself if it does not contain any
+	 * special characters, without creating a new String.
 	 * <p>Reference:
 	 * <a href="http://www.w3.org/TR/html4/sgml/entities.html">
 	 * http://www.w3.org/TR/html4/sgml/entities.html
@@ -312,293 +347,71 @@ public abstract class HtmlUtils {
 			return null;
 		}
 
-		StringBuffer escaped = new StringBuffer(input.length());
-		for (int i = 0; i < input.length(); i++) {
-			char c = input.charAt(i);
-			// handle non-special ASCII chars first since they will be most common
-			if ((c >= 0 && c <= 33)
-			    || (c >= 35 && c <= 37)
-			    || (c >= 39 && c <= 59)
-			    || (c == 61)
-			    || (c >= 63 && c <= 159)) {
-				escaped.append(c);
-				continue;
-			}
+		// Scan for the first special character: most input doesn't contain any.
+		int length = input.length();
+		int first = 0;
+		while (first < length && CHARACTER_REFERENCES[input.charAt(first)] == null) {
+			first++;
+		}
+		if (first == length) {
+			return input;
+		}
 
-			// handle special chars
-			if (c == 34) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 38) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 60) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 62) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c >= 160 && c <= 255) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c >= 338 && c <= 339) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c >= 352 && c <= 353) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 376) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 402) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 710) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 732) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c >= 913 && c <= 929) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c >= 931 && c <= 937) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c >= 945 && c <= 969) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c >= 977 && c <= 978) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 982) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c >= 8194 && c <= 8195) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 8201) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c >= 8204 && c <= 8207) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c >= 8211 && c <= 8212) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c >= 8216 && c <= 8218) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c >= 8220 && c <= 8222) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c >= 8224 && c <= 8226) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 8230) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 8240) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c >= 8242 && c <= 8243) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c >= 8249 && c <= 8250) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 8254) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 8260) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 8364) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 8465) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 8472) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 8476) {
-				writeDecimalReference(c, escaped);
-				continue;
+		// Determine the exact length of the result, to fill a single char array.
+		int escapedLength = length;
+		for (int i = first; i < length; i++) {
+			char[] reference = CHARACTER_REFERENCES[input.charAt(i)];
+			if (reference != null) {
+				escapedLength += reference.length - 1;
 			}
-			if (c == 8482) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 8501) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c >= 8592 && c <= 8596) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 8629) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c >= 8656 && c <= 8660) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 8704) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c >= 8706 && c <= 8707) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 8709) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c >= 8711 && c <= 8713) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 8715) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 8719) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c >= 8721 && c <= 8722) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 8727) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 8730) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c >= 8733 && c <= 8734) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 8736) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c >= 8743 && c <= 8747) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 8756) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 8764) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 8773) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 8776) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c >= 8800 && c <= 8801) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c >= 8804 && c <= 8805) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c >= 8834 && c <= 8836) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c >= 8838 && c <= 8839) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 8853) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 8855) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 8869) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 8901) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c >= 8968 && c <= 8971) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c >= 9001 && c <= 9002) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 9674) {
-				writeDecimalReference(c, escaped);
-				continue;
-			}
-			if (c == 9824) {
-				writeDecimalReference(c, escaped);
-				continue;
+		}
+		char[] escaped = new char[escapedLength];
+		input.getChars(0, first, escaped, 0);
+		int pos = first;
+		for (int i = first; i < length; i++) {
+			char c = input.charAt(i);
+			char[] reference = CHARACTER_REFERENCES[c];
+			if (reference != null) {
+				System.arraycopy(reference, 0, escaped, pos, reference.length);
+				pos += reference.length;
 			}
-			if (c == 9827) {
-				writeDecimalReference(c, escaped);
-				continue;
+			else {
+				escaped[pos++] = c;
 			}
+		}
+		return new String(escaped);
+	}
 
-			// all other chars
-			escaped.append(c);
+	/**
+	 * Turn special characters into HTML character references,
+	 * writing the result to the given Writer.
+	 * <p>Same escaping as <code>htmlEscape(String)</code>, but without building
+	 * an intermediate String: Plain character sequences are written as-is.
+	 * Typically used with a JspWriter or a servlet response Writer.
+	 * @param input the (unescaped) input string (may be null)
+	 * @param out the Writer to write the escaped string to
+	 * @throws IOException if thrown by the Writer
+	 * @see #htmlEscape(String)
+	 */
+	public static void htmlEscape(String input, Writer out) throws IOException {
+		if (input == null) {
+			return;
+		}
+		int length = input.length();
+		int start = 0;
+		for (int i = 0; i < length; i++) {
+			char[] reference = CHARACTER_REFERENCES[input.charAt(i)];
+			if (reference != null) {
+				if (i > start) {
+					out.write(input, start, i - start);
+				}
+				out.write(reference);
+				start = i + 1;
+			}
+		}
+		if (start < length) {
+			out.write(input, start, length - start);
 		}
-		return escaped.toString();
 	}
 
 	/**
@@ -690,15 +503,4 @@ public abstract class HtmlUtils {
 		return unescaped.toString();
 	}
 
-	/**
-	 * Write the given character as decimal reference.
-	 * @param c the character to write
-	 * @param buf the buffer to write into
-	 */
-	private static void writeDecimalReference(char c, StringBuffer buf) {
-		buf.append(REFERENCE_START);
-		buf.append((int) c);
-		buf.append(';');
-	}
-
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.web.util;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writer decorator that escapes all characters written to it
+ * according to JavaScript, like <code>JavaScriptUtils.javaScriptEscape</code>.
+ * Plain character sequences are passed on to the target Writer as-is.
+ *
+ * <p>Allows for chaining with <code>HtmlUtils.htmlEscape(String, Writer)</code>,
+ * to apply HTML and JavaScript escaping in a single pass without building
+ * an intermediate HTML-escaped String.
+ *
+ * @since 1.2.1
+ * @see JavaScriptUtils#javaScriptEscape(String)
+ * @see HtmlUtils#htmlEscape(String, java.io.Writer)
+ */
+public class JavaScriptEscapingWriter extends Writer {
+
+	private final Writer target;
+
+	/** Whether the last character written was a carriage return */
+	private boolean afterCarriageReturn;
+
+
+	/**
+	 * Create a new JavaScriptEscapingWriter for the given target Writer.
+	 * @param target the Writer to write the escaped characters to
+	 */
+	public JavaScriptEscapingWriter(Writer target) {
+		if (target == null) {
+			throw new IllegalArgumentException("target is required");
+		}
+		this.target = target;
+	}
+
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		int end = off + len;
+		int start = off;
+		for (int i = off; i < end; i++) {
+			char[] sequence = JavaScriptUtils.getEscapeSequence(cbuf[i], this.afterCarriageReturn);
+			this.afterCarriageReturn = (cbuf[i] == '\r');
+			if (sequence != null) {
+				if (i > start) {
+					this.target.write(cbuf, start, i - start);
+				}
+				this.target.write(sequence);
+				start = i + 1;
+			}
+		}
+		if (start < end) {
+			this.target.write(cbuf, start, end - start);
+		}
+	}
+
+	public void write(String str, int off, int len) throws IOException {
+		int end = off + len;
+		int start = off;
+		for (int i = off; i < end; i++) {
+			char c = str.charAt(i);
+			char[] sequence = JavaScriptUtils.getEscapeSequence(c, this.afterCarriageReturn);
+			this.afterCarriageReturn = (c == '\r');
+			if (sequence != null) {
+				if (i > start) {
+					this.target.write(str, start, i - start);
+				}
+				this.target.write(sequence);
+				start = i + 1;
+			}
+		}
+		if (start < end) {
+			this.target.write(str, start, end - start);
+		}
+	}
+
+	public void flush() throws IOException {
+		this.target.flush();
+	}
+
+	public void close() throws IOException {
+		this.target.close();
+	}
+
+}
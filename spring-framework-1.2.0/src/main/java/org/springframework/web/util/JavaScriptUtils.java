@@ -16,6 +16,9 @@
 
 package org.springframework.web.util;
 
+import java.io.IOException;
+import java.io.Writer;
+
 /**
  * Utility class for JavaScript escaping.
  * Escapes based on the JavaScript 1.5 recommendation.
@@ -30,9 +33,31 @@ package org.springframework.web.util;
  */
 public class JavaScriptUtils {
 
+	/**
+	 * Escape sequences for ASCII characters, indexed by character:
+	 * null for characters that do not need to be escaped.
+	 */
+	private static final char[][] ESCAPE_SEQUENCES = new char[128][];
+
+	/** Line feeds directly following a carriage return are dropped */
+	private static final char[] NO_ESCAPE_SEQUENCE = new char[0];
+
+	static {
+		ESCAPE_SEQUENCES['"'] = "\\\"".toCharArray();
+		ESCAPE_SEQUENCES['\''] = "\\'".toCharArray();
+		ESCAPE_SEQUENCES['\\'] = "\\\\".toCharArray();
+		ESCAPE_SEQUENCES['\t'] = "\\t".toCharArray();
+		ESCAPE_SEQUENCES['\n'] = "\\n".toCharArray();
+		ESCAPE_SEQUENCES['\r'] = "\\n".toCharArray();
+		ESCAPE_SEQUENCES['\f'] = "\\f".toCharArray();
+	}
+
+
 	/**
 	 * Turn special characters into escaped characters conforming to JavaScript.
 	 * Handles complete character set defined in HTML 4.01 recommendation.
+	 * <p>Returns the given String itself if it does not contain any
+	 * special characters, without creating a new String.
 	 * @param input the input string
 	 * @return the escaped string
 	 */
@@ -41,41 +66,95 @@ public class JavaScriptUtils {
 			return input;
 		}
 
-		StringBuffer filtered = new StringBuffer(input.length());
-		char prevChar = '\u0000';
-		char c;
-		for (int i = 0; i < input.length(); i++) {
-			c = input.charAt(i);
-			if (c == '"') {
-				filtered.append("\\\"");
-			}
-			else if (c == '\'') {
-				filtered.append("\\'");
+		// Scan for the first special character: most input doesn't contain any.
+		int length = input.length();
+		int first = 0;
+		while (first < length && getEscapeSequence(input, first) == null) {
+			first++;
+		}
+		if (first == length) {
+			return input;
+		}
+
+		// Determine the exact length of the result, to fill a single char array.
+		int escapedLength = length;
+		for (int i = first; i < length; i++) {
+			char[] sequence = getEscapeSequence(input, i);
+			if (sequence != null) {
+				escapedLength += sequence.length - 1;
 			}
-			else if (c == '\\') {
-				filtered.append("\\\\");
+		}
+		char[] escaped = new char[escapedLength];
+		input.getChars(0, first, escaped, 0);
+		int pos = first;
+		for (int i = first; i < length; i++) {
+			char[] sequence = getEscapeSequence(input, i);
+			if (sequence != null) {
+				System.arraycopy(sequence, 0, escaped, pos, sequence.length);
+				pos += sequence.length;
 			}
-			else if (c == '\t') {
-				filtered.append("\\t");
+			else {
+				escaped[pos++] = input.charAt(i);
 			}
-			else if (c == '\n') {
-				if (prevChar != '\r') {
-					filtered.append("\\n");
+		}
+		return new String(escaped);
+	}
+
+	/**
+	 * Turn special characters into escaped characters conforming to JavaScript,
+	 * writing the result to the given Writer.
+	 * <p>Same escaping as <code>javaScriptEscape(String)</code>, but without
+	 * building an intermediate String: Plain character sequences are written
+	 * as-is. Typically used with a JspWriter or a servlet response Writer.
+	 * @param input the input string (may be null)
+	 * @param out the Writer to write the escaped string to
+	 * @throws IOException if thrown by the Writer
+	 * @see #javaScriptEscape(String)
+	 */
+	public static void javaScriptEscape(String input, Writer out) throws IOException {
+		if (input == null) {
+			return;
+		}
+		int length = input.length();
+		int start = 0;
+		for (int i = 0; i < length; i++) {
+			char[] sequence = getEscapeSequence(input, i);
+			if (sequence != null) {
+				if (i > start) {
+					out.write(input, start, i - start);
 				}
+				out.write(sequence);
+				start = i + 1;
 			}
-			else if (c == '\r') {
-				filtered.append("\\n");
-			}
-			else if (c == '\f') {
-				filtered.append("\\f");
-			}
-			else {
-				filtered.append(c);
-			}
-			prevChar = c;
+		}
+		if (start < length) {
+			out.write(input, start, length - start);
+		}
+	}
 
+	/**
+	 * Return the escape sequence for the character at the given index.
+	 * @return the escape sequence, or null if the character doesn't need to be escaped
+	 */
+	private static char[] getEscapeSequence(String input, int index) {
+		return getEscapeSequence(input.charAt(index), index > 0 && input.charAt(index - 1) == '\r');
+	}
+
+	/**
+	 * Return the escape sequence for the given character.
+	 * @param c the character to escape
+	 * @param afterCarriageReturn whether the character directly follows a carriage return
+	 * @return the escape sequence, or null if the character doesn't need to be escaped
+	 * @see JavaScriptEscapingWriter
+	 */
+	static char[] getEscapeSequence(char c, boolean afterCarriageReturn) {
+		if (c >= ESCAPE_SEQUENCES.length) {
+			return null;
+		}
+		if (c == '\n' && afterCarriageReturn) {
+			return NO_ESCAPE_SEQUENCE;
 		}
-		return filtered.toString();
+		return ESCAPE_SEQUENCES[c];
 	}
 
 }
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.interceptor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.ITestBean;
+import org.springframework.beans.TestBean;
+import org.springframework.jmx.export.MBeanExporter;
+import org.springframework.jmx.export.assembler.InterfaceBasedMBeanInfoAssembler;
+
+/**
+ * @since 1.2.1
+ */
+public class BulkheadInterceptorTests extends TestCase {
+
+	private BulkheadInterceptor bulkhead;
+
+	private BlockingInterceptor blocking;
+
+	private ITestBean proxy;
+
+	protected void setUp() {
+		this.bulkhead = new BulkheadInterceptor();
+		this.blocking = new BlockingInterceptor();
+		ProxyFactory proxyFactory = new ProxyFactory();
+		proxyFactory.setInterfaces(new Class[] {ITestBean.class});
+		proxyFactory.addAdvice(this.bulkhead);
+		proxyFactory.addAdvice(this.blocking);
+		proxyFactory.setTarget(new TestBean());
+		this.proxy = (ITestBean) proxyFactory.getProxy();
+	}
+
+	public void testConcurrencyLimitNotExceeded() throws Exception {
+		this.bulkhead.setConcurrencyLimit(3);
+		Thread[] threads = startCalls(20, 0);
+		this.blocking.awaitEntered(3);
+		awaitQueued(17);
+		assertEquals(3, this.bulkhead.getInFlightCount());
+		assertEquals(3, this.blocking.getEnteredCount());
+		this.blocking.release();
+		joinAll(threads);
+		assertEquals(3, this.blocking.maxConcurrency);
+		assertEquals(20, this.bulkhead.getAcceptedCount());
+		assertEquals(0, this.bulkhead.getRejectedCount());
+		assertEquals(0, this.bulkhead.getInFlightCount());
+		assertEquals(0, this.bulkhead.getQueuedCount());
+	}
+
+	public void testRejectWhenQueueFull() throws Exception {
+		this.bulkhead.setConcurrencyLimit(1);
+		this.bulkhead.setMaxQueueSize(0);
+		Thread[] threads = startCalls(1, 0);
+		this.blocking.awaitEntered(1);
+		assertEquals(1, this.bulkhead.getInFlightCount());
+		try {
+			this.proxy.setAge(1);
+			fail("Should have thrown BulkheadRejectedException");
+		}
+		catch (BulkheadRejectedException ex) {
+			// expected
+		}
+		// Rejected without queueing, while the first invocation is still blocked.
+		assertEquals(0, this.bulkhead.getQueuedCount());
+		assertEquals(1, this.bulkhead.getRejectedCount());
+		assertTrue(threads[0].isAlive());
+		this.blocking.release();
+		joinAll(threads);
+		this.proxy.setAge(1);
+		assertEquals(2, this.bulkhead.getAcceptedCount());
+	}
+
+	public void testRejectAfterMaxWait() throws Exception {
+		this.bulkhead.setConcurrencyLimit(1);
+		this.bulkhead.setMaxWait(50);
+		Thread[] threads = startCalls(1, 0);
+		this.blocking.awaitEntered(1);
+		try {
+			this.proxy.setAge(1);
+			fail("Should have thrown BulkheadRejectedException");
+		}
+		catch (BulkheadRejectedException ex) {
+			// expected
+		}
+		// Gave up waiting while the first invocation still holds the permit.
+		assertEquals(1, this.bulkhead.getInFlightCount());
+		assertEquals(0, this.bulkhead.getQueuedCount());
+		assertEquals(1, this.bulkhead.getRejectedCount());
+		assertEquals(1, this.blocking.getEnteredCount());
+		this.blocking.release();
+		joinAll(threads);
+		assertEquals(1, this.bulkhead.getAcceptedCount());
+	}
+
+	public void testFairModeGrantsPermitsInArrivalOrder() throws Exception {
+		this.bulkhead.setConcurrencyLimit(1);
+		this.bulkhead.setFair(true);
+		Thread[] threads = new Thread[5];
+		threads[0] = startCalls(1, 0)[0];
+		this.blocking.awaitEntered(1);
+		for (int i = 1; i < threads.length; i++) {
+			threads[i] = startCalls(1, i)[0];
+			// Let each invocation queue up before the next one arrives.
+			awaitQueued(i);
+		}
+		assertEquals(4, this.bulkhead.getQueuedCount());
+		this.blocking.release();
+		joinAll(threads);
+		assertEquals(Arrays.asList(new Integer[] {new Integer(0), new Integer(1), new Integer(2),
+				new Integer(3), new Integer(4)}), this.blocking.entered);
+		assertTrue(this.bulkhead.getWaitTimeSummary().startsWith("count=[5]"));
+		// The first invocation got its permit without waiting.
+		assertEquals(0, this.bulkhead.getWaitTimePercentileMillis(0));
+	}
+
+	public void testMethodLimitsUseSeparateCompartments() throws Exception {
+		Properties methodLimits = new Properties();
+		methodLimits.setProperty("set*", "1");
+		this.bulkhead.setMethodLimits(methodLimits);
+		this.bulkhead.setMaxQueueSize(0);
+		Thread[] threads = startCalls(1, 0);
+		this.blocking.awaitEntered(1);
+		try {
+			this.proxy.setName("name");
+			fail("Should have thrown BulkheadRejectedException");
+		}
+		catch (BulkheadRejectedException ex) {
+			assertTrue(ex.getMessage().indexOf("'set*'") != -1);
+		}
+		// The default compartment is still available.
+		this.proxy.getAge();
+		this.blocking.release();
+		joinAll(threads);
+		String[] summaries = this.bulkhead.getCompartmentSummaries();
+		assertEquals(2, summaries.length);
+		assertTrue(summaries[0].startsWith("default: limit=[10]"));
+		assertTrue(summaries[1].startsWith("set*: limit=[1]"));
+	}
+
+	public void testInvalidMethodLimit() {
+		Properties methodLimits = new Properties();
+		methodLimits.setProperty("set*", "many");
+		try {
+			this.bulkhead.setMethodLimits(methodLimits);
+			fail("Should have thrown IllegalArgumentException");
+		}
+		catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+
+	public void testExportWithMBeanExporter() throws Exception {
+		this.bulkhead.setConcurrencyLimit(1);
+		this.bulkhead.setMaxQueueSize(0);
+		Thread[] threads = startCalls(1, 0);
+		this.blocking.awaitEntered(1);
+		try {
+			this.proxy.setAge(1);
+		}
+		catch (BulkheadRejectedException ex) {
+			// expected
+		}
+
+		MBeanServer server = MBeanServerFactory.newMBeanServer();
+		MBeanExporter exporter = new MBeanExporter();
+		exporter.setServer(server);
+		exporter.setBeans(Collections.singletonMap("spring:name=bulkhead", this.bulkhead));
+		InterfaceBasedMBeanInfoAssembler assembler = new InterfaceBasedMBeanInfoAssembler();
+		assembler.setManagedInterfaces(new Class[] {BulkheadStats.class});
+		exporter.setAssembler(assembler);
+		exporter.afterPropertiesSet();
+
+		ObjectName objectName = new ObjectName("spring:name=bulkhead");
+		assertEquals(new Integer(1), server.getAttribute(objectName, "InFlightCount"));
+		assertEquals(new Long(1), server.getAttribute(objectName, "RejectedCount"));
+		this.blocking.release();
+		joinAll(threads);
+		assertEquals(new Integer(0), server.getAttribute(objectName, "InFlightCount"));
+		assertEquals(1, ((String[]) server.getAttribute(objectName, "CompartmentSummaries")).length);
+		server.invoke(objectName, "resetStatistics", new Object[0], new String[0]);
+		assertEquals(new Long(0), server.getAttribute(objectName, "RejectedCount"));
+		server.unregisterMBean(objectName);
+	}
+
+
+	private Thread[] startCalls(int count, final int age) {
+		Thread[] threads = new Thread[count];
+		for (int i = 0; i < count; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					proxy.setAge(age);
+				}
+			};
+			threads[i].start();
+		}
+		return threads;
+	}
+
+	/**
+	 * Wait until the given number of invocations is queued in the bulkhead.
+	 */
+	private void awaitQueued(int count) {
+		while (this.bulkhead.getQueuedCount() < count) {
+			Thread.yield();
+		}
+	}
+
+	private void joinAll(Thread[] threads) throws InterruptedException {
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].join();
+		}
+	}
+
+
+	/**
+	 * Interceptor behind the bulkhead that blocks <code>setAge</code>
+	 * invocations until released, and records their concurrency.
+	 */
+	private static class BlockingInterceptor implements MethodInterceptor {
+
+		private boolean blocking = true;
+
+		private int enteredCount;
+
+		private int concurrency;
+
+		private int maxConcurrency;
+
+		private final List entered = Collections.synchronizedList(new ArrayList());
+
+		public Object invoke(MethodInvocation invocation) throws Throwable {
+			boolean block = "setAge".equals(invocation.getMethod().getName());
+			synchronized (this) {
+				this.concurrency++;
+				this.maxConcurrency = Math.max(this.maxConcurrency, this.concurrency);
+				if (block) {
+					this.entered.add(invocation.getArguments()[0]);
+					this.enteredCount++;
+					notifyAll();
+					while (this.blocking) {
+						wait();
+					}
+				}
+			}
+			try {
+				return invocation.proceed();
+			}
+			finally {
+				synchronized (this) {
+					this.concurrency--;
+				}
+			}
+		}
+
+		public synchronized int getEnteredCount() {
+			return this.enteredCount;
+		}
+
+		/**
+		 * Wait until the given number of setAge invocations has entered.
+		 */
+		public synchronized void awaitEntered(int count) throws InterruptedException {
+			while (this.enteredCount < count) {
+				wait();
+			}
+		}
+
+		/**
+		 * Let all blocked and subsequent invocations proceed.
+		 */
+		public synchronized void release() {
+			this.blocking = false;
+			notifyAll();
+		}
+	}
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.interceptor;
+
+import java.util.Collections;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.ITestBean;
+import org.springframework.beans.TestBean;
+import org.springframework.jmx.export.MBeanExporter;
+import org.springframework.jmx.export.assembler.InterfaceBasedMBeanInfoAssembler;
+import org.springframework.util.ResponseTimeMonitorImpl;
+import org.springframework.util.StopWatch;
+
+/**
+ * @since 1.2.1
+ */
+public class LatencyMonitorInterceptorTests extends TestCase {
+
+	private static final String GET_AGE = ITestBean.class.getName() + ".getAge";
+
+	private LatencyMonitorInterceptor interceptor;
+
+	private ITestBean proxy;
+
+	protected void setUp() {
+		this.interceptor = new LatencyMonitorInterceptor();
+		ProxyFactory proxyFactory = new ProxyFactory();
+		proxyFactory.setInterfaces(new Class[] {ITestBean.class});
+		proxyFactory.addAdvice(this.interceptor);
+		proxyFactory.setTarget(new TestBean());
+		this.proxy = (ITestBean) proxyFactory.getProxy();
+	}
+
+	public void testRecordsLatenciesPerMethod() throws Throwable {
+		for (int i = 0; i < 10; i++) {
+			this.proxy.getAge();
+		}
+		this.proxy.setAge(5);
+		try {
+			this.proxy.exceptional(new IllegalStateException());
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (IllegalStateException ex) {
+			// expected
+		}
+
+		String[] methodNames = this.interceptor.getMethodNames();
+		assertEquals(3, methodNames.length);
+		assertEquals(ITestBean.class.getName() + ".exceptional", methodNames[0]);
+		assertEquals(GET_AGE, methodNames[1]);
+		assertEquals(10, this.interceptor.getInvocationCount(GET_AGE));
+		assertEquals(1, this.interceptor.getInvocationCount(methodNames[0]));
+		assertTrue(this.interceptor.getLatencyPercentileMicros(GET_AGE, 99) < 1000000);
+		assertTrue(this.interceptor.getLatencySummaries()[1].startsWith(GET_AGE + ": count=[10]"));
+
+		try {
+			this.interceptor.getInvocationCount(ITestBean.class.getName() + ".getName");
+			fail("Should have thrown IllegalArgumentException");
+		}
+		catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+
+	public void testIntervalSummaries() {
+		this.proxy.getAge();
+		assertTrue(this.interceptor.getIntervalLatencySummaries()[0].startsWith(GET_AGE + ": count=[1]"));
+		assertTrue(this.interceptor.getIntervalLatencySummaries()[0].startsWith(GET_AGE + ": count=[0]"));
+		this.proxy.getAge();
+		assertTrue(this.interceptor.getIntervalLatencySummaries()[0].startsWith(GET_AGE + ": count=[1]"));
+		assertEquals(2, this.interceptor.getInvocationCount(GET_AGE));
+		this.interceptor.resetStatistics();
+		assertEquals(0, this.interceptor.getInvocationCount(GET_AGE));
+	}
+
+	public void testExportWithMBeanExporter() throws Exception {
+		this.proxy.getAge();
+		MBeanServer server = MBeanServerFactory.newMBeanServer();
+		MBeanExporter exporter = new MBeanExporter();
+		exporter.setServer(server);
+		exporter.setBeans(Collections.singletonMap("spring:name=latencyMonitor", this.interceptor));
+		InterfaceBasedMBeanInfoAssembler assembler = new InterfaceBasedMBeanInfoAssembler();
+		assembler.setManagedInterfaces(new Class[] {LatencyStats.class});
+		exporter.setAssembler(assembler);
+		exporter.afterPropertiesSet();
+
+		ObjectName objectName = new ObjectName("spring:name=latencyMonitor");
+		String[] methodNames = (String[]) server.getAttribute(objectName, "MethodNames");
+		assertEquals(1, methodNames.length);
+		assertEquals(new Long(1), server.invoke(objectName, "getInvocationCount",
+				new Object[] {GET_AGE}, new String[] {String.class.getName()}));
+		server.invoke(objectName, "resetStatistics", new Object[0], new String[0]);
+		assertEquals(new Long(0), server.invoke(objectName, "getInvocationCount",
+				new Object[] {GET_AGE}, new String[] {String.class.getName()}));
+		server.unregisterMBean(objectName);
+	}
+
+	public void testRecordingPerformance() throws Exception {
+		final int iterations = 1000000;
+		final ResponseTimeMonitorImpl monitor = new ResponseTimeMonitorImpl();
+		StopWatch sw = new StopWatch(getClass() + "." + getName());
+		sw.start(iterations + " calls through latency monitor proxy");
+		for (int i = 0; i < iterations; i++) {
+			this.proxy.getAge();
+		}
+		sw.stop();
+		sw.start(iterations + " response times recorded on each of 8 threads");
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					for (int j = 0; j < iterations; j++) {
+						monitor.recordResponseTime(j % 100);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].join();
+		}
+		sw.stop();
+		System.out.println(sw.prettyPrint());
+		assertEquals(iterations * 8, monitor.getAccessCount());
+	}
+
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.support;
+
+import junit.framework.TestCase;
+
+import org.springframework.aop.Pointcut;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.interceptor.NopInterceptor;
+import org.springframework.beans.ITestBean;
+import org.springframework.beans.TestBean;
+import org.springframework.util.SerializationTestUtils;
+import org.springframework.util.StopWatch;
+
+/**
+ * @since 1.2.1
+ */
+public class ThreadLocalControlFlowPointcutTests extends TestCase {
+
+	public void testMatches() {
+		TestBean target = new TestBean();
+		target.setAge(27);
+		NopInterceptor nop = new NopInterceptor();
+		ThreadLocalControlFlowPointcut cflow = new ThreadLocalControlFlowPointcut(One.class, "getAge");
+		ProxyFactory pf = new ProxyFactory(target);
+		ITestBean proxied = (ITestBean) pf.getProxy();
+		pf.addAdvisor(new DefaultPointcutAdvisor(cflow, nop));
+		Caller one = createEntryProxy(cflow, new One());
+
+		// Not advised, not under One
+		assertEquals(target.getAge(), proxied.getAge());
+		assertEquals(0, nop.getCount());
+
+		// Will be advised
+		assertEquals(target.getAge(), one.getAge(proxied));
+		assertEquals(1, nop.getCount());
+
+		// Won't be advised
+		assertEquals(target.getAge(), one.nomatch(proxied));
+		assertEquals(1, nop.getCount());
+		assertEquals(3, cflow.getEvaluations());
+
+		// Not advised after leaving the control flow
+		assertEquals(target.getAge(), proxied.getAge());
+		assertEquals(1, nop.getCount());
+	}
+
+	public void testSelectiveApplication() {
+		TestBean target = new TestBean();
+		target.setAge(27);
+		NopInterceptor nop = new NopInterceptor();
+		ThreadLocalControlFlowPointcut cflow = new ThreadLocalControlFlowPointcut(One.class);
+		Pointcut settersUnderOne = Pointcuts.intersection(Pointcuts.SETTERS, cflow);
+		ProxyFactory pf = new ProxyFactory(target);
+		ITestBean proxied = (ITestBean) pf.getProxy();
+		pf.addAdvisor(new DefaultPointcutAdvisor(settersUnderOne, nop));
+		Caller one = createEntryProxy(cflow, new One());
+
+		// Not advised, not under One
+		target.setAge(16);
+		assertEquals(0, nop.getCount());
+
+		// Not advised; under One but not a setter
+		assertEquals(16, one.getAge(proxied));
+		assertEquals(0, nop.getCount());
+
+		// Will be advised
+		one.set(proxied);
+		assertEquals(1, nop.getCount());
+
+		// We saved most evaluations
+		assertEquals(1, cflow.getEvaluations());
+	}
+
+	public void testMethodMustBeDeclaredInClass() {
+		TestBean target = new TestBean();
+		NopInterceptor nop = new NopInterceptor();
+		ThreadLocalControlFlowPointcut cflow = new ThreadLocalControlFlowPointcut(One.class, "getAge");
+		ProxyFactory pf = new ProxyFactory(target);
+		ITestBean proxied = (ITestBean) pf.getProxy();
+		pf.addAdvisor(new DefaultPointcutAdvisor(cflow, nop));
+
+		// Inherited from One: matches, as the stack trace would show One.getAge
+		createEntryProxy(cflow, new InheritingOne()).getAge(proxied);
+		assertEquals(1, nop.getCount());
+
+		// Overridden: doesn't match
+		createEntryProxy(cflow, new OverridingOne()).getAge(proxied);
+		assertEquals(1, nop.getCount());
+	}
+
+	public void testExceptionLeavesControlFlow() {
+		TestBean target = new TestBean();
+		NopInterceptor nop = new NopInterceptor();
+		ThreadLocalControlFlowPointcut cflow = new ThreadLocalControlFlowPointcut(One.class);
+		ProxyFactory pf = new ProxyFactory(target);
+		ITestBean proxied = (ITestBean) pf.getProxy();
+		pf.addAdvisor(new DefaultPointcutAdvisor(cflow, nop));
+		Caller one = createEntryProxy(cflow, new One());
+		try {
+			one.set(null);
+			fail("Should have thrown NullPointerException");
+		}
+		catch (NullPointerException ex) {
+			// expected
+		}
+		proxied.getAge();
+		assertEquals(0, nop.getCount());
+	}
+
+	public void testSerializable() throws Exception {
+		ThreadLocalControlFlowPointcut cflow = new ThreadLocalControlFlowPointcut(One.class, "getAge");
+		ThreadLocalControlFlowPointcut copy =
+				(ThreadLocalControlFlowPointcut) SerializationTestUtils.serializeAndDeserialize(cflow);
+		TestBean target = new TestBean();
+		NopInterceptor nop = new NopInterceptor();
+		ProxyFactory pf = new ProxyFactory(target);
+		ITestBean proxied = (ITestBean) pf.getProxy();
+		pf.addAdvisor(new DefaultPointcutAdvisor(copy, nop));
+		createEntryProxy(copy, new One()).getAge(proxied);
+		assertEquals(1, nop.getCount());
+	}
+
+	public void testPerformanceComparedToStackTraceAnalysis() {
+		int calls = 100000;
+		ControlFlowPointcut stackTraceCflow = new ControlFlowPointcut(One.class, "getAge");
+		ThreadLocalControlFlowPointcut threadLocalCflow = new ThreadLocalControlFlowPointcut(One.class, "getAge");
+
+		NopInterceptor stackTraceNop = new NopInterceptor();
+		NopInterceptor threadLocalNop = new NopInterceptor();
+		ProxyFactory pf = new ProxyFactory(new TestBean());
+		pf.addAdvisor(new DefaultPointcutAdvisor(stackTraceCflow, stackTraceNop));
+		ITestBean stackTraceProxied = (ITestBean) pf.getProxy();
+		pf = new ProxyFactory(new TestBean());
+		pf.addAdvisor(new DefaultPointcutAdvisor(threadLocalCflow, threadLocalNop));
+		ITestBean threadLocalProxied = (ITestBean) pf.getProxy();
+		Caller one = createEntryProxy(threadLocalCflow, new One());
+
+		// Warm up both paths before measuring.
+		getAgeRepeatedly(one, stackTraceProxied, calls / 10);
+		getAgeRepeatedly(one, threadLocalProxied, calls / 10);
+
+		StopWatch sw = new StopWatch(getClass() + "." + getName());
+		sw.start(calls + " evaluations with stack trace analysis");
+		getAgeRepeatedly(one, stackTraceProxied, calls);
+		sw.stop();
+		sw.start(calls + " evaluations with thread-bound counter");
+		getAgeRepeatedly(one, threadLocalProxied, calls);
+		sw.stop();
+		System.out.println(sw.prettyPrint());
+		assertEquals(calls + calls / 10, stackTraceNop.getCount());
+		assertEquals(calls + calls / 10, threadLocalNop.getCount());
+	}
+
+
+	private void getAgeRepeatedly(Caller caller, ITestBean proxied, int calls) {
+		for (int i = 0; i < calls; i++) {
+			caller.getAge(proxied);
+		}
+	}
+
+	private Caller createEntryProxy(ThreadLocalControlFlowPointcut cflow, One one) {
+		ProxyFactory pf = new ProxyFactory(one);
+		pf.addAdvisor(cflow.getEntryAdvisor());
+		return (Caller) pf.getProxy();
+	}
+
+
+	public interface Caller {
+
+		int getAge(ITestBean proxied);
+
+		int nomatch(ITestBean proxied);
+
+		void set(ITestBean proxied);
+	}
+
+
+	public static class One implements Caller {
+
+		public int getAge(ITestBean proxied) {
+			return proxied.getAge();
+		}
+
+		public int nomatch(ITestBean proxied) {
+			return proxied.getAge();
+		}
+
+		public void set(ITestBean proxied) {
+			proxied.setAge(5);
+		}
+
+	}
+
+
+	public static class InheritingOne extends One {
+	}
+
+
+	public static class OverridingOne extends One {
+
+		public int getAge(ITestBean proxied) {
+			return proxied.getAge();
+		}
+	}
+
+}
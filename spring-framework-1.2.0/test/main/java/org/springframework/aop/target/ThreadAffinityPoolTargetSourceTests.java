@@ -0,0 +1,233 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.target;
+
+import java.util.NoSuchElementException;
+
+import junit.framework.TestCase;
+
+import org.springframework.aop.interceptor.SideEffectBean;
+import org.springframework.beans.factory.xml.XmlBeanFactory;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.StopWatch;
+
+/**
+ * @since 1.2.1
+ */
+public class ThreadAffinityPoolTargetSourceTests extends TestCase {
+
+	/** Initial count value set in bean factory XML */
+	private static final int INITIAL_COUNT = 10;
+
+	private XmlBeanFactory beanFactory;
+
+	protected void setUp() throws Exception {
+		this.beanFactory = new XmlBeanFactory(new ClassPathResource("threadAffinityPoolTests.xml", getClass()));
+	}
+
+	protected void tearDown() {
+		this.beanFactory.destroySingletons();
+	}
+
+	public void testFunctionality() {
+		SideEffectBean pooled = (SideEffectBean) this.beanFactory.getBean("pooled");
+		assertEquals(INITIAL_COUNT, pooled.getCount());
+		pooled.doWork();
+		// Same thread, so the same target is used again.
+		assertEquals(INITIAL_COUNT + 1, pooled.getCount());
+	}
+
+	public void testConfigMixin() {
+		SideEffectBean pooled = (SideEffectBean) this.beanFactory.getBean("pooledWithMixin");
+		pooled.doWork();
+		PoolingConfig conf = (PoolingConfig) this.beanFactory.getBean("pooledWithMixin");
+		assertEquals(25, conf.getMaxSize());
+		// The only target is in use for the statistics call itself.
+		assertEquals(1, conf.getActiveCount());
+		assertEquals(0, conf.getIdleCount());
+	}
+
+	public void testTargetReusedOnSameThread() throws Exception {
+		ThreadAffinityPoolTargetSource ts =
+				(ThreadAffinityPoolTargetSource) this.beanFactory.getBean("poolTargetSource");
+		Object target1 = ts.getTarget();
+		Object target2 = ts.getTarget();
+		assertNotSame(target1, target2);
+		assertEquals(2, ts.getActiveCount());
+		ts.releaseTarget(target1);
+		ts.releaseTarget(target2);
+		assertEquals(0, ts.getActiveCount());
+		assertEquals(2, ts.getIdleCount());
+
+		assertSame(target1, ts.getTarget());
+		assertSame(target2, ts.getTarget());
+	}
+
+	public void testIdleTargetTakenOverByOtherThread() throws Exception {
+		final ThreadAffinityPoolTargetSource ts =
+				(ThreadAffinityPoolTargetSource) this.beanFactory.getBean("boundedPoolTargetSource");
+		Object target1 = ts.getTarget();
+		Object target2 = ts.getTarget();
+		ts.releaseTarget(target1);
+		ts.releaseTarget(target2);
+
+		final Object[] acquired = new Object[2];
+		Thread thread = new Thread() {
+			public void run() {
+				try {
+					acquired[0] = ts.getTarget();
+					acquired[1] = ts.getTarget();
+				}
+				catch (Exception ex) {
+					// leave unset
+				}
+			}
+		};
+		thread.start();
+		thread.join();
+		assertTrue(acquired[0] == target1 || acquired[0] == target2);
+		assertTrue(acquired[1] == target1 || acquired[1] == target2);
+		assertEquals(2, ts.getActiveCount());
+	}
+
+	public void testTimeoutWhenExhausted() throws Exception {
+		ThreadAffinityPoolTargetSource ts =
+				(ThreadAffinityPoolTargetSource) this.beanFactory.getBean("boundedPoolTargetSource");
+		ts.getTarget();
+		ts.getTarget();
+		try {
+			ts.getTarget();
+			fail("Should have thrown NoSuchElementException");
+		}
+		catch (NoSuchElementException ex) {
+			// expected
+		}
+		assertEquals(0, ts.getWaitingCount());
+		assertEquals(2, ts.getActiveCount());
+		assertEquals(0, ts.getIdleCount());
+	}
+
+	public void testWaitingThreadReceivesReleasedTarget() throws Exception {
+		final ThreadAffinityPoolTargetSource ts =
+				(ThreadAffinityPoolTargetSource) this.beanFactory.getBean("boundedPoolTargetSource");
+		ts.setMaxWait(5000);
+		Object target1 = ts.getTarget();
+		Object target2 = ts.getTarget();
+
+		final Object[] acquired = new Object[1];
+		Thread thread = new Thread() {
+			public void run() {
+				try {
+					acquired[0] = ts.getTarget();
+				}
+				catch (Exception ex) {
+					// leave unset
+				}
+			}
+		};
+		thread.start();
+		while (ts.getWaitingCount() == 0) {
+			Thread.yield();
+		}
+		// Would otherwise be parked in this thread's slot.
+		ts.releaseTarget(target2);
+		thread.join();
+		assertSame(target2, acquired[0]);
+		assertEquals(0, ts.getWaitingCount());
+		ts.releaseTarget(target1);
+	}
+
+	public void testEvictIdleTargets() throws Exception {
+		ThreadAffinityPoolTargetSource ts =
+				(ThreadAffinityPoolTargetSource) this.beanFactory.getBean("poolTargetSource");
+		Object target1 = ts.getTarget();
+		Object target2 = ts.getTarget();
+		ts.releaseTarget(target1);
+		ts.evictIdleTargets();
+		assertEquals(1, ts.getIdleCount());
+
+		ts.setMinEvictableIdleTimeMillis(1);
+		Thread.sleep(10);
+		ts.evictIdleTargets();
+		assertEquals(0, ts.getIdleCount());
+		assertEquals(1, ts.getActiveCount());
+		ts.releaseTarget(target2);
+		assertNotSame(target1, ts.getTarget());
+	}
+
+	public void testThroughputAgainstCommonsPool() throws Exception {
+		AbstractPoolingTargetSource affinityPool =
+				(AbstractPoolingTargetSource) this.beanFactory.getBean("poolTargetSource");
+		AbstractPoolingTargetSource commonsPool =
+				(AbstractPoolingTargetSource) this.beanFactory.getBean("commonsPoolTargetSource");
+		int calls = 200000;
+		// Warm up both pools before measuring.
+		invokeConcurrently(commonsPool, 4, calls / 10);
+		invokeConcurrently(affinityPool, 4, calls / 10);
+
+		StopWatch sw = new StopWatch(getClass() + "." + getName());
+		int[] threadCounts = new int[] {1, 4, 16, 64};
+		for (int i = 0; i < threadCounts.length; i++) {
+			sw.start(calls + " calls on " + threadCounts[i] + " threads with Commons Pool");
+			invokeConcurrently(commonsPool, threadCounts[i], calls);
+			sw.stop();
+			sw.start(calls + " calls on " + threadCounts[i] + " threads with thread affinity pool");
+			invokeConcurrently(affinityPool, threadCounts[i], calls);
+			sw.stop();
+		}
+		System.out.println(sw.prettyPrint());
+		assertEquals(0, affinityPool.getActiveCount());
+		assertTrue(affinityPool.getIdleCount() <= 25);
+	}
+
+
+	/**
+	 * Acquire and release targets the way a pooled proxy does,
+	 * spreading the given number of calls across the given number of threads.
+	 */
+	private void invokeConcurrently(final AbstractPoolingTargetSource ts, int threadCount, int calls)
+			throws Exception {
+
+		final int callsPerThread = calls / threadCount;
+		final Throwable[] failure = new Throwable[1];
+		Thread[] threads = new Thread[threadCount];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						for (int j = 0; j < callsPerThread; j++) {
+							SideEffectBean target = (SideEffectBean) ts.getTarget();
+							target.doWork();
+							ts.releaseTarget(target);
+						}
+					}
+					catch (Throwable ex) {
+						failure[0] = ex;
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].join();
+		}
+		if (failure[0] != null) {
+			fail("Pooled invocation failed: " + failure[0]);
+		}
+	}
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache;
+
+import junit.framework.TestCase;
+
+/**
+ * @since 1.2.1
+ */
+public class ConcurrentLruCacheStoreTests extends TestCase {
+
+	public void testPutGetRemove() {
+		ConcurrentLruCacheStore store = new ConcurrentLruCacheStore();
+		store.put("key", "value");
+		assertEquals("value", store.get("key"));
+		assertEquals(1, store.getSize());
+		store.remove("key");
+		assertNull(store.get("key"));
+		store.put("key", "value");
+		store.clear();
+		assertNull(store.get("key"));
+	}
+
+	public void testLeastRecentlyUsedEviction() {
+		ConcurrentLruCacheStore store = new ConcurrentLruCacheStore(3);
+		store.setConcurrencyLevel(1);
+		store.put("a", "1");
+		store.put("b", "2");
+		store.put("c", "3");
+		store.get("a");
+		store.put("d", "4");
+		assertEquals(3, store.getSize());
+		assertEquals("1", store.get("a"));
+		assertNull(store.get("b"));
+		assertEquals("3", store.get("c"));
+		assertEquals("4", store.get("d"));
+	}
+
+	public void testSizeIsBounded() {
+		ConcurrentLruCacheStore store = new ConcurrentLruCacheStore(100);
+		for (int i = 0; i < 1000; i++) {
+			store.put(new Integer(i), "value" + i);
+		}
+		assertTrue(store.getSize() <= 100);
+		assertEquals("value999", store.get(new Integer(999)));
+	}
+
+	public void testTimeToLive() throws InterruptedException {
+		ConcurrentLruCacheStore store = new ConcurrentLruCacheStore();
+		store.setTimeToLive(1);
+		store.put("key", "value");
+		assertEquals("value", store.get("key"));
+		Thread.sleep(1100);
+		assertNull(store.get("key"));
+	}
+
+	public void testInvalidMaxSize() {
+		try {
+			new ConcurrentLruCacheStore(0);
+			fail("Should have thrown IllegalArgumentException");
+		}
+		catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+
+}
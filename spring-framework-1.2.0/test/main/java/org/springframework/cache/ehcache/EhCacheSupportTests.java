@@ -118,4 +118,33 @@ public class EhCacheSupportTests extends TestCase {
 		}
 	}
 
+	public void testEhCacheStore() throws Exception {
+		EhCacheManagerFactoryBean cacheManagerFb = new EhCacheManagerFactoryBean();
+		cacheManagerFb.setConfigLocation(new ClassPathResource("testEhcache.xml", getClass()));
+		cacheManagerFb.afterPropertiesSet();
+		try {
+			CacheManager cm = (CacheManager) cacheManagerFb.getObject();
+			EhCacheStore store = new EhCacheStore(cm.getCache("myCache1"));
+			store.afterPropertiesSet();
+			assertNull(store.get("key"));
+			store.put("key", "value");
+			assertEquals("value", store.get("key"));
+			store.remove("key");
+			assertNull(store.get("key"));
+			store.put("key", "value");
+			store.clear();
+			assertNull(store.get("key"));
+			try {
+				store.put("key", new Object());
+				fail("Should have thrown IllegalArgumentException");
+			}
+			catch (IllegalArgumentException ex) {
+				// expected
+			}
+		}
+		finally {
+			cacheManagerFb.destroy();
+		}
+	}
+
 }
@@ -0,0 +1,365 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.interceptor;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.cache.CacheStore;
+import org.springframework.cache.ConcurrentLruCacheStore;
+import org.springframework.metadata.support.MapAttributes;
+
+/**
+ * @since 1.2.1
+ */
+public class CachingInterceptorTests extends TestCase {
+
+	private CacheStore productCache;
+
+	private CacheStore priceCache;
+
+	private CountingProductService target;
+
+
+	protected void setUp() {
+		this.productCache = new ConcurrentLruCacheStore();
+		this.priceCache = new ConcurrentLruCacheStore();
+		this.target = new CountingProductService();
+	}
+
+	public void testCachedResults() throws Exception {
+		ProductService proxy = createProxy();
+		assertEquals("product-1", proxy.getProduct("1"));
+		assertEquals("product-1", proxy.getProduct("1"));
+		assertEquals("product-2", proxy.getProduct("2"));
+		assertEquals(2, target.invocations);
+
+		assertEquals(5, proxy.getPrice(new int[] {2, 3}));
+		assertEquals(5, proxy.getPrice(new int[] {2, 3}));
+		assertEquals(1, proxy.getPrice(new int[] {1}));
+		assertEquals(4, target.invocations);
+
+		// Uncached method.
+		proxy.countInvocations();
+		proxy.countInvocations();
+		assertEquals(6, target.invocations);
+	}
+
+	public void testNullResultsAreCached() throws Exception {
+		ProductService proxy = createProxy();
+		assertNull(proxy.getProduct(null));
+		assertNull(proxy.getProduct(null));
+		assertEquals(1, target.invocations);
+	}
+
+	public void testFlush() throws Exception {
+		ProductService proxy = createProxy();
+		proxy.getProduct("1");
+		proxy.getPrice(new int[] {1});
+		proxy.updateProducts();
+		assertEquals(3, target.invocations);
+		proxy.getProduct("1");
+		proxy.getPrice(new int[] {1});
+		// Only the product cache has been flushed.
+		assertEquals(4, target.invocations);
+	}
+
+	public void testFlushDuringLoadDiscardsLoadedValue() throws Exception {
+		target.blocking = true;
+		final ProductService proxy = createProxy();
+		Thread loader = new Thread() {
+			public void run() {
+				proxy.getProduct("1");
+			}
+		};
+		loader.start();
+		target.awaitEntered();
+		proxy.updateProducts();
+		target.release();
+		loader.join();
+		assertEquals(2, target.invocations);
+		// The value loaded before the flush has not been cached.
+		assertEquals("product-1", proxy.getProduct("1"));
+		assertEquals(3, target.invocations);
+		proxy.getProduct("1");
+		assertEquals(3, target.invocations);
+	}
+
+	public void testFailedInvocationIsNotCached() throws Exception {
+		ProductService proxy = createProxy();
+		try {
+			proxy.getProduct("fail");
+			fail("Should have thrown IllegalArgumentException");
+		}
+		catch (IllegalArgumentException ex) {
+			// expected
+		}
+		try {
+			proxy.getProduct("fail");
+			fail("Should have thrown IllegalArgumentException");
+		}
+		catch (IllegalArgumentException ex) {
+			// expected
+		}
+		assertEquals(2, target.invocations);
+	}
+
+	public void testConcurrentMissesInvokeTargetOnce() throws Exception {
+		target.delay = 200;
+		final ProductService proxy = createProxy();
+		final Object[] results = new Object[10];
+		Thread[] threads = new Thread[results.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				public void run() {
+					results[index] = proxy.getProduct("1");
+				}
+			};
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].join();
+		}
+		assertEquals(1, target.invocations);
+		for (int i = 0; i < results.length; i++) {
+			assertEquals("product-1", results[i]);
+		}
+	}
+
+	public void testReentrantInvocationWithSameKey() throws Exception {
+		final ProductService proxy = createProxy();
+		target.callback = new Runnable() {
+			public void run() {
+				target.callback = null;
+				assertEquals("product-1", proxy.getProduct("1"));
+			}
+		};
+		assertEquals("product-1", proxy.getProduct("1"));
+		assertEquals(2, target.invocations);
+		// The outer invocation has cached its result.
+		assertEquals("product-1", proxy.getProduct("1"));
+		assertEquals(2, target.invocations);
+	}
+
+	public void testAttributesCacheAttributeSource() throws Exception {
+		MapAttributes attributes = new MapAttributes();
+		attributes.register(CountingProductService.class.getMethod("getProduct", new Class[] {String.class}),
+				new Object[] {new CacheAttribute("products")});
+		CacheAttribute flush = new CacheAttribute("products");
+		flush.setFlush(true);
+		attributes.register(CountingProductService.class.getMethod("updateProducts", new Class[0]),
+				new Object[] {flush});
+		AttributesCacheAttributeSource cas = new AttributesCacheAttributeSource(attributes);
+		cas.afterPropertiesSet();
+
+		CacheProxyFactoryBean pfb = new CacheProxyFactoryBean();
+		pfb.setTarget(target);
+		pfb.setCacheAttributeSource(cas);
+		pfb.setCacheStores(cacheStores());
+		pfb.afterPropertiesSet();
+		ProductService proxy = (ProductService) pfb.getObject();
+
+		proxy.getProduct("1");
+		proxy.getProduct("1");
+		proxy.getPrice(new int[] {1});
+		proxy.getPrice(new int[] {1});
+		assertEquals(3, target.invocations);
+		proxy.updateProducts();
+		proxy.getProduct("1");
+		assertEquals(5, target.invocations);
+	}
+
+	public void testCachingInterceptorWithProxyFactory() throws Exception {
+		CachingInterceptor ci = new CachingInterceptor();
+		Properties props = new Properties();
+		props.setProperty("get*", "");
+		ci.setCacheAttributes(props);
+		ci.setDefaultCacheStore(productCache);
+		ci.afterPropertiesSet();
+
+		ProxyFactory pf = new ProxyFactory(target);
+		pf.addAdvisor(new CacheAttributeSourceAdvisor(ci));
+		ProductService proxy = (ProductService) pf.getProxy();
+		proxy.getProduct("1");
+		proxy.getProduct("1");
+		proxy.getPrice(new int[] {1});
+		proxy.getPrice(new int[] {1});
+		assertEquals(2, target.invocations);
+	}
+
+	public void testCacheFlushInterceptor() throws Exception {
+		CacheFlushInterceptor fi = new CacheFlushInterceptor();
+		fi.setCacheStore(productCache);
+		fi.afterPropertiesSet();
+		productCache.put("key", "value");
+
+		ProxyFactory pf = new ProxyFactory(target);
+		pf.addAdvice(fi);
+		ProductService proxy = (ProductService) pf.getProxy();
+		proxy.countInvocations();
+		assertNull(productCache.get("key"));
+	}
+
+	public void testCacheAttributeEditor() {
+		CacheAttributeEditor editor = new CacheAttributeEditor();
+		editor.setAsText("products");
+		CacheAttribute attr = (CacheAttribute) editor.getValue();
+		assertFalse(attr.isFlush());
+		assertEquals("products", attr.getCacheName());
+		assertEquals("products", attr.toString());
+
+		editor.setAsText("FLUSH, products, prices");
+		attr = (CacheAttribute) editor.getValue();
+		assertTrue(attr.isFlush());
+		assertEquals(2, attr.getCacheNames().length);
+		assertEquals("FLUSH,products,prices", attr.toString());
+
+		editor.setAsText("");
+		attr = (CacheAttribute) editor.getValue();
+		assertNull(attr.getCacheName());
+
+		try {
+			editor.setAsText("products,prices");
+			fail("Should have thrown IllegalArgumentException");
+		}
+		catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+
+	public void testMissingCacheStore() {
+		CachingInterceptor ci = new CachingInterceptor();
+		ci.setCacheAttributes(new Properties());
+		try {
+			ci.afterPropertiesSet();
+			fail("Should have thrown IllegalArgumentException");
+		}
+		catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+
+
+	private ProductService createProxy() {
+		CacheProxyFactoryBean pfb = new CacheProxyFactoryBean();
+		pfb.setTarget(target);
+		pfb.setCacheStores(cacheStores());
+		Properties props = new Properties();
+		props.setProperty("getProduct", "products");
+		props.setProperty("getPrice", "prices");
+		props.setProperty("update*", "FLUSH,products");
+		pfb.setCacheAttributes(props);
+		pfb.afterPropertiesSet();
+		return (ProductService) pfb.getObject();
+	}
+
+	private Map cacheStores() {
+		Map cacheStores = new HashMap();
+		cacheStores.put("products", productCache);
+		cacheStores.put("prices", priceCache);
+		return cacheStores;
+	}
+
+
+	public interface ProductService {
+
+		Object getProduct(String id);
+
+		int getPrice(int[] ids);
+
+		void updateProducts();
+
+		void countInvocations();
+	}
+
+
+	public static class CountingProductService implements ProductService {
+
+		private int invocations;
+
+		private long delay;
+
+		private boolean blocking;
+
+		private boolean entered;
+
+		private Runnable callback;
+
+		public Object getProduct(String id) {
+			synchronized (this) {
+				this.invocations++;
+				this.entered = true;
+				notifyAll();
+				while (this.blocking) {
+					try {
+						wait();
+					}
+					catch (InterruptedException ex) {
+					}
+				}
+			}
+			if (this.delay > 0) {
+				try {
+					Thread.sleep(this.delay);
+				}
+				catch (InterruptedException ex) {
+				}
+			}
+			if (this.callback != null) {
+				this.callback.run();
+			}
+			if ("fail".equals(id)) {
+				throw new IllegalArgumentException(id);
+			}
+			return (id != null ? "product-" + id : null);
+		}
+
+		public synchronized int getPrice(int[] ids) {
+			this.invocations++;
+			int sum = 0;
+			for (int i = 0; i < ids.length; i++) {
+				sum += ids[i];
+			}
+			return sum;
+		}
+
+		public synchronized void updateProducts() {
+			this.invocations++;
+		}
+
+		public synchronized void countInvocations() {
+			this.invocations++;
+		}
+
+		public synchronized void awaitEntered() throws InterruptedException {
+			while (!this.entered) {
+				wait();
+			}
+		}
+
+		public synchronized void release() {
+			this.blocking = false;
+			notifyAll();
+		}
+	}
+
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.interceptor;
+
+import junit.framework.TestCase;
+import org.aopalliance.intercept.MethodInvocation;
+
+import org.springframework.aop.framework.ProxyFactory;
+
+/**
+ * @since 1.2.1
+ */
+public class CoalescingInterceptorTests extends TestCase {
+
+	private CountingSeatService target;
+
+	private CoalescingInterceptor interceptor;
+
+
+	protected void setUp() {
+		this.target = new CountingSeatService();
+		this.interceptor = new CoalescingInterceptor();
+		this.interceptor.afterPropertiesSet();
+	}
+
+	private SeatService createProxy() {
+		ProxyFactory pf = new ProxyFactory(new Class[] {SeatService.class});
+		pf.setTarget(this.target);
+		pf.addAdvice(this.interceptor);
+		return (SeatService) pf.getProxy();
+	}
+
+	public void testKeyGeneratorIsRequired() {
+		CoalescingInterceptor ci = new CoalescingInterceptor();
+		ci.setKeyGenerator(null);
+		try {
+			ci.afterPropertiesSet();
+			fail("Should have thrown IllegalArgumentException");
+		}
+		catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+
+	public void testConcurrentInvocationsWithSameKeyInvokeTargetOnce() throws Exception {
+		target.delay = 300;
+		Object[] results = invokeConcurrently(createProxy(), new int[] {1, 1, 1, 1, 1, 1, 1, 1, 1, 1});
+		assertEquals(1, target.invocations);
+		for (int i = 0; i < results.length; i++) {
+			assertEquals(new Integer(101), results[i]);
+		}
+		assertEquals(10, interceptor.getInvocationCount());
+		assertEquals(1, interceptor.getTargetInvocationCount());
+		assertEquals(9, interceptor.getCoalescedCount());
+		assertEquals(0.9, interceptor.getCollapseRatio(), 0.0001);
+		assertEquals(0.9, interceptor.getCollapseRatio("getFreeSeatCount"), 0.0001);
+		assertEquals(0, interceptor.getCollapseRatio("unknown"), 0.0001);
+		assertEquals(1, interceptor.getMethodNames().length);
+		assertEquals(0, interceptor.getInFlightCount());
+	}
+
+	public void testDifferentKeysAreNotCoalesced() throws Exception {
+		target.delay = 200;
+		Object[] results = invokeConcurrently(createProxy(), new int[] {1, 2, 1, 2});
+		assertEquals(2, target.invocations);
+		assertEquals(new Integer(101), results[0]);
+		assertEquals(new Integer(102), results[1]);
+		assertEquals(new Integer(101), results[2]);
+		assertEquals(new Integer(102), results[3]);
+	}
+
+	public void testNothingRetainedAfterCompletion() {
+		SeatService proxy = createProxy();
+		assertEquals(101, proxy.getFreeSeatCount(1));
+		assertEquals(101, proxy.getFreeSeatCount(1));
+		assertEquals(2, target.invocations);
+		assertEquals(0, interceptor.getCoalescedCount());
+		assertEquals(0, interceptor.getCollapseRatio(), 0.0001);
+	}
+
+	public void testExceptionIsSharedWithWaitingInvocations() throws Exception {
+		target.delay = 300;
+		Object[] results = invokeConcurrently(createProxy(), new int[] {-1, -1, -1, -1});
+		assertEquals(1, target.invocations);
+		for (int i = 0; i < results.length; i++) {
+			assertTrue(results[i] instanceof IllegalArgumentException);
+		}
+		assertEquals(3, interceptor.getCoalescedCount());
+	}
+
+	public void testMaxWait() throws Exception {
+		interceptor.setMaxWait(50);
+		target.delay = 500;
+		Object[] results = invokeConcurrently(createProxy(), new int[] {1, 1, 1});
+		assertEquals(3, target.invocations);
+		for (int i = 0; i < results.length; i++) {
+			assertEquals(new Integer(101), results[i]);
+		}
+		assertEquals(2, interceptor.getTimeoutCount());
+		assertEquals(0, interceptor.getCoalescedCount());
+		assertEquals(3, interceptor.getTargetInvocationCount());
+	}
+
+	public void testCustomKeyGenerator() throws Exception {
+		interceptor.setKeyGenerator(new CacheKeyGenerator() {
+			public Object generateKey(MethodInvocation invocation) {
+				return invocation.getMethod().getName();
+			}
+		});
+		target.delay = 300;
+		invokeConcurrently(createProxy(), new int[] {1, 2, 3});
+		assertEquals(1, target.invocations);
+	}
+
+	public void testReentrantInvocationWithSameKey() {
+		final SeatService proxy = createProxy();
+		target.callback = new Runnable() {
+			public void run() {
+				target.callback = null;
+				assertEquals(101, proxy.getFreeSeatCount(1));
+			}
+		};
+		assertEquals(101, proxy.getFreeSeatCount(1));
+		assertEquals(2, target.invocations);
+		assertEquals(0, interceptor.getCoalescedCount());
+	}
+
+	public void testResetStatistics() {
+		SeatService proxy = createProxy();
+		proxy.getFreeSeatCount(1);
+		assertEquals(1, interceptor.getInvocationCount());
+		interceptor.resetStatistics();
+		assertEquals(0, interceptor.getInvocationCount());
+		assertEquals(0, interceptor.getTargetInvocationCount());
+	}
+
+
+	/**
+	 * Invoke getFreeSeatCount concurrently, one thread per argument.
+	 * @return the results, or the exceptions thrown
+	 */
+	private Object[] invokeConcurrently(final SeatService proxy, final int[] args) throws InterruptedException {
+		final Object[] results = new Object[args.length];
+		Thread[] threads = new Thread[args.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						results[index] = new Integer(proxy.getFreeSeatCount(args[index]));
+					}
+					catch (RuntimeException ex) {
+						results[index] = ex;
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].join();
+		}
+		return results;
+	}
+
+
+	public interface SeatService {
+
+		int getFreeSeatCount(int performanceId);
+	}
+
+
+	public static class CountingSeatService implements SeatService {
+
+		private int invocations;
+
+		private long delay;
+
+		private Runnable callback;
+
+		public int getFreeSeatCount(int performanceId) {
+			synchronized (this) {
+				this.invocations++;
+			}
+			if (this.callback != null) {
+				this.callback.run();
+			}
+			if (this.delay > 0) {
+				try {
+					Thread.sleep(this.delay);
+				}
+				catch (InterruptedException ex) {
+				}
+			}
+			if (performanceId < 0) {
+				throw new IllegalArgumentException("No performance with id " + performanceId);
+			}
+			return 100 + performanceId;
+		}
+	}
+
+}
@@ -16,6 +16,13 @@
 
 package org.springframework.context.support;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
 import java.util.Properties;
 
@@ -26,6 +33,7 @@ import org.springframework.context.MessageSourceResolvable;
 import org.springframework.context.NoSuchMessageException;
 import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.core.JdkVersion;
+import org.springframework.util.StopWatch;
 
 /**
  * @author Juergen Hoeller
@@ -148,6 +156,71 @@ public class ResourceBundleMessageSourceTests extends TestCase {
 		assertEquals("nachricht2", ms.getMessage("code2", null, Locale.GERMAN));
 	}
 
+	public void testResourceBundleMessageSourceWithCachedMessages() {
+		ResourceBundleMessageSource ms = new ResourceBundleMessageSource();
+		ms.setBasename("org/springframework/context/support/messages");
+		StaticMessageSource parent = new StaticMessageSource();
+		parent.addMessage("parentCode", Locale.ENGLISH, "{0} from parent");
+		ms.setParentMessageSource(parent);
+
+		for (int i = 0; i < 2; i++) {
+			assertEquals("Hello, World", ms.getMessage("hello", new Object[] {"Hello", "World"}, Locale.ENGLISH));
+			assertEquals("message2", ms.getMessage("code2", new Object[] {"ignored"}, Locale.ENGLISH));
+			assertEquals("value from parent", ms.getMessage("parentCode", new Object[] {"value"}, Locale.ENGLISH));
+			assertEquals("default", ms.getMessage("noSuchCode", null, "default", Locale.ENGLISH));
+		}
+
+		// MessageFormats handed out must not be shared with other callers
+		MessageFormat mf1 = ms.resolveCode("hello", Locale.ENGLISH);
+		MessageFormat mf2 = ms.resolveCode("hello", Locale.ENGLISH);
+		assertNotSame(mf1, mf2);
+		assertEquals("a, b", mf1.format(new Object[] {"a", "b"}));
+	}
+
+	public void testResourceBundleMessageSourceConcurrentResolution() throws Exception {
+		final ResourceBundleMessageSource ms = new ResourceBundleMessageSource();
+		ms.setBasenames(new String[] {
+			"org/springframework/context/support/messages",
+			"org/springframework/context/support/more-messages"});
+		final int resolutions = 20000;
+		final List failures = Collections.synchronizedList(new ArrayList());
+		Thread[] threads = new Thread[32];
+		for (int i = 0; i < threads.length; i++) {
+			final String name = "thread" + i;
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						for (int j = 0; j < resolutions; j++) {
+							String expected = name + ", " + j;
+							String msg = ms.getMessage("hello", new Object[] {name, new Integer(j)}, Locale.ENGLISH);
+							// MessageFormat renders the Integer with grouping separators
+							if (!msg.startsWith(name + ", ") || (j < 1000 && !expected.equals(msg))) {
+								failures.add(msg);
+							}
+							ms.getMessage("code3", null, Locale.ENGLISH);
+							ms.getMessage("noSuchCode", null, null, Locale.ENGLISH);
+						}
+					}
+					catch (Throwable ex) {
+						failures.add(ex);
+					}
+				}
+			};
+		}
+
+		StopWatch sw = new StopWatch(getClass() + "." + getName());
+		sw.start(threads.length + " threads resolving " + resolutions * 3 + " messages each");
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].join();
+		}
+		sw.stop();
+		System.out.println(sw.prettyPrint());
+		assertTrue("Unexpected results: " + failures, failures.isEmpty());
+	}
+
 	public void testReloadableResourceBundleMessageSourceStandalone() {
 		ReloadableResourceBundleMessageSource ms = new ReloadableResourceBundleMessageSource();
 		ms.setBasename("org/springframework/context/support/messages");
@@ -207,4 +280,49 @@ public class ResourceBundleMessageSourceTests extends TestCase {
 		assertEquals("message2", ms.getMessage("code2", null, Locale.GERMAN));
 	}
 
+	public void testReloadableResourceBundleMessageSourceWithRefreshInBackground() throws Exception {
+		File dir = File.createTempFile("messages", "");
+		dir.delete();
+		dir.mkdir();
+		File file = new File(dir, "messages.properties");
+		try {
+			writeMessage(file, "code1=message1");
+			ReloadableResourceBundleMessageSource ms = new ReloadableResourceBundleMessageSource();
+			ms.setBasename("file:" + new File(dir, "messages").getAbsolutePath());
+			ms.setCacheSeconds(1);
+			ms.setRefreshInBackground(true);
+			ms.setFallbackToSystemLocale(false);
+			try {
+				assertEquals("message1", ms.getMessage("code1", null, Locale.ENGLISH));
+				assertEquals("default", ms.getMessage("code2", null, "default", Locale.ENGLISH));
+
+				writeMessage(file, "code1=message1\ncode2={0} changed");
+				file.setLastModified(file.lastModified() + 5000);
+				String msg = null;
+				for (int i = 0; i < 50 && !"value changed".equals(msg); i++) {
+					Thread.sleep(100);
+					msg = ms.getMessage("code2", new Object[] {"value"}, "default", Locale.ENGLISH);
+				}
+				assertEquals("value changed", msg);
+			}
+			finally {
+				ms.destroy();
+			}
+		}
+		finally {
+			file.delete();
+			dir.delete();
+		}
+	}
+
+	private void writeMessage(File file, String content) throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content.getBytes("ISO-8859-1"));
+		}
+		finally {
+			out.close();
+		}
+	}
+
 }
@@ -49,4 +49,22 @@ public class CollectionFactoryTests extends TestCase {
             fail(e.getMessage());
         }
     }
+
+    public void testConcurrentMap() {
+        Map m = CollectionFactory.createConcurrentMapIfPossible(0);
+        m.put("key", "value");
+        assertEquals("value", m.get("key"));
+    }
+
+    public void testLruMapEvictsLeastRecentlyUsedEntry() {
+        Map m = CollectionFactory.createLruMapIfPossible(2);
+        m.put("key1", "value1");
+        m.put("key2", "value2");
+        assertEquals("value1", m.get("key1"));
+        m.put("key3", "value3");
+        assertEquals(2, m.size());
+        assertEquals("value1", m.get("key1"));
+        assertNull(m.get("key2"));
+        assertEquals("value3", m.get("key3"));
+    }
 }
@@ -0,0 +1,397 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.dao.support;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * @since 1.2.1
+ */
+public class BatchingInterceptorTests extends TestCase {
+
+	private CountingPerformanceDao target;
+
+	private BatchingInterceptor interceptor;
+
+	private PerformanceDao proxy;
+
+
+	protected void setUp() {
+		this.target = new CountingPerformanceDao();
+		this.interceptor = new BatchingInterceptor();
+		Properties batchMethods = new Properties();
+		batchMethods.setProperty("getPerformance", "getPerformances");
+		batchMethods.setProperty("getSeatCount", "getSeatCounts");
+		batchMethods.setProperty("reserve", "reserveAll");
+		this.interceptor.setBatchMethods(batchMethods);
+		this.interceptor.afterPropertiesSet();
+		ProxyFactory pf = new ProxyFactory(new Class[] {PerformanceDao.class});
+		pf.setTarget(this.target);
+		pf.addAdvice(this.interceptor);
+		this.proxy = (PerformanceDao) pf.getProxy();
+	}
+
+	public void testBatchMethodsAreRequired() {
+		try {
+			new BatchingInterceptor().afterPropertiesSet();
+			fail("Should have thrown IllegalArgumentException");
+		}
+		catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+
+	public void testSingleInvocationProceedsDirectly() {
+		assertEquals("performance-1", proxy.getPerformance(new Integer(1)));
+		assertEquals("performance-1", proxy.getPerformance(new Integer(1)));
+		assertEquals(2, target.singleKeyInvocations);
+		assertEquals(0, target.batches.size());
+		assertEquals(0, proxy.getName().length());
+	}
+
+	public void testInvocationsArrivingDuringDispatchAreBatched() throws Exception {
+		target.delay = 300;
+		Thread first = invokeInThread(new Integer(0), new Object[1], 0);
+		Thread.sleep(100);
+		Object[] results = new Object[5];
+		Thread[] threads = new Thread[results.length];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = invokeInThread(new Integer(i + 1), results, i);
+		}
+		first.join();
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].join();
+		}
+		assertEquals(1, target.singleKeyInvocations);
+		assertEquals(1, target.batches.size());
+		assertEquals(5, ((List) target.batches.get(0)).size());
+		for (int i = 0; i < results.length; i++) {
+			assertEquals("performance-" + (i + 1), results[i]);
+		}
+	}
+
+	public void testTargetReleasedAfterInvocations() throws Exception {
+		CountingPerformanceDao otherTarget = new CountingPerformanceDao();
+		ProxyFactory pf = new ProxyFactory(new Class[] {PerformanceDao.class});
+		pf.setTarget(otherTarget);
+		pf.addAdvice(this.interceptor);
+		PerformanceDao otherProxy = (PerformanceDao) pf.getProxy();
+		assertEquals("performance-1", otherProxy.getPerformance(new Integer(1)));
+		Reference ref = new WeakReference(otherTarget);
+		otherTarget = null;
+		otherProxy = null;
+		pf = null;
+		for (int i = 0; i < 10 && ref.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull("Target still referenced by the interceptor", ref.get());
+	}
+
+	public void testBatchWindowAndMaxBatchSize() throws Exception {
+		interceptor.setBatchWindow(300);
+		interceptor.setMaxBatchSize(3);
+		Object[] results = new Object[6];
+		Thread[] threads = new Thread[results.length];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = invokeInThread(new Integer(i), results, i);
+		}
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].join();
+		}
+		assertEquals(0, target.singleKeyInvocations);
+		assertEquals(2, target.batches.size());
+		for (Iterator it = target.batches.iterator(); it.hasNext();) {
+			assertEquals(3, ((List) it.next()).size());
+		}
+		for (int i = 0; i < results.length; i++) {
+			assertEquals("performance-" + i, results[i]);
+		}
+	}
+
+	public void testDuplicateKeysAreLookedUpOnce() throws Exception {
+		interceptor.setBatchWindow(200);
+		Object[] results = new Object[4];
+		Thread[] threads = new Thread[results.length];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = invokeInThread(new Integer(i % 2), results, i);
+		}
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].join();
+		}
+		assertEquals(1, target.batches.size());
+		assertEquals(2, ((List) target.batches.get(0)).size());
+		assertEquals("performance-0", results[2]);
+		assertEquals("performance-1", results[3]);
+	}
+
+	public void testListResultAndFailureAreScattered() throws Exception {
+		interceptor.setBatchWindow(200);
+		final Object[] results = new Object[3];
+		Thread[] threads = new Thread[results.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						results[index] = new Integer(proxy.getSeatCount(index == 2 ? -1 : index));
+					}
+					catch (RuntimeException ex) {
+						results[index] = ex;
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].join();
+		}
+		for (int i = 0; i < results.length; i++) {
+			assertTrue(results[i] instanceof IncorrectResultSizeDataAccessException);
+		}
+
+		final Object[] validResults = new Object[2];
+		threads = new Thread[validResults.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				public void run() {
+					validResults[index] = new Integer(proxy.getSeatCount(index));
+				}
+			};
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].join();
+		}
+		assertEquals(2, target.batches.size());
+		assertEquals(new Integer(10), validResults[0]);
+		assertEquals(new Integer(11), validResults[1]);
+	}
+
+	public void testMissingMultiKeyMethod() {
+		BatchingInterceptor bi = new BatchingInterceptor();
+		Properties batchMethods = new Properties();
+		batchMethods.setProperty("getPerformance", "getAllPerformances");
+		bi.setBatchMethods(batchMethods);
+		ProxyFactory pf = new ProxyFactory(new Class[] {PerformanceDao.class});
+		pf.setTarget(this.target);
+		pf.addAdvice(bi);
+		try {
+			((PerformanceDao) pf.getProxy()).getPerformance(new Integer(1));
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (IllegalStateException ex) {
+			// expected
+		}
+	}
+
+	public void testVoidInvocationsDeferredUntilCommit() {
+		new TransactionTemplate(new TestTransactionManager()).execute(new TransactionCallbackWithoutResult() {
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				proxy.reserve(new Integer(1));
+				proxy.reserve(new Integer(2));
+				proxy.reserve(new Integer(1));
+				assertEquals(0, target.batches.size());
+			}
+		});
+		assertEquals(0, target.singleKeyInvocations);
+		assertEquals(1, target.batches.size());
+		assertEquals(3, ((List) target.batches.get(0)).size());
+		assertEquals(new Integer(2), target.reservations.get(new Integer(1)));
+	}
+
+	public void testDeferredInvocationsDispatchedBeforeOtherInvocation() {
+		new TransactionTemplate(new TestTransactionManager()).execute(new TransactionCallbackWithoutResult() {
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				proxy.reserve(new Integer(1));
+				proxy.reserve(new Integer(2));
+				assertEquals("performance-1 (1 reserved)", proxy.getPerformance(new Integer(1)));
+				assertEquals(1, target.batches.size());
+				proxy.reserve(new Integer(3));
+			}
+		});
+		assertEquals(2, target.batches.size());
+		assertEquals(1, target.singleKeyInvocations);
+	}
+
+	public void testDeferredInvocationsDiscardedOnRollback() {
+		new TransactionTemplate(new TestTransactionManager()).execute(new TransactionCallbackWithoutResult() {
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				proxy.reserve(new Integer(1));
+				status.setRollbackOnly();
+			}
+		});
+		assertEquals(0, target.batches.size());
+		assertTrue(target.reservations.isEmpty());
+		assertTrue(TransactionSynchronizationManager.getResourceMap().isEmpty());
+	}
+
+	public void testMaxBatchSizeDispatchesDeferredInvocations() {
+		interceptor.setMaxBatchSize(2);
+		new TransactionTemplate(new TestTransactionManager()).execute(new TransactionCallbackWithoutResult() {
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				proxy.reserve(new Integer(1));
+				proxy.reserve(new Integer(2));
+				assertEquals(1, target.batches.size());
+				proxy.reserve(new Integer(3));
+			}
+		});
+		assertEquals(2, target.batches.size());
+	}
+
+
+	private Thread invokeInThread(final Integer id, final Object[] results, final int index) {
+		Thread thread = new Thread() {
+			public void run() {
+				results[index] = proxy.getPerformance(id);
+			}
+		};
+		thread.start();
+		return thread;
+	}
+
+
+	public interface PerformanceDao {
+
+		Object getPerformance(Integer id);
+
+		int getSeatCount(int performanceId);
+
+		void reserve(Integer performanceId);
+
+		String getName();
+	}
+
+
+	public static class CountingPerformanceDao implements PerformanceDao {
+
+		private int singleKeyInvocations;
+
+		private final List batches = new ArrayList();
+
+		private final Map reservations = new HashMap();
+
+		private long delay;
+
+		public Object getPerformance(Integer id) {
+			synchronized (this) {
+				this.singleKeyInvocations++;
+			}
+			if (this.delay > 0) {
+				try {
+					Thread.sleep(this.delay);
+				}
+				catch (InterruptedException ex) {
+				}
+			}
+			return describe(id);
+		}
+
+		public synchronized Map getPerformances(List ids) {
+			this.batches.add(ids);
+			Map result = new HashMap();
+			for (Iterator it = ids.iterator(); it.hasNext();) {
+				Integer id = (Integer) it.next();
+				result.put(id, describe(id));
+			}
+			return result;
+		}
+
+		private synchronized String describe(Integer id) {
+			Integer reserved = (Integer) this.reservations.get(id);
+			return "performance-" + id + (reserved != null ? " (" + reserved + " reserved)" : "");
+		}
+
+		public int getSeatCount(int performanceId) {
+			synchronized (this) {
+				this.singleKeyInvocations++;
+			}
+			return 10 + performanceId;
+		}
+
+		public synchronized List getSeatCounts(List performanceIds) {
+			this.batches.add(performanceIds);
+			List result = new ArrayList();
+			for (Iterator it = performanceIds.iterator(); it.hasNext();) {
+				int performanceId = ((Integer) it.next()).intValue();
+				if (performanceId >= 0) {
+					result.add(new Integer(10 + performanceId));
+				}
+			}
+			return result;
+		}
+
+		public synchronized void reserve(Integer performanceId) {
+			this.singleKeyInvocations++;
+			addReservation(performanceId);
+		}
+
+		public synchronized void reserveAll(List performanceIds) {
+			this.batches.add(performanceIds);
+			for (Iterator it = performanceIds.iterator(); it.hasNext();) {
+				addReservation((Integer) it.next());
+			}
+		}
+
+		private void addReservation(Integer performanceId) {
+			Integer count = (Integer) this.reservations.get(performanceId);
+			this.reservations.put(performanceId, new Integer(count != null ? count.intValue() + 1 : 1));
+		}
+
+		public String getName() {
+			return "";
+		}
+	}
+
+
+	private static class TestTransactionManager extends AbstractPlatformTransactionManager {
+
+		protected Object doGetTransaction() {
+			return new Object();
+		}
+
+		protected void doBegin(Object transaction, TransactionDefinition definition) {
+		}
+
+		protected void doCommit(DefaultTransactionStatus status) {
+		}
+
+		protected void doRollback(DefaultTransactionStatus status) {
+		}
+	}
+
+}
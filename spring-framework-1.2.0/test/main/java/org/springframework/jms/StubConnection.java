@@ -0,0 +1,133 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionConsumer;
+import javax.jms.ConnectionMetaData;
+import javax.jms.Destination;
+import javax.jms.ExceptionListener;
+import javax.jms.JMSException;
+import javax.jms.ServerSessionPool;
+import javax.jms.Session;
+import javax.jms.Topic;
+
+/**
+ * Connection of the stub JMS provider. Message delivery to
+ * consumers only happens while the connection is started.
+ *
+ * @see StubConnectionFactory
+ */
+public class StubConnection implements Connection {
+
+	private final StubConnectionFactory connectionFactory;
+
+	private String clientID;
+
+	private ExceptionListener exceptionListener;
+
+	private boolean started = false;
+
+	private boolean closed = false;
+
+
+	public StubConnection(StubConnectionFactory connectionFactory) {
+		this.connectionFactory = connectionFactory;
+	}
+
+	public StubConnectionFactory getConnectionFactory() {
+		return connectionFactory;
+	}
+
+	public Session createSession(boolean transacted, int acknowledgeMode) throws JMSException {
+		checkNotClosed();
+		this.connectionFactory.sessionCreated();
+		return new StubSession(this, transacted, acknowledgeMode);
+	}
+
+	public String getClientID() {
+		return clientID;
+	}
+
+	public void setClientID(String clientID) {
+		this.clientID = clientID;
+	}
+
+	public ConnectionMetaData getMetaData() {
+		throw new UnsupportedOperationException();
+	}
+
+	public ExceptionListener getExceptionListener() {
+		return exceptionListener;
+	}
+
+	public void setExceptionListener(ExceptionListener exceptionListener) {
+		this.exceptionListener = exceptionListener;
+	}
+
+	public synchronized void start() throws JMSException {
+		checkNotClosed();
+		this.started = true;
+		notifyAll();
+	}
+
+	public synchronized void stop() {
+		this.started = false;
+	}
+
+	public synchronized void close() {
+		this.started = false;
+		this.closed = true;
+		notifyAll();
+	}
+
+	public synchronized boolean isStarted() {
+		return started;
+	}
+
+	public synchronized boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Wait until this connection gets started, for at most the given time.
+	 * @return whether the connection has been started
+	 */
+	synchronized boolean waitForStart(long timeout) throws InterruptedException {
+		if (!this.started && !this.closed && timeout >= 0) {
+			wait(timeout);
+		}
+		return this.started;
+	}
+
+	synchronized void checkNotClosed() throws JMSException {
+		if (this.closed) {
+			throw new javax.jms.IllegalStateException("Connection has been closed");
+		}
+	}
+
+	public ConnectionConsumer createConnectionConsumer(
+			Destination destination, String messageSelector, ServerSessionPool sessionPool, int maxMessages) {
+		throw new UnsupportedOperationException();
+	}
+
+	public ConnectionConsumer createDurableConnectionConsumer(
+			Topic topic, String subscriptionName, String messageSelector, ServerSessionPool sessionPool, int maxMessages) {
+		throw new UnsupportedOperationException();
+	}
+
+}
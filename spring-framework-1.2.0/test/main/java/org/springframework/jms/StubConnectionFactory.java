@@ -0,0 +1,129 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+
+/**
+ * In-memory stand-in for a JMS 1.1 provider, for testing and benchmarking
+ * JMS access code without a message broker. Supports queues only, with
+ * transacted sessions, client acknowledgement and message redelivery.
+ *
+ * <p>Keeps track of the number of JMS resources created, to allow for
+ * verifying the resource usage of the code under test.
+ *
+ * @see StubQueue
+ */
+public class StubConnectionFactory implements ConnectionFactory {
+
+	private final Map queues = new HashMap();
+
+	private long creationDelay = 0;
+
+	private int connectionCount;
+
+	private int sessionCount;
+
+	private int producerCount;
+
+	private int consumerCount;
+
+
+	/**
+	 * Specify a delay in milliseconds for each Connection, Session and
+	 * MessageProducer creation, simulating a round trip to a remote broker.
+	 * Default is 0.
+	 */
+	public void setCreationDelay(long creationDelay) {
+		this.creationDelay = creationDelay;
+	}
+
+	/**
+	 * Return the queue with the given name, creating it if necessary.
+	 */
+	public synchronized StubQueue getQueue(String queueName) {
+		StubQueue queue = (StubQueue) this.queues.get(queueName);
+		if (queue == null) {
+			queue = new StubQueue(queueName);
+			this.queues.put(queueName, queue);
+		}
+		return queue;
+	}
+
+	public Connection createConnection() throws JMSException {
+		synchronized (this) {
+			this.connectionCount++;
+		}
+		simulateCreationDelay();
+		return new StubConnection(this);
+	}
+
+	public Connection createConnection(String username, String password) throws JMSException {
+		return createConnection();
+	}
+
+	void sessionCreated() {
+		synchronized (this) {
+			this.sessionCount++;
+		}
+		simulateCreationDelay();
+	}
+
+	void producerCreated() {
+		synchronized (this) {
+			this.producerCount++;
+		}
+		simulateCreationDelay();
+	}
+
+	synchronized void consumerCreated() {
+		this.consumerCount++;
+	}
+
+	private void simulateCreationDelay() {
+		if (this.creationDelay > 0) {
+			try {
+				Thread.sleep(this.creationDelay);
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	public synchronized int getConnectionCount() {
+		return connectionCount;
+	}
+
+	public synchronized int getSessionCount() {
+		return sessionCount;
+	}
+
+	public synchronized int getProducerCount() {
+		return producerCount;
+	}
+
+	public synchronized int getConsumerCount() {
+		return consumerCount;
+	}
+
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+/**
+ * Base class for messages of the stub JMS provider,
+ * holding the message headers and properties.
+ *
+ * @see StubConnectionFactory
+ */
+public abstract class StubMessage implements Message {
+
+	private String messageId;
+
+	private long timestamp;
+
+	private String correlationId;
+
+	private Destination replyTo;
+
+	private Destination destination;
+
+	private int deliveryMode = DEFAULT_DELIVERY_MODE;
+
+	private boolean redelivered;
+
+	private String type;
+
+	private long expiration;
+
+	private int priority = DEFAULT_PRIORITY;
+
+	private final Map properties = new HashMap();
+
+	private StubSession acknowledgingSession;
+
+
+	public String getJMSMessageID() {
+		return messageId;
+	}
+
+	public void setJMSMessageID(String messageId) {
+		this.messageId = messageId;
+	}
+
+	public long getJMSTimestamp() {
+		return timestamp;
+	}
+
+	public void setJMSTimestamp(long timestamp) {
+		this.timestamp = timestamp;
+	}
+
+	public byte[] getJMSCorrelationIDAsBytes() {
+		return (this.correlationId != null ? this.correlationId.getBytes() : null);
+	}
+
+	public void setJMSCorrelationIDAsBytes(byte[] correlationId) {
+		this.correlationId = (correlationId != null ? new String(correlationId) : null);
+	}
+
+	public void setJMSCorrelationID(String correlationId) {
+		this.correlationId = correlationId;
+	}
+
+	public String getJMSCorrelationID() {
+		return correlationId;
+	}
+
+	public Destination getJMSReplyTo() {
+		return replyTo;
+	}
+
+	public void setJMSReplyTo(Destination replyTo) {
+		this.replyTo = replyTo;
+	}
+
+	public Destination getJMSDestination() {
+		return destination;
+	}
+
+	public void setJMSDestination(Destination destination) {
+		this.destination = destination;
+	}
+
+	public int getJMSDeliveryMode() {
+		return deliveryMode;
+	}
+
+	public void setJMSDeliveryMode(int deliveryMode) {
+		this.deliveryMode = deliveryMode;
+	}
+
+	public boolean getJMSRedelivered() {
+		return redelivered;
+	}
+
+	public void setJMSRedelivered(boolean redelivered) {
+		this.redelivered = redelivered;
+	}
+
+	public String getJMSType() {
+		return type;
+	}
+
+	public void setJMSType(String type) {
+		this.type = type;
+	}
+
+	public long getJMSExpiration() {
+		return expiration;
+	}
+
+	public void setJMSExpiration(long expiration) {
+		this.expiration = expiration;
+	}
+
+	public int getJMSPriority() {
+		return priority;
+	}
+
+	public void setJMSPriority(int priority) {
+		this.priority = priority;
+	}
+
+
+	public void clearProperties() {
+		this.properties.clear();
+	}
+
+	public boolean propertyExists(String name) {
+		return this.properties.containsKey(name);
+	}
+
+	public boolean getBooleanProperty(String name) {
+		return ((Boolean) this.properties.get(name)).booleanValue();
+	}
+
+	public byte getByteProperty(String name) {
+		return ((Number) this.properties.get(name)).byteValue();
+	}
+
+	public short getShortProperty(String name) {
+		return ((Number) this.properties.get(name)).shortValue();
+	}
+
+	public int getIntProperty(String name) {
+		return ((Number) this.properties.get(name)).intValue();
+	}
+
+	public long getLongProperty(String name) {
+		return ((Number) this.properties.get(name)).longValue();
+	}
+
+	public float getFloatProperty(String name) {
+		return ((Number) this.properties.get(name)).floatValue();
+	}
+
+	public double getDoubleProperty(String name) {
+		return ((Number) this.properties.get(name)).doubleValue();
+	}
+
+	public String getStringProperty(String name) {
+		Object value = this.properties.get(name);
+		return (value != null ? value.toString() : null);
+	}
+
+	public Object getObjectProperty(String name) {
+		return this.properties.get(name);
+	}
+
+	public Enumeration getPropertyNames() {
+		return Collections.enumeration(this.properties.keySet());
+	}
+
+	public void setBooleanProperty(String name, boolean value) {
+		this.properties.put(name, new Boolean(value));
+	}
+
+	public void setByteProperty(String name, byte value) {
+		this.properties.put(name, new Byte(value));
+	}
+
+	public void setShortProperty(String name, short value) {
+		this.properties.put(name, new Short(value));
+	}
+
+	public void setIntProperty(String name, int value) {
+		this.properties.put(name, new Integer(value));
+	}
+
+	public void setLongProperty(String name, long value) {
+		this.properties.put(name, new Long(value));
+	}
+
+	public void setFloatProperty(String name, float value) {
+		this.properties.put(name, new Float(value));
+	}
+
+	public void setDoubleProperty(String name, double value) {
+		this.properties.put(name, new Double(value));
+	}
+
+	public void setStringProperty(String name, String value) {
+		this.properties.put(name, value);
+	}
+
+	public void setObjectProperty(String name, Object value) {
+		this.properties.put(name, value);
+	}
+
+
+	void setAcknowledgingSession(StubSession acknowledgingSession) {
+		this.acknowledgingSession = acknowledgingSession;
+	}
+
+	public void acknowledge() throws JMSException {
+		if (this.acknowledgingSession != null) {
+			this.acknowledgingSession.acknowledge();
+		}
+	}
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+
+/**
+ * MessageConsumer of the stub JMS provider. Only supports
+ * synchronous receive calls, no asynchronous MessageListener.
+ *
+ * @see StubConnectionFactory
+ */
+public class StubMessageConsumer implements MessageConsumer {
+
+	private final StubSession session;
+
+	private final StubQueue queue;
+
+	private boolean closed = false;
+
+
+	public StubMessageConsumer(StubSession session, StubQueue queue) {
+		this.session = session;
+		this.queue = queue;
+	}
+
+	public String getMessageSelector() {
+		return null;
+	}
+
+	public MessageListener getMessageListener() {
+		return null;
+	}
+
+	public void setMessageListener(MessageListener listener) {
+		throw new UnsupportedOperationException();
+	}
+
+	public Message receive() throws JMSException {
+		return doReceive(0);
+	}
+
+	public Message receive(long timeout) throws JMSException {
+		return doReceive(timeout);
+	}
+
+	public Message receiveNoWait() throws JMSException {
+		return doReceive(-1);
+	}
+
+	public synchronized boolean isClosed() {
+		return closed;
+	}
+
+	public synchronized void close() {
+		this.closed = true;
+	}
+
+	private Message doReceive(long timeout) throws JMSException {
+		if (isClosed()) {
+			throw new javax.jms.IllegalStateException("Consumer has been closed");
+		}
+		this.session.checkNotClosed();
+		try {
+			if (!this.session.getConnection().waitForStart(timeout)) {
+				return null;
+			}
+			StubMessage message = (StubMessage) this.queue.dequeue(timeout);
+			if (message != null) {
+				this.session.received(this.queue, message);
+			}
+			return message;
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
+}
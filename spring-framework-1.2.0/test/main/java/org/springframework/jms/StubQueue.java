@@ -0,0 +1,88 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import javax.jms.Message;
+import javax.jms.Queue;
+
+/**
+ * In-memory JMS Queue for the stub JMS provider: holds its pending
+ * messages in FIFO order, with blocking dequeue operations.
+ *
+ * @see StubConnectionFactory
+ */
+public class StubQueue implements Queue {
+
+	private final String queueName;
+
+	private final LinkedList messages = new LinkedList();
+
+
+	public StubQueue(String queueName) {
+		this.queueName = queueName;
+	}
+
+	public String getQueueName() {
+		return queueName;
+	}
+
+	public synchronized void enqueue(Message message) {
+		this.messages.addLast(message);
+		notifyAll();
+	}
+
+	/**
+	 * Put the given messages back to the head of the queue,
+	 * preserving their order.
+	 */
+	public synchronized void requeue(List messages) {
+		this.messages.addAll(0, messages);
+		notifyAll();
+	}
+
+	/**
+	 * Take the next message from the queue.
+	 * @param timeout the timeout in milliseconds: 0 for blocking
+	 * indefinitely, -1 for not blocking at all
+	 * @return the message, or null if none available within the timeout
+	 */
+	public synchronized Message dequeue(long timeout) throws InterruptedException {
+		if (timeout >= 0) {
+			long deadline = System.currentTimeMillis() + timeout;
+			while (this.messages.isEmpty()) {
+				long remaining = (timeout == 0 ? 0 : deadline - System.currentTimeMillis());
+				if (timeout > 0 && remaining <= 0) {
+					break;
+				}
+				wait(remaining);
+			}
+		}
+		return (!this.messages.isEmpty() ? (Message) this.messages.removeFirst() : null);
+	}
+
+	public synchronized int size() {
+		return this.messages.size();
+	}
+
+	public String toString() {
+		return "StubQueue: " + this.queueName;
+	}
+
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import javax.jms.BytesMessage;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.MapMessage;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.ObjectMessage;
+import javax.jms.Queue;
+import javax.jms.QueueBrowser;
+import javax.jms.Session;
+import javax.jms.StreamMessage;
+import javax.jms.TemporaryQueue;
+import javax.jms.TemporaryTopic;
+import javax.jms.TextMessage;
+import javax.jms.Topic;
+import javax.jms.TopicSubscriber;
+
+/**
+ * Session of the stub JMS provider. A transacted session buffers sent
+ * messages until commit, and puts received messages back on rollback.
+ * A client-acknowledge session puts unacknowledged messages back on
+ * recover and on close.
+ *
+ * @see StubConnectionFactory
+ */
+public class StubSession implements Session {
+
+	private static long messageIdCounter = 0;
+
+	private final StubConnection connection;
+
+	private final boolean transacted;
+
+	private final int acknowledgeMode;
+
+	/** List of Object[] {StubQueue, Message} pairs, for transacted sends */
+	private final List pendingSends = new LinkedList();
+
+	/** List of Object[] {StubQueue, Message} pairs, for transacted or client-acknowledged receives */
+	private final List unacknowledgedReceives = new LinkedList();
+
+	private boolean closed = false;
+
+	private int commitCount = 0;
+
+	private int rollbackCount = 0;
+
+
+	public StubSession(StubConnection connection, boolean transacted, int acknowledgeMode) {
+		this.connection = connection;
+		this.transacted = transacted;
+		this.acknowledgeMode = (transacted ? Session.SESSION_TRANSACTED : acknowledgeMode);
+	}
+
+	public StubConnection getConnection() {
+		return connection;
+	}
+
+	public boolean getTransacted() {
+		return transacted;
+	}
+
+	public int getAcknowledgeMode() {
+		return acknowledgeMode;
+	}
+
+	public synchronized int getCommitCount() {
+		return commitCount;
+	}
+
+	public synchronized int getRollbackCount() {
+		return rollbackCount;
+	}
+
+	public synchronized boolean isClosed() {
+		return closed;
+	}
+
+
+	public BytesMessage createBytesMessage() {
+		throw new UnsupportedOperationException();
+	}
+
+	public MapMessage createMapMessage() {
+		throw new UnsupportedOperationException();
+	}
+
+	public Message createMessage() {
+		return new StubTextMessage();
+	}
+
+	public ObjectMessage createObjectMessage() {
+		return new StubObjectMessage();
+	}
+
+	public ObjectMessage createObjectMessage(Serializable object) {
+		return new StubObjectMessage(object);
+	}
+
+	public StreamMessage createStreamMessage() {
+		throw new UnsupportedOperationException();
+	}
+
+	public TextMessage createTextMessage() {
+		return new StubTextMessage();
+	}
+
+	public TextMessage createTextMessage(String text) {
+		return new StubTextMessage(text);
+	}
+
+
+	public synchronized void commit() throws JMSException {
+		checkNotClosed();
+		if (!this.transacted) {
+			throw new javax.jms.IllegalStateException("Session is not transacted");
+		}
+		for (Iterator it = this.pendingSends.iterator(); it.hasNext();) {
+			Object[] pair = (Object[]) it.next();
+			((StubQueue) pair[0]).enqueue((Message) pair[1]);
+		}
+		this.pendingSends.clear();
+		this.unacknowledgedReceives.clear();
+		this.commitCount++;
+	}
+
+	public synchronized void rollback() throws JMSException {
+		checkNotClosed();
+		if (!this.transacted) {
+			throw new javax.jms.IllegalStateException("Session is not transacted");
+		}
+		this.pendingSends.clear();
+		redeliverUnacknowledged();
+		this.rollbackCount++;
+	}
+
+	public synchronized void recover() throws JMSException {
+		checkNotClosed();
+		redeliverUnacknowledged();
+	}
+
+	public synchronized void close() {
+		if (!this.closed) {
+			this.pendingSends.clear();
+			redeliverUnacknowledged();
+			this.closed = true;
+		}
+	}
+
+	public MessageListener getMessageListener() {
+		return null;
+	}
+
+	public void setMessageListener(MessageListener listener) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void run() {
+		throw new UnsupportedOperationException();
+	}
+
+
+	public MessageProducer createProducer(Destination destination) throws JMSException {
+		checkNotClosed();
+		this.connection.getConnectionFactory().producerCreated();
+		return new StubMessageProducer(this, (StubQueue) destination);
+	}
+
+	public MessageConsumer createConsumer(Destination destination) throws JMSException {
+		checkNotClosed();
+		if (destination == null) {
+			throw new javax.jms.InvalidDestinationException("Destination must not be null");
+		}
+		this.connection.getConnectionFactory().consumerCreated();
+		return new StubMessageConsumer(this, (StubQueue) destination);
+	}
+
+	public MessageConsumer createConsumer(Destination destination, String messageSelector) throws JMSException {
+		if (messageSelector != null) {
+			throw new javax.jms.InvalidSelectorException("Message selectors not supported");
+		}
+		return createConsumer(destination);
+	}
+
+	public MessageConsumer createConsumer(Destination destination, String messageSelector, boolean noLocal)
+			throws JMSException {
+		return createConsumer(destination, messageSelector);
+	}
+
+	public Queue createQueue(String queueName) {
+		return this.connection.getConnectionFactory().getQueue(queueName);
+	}
+
+	public Topic createTopic(String topicName) {
+		throw new UnsupportedOperationException();
+	}
+
+	public TopicSubscriber createDurableSubscriber(Topic topic, String name) {
+		throw new UnsupportedOperationException();
+	}
+
+	public TopicSubscriber createDurableSubscriber(
+			Topic topic, String name, String messageSelector, boolean noLocal) {
+		throw new UnsupportedOperationException();
+	}
+
+	public QueueBrowser createBrowser(Queue queue) {
+		throw new UnsupportedOperationException();
+	}
+
+	public QueueBrowser createBrowser(Queue queue, String messageSelector) {
+		throw new UnsupportedOperationException();
+	}
+
+	public TemporaryQueue createTemporaryQueue() {
+		throw new UnsupportedOperationException();
+	}
+
+	public TemporaryTopic createTemporaryTopic() {
+		throw new UnsupportedOperationException();
+	}
+
+	public void unsubscribe(String name) {
+		throw new UnsupportedOperationException();
+	}
+
+
+	/**
+	 * Send the given message to the given queue, within the current
+	 * transaction if this session is transacted.
+	 */
+	synchronized void send(StubQueue queue, Message message) throws JMSException {
+		checkNotClosed();
+		synchronized (StubSession.class) {
+			messageIdCounter++;
+			message.setJMSMessageID("ID:stub-" + messageIdCounter);
+		}
+		message.setJMSDestination(queue);
+		message.setJMSTimestamp(System.currentTimeMillis());
+		if (this.transacted) {
+			this.pendingSends.add(new Object[] {queue, message});
+		}
+		else {
+			queue.enqueue(message);
+		}
+	}
+
+	/**
+	 * Register the given message as received from the given queue,
+	 * to be redelivered unless committed or acknowledged.
+	 */
+	synchronized void received(StubQueue queue, StubMessage message) {
+		if (this.transacted || this.acknowledgeMode == Session.CLIENT_ACKNOWLEDGE) {
+			this.unacknowledgedReceives.add(new Object[] {queue, message});
+			message.setAcknowledgingSession(this);
+		}
+	}
+
+	synchronized void acknowledge() {
+		if (!this.transacted) {
+			this.unacknowledgedReceives.clear();
+		}
+	}
+
+	synchronized void checkNotClosed() throws JMSException {
+		if (this.closed) {
+			throw new javax.jms.IllegalStateException("Session has been closed");
+		}
+		this.connection.checkNotClosed();
+	}
+
+	private void redeliverUnacknowledged() {
+		// Group messages by queue, preserving their original order.
+		List queues = new ArrayList();
+		List messagesByQueue = new ArrayList();
+		for (Iterator it = this.unacknowledgedReceives.iterator(); it.hasNext();) {
+			Object[] pair = (Object[]) it.next();
+			StubMessage message = (StubMessage) pair[1];
+			message.setJMSRedelivered(true);
+			int index = queues.indexOf(pair[0]);
+			if (index == -1) {
+				queues.add(pair[0]);
+				messagesByQueue.add(new ArrayList());
+				index = queues.size() - 1;
+			}
+			((List) messagesByQueue.get(index)).add(message);
+		}
+		for (int i = 0; i < queues.size(); i++) {
+			((StubQueue) queues.get(i)).requeue((List) messagesByQueue.get(i));
+		}
+		this.unacknowledgedReceives.clear();
+	}
+
+}
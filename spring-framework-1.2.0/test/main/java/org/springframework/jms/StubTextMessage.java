@@ -0,0 +1,54 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms;
+
+import javax.jms.TextMessage;
+
+/**
+ * TextMessage of the stub JMS provider.
+ *
+ * @see StubConnectionFactory
+ */
+public class StubTextMessage extends StubMessage implements TextMessage {
+
+	private String text;
+
+
+	public StubTextMessage() {
+	}
+
+	public StubTextMessage(String text) {
+		this.text = text;
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	public void setText(String text) {
+		this.text = text;
+	}
+
+	public void clearBody() {
+		this.text = null;
+	}
+
+	public String toString() {
+		return "StubTextMessage: " + this.text;
+	}
+
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.connection;
+
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import junit.framework.TestCase;
+
+import org.springframework.jms.StubConnectionFactory;
+import org.springframework.jms.StubQueue;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.core.MessageCreator;
+import org.springframework.util.StopWatch;
+
+/**
+ * @since 1.2.1
+ */
+public class CachingConnectionFactoryTests extends TestCase {
+
+	private StubConnectionFactory targetConnectionFactory;
+
+	private StubQueue queue;
+
+	protected void setUp() {
+		this.targetConnectionFactory = new StubConnectionFactory();
+		this.queue = this.targetConnectionFactory.getQueue("queue");
+	}
+
+	public void testJmsTemplateReusesSessionAndProducer() throws JMSException {
+		CachingConnectionFactory ccf = new CachingConnectionFactory(this.targetConnectionFactory);
+		JmsTemplate jt = new JmsTemplate(ccf);
+		for (int i = 0; i < 100; i++) {
+			jt.convertAndSend("queue", "message" + i);
+		}
+
+		assertEquals(100, this.queue.size());
+		assertEquals(1, this.targetConnectionFactory.getConnectionCount());
+		assertEquals(1, this.targetConnectionFactory.getSessionCount());
+		assertEquals(1, this.targetConnectionFactory.getProducerCount());
+		assertEquals(99, ccf.getSessionCacheHits());
+		assertEquals(1, ccf.getSessionCacheMisses());
+		assertEquals(99, ccf.getProducerCacheHits());
+		assertEquals(1, ccf.getProducerCacheMisses());
+		assertEquals(1, ccf.getCachedSessionCount());
+
+		ccf.resetStatistics();
+		assertEquals(0, ccf.getSessionCacheHits());
+		assertEquals(0, ccf.getProducerCacheMisses());
+		ccf.destroy();
+	}
+
+	public void testSessionsCachedPerAcknowledgeMode() throws JMSException {
+		CachingConnectionFactory ccf = new CachingConnectionFactory(this.targetConnectionFactory);
+		Connection con = ccf.createConnection();
+		Session autoSession = con.createSession(false, Session.AUTO_ACKNOWLEDGE);
+		autoSession.close();
+		Session clientSession = con.createSession(false, Session.CLIENT_ACKNOWLEDGE);
+		clientSession.close();
+		Session transactedSession = con.createSession(true, Session.AUTO_ACKNOWLEDGE);
+		transactedSession.close();
+		con.close();
+
+		con.createSession(false, Session.AUTO_ACKNOWLEDGE);
+		con.createSession(false, Session.CLIENT_ACKNOWLEDGE);
+		con.createSession(true, Session.CLIENT_ACKNOWLEDGE);
+		assertEquals(3, ccf.getSessionCacheHits());
+		assertEquals(3, this.targetConnectionFactory.getSessionCount());
+		assertEquals(1, this.targetConnectionFactory.getConnectionCount());
+	}
+
+	public void testTransactedSessionRolledBackOnLogicalClose() throws JMSException {
+		CachingConnectionFactory ccf = new CachingConnectionFactory(this.targetConnectionFactory);
+		Connection con = ccf.createConnection();
+		Session session = con.createSession(true, Session.AUTO_ACKNOWLEDGE);
+		MessageProducer producer = session.createProducer(this.queue);
+		producer.send(session.createTextMessage("uncommitted"));
+		producer.close();
+		session.close();
+
+		Session session2 = con.createSession(true, Session.AUTO_ACKNOWLEDGE);
+		assertEquals(1, this.targetConnectionFactory.getSessionCount());
+		session2.commit();
+		assertEquals("Uncommitted message must have been discarded", 0, this.queue.size());
+	}
+
+	public void testRepeatedCloseReturnsSessionOnce() throws JMSException {
+		CachingConnectionFactory ccf = new CachingConnectionFactory(this.targetConnectionFactory);
+		ccf.setSessionCacheSize(2);
+		Connection con = ccf.createConnection();
+		Session session = con.createSession(false, Session.AUTO_ACKNOWLEDGE);
+		session.close();
+		session.close();
+		assertEquals(1, ccf.getCachedSessionCount());
+
+		Session session2 = con.createSession(false, Session.AUTO_ACKNOWLEDGE);
+		assertNotSame(session, session2);
+		// A stale handle must not return the Session in use by someone else.
+		session.close();
+		assertEquals(0, ccf.getCachedSessionCount());
+		Session session3 = con.createSession(false, Session.AUTO_ACKNOWLEDGE);
+		assertEquals(2, this.targetConnectionFactory.getSessionCount());
+		session2.close();
+		session3.close();
+		assertEquals(2, ccf.getCachedSessionCount());
+	}
+
+	public void testCallAfterCloseRejected() throws JMSException {
+		CachingConnectionFactory ccf = new CachingConnectionFactory(this.targetConnectionFactory);
+		Connection con = ccf.createConnection();
+		Session session = con.createSession(false, Session.AUTO_ACKNOWLEDGE);
+		session.close();
+		try {
+			session.createTextMessage();
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (javax.jms.IllegalStateException ex) {
+			// expected
+		}
+		Session session2 = con.createSession(false, Session.AUTO_ACKNOWLEDGE);
+		try {
+			session.createProducer(this.queue);
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (javax.jms.IllegalStateException ex) {
+			// expected
+		}
+		assertNotNull(session2.createTextMessage());
+	}
+
+	public void testProducerSettingsResetOnLogicalClose() throws JMSException {
+		CachingConnectionFactory ccf = new CachingConnectionFactory(this.targetConnectionFactory);
+		Connection con = ccf.createConnection();
+		Session session = con.createSession(false, Session.AUTO_ACKNOWLEDGE);
+		MessageProducer producer = session.createProducer(this.queue);
+		producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+		producer.setPriority(9);
+		producer.setTimeToLive(1000);
+		producer.setDisableMessageID(true);
+		producer.close();
+		session.close();
+
+		session = con.createSession(false, Session.AUTO_ACKNOWLEDGE);
+		producer = session.createProducer(this.queue);
+		assertEquals(1, this.targetConnectionFactory.getProducerCount());
+		assertEquals(Message.DEFAULT_DELIVERY_MODE, producer.getDeliveryMode());
+		assertEquals(Message.DEFAULT_PRIORITY, producer.getPriority());
+		assertEquals(Message.DEFAULT_TIME_TO_LIVE, producer.getTimeToLive());
+		assertFalse(producer.getDisableMessageID());
+	}
+
+	public void testSessionCacheSizeLimit() throws JMSException {
+		CachingConnectionFactory ccf = new CachingConnectionFactory(this.targetConnectionFactory);
+		ccf.setSessionCacheSize(2);
+		Connection con = ccf.createConnection();
+		Session session1 = con.createSession(false, Session.AUTO_ACKNOWLEDGE);
+		Session session2 = con.createSession(false, Session.AUTO_ACKNOWLEDGE);
+		Session session3 = con.createSession(false, Session.AUTO_ACKNOWLEDGE);
+		assertNotSame(session1, session2);
+		assertNotSame(session2, session3);
+		session1.close();
+		session2.close();
+		session3.close();
+
+		assertEquals(2, ccf.getCachedSessionCount());
+		assertEquals(3, ccf.getSessionCacheMisses());
+		assertEquals(0, ccf.getSessionCacheHits());
+	}
+
+	public void testProducersNotCachedIfTurnedOff() throws JMSException {
+		CachingConnectionFactory ccf = new CachingConnectionFactory(this.targetConnectionFactory);
+		ccf.setCacheProducers(false);
+		JmsTemplate jt = new JmsTemplate(ccf);
+		for (int i = 0; i < 10; i++) {
+			jt.convertAndSend("queue", "message" + i);
+		}
+		assertEquals(10, this.queue.size());
+		assertEquals(1, this.targetConnectionFactory.getSessionCount());
+		assertEquals(10, this.targetConnectionFactory.getProducerCount());
+		assertEquals(0, ccf.getProducerCacheHits());
+	}
+
+	public void testDestroyClosesCachedSessions() throws JMSException {
+		CachingConnectionFactory ccf = new CachingConnectionFactory(this.targetConnectionFactory);
+		Connection con = ccf.createConnection();
+		Session session = con.createSession(false, Session.AUTO_ACKNOWLEDGE);
+		session.close();
+		ccf.destroy();
+
+		assertEquals(0, ccf.getCachedSessionCount());
+		try {
+			session.createTextMessage();
+			session.createProducer(this.queue);
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (javax.jms.IllegalStateException ex) {
+			// expected
+		}
+	}
+
+	public void testSendThroughput() throws JMSException {
+		int howMany = 20000;
+		int howManyRemote = 200;
+		StopWatch sw = new StopWatch(getClass() + "." + getName());
+		JmsTemplate plainTemplate = new JmsTemplate(this.targetConnectionFactory);
+		CachingConnectionFactory ccf = new CachingConnectionFactory(this.targetConnectionFactory);
+		JmsTemplate cachingTemplate = new JmsTemplate(ccf);
+
+		// Warm up both code paths.
+		sendMessages(plainTemplate, howMany);
+		sendMessages(cachingTemplate, howMany);
+
+		// In-process resources: measures the pure overhead of the caching proxies.
+		sw.start("plain ConnectionFactory, in-process resources: " + howMany + " sends");
+		sendMessages(plainTemplate, howMany);
+		sw.stop();
+		sw.start("CachingConnectionFactory, in-process resources: " + howMany + " sends");
+		sendMessages(cachingTemplate, howMany);
+		sw.stop();
+
+		// Simulated broker round trip per Connection, Session and MessageProducer creation.
+		this.targetConnectionFactory.setCreationDelay(1);
+		sw.start("plain ConnectionFactory, 1 ms creation round trip: " + howManyRemote + " sends");
+		sendMessages(plainTemplate, howManyRemote);
+		sw.stop();
+		sw.start("CachingConnectionFactory, 1 ms creation round trip: " + howManyRemote + " sends");
+		sendMessages(cachingTemplate, howManyRemote);
+		sw.stop();
+		ccf.destroy();
+
+		System.out.println(sw.prettyPrint());
+		assertEquals(4 * howMany + 2 * howManyRemote, this.queue.size());
+	}
+
+	private void sendMessages(JmsTemplate jt, int howMany) {
+		for (int i = 0; i < howMany; i++) {
+			jt.send("queue", new MessageCreator() {
+				public Message createMessage(Session session) throws JMSException {
+					return session.createTextMessage("message");
+				}
+			});
+		}
+	}
+
+}
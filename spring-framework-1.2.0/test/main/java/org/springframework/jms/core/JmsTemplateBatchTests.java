@@ -0,0 +1,230 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import junit.framework.TestCase;
+
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.jms.StubConnectionFactory;
+import org.springframework.jms.StubQueue;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Tests for the batch send operations of JmsTemplate and the asynchronous
+ * send operations of AsyncJmsTemplate,
+ * run against an in-memory JMS provider.
+ * @since 1.2.1
+ */
+public class JmsTemplateBatchTests extends TestCase {
+
+	private StubConnectionFactory connectionFactory;
+
+	private StubQueue queue;
+
+	private AsyncJmsTemplate template;
+
+	protected void setUp() {
+		this.connectionFactory = new StubConnectionFactory();
+		this.queue = this.connectionFactory.getQueue("queue");
+		this.template = new AsyncJmsTemplate(this.connectionFactory);
+	}
+
+	public void testSendBatchUsesSingleSessionAndProducer() throws Exception {
+		List creators = new ArrayList();
+		for (int i = 0; i < 10; i++) {
+			creators.add(new TextMessageCreator("message" + i));
+		}
+		this.template.sendBatch("queue", creators.iterator());
+
+		assertEquals(10, this.queue.size());
+		assertEquals(1, this.connectionFactory.getConnectionCount());
+		assertEquals(1, this.connectionFactory.getSessionCount());
+		assertEquals(1, this.connectionFactory.getProducerCount());
+		assertEquals("message0", ((TextMessage) this.queue.dequeue(-1)).getText());
+	}
+
+	public void testConvertAndSendBatchToDefaultDestination() throws Exception {
+		this.template.setDefaultDestinationName("queue");
+		this.template.convertAndSendBatch(Arrays.asList(new String[] {"a", "b", "c"}).iterator());
+
+		assertEquals(3, this.queue.size());
+		assertEquals(1, this.connectionFactory.getSessionCount());
+		assertEquals("a", ((TextMessage) this.queue.dequeue(-1)).getText());
+		assertEquals("b", ((TextMessage) this.queue.dequeue(-1)).getText());
+		assertEquals("c", ((TextMessage) this.queue.dequeue(-1)).getText());
+	}
+
+	public void testTransactedBatchCommitsAtEnd() throws Exception {
+		this.template.setSessionTransacted(true);
+		List creators = new ArrayList();
+		for (int i = 0; i < 5; i++) {
+			creators.add(new VisibilityRecordingMessageCreator("message" + i));
+		}
+		this.template.sendBatch("queue", creators.iterator());
+
+		for (int i = 0; i < 5; i++) {
+			assertEquals(0, ((VisibilityRecordingMessageCreator) creators.get(i)).visibleMessages);
+		}
+		assertEquals(5, this.queue.size());
+	}
+
+	public void testTransactedBatchCommitsEveryNMessages() throws Exception {
+		this.template.setSessionTransacted(true);
+		this.template.setBatchCommitSize(3);
+		List creators = new ArrayList();
+		for (int i = 0; i < 7; i++) {
+			creators.add(new VisibilityRecordingMessageCreator("message" + i));
+		}
+		this.template.sendBatch("queue", creators.iterator());
+
+		int[] expected = new int[] {0, 0, 0, 3, 3, 3, 6};
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], ((VisibilityRecordingMessageCreator) creators.get(i)).visibleMessages);
+		}
+		assertEquals(7, this.queue.size());
+	}
+
+	public void testAsyncSendWithoutExecutor() {
+		try {
+			this.template.convertAndSendAsync("queue", "message");
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (IllegalStateException ex) {
+			// expected
+		}
+	}
+
+	public void testAsyncSends() throws Exception {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(2);
+		executor.setMaxPoolSize(2);
+		executor.setQueueCapacity(100);
+		executor.afterPropertiesSet();
+		this.template.setAsyncTaskExecutor(executor);
+		try {
+			Future single = this.template.convertAndSendAsync("queue", "single");
+			Future batch = this.template.convertAndSendBatchAsync(
+					"queue", Arrays.asList(new String[] {"a", "b", "c"}));
+			assertNull(single.get());
+			assertNull(batch.get());
+			assertTrue(single.isDone());
+			assertEquals(4, this.queue.size());
+
+			Future failed = this.template.sendAsync("queue", new MessageCreator() {
+				public Message createMessage(Session session) throws JMSException {
+					throw new JMSException("creation failed");
+				}
+			});
+			try {
+				failed.get();
+				fail("Should have thrown ExecutionException");
+			}
+			catch (ExecutionException ex) {
+				assertTrue(ex.getCause() instanceof org.springframework.jms.JmsException);
+			}
+		}
+		finally {
+			executor.destroy();
+		}
+	}
+
+	public void testAsyncSendRejectedWhenQueueFull() throws Exception {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(1);
+		executor.setMaxPoolSize(1);
+		executor.setQueueCapacity(1);
+		executor.afterPropertiesSet();
+		this.template.setAsyncTaskExecutor(executor);
+		final Object monitor = new Object();
+		MessageCreator blockingCreator = new MessageCreator() {
+			public Message createMessage(Session session) throws JMSException {
+				synchronized (monitor) {
+					try {
+						monitor.wait(5000);
+					}
+					catch (InterruptedException ex) {
+					}
+				}
+				return session.createTextMessage("blocked");
+			}
+		};
+		try {
+			// One send in progress, one queued up.
+			this.template.sendAsync("queue", blockingCreator);
+			this.template.sendAsync("queue", blockingCreator);
+			try {
+				this.template.sendAsync("queue", blockingCreator);
+				fail("Should have thrown TaskRejectedException");
+			}
+			catch (TaskRejectedException ex) {
+				// expected
+			}
+		}
+		finally {
+			synchronized (monitor) {
+				monitor.notifyAll();
+			}
+			executor.destroy();
+		}
+	}
+
+
+	private static class TextMessageCreator implements MessageCreator {
+
+		private final String text;
+
+		public TextMessageCreator(String text) {
+			this.text = text;
+		}
+
+		public Message createMessage(Session session) throws JMSException {
+			return session.createTextMessage(this.text);
+		}
+	}
+
+
+	/**
+	 * Records how many messages have been committed to the queue
+	 * at the time of its own message creation.
+	 */
+	private class VisibilityRecordingMessageCreator extends TextMessageCreator {
+
+		public int visibleMessages = -1;
+
+		public VisibilityRecordingMessageCreator(String text) {
+			super(text);
+		}
+
+		public Message createMessage(Session session) throws JMSException {
+			this.visibleMessages = queue.size();
+			return super.createMessage(session);
+		}
+	}
+
+}
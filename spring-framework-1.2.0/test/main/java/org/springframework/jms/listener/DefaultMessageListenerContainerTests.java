@@ -0,0 +1,269 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.listener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import junit.framework.TestCase;
+
+import org.springframework.jms.StubConnectionFactory;
+import org.springframework.jms.StubQueue;
+import org.springframework.jms.StubTextMessage;
+import org.springframework.jms.connection.JmsTransactionManager;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.core.MessageCreator;
+
+/**
+ * @since 1.2.1
+ */
+public class DefaultMessageListenerContainerTests extends TestCase {
+
+	private StubConnectionFactory connectionFactory;
+
+	private StubQueue queue;
+
+	private DefaultMessageListenerContainer container;
+
+	protected void setUp() {
+		this.connectionFactory = new StubConnectionFactory();
+		this.queue = this.connectionFactory.getQueue("queue");
+		this.container = new DefaultMessageListenerContainer();
+		this.container.setConnectionFactory(this.connectionFactory);
+		this.container.setDestinationName("queue");
+		this.container.setReceiveTimeout(20);
+		this.container.setBeanName("testContainer");
+	}
+
+	protected void tearDown() {
+		this.container.destroy();
+	}
+
+	public void testConsumersKeepSessionsOpen() throws Exception {
+		CollectingListener listener = new CollectingListener();
+		this.container.setMessageListener(listener);
+		this.container.setConcurrentConsumers(2);
+		this.container.afterPropertiesSet();
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (this.connectionFactory.getConsumerCount() < 2 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		for (int i = 0; i < 20; i++) {
+			this.queue.enqueue(new StubTextMessage("message" + i));
+		}
+		listener.waitForMessages(20);
+		assertEquals(20, listener.getMessages().size());
+		assertEquals(1, this.connectionFactory.getConnectionCount());
+		assertEquals(2, this.connectionFactory.getSessionCount());
+		assertEquals(2, this.connectionFactory.getConsumerCount());
+		assertEquals(2, this.container.getActiveConsumerCount());
+	}
+
+	public void testRequiresDestinationAndListener() {
+		this.container.setDestinationName(null);
+		this.container.setMessageListener(new CollectingListener());
+		try {
+			this.container.afterPropertiesSet();
+			fail("Should have thrown IllegalArgumentException");
+		}
+		catch (IllegalArgumentException ex) {
+			// expected
+		}
+		this.container.setDestinationName("queue");
+		this.container.setMessageListener(null);
+		try {
+			this.container.afterPropertiesSet();
+			fail("Should have thrown IllegalArgumentException");
+		}
+		catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+
+	public void testScalesConsumersWithLoad() throws Exception {
+		for (int i = 0; i < 40; i++) {
+			this.queue.enqueue(new StubTextMessage("message" + i));
+		}
+		final List observedCounts = Collections.synchronizedList(new ArrayList());
+		CollectingListener listener = new CollectingListener() {
+			public void onMessage(Message message) {
+				observedCounts.add(new Integer(container.getScheduledConsumerCount()));
+				try {
+					Thread.sleep(10);
+				}
+				catch (InterruptedException ex) {
+				}
+				super.onMessage(message);
+			}
+		};
+		this.container.setMessageListener(listener);
+		this.container.setConcurrentConsumers(1);
+		this.container.setMaxConcurrentConsumers(4);
+		this.container.setIdleReceiveLimit(2);
+		this.container.afterPropertiesSet();
+
+		listener.waitForMessages(40);
+		int maxObserved = 0;
+		synchronized (observedCounts) {
+			for (int i = 0; i < observedCounts.size(); i++) {
+				maxObserved = Math.max(maxObserved, ((Integer) observedCounts.get(i)).intValue());
+			}
+		}
+		assertTrue("Should have scaled up", maxObserved > 1);
+		assertTrue("Should not exceed maximum", maxObserved <= 4);
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (this.container.getActiveConsumerCount() > 1 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertEquals("Should have scaled down", 1, this.container.getActiveConsumerCount());
+		assertEquals(1, this.container.getScheduledConsumerCount());
+	}
+
+	public void testLocallyTransactedSessionRedeliversOnListenerException() throws Exception {
+		this.queue.enqueue(new StubTextMessage("message"));
+		CollectingListener listener = new CollectingListener() {
+			public void onMessage(Message message) {
+				super.onMessage(message);
+				try {
+					if (!message.getJMSRedelivered()) {
+						throw new IllegalStateException("first delivery fails");
+					}
+				}
+				catch (JMSException ex) {
+					throw new IllegalStateException(ex.getMessage());
+				}
+			}
+		};
+		this.container.setMessageListener(listener);
+		this.container.setSessionTransacted(true);
+		this.container.afterPropertiesSet();
+
+		listener.waitForMessages(2);
+		Message redelivered = (Message) listener.getMessages().get(1);
+		assertTrue(redelivered.getJMSRedelivered());
+		assertEquals("message", ((TextMessage) redelivered).getText());
+		Thread.sleep(100);
+		assertEquals(2, listener.getMessages().size());
+		assertEquals(0, this.queue.size());
+	}
+
+	public void testJmsTransactionManagerCoversListenerSends() throws Exception {
+		this.queue.enqueue(new StubTextMessage("message"));
+		final JmsTemplate jmsTemplate = new JmsTemplate(this.connectionFactory);
+		final StubQueue outQueue = this.connectionFactory.getQueue("out");
+		CollectingListener listener = new CollectingListener() {
+			public void onMessage(final Message message) {
+				jmsTemplate.send("out", new MessageCreator() {
+					public Message createMessage(Session session) throws JMSException {
+						return session.createTextMessage("reply to " + ((TextMessage) message).getText());
+					}
+				});
+				super.onMessage(message);
+				try {
+					if (!message.getJMSRedelivered()) {
+						throw new IllegalStateException("first delivery fails");
+					}
+				}
+				catch (JMSException ex) {
+					throw new IllegalStateException(ex.getMessage());
+				}
+			}
+		};
+		this.container.setMessageListener(listener);
+		this.container.setTransactionManager(new JmsTransactionManager(this.connectionFactory));
+		this.container.afterPropertiesSet();
+
+		listener.waitForMessages(2);
+		Thread.sleep(100);
+		assertTrue(((Message) listener.getMessages().get(1)).getJMSRedelivered());
+		assertEquals(0, this.queue.size());
+		assertEquals("Reply of rolled back transaction must not have been sent", 1, outQueue.size());
+		assertEquals("reply to message", ((TextMessage) outQueue.dequeue(-1)).getText());
+	}
+
+	public void testStopAndRestart() throws Exception {
+		CollectingListener listener = new CollectingListener();
+		this.container.setMessageListener(listener);
+		this.container.afterPropertiesSet();
+		assertTrue(this.container.isRunning());
+
+		this.container.stop();
+		assertFalse(this.container.isRunning());
+		this.queue.enqueue(new StubTextMessage("message"));
+		Thread.sleep(100);
+		assertEquals(0, listener.getMessages().size());
+
+		this.container.start();
+		listener.waitForMessages(1);
+		assertEquals(1, listener.getMessages().size());
+	}
+
+	public void testShutdownReleasesConsumers() throws Exception {
+		this.container.setMessageListener(new CollectingListener());
+		this.container.setConcurrentConsumers(3);
+		this.container.setAutoStartup(false);
+		this.container.afterPropertiesSet();
+		assertFalse(this.container.isRunning());
+
+		this.container.shutdown();
+		assertFalse(this.container.isActive());
+		assertEquals(0, this.container.getActiveConsumerCount());
+		assertEquals(0, this.container.getScheduledConsumerCount());
+	}
+
+
+	private static class CollectingListener implements MessageListener {
+
+		private final List messages = new ArrayList();
+
+		public void onMessage(Message message) {
+			synchronized (this.messages) {
+				this.messages.add(message);
+				this.messages.notifyAll();
+			}
+		}
+
+		public List getMessages() {
+			synchronized (this.messages) {
+				return new ArrayList(this.messages);
+			}
+		}
+
+		public void waitForMessages(int count) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + 5000;
+			synchronized (this.messages) {
+				while (this.messages.size() < count) {
+					long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0) {
+						fail("Received only " + this.messages.size() + " of " + count + " messages");
+					}
+					this.messages.wait(remaining);
+				}
+			}
+		}
+	}
+
+}
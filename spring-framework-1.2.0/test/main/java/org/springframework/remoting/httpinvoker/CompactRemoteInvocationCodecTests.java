@@ -0,0 +1,219 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.remoting.httpinvoker;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.springframework.beans.ITestBean;
+import org.springframework.beans.TestBean;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.remoting.support.RemoteInvocation;
+import org.springframework.remoting.support.RemoteInvocationResult;
+import org.springframework.util.StopWatch;
+
+/**
+ * @since 1.2.1
+ */
+public class CompactRemoteInvocationCodecTests extends TestCase {
+
+	public void testInvocationRoundTrip() throws Exception {
+		CompactRemoteInvocationCodec codec = new CompactRemoteInvocationCodec();
+		Date date = new Date();
+		Timestamp timestamp = new Timestamp(date.getTime());
+		List list = new ArrayList();
+		list.add("element");
+		RemoteInvocation invocation = new RemoteInvocation("doIt",
+				new Class[] {String.class, int.class, long.class, boolean.class, double.class, byte[].class,
+										 Date.class, Date.class, List.class, String.class, String[].class, int.class},
+				new Object[] {"text", new Integer(42), new Long(-1), Boolean.TRUE, new Double(1.5), new byte[] {1, 2, 3},
+											date, timestamp, list, null, new String[] {"a", "b"}, new Integer(Integer.MIN_VALUE)});
+		invocation.addAttribute("myKey", "myValue");
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		codec.writeRemoteInvocation(invocation, baos);
+		RemoteInvocation read = codec.readRemoteInvocation(new ByteArrayInputStream(baos.toByteArray()));
+
+		assertEquals("doIt", read.getMethodName());
+		assertTrue(Arrays.equals(invocation.getParameterTypes(), read.getParameterTypes()));
+		Object[] args = read.getArguments();
+		assertEquals("text", args[0]);
+		assertEquals(new Integer(42), args[1]);
+		assertEquals(new Long(-1), args[2]);
+		assertEquals(Boolean.TRUE, args[3]);
+		assertEquals(new Double(1.5), args[4]);
+		assertTrue(Arrays.equals(new byte[] {1, 2, 3}, (byte[]) args[5]));
+		assertEquals(date, args[6]);
+		assertEquals(Date.class, args[6].getClass());
+		assertEquals(timestamp, args[7]);
+		assertEquals(Timestamp.class, args[7].getClass());
+		assertEquals(list, args[8]);
+		assertNull(args[9]);
+		assertTrue(Arrays.equals(new String[] {"a", "b"}, (String[]) args[10]));
+		assertEquals(new Integer(Integer.MIN_VALUE), args[11]);
+		assertEquals("myValue", read.getAttribute("myKey"));
+	}
+
+	public void testResultRoundTrip() throws Exception {
+		CompactRemoteInvocationCodec codec = new CompactRemoteInvocationCodec();
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		codec.writeRemoteInvocationResult(new RemoteInvocationResult("value"), baos);
+		RemoteInvocationResult result =
+				codec.readRemoteInvocationResult(new ByteArrayInputStream(baos.toByteArray()), null);
+		assertFalse(result.hasException());
+		assertEquals("value", result.getValue());
+
+		baos = new ByteArrayOutputStream();
+		codec.writeRemoteInvocationResult(new RemoteInvocationResult(new IllegalStateException("msg")), baos);
+		result = codec.readRemoteInvocationResult(new ByteArrayInputStream(baos.toByteArray()), null);
+		assertTrue(result.hasException());
+		assertTrue(result.getException() instanceof IllegalStateException);
+		assertEquals("msg", result.getException().getMessage());
+	}
+
+	public void testCompressionOfLargePayloads() throws Exception {
+		StringBuffer text = new StringBuffer();
+		for (int i = 0; i < 1000; i++) {
+			text.append("some repetitive text ");
+		}
+		RemoteInvocation invocation =
+				new RemoteInvocation("setName", new Class[] {String.class}, new Object[] {text.toString()});
+
+		CompactRemoteInvocationCodec codec = new CompactRemoteInvocationCodec();
+		ByteArrayOutputStream plain = new ByteArrayOutputStream();
+		codec.writeRemoteInvocation(invocation, plain);
+
+		codec.setCompressionThreshold(1024);
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		codec.writeRemoteInvocation(invocation, compressed);
+		assertTrue(compressed.size() < plain.size() / 10);
+
+		// Small payloads remain uncompressed.
+		ByteArrayOutputStream small = new ByteArrayOutputStream();
+		codec.writeRemoteInvocation(new RemoteInvocation("getName", new Class[0], new Object[0]), small);
+		assertEquals(0, small.toByteArray()[0]);
+
+		// Readable independent of the reader's threshold.
+		RemoteInvocation read = new CompactRemoteInvocationCodec().readRemoteInvocation(
+				new ByteArrayInputStream(compressed.toByteArray()));
+		assertEquals(text.toString(), read.getArguments()[0]);
+	}
+
+	public void testProxyAndServiceExporterWithCodec() throws Throwable {
+		ITestBean proxy = createProxy(new CompactRemoteInvocationCodec(), new CompactRemoteInvocationCodec());
+		assertEquals("myname", proxy.getName());
+		assertEquals(99, proxy.getAge());
+		proxy.setAge(50);
+		assertEquals(50, proxy.getAge());
+		try {
+			proxy.exceptional(new IllegalStateException());
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (IllegalStateException ex) {
+			// expected
+		}
+	}
+
+	public void testServiceExporterWithCodecAcceptsSerializationClients() throws Throwable {
+		ITestBean proxy = createProxy(null, new CompactRemoteInvocationCodec());
+		assertEquals("myname", proxy.getName());
+		proxy.setAge(50);
+		assertEquals(50, proxy.getAge());
+	}
+
+	public void testPayloadSizeAndRoundTripPerformance() throws Throwable {
+		RemoteInvocation invocation = new RemoteInvocation("update",
+				new Class[] {String.class, int.class, long.class, Date.class, boolean.class},
+				new Object[] {"myname", new Integer(99), new Long(System.currentTimeMillis()), new Date(), Boolean.TRUE});
+		ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(serialized);
+		oos.writeObject(invocation);
+		oos.close();
+		ByteArrayOutputStream compact = new ByteArrayOutputStream();
+		new CompactRemoteInvocationCodec().writeRemoteInvocation(invocation, compact);
+		System.out.println("Serialized invocation size: " + serialized.size() +
+				" bytes, compact invocation size: " + compact.size() + " bytes");
+		assertTrue(compact.size() < serialized.size() / 2);
+
+		ITestBean serializationProxy = createProxy(null, null);
+		ITestBean codecProxy = createProxy(new CompactRemoteInvocationCodec(), new CompactRemoteInvocationCodec());
+		int calls = 5000;
+		// Warm up both paths before measuring.
+		invokeRepeatedly(serializationProxy, calls / 10);
+		invokeRepeatedly(codecProxy, calls / 10);
+
+		StopWatch sw = new StopWatch(getClass() + "." + getName());
+		sw.start(calls + " calls with serialization");
+		invokeRepeatedly(serializationProxy, calls);
+		sw.stop();
+		sw.start(calls + " calls with compact codec");
+		invokeRepeatedly(codecProxy, calls);
+		sw.stop();
+		System.out.println(sw.prettyPrint());
+	}
+
+
+	private void invokeRepeatedly(ITestBean proxy, int calls) {
+		for (int i = 0; i < calls; i++) {
+			proxy.setName("name" + i);
+			proxy.getAge();
+		}
+	}
+
+	private ITestBean createProxy(RemoteInvocationCodec clientCodec, RemoteInvocationCodec serverCodec)
+			throws Exception {
+
+		final HttpInvokerServiceExporter exporter = new HttpInvokerServiceExporter();
+		exporter.setServiceInterface(ITestBean.class);
+		exporter.setService(new TestBean("myname", 99));
+		exporter.setCodec(serverCodec);
+		exporter.afterPropertiesSet();
+
+		HttpInvokerProxyFactoryBean pfb = new HttpInvokerProxyFactoryBean();
+		pfb.setServiceInterface(ITestBean.class);
+		pfb.setServiceUrl("http://myurl");
+		AbstractHttpInvokerRequestExecutor executor = new AbstractHttpInvokerRequestExecutor() {
+			protected RemoteInvocationResult doExecuteRequest(
+					HttpInvokerClientConfiguration config, ByteArrayOutputStream baos)
+					throws IOException, ClassNotFoundException {
+				MockHttpServletRequest request = new MockHttpServletRequest();
+				MockHttpServletResponse response = new MockHttpServletResponse();
+				request.setContentType(getContentType());
+				request.setContent(baos.toByteArray());
+				exporter.handleRequest(request, response);
+				assertEquals(getContentType(), response.getContentType());
+				return readRemoteInvocationResult(
+						new ByteArrayInputStream(response.getContentAsByteArray()), config.getCodebaseUrl());
+			}
+		};
+		executor.setCodec(clientCodec);
+		pfb.setHttpInvokerRequestExecutor(executor);
+		pfb.afterPropertiesSet();
+		return (ITestBean) pfb.getObject();
+	}
+
+}
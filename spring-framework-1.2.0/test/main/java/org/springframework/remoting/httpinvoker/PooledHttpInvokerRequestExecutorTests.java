@@ -0,0 +1,327 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.remoting.httpinvoker;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Tests for PooledHttpInvokerRequestExecutor and asynchronous invocations
+ * through AsyncHttpInvokerClientInterceptor, against a minimal local HTTP server
+ * that dispatches to an HttpInvokerServiceExporter.
+ * @since 1.2.1
+ */
+public class PooledHttpInvokerRequestExecutorTests extends TestCase {
+
+	private LocalHttpServer server;
+
+	private PooledHttpInvokerRequestExecutor executor;
+
+	private AsyncHttpInvokerClientInterceptor interceptor;
+
+	private ThreadPoolTaskExecutor taskExecutor;
+
+
+	protected void setUp() throws Exception {
+		HttpInvokerServiceExporter exporter = new HttpInvokerServiceExporter();
+		exporter.setServiceInterface(EchoService.class);
+		exporter.setService(new EchoServiceImpl());
+		exporter.afterPropertiesSet();
+		this.server = new LocalHttpServer(exporter);
+
+		this.executor = new PooledHttpInvokerRequestExecutor();
+		this.executor.setReadTimeout(10000);
+
+		this.interceptor = new AsyncHttpInvokerClientInterceptor();
+		this.interceptor.setServiceInterface(EchoService.class);
+		this.interceptor.setServiceUrl("http://localhost:" + this.server.getPort() + "/echo");
+		this.interceptor.setHttpInvokerRequestExecutor(this.executor);
+
+		this.taskExecutor = new ThreadPoolTaskExecutor();
+		this.taskExecutor.setCorePoolSize(8);
+		this.taskExecutor.setMaxPoolSize(8);
+		this.taskExecutor.setQueueCapacity(100);
+		this.taskExecutor.afterPropertiesSet();
+	}
+
+	protected void tearDown() throws Exception {
+		this.taskExecutor.destroy();
+		this.executor.destroy();
+		this.server.close();
+	}
+
+	public void testKeepAliveReusesConnection() throws Exception {
+		this.executor.afterPropertiesSet();
+		this.interceptor.setAsyncTaskExecutor(this.taskExecutor);
+		for (int i = 0; i < 20; i++) {
+			assertEquals("text" + i, this.interceptor.invokeAsync(
+					"echo", new Class[] {String.class, int.class}, new Object[] {"text" + i, new Integer(0)}).get());
+		}
+		assertEquals(1, this.server.getConnectionCount());
+		assertEquals(1, this.executor.getConnectionsInPool());
+	}
+
+	public void testAsyncInvocationsBoundedByConnectionPool() throws Exception {
+		this.executor.setMaxConnectionsPerHost(2);
+		this.executor.afterPropertiesSet();
+		this.interceptor.setAsyncTaskExecutor(this.taskExecutor);
+
+		List futures = new ArrayList();
+		for (int i = 0; i < 8; i++) {
+			futures.add(this.interceptor.invokeAsync(
+					"echo", new Class[] {String.class, int.class}, new Object[] {"text" + i, new Integer(50)}));
+		}
+		for (int i = 0; i < 8; i++) {
+			assertEquals("text" + i, ((Future) futures.get(i)).get());
+		}
+		assertTrue(this.server.getConnectionCount() <= 2);
+		assertTrue(this.server.getMaxConcurrentRequests() <= 2);
+	}
+
+	public void testAsyncInvocationWithRemoteException() throws Exception {
+		this.executor.afterPropertiesSet();
+		this.interceptor.setAsyncTaskExecutor(this.taskExecutor);
+		Future future = this.interceptor.invokeAsync("fail", new Class[] {String.class}, new Object[] {"msg"});
+		try {
+			future.get();
+			fail("Should have thrown ExecutionException");
+		}
+		catch (ExecutionException ex) {
+			assertTrue(ex.getCause() instanceof IllegalStateException);
+			assertEquals("msg", ex.getCause().getMessage());
+		}
+	}
+
+	public void testInvokeAsyncWithoutTaskExecutor() throws Exception {
+		this.executor.afterPropertiesSet();
+		try {
+			this.interceptor.invokeAsync("echo", new Class[] {String.class, int.class}, new Object[] {"text", new Integer(0)});
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (IllegalStateException ex) {
+			// expected
+		}
+	}
+
+	public void testIdleConnectionsGetClosed() throws Exception {
+		this.executor.setIdleConnectionTimeout(100);
+		this.executor.afterPropertiesSet();
+		this.interceptor.setAsyncTaskExecutor(this.taskExecutor);
+		this.interceptor.invokeAsync(
+				"echo", new Class[] {String.class, int.class}, new Object[] {"text", new Integer(0)}).get();
+		assertEquals(1, this.server.getConnectionCount());
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (this.server.getClosedConnectionCount() < 1 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertEquals(1, this.server.getClosedConnectionCount());
+	}
+
+
+	public interface EchoService {
+
+		String echo(String text, int delayMillis);
+
+		void fail(String message);
+	}
+
+
+	public static class EchoServiceImpl implements EchoService {
+
+		public String echo(String text, int delayMillis) {
+			if (delayMillis > 0) {
+				try {
+					Thread.sleep(delayMillis);
+				}
+				catch (InterruptedException ex) {
+				}
+			}
+			return text;
+		}
+
+		public void fail(String message) {
+			throw new IllegalStateException(message);
+		}
+	}
+
+
+	/**
+	 * Minimal HTTP/1.1 server with keep-alive support, handling each
+	 * connection in its own thread and passing requests to an exporter.
+	 */
+	private static class LocalHttpServer implements Runnable {
+
+		private final HttpInvokerServiceExporter exporter;
+
+		private final ServerSocket serverSocket;
+
+		private int connectionCount = 0;
+
+		private int closedConnectionCount = 0;
+
+		private int concurrentRequests = 0;
+
+		private int maxConcurrentRequests = 0;
+
+		public LocalHttpServer(HttpInvokerServiceExporter exporter) throws IOException {
+			this.exporter = exporter;
+			this.serverSocket = new ServerSocket(0);
+			Thread thread = new Thread(this);
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		public int getPort() {
+			return this.serverSocket.getLocalPort();
+		}
+
+		public synchronized int getConnectionCount() {
+			return connectionCount;
+		}
+
+		public synchronized int getClosedConnectionCount() {
+			return closedConnectionCount;
+		}
+
+		public synchronized int getMaxConcurrentRequests() {
+			return maxConcurrentRequests;
+		}
+
+		public void close() throws IOException {
+			this.serverSocket.close();
+		}
+
+		public void run() {
+			try {
+				while (true) {
+					final Socket socket = this.serverSocket.accept();
+					synchronized (this) {
+						this.connectionCount++;
+					}
+					Thread thread = new Thread() {
+						public void run() {
+							handleConnection(socket);
+						}
+					};
+					thread.setDaemon(true);
+					thread.start();
+				}
+			}
+			catch (IOException ex) {
+				// server socket closed
+			}
+		}
+
+		private void handleConnection(Socket socket) {
+			try {
+				InputStream is = socket.getInputStream();
+				OutputStream os = socket.getOutputStream();
+				String requestLine;
+				while ((requestLine = readLine(is)) != null) {
+					int contentLength = 0;
+					String contentType = null;
+					String header;
+					while ((header = readLine(is)) != null && header.length() > 0) {
+						String name = header.substring(0, header.indexOf(':')).trim();
+						String value = header.substring(header.indexOf(':') + 1).trim();
+						if (name.equalsIgnoreCase("Content-Length")) {
+							contentLength = Integer.parseInt(value);
+						}
+						else if (name.equalsIgnoreCase("Content-Type")) {
+							contentType = value;
+						}
+					}
+					byte[] body = new byte[contentLength];
+					int offset = 0;
+					while (offset < contentLength) {
+						int count = is.read(body, offset, contentLength - offset);
+						if (count == -1) {
+							throw new IOException("Premature end of request body");
+						}
+						offset += count;
+					}
+					byte[] responseBody = handleRequest(contentType, body);
+					os.write(("HTTP/1.1 200 OK\r\nContent-Type: application/x-java-serialized-object\r\n" +
+							"Content-Length: " + responseBody.length + "\r\n\r\n").getBytes("ISO-8859-1"));
+					os.write(responseBody);
+					os.flush();
+				}
+			}
+			catch (Exception ex) {
+				// connection dropped
+			}
+			finally {
+				try {
+					socket.close();
+				}
+				catch (IOException ex) {
+				}
+				synchronized (this) {
+					this.closedConnectionCount++;
+				}
+			}
+		}
+
+		private byte[] handleRequest(String contentType, byte[] body) throws Exception {
+			synchronized (this) {
+				this.concurrentRequests++;
+				this.maxConcurrentRequests = Math.max(this.maxConcurrentRequests, this.concurrentRequests);
+			}
+			try {
+				MockHttpServletRequest request = new MockHttpServletRequest("POST", "/echo");
+				request.setContentType(contentType);
+				request.setContent(body);
+				MockHttpServletResponse response = new MockHttpServletResponse();
+				this.exporter.handleRequest(request, response);
+				return response.getContentAsByteArray();
+			}
+			finally {
+				synchronized (this) {
+					this.concurrentRequests--;
+				}
+			}
+		}
+
+		private String readLine(InputStream is) throws IOException {
+			ByteArrayOutputStream line = new ByteArrayOutputStream();
+			int b;
+			while ((b = is.read()) != -1) {
+				if (b == '\n') {
+					return line.toString("ISO-8859-1").trim();
+				}
+				line.write(b);
+			}
+			return (line.size() > 0 ? line.toString("ISO-8859-1") : null);
+		}
+	}
+
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.scheduling.concurrent;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * @since 1.2.1
+ */
+public class AsyncExecutionInterceptorTests extends TestCase {
+
+	private ThreadPoolTaskExecutor executor;
+
+	private AsyncExecutionInterceptor interceptor;
+
+	private TestService target;
+
+	private Service proxy;
+
+	protected void setUp() {
+		this.executor = new ThreadPoolTaskExecutor();
+		this.executor.setCorePoolSize(2);
+		this.executor.setMaxPoolSize(2);
+		this.executor.setQueueCapacity(10);
+		this.executor.afterPropertiesSet();
+		this.interceptor = new AsyncExecutionInterceptor(this.executor);
+		this.interceptor.afterPropertiesSet();
+		this.target = new TestService();
+		this.proxy = createProxy(this.interceptor);
+	}
+
+	protected void tearDown() {
+		this.executor.destroy();
+		LocaleContextHolder.setLocaleContext(null);
+	}
+
+	private Service createProxy(AsyncExecutionInterceptor interceptor) {
+		ProxyFactory pf = new ProxyFactory(new Class[] {Service.class});
+		pf.setTarget(this.target);
+		pf.addAdvice(interceptor);
+		return (Service) pf.getProxy();
+	}
+
+
+	public void testTaskExecutorIsRequired() {
+		try {
+			new AsyncExecutionInterceptor().afterPropertiesSet();
+			fail("Should have thrown IllegalArgumentException");
+		}
+		catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+
+	public void testInvalidTransactionPolicy() {
+		try {
+			this.interceptor.setTransactionPolicy(99);
+			fail("Should have thrown IllegalArgumentException");
+		}
+		catch (IllegalArgumentException ex) {
+			// expected
+		}
+		try {
+			this.interceptor.setTransactionPolicyName("PROPAGATION_REQUIRED");
+			fail("Should have thrown IllegalArgumentException");
+		}
+		catch (IllegalArgumentException ex) {
+			// expected
+		}
+		this.interceptor.setTransactionPolicyName("TRANSACTION_POLICY_AFTER_COMMIT");
+	}
+
+	public void testFutureResultComputedOnExecutorThread() throws Exception {
+		Future future = this.proxy.compute("value");
+		assertEquals("value", future.get(5, TimeUnit.SECONDS));
+		assertNotSame(Thread.currentThread(), this.target.lastThread);
+		assertTrue(future.isDone());
+		waitForCompletion(1);
+		assertEquals(1, this.interceptor.getCompletedCount());
+		assertEquals(0, this.interceptor.getFailedCount());
+		assertEquals(0, this.interceptor.getQueuedCount());
+		assertTrue(this.interceptor.getExecutionTimeSummary().indexOf("count=[1]") != -1);
+		assertTrue(this.interceptor.getQueueWaitTimeSummary().indexOf("count=[1]") != -1);
+	}
+
+	public void testFutureFailureExposedThroughExecutionException() throws Exception {
+		Future future = this.proxy.fail(new IllegalStateException("failed"));
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			fail("Should have thrown ExecutionException");
+		}
+		catch (ExecutionException ex) {
+			assertTrue(ex.getCause() instanceof IllegalStateException);
+			assertEquals("failed", ex.getCause().getMessage());
+		}
+		waitForCompletion(1);
+		assertEquals(1, this.interceptor.getFailedCount());
+	}
+
+	public void testVoidMethodIsFireAndForget() throws Exception {
+		this.proxy.run(200);
+		assertNull("Caller must not wait", this.target.lastThread);
+		waitForCompletion(1);
+		assertNotNull(this.target.lastThread);
+		assertNotSame(Thread.currentThread(), this.target.lastThread);
+		assertEquals(1, this.interceptor.getCompletedCount());
+	}
+
+	public void testVoidMethodFailureIsCounted() throws Exception {
+		this.proxy.run(-1);
+		waitForCompletion(1);
+		assertEquals(1, this.interceptor.getFailedCount());
+		assertEquals(0, this.interceptor.getCompletedCount());
+	}
+
+	public void testOtherMethodsExecuteSynchronously() {
+		assertEquals("value", this.proxy.echo("value"));
+		assertSame(Thread.currentThread(), this.target.lastThread);
+		assertEquals(0, this.interceptor.getCompletedCount());
+	}
+
+	public void testLocaleContextPropagation() throws Exception {
+		LocaleContextHolder.setLocale(Locale.GERMAN);
+		assertEquals(Locale.GERMAN, this.proxy.currentLocale().get(5, TimeUnit.SECONDS));
+		assertEquals(Locale.GERMAN, LocaleContextHolder.getLocale());
+
+		this.interceptor.setPropagateLocaleContext(false);
+		assertEquals(Locale.getDefault(), this.proxy.currentLocale().get(5, TimeUnit.SECONDS));
+	}
+
+	public void testDetachPolicyExecutesImmediatelyWithinTransaction() throws Exception {
+		final Future[] holder = new Future[1];
+		new TransactionTemplate(new TestTransactionManager()).execute(new TransactionCallbackWithoutResult() {
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				holder[0] = proxy.compute("value");
+				try {
+					assertEquals("value", holder[0].get(5, TimeUnit.SECONDS));
+				}
+				catch (Exception ex) {
+					fail("Should have completed before commit: " + ex);
+				}
+			}
+		});
+		assertTrue(holder[0].isDone());
+	}
+
+	public void testAfterCommitPolicy() throws Exception {
+		this.interceptor.setTransactionPolicy(AsyncExecutionInterceptor.TRANSACTION_POLICY_AFTER_COMMIT);
+		final Future[] holder = new Future[1];
+		new TransactionTemplate(new TestTransactionManager()).execute(new TransactionCallbackWithoutResult() {
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				holder[0] = proxy.compute("value");
+				assertFalse("Must not be submitted before commit", holder[0].isDone());
+				assertEquals(0, interceptor.getQueuedCount());
+			}
+		});
+		assertEquals("value", holder[0].get(5, TimeUnit.SECONDS));
+	}
+
+	public void testAfterCommitPolicyWithRollback() throws Exception {
+		this.interceptor.setTransactionPolicy(AsyncExecutionInterceptor.TRANSACTION_POLICY_AFTER_COMMIT);
+		final Future[] holder = new Future[1];
+		new TransactionTemplate(new TestTransactionManager()).execute(new TransactionCallbackWithoutResult() {
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				holder[0] = proxy.compute("value");
+				proxy.run(0);
+				status.setRollbackOnly();
+			}
+		});
+		assertTrue(holder[0].isCancelled());
+		assertEquals(2, this.interceptor.getRejectedCount());
+		assertNull("Void method must not have run", this.target.lastThread);
+	}
+
+	public void testRejectPolicy() {
+		this.interceptor.setTransactionPolicy(AsyncExecutionInterceptor.TRANSACTION_POLICY_REJECT);
+		new TransactionTemplate(new TestTransactionManager()).execute(new TransactionCallbackWithoutResult() {
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				try {
+					proxy.compute("value");
+					fail("Should have thrown IllegalStateException");
+				}
+				catch (IllegalStateException ex) {
+					// expected
+				}
+				// Synchronous methods remain unaffected.
+				assertEquals("value", proxy.echo("value"));
+			}
+		});
+	}
+
+	public void testBoundedExecutorRejection() throws Exception {
+		ThreadPoolTaskExecutor bounded = new ThreadPoolTaskExecutor();
+		bounded.setCorePoolSize(1);
+		bounded.setMaxPoolSize(1);
+		bounded.setQueueCapacity(0);
+		bounded.afterPropertiesSet();
+		try {
+			AsyncExecutionInterceptor boundedInterceptor = new AsyncExecutionInterceptor(bounded);
+			Service boundedProxy = createProxy(boundedInterceptor);
+			boundedProxy.run(300);
+			try {
+				boundedProxy.compute("value");
+				fail("Should have thrown TaskRejectedException");
+			}
+			catch (TaskRejectedException ex) {
+				// expected
+			}
+			assertEquals(1, boundedInterceptor.getRejectedCount());
+			assertEquals(1, boundedInterceptor.getActiveCount() + boundedInterceptor.getQueuedCount());
+		}
+		finally {
+			bounded.destroy();
+		}
+	}
+
+	public void testSynchronousTaskExecutor() throws Exception {
+		AsyncExecutionInterceptor syncInterceptor = new AsyncExecutionInterceptor(new SyncTaskExecutor());
+		Service syncProxy = createProxy(syncInterceptor);
+		Future future = syncProxy.compute("value");
+		assertTrue(future.isDone());
+		assertEquals("value", future.get());
+		assertSame(Thread.currentThread(), this.target.lastThread);
+		assertEquals(1, syncInterceptor.getCompletedCount());
+		syncInterceptor.resetStatistics();
+		assertEquals(0, syncInterceptor.getCompletedCount());
+	}
+
+	public void testAdvisorMatchesVoidAndFutureMethodsOnly() throws Exception {
+		AsyncExecutionAdvisor advisor = new AsyncExecutionAdvisor(this.interceptor);
+		assertTrue(advisor.matches(Service.class.getMethod("compute", new Class[] {String.class}), TestService.class));
+		assertTrue(advisor.matches(Service.class.getMethod("run", new Class[] {long.class}), TestService.class));
+		assertFalse(advisor.matches(Service.class.getMethod("echo", new Class[] {String.class}), TestService.class));
+
+		advisor.setMappedName("comp*");
+		assertTrue(advisor.matches(Service.class.getMethod("compute", new Class[] {String.class}), TestService.class));
+		assertFalse(advisor.matches(Service.class.getMethod("run", new Class[] {long.class}), TestService.class));
+	}
+
+
+	private void waitForCompletion(long expected) throws InterruptedException {
+		for (int i = 0; i < 100; i++) {
+			if (this.interceptor.getCompletedCount() + this.interceptor.getFailedCount() >= expected) {
+				return;
+			}
+			Thread.sleep(20);
+		}
+		fail("Asynchronous execution did not complete in time");
+	}
+
+
+	public interface Service {
+
+		Future compute(String value);
+
+		Future fail(RuntimeException ex);
+
+		Future currentLocale();
+
+		void run(long millis);
+
+		String echo(String value);
+	}
+
+
+	public static class TestService implements Service {
+
+		private Thread lastThread;
+
+		public Future compute(String value) {
+			this.lastThread = Thread.currentThread();
+			return new AsyncResult(value);
+		}
+
+		public Future fail(RuntimeException ex) {
+			throw ex;
+		}
+
+		public Future currentLocale() {
+			return new AsyncResult(LocaleContextHolder.getLocale());
+		}
+
+		public void run(long millis) {
+			if (millis < 0) {
+				throw new IllegalArgumentException("Negative time");
+			}
+			try {
+				Thread.sleep(millis);
+			}
+			catch (InterruptedException ex) {
+				// ignore
+			}
+			this.lastThread = Thread.currentThread();
+		}
+
+		public String echo(String value) {
+			this.lastThread = Thread.currentThread();
+			return value;
+		}
+	}
+
+
+	private static class TestTransactionManager extends AbstractPlatformTransactionManager {
+
+		protected Object doGetTransaction() {
+			return new Object();
+		}
+
+		protected void doBegin(Object transaction, TransactionDefinition definition) {
+		}
+
+		protected void doCommit(DefaultTransactionStatus status) {
+		}
+
+		protected void doRollback(DefaultTransactionStatus status) {
+		}
+	}
+
+}
@@ -17,14 +17,19 @@
 package org.springframework.transaction.interceptor;
 
 import java.io.Serializable;
+import java.lang.reflect.Method;
 import java.util.Properties;
 
 import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.ITestBean;
+import org.springframework.beans.TestBean;
+import org.springframework.transaction.CountingTxManager;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.TransactionException;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.util.SerializationTestUtils;
+import org.springframework.util.StopWatch;
 
 /**
  * Mock object based tests for TransactionInterceptor.
@@ -67,6 +72,93 @@ public class TransactionInterceptorTests extends AbstractTransactionAspectTests
 		assertTrue(ti.getTransactionManager() instanceof SerializableTransactionManager);
 	}
 
+	public void testTransactionAttributeResolvedOncePerMethod() throws Exception {
+		final MapTransactionAttributeSource tas = new MapTransactionAttributeSource();
+		tas.register(getNameMethod, new DefaultTransactionAttribute());
+		final int[] lookups = new int[1];
+		TransactionAttributeSource countingTas = new TransactionAttributeSource() {
+			public TransactionAttribute getTransactionAttribute(Method method, Class targetClass) {
+				lookups[0]++;
+				return tas.getTransactionAttribute(method, targetClass);
+			}
+		};
+		CountingTxManager ptm = new CountingTxManager();
+		ITestBean itb = (ITestBean) advised(new TestBean(), ptm, countingTas);
+
+		for (int i = 0; i < 10; i++) {
+			itb.getName();
+			itb.getAge();
+		}
+		assertEquals(2, lookups[0]);
+		assertEquals(10, ptm.commits);
+	}
+
+	public void testNonTransactionalMethodBypassesTransactionManager() throws Exception {
+		MapTransactionAttributeSource tas = new MapTransactionAttributeSource();
+		tas.register(getNameMethod, new DefaultTransactionAttribute());
+		CountingTxManager ptm = new CountingTxManager();
+		final ITestBean itb = (ITestBean) advised(new TestBean() {
+			public int getAge() {
+				// Placeholder TransactionInfo, not the TransactionInfo of a caller
+				assertFalse(TransactionAspectSupport.currentTransactionInfo().hasTransaction());
+				return super.getAge();
+			}
+		}, ptm, tas);
+		itb.getAge();
+		assertEquals(0, ptm.commits);
+	}
+
+	public void testCreateTransactionIfNecessaryOverrideApplied() throws Exception {
+		MapTransactionAttributeSource tas = new MapTransactionAttributeSource();
+		tas.register(getNameMethod, new DefaultTransactionAttribute());
+		final int[] creations = new int[1];
+		TransactionInterceptor ti = new TransactionInterceptor() {
+			protected TransactionInfo createTransactionIfNecessary(Method method, Class targetClass) {
+				creations[0]++;
+				return super.createTransactionIfNecessary(method, targetClass);
+			}
+		};
+		CountingTxManager ptm = new CountingTxManager();
+		ti.setTransactionManager(ptm);
+		ti.setTransactionAttributeSource(tas);
+		ProxyFactory pf = new ProxyFactory(new TestBean());
+		pf.addAdvice(ti);
+		ITestBean itb = (ITestBean) pf.getProxy();
+
+		itb.getName();
+		itb.getAge();
+		assertEquals(1, creations[0]);
+		assertEquals(1, ptm.commits);
+	}
+
+	public void testInvocationOverhead() throws Exception {
+		MapTransactionAttributeSource tas = new MapTransactionAttributeSource();
+		tas.register(getNameMethod, new DefaultTransactionAttribute());
+		tas.register(setNameMethod, new DefaultTransactionAttribute(TransactionDefinition.PROPAGATION_SUPPORTS));
+		CountingTxManager ptm = new CountingTxManager();
+		ITestBean itb = (ITestBean) advised(new TestBean(), ptm, tas);
+
+		int calls = 100000;
+		StopWatch sw = new StopWatch(getClass() + "." + getName());
+		sw.start(calls + " transactional calls");
+		for (int i = 0; i < calls; i++) {
+			itb.getName();
+		}
+		sw.stop();
+		sw.start(calls + " PROPAGATION_SUPPORTS calls");
+		for (int i = 0; i < calls; i++) {
+			itb.setName("name");
+		}
+		sw.stop();
+		sw.start(calls + " non-transactional calls");
+		for (int i = 0; i < calls; i++) {
+			itb.getAge();
+		}
+		sw.stop();
+		System.out.println(sw.prettyPrint());
+		assertEquals(calls, ptm.commits);
+	}
+
 
 	/**
 	 * We won't use this: we just want to know it's serializable.
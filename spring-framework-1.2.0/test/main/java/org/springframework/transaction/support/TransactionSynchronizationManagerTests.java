@@ -0,0 +1,453 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.springframework.core.Ordered;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.util.StopWatch;
+
+/**
+ * @since 1.2.1
+ */
+public class TransactionSynchronizationManagerTests extends TestCase {
+
+	public void testResourceBindingWithManyKeys() {
+		List keys = new ArrayList();
+		for (int i = 0; i < 100; i++) {
+			Object key = new Object();
+			keys.add(key);
+			TransactionSynchronizationManager.bindResource(key, "value" + i);
+		}
+		assertEquals(100, TransactionSynchronizationManager.getResourceMap().size());
+		for (int i = 0; i < keys.size(); i++) {
+			assertEquals("value" + i, TransactionSynchronizationManager.getResource(keys.get(i)));
+		}
+
+		List remaining = new ArrayList(keys);
+		Collections.shuffle(remaining);
+		while (!remaining.isEmpty()) {
+			Object key = remaining.remove(remaining.size() - 1);
+			assertNotNull(TransactionSynchronizationManager.unbindResource(key));
+			assertFalse(TransactionSynchronizationManager.hasResource(key));
+			for (int i = 0; i < remaining.size(); i++) {
+				assertTrue(TransactionSynchronizationManager.hasResource(remaining.get(i)));
+			}
+		}
+	}
+
+	public void testResourceKeysComparedByEquality() {
+		TransactionSynchronizationManager.bindResource(new String("key"), "value");
+		assertEquals("value", TransactionSynchronizationManager.getResource(new String("key")));
+		try {
+			TransactionSynchronizationManager.bindResource("key", "otherValue");
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (IllegalStateException ex) {
+			// expected
+		}
+		assertEquals("value", TransactionSynchronizationManager.unbindResource("key"));
+		try {
+			TransactionSynchronizationManager.unbindResource("key");
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (IllegalStateException ex) {
+			// expected
+		}
+	}
+
+	public void testNullResourceKey() {
+		TransactionSynchronizationManager.bindResource(null, "value");
+		assertTrue(TransactionSynchronizationManager.hasResource(null));
+		assertEquals("value", TransactionSynchronizationManager.getResource(null));
+		assertEquals("value", TransactionSynchronizationManager.getResourceMap().get(null));
+		assertTrue(TransactionSynchronizationManager.getResourceMap().containsKey(null));
+		assertEquals("value", TransactionSynchronizationManager.unbindResource(null));
+		assertFalse(TransactionSynchronizationManager.hasResource(null));
+	}
+
+	public void testSynchronizationOrder() {
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			TransactionSynchronization unordered = new TransactionSynchronizationAdapter() {};
+			TransactionSynchronization second = new OrderedSynchronization(2);
+			TransactionSynchronization first = new OrderedSynchronization(1);
+			TransactionSynchronization alsoSecond = new OrderedSynchronization(2);
+			TransactionSynchronizationManager.registerSynchronization(unordered);
+			TransactionSynchronizationManager.registerSynchronization(second);
+			TransactionSynchronizationManager.registerSynchronization(first);
+			TransactionSynchronizationManager.registerSynchronization(alsoSecond);
+			List synchs = TransactionSynchronizationManager.getSynchronizations();
+			assertEquals(4, synchs.size());
+			assertSame(first, synchs.get(0));
+			assertSame(second, synchs.get(1));
+			assertSame(alsoSecond, synchs.get(2));
+			assertSame(unordered, synchs.get(3));
+		}
+		finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+
+	public void testSuspendAndResumeWithRequiresNew() {
+		final ResourceTransactionManager tm = new ResourceTransactionManager();
+		final TransactionTemplate tt = new TransactionTemplate(tm);
+		tt.setReadOnly(true);
+		final OrderedSynchronization outerSynch = new OrderedSynchronization(1);
+
+		tt.execute(new TransactionCallbackWithoutResult() {
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				TransactionSynchronizationManager.registerSynchronization(outerSynch);
+				assertTrue(TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+
+				TransactionTemplate innerTt = new TransactionTemplate(tm);
+				innerTt.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+				innerTt.execute(new TransactionCallbackWithoutResult() {
+					protected void doInTransactionWithoutResult(TransactionStatus status) {
+						assertTrue(status.isNewTransaction());
+						assertTrue(outerSynch.suspended);
+						assertTrue(TransactionSynchronizationManager.isSynchronizationActive());
+						assertTrue(TransactionSynchronizationManager.getSynchronizations().isEmpty());
+						assertFalse(TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+						TransactionSynchronizationManager.registerSynchronization(new OrderedSynchronization(2));
+					}
+				});
+
+				assertFalse(outerSynch.suspended);
+				assertEquals(1, TransactionSynchronizationManager.getSynchronizations().size());
+				assertSame(outerSynch, TransactionSynchronizationManager.getSynchronizations().get(0));
+				assertTrue(TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+			}
+		});
+		assertEquals(2, tm.begun);
+		assertTrue(outerSynch.completed);
+	}
+
+	public void testResumeAfterFailedBeginWithRequiresNew() {
+		final ResourceTransactionManager tm = new ResourceTransactionManager();
+		final TransactionTemplate tt = new TransactionTemplate(tm);
+		final OrderedSynchronization outerSynch = new OrderedSynchronization(1);
+
+		tt.execute(new TransactionCallbackWithoutResult() {
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				TransactionSynchronizationManager.registerSynchronization(outerSynch);
+				tm.failOnBegin = true;
+				TransactionTemplate innerTt = new TransactionTemplate(tm);
+				innerTt.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+				try {
+					innerTt.execute(new TransactionCallbackWithoutResult() {
+						protected void doInTransactionWithoutResult(TransactionStatus status) {
+							fail("Should not have begun transaction");
+						}
+					});
+					fail("Should have thrown IllegalStateException");
+				}
+				catch (IllegalStateException ex) {
+					// expected
+				}
+				assertFalse(outerSynch.suspended);
+				assertTrue(TransactionSynchronizationManager.hasResource(tm));
+				assertSame(outerSynch, TransactionSynchronizationManager.getSynchronizations().get(0));
+			}
+		});
+		assertTrue(outerSynch.completed);
+	}
+
+	public void testSynchronizationsSuspendedWhileStillActive() {
+		final ResourceTransactionManager tm = new ResourceTransactionManager();
+		final TransactionTemplate tt = new TransactionTemplate(tm);
+		final List callbacks = new ArrayList();
+		final TransactionSynchronization synch = new TransactionSynchronizationAdapter() {
+			public void suspend() {
+				assertTrue(TransactionSynchronizationManager.isSynchronizationActive());
+				assertTrue(TransactionSynchronizationManager.getSynchronizations().contains(this));
+				callbacks.add("suspend");
+			}
+			public void resume() {
+				assertTrue(TransactionSynchronizationManager.isSynchronizationActive());
+				callbacks.add("resume");
+			}
+		};
+
+		tt.execute(new TransactionCallbackWithoutResult() {
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				TransactionSynchronizationManager.registerSynchronization(synch);
+				TransactionTemplate innerTt = new TransactionTemplate(tm);
+				innerTt.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+				innerTt.execute(new TransactionCallbackWithoutResult() {
+					protected void doInTransactionWithoutResult(TransactionStatus status) {
+						assertEquals(1, callbacks.size());
+					}
+				});
+			}
+		});
+		assertEquals(2, callbacks.size());
+		assertEquals("suspend", callbacks.get(0));
+		assertEquals("resume", callbacks.get(1));
+	}
+
+	public void testNestedTransactionsReuseContext() {
+		final ResourceTransactionManager tm = new ResourceTransactionManager();
+		final TransactionTemplate tt = new TransactionTemplate(tm);
+		final Object[] innerState = new Object[2];
+
+		tt.execute(new TransactionCallbackWithoutResult() {
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				final Object outerContext = getTransactionContext();
+				final Object outerResource = TransactionSynchronizationManager.getResource(tm);
+				TransactionTemplate innerTt = new TransactionTemplate(tm);
+				innerTt.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+				for (int i = 0; i < 10; i++) {
+					innerTt.execute(new TransactionCallbackWithoutResult() {
+						protected void doInTransactionWithoutResult(TransactionStatus status) {
+							// Suspended resources are passed through as returned by doSuspend.
+							assertSame(outerResource, ((DefaultTransactionStatus) status).getSuspendedResources());
+							assertSame(outerContext, getTransactionContext());
+							Object synchronizations = getContextField("synchronizations");
+							if (innerState[0] == null) {
+								innerState[0] = synchronizations;
+								innerState[1] = getContextField("suspendedSynchronizations");
+							}
+							// The spare list and the suspension stack are recycled.
+							assertSame(innerState[0], synchronizations);
+							assertSame(innerState[1], getContextField("suspendedSynchronizations"));
+						}
+					});
+				}
+				assertSame(outerContext, getTransactionContext());
+			}
+		});
+		assertEquals(11, tm.begun);
+		assertEquals(10, tm.resumed);
+	}
+
+	public void testSuspendWithoutResourcesWithNotSupported() {
+		final ResourceTransactionManager tm = new ResourceTransactionManager();
+		final TransactionTemplate tt = new TransactionTemplate(tm);
+		final OrderedSynchronization outerSynch = new OrderedSynchronization(1);
+
+		tt.execute(new TransactionCallbackWithoutResult() {
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				TransactionSynchronizationManager.registerSynchronization(outerSynch);
+				tm.suspendWithoutResources = true;
+				TransactionTemplate innerTt = new TransactionTemplate(tm);
+				innerTt.setPropagationBehavior(TransactionDefinition.PROPAGATION_NOT_SUPPORTED);
+				innerTt.execute(new TransactionCallbackWithoutResult() {
+					protected void doInTransactionWithoutResult(TransactionStatus status) {
+						assertNotNull(((DefaultTransactionStatus) status).getSuspendedResources());
+						assertTrue(outerSynch.suspended);
+					}
+				});
+				assertFalse(outerSynch.suspended);
+				assertSame(outerSynch, TransactionSynchronizationManager.getSynchronizations().get(0));
+				tm.suspendWithoutResources = false;
+			}
+		});
+		assertEquals(1, tm.resumed);
+		assertTrue(outerSynch.completed);
+	}
+
+	public void testTransactionContextReleasedWhenEmpty() throws Exception {
+		Object key = new Object();
+		TransactionSynchronizationManager.bindResource(key, "value");
+		assertTrue(hasTransactionContext());
+		TransactionSynchronizationManager.unbindResource(key);
+		assertFalse(hasTransactionContext());
+
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+		assertFalse(hasTransactionContext());
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+		assertTrue(hasTransactionContext());
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+		assertFalse(hasTransactionContext());
+
+		TransactionSynchronizationManager.initSynchronization();
+		assertTrue(hasTransactionContext());
+		TransactionSynchronizationManager.clearSynchronization();
+		assertFalse(hasTransactionContext());
+
+		final ResourceTransactionManager tm = new ResourceTransactionManager();
+		TransactionTemplate tt = new TransactionTemplate(tm);
+		tt.execute(new TransactionCallbackWithoutResult() {
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				TransactionTemplate innerTt = new TransactionTemplate(tm);
+				innerTt.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+				innerTt.execute(new TransactionCallbackWithoutResult() {
+					protected void doInTransactionWithoutResult(TransactionStatus status) {
+					}
+				});
+			}
+		});
+		assertFalse(hasTransactionContext());
+	}
+
+	public void testShortTransactionPerformance() {
+		ResourceTransactionManager tm = new ResourceTransactionManager();
+		TransactionTemplate tt = new TransactionTemplate(tm);
+		final Object[] resourceKeys = new Object[] {new Object(), new Object(), new Object()};
+		TransactionCallbackWithoutResult callback = new TransactionCallbackWithoutResult() {
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				for (int i = 0; i < resourceKeys.length; i++) {
+					TransactionSynchronizationManager.getResource(resourceKeys[i]);
+				}
+				TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {});
+			}
+		};
+
+		int transactions = 200000;
+		StopWatch sw = new StopWatch(getClass() + "." + getName());
+		sw.start(transactions + " short transactions");
+		for (int i = 0; i < transactions; i++) {
+			tt.execute(callback);
+		}
+		sw.stop();
+		System.out.println(sw.prettyPrint());
+		assertEquals(transactions, tm.begun);
+	}
+
+	protected void tearDown() {
+		assertTrue(TransactionSynchronizationManager.getResourceMap().isEmpty());
+		assertFalse(TransactionSynchronizationManager.isSynchronizationActive());
+		assertFalse(TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+		try {
+			assertFalse(hasTransactionContext());
+		}
+		catch (Exception ex) {
+			fail("Could not access transaction context: " + ex);
+		}
+	}
+
+	private static boolean hasTransactionContext() throws Exception {
+		return (getTransactionContext() != null);
+	}
+
+	private static Object getTransactionContext() {
+		try {
+			Field field = TransactionSynchronizationManager.class.getDeclaredField("transactionContext");
+			field.setAccessible(true);
+			return ((ThreadLocal) field.get(null)).get();
+		}
+		catch (Exception ex) {
+			throw new IllegalStateException("Could not access transaction context: " + ex);
+		}
+	}
+
+	private static Object getContextField(String name) {
+		Object context = getTransactionContext();
+		try {
+			Field field = context.getClass().getDeclaredField(name);
+			field.setAccessible(true);
+			return field.get(context);
+		}
+		catch (Exception ex) {
+			throw new IllegalStateException("Could not access context field '" + name + "': " + ex);
+		}
+	}
+
+
+	private static class OrderedSynchronization extends TransactionSynchronizationAdapter implements Ordered {
+
+		private final int order;
+
+		private boolean suspended;
+
+		private boolean completed;
+
+		public OrderedSynchronization(int order) {
+			this.order = order;
+		}
+
+		public int getOrder() {
+			return order;
+		}
+
+		public void suspend() {
+			this.suspended = true;
+		}
+
+		public void resume() {
+			this.suspended = false;
+		}
+
+		public void afterCompletion(int status) {
+			this.completed = true;
+		}
+	}
+
+
+	/**
+	 * Transaction manager that binds a marker resource for its transactions.
+	 */
+	private static class ResourceTransactionManager extends AbstractPlatformTransactionManager {
+
+		private int begun;
+
+		private int resumed;
+
+		private boolean failOnBegin;
+
+		private boolean suspendWithoutResources;
+
+		protected Object doGetTransaction() {
+			return new Object[] {TransactionSynchronizationManager.getResource(this)};
+		}
+
+		protected boolean isExistingTransaction(Object transaction) {
+			return (((Object[]) transaction)[0] != null);
+		}
+
+		protected void doBegin(Object transaction, TransactionDefinition definition) {
+			if (this.failOnBegin) {
+				throw new IllegalStateException("Could not begin transaction");
+			}
+			this.begun++;
+			TransactionSynchronizationManager.bindResource(this, new Object());
+		}
+
+		protected Object doSuspend(Object transaction) {
+			if (this.suspendWithoutResources) {
+				return null;
+			}
+			return TransactionSynchronizationManager.unbindResource(this);
+		}
+
+		protected void doResume(Object transaction, Object suspendedResources) {
+			this.resumed++;
+			if (suspendedResources != null) {
+				TransactionSynchronizationManager.bindResource(this, suspendedResources);
+			}
+		}
+
+		protected void doCommit(DefaultTransactionStatus status) {
+		}
+
+		protected void doRollback(DefaultTransactionStatus status) {
+		}
+
+		protected void doCleanupAfterCompletion(Object transaction) {
+			TransactionSynchronizationManager.unbindResource(this);
+		}
+	}
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.util;
+
+import junit.framework.TestCase;
+
+/**
+ * @since 1.2.1
+ */
+public class LogLinearHistogramTests extends TestCase {
+
+	public void testBucketBoundaries() {
+		for (long value = 0; value < 100000; value++) {
+			int index = LogLinearHistogram.indexFor(value);
+			assertTrue(LogLinearHistogram.lowestValueAt(index) <= value);
+			assertTrue(LogLinearHistogram.highestValueAt(index) >= value);
+		}
+		assertEquals(31, LogLinearHistogram.indexFor(31));
+		assertEquals(32, LogLinearHistogram.lowestValueAt(LogLinearHistogram.indexFor(32)));
+		assertEquals(LogLinearHistogram.indexFor(LogLinearHistogram.MAX_TRACKABLE_VALUE),
+				LogLinearHistogram.indexFor(Long.MAX_VALUE));
+	}
+
+	public void testRelativeErrorOfPercentiles() {
+		LogLinearHistogram histogram = new LogLinearHistogram(4);
+		for (int i = 1; i <= 100000; i++) {
+			histogram.record(i * 10);
+		}
+		LogLinearHistogram.Snapshot snapshot = histogram.getSnapshot();
+		assertEquals(100000, snapshot.getCount());
+		assertEquals(500005, snapshot.getMean());
+		assertEquals(10, snapshot.getMin());
+		assertEquals(1000000, snapshot.getMax());
+		assertWithinError(500000, snapshot.getPercentile(50));
+		assertWithinError(990000, snapshot.getPercentile(99));
+		assertWithinError(999900, snapshot.getPercentile(99.99));
+		assertEquals(1000000, snapshot.getPercentile(100));
+	}
+
+	public void testIntervalSnapshots() {
+		LogLinearHistogram histogram = new LogLinearHistogram();
+		histogram.record(5);
+		histogram.record(1000);
+		LogLinearHistogram.Snapshot interval = histogram.getIntervalSnapshot();
+		assertEquals(2, interval.getCount());
+		assertEquals(1000, interval.getMax());
+
+		histogram.record(7);
+		interval = histogram.getIntervalSnapshot();
+		assertEquals(1, interval.getCount());
+		assertEquals(7, interval.getMin());
+		assertEquals(7, interval.getMax());
+		assertEquals(7, interval.getPercentile(99));
+		assertEquals(3, histogram.getSnapshot().getCount());
+
+		assertEquals(0, histogram.getIntervalSnapshot().getCount());
+		histogram.reset();
+		assertEquals(0, histogram.getSnapshot().getCount());
+		assertEquals(0, histogram.getSnapshot().getPercentile(50));
+	}
+
+	public void testConcurrentRecording() throws Exception {
+		final LogLinearHistogram histogram = new LogLinearHistogram(8);
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					for (int j = 0; j < 100000; j++) {
+						histogram.record(j % 1000);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].join();
+		}
+		assertEquals(800000, histogram.getSnapshot().getCount());
+		assertEquals(999, histogram.getSnapshot().getMax());
+	}
+
+	private void assertWithinError(long expected, long actual) {
+		assertTrue("Expected " + expected + " but was " + actual, Math.abs(expected - actual) <= expected / 32);
+	}
+
+}
@@ -101,4 +101,17 @@ public class ResponseTimeMonitorTests extends TestCase {
 		assertEquals(impl.getWorstResponseTimeMillis(), 500);		
 	}
 
+	public void testGetPercentileResponseTimeMillis() {
+		ResponseTimeMonitorImpl impl = new ResponseTimeMonitorImpl();
+		assertEquals(0, impl.getPercentileResponseTimeMillis(99));
+
+		for (int i = 1; i <= 100; i++) {
+			impl.recordResponseTime(i);
+		}
+		assertEquals(50, impl.getPercentileResponseTimeMillis(50), 2);
+		assertEquals(99, impl.getPercentileResponseTimeMillis(99), 3);
+		assertEquals(100, impl.getPercentileResponseTimeMillis(100));
+		assertEquals(1, impl.getBestResponseTimeMillis());
+	}
+
 }
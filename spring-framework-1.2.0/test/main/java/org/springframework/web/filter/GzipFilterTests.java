@@ -0,0 +1,335 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.web.filter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.TestCase;
+
+import org.springframework.mock.web.MockFilterConfig;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.util.StopWatch;
+import org.springframework.web.util.UrlPathHelper;
+
+/**
+ * @since 1.2.1
+ */
+public class GzipFilterTests extends TestCase {
+
+	private static final String PAGE;
+
+	static {
+		StringBuffer sb = new StringBuffer("<html><body><table>");
+		for (int i = 0; i < 500; i++) {
+			sb.append("<tr><td class=\"name\">Product ").append(i).append("</td><td class=\"price\">")
+					.append(i * 7 % 100).append(".99</td></tr>\n");
+		}
+		sb.append("</table></body></html>");
+		PAGE = sb.toString();
+	}
+
+	private GzipFilter filter;
+
+	protected void setUp() throws ServletException {
+		filter = new GzipFilter();
+		filter.init(new MockFilterConfig(new MockServletContext(), "gzip"));
+	}
+
+	private MockHttpServletRequest createRequest(String acceptEncoding) {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/page.html");
+		if (acceptEncoding != null) {
+			request.addHeader("Accept-Encoding", acceptEncoding);
+		}
+		return request;
+	}
+
+	private static String gunzip(byte[] content) throws IOException {
+		InputStream in = new GZIPInputStream(new ByteArrayInputStream(content));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int count;
+		while ((count = in.read(buffer)) != -1) {
+			out.write(buffer, 0, count);
+		}
+		return new String(out.toByteArray(), "UTF-8");
+	}
+
+	public void testCompressWriterOutput() throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(createRequest("deflate, gzip"), response, new WriterChain("text/html; charset=UTF-8", PAGE));
+		assertEquals("gzip", response.getHeader("Content-Encoding"));
+		assertEquals("Accept-Encoding", response.getHeader("Vary"));
+		assertEquals(0, response.getContentLength());
+		byte[] content = response.getContentAsByteArray();
+		assertTrue(content.length < PAGE.length() / 4);
+		assertEquals(PAGE, gunzip(content));
+		assertEquals(1, filter.getPooledCompressorCount());
+	}
+
+	public void testCompressStreamOutputInSmallChunks() throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(createRequest("gzip"), response, new FilterChain() {
+			public void doFilter(ServletRequest request, ServletResponse response) throws IOException {
+				response.setContentType("application/json");
+				ServletOutputStream out = response.getOutputStream();
+				byte[] bytes = PAGE.getBytes("UTF-8");
+				for (int i = 0; i < bytes.length; i += 100) {
+					out.write(bytes, i, Math.min(100, bytes.length - i));
+				}
+				out.flush();
+			}
+		});
+		assertEquals("gzip", response.getHeader("Content-Encoding"));
+		assertEquals(PAGE, gunzip(response.getContentAsByteArray()));
+	}
+
+	public void testSmallResponseNotCompressed() throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(createRequest("gzip"), response, new WriterChain("text/html", "<html>small</html>"));
+		assertNull(response.getHeader("Content-Encoding"));
+		assertEquals("<html>small</html>", response.getContentAsString());
+		assertEquals(18, response.getContentLength());
+	}
+
+	public void testGzipNotAccepted() throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(createRequest(null), response, new WriterChain("text/html", PAGE));
+		assertNull(response.getHeader("Content-Encoding"));
+		assertEquals(PAGE, response.getContentAsString());
+
+		response = new MockHttpServletResponse();
+		filter.doFilter(createRequest("gzip;q=0, deflate"), response, new WriterChain("text/html", PAGE));
+		assertNull(response.getHeader("Content-Encoding"));
+		assertEquals(PAGE, response.getContentAsString());
+
+		response = new MockHttpServletResponse();
+		filter.doFilter(createRequest("gzip;q=0.5"), response, new WriterChain("text/html", PAGE));
+		assertEquals("gzip", response.getHeader("Content-Encoding"));
+	}
+
+	public void testBinaryContentPassedThroughWithContentLength() throws Exception {
+		final byte[] pdf = PAGE.getBytes("UTF-8");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(createRequest("gzip"), response, new FilterChain() {
+			public void doFilter(ServletRequest request, ServletResponse response) throws IOException {
+				// as done by AbstractPdfView
+				response.setContentType("application/pdf");
+				response.setContentLength(pdf.length);
+				ServletOutputStream out = response.getOutputStream();
+				out.write(pdf);
+				out.flush();
+			}
+		});
+		assertNull(response.getHeader("Content-Encoding"));
+		assertEquals(pdf.length, response.getContentLength());
+		assertEquals(PAGE, response.getContentAsString());
+		assertEquals(0, filter.getPooledCompressorCount());
+	}
+
+	public void testAlreadyEncodedContentPassedThrough() throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(createRequest("gzip"), response, new FilterChain() {
+			public void doFilter(ServletRequest request, ServletResponse response) throws IOException {
+				response.setContentType("text/plain");
+				((HttpServletResponse) response).setHeader("Content-Encoding", "identity");
+				response.getWriter().write(PAGE);
+			}
+		});
+		assertEquals("identity", response.getHeader("Content-Encoding"));
+		assertEquals(PAGE, response.getContentAsString());
+	}
+
+	public void testResetBufferBeforeForward() throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(createRequest("gzip"), response, new FilterChain() {
+			public void doFilter(ServletRequest request, ServletResponse response) throws IOException {
+				response.setContentType("text/html");
+				response.getWriter().write("discarded");
+				response.getWriter().flush();
+				assertFalse(response.isCommitted());
+				// as done by RequestDispatcher.forward
+				response.resetBuffer();
+				response.getWriter().write(PAGE);
+			}
+		});
+		assertEquals("gzip", response.getHeader("Content-Encoding"));
+		assertEquals(PAGE, gunzip(response.getContentAsByteArray()));
+	}
+
+	public void testIncludedRequestNotCompressed() throws Exception {
+		MockHttpServletRequest request = createRequest("gzip");
+		request.setAttribute(UrlPathHelper.INCLUDE_URI_REQUEST_ATTRIBUTE, "/included.jsp");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(request, response, new WriterChain("text/html", PAGE));
+		assertNull(response.getHeader("Content-Encoding"));
+		assertEquals(PAGE, response.getContentAsString());
+	}
+
+	public void testPartialContentPassedThrough() throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(createRequest("gzip"), response, new FilterChain() {
+			public void doFilter(ServletRequest request, ServletResponse response) throws IOException {
+				HttpServletResponse httpResponse = (HttpServletResponse) response;
+				httpResponse.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				httpResponse.setContentType("text/html");
+				httpResponse.getWriter().write(PAGE);
+			}
+		});
+		assertNull(response.getHeader("Content-Encoding"));
+		assertEquals(PAGE, response.getContentAsString());
+
+		response = new MockHttpServletResponse();
+		filter.doFilter(createRequest("gzip"), response, new FilterChain() {
+			public void doFilter(ServletRequest request, ServletResponse response) throws IOException {
+				HttpServletResponse httpResponse = (HttpServletResponse) response;
+				httpResponse.setContentType("text/html");
+				httpResponse.getWriter().write("<html>");
+				httpResponse.setHeader("Content-Range", "bytes 0-99/1000");
+				httpResponse.getWriter().write(PAGE);
+			}
+		});
+		assertNull(response.getHeader("Content-Encoding"));
+		assertEquals("bytes 0-99/1000", response.getHeader("Content-Range"));
+		assertEquals("<html>" + PAGE, response.getContentAsString());
+	}
+
+	public void testFlushBufferCommitsUndecidedResponse() throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		final boolean[] committed = new boolean[1];
+		filter.doFilter(createRequest("gzip"), response, new FilterChain() {
+			public void doFilter(ServletRequest request, ServletResponse response) throws IOException {
+				response.setContentType("text/html");
+				response.getWriter().write("<html>small</html>");
+				response.flushBuffer();
+				committed[0] = response.isCommitted();
+			}
+		});
+		assertTrue(committed[0]);
+		assertEquals("gzip", response.getHeader("Content-Encoding"));
+		assertEquals("<html>small</html>", gunzip(response.getContentAsByteArray()));
+
+		response = new MockHttpServletResponse();
+		filter.doFilter(createRequest("gzip"), response, new FilterChain() {
+			public void doFilter(ServletRequest request, ServletResponse response) throws IOException {
+				response.setContentType("image/png");
+				response.getOutputStream().write(new byte[] {1, 2, 3});
+				response.flushBuffer();
+				committed[0] = response.isCommitted();
+			}
+		});
+		assertTrue(committed[0]);
+		assertNull(response.getHeader("Content-Encoding"));
+		assertEquals(3, response.getContentAsByteArray().length);
+	}
+
+	public void testErrorNotCompressed() throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(createRequest("gzip"), response, new FilterChain() {
+			public void doFilter(ServletRequest request, ServletResponse response) throws IOException {
+				response.setContentType("text/html");
+				response.getWriter().write("partial");
+				((HttpServletResponse) response).sendError(HttpServletResponse.SC_NOT_FOUND);
+			}
+		});
+		assertEquals(HttpServletResponse.SC_NOT_FOUND, response.getStatus());
+		assertNull(response.getHeader("Content-Encoding"));
+	}
+
+	public void testCompressorsReused() throws Exception {
+		for (int i = 0; i < 10; i++) {
+			MockHttpServletResponse response = new MockHttpServletResponse();
+			filter.doFilter(createRequest("gzip"), response, new WriterChain("text/html", PAGE + i));
+			assertEquals(PAGE + i, gunzip(response.getContentAsByteArray()));
+		}
+		assertEquals(1, filter.getPooledCompressorCount());
+		filter.destroy();
+		assertEquals(0, filter.getPooledCompressorCount());
+	}
+
+	public void testCompressionCostAndBandwidth() throws Exception {
+		int requests = 500;
+		WriterChain chain = new WriterChain("text/html", PAGE);
+		// warm up
+		serveRepeatedly(chain, "gzip", 50);
+		serveRepeatedly(chain, null, 50);
+
+		StopWatch sw = new StopWatch();
+		sw.start(requests + " requests uncompressed");
+		long uncompressedBytes = serveRepeatedly(chain, null, requests);
+		sw.stop();
+		sw.start(requests + " requests with GzipFilter");
+		long compressedBytes = serveRepeatedly(chain, "gzip", requests);
+		sw.stop();
+		long filterTime = sw.getLastTaskTimeMillis();
+		sw.start(requests + " requests with GZIPOutputStream per request");
+		for (int i = 0; i < requests; i++) {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			GZIPOutputStream out = new GZIPOutputStream(baos);
+			out.write(PAGE.getBytes("ISO-8859-1"));
+			out.close();
+		}
+		sw.stop();
+		System.out.println(sw.prettyPrint());
+		System.out.println("Bytes sent uncompressed: " + uncompressedBytes + ", compressed: " + compressedBytes +
+				" (" + (compressedBytes * 100 / uncompressedBytes) + "%)");
+		assertTrue(compressedBytes < uncompressedBytes / 4);
+	}
+
+	private long serveRepeatedly(FilterChain chain, String acceptEncoding, int requests) throws Exception {
+		long bytes = 0;
+		for (int i = 0; i < requests; i++) {
+			MockHttpServletResponse response = new MockHttpServletResponse();
+			filter.doFilter(createRequest(acceptEncoding), response, chain);
+			bytes += response.getContentAsByteArray().length;
+		}
+		return bytes;
+	}
+
+
+	private static class WriterChain implements FilterChain {
+
+		private final String contentType;
+
+		private final String content;
+
+		public WriterChain(String contentType, String content) {
+			this.contentType = contentType;
+			this.content = content;
+		}
+
+		public void doFilter(ServletRequest request, ServletResponse response) throws IOException {
+			response.setContentType(this.contentType);
+			response.getWriter().write(this.content);
+		}
+	}
+
+}
@@ -0,0 +1,385 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.web.filter;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.TestCase;
+
+import org.springframework.mock.web.MockFilterConfig;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.mock.web.MockServletContext;
+
+/**
+ * @since 1.2.1
+ */
+public class PageCachingFilterTests extends TestCase {
+
+	private PageCachingFilter filter;
+
+	private PageChain chain;
+
+	protected void setUp() throws ServletException {
+		initFilter(new PageCachingFilter());
+		chain = new PageChain();
+	}
+
+	private void initFilter(PageCachingFilter filter) throws ServletException {
+		this.filter = filter;
+		filter.init(new MockFilterConfig(new MockServletContext(), "pageCache"));
+	}
+
+	private MockHttpServletResponse doFilter(String method, String uri) throws Exception {
+		return doFilter(new MockHttpServletRequest(method, uri));
+	}
+
+	private MockHttpServletResponse doFilter(MockHttpServletRequest request) throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(request, response, chain);
+		return response;
+	}
+
+	public void testPageCached() throws Exception {
+		MockHttpServletResponse response = doFilter("GET", "/catalog.html");
+		assertEquals("page 1", response.getContentAsString());
+		assertEquals("text/html", response.getContentType());
+		assertEquals("value", response.getHeader("X-Custom"));
+		assertEquals(6, response.getContentLength());
+		String eTag = (String) response.getHeader("ETag");
+		assertNotNull(eTag);
+		assertNotNull(response.getHeader("Last-Modified"));
+
+		response = doFilter("GET", "/catalog.html");
+		assertEquals("page 1", response.getContentAsString());
+		assertEquals("text/html", response.getContentType());
+		assertEquals("value", response.getHeader("X-Custom"));
+		assertEquals(eTag, response.getHeader("ETag"));
+		assertEquals(1, chain.count);
+		assertEquals(1, filter.getCachedPageCount());
+		assertEquals(6, filter.getCacheSize());
+
+		assertEquals("page 2", doFilter("GET", "/other.html").getContentAsString());
+		assertEquals(2, chain.count);
+	}
+
+	public void testQueryStringAndHeaderInKey() throws Exception {
+		filter.setKeyRequestHeaders(new String[] {"Accept-Language"});
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/catalog.html");
+		request.setQueryString("page=1");
+		doFilter(request);
+		request = new MockHttpServletRequest("GET", "/catalog.html");
+		request.setQueryString("page=2");
+		doFilter(request);
+		request = new MockHttpServletRequest("GET", "/catalog.html");
+		request.setQueryString("page=2");
+		request.addHeader("Accept-Language", "de");
+		doFilter(request);
+		request = new MockHttpServletRequest("GET", "/catalog.html");
+		request.setQueryString("page=2");
+		request.addHeader("Accept-Language", "de");
+		doFilter(request);
+		assertEquals(3, chain.count);
+	}
+
+	public void testRequestAttributeInKey() throws Exception {
+		filter.setKeyRequestAttributes(new String[] {"variant"});
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/catalog.html");
+		request.setAttribute("variant", "a");
+		doFilter(request);
+		request = new MockHttpServletRequest("GET", "/catalog.html");
+		request.setAttribute("variant", "b");
+		doFilter(request);
+		request = new MockHttpServletRequest("GET", "/catalog.html");
+		request.setAttribute("variant", "a");
+		doFilter(request);
+		assertEquals(2, chain.count);
+	}
+
+	public void testIfNoneMatch() throws Exception {
+		String eTag = (String) doFilter("GET", "/catalog.html").getHeader("ETag");
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/catalog.html");
+		request.addHeader("If-None-Match", eTag);
+		MockHttpServletResponse response = doFilter(request);
+		assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+		assertEquals(0, response.getContentAsByteArray().length);
+
+		request = new MockHttpServletRequest("GET", "/catalog.html");
+		request.addHeader("If-None-Match", "\"other\"");
+		response = doFilter(request);
+		assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+		assertEquals("page 1", response.getContentAsString());
+	}
+
+	public void testIfNoneMatchOnFreshlyRenderedPage() throws Exception {
+		filter.setTimeToLive(0);
+		String eTag = (String) doFilter("GET", "/catalog.html").getHeader("ETag");
+		chain.count = 0;
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/catalog.html");
+		request.addHeader("If-None-Match", eTag);
+		MockHttpServletResponse response = doFilter(request);
+		assertEquals(1, chain.count);
+		assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+		assertEquals(0, response.getContentAsByteArray().length);
+		assertEquals(0, filter.getCachedPageCount());
+	}
+
+	public void testIfModifiedSince() throws Exception {
+		chain.lastModified = 1000000000000L;
+		doFilter("GET", "/catalog.html");
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/catalog.html");
+		request.addHeader("If-Modified-Since", new Long(1000000000000L));
+		assertEquals(HttpServletResponse.SC_NOT_MODIFIED, doFilter(request).getStatus());
+		request = new MockHttpServletRequest("GET", "/catalog.html");
+		request.addHeader("If-Modified-Since", new Long(999999990000L));
+		assertEquals(HttpServletResponse.SC_OK, doFilter(request).getStatus());
+		assertEquals(1, chain.count);
+	}
+
+	public void testHeadServedFromCache() throws Exception {
+		doFilter("HEAD", "/catalog.html");
+		assertEquals(0, filter.getCachedPageCount());
+		doFilter("GET", "/catalog.html");
+		MockHttpServletResponse response = doFilter("HEAD", "/catalog.html");
+		assertEquals(0, response.getContentAsByteArray().length);
+		assertEquals(6, response.getContentLength());
+		assertEquals(2, chain.count);
+	}
+
+	public void testPostNotCached() throws Exception {
+		doFilter("POST", "/catalog.html");
+		doFilter("POST", "/catalog.html");
+		assertEquals(2, chain.count);
+		assertEquals(0, filter.getCachedPageCount());
+	}
+
+	public void testErrorNotCached() throws Exception {
+		chain.error = true;
+		MockHttpServletResponse response = doFilter("GET", "/catalog.html");
+		assertEquals(HttpServletResponse.SC_NOT_FOUND, response.getStatus());
+		doFilter("GET", "/catalog.html");
+		assertEquals(2, chain.count);
+		assertEquals(0, filter.getCachedPageCount());
+	}
+
+	public void testCookieNotCached() throws Exception {
+		chain.cookie = true;
+		MockHttpServletResponse response = doFilter("GET", "/catalog.html");
+		assertEquals("page 1", response.getContentAsString());
+		assertNotNull(response.getCookie("user"));
+		doFilter("GET", "/catalog.html");
+		assertEquals(2, chain.count);
+	}
+
+	public void testSetCookieHeaderNotCached() throws Exception {
+		chain.setCookieHeader = true;
+		doFilter("GET", "/catalog.html");
+		doFilter("GET", "/catalog.html");
+		assertEquals(2, chain.count);
+		assertEquals(0, filter.getCachedPageCount());
+	}
+
+	public void testAuthenticatedRequestNotCached() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/catalog.html");
+		request.setRemoteUser("someone");
+		doFilter(request);
+		assertEquals(0, filter.getCachedPageCount());
+		doFilter("GET", "/catalog.html");
+		request = new MockHttpServletRequest("GET", "/catalog.html");
+		request.setRemoteUser("someone");
+		assertEquals("page 3", doFilter(request).getContentAsString());
+		assertEquals(3, chain.count);
+
+		filter.setCachePersonalizedRequests(true);
+		request = new MockHttpServletRequest("GET", "/catalog.html");
+		request.setRemoteUser("someone");
+		assertEquals("page 2", doFilter(request).getContentAsString());
+		assertEquals(3, chain.count);
+	}
+
+	public void testSessionRequestNotCached() throws Exception {
+		doFilter("GET", "/catalog.html");
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/catalog.html");
+		request.setSession(new MockHttpSession());
+		assertEquals("page 2", doFilter(request).getContentAsString());
+		assertEquals(1, filter.getCachedPageCount());
+	}
+
+	public void testSessionCreatingPageNotCached() throws Exception {
+		chain.createSession = true;
+		doFilter("GET", "/catalog.html");
+		doFilter("GET", "/catalog.html");
+		assertEquals(2, chain.count);
+		assertEquals(0, filter.getCachedPageCount());
+	}
+
+	public void testLargePagePassedThrough() throws Exception {
+		filter.setMaxPageSize(4);
+		MockHttpServletResponse response = doFilter("GET", "/catalog.html");
+		assertEquals("page 1", response.getContentAsString());
+		assertNull(response.getHeader("ETag"));
+		assertEquals(0, filter.getCachedPageCount());
+	}
+
+	public void testFlushBufferPassesThrough() throws Exception {
+		chain.flush = true;
+		MockHttpServletResponse response = doFilter("GET", "/catalog.html");
+		assertTrue(response.isCommitted());
+		assertEquals("page 1", response.getContentAsString());
+		assertNull(response.getHeader("ETag"));
+		doFilter("GET", "/catalog.html");
+		assertEquals(2, chain.count);
+		assertEquals(0, filter.getCachedPageCount());
+	}
+
+	public void testCacheControl() throws Exception {
+		chain.cacheControl = "private, max-age=60";
+		doFilter("GET", "/catalog.html");
+		doFilter("GET", "/catalog.html");
+		assertEquals(2, chain.count);
+		chain.cacheControl = "max-age=0";
+		doFilter("GET", "/catalog.html");
+		assertEquals(0, filter.getCachedPageCount());
+		chain.cacheControl = "public, max-age=60";
+		doFilter("GET", "/catalog.html");
+		doFilter("GET", "/catalog.html");
+		assertEquals(4, chain.count);
+	}
+
+	public void testTimeToLive() throws Exception {
+		filter.setTimeToLive(1);
+		doFilter("GET", "/catalog.html");
+		doFilter("GET", "/catalog.html");
+		assertEquals(1, chain.count);
+		Thread.sleep(1100);
+		doFilter("GET", "/catalog.html");
+		assertEquals(2, chain.count);
+	}
+
+	public void testCacheLimit() throws Exception {
+		initFilter(new PageCachingFilter(1));
+		filter.setCacheLimit(2);
+		doFilter("GET", "/page1.html");
+		doFilter("GET", "/page2.html");
+		doFilter("GET", "/page1.html");
+		doFilter("GET", "/page3.html");
+		assertEquals(2, filter.getCachedPageCount());
+		assertEquals(3, chain.count);
+		doFilter("GET", "/page1.html");
+		assertEquals(3, chain.count);
+		doFilter("GET", "/page2.html");
+		assertEquals(4, chain.count);
+	}
+
+	public void testSegmentedCacheLimit() throws Exception {
+		filter.setCacheLimit(20);
+		for (int i = 0; i < 200; i++) {
+			doFilter("GET", "/page" + i + ".html");
+		}
+		assertTrue(filter.getCachedPageCount() <= 20);
+		assertTrue(filter.getCachedPageCount() > 0);
+	}
+
+	public void testMaxCacheSizeAndPageSize() throws Exception {
+		initFilter(new PageCachingFilter(1));
+		filter.setMaxCacheSize(13);
+		filter.setMaxPageSize(6);
+		doFilter("GET", "/page1.html");
+		doFilter("GET", "/page2.html");
+		assertEquals(2, filter.getCachedPageCount());
+		doFilter("GET", "/page3.html");
+		assertEquals(2, filter.getCachedPageCount());
+		assertEquals(12, filter.getCacheSize());
+		doFilter("GET", "/page10.html");
+		assertEquals(12, filter.getCacheSize());
+	}
+
+	public void testOffHeap() throws Exception {
+		filter.setOffHeap(true);
+		doFilter("GET", "/catalog.html");
+		assertEquals("page 1", doFilter("GET", "/catalog.html").getContentAsString());
+		assertEquals("page 1", doFilter("GET", "/catalog.html").getContentAsString());
+		assertEquals(1, chain.count);
+		filter.clearCache();
+		assertEquals(0, filter.getCacheSize());
+		doFilter("GET", "/catalog.html");
+		assertEquals(2, chain.count);
+	}
+
+
+	private static class PageChain implements FilterChain {
+
+		private int count = 0;
+
+		private long lastModified = -1;
+
+		private boolean error = false;
+
+		private boolean cookie = false;
+
+		private boolean setCookieHeader = false;
+
+		private boolean createSession = false;
+
+		private boolean flush = false;
+
+		private String cacheControl;
+
+		public void doFilter(ServletRequest request, ServletResponse response) throws IOException {
+			this.count++;
+			HttpServletResponse httpResponse = (HttpServletResponse) response;
+			if (this.error) {
+				httpResponse.sendError(HttpServletResponse.SC_NOT_FOUND);
+				return;
+			}
+			httpResponse.setContentType("text/html");
+			httpResponse.setHeader("X-Custom", "value");
+			if (this.lastModified != -1) {
+				httpResponse.setDateHeader("Last-Modified", this.lastModified);
+			}
+			if (this.cacheControl != null) {
+				httpResponse.setHeader("Cache-Control", this.cacheControl);
+			}
+			if (this.cookie) {
+				httpResponse.addCookie(new Cookie("user", "someone"));
+			}
+			if (this.setCookieHeader) {
+				httpResponse.addHeader("Set-Cookie", "user=someone");
+			}
+			if (this.createSession) {
+				((HttpServletRequest) request).getSession();
+			}
+			if (!"HEAD".equals(((HttpServletRequest) request).getMethod())) {
+				httpResponse.getWriter().write("page " + this.count);
+			}
+			if (this.flush) {
+				httpResponse.flushBuffer();
+			}
+		}
+	}
+
+}
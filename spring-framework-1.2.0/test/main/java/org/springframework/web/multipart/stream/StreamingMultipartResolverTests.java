@@ -0,0 +1,527 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.web.multipart.stream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import junit.framework.TestCase;
+
+import org.springframework.beans.MutablePropertyValues;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.mock.web.MockFilterConfig;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.util.FileCopyUtils;
+import org.springframework.web.bind.ServletRequestDataBinder;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.support.StaticWebApplicationContext;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+import org.springframework.web.multipart.MultipartException;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.multipart.MultipartHttpServletRequest;
+import org.springframework.web.multipart.MultipartPart;
+import org.springframework.web.multipart.MultipartPartIterator;
+import org.springframework.web.multipart.StreamingMultipartHttpServletRequest;
+import org.springframework.web.multipart.support.ByteArrayMultipartFileEditor;
+import org.springframework.web.multipart.support.MultipartFilter;
+import org.springframework.web.multipart.support.StringMultipartFileEditor;
+import org.springframework.web.util.WebUtils;
+
+/**
+ * @since 1.2.1
+ */
+public class StreamingMultipartResolverTests extends TestCase {
+
+	private static final String BOUNDARY = "----SpringBoundary7MA4YWxkTrZu0gW";
+
+	private File tempDir;
+
+	private StreamingMultipartResolver resolver;
+
+	protected void setUp() throws IOException {
+		tempDir = File.createTempFile("upload", "");
+		tempDir.delete();
+		tempDir.mkdir();
+		resolver = new StreamingMultipartResolver();
+		resolver.setUploadTempDir(new FileSystemResource(tempDir));
+	}
+
+	protected void tearDown() {
+		File[] files = tempDir.listFiles();
+		for (int i = 0; i < files.length; i++) {
+			files[i].delete();
+		}
+		tempDir.delete();
+	}
+
+	public void testParseRequest() throws Exception {
+		byte[] largeContent = createContent(20000);
+		MultipartBody body = new MultipartBody();
+		body.addField("field1", "value1");
+		body.addField("field1", "value2");
+		body.addFile("small", "C:\\My Documents\\small.txt", "text/plain", "small content".getBytes());
+		body.addFile("large", "/home/user/large.bin", "application/octet-stream", largeContent);
+		body.addFile("empty", "", "application/octet-stream", new byte[0]);
+		MockHttpServletRequest originalRequest = body.createRequest();
+		originalRequest.addParameter("query", "queryValue");
+
+		assertTrue(resolver.isMultipart(originalRequest));
+		MultipartHttpServletRequest request = resolver.resolveMultipart(originalRequest);
+		assertFalse(request instanceof StreamingMultipartHttpServletRequest);
+		assertTrue(Arrays.equals(new String[] {"value1", "value2"}, request.getParameterValues("field1")));
+		assertEquals("queryValue", request.getParameter("query"));
+		assertEquals(3, request.getFileMap().size());
+
+		StreamingMultipartFile small = (StreamingMultipartFile) request.getFile("small");
+		assertEquals("small.txt", small.getOriginalFilename());
+		assertEquals("text/plain", small.getContentType());
+		assertEquals("small content", new String(small.getBytes()));
+		assertTrue(small.isInMemory());
+
+		StreamingMultipartFile large = (StreamingMultipartFile) request.getFile("large");
+		assertEquals("large.bin", large.getOriginalFilename());
+		assertEquals(largeContent.length, large.getSize());
+		assertFalse(large.isInMemory());
+		assertEquals(tempDir, large.getStoreLocation().getParentFile());
+		assertTrue(Arrays.equals(largeContent, large.getBytes()));
+		assertTrue(Arrays.equals(largeContent, FileCopyUtils.copyToByteArray(large.getInputStream())));
+
+		MultipartFile empty = request.getFile("empty");
+		assertTrue(empty.isEmpty());
+		assertEquals("", empty.getOriginalFilename());
+
+		File dest = new File(tempDir, "dest.bin");
+		large.transferTo(dest);
+		assertTrue(Arrays.equals(largeContent, FileCopyUtils.copyToByteArray(dest)));
+		try {
+			large.transferTo(dest);
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (IllegalStateException ex) {
+			// expected
+		}
+		dest.delete();
+
+		resolver.cleanupMultipart(request);
+		assertEquals(0, tempDir.listFiles().length);
+	}
+
+	public void testPartBoundariesAcrossBuffers() throws Exception {
+		// Content that contains partial delimiters, to be split at arbitrary buffer positions.
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		String delimiter = "\r\n--" + BOUNDARY;
+		for (int i = 1; i < delimiter.length(); i++) {
+			content.write(delimiter.substring(0, i).getBytes());
+			content.write('x');
+		}
+		content.write("\r\n".getBytes());
+		byte[] fileContent = content.toByteArray();
+
+		for (int bufferSize = 1; bufferSize < 200; bufferSize += 7) {
+			MultipartBody body = new MultipartBody();
+			body.addField("field", "\r\n-");
+			body.addFile("file", "file.txt", "text/plain", fileContent);
+			body.addField("after", "value");
+			StreamingMultipartResolver resolver = new StreamingMultipartResolver();
+			resolver.setBufferSize(bufferSize);
+			resolver.setMaxInMemorySize(10);
+			resolver.setUploadTempDir(new FileSystemResource(tempDir));
+			MultipartHttpServletRequest request = resolver.resolveMultipart(body.createRequest());
+			assertEquals("\r\n-", request.getParameter("field"));
+			assertEquals("value", request.getParameter("after"));
+			assertTrue("Buffer size " + bufferSize, Arrays.equals(fileContent, request.getFile("file").getBytes()));
+			resolver.cleanupMultipart(request);
+		}
+	}
+
+	public void testPreambleAndEpilogue() throws Exception {
+		String content = "This is a preamble\r\n--" + BOUNDARY + "\r\n" +
+				"Content-Disposition: form-data; name=\"field\"\r\n\r\nvalue\r\n--" + BOUNDARY + "--\r\nepilogue";
+		MockHttpServletRequest originalRequest = new MockHttpServletRequest("POST", "/upload");
+		originalRequest.setContentType("multipart/form-data; boundary=\"" + BOUNDARY + "\"");
+		originalRequest.setContent(content.getBytes());
+		MultipartHttpServletRequest request = resolver.resolveMultipart(originalRequest);
+		assertEquals("value", request.getParameter("field"));
+	}
+
+	public void testEncoding() throws Exception {
+		MultipartBody body = new MultipartBody();
+		body.addPart("Content-Disposition: form-data; name=\"field\"", "\u00e4\u00f6\u00fc".getBytes("UTF-8"));
+		MockHttpServletRequest originalRequest = body.createRequest();
+		originalRequest.setCharacterEncoding("UTF-8");
+		assertEquals("\u00e4\u00f6\u00fc", resolver.resolveMultipart(originalRequest).getParameter("field"));
+	}
+
+	public void testInvalidRequests() throws Exception {
+		MockHttpServletRequest originalRequest = new MockHttpServletRequest("POST", "/upload");
+		originalRequest.setContentType("multipart/form-data");
+		originalRequest.setContent(new byte[0]);
+		try {
+			resolver.resolveMultipart(originalRequest);
+			fail("Should have thrown MultipartException");
+		}
+		catch (MultipartException ex) {
+			// expected
+		}
+
+		MultipartBody body = new MultipartBody();
+		body.addFile("file", "file.txt", "text/plain", createContent(20000));
+		byte[] content = body.getContent();
+		originalRequest = body.createRequest();
+		byte[] truncated = new byte[content.length / 2];
+		System.arraycopy(content, 0, truncated, 0, truncated.length);
+		originalRequest.setContent(truncated);
+		try {
+			resolver.resolveMultipart(originalRequest);
+			fail("Should have thrown MultipartException");
+		}
+		catch (MultipartException ex) {
+			// expected
+		}
+		assertEquals(0, tempDir.listFiles().length);
+	}
+
+	public void testMaxUploadSize() throws Exception {
+		MultipartBody body = new MultipartBody();
+		body.addFile("file", "file.txt", "text/plain", createContent(20000));
+		resolver.setMaxUploadSize(10000);
+		try {
+			resolver.resolveMultipart(body.createRequest());
+			fail("Should have thrown MaxUploadSizeExceededException");
+		}
+		catch (MaxUploadSizeExceededException ex) {
+			assertEquals(10000, ex.getMaxUploadSize());
+		}
+
+		// Enforced while reading if the content length is unknown.
+		MockHttpServletRequest originalRequest = new MockHttpServletRequest("POST", "/upload") {
+			public int getContentLength() {
+				return -1;
+			}
+		};
+		originalRequest.setContentType("multipart/form-data; boundary=" + BOUNDARY);
+		originalRequest.setContent(body.getContent());
+		try {
+			resolver.resolveMultipart(originalRequest);
+			fail("Should have thrown MaxUploadSizeExceededException");
+		}
+		catch (MaxUploadSizeExceededException ex) {
+			assertEquals(10000, ex.getMaxUploadSize());
+		}
+		assertEquals(0, tempDir.listFiles().length);
+	}
+
+	public void testMaxPartSize() throws Exception {
+		MultipartBody body = new MultipartBody();
+		body.addFile("file1", "file1.txt", "text/plain", createContent(5000));
+		body.addFile("file2", "file2.txt", "text/plain", createContent(20000));
+		resolver.setMaxPartSize(10000);
+		resolver.setMaxInMemorySize(1000);
+		try {
+			resolver.resolveMultipart(body.createRequest());
+			fail("Should have thrown MaxUploadSizeExceededException");
+		}
+		catch (MaxUploadSizeExceededException ex) {
+			assertEquals(10000, ex.getMaxUploadSize());
+		}
+		assertEquals(0, tempDir.listFiles().length);
+
+		body = new MultipartBody();
+		body.addFile("file1", "file1.txt", "text/plain", createContent(10000));
+		MultipartHttpServletRequest request = resolver.resolveMultipart(body.createRequest());
+		assertEquals(10000, request.getFile("file1").getSize());
+		resolver.cleanupMultipart(request);
+	}
+
+	public void testStreamParts() throws Exception {
+		byte[] content1 = createContent(30000);
+		byte[] content3 = createContent(5000);
+		MultipartBody body = new MultipartBody();
+		body.addField("field", "value");
+		body.addFile("file1", "file1.bin", "application/octet-stream", content1);
+		body.addFile("file2", "file2.bin", "application/octet-stream", createContent(30000));
+		body.addFile("file3", "file3.bin", "application/octet-stream", content3);
+		resolver.setStreamParts(true);
+		resolver.setBufferSize(1024);
+		StreamingMultipartHttpServletRequest request =
+				(StreamingMultipartHttpServletRequest) resolver.resolveMultipart(body.createRequest());
+		assertNull(request.getParameter("field"));
+		assertTrue(request.getFileMap().isEmpty());
+
+		MultipartPartIterator parts = request.getPartIterator();
+		try {
+			request.getPartIterator();
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (IllegalStateException ex) {
+			// expected
+		}
+
+		assertTrue(parts.hasNext());
+		MultipartPart part = parts.next();
+		assertTrue(part.isFormField());
+		assertEquals("field", part.getName());
+		assertEquals("value", request.getParameter("field"));
+		assertEquals("value", new String(FileCopyUtils.copyToByteArray(part.getInputStream())));
+
+		part = parts.next();
+		assertFalse(part.isFormField());
+		assertEquals("file1", part.getName());
+		assertEquals("file1.bin", part.getOriginalFilename());
+		assertEquals("application/octet-stream", part.getContentType());
+		assertEquals("application/octet-stream", part.getHeader("content-type"));
+		ByteArrayOutputStream target = new ByteArrayOutputStream();
+		assertEquals(content1.length, part.transferTo(Channels.newChannel(target)));
+		assertTrue(Arrays.equals(content1, target.toByteArray()));
+		try {
+			part.getInputStream();
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (IllegalStateException ex) {
+			// expected
+		}
+
+		// file2 remains unread
+		assertTrue(parts.hasNext());
+		MultipartPart skipped = parts.next();
+		InputStream skippedStream = skipped.getInputStream();
+		assertEquals("file2", skipped.getName());
+
+		part = parts.next();
+		assertEquals("file3", part.getName());
+		assertTrue(Arrays.equals(content3, FileCopyUtils.copyToByteArray(part.getInputStream())));
+		assertFalse(parts.hasNext());
+		try {
+			skippedStream.read();
+			fail("Should have thrown IOException");
+		}
+		catch (IOException ex) {
+			// expected
+		}
+
+		resolver.cleanupMultipart(request);
+	}
+
+	public void testStreamPartsWithMaxPartSize() throws Exception {
+		MultipartBody body = new MultipartBody();
+		body.addFile("file", "file.bin", "application/octet-stream", createContent(30000));
+		resolver.setStreamParts(true);
+		resolver.setMaxPartSize(10000);
+		StreamingMultipartHttpServletRequest request =
+				(StreamingMultipartHttpServletRequest) resolver.resolveMultipart(body.createRequest());
+		MultipartPart part = request.getPartIterator().next();
+		File dest = new File(tempDir, "dest.bin");
+		try {
+			part.transferTo(dest);
+			fail("Should have thrown MaxUploadSizeExceededException");
+		}
+		catch (MaxUploadSizeExceededException ex) {
+			assertEquals(10000, ex.getMaxUploadSize());
+		}
+		assertTrue(dest.length() <= 10000);
+		resolver.cleanupMultipart(request);
+	}
+
+	public void testDataBinding() throws Exception {
+		MultipartBody body = new MultipartBody();
+		body.addFile("field1", "file1.txt", "text/plain", "text1".getBytes());
+		body.addFile("field2", "file2.txt", "text/plain", "text2".getBytes("UTF-16"));
+		MultipartHttpServletRequest request = resolver.resolveMultipart(body.createRequest());
+
+		MultipartTestBean1 mtb1 = new MultipartTestBean1();
+		ServletRequestDataBinder binder = new ServletRequestDataBinder(mtb1, "mybean");
+		binder.registerCustomEditor(byte[].class, new ByteArrayMultipartFileEditor());
+		binder.bind(request);
+		assertEquals(request.getFile("field1"), mtb1.getField1());
+		assertEquals("text2", new String(mtb1.getField2(), "UTF-16"));
+
+		MultipartTestBean2 mtb2 = new MultipartTestBean2();
+		binder = new ServletRequestDataBinder(mtb2, "mybean");
+		binder.registerCustomEditor(String.class, "field1", new StringMultipartFileEditor());
+		binder.registerCustomEditor(String.class, "field2", new StringMultipartFileEditor("UTF-16"));
+		binder.bind(request);
+		assertEquals("text1", mtb2.getField1());
+		assertEquals("text2", mtb2.getField2());
+		resolver.cleanupMultipart(request);
+	}
+
+	public void testWithMultipartFilter() throws Exception {
+		StaticWebApplicationContext wac = new StaticWebApplicationContext();
+		wac.setServletContext(new MockServletContext());
+		wac.getServletContext().setAttribute(WebUtils.TEMP_DIR_CONTEXT_ATTRIBUTE, tempDir);
+		MutablePropertyValues pvs = new MutablePropertyValues();
+		pvs.addPropertyValue("maxInMemorySize", new Integer(100));
+		wac.registerSingleton("filterMultipartResolver", StreamingMultipartResolver.class, pvs);
+		wac.refresh();
+		wac.getServletContext().setAttribute(WebApplicationContext.ROOT_WEB_APPLICATION_CONTEXT_ATTRIBUTE, wac);
+
+		MultipartFilter filter = new MultipartFilter();
+		filter.init(new MockFilterConfig(wac.getServletContext(), "filter"));
+
+		final List files = new ArrayList();
+		FilterChain filterChain = new FilterChain() {
+			public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse) {
+				MultipartHttpServletRequest request = (MultipartHttpServletRequest) servletRequest;
+				assertEquals("value", request.getParameter("field"));
+				files.addAll(request.getFileMap().values());
+			}
+		};
+
+		MultipartBody body = new MultipartBody();
+		body.addField("field", "value");
+		body.addFile("file", "file.bin", "application/octet-stream", createContent(5000));
+		filter.doFilter(body.createRequest(), new MockHttpServletResponse(), filterChain);
+
+		assertEquals(1, files.size());
+		StreamingMultipartFile file = (StreamingMultipartFile) files.get(0);
+		assertEquals(tempDir, file.getStoreLocation().getParentFile());
+		assertFalse(file.getStoreLocation().exists());
+	}
+
+	public void testInvalidRequestWithMultipartFilter() throws Exception {
+		StaticWebApplicationContext wac = new StaticWebApplicationContext();
+		wac.setServletContext(new MockServletContext());
+		wac.registerSingleton("filterMultipartResolver", StreamingMultipartResolver.class, new MutablePropertyValues());
+		wac.refresh();
+		wac.getServletContext().setAttribute(WebApplicationContext.ROOT_WEB_APPLICATION_CONTEXT_ATTRIBUTE, wac);
+
+		MultipartFilter filter = new MultipartFilter();
+		filter.init(new MockFilterConfig(wac.getServletContext(), "filter"));
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", "/upload");
+		request.setContentType("multipart/form-data; boundary=" + BOUNDARY);
+		request.setContent("garbage".getBytes());
+		try {
+			filter.doFilter(request, new MockHttpServletResponse(), new FilterChain() {
+				public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse) {
+					fail("Should not have invoked filter chain");
+				}
+			});
+			fail("Should have thrown MultipartException");
+		}
+		catch (ServletException ex) {
+			assertTrue(ex instanceof MultipartException);
+		}
+	}
+
+
+	private static byte[] createContent(int length) {
+		byte[] content = new byte[length];
+		for (int i = 0; i < length; i++) {
+			content[i] = (byte) (i % 253);
+		}
+		return content;
+	}
+
+
+	private static class MultipartBody {
+
+		private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+		public void addField(String name, String value) throws IOException {
+			addPart("Content-Disposition: form-data; name=\"" + name + "\"", value.getBytes("ISO-8859-1"));
+		}
+
+		public void addFile(String name, String filename, String contentType, byte[] fileContent)
+				throws IOException {
+			addPart("Content-Disposition: form-data; name=\"" + name + "\"; filename=\"" + filename + "\"\r\n" +
+					"Content-Type: " + contentType, fileContent);
+		}
+
+		public void addPart(String headers, byte[] partContent) throws IOException {
+			this.content.write(("--" + BOUNDARY + "\r\n" + headers + "\r\n\r\n").getBytes("ISO-8859-1"));
+			this.content.write(partContent);
+			this.content.write("\r\n".getBytes());
+		}
+
+		public byte[] getContent() throws IOException {
+			ByteArrayOutputStream result = new ByteArrayOutputStream();
+			this.content.writeTo(result);
+			result.write(("--" + BOUNDARY + "--\r\n").getBytes());
+			return result.toByteArray();
+		}
+
+		public MockHttpServletRequest createRequest() throws IOException {
+			MockHttpServletRequest request = new MockHttpServletRequest("POST", "/upload");
+			request.setContentType("multipart/form-data; boundary=" + BOUNDARY);
+			request.setContent(getContent());
+			return request;
+		}
+	}
+
+
+	public static class MultipartTestBean1 {
+
+		private MultipartFile field1;
+
+		private byte[] field2;
+
+		public void setField1(MultipartFile field1) {
+			this.field1 = field1;
+		}
+
+		public MultipartFile getField1() {
+			return field1;
+		}
+
+		public void setField2(byte[] field2) {
+			this.field2 = field2;
+		}
+
+		public byte[] getField2() {
+			return field2;
+		}
+	}
+
+
+	public static class MultipartTestBean2 {
+
+		private String field1;
+
+		private String field2;
+
+		public void setField1(String field1) {
+			this.field1 = field1;
+		}
+
+		public String getField1() {
+			return field1;
+		}
+
+		public void setField2(String field2) {
+			this.field2 = field2;
+		}
+
+		public String getField2() {
+			return field2;
+		}
+	}
+
+}
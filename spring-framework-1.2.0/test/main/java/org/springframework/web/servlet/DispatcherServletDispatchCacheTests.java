@@ -0,0 +1,337 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.web.servlet;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.TestCase;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.MutablePropertyValues;
+import org.springframework.core.Ordered;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletConfig;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.util.StopWatch;
+import org.springframework.web.context.support.StaticWebApplicationContext;
+import org.springframework.web.servlet.handler.SimpleUrlHandlerMapping;
+import org.springframework.web.servlet.mvc.Controller;
+
+/**
+ * @since 1.2.1
+ */
+public class DispatcherServletDispatchCacheTests extends TestCase {
+
+	private MockServletConfig servletConfig;
+
+	protected void setUp() {
+		servletConfig = new MockServletConfig(new MockServletContext(), "cache");
+		HelloController.counter = 0;
+		PrototypeController.counter = 0;
+	}
+
+	private DispatcherServlet createServlet(int dispatchCacheLimit) throws ServletException {
+		DispatcherServlet servlet = new DispatcherServlet();
+		servlet.setContextClass(DispatchCacheWebApplicationContext.class);
+		servlet.setDispatchCacheLimit(dispatchCacheLimit);
+		servlet.init(servletConfig);
+		return servlet;
+	}
+
+	private MockHttpServletResponse service(DispatcherServlet servlet, String uri, String param) throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest(servletConfig.getServletContext(), "GET", uri);
+		if (param != null) {
+			request.addParameter(param, "true");
+		}
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		servlet.service(request, response);
+		return response;
+	}
+
+	private DispatchCacheWebApplicationContext getContext(DispatcherServlet servlet) {
+		return (DispatchCacheWebApplicationContext) servlet.getWebApplicationContext();
+	}
+
+	private CountingUrlHandlerMapping getHandlerMapping(DispatcherServlet servlet) {
+		return (CountingUrlHandlerMapping) servlet.getWebApplicationContext().getBean("handlerMapping");
+	}
+
+	private CountingViewResolver getViewResolver(DispatcherServlet servlet, String name) {
+		return (CountingViewResolver) servlet.getWebApplicationContext().getBean(name);
+	}
+
+	public void testHandlerChainCached() throws Exception {
+		DispatcherServlet servlet = createServlet(DispatcherServlet.DEFAULT_DISPATCH_CACHE_LIMIT);
+		assertEquals("hello", service(servlet, "/hello.do", null).getContentAsString());
+		assertEquals("hello", service(servlet, "/hello.do", null).getContentAsString());
+		assertEquals("hello", service(servlet, "/hello.do", null).getContentAsString());
+		assertEquals(3, HelloController.counter);
+		assertEquals(1, getHandlerMapping(servlet).counter);
+	}
+
+	public void testPrototypeHandlerNotCached() throws Exception {
+		DispatcherServlet servlet = createServlet(DispatcherServlet.DEFAULT_DISPATCH_CACHE_LIMIT);
+		assertEquals("hello", service(servlet, "/prototype.do", null).getContentAsString());
+		assertEquals("hello", service(servlet, "/prototype.do", null).getContentAsString());
+		assertEquals(2, PrototypeController.counter);
+		assertEquals(2, getHandlerMapping(servlet).counter);
+	}
+
+	public void testRequestDependentMappingNotCached() throws Exception {
+		DispatcherServlet servlet = createServlet(DispatcherServlet.DEFAULT_DISPATCH_CACHE_LIMIT);
+		assertEquals(HttpServletResponse.SC_NOT_FOUND, service(servlet, "/other.do", null).getStatus());
+		assertEquals("hello", service(servlet, "/other.do", "special").getContentAsString());
+		assertEquals(HttpServletResponse.SC_NOT_FOUND, service(servlet, "/other.do", null).getStatus());
+		assertEquals(1, HelloController.counter);
+		// unmapped GET requests get looked up for getLastModified and for dispatching
+		assertEquals(5, getHandlerMapping(servlet).counter);
+	}
+
+	public void testNoHandlerCached() throws Exception {
+		DispatcherServlet servlet = new DispatcherServlet();
+		servlet.setContextClass(DispatchCacheWebApplicationContext.class);
+		servlet.setDetectAllHandlerMappings(false);
+		servlet.init(servletConfig);
+		assertEquals(HttpServletResponse.SC_NOT_FOUND, service(servlet, "/invalid.do", null).getStatus());
+		assertEquals(HttpServletResponse.SC_NOT_FOUND, service(servlet, "/invalid.do", null).getStatus());
+		assertEquals(1, getHandlerMapping(servlet).counter);
+	}
+
+	public void testViewResolverCached() throws Exception {
+		DispatcherServlet servlet = createServlet(DispatcherServlet.DEFAULT_DISPATCH_CACHE_LIMIT);
+		service(servlet, "/hello.do", null);
+		service(servlet, "/hello.do", null);
+		service(servlet, "/hello.do", null);
+		assertEquals(1, getViewResolver(servlet, "firstViewResolver").counter);
+		assertEquals(3, getViewResolver(servlet, "secondViewResolver").counter);
+	}
+
+	public void testCacheDisabled() throws Exception {
+		DispatcherServlet servlet = createServlet(0);
+		assertEquals("hello", service(servlet, "/hello.do", null).getContentAsString());
+		assertEquals("hello", service(servlet, "/hello.do", null).getContentAsString());
+		assertEquals(2, getHandlerMapping(servlet).counter);
+		assertEquals(2, getViewResolver(servlet, "firstViewResolver").counter);
+	}
+
+	public void testCacheLimit() throws Exception {
+		DispatcherServlet servlet = createServlet(1);
+		service(servlet, "/hello.do", null);
+		service(servlet, "/hello2.do", null);
+		service(servlet, "/hello.do", null);
+		service(servlet, "/hello2.do", null);
+		assertEquals(4, getHandlerMapping(servlet).counter);
+		service(servlet, "/hello2.do", null);
+		assertEquals(4, getHandlerMapping(servlet).counter);
+	}
+
+	public void testClearDispatchCache() throws Exception {
+		DispatcherServlet servlet = createServlet(DispatcherServlet.DEFAULT_DISPATCH_CACHE_LIMIT);
+		service(servlet, "/hello.do", null);
+		service(servlet, "/hello.do", null);
+		servlet.clearDispatchCache();
+		service(servlet, "/hello.do", null);
+		assertEquals(2, getHandlerMapping(servlet).counter);
+		assertEquals(2, getViewResolver(servlet, "firstViewResolver").counter);
+	}
+
+	public void testCacheInvalidatedOnContextRefresh() throws Exception {
+		DispatcherServlet servlet = createServlet(DispatcherServlet.DEFAULT_DISPATCH_CACHE_LIMIT);
+		service(servlet, "/hello.do", null);
+		service(servlet, "/hello.do", null);
+		getContext(servlet).simulateRefresh();
+		service(servlet, "/hello.do", null);
+		service(servlet, "/hello.do", null);
+		assertEquals(2, getHandlerMapping(servlet).counter);
+		assertEquals(2, getViewResolver(servlet, "firstViewResolver").counter);
+	}
+
+	public void testRequestsPerSecond() throws Exception {
+		DispatcherServlet uncachedServlet = createServlet(0);
+		DispatcherServlet cachedServlet = createServlet(DispatcherServlet.DEFAULT_DISPATCH_CACHE_LIMIT);
+		int requests = 20000;
+		// warm up
+		serviceRepeatedly(uncachedServlet, 1000);
+		serviceRepeatedly(cachedServlet, 1000);
+
+		StopWatch sw = new StopWatch();
+		sw.start(requests + " requests without dispatch cache");
+		serviceRepeatedly(uncachedServlet, requests);
+		sw.stop();
+		long uncachedTime = sw.getLastTaskTimeMillis();
+		sw.start(requests + " requests with dispatch cache");
+		serviceRepeatedly(cachedServlet, requests);
+		sw.stop();
+		long cachedTime = sw.getLastTaskTimeMillis();
+		System.out.println(sw.prettyPrint());
+		System.out.println("Requests per second without dispatch cache: " + (requests * 1000L / Math.max(uncachedTime, 1)));
+		System.out.println("Requests per second with dispatch cache: " + (requests * 1000L / Math.max(cachedTime, 1)));
+		assertEquals(1000 + requests, getHandlerMapping(uncachedServlet).counter);
+		assertEquals(1, getHandlerMapping(cachedServlet).counter);
+	}
+
+	private void serviceRepeatedly(DispatcherServlet servlet, int requests) throws Exception {
+		for (int i = 0; i < requests; i++) {
+			service(servlet, "/hello.do", null);
+		}
+	}
+
+
+	public static class DispatchCacheWebApplicationContext extends StaticWebApplicationContext {
+
+		private long startupDate;
+
+		public void refresh() throws BeansException {
+			Properties mappings = new Properties();
+			mappings.setProperty("/hello.do", "hello");
+			mappings.setProperty("/hello2.do", "hello");
+			mappings.setProperty("/prototype.do", "prototype");
+			for (int i = 0; i < 50; i++) {
+				mappings.setProperty("/path" + i + "/*.do", "hello");
+			}
+			MutablePropertyValues pvs = new MutablePropertyValues();
+			pvs.addPropertyValue("mappings", mappings);
+			pvs.addPropertyValue("order", new Integer(1));
+			registerSingleton("handlerMapping", CountingUrlHandlerMapping.class, pvs);
+			pvs = new MutablePropertyValues();
+			pvs.addPropertyValue("order", new Integer(2));
+			registerSingleton("parameterMapping", ParameterHandlerMapping.class, pvs);
+
+			registerSingleton("hello", HelloController.class);
+			registerPrototype("prototype", PrototypeController.class);
+
+			pvs = new MutablePropertyValues();
+			pvs.addPropertyValue("order", new Integer(1));
+			registerSingleton("firstViewResolver", CountingViewResolver.class, pvs);
+			pvs = new MutablePropertyValues();
+			pvs.addPropertyValue("order", new Integer(2));
+			pvs.addPropertyValue("viewName", "hello");
+			registerSingleton("secondViewResolver", CountingViewResolver.class, pvs);
+
+			super.refresh();
+			this.startupDate = super.getStartupDate();
+		}
+
+		public long getStartupDate() {
+			return this.startupDate;
+		}
+
+		public void simulateRefresh() {
+			this.startupDate++;
+		}
+	}
+
+
+	public static class CountingUrlHandlerMapping extends SimpleUrlHandlerMapping {
+
+		public int counter = 0;
+
+		protected Object getHandlerInternal(HttpServletRequest request) throws Exception {
+			this.counter++;
+			return super.getHandlerInternal(request);
+		}
+	}
+
+
+	public static class ParameterHandlerMapping implements HandlerMapping, Ordered {
+
+		private int order;
+
+		public void setOrder(int order) {
+			this.order = order;
+		}
+
+		public int getOrder() {
+			return order;
+		}
+
+		public HandlerExecutionChain getHandler(HttpServletRequest request) {
+			if (request.getParameter("special") != null) {
+				return new HandlerExecutionChain(new HelloController());
+			}
+			return null;
+		}
+	}
+
+
+	public static class HelloController implements Controller {
+
+		public static int counter = 0;
+
+		public ModelAndView handleRequest(HttpServletRequest request, HttpServletResponse response) {
+			counter++;
+			return new ModelAndView("hello");
+		}
+	}
+
+
+	public static class PrototypeController extends HelloController {
+
+		public static int counter = 0;
+
+		public PrototypeController() {
+			counter++;
+		}
+	}
+
+
+	public static class CountingViewResolver implements ViewResolver, Ordered {
+
+		public int counter = 0;
+
+		private int order;
+
+		private String viewName;
+
+		public void setOrder(int order) {
+			this.order = order;
+		}
+
+		public int getOrder() {
+			return order;
+		}
+
+		public void setViewName(String viewName) {
+			this.viewName = viewName;
+		}
+
+		public View resolveViewName(String viewName, Locale locale) {
+			this.counter++;
+			if (viewName.equals(this.viewName)) {
+				return new HelloView();
+			}
+			return null;
+		}
+	}
+
+
+	private static class HelloView implements View {
+
+		public void render(Map model, HttpServletRequest request, HttpServletResponse response) throws Exception {
+			response.getWriter().write("hello");
+		}
+	}
+
+}
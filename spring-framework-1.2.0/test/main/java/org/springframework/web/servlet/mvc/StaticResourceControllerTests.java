@@ -0,0 +1,306 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.web.servlet.mvc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.TestCase;
+
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.context.support.StaticWebApplicationContext;
+
+/**
+ * @since 1.2.1
+ */
+public class StaticResourceControllerTests extends TestCase {
+
+	private File baseDir;
+
+	private byte[] largeContent;
+
+	private String css;
+
+	private StaticResourceController controller;
+
+	protected void setUp() throws Exception {
+		baseDir = File.createTempFile("static", "");
+		baseDir.delete();
+		baseDir.mkdir();
+		writeFile("small.txt", "Hello static world".getBytes("ISO-8859-1"));
+		StringBuffer sb = new StringBuffer();
+		for (int i = 0; i < 200; i++) {
+			sb.append(".item").append(i).append(" { color: #").append(i % 10).append("00; margin: 0; }\n");
+		}
+		css = sb.toString();
+		writeFile("css/style.css", css.getBytes("ISO-8859-1"));
+		largeContent = new byte[200 * 1024];
+		for (int i = 0; i < largeContent.length; i++) {
+			largeContent[i] = (byte) (i % 251);
+		}
+		writeFile("large.bin", largeContent);
+
+		StaticWebApplicationContext wac = new StaticWebApplicationContext();
+		wac.setServletContext(new MockServletContext());
+		wac.refresh();
+		controller = new StaticResourceController();
+		controller.setLocations(new String[] {"file:" + baseDir.getAbsolutePath()});
+		controller.setPathPrefix("/static");
+		Properties mediaTypes = new Properties();
+		mediaTypes.setProperty("bin", "application/octet-stream");
+		controller.setMediaTypes(mediaTypes);
+		controller.setApplicationContext(wac);
+	}
+
+	protected void tearDown() {
+		deleteRecursively(baseDir);
+	}
+
+	private File writeFile(String path, byte[] content) throws IOException {
+		File file = new File(baseDir, path);
+		file.getParentFile().mkdirs();
+		FileOutputStream fos = new FileOutputStream(file);
+		fos.write(content);
+		fos.close();
+		return file;
+	}
+
+	private void deleteRecursively(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (int i = 0; i < children.length; i++) {
+				deleteRecursively(children[i]);
+			}
+		}
+		file.delete();
+	}
+
+	private MockHttpServletRequest createRequest(String path) {
+		return new MockHttpServletRequest("GET", "/static/" + path);
+	}
+
+	private MockHttpServletResponse handle(MockHttpServletRequest request) throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		assertNull(controller.handleRequest(request, response));
+		return response;
+	}
+
+	public void testServeSmallFile() throws Exception {
+		MockHttpServletResponse response = handle(createRequest("small.txt"));
+		assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+		assertEquals("Hello static world", response.getContentAsString());
+		assertEquals("text/plain", response.getContentType());
+		assertEquals("18", response.getHeader("Content-Length"));
+		assertEquals("bytes", response.getHeader("Accept-Ranges"));
+		String eTag = (String) response.getHeader("ETag");
+		assertTrue(eTag.startsWith("\"") && eTag.endsWith("\""));
+		assertEquals(new Long(new File(baseDir, "small.txt").lastModified()), response.getHeader("Last-Modified"));
+		assertEquals(new File(baseDir, "small.txt").lastModified(), controller.getLastModified(createRequest("small.txt")));
+
+		// served from cache
+		response = handle(createRequest("small.txt"));
+		assertEquals("Hello static world", response.getContentAsString());
+		assertEquals(eTag, response.getHeader("ETag"));
+	}
+
+	public void testServeLargeFile() throws Exception {
+		MockHttpServletResponse response = handle(createRequest("large.bin"));
+		assertEquals("application/octet-stream", response.getContentType());
+		assertEquals(Integer.toString(largeContent.length), response.getHeader("Content-Length"));
+		assertTrue(Arrays.equals(largeContent, response.getContentAsByteArray()));
+	}
+
+	public void testIfNoneMatch() throws Exception {
+		String eTag = (String) handle(createRequest("small.txt")).getHeader("ETag");
+		MockHttpServletRequest request = createRequest("small.txt");
+		request.addHeader("If-None-Match", eTag);
+		MockHttpServletResponse response = handle(request);
+		assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+		assertEquals(0, response.getContentAsByteArray().length);
+	}
+
+	public void testIfModifiedSince() throws Exception {
+		MockHttpServletRequest request = createRequest("small.txt");
+		request.addHeader("If-Modified-Since", new Long(new File(baseDir, "small.txt").lastModified()));
+		assertEquals(HttpServletResponse.SC_NOT_MODIFIED, handle(request).getStatus());
+	}
+
+	public void testRanges() throws Exception {
+		MockHttpServletRequest request = createRequest("small.txt");
+		request.addHeader("Range", "bytes=6-11");
+		MockHttpServletResponse response = handle(request);
+		assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+		assertEquals("bytes 6-11/18", response.getHeader("Content-Range"));
+		assertEquals("6", response.getHeader("Content-Length"));
+		assertEquals("static", response.getContentAsString());
+
+		request = createRequest("small.txt");
+		request.addHeader("Range", "bytes=-5");
+		assertEquals("world", handle(request).getContentAsString());
+
+		request = createRequest("small.txt");
+		request.addHeader("Range", "bytes=13-");
+		assertEquals("world", handle(request).getContentAsString());
+
+		request = createRequest("small.txt");
+		request.addHeader("Range", "bytes=100-");
+		response = handle(request);
+		assertEquals(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatus());
+		assertEquals("bytes */18", response.getHeader("Content-Range"));
+
+		request = createRequest("small.txt");
+		request.addHeader("Range", "bytes=0-1,5-6");
+		response = handle(request);
+		assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+		assertEquals("Hello static world", response.getContentAsString());
+	}
+
+	public void testRangeOfLargeFile() throws Exception {
+		MockHttpServletRequest request = createRequest("large.bin");
+		request.addHeader("Range", "bytes=100000-100099");
+		MockHttpServletResponse response = handle(request);
+		assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+		byte[] content = response.getContentAsByteArray();
+		assertEquals(100, content.length);
+		for (int i = 0; i < content.length; i++) {
+			assertEquals(largeContent[100000 + i], content[i]);
+		}
+	}
+
+	public void testIfRange() throws Exception {
+		String eTag = (String) handle(createRequest("small.txt")).getHeader("ETag");
+		MockHttpServletRequest request = createRequest("small.txt");
+		request.addHeader("Range", "bytes=6-11");
+		request.addHeader("If-Range", eTag);
+		assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, handle(request).getStatus());
+
+		request = createRequest("small.txt");
+		request.addHeader("Range", "bytes=6-11");
+		request.addHeader("If-Range", "\"outdated\"");
+		MockHttpServletResponse response = handle(request);
+		assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+		assertEquals("Hello static world", response.getContentAsString());
+	}
+
+	public void testCompressedVariant() throws Exception {
+		MockHttpServletRequest request = createRequest("css/style.css");
+		request.addHeader("Accept-Encoding", "gzip, deflate");
+		MockHttpServletResponse response = handle(request);
+		assertEquals("text/css", response.getContentType());
+		assertEquals("gzip", response.getHeader("Content-Encoding"));
+		assertEquals("Accept-Encoding", response.getHeader("Vary"));
+		byte[] compressed = response.getContentAsByteArray();
+		assertTrue(compressed.length < css.length() / 2);
+		assertEquals(compressed.length, response.getContentLength());
+		assertEquals(css, gunzip(compressed));
+		String gzipETag = (String) response.getHeader("ETag");
+		assertTrue(gzipETag.endsWith("-gz\""));
+
+		response = handle(createRequest("css/style.css"));
+		assertNull(response.getHeader("Content-Encoding"));
+		assertEquals(css, response.getContentAsString());
+		assertFalse(gzipETag.equals(response.getHeader("ETag")));
+
+		request = createRequest("css/style.css");
+		request.addHeader("Accept-Encoding", "gzip");
+		request.addHeader("If-None-Match", gzipETag);
+		assertEquals(HttpServletResponse.SC_NOT_MODIFIED, handle(request).getStatus());
+	}
+
+	public void testHead() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("HEAD", "/static/small.txt");
+		MockHttpServletResponse response = handle(request);
+		assertEquals("18", response.getHeader("Content-Length"));
+		assertEquals(0, response.getContentAsByteArray().length);
+	}
+
+	public void testNotFoundAndInvalidPaths() throws Exception {
+		assertEquals(HttpServletResponse.SC_NOT_FOUND, handle(createRequest("missing.txt")).getStatus());
+		assertEquals(HttpServletResponse.SC_NOT_FOUND, handle(createRequest("css")).getStatus());
+		assertEquals(HttpServletResponse.SC_NOT_FOUND, handle(createRequest("../small.txt")).getStatus());
+		assertEquals(HttpServletResponse.SC_NOT_FOUND, handle(createRequest("WEB-INF/web.xml")).getStatus());
+		assertEquals(-1, controller.getLastModified(createRequest("missing.txt")));
+	}
+
+	public void testModifiedFileRefreshed() throws Exception {
+		String eTag = (String) handle(createRequest("small.txt")).getHeader("ETag");
+		File file = writeFile("small.txt", "Changed content!".getBytes("ISO-8859-1"));
+		file.setLastModified(file.lastModified() + 2000);
+		MockHttpServletResponse response = handle(createRequest("small.txt"));
+		assertEquals("Changed content!", response.getContentAsString());
+		assertFalse(eTag.equals(response.getHeader("ETag")));
+	}
+
+	public void testStreamedFileRefreshedWithoutModificationCheck() throws Exception {
+		controller.setCheckModification(false);
+		handle(createRequest("small.txt"));
+		handle(createRequest("large.bin"));
+		File small = writeFile("small.txt", "Changed content!".getBytes("ISO-8859-1"));
+		small.setLastModified(small.lastModified() + 2000);
+		byte[] changed = new byte[largeContent.length / 2];
+		File large = writeFile("large.bin", changed);
+		large.setLastModified(large.lastModified() + 2000);
+
+		// The in-memory copy keeps being served, consistent with its metadata.
+		assertEquals("Hello static world", handle(createRequest("small.txt")).getContentAsString());
+		MockHttpServletResponse response = handle(createRequest("large.bin"));
+		assertEquals(changed.length, response.getContentAsByteArray().length);
+		assertEquals(Integer.toString(changed.length), response.getHeader("Content-Length"));
+	}
+
+	public void testCacheLimit() throws Exception {
+		controller.setCacheLimit(1);
+		handle(createRequest("small.txt"));
+		handle(createRequest("css/style.css"));
+		assertEquals("Hello static world", handle(createRequest("small.txt")).getContentAsString());
+	}
+
+	public void testLocationRequired() {
+		StaticResourceController controller = new StaticResourceController();
+		try {
+			controller.setApplicationContext(new StaticWebApplicationContext());
+			fail("Should have thrown IllegalArgumentException");
+		}
+		catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+
+	private static String gunzip(byte[] content) throws IOException {
+		InputStream in = new GZIPInputStream(new ByteArrayInputStream(content));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int count;
+		while ((count = in.read(buffer)) != -1) {
+			out.write(buffer, 0, count);
+		}
+		return new String(out.toByteArray(), "ISO-8859-1");
+	}
+
+}
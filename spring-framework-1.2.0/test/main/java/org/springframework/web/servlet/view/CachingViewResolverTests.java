@@ -0,0 +1,213 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.web.servlet.view;
+
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.TestCase;
+
+import org.springframework.web.servlet.View;
+
+/**
+ * @since 1.2.1
+ */
+public class CachingViewResolverTests extends TestCase {
+
+	public void testCachedViewAndStatistics() throws Exception {
+		CountingViewResolver vr = new CountingViewResolver();
+		View view = vr.resolveViewName("view", Locale.ENGLISH);
+		assertNotNull(view);
+		assertSame(view, vr.resolveViewName("view", Locale.ENGLISH));
+		assertSame(view, vr.resolveViewName("view", Locale.ENGLISH));
+		assertNotSame(view, vr.resolveViewName("view", Locale.GERMAN));
+		assertEquals(2, vr.loadCount);
+		assertEquals(2, vr.getCacheHitCount());
+		assertEquals(2, vr.getCacheMissCount());
+		assertEquals(2, vr.getViewCreationCount());
+		assertEquals(2, vr.getCacheSize());
+		assertTrue(vr.getTotalViewCreationTime() >= 0);
+	}
+
+	public void testUnresolvedViewCached() throws Exception {
+		CountingViewResolver vr = new CountingViewResolver();
+		assertNull(vr.resolveViewName("missing", Locale.ENGLISH));
+		assertNull(vr.resolveViewName("missing", Locale.ENGLISH));
+		assertEquals(1, vr.loadCount);
+		assertEquals(1, vr.getCacheHitCount());
+	}
+
+	public void testUnresolvedViewNotCached() throws Exception {
+		CountingViewResolver vr = new CountingViewResolver();
+		vr.setCacheUnresolved(false);
+		assertNull(vr.resolveViewName("missing", Locale.ENGLISH));
+		assertNull(vr.resolveViewName("missing", Locale.ENGLISH));
+		assertEquals(2, vr.loadCount);
+		assertEquals(0, vr.getCacheSize());
+	}
+
+	public void testCacheDisabled() throws Exception {
+		CountingViewResolver vr = new CountingViewResolver();
+		vr.setCache(false);
+		assertNotSame(vr.resolveViewName("view", Locale.ENGLISH), vr.resolveViewName("view", Locale.ENGLISH));
+		assertEquals(2, vr.loadCount);
+	}
+
+	public void testLeastRecentlyUsedEviction() throws Exception {
+		CountingViewResolver vr = new CountingViewResolver(1);
+		vr.setCacheLimit(2);
+		View view1 = vr.resolveViewName("view1", Locale.ENGLISH);
+		vr.resolveViewName("view2", Locale.ENGLISH);
+		assertSame(view1, vr.resolveViewName("view1", Locale.ENGLISH));
+		vr.resolveViewName("view3", Locale.ENGLISH);
+		assertEquals(2, vr.getCacheSize());
+		assertEquals(3, vr.loadCount);
+		// view1 was used more recently than view2
+		assertSame(view1, vr.resolveViewName("view1", Locale.ENGLISH));
+		assertEquals(3, vr.loadCount);
+		vr.resolveViewName("view2", Locale.ENGLISH);
+		assertEquals(4, vr.loadCount);
+	}
+
+	public void testSegmentedCacheLimit() throws Exception {
+		CountingViewResolver vr = new CountingViewResolver();
+		vr.setCacheLimit(64);
+		for (int i = 0; i < 1000; i++) {
+			vr.resolveViewName("redirect:/page" + i, Locale.ENGLISH);
+		}
+		assertTrue(vr.getCacheSize() <= 64);
+		assertTrue(vr.getCacheSize() > 0);
+	}
+
+	public void testCacheLimitBelowConcurrencyLevel() throws Exception {
+		CountingViewResolver vr = new CountingViewResolver();
+		vr.setCacheLimit(2);
+		for (int i = 0; i < 100; i++) {
+			vr.resolveViewName("view" + i, Locale.ENGLISH);
+		}
+		assertTrue(vr.getCacheSize() <= 2);
+		assertEquals(AbstractCachingViewResolver.DEFAULT_CONCURRENCY_LEVEL, vr.getConcurrencyLevel());
+	}
+
+	public void testRemoveFromCacheAndClearCache() throws Exception {
+		CountingViewResolver vr = new CountingViewResolver();
+		View view = vr.resolveViewName("view", Locale.ENGLISH);
+		vr.removeFromCache("view", Locale.ENGLISH);
+		View otherView = vr.resolveViewName("view", Locale.ENGLISH);
+		assertNotSame(view, otherView);
+		vr.clearCache();
+		assertEquals(0, vr.getCacheSize());
+		assertNotSame(otherView, vr.resolveViewName("view", Locale.ENGLISH));
+		assertEquals(3, vr.loadCount);
+	}
+
+	public void testExceptionNotCached() throws Exception {
+		CountingViewResolver vr = new CountingViewResolver();
+		try {
+			vr.resolveViewName("failing", Locale.ENGLISH);
+			fail("Should have thrown ServletException");
+		}
+		catch (ServletException ex) {
+			// expected
+		}
+		assertEquals(0, vr.getCacheSize());
+		try {
+			vr.resolveViewName("failing", Locale.ENGLISH);
+			fail("Should have thrown ServletException");
+		}
+		catch (ServletException ex) {
+			// expected
+		}
+		assertEquals(2, vr.loadCount);
+	}
+
+	public void testSingleFlightCreation() throws Exception {
+		final CountingViewResolver vr = new CountingViewResolver();
+		vr.creationDelay = 200;
+		final View[] views = new View[10];
+		Thread[] threads = new Thread[views.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						views[index] = vr.resolveViewName("view", Locale.ENGLISH);
+					}
+					catch (Exception ex) {
+						// leaves the view null
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].join();
+		}
+		assertEquals(1, vr.loadCount);
+		assertEquals(1, vr.getCacheMissCount());
+		assertEquals(9, vr.getCacheHitCount());
+		assertTrue(vr.getTotalViewCreationTime() >= 150);
+		for (int i = 0; i < views.length; i++) {
+			assertNotNull(views[i]);
+			assertSame(views[0], views[i]);
+		}
+	}
+
+
+	private static class CountingViewResolver extends AbstractCachingViewResolver {
+
+		private int loadCount = 0;
+
+		private long creationDelay = 0;
+
+		public CountingViewResolver() {
+		}
+
+		public CountingViewResolver(int concurrencyLevel) {
+			super(concurrencyLevel);
+		}
+
+		protected View loadView(String viewName, Locale locale) throws Exception {
+			synchronized (this) {
+				this.loadCount++;
+			}
+			if (this.creationDelay > 0) {
+				Thread.sleep(this.creationDelay);
+			}
+			if ("missing".equals(viewName)) {
+				return null;
+			}
+			if ("failing".equals(viewName)) {
+				throw new ServletException("Cannot create view");
+			}
+			return new TestView();
+		}
+	}
+
+
+	private static class TestView implements View {
+
+		public void render(Map model, HttpServletRequest request, HttpServletResponse response) {
+		}
+	}
+
+}
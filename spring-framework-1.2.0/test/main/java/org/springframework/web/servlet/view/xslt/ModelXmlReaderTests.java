@@ -0,0 +1,119 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.web.servlet.view.xslt;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.sax.SAXSource;
+
+import junit.framework.TestCase;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
+
+import org.springframework.beans.TestBean;
+import org.springframework.util.xml.DomUtils;
+
+/**
+ * @since 1.2.1
+ */
+public class ModelXmlReaderTests extends TestCase {
+
+	public void testModelMapEntriesBecomeElements() throws Exception {
+		Map model = new HashMap();
+		model.put("title", "Hello");
+		model.put("count", new Integer(3));
+		model.put("not a name", "odd");
+		model.put("missing", null);
+
+		Element root = render(model, "DocRoot");
+		assertEquals("DocRoot", root.getTagName());
+		assertEquals("Hello", getChildText(root, "title"));
+		assertEquals("3", getChildText(root, "count"));
+		assertEquals("", getChildText(root, "missing"));
+		Element item = getChild(root, ModelXmlReader.ITEM_ELEMENT);
+		assertEquals("not a name", item.getAttribute(ModelXmlReader.KEY_ATTRIBUTE));
+		assertEquals("odd", DomUtils.getTextValue(item));
+	}
+
+	public void testBeanPropertiesCollectionsAndMaps() throws Exception {
+		TestBean tb = new TestBean("rod", 31);
+		tb.setStringArray(new String[] {"a", "b"});
+		Map someMap = new HashMap();
+		someMap.put("key1", "value1");
+		tb.setSomeMap(someMap);
+		List friends = new ArrayList();
+		friends.add(new TestBean("juergen", 29));
+		tb.setFriends(friends);
+
+		Element root = render(tb, "person");
+		assertEquals("person", root.getTagName());
+		assertEquals("rod", getChildText(root, "name"));
+		assertEquals("31", getChildText(root, "age"));
+		assertNull(getChild(root, "class"));
+
+		List items = DomUtils.getChildElementsByTagName(
+				getChild(root, "stringArray"), ModelXmlReader.ITEM_ELEMENT);
+		assertEquals(2, items.size());
+		assertEquals("b", DomUtils.getTextValue((Element) items.get(1)));
+
+		Element mapItem = getChild(
+				getChild(root, "someMap"), ModelXmlReader.ITEM_ELEMENT);
+		assertEquals("key1", mapItem.getAttribute(ModelXmlReader.KEY_ATTRIBUTE));
+		assertEquals("value1", DomUtils.getTextValue(mapItem));
+
+		Element friend = getChild(
+				getChild(root, "friends"), ModelXmlReader.ITEM_ELEMENT);
+		assertEquals("juergen", getChildText(friend, "name"));
+	}
+
+	public void testCyclicReferencesAreCut() throws Exception {
+		TestBean rod = new TestBean("rod", 31);
+		TestBean kerry = new TestBean("kerry", 34);
+		rod.setSpouse(kerry);
+		kerry.setSpouse(rod);
+
+		Element root = render(rod, "person");
+		Element spouse = getChild(root, "spouse");
+		assertEquals("kerry", getChildText(spouse, "name"));
+		Element backReference = getChild(spouse, "spouse");
+		assertFalse(backReference.hasChildNodes());
+	}
+
+
+	private Element render(Object model, String rootName) throws Exception {
+		DOMResult result = new DOMResult();
+		SAXSource source = new SAXSource(new ModelXmlReader(model, rootName), new InputSource());
+		TransformerFactory.newInstance().newTransformer().transform(source, result);
+		return ((Document) result.getNode()).getDocumentElement();
+	}
+
+	private Element getChild(Element parent, String name) {
+		List children = DomUtils.getChildElementsByTagName(parent, name);
+		return (children.isEmpty() ? null : (Element) children.get(0));
+	}
+
+	private String getChildText(Element parent, String name) {
+		return DomUtils.getTextValue(getChild(parent, name));
+	}
+
+}
@@ -4,15 +4,31 @@
 
 package org.springframework.web.servlet.view.xslt;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.transform.ErrorListener;
+import javax.xml.transform.Source;
 import javax.xml.transform.TransformerException;
+import javax.xml.transform.dom.DOMSource;
 
 import junit.framework.TestCase;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 
+import org.springframework.beans.TestBean;
 import org.springframework.context.ApplicationContextException;
 import org.springframework.core.JdkVersion;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.FileSystemResource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.StopWatch;
 
 /**
  * @author Darren Davison
@@ -107,9 +123,164 @@ public class XsltViewTests extends TestCase {
 		assertEquals(0, warnings);
 	}
 
+	public void testRenderStreamsModelWithoutDom() throws Exception {
+		if (JdkVersion.getMajorJavaVersion() < JdkVersion.JAVA_14) {
+			return;
+		}
+
+		view.setStylesheetLocation(new ClassPathResource("org/springframework/web/servlet/view/xslt/model.xsl"));
+		view.initApplicationContext();
+
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		view.render(createModel(2), new MockHttpServletRequest(), response);
+		assertEquals("none:name0=0;name1=1;", response.getContentAsString().trim());
+	}
+
+	public void testPooledTransformerIsReset() throws Exception {
+		if (JdkVersion.getMajorJavaVersion() < JdkVersion.JAVA_14) {
+			return;
+		}
+
+		ParameterXsltView paramView = new ParameterXsltView();
+		paramView.setStylesheetLocation(new ClassPathResource("org/springframework/web/servlet/view/xslt/model.xsl"));
+		paramView.initApplicationContext();
+
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addParameter("title", "People");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		paramView.render(createModel(1), request, response);
+		assertEquals("People:name0=0;", response.getContentAsString().trim());
+
+		// parameter of the previous rendering must not stick to the pooled Transformer
+		response = new MockHttpServletResponse();
+		paramView.render(createModel(1), new MockHttpServletRequest(), response);
+		assertEquals("none:name0=0;", response.getContentAsString().trim());
+	}
+
+	public void testCopyModelWithoutStylesheet() throws Exception {
+		if (JdkVersion.getMajorJavaVersion() < JdkVersion.JAVA_14) {
+			return;
+		}
+
+		view.initApplicationContext();
+		Map model = new HashMap();
+		model.put("title", "Hello");
+		model.put("count", new Integer(3));
+
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		view.render(model, new MockHttpServletRequest(), response);
+		String xml = response.getContentAsString();
+		assertTrue(xml.indexOf("<DocRoot>") != -1);
+		assertTrue(xml.indexOf("<title>Hello</title>") != -1);
+		assertTrue(xml.indexOf("<count>3</count>") != -1);
+	}
+
+	public void testInvalidTransformerPoolSize() {
+		try {
+			view.setTransformerPoolSize(-1);
+			fail("Should have thrown IllegalArgumentException");
+		}
+		catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+
+	public void testRenderPerformance() throws Exception {
+		if (JdkVersion.getMajorJavaVersion() < JdkVersion.JAVA_14) {
+			return;
+		}
+
+		ClassPathResource stylesheet = new ClassPathResource("org/springframework/web/servlet/view/xslt/model.xsl");
+		DomXsltView domView = new DomXsltView();
+		domView.setStylesheetLocation(stylesheet);
+		domView.setTransformerPoolSize(0);
+		domView.initApplicationContext();
+		view.setStylesheetLocation(stylesheet);
+		view.initApplicationContext();
+
+		Map model = createModel(20);
+		int renderings = 2000;
+		// Warm up both paths before measuring.
+		renderRepeatedly(domView, model, renderings / 10);
+		renderRepeatedly(view, model, renderings / 10);
+
+		StopWatch sw = new StopWatch(getClass() + "." + getName());
+		sw.start(renderings + " renderings with DOM and new Transformers");
+		renderRepeatedly(domView, model, renderings);
+		sw.stop();
+		sw.start(renderings + " renderings with streamed model and pooled Transformers");
+		renderRepeatedly(view, model, renderings);
+		sw.stop();
+		System.out.println(sw.prettyPrint());
+
+		MockHttpServletResponse domResponse = new MockHttpServletResponse();
+		domView.render(model, new MockHttpServletRequest(), domResponse);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		view.render(model, new MockHttpServletRequest(), response);
+		assertEquals(domResponse.getContentAsString(), response.getContentAsString());
+	}
+
+
+	private Map createModel(int size) {
+		List people = new ArrayList();
+		for (int i = 0; i < size; i++) {
+			people.add(new TestBean("name" + i, i));
+		}
+		Map model = new HashMap();
+		model.put("people", people);
+		return model;
+	}
+
+	private void renderRepeatedly(AbstractXsltView view, Map model, int renderings) throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		for (int i = 0; i < renderings; i++) {
+			view.render(model, request, new MockHttpServletResponse());
+		}
+	}
+
 
 	private static class TestXsltView extends AbstractXsltView {
 
 	}
 
+
+	private static class ParameterXsltView extends AbstractXsltView {
+
+		protected Map getParameters(HttpServletRequest request) {
+			if (request.getParameter("title") == null) {
+				return null;
+			}
+			Map parameters = new HashMap();
+			parameters.put("title", request.getParameter("title"));
+			return parameters;
+		}
+	}
+
+
+	/**
+	 * Builds a DOM for the model, the way views had to before models could be streamed.
+	 */
+	private static class DomXsltView extends AbstractXsltView {
+
+		protected Source createXsltSource(Map model, String root, HttpServletRequest request,
+				HttpServletResponse response) throws Exception {
+			Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+			Element rootElement = doc.createElement(root);
+			doc.appendChild(rootElement);
+			List people = (List) model.get(root);
+			for (int i = 0; i < people.size(); i++) {
+				TestBean tb = (TestBean) people.get(i);
+				Element item = doc.createElement("item");
+				Element name = doc.createElement("name");
+				name.appendChild(doc.createTextNode(tb.getName()));
+				item.appendChild(name);
+				Element age = doc.createElement("age");
+				age.appendChild(doc.createTextNode(String.valueOf(tb.getAge())));
+				item.appendChild(age);
+				rootElement.appendChild(item);
+			}
+			return new DOMSource(doc);
+		}
+	}
+
 }
@@ -16,8 +16,12 @@
 
 package org.springframework.web.util;
 
+import java.io.StringWriter;
+
 import junit.framework.TestCase;
 
+import org.springframework.util.StopWatch;
+
 /**
  * @author Alef Arendsen
  */
@@ -34,6 +38,67 @@ public class HtmlUtilsTests extends TestCase {
 		}
 	}
 
+	public void testHtmlEscapeWithoutSpecialCharacters() {
+		String unescaped = "This is plain text, 100% safe!";
+		assertSame(unescaped, HtmlUtils.htmlEscape(unescaped));
+		assertSame("", HtmlUtils.htmlEscape(""));
+		assertNull(HtmlUtils.htmlEscape(null));
+	}
+
+	public void testHtmlEscapeSpecialCharacters() {
+		assertEquals("&#60;a href=&#34;x&#34;&#62;&#38;&#60;/a&#62;", HtmlUtils.htmlEscape("<a href=\"x\">&</a>"));
+		assertEquals("caf&#233; &#8364;5 &#8230;", HtmlUtils.htmlEscape("caf\u00e9 \u20ac5 \u2026"));
+		assertEquals("\u4e2d\u6587", HtmlUtils.htmlEscape("\u4e2d\u6587"));
+	}
+
+	public void testHtmlEscapeToWriter() throws Exception {
+		StringWriter writer = new StringWriter();
+		HtmlUtils.htmlEscape("\"This is a quote\" & more", writer);
+		assertEquals("&#34;This is a quote&#34; &#38; more", writer.toString());
+
+		writer = new StringWriter();
+		HtmlUtils.htmlEscape(null, writer);
+		assertEquals("", writer.toString());
+
+		// Same result as the String variant for every single character.
+		for (int c = 0; c <= Character.MAX_VALUE; c++) {
+			String input = "x" + (char) c + "y";
+			writer = new StringWriter();
+			HtmlUtils.htmlEscape(input, writer);
+			assertEquals(HtmlUtils.htmlEscape(input), writer.toString());
+		}
+	}
+
+	public void testHtmlEscapePerformance() throws Exception {
+		String plain = "Some plain message text without any special characters in it";
+		String special = "Some <b>message</b> text with \"special\" characters & entities \u20ac";
+		int count = 200000;
+
+		StopWatch sw = new StopWatch(getClass() + "." + getName());
+		sw.start(count + " plain strings");
+		for (int i = 0; i < count; i++) {
+			HtmlUtils.htmlEscape(plain);
+		}
+		sw.stop();
+		sw.start(count + " strings with special characters");
+		for (int i = 0; i < count; i++) {
+			HtmlUtils.htmlEscape(special);
+		}
+		sw.stop();
+		sw.start(count + " strings with special characters to Writer");
+		StringWriter writer = new StringWriter();
+		for (int i = 0; i < count; i++) {
+			HtmlUtils.htmlEscape(special, writer);
+			writer.getBuffer().setLength(0);
+		}
+		sw.stop();
+		System.out.println(sw.prettyPrint());
+
+		assertSame(plain, HtmlUtils.htmlEscape(plain));
+		HtmlUtils.htmlEscape(special, writer);
+		assertEquals(HtmlUtils.htmlEscape(special), writer.toString());
+	}
+
 	public void testHtmlUnescape() {
 		String escaped = "&quot;This is a quote";		
 		String unescaped = HtmlUtils.htmlUnescape(escaped);
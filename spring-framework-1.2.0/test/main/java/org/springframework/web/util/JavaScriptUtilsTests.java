@@ -0,0 +1,69 @@
+/*
+ * Copyright 2002-2005 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.web.util;
+
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+/**
+ * @since 1.2.1
+ */
+public class JavaScriptUtilsTests extends TestCase {
+
+	public void testJavaScriptEscape() {
+		assertEquals("\\\"quoted\\\" \\'text\\' \\\\ with\\ttab\\nline\\nbreaks\\f",
+				JavaScriptUtils.javaScriptEscape("\"quoted\" 'text' \\ with\ttab\r\nline\nbreaks\f"));
+		assertEquals("a\\n\\nb", JavaScriptUtils.javaScriptEscape("a\r\rb"));
+		assertEquals("\\n", JavaScriptUtils.javaScriptEscape("\n"));
+		assertNull(JavaScriptUtils.javaScriptEscape(null));
+	}
+
+	public void testJavaScriptEscapeWithoutSpecialCharacters() {
+		String input = "Plain text & <markup> \u00e4\u00f6\u00fc";
+		assertSame(input, JavaScriptUtils.javaScriptEscape(input));
+	}
+
+	public void testJavaScriptEscapeToWriter() throws Exception {
+		String input = "\"quoted\" 'text' \\ with\ttab\r\nline\nbreaks\f and more";
+		StringWriter writer = new StringWriter();
+		JavaScriptUtils.javaScriptEscape(input, writer);
+		assertEquals(JavaScriptUtils.javaScriptEscape(input), writer.toString());
+
+		writer = new StringWriter();
+		JavaScriptUtils.javaScriptEscape(null, writer);
+		assertEquals("", writer.toString());
+	}
+
+	public void testJavaScriptEscapingWriter() throws Exception {
+		StringWriter writer = new StringWriter();
+		JavaScriptEscapingWriter escapingWriter = new JavaScriptEscapingWriter(writer);
+		escapingWriter.write("say 'hi'\r");
+		escapingWriter.write("\nand\t".toCharArray());
+		escapingWriter.write('\\');
+		assertEquals("say \\'hi\\'\\nand\\t\\\\", writer.toString());
+	}
+
+	public void testJavaScriptEscapingWriterChainedWithHtmlEscape() throws Exception {
+		String input = "\"quoted\" 'text' & <markup> \\ \u00e4\r\n";
+		StringWriter writer = new StringWriter();
+		HtmlUtils.htmlEscape(input, new JavaScriptEscapingWriter(writer));
+		assertEquals(JavaScriptUtils.javaScriptEscape(HtmlUtils.htmlEscape(input)), writer.toString());
+	}
+
+}